@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.rpc.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.opennms.core.rpc.api.RequestTimedOutException;
+import org.opennms.core.rpc.api.RpcModule;
+import org.opennms.core.rpc.api.RpcRequest;
+import org.opennms.core.rpc.api.RpcResponse;
+import org.opennms.core.rpc.xml.AbstractXmlRpcModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Executes the requests grouped by the {@link BatchingRpcClientFactory}.
+ *
+ * The requests are unmarshaled and executed by the module they were sent
+ * to, all at once, and the batch is answered when all of them completed.
+ * Requests still running when the TTL of the batch expires are answered
+ * with a {@link RequestTimedOutException}, so that a single slow request
+ * does not hold the others back until the client gives up on the batch.
+ * The {@link BatchingRpcClientFactory} only batches requests with the same
+ * TTL, so the TTL of the batch is the deadline of every request.
+ */
+public class BatchRpcModule extends AbstractXmlRpcModule<BatchRpcRequest, BatchRpcResponse> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchRpcModule.class);
+
+    public static final String RPC_MODULE_ID = "Batch";
+
+    private final Map<String, RpcModule<RpcRequest,RpcResponse>> modulesById = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService timer;
+
+    public BatchRpcModule() {
+        super(BatchRpcRequest.class, BatchRpcResponse.class);
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void bind(RpcModule module) {
+        if (module != null && !RPC_MODULE_ID.equals(module.getId())) {
+            modulesById.put(module.getId(), (RpcModule<RpcRequest,RpcResponse>)module);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    public void unbind(RpcModule module) {
+        if (module != null) {
+            modulesById.remove(module.getId(), module);
+        }
+    }
+
+    @Override
+    public CompletableFuture<BatchRpcResponse> execute(final BatchRpcRequest request) {
+        final RpcModule<RpcRequest,RpcResponse> module = modulesById.get(request.getModuleId());
+        if (module == null) {
+            final CompletableFuture<BatchRpcResponse> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalArgumentException("No RPC module found with id '" + request.getModuleId() + "'."));
+            return future;
+        }
+
+        LOG.debug("Executing a batch of {} requests for module {}.", request.getItems().size(), module.getId());
+        final List<CompletableFuture<String>> responses = new ArrayList<>(request.getItems().size());
+        for (BatchRpcRequest.Item item : request.getItems()) {
+            CompletableFuture<RpcResponse> future;
+            try {
+                future = module.execute(module.unmarshalRequest(item.getRequest()));
+            } catch (Throwable t) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(t);
+            }
+            responses.add(future.handle((response, ex) -> {
+                return module.marshalResponse(ex != null ? module.createResponseWithException(ex) : response);
+            }));
+        }
+
+        final CompletableFuture<BatchRpcResponse> future = new CompletableFuture<>();
+        CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[responses.size()]))
+            .whenComplete((res, ex) -> future.complete(collect(module, responses)));
+
+        final Long ttl = request.getTimeToLiveMs();
+        if (ttl != null && ttl > 0 && !future.isDone()) {
+            final ScheduledFuture<?> timeout = getTimer().schedule(() -> {
+                if (!future.isDone()) {
+                    LOG.info("Answering a batch of module {} after its TTL of {}ms, some requests are still running.", module.getId(), ttl);
+                    future.complete(collect(module, responses));
+                }
+            }, ttl, TimeUnit.MILLISECONDS);
+            future.whenComplete((res, ex) -> timeout.cancel(false));
+        }
+        return future;
+    }
+
+    private static BatchRpcResponse collect(RpcModule<RpcRequest,RpcResponse> module, List<CompletableFuture<String>> responses) {
+        final List<String> marshaled = new ArrayList<>(responses.size());
+        for (CompletableFuture<String> response : responses) {
+            Throwable error = null;
+            if (!response.isDone()) {
+                error = new RequestTimedOutException(new TimeoutException("The request did not complete within the TTL of the batch."));
+            } else if (!response.isCompletedExceptionally()) {
+                marshaled.add(response.join());
+                continue;
+            } else {
+                try {
+                    response.join();
+                } catch (CompletionException e) {
+                    error = e.getCause() != null ? e.getCause() : e;
+                }
+            }
+            marshaled.add(module.marshalResponse(module.createResponseWithException(error)));
+        }
+        return new BatchRpcResponse(marshaled);
+    }
+
+    private synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("rpc-batch-module-timer")
+                    .setDaemon(true)
+                    .build());
+        }
+        return timer;
+    }
+
+    public void destroy() {
+        synchronized (this) {
+            if (timer != null) {
+                timer.shutdownNow();
+                timer = null;
+            }
+        }
+    }
+
+    @Override
+    public String getId() {
+        return RPC_MODULE_ID;
+    }
+
+    @Override
+    public BatchRpcResponse createResponseWithException(Throwable ex) {
+        return new BatchRpcResponse(ex);
+    }
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.rpc.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlValue;
+
+import org.opennms.core.rpc.api.RpcRequest;
+
+/**
+ * Groups requests of the same module, for the same location and system, in
+ * a single message. The requests are stored as marshaled by their module.
+ */
+@XmlRootElement(name="batch-request")
+@XmlAccessorType(XmlAccessType.NONE)
+public class BatchRpcRequest implements RpcRequest {
+
+    @XmlAccessorType(XmlAccessType.NONE)
+    public static class Item {
+        @XmlAttribute(name="ttl")
+        private Long timeToLiveMs;
+
+        @XmlValue
+        private String request;
+
+        public Item() { }
+
+        public Item(String request, Long timeToLiveMs) {
+            this.request = request;
+            this.timeToLiveMs = timeToLiveMs;
+        }
+
+        public String getRequest() {
+            return request;
+        }
+
+        public Long getTimeToLiveMs() {
+            return timeToLiveMs;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(request, timeToLiveMs);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null) return false;
+            if (getClass() != obj.getClass()) return false;
+            final Item other = (Item) obj;
+            return Objects.equals(this.request, other.request)
+                    && Objects.equals(this.timeToLiveMs, other.timeToLiveMs);
+        }
+    }
+
+    @XmlAttribute(name="module")
+    private String moduleId;
+
+    @XmlAttribute(name="location")
+    private String location;
+
+    @XmlAttribute(name="system-id")
+    private String systemId;
+
+    @XmlAttribute(name="ttl")
+    private Long timeToLiveMs;
+
+    @XmlElement(name="request")
+    private List<Item> items = new ArrayList<>();
+
+    public BatchRpcRequest() { }
+
+    public BatchRpcRequest(String moduleId, String location, String systemId) {
+        this.moduleId = moduleId;
+        this.location = location;
+        this.systemId = systemId;
+    }
+
+    public String getModuleId() {
+        return moduleId;
+    }
+
+    public void setModuleId(String moduleId) {
+        this.moduleId = moduleId;
+    }
+
+    @Override
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    @Override
+    public String getSystemId() {
+        return systemId;
+    }
+
+    public void setSystemId(String systemId) {
+        this.systemId = systemId;
+    }
+
+    @Override
+    public Long getTimeToLiveMs() {
+        return timeToLiveMs;
+    }
+
+    public void setTimeToLiveMs(Long timeToLiveMs) {
+        this.timeToLiveMs = timeToLiveMs;
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    public void setItems(List<Item> items) {
+        this.items = items;
+    }
+
+    public void addItem(String request, Long timeToLiveMs) {
+        items.add(new Item(request, timeToLiveMs));
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(moduleId, location, systemId, timeToLiveMs, items);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null) return false;
+        if (getClass() != obj.getClass()) return false;
+        final BatchRpcRequest other = (BatchRpcRequest) obj;
+        return Objects.equals(this.moduleId, other.moduleId)
+                && Objects.equals(this.location, other.location)
+                && Objects.equals(this.systemId, other.systemId)
+                && Objects.equals(this.timeToLiveMs, other.timeToLiveMs)
+                && Objects.equals(this.items, other.items);
+    }
+}
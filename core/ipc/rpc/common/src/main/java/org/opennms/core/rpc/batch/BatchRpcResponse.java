@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.rpc.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.opennms.core.rpc.api.RemoteExecutionException;
+import org.opennms.core.rpc.api.RpcResponse;
+
+/**
+ * The responses to a {@link BatchRpcRequest}, in the order of the requests.
+ * The responses are stored as marshaled by their module, including the ones
+ * that failed.
+ */
+@XmlRootElement(name="batch-response")
+@XmlAccessorType(XmlAccessType.NONE)
+public class BatchRpcResponse implements RpcResponse {
+
+    @XmlAttribute(name="error")
+    private String error;
+
+    @XmlElement(name="response")
+    private List<String> responses = new ArrayList<>();
+
+    public BatchRpcResponse() { }
+
+    public BatchRpcResponse(List<String> responses) {
+        this.responses = responses;
+    }
+
+    public BatchRpcResponse(Throwable ex) {
+        this.error = RemoteExecutionException.toErrorMessage(ex);
+    }
+
+    public List<String> getResponses() {
+        return responses;
+    }
+
+    public void setResponses(List<String> responses) {
+        this.responses = responses;
+    }
+
+    @Override
+    public String getErrorMessage() {
+        return error;
+    }
+
+    public void setErrorMessage(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(error, responses);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null) return false;
+        if (getClass() != obj.getClass()) return false;
+        final BatchRpcResponse other = (BatchRpcResponse) obj;
+        return Objects.equals(this.error, other.error)
+                && Objects.equals(this.responses, other.responses);
+    }
+}
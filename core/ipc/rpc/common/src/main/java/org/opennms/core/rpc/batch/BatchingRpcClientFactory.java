@@ -0,0 +1,323 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.rpc.batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.opennms.core.rpc.api.RemoteExecutionException;
+import org.opennms.core.rpc.api.RequestTimedOutException;
+import org.opennms.core.rpc.api.RpcClient;
+import org.opennms.core.rpc.api.RpcClientFactory;
+import org.opennms.core.rpc.api.RpcModule;
+import org.opennms.core.rpc.api.RpcRequest;
+import org.opennms.core.rpc.api.RpcResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A {@link RpcClientFactory} that groups the remote requests of the same
+ * module, location, system and TTL that are issued within a small window,
+ * and sends them to the {@link BatchRpcModule} in a single RPC.
+ *
+ * Every request keeps its own future, and fails with a
+ * {@link RequestTimedOutException} once its own TTL expired. Since the
+ * requests of a batch share the same TTL, the batch is answered by the
+ * {@link BatchRpcModule} at the deadline of its requests, and a quick
+ * request is never held back by a slower request with a longer TTL. Requests for the local location,
+ * and requests of the modules that are not batched, are handed to the
+ * delegate as they are.
+ *
+ * Batching is disabled unless {@value #WINDOW_MS_PROPERTY} is greater than
+ * 0, since every Minion must then provide the {@link BatchRpcModule}.
+ */
+public class BatchingRpcClientFactory implements RpcClientFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingRpcClientFactory.class);
+
+    public static final String WINDOW_MS_PROPERTY = "org.opennms.ipc.rpc.batch.windowMs";
+    public static final long WINDOW_MS_DEFAULT = 0L;
+
+    public static final String MAX_SIZE_PROPERTY = "org.opennms.ipc.rpc.batch.maxSize";
+    public static final int MAX_SIZE_DEFAULT = 100;
+
+    public static final String MODULES_PROPERTY = "org.opennms.ipc.rpc.batch.modules";
+    public static final String MODULES_DEFAULT = "Poller,Collect,Detect";
+
+    private final RpcClientFactory delegate;
+
+    private final BatchRpcModule batchModule = new BatchRpcModule();
+
+    private final Map<BatchKey, Batch<?,?>> batches = new HashMap<>();
+
+    private RpcClient<BatchRpcRequest, BatchRpcResponse> batchClient;
+
+    private ScheduledExecutorService timer;
+
+    private String location;
+
+    private long windowMs = Long.getLong(WINDOW_MS_PROPERTY, WINDOW_MS_DEFAULT);
+
+    private int maxBatchSize = Integer.getInteger(MAX_SIZE_PROPERTY, MAX_SIZE_DEFAULT);
+
+    private Set<String> batchedModules = new HashSet<>(Arrays.asList(System.getProperty(MODULES_PROPERTY, MODULES_DEFAULT).split("\\s*,\\s*")));
+
+    public BatchingRpcClientFactory(RpcClientFactory delegate) {
+        this.delegate = Objects.requireNonNull(delegate);
+    }
+
+    @Override
+    public <R extends RpcRequest, S extends RpcResponse> RpcClient<R, S> getClient(RpcModule<R, S> module) {
+        final RpcClient<R,S> client = delegate.getClient(module);
+        if (windowMs <= 0 || !batchedModules.contains(module.getId())) {
+            return client;
+        }
+        return new RpcClient<R,S>() {
+            @Override
+            public CompletableFuture<S> execute(R request) {
+                if (request.getLocation() == null || request.getLocation().equals(location)) {
+                    // Local requests are executed directly
+                    return client.execute(request);
+                }
+                return enqueue(module, request);
+            }
+        };
+    }
+
+    private <R extends RpcRequest, S extends RpcResponse> CompletableFuture<S> enqueue(RpcModule<R,S> module, R request) {
+        final PendingRequest<R,S> pending = new PendingRequest<>(request);
+        final BatchKey key = new BatchKey(module.getId(), request.getLocation(), request.getSystemId(), request.getTimeToLiveMs());
+
+        Batch<R,S> full = null;
+        synchronized (batches) {
+            @SuppressWarnings("unchecked")
+            Batch<R,S> batch = (Batch<R,S>)batches.get(key);
+            if (batch == null) {
+                final Batch<R,S> newBatch = new Batch<>(key, module);
+                batches.put(key, newBatch);
+                getTimer().schedule(() -> flush(newBatch), windowMs, TimeUnit.MILLISECONDS);
+                batch = newBatch;
+            }
+            batch.requests.add(pending);
+            if (batch.requests.size() >= maxBatchSize) {
+                batches.remove(key);
+                full = batch;
+            }
+        }
+
+        final Long ttl = request.getTimeToLiveMs();
+        if (ttl != null && ttl > 0) {
+            final ScheduledFuture<?> timeout = getTimer().schedule(() -> {
+                pending.future.completeExceptionally(new RequestTimedOutException(new TimeoutException("No response was received within " + ttl + "ms.")));
+            }, ttl, TimeUnit.MILLISECONDS);
+            pending.future.whenComplete((res, ex) -> timeout.cancel(false));
+        }
+
+        if (full != null) {
+            send(full);
+        }
+        return pending.future;
+    }
+
+    private void flush(Batch<?,?> batch) {
+        synchronized (batches) {
+            if (!batches.remove(batch.key, batch)) {
+                // already sent because it was full
+                return;
+            }
+        }
+        send(batch);
+    }
+
+    private <R extends RpcRequest, S extends RpcResponse> void send(Batch<R,S> batch) {
+        final BatchRpcRequest batchRequest = new BatchRpcRequest(batch.key.moduleId, batch.key.location, batch.key.systemId);
+        final List<PendingRequest<R,S>> sent = new ArrayList<>(batch.requests.size());
+        for (PendingRequest<R,S> pending : batch.requests) {
+            if (pending.future.isDone()) {
+                // timed out while waiting for the window to close
+                continue;
+            }
+            try {
+                batchRequest.addItem(batch.module.marshalRequest(pending.request), batch.key.ttl);
+                sent.add(pending);
+            } catch (Throwable t) {
+                pending.future.completeExceptionally(t);
+            }
+        }
+        if (sent.isEmpty()) {
+            return;
+        }
+        // Use the default of the transport when the requests rely on it, and
+        // otherwise the time left to the first request of the batch, so that
+        // the batch is answered before the requests time out on this side
+        final Long ttl = batch.key.ttl;
+        if (ttl != null && ttl > 0) {
+            batchRequest.setTimeToLiveMs(Math.max(1L, ttl - (System.currentTimeMillis() - batch.createdMs)));
+        } else {
+            batchRequest.setTimeToLiveMs(ttl);
+        }
+
+        LOG.debug("Sending a batch of {} requests for module {} to location {}.", sent.size(), batch.key.moduleId, batch.key.location);
+        getBatchClient().execute(batchRequest).whenComplete((batchResponse, ex) -> {
+            if (ex != null) {
+                sent.forEach(pending -> pending.future.completeExceptionally(ex));
+                return;
+            }
+            final List<String> responses = batchResponse.getResponses();
+            if (responses.size() != sent.size()) {
+                final IllegalStateException e = new IllegalStateException("Received " + responses.size() + " responses for a batch of " + sent.size() + " requests.");
+                sent.forEach(pending -> pending.future.completeExceptionally(e));
+                return;
+            }
+            for (int i = 0; i < responses.size(); i++) {
+                final CompletableFuture<S> future = sent.get(i).future;
+                try {
+                    final S response = batch.module.unmarshalResponse(responses.get(i));
+                    if (response.getErrorMessage() != null) {
+                        future.completeExceptionally(new RemoteExecutionException(response.getErrorMessage()));
+                    } else {
+                        future.complete(response);
+                    }
+                } catch (Throwable t) {
+                    LOG.error("Unmarshalling a response in RPC module {} failed.", batch.module, t);
+                    future.completeExceptionally(t);
+                }
+            }
+        });
+    }
+
+    private synchronized RpcClient<BatchRpcRequest, BatchRpcResponse> getBatchClient() {
+        if (batchClient == null) {
+            batchClient = delegate.getClient(batchModule);
+        }
+        return batchClient;
+    }
+
+    private synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("rpc-batch-timer")
+                    .setDaemon(true)
+                    .build());
+        }
+        return timer;
+    }
+
+    public void destroy() {
+        synchronized (this) {
+            if (timer != null) {
+                timer.shutdownNow();
+                timer = null;
+            }
+        }
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public void setWindowMs(long windowMs) {
+        this.windowMs = windowMs;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public void setBatchedModules(Set<String> batchedModules) {
+        this.batchedModules = Objects.requireNonNull(batchedModules);
+    }
+
+    private static class PendingRequest<R extends RpcRequest, S extends RpcResponse> {
+        private final R request;
+        private final CompletableFuture<S> future = new CompletableFuture<>();
+
+        private PendingRequest(R request) {
+            this.request = request;
+        }
+    }
+
+    private static class Batch<R extends RpcRequest, S extends RpcResponse> {
+        private final BatchKey key;
+        private final RpcModule<R,S> module;
+        private final List<PendingRequest<R,S>> requests = new ArrayList<>();
+        private final long createdMs = System.currentTimeMillis();
+
+        private Batch(BatchKey key, RpcModule<R,S> module) {
+            this.key = key;
+            this.module = module;
+        }
+    }
+
+    private static class BatchKey {
+        private final String moduleId;
+        private final String location;
+        private final String systemId;
+        private final Long ttl;
+
+        private BatchKey(String moduleId, String location, String systemId, Long ttl) {
+            this.moduleId = moduleId;
+            this.location = location;
+            this.systemId = systemId;
+            this.ttl = ttl;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(moduleId, location, systemId, ttl);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null) return false;
+            if (getClass() != obj.getClass()) return false;
+            final BatchKey other = (BatchKey) obj;
+            return Objects.equals(this.moduleId, other.moduleId)
+                    && Objects.equals(this.location, other.location)
+                    && Objects.equals(this.systemId, other.systemId)
+                    && Objects.equals(this.ttl, other.ttl);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.rpc.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.rpc.api.RequestTimedOutException;
+
+public class BatchRpcModuleTest {
+
+    private final TestRpcModule module = new TestRpcModule();
+
+    private BatchRpcModule batchModule;
+
+    @Before
+    public void setUp() {
+        batchModule = new BatchRpcModule();
+        batchModule.bind(module);
+    }
+
+    @After
+    public void tearDown() {
+        batchModule.destroy();
+    }
+
+    @Test
+    public void canAnswerWhenAllRequestsComplete() throws Exception {
+        final BatchRpcRequest request = new BatchRpcRequest(TestRpcModule.ID, "Remote", null);
+        request.addItem("a", null);
+        request.addItem("b", null);
+        request.setTimeToLiveMs(TimeUnit.MINUTES.toMillis(1));
+
+        final CompletableFuture<BatchRpcResponse> future = batchModule.execute(request);
+        module.answer("b").complete(new TestRpcModule.Response("B", null));
+        assertFalse(future.isDone());
+        module.answer("a").completeExceptionally(new IllegalArgumentException());
+
+        // the responses are in the order of the requests
+        assertEquals(Arrays.asList("error:IllegalArgumentException", "ok:B"), future.get(10, TimeUnit.SECONDS).getResponses());
+    }
+
+    @Test
+    public void canAnswerAfterTheTtlWithPendingRequests() throws Exception {
+        final BatchRpcRequest request = new BatchRpcRequest(TestRpcModule.ID, "Remote", null);
+        request.addItem("a", null);
+        request.addItem("b", null);
+        request.setTimeToLiveMs(100L);
+        module.answer("a").complete(new TestRpcModule.Response("A", null));
+
+        // b never completes, it is answered with a timeout
+        final BatchRpcResponse response = batchModule.execute(request).get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("ok:A", "error:" + RequestTimedOutException.class.getSimpleName()), response.getResponses());
+    }
+
+    @Test
+    public void failsWithoutTheModule() throws Exception {
+        final BatchRpcRequest request = new BatchRpcRequest("Unknown", "Remote", null);
+        request.addItem("a", null);
+
+        final CompletableFuture<BatchRpcResponse> future = batchModule.execute(request);
+        assertTrue(future.isCompletedExceptionally());
+        assertNotNull(batchModule.createResponseWithException(new IllegalArgumentException()).getErrorMessage());
+    }
+}
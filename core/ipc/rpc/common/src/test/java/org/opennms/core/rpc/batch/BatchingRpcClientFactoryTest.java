@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.rpc.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.rpc.api.RequestTimedOutException;
+import org.opennms.core.rpc.api.RpcClient;
+import org.opennms.core.rpc.api.RpcClientFactory;
+import org.opennms.core.rpc.api.RpcModule;
+import org.opennms.core.rpc.api.RpcRequest;
+import org.opennms.core.rpc.api.RpcResponse;
+
+public class BatchingRpcClientFactoryTest {
+
+    private static final String REMOTE = "Remote";
+
+    private final BlockingQueue<SentBatch> sentBatches = new LinkedBlockingQueue<>();
+
+    private final TestRpcModule module = new TestRpcModule();
+
+    private BatchingRpcClientFactory factory;
+
+    private static class SentBatch {
+        private final BatchRpcRequest request;
+        private final CompletableFuture<BatchRpcResponse> future = new CompletableFuture<>();
+
+        private SentBatch(BatchRpcRequest request) {
+            this.request = request;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        factory = new BatchingRpcClientFactory(new RpcClientFactory() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public <R extends RpcRequest, S extends RpcResponse> RpcClient<R, S> getClient(RpcModule<R, S> rpcModule) {
+                if (BatchRpcModule.RPC_MODULE_ID.equals(rpcModule.getId())) {
+                    return request -> {
+                        final SentBatch batch = new SentBatch((BatchRpcRequest)request);
+                        sentBatches.add(batch);
+                        return (CompletableFuture<S>)(CompletableFuture<?>)batch.future;
+                    };
+                }
+                // requests that are not batched are executed right away
+                return rpcModule;
+            }
+        });
+        factory.setLocation("Default");
+        factory.setBatchedModules(Collections.singleton(TestRpcModule.ID));
+    }
+
+    @After
+    public void tearDown() {
+        factory.destroy();
+    }
+
+    @Test
+    public void canSendBatchWhenFull() throws Exception {
+        factory.setWindowMs(TimeUnit.MINUTES.toMillis(1));
+        factory.setMaxBatchSize(3);
+        final RpcClient<TestRpcModule.Request, TestRpcModule.Response> client = factory.getClient(module);
+
+        final CompletableFuture<TestRpcModule.Response> a = client.execute(new TestRpcModule.Request("a", REMOTE, 2000L));
+        final CompletableFuture<TestRpcModule.Response> b = client.execute(new TestRpcModule.Request("b", REMOTE, 2000L));
+        assertTrue(sentBatches.isEmpty());
+        final CompletableFuture<TestRpcModule.Response> c = client.execute(new TestRpcModule.Request("c", REMOTE, 2000L));
+
+        // the batch is sent without waiting for the window to close
+        final SentBatch batch = sentBatches.poll();
+        assertNotNull(batch);
+        assertEquals(TestRpcModule.ID, batch.request.getModuleId());
+        assertEquals(REMOTE, batch.request.getLocation());
+        assertEquals(3, batch.request.getItems().size());
+        assertTtl(2000L, batch.request.getTimeToLiveMs());
+
+        // every request is answered with its own response
+        batch.future.complete(new BatchRpcResponse(Arrays.asList("ok:A", "error:Failed", "ok:C")));
+        assertEquals("A", a.get(10, TimeUnit.SECONDS).getBody());
+        assertFailsWith(b, "Failed");
+        assertEquals("C", c.get(10, TimeUnit.SECONDS).getBody());
+    }
+
+    @Test
+    public void canSendBatchWhenTheWindowCloses() throws Exception {
+        factory.setWindowMs(100);
+        factory.setMaxBatchSize(100);
+        final RpcClient<TestRpcModule.Request, TestRpcModule.Response> client = factory.getClient(module);
+
+        client.execute(new TestRpcModule.Request("a", REMOTE, null));
+        client.execute(new TestRpcModule.Request("b", REMOTE, null));
+
+        final SentBatch batch = sentBatches.poll(10, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(2, batch.request.getItems().size());
+        // the default TTL of the transport is used
+        assertNull(batch.request.getTimeToLiveMs());
+        assertTrue(sentBatches.isEmpty());
+    }
+
+    @Test
+    public void canExecuteLocalRequestsDirectly() throws Exception {
+        factory.setWindowMs(TimeUnit.MINUTES.toMillis(1));
+        final RpcClient<TestRpcModule.Request, TestRpcModule.Response> client = factory.getClient(module);
+
+        final CompletableFuture<TestRpcModule.Response> future = client.execute(new TestRpcModule.Request("a", "Default", null));
+        module.answer("a").complete(new TestRpcModule.Response("A", null));
+        assertEquals("A", future.get(10, TimeUnit.SECONDS).getBody());
+        assertTrue(sentBatches.isEmpty());
+    }
+
+    @Test
+    public void canTimeoutWhileQueued() throws Exception {
+        factory.setWindowMs(500);
+        final RpcClient<TestRpcModule.Request, TestRpcModule.Response> client = factory.getClient(module);
+
+        final CompletableFuture<TestRpcModule.Response> a = client.execute(new TestRpcModule.Request("a", REMOTE, 50L));
+        final CompletableFuture<TestRpcModule.Response> b = client.execute(new TestRpcModule.Request("b", REMOTE, 60000L));
+
+        // the request times out before the window closes
+        try {
+            a.get(10, TimeUnit.SECONDS);
+            fail("the request should have timed out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RequestTimedOutException);
+        }
+        assertTrue(sentBatches.isEmpty());
+
+        // and is not sent with the rest of the batch
+        final SentBatch batch = sentBatches.poll(10, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(Collections.singletonList(new BatchRpcRequest.Item("b", 60000L)), batch.request.getItems());
+        assertFalse(b.isDone());
+    }
+
+    @Test
+    public void canBatchRequestsWithTheSameTtl() throws Exception {
+        factory.setWindowMs(100);
+        factory.setMaxBatchSize(100);
+        final RpcClient<TestRpcModule.Request, TestRpcModule.Response> client = factory.getClient(module);
+
+        final CompletableFuture<TestRpcModule.Response> fast = client.execute(new TestRpcModule.Request("fast", REMOTE, 5000L));
+        final CompletableFuture<TestRpcModule.Response> slow = client.execute(new TestRpcModule.Request("slow", REMOTE, 60000L));
+        final CompletableFuture<TestRpcModule.Response> other = client.execute(new TestRpcModule.Request("other", REMOTE, 5000L));
+
+        // the requests with different TTLs are sent in different batches
+        final SentBatch a = sentBatches.poll(10, TimeUnit.SECONDS);
+        final SentBatch b = sentBatches.poll(10, TimeUnit.SECONDS);
+        assertNotNull(a);
+        assertNotNull(b);
+        assertTrue(sentBatches.isEmpty());
+        final SentBatch fastBatch = a.request.getItems().size() == 2 ? a : b;
+        final SentBatch slowBatch = fastBatch == a ? b : a;
+        assertEquals(Arrays.asList(new BatchRpcRequest.Item("fast", 5000L), new BatchRpcRequest.Item("other", 5000L)), fastBatch.request.getItems());
+        assertTtl(5000L, fastBatch.request.getTimeToLiveMs());
+        assertEquals(Collections.singletonList(new BatchRpcRequest.Item("slow", 60000L)), slowBatch.request.getItems());
+        assertTtl(60000L, slowBatch.request.getTimeToLiveMs());
+
+        // the quick requests are answered without waiting for the slow one
+        fastBatch.future.complete(new BatchRpcResponse(Arrays.asList("ok:FAST", "ok:OTHER")));
+        assertEquals("FAST", fast.get(10, TimeUnit.SECONDS).getBody());
+        assertEquals("OTHER", other.get(10, TimeUnit.SECONDS).getBody());
+        assertFalse(slow.isDone());
+    }
+
+    @Test
+    public void failsWhenTheNumberOfResponsesDoesNotMatch() throws Exception {
+        factory.setWindowMs(TimeUnit.MINUTES.toMillis(1));
+        factory.setMaxBatchSize(2);
+        final RpcClient<TestRpcModule.Request, TestRpcModule.Response> client = factory.getClient(module);
+
+        final CompletableFuture<TestRpcModule.Response> a = client.execute(new TestRpcModule.Request("a", REMOTE, null));
+        final CompletableFuture<TestRpcModule.Response> b = client.execute(new TestRpcModule.Request("b", REMOTE, null));
+
+        final SentBatch batch = sentBatches.poll();
+        assertNotNull(batch);
+        batch.future.complete(new BatchRpcResponse(Collections.singletonList("ok:A")));
+        for (CompletableFuture<TestRpcModule.Response> future : Arrays.asList(a, b)) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail("the request should have failed");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+
+    /**
+     * The TTL of a batch is the time left to its requests when it is sent.
+     */
+    private static void assertTtl(long expected, Long actual) {
+        assertNotNull(actual);
+        assertTrue("TTL " + actual + " should be at most " + expected, actual <= expected);
+        assertTrue("TTL " + actual + " should be close to " + expected, actual > expected - 1000L);
+    }
+
+    private static void assertFailsWith(CompletableFuture<?> future, String message) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("the request should have failed");
+        } catch (ExecutionException e) {
+            assertEquals(message, e.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.rpc.batch;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.opennms.core.rpc.api.RpcModule;
+import org.opennms.core.rpc.api.RpcRequest;
+import org.opennms.core.rpc.api.RpcResponse;
+
+/**
+ * A module whose requests and responses are marshaled as plain strings.
+ * The requests are answered with the futures registered for their body.
+ */
+class TestRpcModule implements RpcModule<TestRpcModule.Request, TestRpcModule.Response> {
+
+    static final String ID = "Test";
+
+    private final Map<String, CompletableFuture<Response>> futures = new ConcurrentHashMap<>();
+
+    static class Request implements RpcRequest {
+        private final String body;
+        private final String location;
+        private final Long ttl;
+
+        Request(String body, String location, Long ttl) {
+            this.body = body;
+            this.location = location;
+            this.ttl = ttl;
+        }
+
+        String getBody() {
+            return body;
+        }
+
+        @Override
+        public String getLocation() {
+            return location;
+        }
+
+        @Override
+        public String getSystemId() {
+            return null;
+        }
+
+        @Override
+        public Long getTimeToLiveMs() {
+            return ttl;
+        }
+    }
+
+    static class Response implements RpcResponse {
+        private final String body;
+        private final String error;
+
+        Response(String body, String error) {
+            this.body = body;
+            this.error = error;
+        }
+
+        String getBody() {
+            return body;
+        }
+
+        @Override
+        public String getErrorMessage() {
+            return error;
+        }
+    }
+
+    /**
+     * @return the future that answers the request with the given body
+     */
+    CompletableFuture<Response> answer(String body) {
+        return futures.computeIfAbsent(body, b -> new CompletableFuture<>());
+    }
+
+    @Override
+    public CompletableFuture<Response> execute(Request request) {
+        return answer(request.getBody());
+    }
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String marshalRequest(Request request) {
+        return request.getBody();
+    }
+
+    @Override
+    public Request unmarshalRequest(String request) {
+        return new Request(request, null, null);
+    }
+
+    @Override
+    public String marshalResponse(Response response) {
+        return response.getErrorMessage() != null ? "error:" + response.getErrorMessage() : "ok:" + response.getBody();
+    }
+
+    @Override
+    public Response unmarshalResponse(String response) {
+        if (response.startsWith("error:")) {
+            return new Response(null, response.substring("error:".length()));
+        }
+        return new Response(response.substring("ok:".length()), null);
+    }
+
+    @Override
+    public Response createResponseWithException(Throwable ex) {
+        return new Response(null, ex.getClass().getSimpleName());
+    }
+}
@@ -28,7 +28,9 @@
 
 package org.opennms.core.ipc.sink.api;
 
+import java.util.Collection;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Used to asynchronously dispatch messages.
@@ -48,6 +50,31 @@ public interface AsyncDispatcher<S extends Message> extends AutoCloseable {
      */
     CompletableFuture<S> send(S message);
 
+    /**
+     * Asynchronously send all of the given messages and return a future
+     * that is resolved once all of them were handled.
+     *
+     * Implementations should hand the whole batch to a single worker
+     * instead of queuing every message on its own, while still counting
+     * every message against the queue size. A message that fails to be
+     * dispatched does not prevent the others from being dispatched.
+     *
+     * @param messages the messages to send
+     * @return a future that is resolved with the number of messages that were
+     * rejected or failed to be dispatched, it may fail instead if none of them were accepted
+     */
+    default CompletableFuture<Integer> sendAll(Collection<S> messages) {
+        final AtomicInteger failed = new AtomicInteger();
+        return CompletableFuture.allOf(messages.stream()
+                .map(message -> send(message).whenComplete((m, e) -> {
+                    if (e != null) {
+                        failed.incrementAndGet();
+                    }
+                }).exceptionally(e -> null))
+                .toArray(CompletableFuture[]::new))
+                .thenApply(v -> failed.get());
+    }
+
     /**
      * Returns the number of messages that are currently queued
      * awaiting for dispatch.
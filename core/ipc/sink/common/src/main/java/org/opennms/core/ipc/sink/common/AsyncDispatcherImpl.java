@@ -28,12 +28,15 @@
 
 package org.opennms.core.ipc.sink.common;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -62,7 +65,11 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
             .maxRate(5).every(Duration.standardSeconds(30))
             .build();
 
-    final LinkedBlockingQueue<Runnable> queue;
+    final int queueSize;
+    final boolean blockWhenFull;
+    final Counter droppedCounter;
+    // One permit for every message that can be queued, a message releases its permit when it is dispatched
+    final Semaphore permits;
     final ExecutorService executor;
 
     public AsyncDispatcherImpl(DispatcherState<W,S,T> state, AsyncPolicy asyncPolicy, SyncDispatcher<S> syncDispatcher) {
@@ -70,31 +77,17 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
         Objects.requireNonNull(asyncPolicy);
         this.syncDispatcher = Objects.requireNonNull(syncDispatcher);
 
-        final RejectedExecutionHandler rejectedExecutionHandler;
-        if (asyncPolicy.isBlockWhenFull()) {
-            // This queue ensures that calling thread is blocked when the queue is full
-            // See the implementation of OfferBlockingQueue for details
-            queue = new OfferBlockingQueue<>(asyncPolicy.getQueueSize());
-            rejectedExecutionHandler = new ThreadPoolExecutor.AbortPolicy();
-        } else {
-            queue = new LinkedBlockingQueue<Runnable>(asyncPolicy.getQueueSize());
-            // Reject and increase the dropped counter when the queue is full
-            final Counter droppedCounter = state.getMetrics().counter(MetricRegistry.name(state.getModule().getId(), "dropped"));
-            rejectedExecutionHandler = new RejectedExecutionHandler() {
-                @Override
-                public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
-                    droppedCounter.inc();
-                    throw new RejectedExecutionException("Task " + r.toString() +
-                            " rejected from " +
-                            e.toString());
-                }
-            };
-        }
+        // The queue size and the behavior when the queue is full apply to the messages, whether they
+        // are sent on their own or in batches, so the executor's own queue is not bounded
+        queueSize = Math.max(1, asyncPolicy.getQueueSize());
+        blockWhenFull = asyncPolicy.isBlockWhenFull();
+        permits = new Semaphore(queueSize);
+        droppedCounter = state.getMetrics().counter(MetricRegistry.name(state.getModule().getId(), "dropped"));
 
         state.getMetrics().register(MetricRegistry.name(state.getModule().getId(), "queue-size"), new Gauge<Integer>() {
             @Override
             public Integer getValue() {
-                return queue.size();
+                return getQueueSize();
             }
         });
 
@@ -103,67 +96,113 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
                 asyncPolicy.getNumThreads(),
                 1000L,
                 TimeUnit.MILLISECONDS,
-                queue,
+                new LinkedBlockingQueue<Runnable>(),
                 new LogPreservingThreadFactory("OpenNMS.Sink.AsyncDispatcher." + state.getModule().getId(), Integer.MAX_VALUE),
-                rejectedExecutionHandler
+                new ThreadPoolExecutor.AbortPolicy()
             );
     }
 
     /**
-     * When used in a ThreadPoolExecutor, this queue will block calls to
-     * {@link ThreadPoolExecutor#execute(Runnable)} when the queue is full.
-     * This is done by overriding calls to {@link LinkedBlockingQueue#offer(Object)}
-     * with calls to {@link LinkedBlockingQueue#put(Object)}, but comes with the caveat
-     * that executor must be built with <code>corePoolSize == maxPoolSize</code>.
-     * In the context of the {@link AsyncDispatcherImpl}, this is an acceptable caveat,
-     * since we enforce the matching pool sizes.
-     *
-     * There are alternative ways of solving this problem, for example we could use a
-     * {@link RejectedExecutionHandler} to achieve similar behavior, and allow
-     * for <code>corePoolSize < maxPoolSize</code>, but not for <code>corePoolSize==0</code>.
+     * Acquires the permits of the given number of messages, at most the queue size.
      *
-     * For further discussions on this topic see:
-     *   http://stackoverflow.com/a/3518588
-     *   http://stackoverflow.com/a/32123535
+     * When the policy blocks when the queue is full, this waits for all of the permits.
+     * Otherwise, this acquires the permits that are available right away and counts the
+     * other messages as dropped.
      *
-     * If the implementation is changed, make sure that that executor is built accordingly.
+     * @return the number of permits that were acquired
      */
-    private static class OfferBlockingQueue<E> extends LinkedBlockingQueue<E> {
-        private static final long serialVersionUID = 1L;
-
-        public OfferBlockingQueue(int capacity) {
-            super(capacity);
-        }
-
-        @Override
-        public boolean offer(E e) {
+    private int acquire(int count) {
+        if (blockWhenFull) {
             try {
-                put(e);
-                return true;
-            } catch(InterruptedException ie) {
+                permits.acquire(count);
+                return count;
+            } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
+                return 0;
             }
-            return false;
         }
+        int acquired = 0;
+        while (acquired < count && permits.tryAcquire()) {
+            acquired++;
+        }
+        droppedCounter.inc(count - acquired);
+        return acquired;
+    }
+
+    private void dispatch(S message) {
+        // The message leaves the queue
+        permits.release();
+        syncDispatcher.send(message);
     }
 
     @Override
     public CompletableFuture<S> send(S message) {
+        if (acquire(1) < 1) {
+            final CompletableFuture<S> future = new CompletableFuture<>();
+            future.completeExceptionally(new RejectedExecutionException("The queue is full, the message was rejected."));
+            return future;
+        }
         try {
             return CompletableFuture.supplyAsync(() -> {
-                syncDispatcher.send(message);
+                dispatch(message);
                 return message;
             }, executor);
         } catch (RejectedExecutionException ree) {
+            permits.release();
             final CompletableFuture<S> future = new CompletableFuture<>();
             future.completeExceptionally(ree);
             return future;
         }
     }
 
+    @Override
+    public CompletableFuture<Integer> sendAll(Collection<S> messages) {
+        // The caller may reuse the collection
+        final List<S> batch = new ArrayList<>(messages);
+        final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        int rejected = 0;
+        // Larger batches are split, so that blocking for their permits can't wait forever
+        for (int from = 0; from < batch.size(); from += queueSize) {
+            final List<S> chunk = batch.subList(from, Math.min(batch.size(), from + queueSize));
+            final int acquired = acquire(chunk.size());
+            rejected += chunk.size() - acquired;
+            if (acquired == 0) {
+                continue;
+            }
+            final List<S> accepted = chunk.subList(0, acquired);
+            try {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    // A failure only affects its own message, the rest of the batch is still dispatched
+                    int failed = 0;
+                    for (int i = 0; i < accepted.size(); i++) {
+                        try {
+                            dispatch(accepted.get(i));
+                        } catch (RuntimeException e) {
+                            failed++;
+                            rateLimittedLogger.warn("Failed to dispatch a message of a batch.", e);
+                        }
+                    }
+                    return failed;
+                }, executor));
+            } catch (RejectedExecutionException ree) {
+                permits.release(acquired);
+                rejected += acquired;
+            }
+        }
+
+        if (futures.isEmpty() && !batch.isEmpty()) {
+            final CompletableFuture<Integer> future = new CompletableFuture<>();
+            future.completeExceptionally(new RejectedExecutionException("The queue is full, the messages were rejected."));
+            return future;
+        }
+        final int numRejected = rejected;
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+                .thenApply(v -> numRejected + futures.stream().mapToInt(CompletableFuture::join).sum());
+    }
+
     @Override
     public int getQueueSize() {
-        return queue.size();
+        return queueSize - permits.availablePermits();
     }
 
     @Override
@@ -38,9 +38,11 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -52,6 +54,7 @@ import org.opennms.core.ipc.sink.api.AsyncDispatcher;
 import org.opennms.core.ipc.sink.api.AsyncPolicy;
 import org.opennms.core.ipc.sink.api.Message;
 import org.opennms.core.ipc.sink.api.SinkModule;
+import org.opennms.core.ipc.sink.api.SyncDispatcher;
 
 @RunWith(MockitoJUnitRunner.class)
 public class AsyncDispatcherTest {
@@ -202,4 +205,152 @@ public class AsyncDispatcherTest {
 
         asyncDispatcher.close();
     }
+
+    @Test(timeout=3*60*1000)
+    public void testSendAllUsesASingleThread() throws Exception {
+        when(module.getAsyncPolicy()).thenReturn(new AsyncPolicy() {
+            @Override
+            public int getQueueSize() {
+                return QUEUE_SIZE;
+            }
+
+            @Override
+            public int getNumThreads() {
+                return NUM_THREADS;
+            }
+
+            @Override
+            public boolean isBlockWhenFull() {
+                return true;
+            }
+        });
+        final AsyncDispatcher<MyMessage> asyncDispatcher = threadLockingDispatcherFactory.createAsyncDispatcher(module);
+
+        final AtomicBoolean threadLocked = new AtomicBoolean(false);
+        ThreadLockingSyncDispatcher<MyMessage> threadLockingSyncDispatcher = threadLockingDispatcherFactory.getThreadLockingSyncDispatcher();
+        threadLockingSyncDispatcher.waitForThreads(1).thenRun(() -> {
+            threadLocked.set(true);
+        });
+
+        final List<MyMessage> batch = new ArrayList<>();
+        for (int i = 0; i < NUM_THREADS; i++) {
+            batch.add(new MyMessage());
+        }
+        final CompletableFuture<Integer> future = asyncDispatcher.sendAll(batch);
+        // The caller is free to reuse the collection
+        batch.clear();
+
+        // A single thread handles the whole batch, nothing else is waiting
+        await().atMost(1, MINUTES).until(() -> threadLocked.get());
+        assertEquals(0, threadLockingSyncDispatcher.getNumExtraThreadsWaiting());
+        // The other messages of the batch are still queued
+        assertEquals(NUM_THREADS - 1, asyncDispatcher.getQueueSize());
+
+        // Release the thread and wait for the batch to be dispatched
+        threadLockingSyncDispatcher.release();
+        assertEquals(Integer.valueOf(0), future.get(1, TimeUnit.MINUTES));
+        assertEquals(NUM_THREADS, threadLockingDispatcherFactory.getNumMessageDispatched());
+        assertEquals(0, asyncDispatcher.getQueueSize());
+
+        asyncDispatcher.close();
+    }
+
+    @Test(timeout=3*60*1000)
+    public void testSendAllCountsMessagesAgainstTheQueue() throws Exception {
+        when(module.getAsyncPolicy()).thenReturn(new AsyncPolicy() {
+            @Override
+            public int getQueueSize() {
+                return QUEUE_SIZE;
+            }
+
+            @Override
+            public int getNumThreads() {
+                return 1;
+            }
+
+            @Override
+            public boolean isBlockWhenFull() {
+                return false;
+            }
+        });
+        final AsyncDispatcher<MyMessage> asyncDispatcher = threadLockingDispatcherFactory.createAsyncDispatcher(module);
+
+        final AtomicBoolean threadLocked = new AtomicBoolean(false);
+        ThreadLockingSyncDispatcher<MyMessage> threadLockingSyncDispatcher = threadLockingDispatcherFactory.getThreadLockingSyncDispatcher();
+        threadLockingSyncDispatcher.waitForThreads(1).thenRun(() -> {
+            threadLocked.set(true);
+        });
+
+        // Lock the only thread
+        final CompletableFuture<MyMessage> first = asyncDispatcher.send(new MyMessage());
+        await().atMost(1, MINUTES).until(() -> threadLocked.get());
+
+        // Only the messages that fit in the queue are accepted
+        final List<MyMessage> batch = new ArrayList<>();
+        for (int i = 0; i < QUEUE_SIZE + 10; i++) {
+            batch.add(new MyMessage());
+        }
+        final CompletableFuture<Integer> future = asyncDispatcher.sendAll(batch);
+        assertEquals(QUEUE_SIZE, asyncDispatcher.getQueueSize());
+
+        // Nothing else is accepted until the queue drains
+        assertTrue("future should have failed!", asyncDispatcher.sendAll(batch).isCompletedExceptionally());
+
+        threadLockingSyncDispatcher.release();
+        first.get(1, TimeUnit.MINUTES);
+        assertEquals(Integer.valueOf(10), future.get(1, TimeUnit.MINUTES));
+        assertEquals(QUEUE_SIZE + 1, threadLockingDispatcherFactory.getNumMessageDispatched());
+
+        asyncDispatcher.close();
+    }
+
+    @Test(timeout=3*60*1000)
+    public void testSendAllContinuesAfterFailures() throws Exception {
+        final AsyncPolicy asyncPolicy = new AsyncPolicy() {
+            @Override
+            public int getQueueSize() {
+                return QUEUE_SIZE;
+            }
+
+            @Override
+            public int getNumThreads() {
+                return 1;
+            }
+
+            @Override
+            public boolean isBlockWhenFull() {
+                return true;
+            }
+        };
+        final List<MyMessage> dispatched = new ArrayList<>();
+        final MyMessage failing = new MyMessage();
+        final SyncDispatcher<MyMessage> syncDispatcher = new SyncDispatcher<MyMessage>() {
+            @Override
+            public void send(MyMessage message) {
+                if (message == failing) {
+                    throw new IllegalStateException("failed");
+                }
+                dispatched.add(message);
+            }
+
+            @Override
+            public void close() {
+                // pass
+            }
+        };
+        final AsyncDispatcher<MyMessage> asyncDispatcher = new AsyncDispatcherImpl<>(
+                new DispatcherState<>(threadLockingDispatcherFactory, module), asyncPolicy, syncDispatcher);
+
+        final List<MyMessage> batch = new ArrayList<>();
+        batch.add(new MyMessage());
+        batch.add(failing);
+        batch.add(new MyMessage());
+
+        // The message after the failed one is still dispatched
+        assertEquals(Integer.valueOf(1), asyncDispatcher.sendAll(batch).get(1, TimeUnit.MINUTES));
+        assertEquals(Arrays.asList(batch.get(0), batch.get(2)), dispatched);
+        assertEquals(0, asyncDispatcher.getQueueSize());
+
+        asyncDispatcher.close();
+    }
 }
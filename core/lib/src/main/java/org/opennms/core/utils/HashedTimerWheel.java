@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.utils;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed timing wheel used to track the timeouts of a large number of
+ * outstanding requests, i.e. polls or pings.
+ *
+ * Adding and cancelling a timeout are O(1) and can be done from any thread,
+ * the timeouts are expired by a single thread calling
+ * {@link #expireTimeouts(long)}, typically an event loop between two
+ * selects. Timeouts are only as precise as the duration of a tick.
+ */
+public class HashedTimerWheel {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HashedTimerWheel.class);
+
+    public static final class Timeout {
+        private final Runnable m_task;
+        private final long m_deadline;
+        private long m_remainingRounds;
+        private volatile boolean m_cancelled = false;
+        private volatile boolean m_expired = false;
+
+        private Timeout(Runnable task, long deadline) {
+            m_task = task;
+            m_deadline = deadline;
+        }
+
+        /**
+         * Prevents the task from running.
+         *
+         * @return false if the task already ran
+         */
+        public boolean cancel() {
+            if (m_expired) {
+                return false;
+            }
+            m_cancelled = true;
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return m_cancelled;
+        }
+
+        public boolean isExpired() {
+            return m_expired;
+        }
+    }
+
+    private final long m_tickNanos;
+    private final int m_mask;
+    private final ArrayDeque<Timeout>[] m_wheel;
+    private final Queue<Timeout> m_pending = new ConcurrentLinkedQueue<>();
+    private final long m_startNanos = System.nanoTime();
+    private long m_tick = 0;
+
+    @SuppressWarnings("unchecked")
+    public HashedTimerWheel(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0: " + tickDuration);
+        }
+        if (ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("ticksPerWheel must be greater than 0: " + ticksPerWheel);
+        }
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        m_tickNanos = unit.toNanos(tickDuration);
+        m_mask = size - 1;
+        m_wheel = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) {
+            m_wheel[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Schedules the task to run once the delay elapsed.
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        final long deadline = System.nanoTime() - m_startNanos + Math.max(0L, unit.toNanos(delay));
+        final Timeout timeout = new Timeout(task, deadline);
+        m_pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Runs the tasks of all the ticks that ended before the given time.
+     *
+     * @param nowNanos the current value of {@link System#nanoTime()}
+     * @return the number of tasks that ran
+     */
+    public int expireTimeouts(long nowNanos) {
+        final long now = nowNanos - m_startNanos;
+        int expired = 0;
+        while ((m_tick + 1) * m_tickNanos <= now) {
+            transferPending();
+            expired += expireBucket(m_wheel[(int)(m_tick & m_mask)]);
+            m_tick++;
+        }
+        return expired;
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = m_pending.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            final long deadlineTick = timeout.m_deadline / m_tickNanos;
+            timeout.m_remainingRounds = (deadlineTick - m_tick) / m_wheel.length;
+            // timeouts already due go in the current bucket
+            m_wheel[(int)(Math.max(deadlineTick, m_tick) & m_mask)].add(timeout);
+        }
+    }
+
+    private int expireBucket(ArrayDeque<Timeout> bucket) {
+        int expired = 0;
+        for (final Iterator<Timeout> it = bucket.iterator(); it.hasNext(); ) {
+            final Timeout timeout = it.next();
+            if (timeout.isCancelled()) {
+                it.remove();
+            } else if (timeout.m_remainingRounds <= 0) {
+                it.remove();
+                timeout.m_expired = true;
+                expired++;
+                try {
+                    timeout.m_task.run();
+                } catch (Throwable t) {
+                    LOG.warn("Timeout task {} failed.", timeout.m_task, t);
+                }
+            } else {
+                timeout.m_remainingRounds--;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Returns the number of timeouts waiting to expire, including the
+     * cancelled ones that were not removed yet. Must be called from the
+     * thread expiring the timeouts.
+     */
+    public int size() {
+        int size = m_pending.size();
+        for (ArrayDeque<Timeout> bucket : m_wheel) {
+            size += bucket.size();
+        }
+        return size;
+    }
+}
@@ -149,6 +149,24 @@ public class TimeoutTracker {
 
     }
 
+    /**
+     * Returns the number of milliseconds to wait before {@link #startAttempt()}
+     * can be called without sleeping. This is always 0 unless strict timeouts
+     * are enabled and the previous attempt completed before the timeout elapsed.
+     *
+     * Asynchronous callers use this to schedule the next attempt instead of
+     * blocking the calling thread.
+     *
+     * @return a long.
+     */
+    public long getNextAttemptDelayInMillis() {
+        if (!m_strictTimeouts) {
+            return 0L;
+        }
+        final long remainingNanos = m_nextRetryTimeNanos - System.nanoTime();
+        return remainingNanos > 0 ? TimeUnit.MILLISECONDS.convert(remainingNanos + 999999L, TimeUnit.NANOSECONDS) : 0L;
+    }
+
     private void sleep(long nanos) {
         long millis = nanos / 1000000L;
         int remainingNanos = (int)(nanos % 1000000L);
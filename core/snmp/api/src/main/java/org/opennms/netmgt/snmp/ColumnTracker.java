@@ -41,6 +41,7 @@ public class ColumnTracker extends CollectionTracker {
     
     private SnmpObjId m_base;
     private SnmpObjId m_last;
+    private SnmpInstId m_lastInstance;
     private int m_maxRepetitions;
     private int m_maxRetries;
     private Integer m_retries;
@@ -100,15 +101,17 @@ public class ColumnTracker extends CollectionTracker {
 
 
                 m_last = responseObjId;
-                if (m_base.isPrefixOf(responseObjId) && !m_base.equals(responseObjId)) {
-                    SnmpInstId inst = responseObjId.getInstance(m_base);
-                    if (inst != null) {
-                        storeResult(new SnmpResult(m_base, inst, val));
-                    }
-                }
-                
-                if (!m_base.isPrefixOf(m_last)) {
+                // a single prefix check: null when the response is past the column
+                // and an empty instance when it is the base itself
+                final SnmpInstId inst = responseObjId.getInstance(m_base);
+                if (inst == null) {
+                    m_lastInstance = null;
                     setFinished(true);
+                } else if (inst.length() > 0) {
+                    m_lastInstance = inst;
+                    storeResult(new SnmpResult(m_base, inst, val));
+                } else {
+                    m_lastInstance = null;
                 }
                 
             }
@@ -183,11 +186,7 @@ public class ColumnTracker extends CollectionTracker {
     }
 
     public SnmpInstId getLastInstance() {
-        if (m_base.isPrefixOf(m_last) && !m_base.equals(m_last)) {
-            return m_last.getInstance(m_base);
-        } else {
-            return null;
-        }
+        return m_lastInstance;
     }
 
     @Override
@@ -49,6 +49,10 @@ public class SnmpInstId extends SnmpObjId {
     public SnmpInstId(int instance) {
         super(new int[] { instance }, false);
     }
+
+    SnmpInstId(int[] ids, int offset, int length) {
+        super(ids, offset, length);
+    }
     
     @Override
     protected boolean addPrefixDotInToString() {
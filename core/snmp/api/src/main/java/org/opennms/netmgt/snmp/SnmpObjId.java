@@ -28,27 +28,35 @@
 
 package org.opennms.netmgt.snmp;
 
+import java.util.Arrays;
 import java.util.StringTokenizer;
 
 public class SnmpObjId implements Comparable<SnmpObjId> {
-    
-    /* FIXME: Change the implementation of this to cache oids and share common prefixes
-     * This should enhance the amount of garbage we generate a great deal at least for
-     * this class.
+
+    /*
+     * The sub-identifiers are m_ids[m_offset] to m_ids[m_offset + m_length - 1].
+     * The oids derived from another one, i.e. its instances and prefixes, share
+     * its array instead of copying it: the arrays are never modified once an oid
+     * has been created.
      */
+    private final int[] m_ids;
+    private final int m_offset;
+    private final int m_length;
 
-    private int[] m_ids;
+    // Computed lazily, most oids are only compared or used as prefixes
+    private int m_hashCode;
+    private String m_string;
 
     protected  SnmpObjId() {
         // No-arg constructor for JAXB
-        m_ids = new int[0];
+        this(new int[0], 0, 0);
     }
 
     /**
      * These constructors are private.  The get method should be called to create a new oid
      */ 
     public SnmpObjId(int[] ids, boolean clone) {
-        m_ids = (clone ? cloneIds(ids) : ids);
+        this(clone ? cloneIds(ids) : ids, 0, ids.length);
     }
     
     /**
@@ -63,13 +71,27 @@ public class SnmpObjId implements Comparable<SnmpObjId> {
      */ 
     protected SnmpObjId(String oid) {
         this(convertStringToInts(oid), false);
+        // Keep the string if it is the one toString() would build
+        if (isString(oid)) {
+            m_string = oid;
+        }
     }
     
     /**
      * These constructors are private.  The get method should be called to create a new oid
      */ 
     protected SnmpObjId(SnmpObjId oid) {
-        this(oid.m_ids);
+        this(oid.m_ids, oid.m_offset, oid.m_length);
+        m_hashCode = oid.m_hashCode;
+    }
+
+    /**
+     * These constructors are private.  The get method should be called to create a new oid
+     */ 
+    protected SnmpObjId(int[] ids, int offset, int length) {
+        m_ids = ids;
+        m_offset = offset;
+        m_length = length;
     }
     
     /**
@@ -83,45 +105,43 @@ public class SnmpObjId implements Comparable<SnmpObjId> {
      * These constructors are private.  The get method should be called to create a new oid
      */ 
     private SnmpObjId(SnmpObjId objId, String instance) {
-        this(appendArrays(objId.m_ids, convertStringToInts(instance)), false);
+        this(objId.append(convertStringToInts(instance)));
     }
     
     /**
      * These constructors are private.  The get method should be called to create a new oid
      */ 
     private SnmpObjId(SnmpObjId objId, SnmpObjId instance) {
-        this(appendArrays(objId.m_ids, instance.m_ids), false);
+        this(objId.append(instance));
     }
 
     public int[] getIds() {
-        return cloneIds(m_ids);
+        return Arrays.copyOfRange(m_ids, m_offset, m_offset + m_length);
     }
     
     private static int[] cloneIds(int[] ids) {
-        return cloneIds(ids, ids.length);
-    }
-    
-    private static int[] cloneIds(int[] ids, int lengthToClone) {
-        int len = Math.min(lengthToClone, ids.length);
-        int[] newIds = new int[len];
-        System.arraycopy(ids, 0, newIds, 0, len);
-        return newIds;
+        return Arrays.copyOf(ids, ids.length);
     }
     
     public static int[] convertStringToInts(String oid) {
+        final int[] ids = parseDottedDigits(oid);
+        if (ids != null) {
+            return ids;
+        }
+
         oid = oid.trim();
         if (oid.startsWith(".")) {
             oid = oid.substring(1);
         }
         
         final StringTokenizer tokenizer = new StringTokenizer(oid, ".");
-        int[] ids = new int[tokenizer.countTokens()];
+        int[] tokenIds = new int[tokenizer.countTokens()];
         int index = 0;
         while (tokenizer.hasMoreTokens()) {
             try {
                 String tok = tokenizer.nextToken();
                 long value = Long.parseLong(tok);
-                ids[index] = (int)value;
+                tokenIds[index] = (int)value;
                 if (value < 0)
                     throw new IllegalArgumentException("String "+oid+" could not be converted to a SnmpObjId. It has a negative for subId "+index);
                 index++;
@@ -129,42 +149,130 @@ public class SnmpObjId implements Comparable<SnmpObjId> {
                 throw new IllegalArgumentException("String "+oid+" could not be converted to a SnmpObjId at subId "+index);
             }
         }
+        return tokenIds;
+    }
+
+    /**
+     * Parses the strings made only of digits and dots without creating any
+     * intermediate object. Returns null for anything else, which is left to
+     * the tokenizer and its error messages.
+     */
+    private static int[] parseDottedDigits(final String oid) {
+        final int len = oid.length();
+        int count = 0;
+        boolean inSubId = false;
+        for (int i = 0; i < len; i++) {
+            final char c = oid.charAt(i);
+            if (c == '.') {
+                inSubId = false;
+            } else if (c >= '0' && c <= '9') {
+                if (!inSubId) {
+                    count++;
+                    inSubId = true;
+                }
+            } else {
+                return null;
+            }
+        }
+
+        final int[] ids = new int[count];
+        int index = 0;
+        long value = 0;
+        int digits = 0;
+        for (int i = 0; i <= len; i++) {
+            final char c = i < len ? oid.charAt(i) : '.';
+            if (c == '.') {
+                if (digits > 0) {
+                    ids[index++] = (int)value;
+                    value = 0;
+                    digits = 0;
+                }
+            } else {
+                if (++digits > 18) {
+                    // may not fit in a long
+                    return null;
+                }
+                value = value * 10 + (c - '0');
+            }
+        }
         return ids;
     }
-    
-    
+
+    /**
+     * Returns true if the given string is the one returned by toString().
+     */
+    private boolean isString(final String oid) {
+        final int len = oid.length();
+        int pos = 0;
+        for (int i = 0; i < m_length; i++) {
+            if (i > 0 || addPrefixDotInToString()) {
+                if (pos >= len || oid.charAt(pos++) != '.') {
+                    return false;
+                }
+            }
+            final int start = pos;
+            long value = 0;
+            while (pos < len && oid.charAt(pos) != '.') {
+                value = value * 10 + (oid.charAt(pos++) - '0');
+            }
+            final int digits = pos - start;
+            if (digits == 0 || digits > 10 || (digits > 1 && oid.charAt(start) == '0') || value != toLong(m_ids[m_offset + i])) {
+                return false;
+            }
+        }
+        return pos == len;
+    }
 
     @Override
     public boolean equals(Object obj) {
-        if (obj instanceof SnmpObjId)
-            return compareTo((SnmpObjId)obj) == 0;
-        else
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof SnmpObjId)) {
+            return false;
+        }
+        final SnmpObjId other = (SnmpObjId)obj;
+        if (m_length != other.m_length) {
+            return false;
+        }
+        if (m_hashCode != 0 && other.m_hashCode != 0 && m_hashCode != other.m_hashCode) {
             return false;
+        }
+        return compareTo(other) == 0;
     }
 
     @Override
     public int hashCode() {
-        int h = 31;
-        for(int i = 0; i < m_ids.length; i++) {
-            h = h + 37*m_ids[i];
+        int h = m_hashCode;
+        if (h == 0) {
+            h = 1;
+            for(int i = m_offset; i < m_offset + m_length; i++) {
+                h = 31*h + m_ids[i];
+            }
+            m_hashCode = h;
         }
         return h;
     }
 
     @Override
     public String toString() {
-        final StringBuilder buf = new StringBuilder(length()*2+10); // a guess at the str len
-        for(int i = 0; i < length(); i++) {
-            if (i > 0 || addPrefixDotInToString()) {
-                buf.append('.');  
+        String str = m_string;
+        if (str == null) {
+            final StringBuilder buf = new StringBuilder(length()*2+10); // a guess at the str len
+            for(int i = 0; i < length(); i++) {
+                if (i > 0 || addPrefixDotInToString()) {
+                    buf.append('.');  
+                }
+                // we use toLong to account for unsigned ints > Integer.MAX_INT
+                buf.append(toLong(m_ids[m_offset + i]));
             }
-            // we use toLong to account for unsigned ints > Integer.MAX_INT
-            buf.append(toLong(m_ids[i]));
+            str = buf.toString();
+            m_string = str;
         }
-        return buf.toString();
+        return str;
     }
 
-    private long toLong(int subid) {
+    private static long toLong(int subid) {
         return subid >= 0 ? subid : 0xffffffffL & ((long)subid);
     }
 
@@ -177,14 +285,17 @@ public class SnmpObjId implements Comparable<SnmpObjId> {
         if (o == null) throw new NullPointerException("o is null");
         SnmpObjId other = (SnmpObjId)o;
 
-        // compare each element in order for as much length as they have in common
-        // which is the entire length of one or both oids
-        int minLen = Math.min(length(), other.length());
-        for(int i = 0; i < minLen; i++) {
-            long diff = toLong(m_ids[i]) - toLong(other.m_ids[i]);
-            // the first one that is not equal indicates which is bigger
-            if (diff != 0) {
-                return diff > 0 ? 1 : -1;
+        if (m_ids != other.m_ids || m_offset != other.m_offset) {
+            // compare each element in order for as much length as they have in common
+            // which is the entire length of one or both oids
+            int minLen = Math.min(length(), other.length());
+            for(int i = 0; i < minLen; i++) {
+                // sub-identifiers are unsigned
+                int diff = Integer.compareUnsigned(m_ids[m_offset + i], other.m_ids[other.m_offset + i]);
+                // the first one that is not equal indicates which is bigger
+                if (diff != 0) {
+                    return diff > 0 ? 1 : -1;
+                }
             }
         }
         
@@ -199,11 +310,16 @@ public class SnmpObjId implements Comparable<SnmpObjId> {
     }
     
     public SnmpObjId append(SnmpObjId inst) {
-        return append(inst.m_ids);
+        int[] ids = new int[m_length + inst.m_length];
+        System.arraycopy(m_ids, m_offset, ids, 0, m_length);
+        System.arraycopy(inst.m_ids, inst.m_offset, ids, m_length, inst.m_length);
+        return new SnmpObjId(ids, false);
     }
 
     public SnmpObjId append(int[] instIds) {
-        int[] ids = appendArrays(m_ids, instIds);
+        int[] ids = new int[m_length + instIds.length];
+        System.arraycopy(m_ids, m_offset, ids, 0, m_length);
+        System.arraycopy(instIds, 0, ids, m_length, instIds.length);
         return new SnmpObjId(ids, false);
     }
 
@@ -222,6 +338,15 @@ public class SnmpObjId implements Comparable<SnmpObjId> {
         return new SnmpObjId(ids);
     }
 
+    /**
+     * Returns an oid that uses the given array instead of a copy, e.g. the
+     * array of an oid decoded from a PDU. The array must not be modified
+     * afterwards.
+     */
+    public static SnmpObjId wrap(int[] ids) {
+        return new SnmpObjId(ids, false);
+    }
+
     public static SnmpObjId get(SnmpObjId oid) {
         return new SnmpObjId(oid);
     }
@@ -241,25 +366,31 @@ public class SnmpObjId implements Comparable<SnmpObjId> {
     public boolean isPrefixOf(final SnmpObjId other) {
     	if (other == null || length() > other.length())
             return false;
+
+        if (m_ids == other.m_ids && m_offset == other.m_offset)
+            return true;
         
-        for(int i = 0; i < m_ids.length; i++) {
-            if (m_ids[i] != other.m_ids[i])
+        for(int i = 0; i < m_length; i++) {
+            if (m_ids[m_offset + i] != other.m_ids[other.m_offset + i])
                 return false;
         }
         
         return true;
     }
 
+    /**
+     * Returns the instance of this oid relative to the given base, or null if
+     * the base is not a prefix of this oid. The instance shares the array of
+     * this oid.
+     */
     public SnmpInstId getInstance(SnmpObjId base) {
         if (!base.isPrefixOf(this)) return null;
         
-        int[] instanceIds = new int[length() - base.length()];
-        System.arraycopy(m_ids, base.length(), instanceIds, 0, instanceIds.length);
-        return new SnmpInstId(instanceIds);
+        return new SnmpInstId(m_ids, m_offset + base.length(), length() - base.length());
     }
 
     public int length() {
-        return m_ids.length;
+        return m_length;
     }
     
     public SnmpObjId getPrefix(int length) {
@@ -267,13 +398,15 @@ public class SnmpObjId implements Comparable<SnmpObjId> {
     		throw new IllegalArgumentException("Invalid length: " + length +" is longer than length of ObjId");
     	}
     	
-    	int[] newIds = cloneIds(m_ids, length);
-        return new SnmpObjId(newIds, false);
+        return new SnmpObjId(m_ids, m_offset, Math.max(length, 0));
     	
     }
     
     public int getSubIdAt(int index) {
-        return m_ids[index];
+        if (index < 0 || index >= m_length) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return m_ids[m_offset + index];
     }
     
     public int getLastSubId() {
@@ -282,10 +415,10 @@ public class SnmpObjId implements Comparable<SnmpObjId> {
 
     public SnmpObjId decrement() {
         if (getLastSubId() == 0) {
-            return new SnmpObjId(cloneIds(m_ids, length() - 1), false);
+            return new SnmpObjId(m_ids, m_offset, length() - 1);
         }
         else {
-            int[] newIds = cloneIds(m_ids, length());
+            int[] newIds = getIds();
             newIds[newIds.length-1] -= 1;
             return new SnmpObjId(newIds, false);
         }
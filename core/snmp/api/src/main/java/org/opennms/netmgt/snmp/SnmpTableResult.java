@@ -70,10 +70,11 @@ public class SnmpTableResult implements RowResultFactory {
 
     void storeResult(SnmpResult result) {
         SnmpInstId instId = result.getInstance();
-        if ( !m_pendingData.containsKey( instId ) ) {
-            m_pendingData.put( instId, m_rowResultFactory.createRowResult( getColumnCount(), instId ) );
-        }
         SnmpRowResult row = m_pendingData.get( instId );
+        if ( row == null ) {
+            row = m_rowResultFactory.createRowResult( getColumnCount(), instId );
+            m_pendingData.put( instId, row );
+        }
         row.addResult( result.getBase(), result );
 
         handleCompleteRows();
@@ -90,17 +91,19 @@ public class SnmpTableResult implements RowResultFactory {
     void handleCompleteRows() {
         SnmpInstId lastInstance = null;
 
+        final SnmpObjId[] finishedColumns = m_finishedColumns.toArray(new SnmpObjId[m_finishedColumns.size()]);
         for (SnmpRowResult row : m_pendingData.values()) {
-            if (row.isComplete(m_finishedColumns.toArray(new SnmpObjId[m_finishedColumns.size()]))) {
+            if (row.isComplete(finishedColumns)) {
                 lastInstance = row.getInstance();
             }
         }
         
         if (lastInstance != null || isFinished()) {
-            Iterator<SnmpInstId> i = m_pendingData.keySet().iterator();
+            Iterator<Map.Entry<SnmpInstId,SnmpRowResult>> i = m_pendingData.entrySet().iterator();
             while (i.hasNext()) {
-                final SnmpInstId key = i.next();
-                final SnmpRowResult pendingData = m_pendingData.get(key);
+                final Map.Entry<SnmpInstId,SnmpRowResult> entry = i.next();
+                final SnmpInstId key = entry.getKey();
+                final SnmpRowResult pendingData = entry.getValue();
                 try {
                     m_callback.rowCompleted(pendingData);
                 } catch (final Exception e) {
@@ -48,6 +48,21 @@ public class TableTracker extends CollectionTracker implements RowCallback, RowR
 
     private final List<ColumnTracker> m_columnTrackers;
 
+    // reused for every pdu, starts from the column order so that ties keep it
+    private final List<ColumnTracker> m_sortedColumnTrackers;
+
+    private static final Comparator<ColumnTracker> LAST_INSTANCE_ORDER = new Comparator<ColumnTracker>() {
+        @Override
+        public int compare(ColumnTracker o1, ColumnTracker o2) {
+            SnmpInstId lhs = o1.getLastInstance();
+            SnmpInstId rhs = o2.getLastInstance();
+            if (lhs == rhs) return 0;
+            if (lhs == null) return -1;
+            if (rhs == null) return 1;
+            return lhs.compareTo(rhs);
+        }
+    };
+
     public TableTracker(SnmpObjId... ids) {
         this(null, ids);
     }
@@ -63,6 +78,7 @@ public class TableTracker extends CollectionTracker implements RowCallback, RowR
         for (SnmpObjId id : columns) {
             m_columnTrackers.add(new ColumnTracker(this, id, maxRepetitions, maxRetries));
         }
+        m_sortedColumnTrackers = new ArrayList<ColumnTracker>(columns.length);
     }
 
     @Override
@@ -133,19 +149,11 @@ public class TableTracker extends CollectionTracker implements RowCallback, RowR
 
     private List<ColumnTracker> getNextColumnTrackers(int maxVarsPerPdu) {
         List<ColumnTracker> trackers = new ArrayList<ColumnTracker>(maxVarsPerPdu);
-        List<ColumnTracker> sortedTrackerList = new ArrayList<ColumnTracker>(m_columnTrackers);
-
-        Collections.sort(sortedTrackerList, new Comparator<ColumnTracker>() {
-            @Override
-            public int compare(ColumnTracker o1, ColumnTracker o2) {
-            	SnmpInstId lhs = o1.getLastInstance();
-				SnmpInstId rhs = o2.getLastInstance();
-				if (lhs == rhs) return 0;
-				if (lhs == null) return -1;
-				if (rhs == null) return 1;
-				return lhs.compareTo(rhs);
-            }
-        });
+        List<ColumnTracker> sortedTrackerList = m_sortedColumnTrackers;
+        sortedTrackerList.clear();
+        sortedTrackerList.addAll(m_columnTrackers);
+
+        Collections.sort(sortedTrackerList, LAST_INSTANCE_ORDER);
         
         for(Iterator<ColumnTracker> it = sortedTrackerList.iterator(); it.hasNext() && trackers.size() < maxVarsPerPdu; ) {
         
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.security.USM;
+import org.snmp4j.security.UsmUser;
+import org.snmp4j.security.UsmUserEntry;
+import org.snmp4j.smi.OctetString;
+
+/**
+ * A {@link USM} that remembers the user entries found for an engine id and
+ * a security name, including the ones with keys localized on the first
+ * message of an engine, so that the threads receiving traps do not contend
+ * on the synchronized user table for every message.
+ *
+ * Adding, updating or removing users clears the cache.
+ */
+class CachingUSM extends USM {
+
+    private final ConcurrentMap<UserKey, UsmUserEntry> m_entries = new ConcurrentHashMap<>();
+
+    // Incremented every time the users change, so that a lookup that raced with a change isn't cached
+    private final AtomicLong m_generation = new AtomicLong();
+
+    CachingUSM(SecurityProtocols securityProtocols, OctetString localEngineID, int engineBoots) {
+        super(securityProtocols, localEngineID, engineBoots);
+    }
+
+    @Override
+    public UsmUserEntry getUser(OctetString engineID, OctetString securityName) {
+        if (engineID == null || engineID.length() == 0 || securityName == null) {
+            // discovery requests, nothing to cache
+            return super.getUser(engineID, securityName);
+        }
+        final UserKey key = new UserKey(engineID, securityName);
+        UsmUserEntry entry = m_entries.get(key);
+        if (entry == null) {
+            final long generation = m_generation.get();
+            entry = super.getUser(engineID, securityName);
+            if (entry != null && m_entries.putIfAbsent(key, entry) == null && m_generation.get() != generation) {
+                m_entries.remove(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public void addUser(OctetString userName, UsmUser user) {
+        super.addUser(userName, user);
+        invalidate();
+    }
+
+    @Override
+    public void addUser(OctetString userName, OctetString engineID, UsmUser user) {
+        super.addUser(userName, engineID, user);
+        invalidate();
+    }
+
+    @Override
+    public void setUsers(UsmUser[] users) {
+        super.setUsers(users);
+        invalidate();
+    }
+
+    @Override
+    public boolean updateUser(UsmUserEntry entry) {
+        final boolean updated = super.updateUser(entry);
+        invalidate();
+        return updated;
+    }
+
+    @Override
+    public UsmUser removeUser(OctetString engineID, OctetString userName) {
+        final UsmUser user = super.removeUser(engineID, userName);
+        invalidate();
+        return user;
+    }
+
+    @Override
+    public List<UsmUser> removeAllUsers(OctetString securityName) {
+        final List<UsmUser> users = super.removeAllUsers(securityName);
+        invalidate();
+        return users;
+    }
+
+    @Override
+    public void removeAllUsers() {
+        super.removeAllUsers();
+        invalidate();
+    }
+
+    private void invalidate() {
+        m_generation.incrementAndGet();
+        m_entries.clear();
+    }
+
+    private static class UserKey {
+        private final OctetString m_engineID;
+        private final OctetString m_securityName;
+        private final int m_hashCode;
+
+        UserKey(OctetString engineID, OctetString securityName) {
+            m_engineID = engineID;
+            m_securityName = securityName;
+            m_hashCode = Objects.hash(engineID, securityName);
+        }
+
+        @Override
+        public int hashCode() {
+            return m_hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof UserKey)) {
+                return false;
+            }
+            final UserKey other = (UserKey)obj;
+            return m_engineID.equals(other.m_engineID) && m_securityName.equals(other.m_securityName);
+        }
+    }
+}
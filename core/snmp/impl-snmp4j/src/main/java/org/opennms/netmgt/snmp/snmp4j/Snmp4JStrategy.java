@@ -68,6 +68,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snmp4j.CommandResponderEvent;
 import org.snmp4j.MessageDispatcher;
+import org.snmp4j.MessageDispatcherImpl;
 import org.snmp4j.PDU;
 import org.snmp4j.PDUv1;
 import org.snmp4j.SNMP4JSettings;
@@ -76,6 +77,8 @@ import org.snmp4j.Snmp;
 import org.snmp4j.TransportMapping;
 import org.snmp4j.event.ResponseEvent;
 import org.snmp4j.event.ResponseListener;
+import org.snmp4j.mp.MPv1;
+import org.snmp4j.mp.MPv2c;
 import org.snmp4j.mp.MPv3;
 import org.snmp4j.mp.MessageProcessingModel;
 import org.snmp4j.mp.PduHandle;
@@ -87,10 +90,13 @@ import org.snmp4j.security.USM;
 import org.snmp4j.security.UsmUser;
 import org.snmp4j.smi.IpAddress;
 import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
 import org.snmp4j.smi.SMIConstants;
 import org.snmp4j.smi.UdpAddress;
 import org.snmp4j.smi.VariableBinding;
 import org.snmp4j.transport.DefaultUdpTransportMapping;
+import org.snmp4j.util.MultiThreadedMessageDispatcher;
+import org.snmp4j.util.WorkerPool;
 
 public class Snmp4JStrategy implements SnmpStrategy {
     private static final transient Logger LOG = LoggerFactory.getLogger(Snmp4JStrategy.class);
@@ -372,7 +378,7 @@ public class Snmp4JStrategy implements SnmpStrategy {
         
         if (values == null) {
             for (SnmpObjId oid : oids) {
-                pdu.add(new VariableBinding(new OID(oid.toString())));
+                pdu.add(new VariableBinding(new OID(oid.getIds())));
             }
         } else {
             // TODO should this throw an exception?  This situation is fairly bogus and probably signifies a coding error.
@@ -383,7 +389,7 @@ public class Snmp4JStrategy implements SnmpStrategy {
             }
         
             for (int i = 0; i < oids.length; i++) {
-                pdu.add(new VariableBinding(new OID(oids[i].toString()), new Snmp4JValue(values[i].getType(), values[i].getBytes()).getVariable()));
+                pdu.add(new VariableBinding(new OID(oids[i].getIds()), new Snmp4JValue(values[i].getType(), values[i].getBytes()).getVariable()));
             }
         }
         
@@ -518,11 +524,6 @@ public class Snmp4JStrategy implements SnmpStrategy {
 
     @Override
     public void registerForTraps(final TrapNotificationListener listener, InetAddress address, int snmpTrapPort, List<SnmpV3User> snmpUsers) throws IOException {
-    	final RegistrationInfo info = new RegistrationInfo(listener, address, snmpTrapPort);
-        
-    	final Snmp4JTrapNotifier trapNotifier = new Snmp4JTrapNotifier(listener);
-        info.setHandler(trapNotifier);
-
         final UdpAddress udpAddress;
         if (address == null) {
         	udpAddress = new UdpAddress(snmpTrapPort);
@@ -538,38 +539,52 @@ public class Snmp4JStrategy implements SnmpStrategy {
         transport.setReceiveBufferSize(Integer.MAX_VALUE);
         LOG.debug("Actual receive buffer size is {}", transport.getReceiveBufferSize());
 
-        info.setTransportMapping(transport);
-        Snmp snmp = new Snmp(transport);
-        Snmp4JStrategy.trackSession(snmp);
-        snmp.addCommandResponder(trapNotifier);
+        final Snmp snmp = new Snmp(transport);
+        if (snmpUsers != null) {
+            for (SnmpV3User user : snmpUsers) {
+                final UsmUser usmUser = toUsmUser(user);
+                snmp.getUSM().addUser(usmUser.getSecurityName(), usmUser);
+            }
+        }
+        register(listener, address, snmpTrapPort, transport, snmp);
+    }
 
+    /**
+     * Registers the listener for the traps received by the given transport,
+     * e.g. a transport reading from several sockets at once.
+     *
+     * When a worker pool is given, the messages are decoded and dispatched by
+     * its threads instead of the receiving thread. The SNMPv3 users are held by
+     * a USM of their own that caches the user lookups, the users are only
+     * added before the session starts listening.
+     */
+    public void registerForTraps(final TrapNotificationListener listener, final InetAddress address, final int snmpTrapPort,
+            final TransportMapping<UdpAddress> transport, final WorkerPool workerPool, final List<SnmpV3User> snmpUsers) throws IOException {
+        final MessageDispatcher dispatcher = workerPool == null ? new MessageDispatcherImpl()
+                : new MultiThreadedMessageDispatcher(workerPool, new MessageDispatcherImpl());
+        final USM usm = new CachingUSM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
         if (snmpUsers != null) {
             for (SnmpV3User user : snmpUsers) {
-                SnmpAgentConfig config = new SnmpAgentConfig();
-                config.setVersion(SnmpConfiguration.VERSION3);
-                config.setSecurityName(user.getSecurityName());
-                config.setAuthProtocol(user.getAuthProtocol());
-                config.setAuthPassPhrase(user.getAuthPassPhrase());
-                config.setPrivProtocol(user.getPrivProtocol());
-                config.setPrivPassPhrase(user.getPrivPassPhrase());
-                Snmp4JAgentConfig agentConfig = new Snmp4JAgentConfig(config);
-                UsmUser usmUser = new UsmUser(
-                        agentConfig.getSecurityName(),
-                        agentConfig.getAuthProtocol(),
-                        agentConfig.getAuthPassPhrase(),
-                        agentConfig.getPrivProtocol(),
-                        agentConfig.getPrivPassPhrase()
-                );
-                /* This doesn't work as expected. Basically SNMP4J is ignoring the engineId
-                if (user.getEngineId() == null) {
-                    snmp.getUSM().addUser(agentConfig.getSecurityName(), usmUser);
-                } else {
-                    snmp.getUSM().addUser(agentConfig.getSecurityName(), new OctetString(user.getEngineId()), usmUser);
-                }
-                */
-                snmp.getUSM().addUser(agentConfig.getSecurityName(), usmUser);
+                final UsmUser usmUser = toUsmUser(user);
+                usm.addUser(usmUser.getSecurityName(), usmUser);
             }
         }
+        dispatcher.addMessageProcessingModel(new MPv1());
+        dispatcher.addMessageProcessingModel(new MPv2c());
+        dispatcher.addMessageProcessingModel(new MPv3(usm));
+        register(listener, address, snmpTrapPort, transport, new Snmp(dispatcher, transport));
+    }
+
+    private void register(final TrapNotificationListener listener, final InetAddress address, final int snmpTrapPort,
+            final TransportMapping<UdpAddress> transport, final Snmp snmp) throws IOException {
+    	final RegistrationInfo info = new RegistrationInfo(listener, address, snmpTrapPort);
+        
+    	final Snmp4JTrapNotifier trapNotifier = new Snmp4JTrapNotifier(listener);
+        info.setHandler(trapNotifier);
+        info.setTransportMapping(transport);
+
+        Snmp4JStrategy.trackSession(snmp);
+        snmp.addCommandResponder(trapNotifier);
 
         info.setSession(snmp);
         
@@ -577,6 +592,31 @@ public class Snmp4JStrategy implements SnmpStrategy {
         
         snmp.listen();
     }
+
+    private static UsmUser toUsmUser(final SnmpV3User user) {
+        SnmpAgentConfig config = new SnmpAgentConfig();
+        config.setVersion(SnmpConfiguration.VERSION3);
+        config.setSecurityName(user.getSecurityName());
+        config.setAuthProtocol(user.getAuthProtocol());
+        config.setAuthPassPhrase(user.getAuthPassPhrase());
+        config.setPrivProtocol(user.getPrivProtocol());
+        config.setPrivPassPhrase(user.getPrivPassPhrase());
+        Snmp4JAgentConfig agentConfig = new Snmp4JAgentConfig(config);
+        /* Registering the user for its engineId doesn't work as expected. Basically SNMP4J is ignoring the engineId
+        if (user.getEngineId() == null) {
+            snmp.getUSM().addUser(agentConfig.getSecurityName(), usmUser);
+        } else {
+            snmp.getUSM().addUser(agentConfig.getSecurityName(), new OctetString(user.getEngineId()), usmUser);
+        }
+        */
+        return new UsmUser(
+                agentConfig.getSecurityName(),
+                agentConfig.getAuthProtocol(),
+                agentConfig.getAuthPassPhrase(),
+                agentConfig.getPrivProtocol(),
+                agentConfig.getPrivPassPhrase()
+        );
+    }
     
     @Override
     public void registerForTraps(final TrapNotificationListener listener, InetAddress address, int snmpTrapPort) throws IOException {
@@ -108,7 +108,7 @@ public class Snmp4JTrapNotifier implements CommandResponder {
 
         @Override
         public TrapIdentity getTrapIdentity() {
-            return new TrapIdentity(SnmpObjId.get(m_pdu.getEnterprise().getValue()), m_pdu.getGenericTrap(), m_pdu.getSpecificTrap());
+            return new TrapIdentity(SnmpObjId.wrap(m_pdu.getEnterprise().getValue()), m_pdu.getGenericTrap(), m_pdu.getSpecificTrap());
         }
 
         protected VariableBinding getVarBindAt(int i) {
@@ -117,7 +117,7 @@ public class Snmp4JTrapNotifier implements CommandResponder {
 
         @Override
         public SnmpVarBindDTO getSnmpVarBindDTO(int i) {
-            SnmpObjId name = SnmpObjId.get(getVarBindAt(i).getOid().getValue());
+            SnmpObjId name = SnmpObjId.wrap(getVarBindAt(i).getOid().getValue());
             SnmpValue value = new Snmp4JValue(getVarBindAt(i).getVariable());
             return new SnmpVarBindDTO(name, value);
         }
@@ -230,7 +230,7 @@ public class Snmp4JTrapNotifier implements CommandResponder {
             OID snmpTrapOid = (OID) getVarBindAt(SNMP_TRAP_OID_INDEX).getVariable();
             OID lastVarBindOid = getVarBindAt(getPduLength() - 1).getOid();
             Variable lastVarBindValue = getVarBindAt(getPduLength() - 1).getVariable();
-            return new TrapIdentity(SnmpObjId.get(snmpTrapOid.getValue()), SnmpObjId.get(lastVarBindOid.getValue()), new Snmp4JValue(lastVarBindValue));
+            return new TrapIdentity(SnmpObjId.wrap(snmpTrapOid.getValue()), SnmpObjId.wrap(lastVarBindOid.getValue()), new Snmp4JValue(lastVarBindValue));
         }
 
         /**
@@ -298,7 +298,7 @@ public class Snmp4JTrapNotifier implements CommandResponder {
                 LOG.debug("Skipping processing of varbind {}: it is the trap OID and the second varbind, and is not processed as a parm per RFC2089", i);
                 return null;
             } else {
-                SnmpObjId name = SnmpObjId.get(getVarBindAt(i).getOid().getValue());
+                SnmpObjId name = SnmpObjId.wrap(getVarBindAt(i).getOid().getValue());
                 SnmpValue value = new Snmp4JValue(getVarBindAt(i).getVariable());
                 return new SnmpVarBindDTO(name, value);
             }
@@ -147,7 +147,7 @@ public class Snmp4JWalker extends SnmpWalker {
                         } else {
                             for (int i = 0; i < response.size(); i++) {
                                 final VariableBinding vb = response.get(i);
-                                final SnmpObjId receivedOid = SnmpObjId.get(vb.getOid().getValue());
+                                final SnmpObjId receivedOid = SnmpObjId.wrap(vb.getOid().getValue());
                                 final SnmpValue val = new Snmp4JValue(vb.getVariable());
                                 Snmp4JWalker.this.processResponse(receivedOid, val);
                             }
@@ -168,6 +168,60 @@ public class SnmpObjIdTest extends TestCase {
         SnmpObjId oid2 = SnmpObjId.get(".1.3.5.7.0");
         assertEquals(oid, oid2.decrement());
     }
+
+    public void testDerivedOids() {
+        SnmpObjId base = SnmpObjId.get(".1.3.5.7");
+        SnmpObjId result = SnmpObjId.get(".1.3.5.7.9.8.7.6");
+
+        SnmpInstId instance = result.getInstance(base);
+        assertEquals(4, instance.length());
+        assertEquals(9, instance.getSubIdAt(0));
+        assertEquals(6, instance.getLastSubId());
+        assertArrayEquals(new int[] {9,8,7,6}, instance.getIds());
+        assertEquals(new SnmpInstId("9.8.7.6"), instance);
+        assertEquals(new SnmpInstId("9.8.7.6").hashCode(), instance.hashCode());
+        assertEquals(0, result.getInstance(result).length());
+        assertNull(base.getInstance(result));
+
+        SnmpObjId prefix = result.getPrefix(4);
+        assertEquals(base, prefix);
+        assertEquals(base.hashCode(), prefix.hashCode());
+        assertEquals(".1.3.5.7", prefix.toString());
+        assertEquals(result, prefix.append(instance));
+        assertTrue(prefix.isPrefixOf(result));
+
+        try {
+            prefix.getSubIdAt(4);
+            fail("Expected ArrayIndexOutOfBoundsException");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            
+        }
+    }
+
+    public void testToString() {
+        assertEquals(".1.3.5.7", SnmpObjId.get(".1.3.5.7").toString());
+        assertEquals(".1.3.5.7", SnmpObjId.get("1.3.5.7").toString());
+        assertEquals(".1.3.5.7", SnmpObjId.get(" .1.3..5.07 ").toString());
+        assertEquals("1.3.5.7", new SnmpInstId(".1.3.5.7").toString());
+        assertEquals("", new SnmpInstId("").toString());
+        assertEquals(".1.3.6.1.4.1.9.4294967295", SnmpObjId.get(".1.3.6.1.4.1.9.4294967295").toString());
+        assertArrayEquals(new int[] {1, 3, -1}, SnmpObjId.get(".1.3.4294967295").getIds());
+    }
+
+    public void testCompareUnsigned() {
+        SnmpObjId small = SnmpObjId.get(".1.3.2147483647");
+        SnmpObjId large = SnmpObjId.get(".1.3.2147483648");
+        assertTrue(small.compareTo(large) < 0);
+        assertTrue(large.compareTo(small) > 0);
+        assertTrue(SnmpObjId.get(".1.3").compareTo(small) < 0);
+    }
+
+    public void testWrap() {
+        int[] ids = new int[] {1,3,6,1};
+        SnmpObjId oid = SnmpObjId.wrap(ids);
+        assertEquals(SnmpObjId.get(".1.3.6.1"), oid);
+        assertEquals(".1.3.6.1", oid.toString());
+    }
     
     
 
@@ -39,12 +39,14 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
@@ -92,21 +94,29 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
     private final List<BusinessServiceStateChangeHandler> m_handlers = Lists.newArrayList();
     private final ReadWriteLock m_rwLock = new ReentrantReadWriteLock();
     private BusinessServiceGraph m_g = new BusinessServiceGraphImpl(Collections.emptyList());
+    private volatile StatusSnapshot m_snapshot = StatusSnapshot.of(m_g);
+
+    // Alarms waiting to be applied by whichever thread gets the write lock first
+    private final Map<String, Status> m_pendingAlarms = new LinkedHashMap<>();
 
     @Override
     public void setBusinessServices(List<BusinessService> businessServices) {
         m_rwLock.writeLock().lock();
         try {
+            // Apply the alarms that are already queued to the current graph
+            applyPendingAlarms();
+
             // Create a new graph
             BusinessServiceGraph g = new BusinessServiceGraphImpl(businessServices);
 
             // Prime the graph with the state from the previous graph and
             // keep track of the new reductions keys
+            final Map<GraphVertex, Status> updates = new LinkedHashMap<>();
             Set<String> reductionsKeysToLookup = Sets.newHashSet();
             for (String reductionKey : g.getReductionKeys()) {
                 GraphVertex reductionKeyVertex = m_g.getVertexByReductionKey(reductionKey);
                 if (reductionKeyVertex != null) {
-                    updateAndPropagateVertex(g, g.getVertexByReductionKey(reductionKey), reductionKeyVertex.getStatus());
+                    updates.put(g.getVertexByReductionKey(reductionKey), reductionKeyVertex.getStatus());
                 } else {
                     reductionsKeysToLookup.add(reductionKey);
                 }
@@ -121,22 +131,32 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
                 if (reductionsKeysToLookup.size() > 0) {
                     final Map<String, AlarmWrapper> lookup = m_alarmProvider.lookup(reductionsKeysToLookup);
                     for (Entry<String, AlarmWrapper> eachEntry : lookup.entrySet()) {
-                        updateAndPropagateVertex(g, g.getVertexByReductionKey(eachEntry.getKey()), eachEntry.getValue().getStatus());
+                        updates.put(g.getVertexByReductionKey(eachEntry.getKey()), eachEntry.getValue().getStatus());
                     }
                 }
             }
+            propagate(g, updates);
             m_g = g;
+            m_snapshot = StatusSnapshot.of(g);
         } finally {
             m_rwLock.writeLock().unlock();
         }
     }
 
+    /**
+     * Updates are coalesced: the alarm is queued and the first thread to get the write lock
+     * applies all of the queued alarms as a single batch. The alarm is always applied when
+     * this method returns, either by the calling thread or by the one that held the lock.
+     */
     @Override
     public void handleNewOrUpdatedAlarm(AlarmWrapper alarm) {
+        synchronized (m_pendingAlarms) {
+            // Only the latest status of a reduction key matters
+            m_pendingAlarms.put(alarm.getReductionKey(), alarm.getStatus());
+        }
         m_rwLock.writeLock().lock();
         try {
-            // Recursively propagate the status
-            updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
+            applyPendingAlarms();
         } finally {
             m_rwLock.writeLock().unlock();
         }
@@ -147,9 +167,16 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
         final Set<String> reductionKeysFromGivenAlarms = new HashSet<>(alarms.size());
         m_rwLock.writeLock().lock();
         try {
+            // Apply the alarms that were queued before these
+            applyPendingAlarms();
+
+            final Map<GraphVertex, Status> updates = new LinkedHashMap<>();
             for (AlarmWrapper alarm : alarms) {
-                // Recursively propagate the status for all of the given alarms
-                updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
+                // Propagate the status for all of the given alarms in a single batch
+                final GraphVertex vertex = m_g.getVertexByReductionKey(alarm.getReductionKey());
+                if (vertex != null) {
+                    updates.put(vertex, alarm.getStatus());
+                }
                 // Keep track of the reduction keys that have been processed
                 reductionKeysFromGivenAlarms.add(alarm.getReductionKey());
             }
@@ -157,14 +184,70 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
             for (String missingReductionKey : Sets.difference(m_g.getReductionKeys(), reductionKeysFromGivenAlarms)) {
                 // There is a vertex on the graph that corresponds to this reduction key
                 // but no alarm with this reduction key exists
-                updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(missingReductionKey), Status.INDETERMINATE);
+                updates.put(m_g.getVertexByReductionKey(missingReductionKey), Status.INDETERMINATE);
             }
+            publish(propagate(m_g, updates));
         } finally {
             m_rwLock.writeLock().unlock();
         }
     }
 
-    private void updateAndPropagateVertex(BusinessServiceGraph graph, GraphVertex vertex, Status newStatus) {
+    /**
+     * Applies all of the queued alarms to the current graph. Must be called with the write lock held.
+     */
+    private void applyPendingAlarms() {
+        final Map<String, Status> alarms;
+        synchronized (m_pendingAlarms) {
+            if (m_pendingAlarms.isEmpty()) {
+                // Nothing queued, or already applied by another thread
+                return;
+            }
+            alarms = new LinkedHashMap<>(m_pendingAlarms);
+            m_pendingAlarms.clear();
+        }
+
+        final Map<GraphVertex, Status> updates = new LinkedHashMap<>();
+        for (Entry<String, Status> alarm : alarms.entrySet()) {
+            final GraphVertex vertex = m_g.getVertexByReductionKey(alarm.getKey());
+            if (vertex != null) {
+                updates.put(vertex, alarm.getValue());
+            }
+        }
+        publish(propagate(m_g, updates));
+    }
+
+    private void publish(Collection<GraphVertex> updatedVertices) {
+        m_snapshot = m_snapshot.withUpdates(updatedVertices);
+    }
+
+    /**
+     * Updates the status of the given vertices and propagates the changes to their parents.
+     *
+     * The parents whose inputs changed are marked as dirty and are only reduced once all of the
+     * vertices of the levels below them were processed, so every vertex is reduced at most once
+     * per batch, no matter how many of its children changed.
+     *
+     * @return the vertices whose status changed
+     */
+    private Set<GraphVertex> propagate(BusinessServiceGraph graph, Map<GraphVertex, Status> updates) {
+        final Set<GraphVertex> updatedVertices = new HashSet<>();
+        // Children always have a higher level than their parents, so processing
+        // the dirty vertices from the highest level down is a topological order
+        final TreeMap<Integer, Set<GraphVertex>> dirtyVerticesByLevel = new TreeMap<>();
+        for (Entry<GraphVertex, Status> update : updates.entrySet()) {
+            updateVertex(graph, update.getKey(), update.getValue(), dirtyVerticesByLevel, updatedVertices);
+        }
+
+        while (!dirtyVerticesByLevel.isEmpty()) {
+            for (GraphVertex vertex : dirtyVerticesByLevel.pollLastEntry().getValue()) {
+                updateVertex(graph, vertex, reduce(graph, vertex), dirtyVerticesByLevel, updatedVertices);
+            }
+        }
+        return updatedVertices;
+    }
+
+    private void updateVertex(BusinessServiceGraph graph, GraphVertex vertex, Status newStatus,
+                              TreeMap<Integer, Set<GraphVertex>> dirtyVerticesByLevel, Set<GraphVertex> updatedVertices) {
         if (vertex == null) {
             // Nothing to do here
             return;
@@ -180,12 +263,12 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
             return;
         }
         vertex.setStatus(newStatus);
+        updatedVertices.add(vertex);
 
         // Notify the listeners
         onStatusUpdated(graph, vertex, previousStatus);
 
         // Update the edges with the mapped status
-        List<GraphEdge> updatedEges = Lists.newArrayList();
         for (GraphEdge edge : graph.getInEdges(vertex)) {
             Status mappedStatus = newStatus;
             if (newStatus.isGreaterThan(MIN_SEVERITY)) {
@@ -200,38 +283,25 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
                 continue;
             }
 
-            // Update the status and add it to the list of edges to propagate
+            // Update the status and mark the parent as dirty
             edge.setStatus(mappedStatus);
-            updatedEges.add(edge);
-        }
-
-        // Propagate once all of the edges have been updated
-        for (GraphEdge edge : updatedEges) {
-            reduceUpdateAndPropagateVertex(graph, graph.getOpposite(vertex, edge));
+            final GraphVertex parent = graph.getOpposite(vertex, edge);
+            dirtyVerticesByLevel.computeIfAbsent(parent.getLevel(), level -> new LinkedHashSet<>()).add(parent);
         }
     }
 
-    private void reduceUpdateAndPropagateVertex(BusinessServiceGraph graph, GraphVertex vertex) {
-        if (vertex == null) {
-            // Nothing to do here
-            return;
-        }
-
+    private static Status reduce(BusinessServiceGraph graph, GraphVertex vertex) {
         // Calculate the weighed statuses from the child edges
         List<StatusWithIndex> statuses = weighEdges(graph.getOutEdges(vertex));
 
         // Reduce
         Optional<StatusWithIndices> reducedStatus = vertex.getReductionFunction().reduce(statuses);
 
-        Status newStatus;
         if (reducedStatus.isPresent()) {
-            newStatus = reducedStatus.get().getStatus();
+            return reducedStatus.get().getStatus();
         } else {
-            newStatus = MIN_SEVERITY;
+            return MIN_SEVERITY;
         }
-
-        // Update and propagate
-        updateAndPropagateVertex(graph, vertex, newStatus);
     }
 
     public static List<StatusWithIndex> weighEdges(Collection<GraphEdge> edges) {
@@ -296,58 +366,27 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
     @Override
     public Status getOperationalStatus(BusinessService businessService) {
         Objects.requireNonNull(businessService);
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByBusinessServiceId(businessService.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
-        }
+        // Use the snapshot, the graph may be in the middle of an update
+        final StatusSnapshot snapshot = m_snapshot;
+        return snapshot.getStatus(snapshot.getGraph().getVertexByBusinessServiceId(businessService.getId()));
     }
 
     @Override
     public Status getOperationalStatus(IpService ipService) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByIpServiceId(ipService.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
-        }
+        final StatusSnapshot snapshot = m_snapshot;
+        return snapshot.getStatus(snapshot.getGraph().getVertexByIpServiceId(ipService.getId()));
     }
 
     @Override
     public Status getOperationalStatus(String reductionKey) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByReductionKey(reductionKey);
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
-        }
+        final StatusSnapshot snapshot = m_snapshot;
+        return snapshot.getStatus(snapshot.getGraph().getVertexByReductionKey(reductionKey));
     }
 
     @Override
     public Status getOperationalStatus(Edge edge) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByEdgeId(edge.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
-        }
+        final StatusSnapshot snapshot = m_snapshot;
+        return snapshot.getStatus(snapshot.getGraph().getVertexByEdgeId(edge.getId()));
     }
 
     public void setAlarmProvider(AlarmProvider alarmProvider) {
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.bsm.service.internal;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.opennms.netmgt.bsm.service.model.Status;
+import org.opennms.netmgt.bsm.service.model.graph.BusinessServiceGraph;
+import org.opennms.netmgt.bsm.service.model.graph.GraphVertex;
+
+/**
+ * Immutable view of the operational status of all the vertices of a {@link BusinessServiceGraph}.
+ *
+ * The state machine publishes a new snapshot after every batch of updates, so that the status
+ * can be queried without locking while the graph is being updated. Every vertex gets a dense
+ * index when the snapshot is first created for a graph, and the statuses are stored in an array
+ * which is copied, and not rebuilt, when publishing an update.
+ */
+final class StatusSnapshot {
+
+    private final BusinessServiceGraph m_graph;
+    private final Map<GraphVertex, Integer> m_indexes;
+    private final Status[] m_statuses;
+
+    private StatusSnapshot(BusinessServiceGraph graph, Map<GraphVertex, Integer> indexes, Status[] statuses) {
+        m_graph = graph;
+        m_indexes = indexes;
+        m_statuses = statuses;
+    }
+
+    /**
+     * Creates a snapshot with the current status of all the vertices of the graph.
+     */
+    static StatusSnapshot of(BusinessServiceGraph graph) {
+        final Map<GraphVertex, Integer> indexes = new IdentityHashMap<>(graph.getVertexCount());
+        final Status[] statuses = new Status[graph.getVertexCount()];
+        for (GraphVertex vertex : graph.getVertices()) {
+            final int index = indexes.size();
+            indexes.put(vertex, index);
+            statuses[index] = vertex.getStatus();
+        }
+        return new StatusSnapshot(graph, indexes, statuses);
+    }
+
+    /**
+     * Creates a snapshot of the same graph, with the current status of the given vertices.
+     */
+    StatusSnapshot withUpdates(Collection<GraphVertex> updatedVertices) {
+        if (updatedVertices.isEmpty()) {
+            return this;
+        }
+        final Status[] statuses = Arrays.copyOf(m_statuses, m_statuses.length);
+        for (GraphVertex vertex : updatedVertices) {
+            final Integer index = m_indexes.get(vertex);
+            if (index != null) {
+                statuses[index] = vertex.getStatus();
+            }
+        }
+        return new StatusSnapshot(m_graph, m_indexes, statuses);
+    }
+
+    BusinessServiceGraph getGraph() {
+        return m_graph;
+    }
+
+    /**
+     * @return the status of the vertex, or null if the vertex is null or not part of the graph
+     */
+    Status getStatus(GraphVertex vertex) {
+        if (vertex == null) {
+            return null;
+        }
+        final Integer index = m_indexes.get(vertex);
+        return index != null ? m_statuses[index] : null;
+    }
+}
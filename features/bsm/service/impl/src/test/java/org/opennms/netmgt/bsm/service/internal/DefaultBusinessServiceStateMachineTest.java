@@ -37,12 +37,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.opennms.netmgt.bsm.mock.MockAlarmWrapper;
 import org.opennms.netmgt.bsm.mock.MockBusinessServiceHierarchy;
+import org.opennms.netmgt.bsm.mock.MockBusinessServiceHierarchy.HierarchyBuilder.BusinessServiceBuilder;
 import org.opennms.netmgt.bsm.service.AlarmProvider;
 import org.opennms.netmgt.bsm.service.BusinessServiceStateMachine;
 import org.opennms.netmgt.bsm.service.model.AlarmWrapper;
@@ -56,6 +58,7 @@ import org.opennms.netmgt.bsm.service.model.graph.GraphVertex;
 import org.opennms.netmgt.bsm.test.LoggingStateChangeHandler;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 public class DefaultBusinessServiceStateMachineTest {
@@ -156,6 +159,85 @@ public class DefaultBusinessServiceStateMachineTest {
         assertEquals(1, stateChangeHandler.getStateChanges().size());
     }
 
+    @Test
+    public void canReduceEveryVertexOncePerBatch() {
+        MockBusinessServiceHierarchy h = MockBusinessServiceHierarchy.builder()
+                .withBusinessService(1)
+                    .withReductionKey(11, "a3")
+                    .withBusinessService(2)
+                        .withReductionKey(21, "a1")
+                        .withReductionKey(22, "a2")
+                    .commit()
+                .commit()
+                .build();
+        BusinessService b1 = h.getBusinessServiceById(1);
+        BusinessService b2 = h.getBusinessServiceById(2);
+
+        DefaultBusinessServiceStateMachine stateMachine = new DefaultBusinessServiceStateMachine();
+        LoggingStateChangeHandler stateChangeHandler = new LoggingStateChangeHandler();
+        stateMachine.addHandler(stateChangeHandler, Maps.newHashMap());
+        stateMachine.setBusinessServices(h.getBusinessServices());
+
+        // All of the alarms are propagated together
+        stateMachine.handleAllAlarms(Lists.newArrayList(
+                new MockAlarmWrapper("a1", Status.MINOR),
+                new MockAlarmWrapper("a2", Status.CRITICAL),
+                new MockAlarmWrapper("a3", Status.MAJOR)));
+        assertEquals(Status.CRITICAL, stateMachine.getOperationalStatus(b2));
+        assertEquals(Status.CRITICAL, stateMachine.getOperationalStatus(b1));
+        // A single state change for each of the business services
+        assertEquals(2, stateChangeHandler.getStateChanges().size());
+
+        // Alarms that are no longer present are cleared
+        stateMachine.handleAllAlarms(Lists.newArrayList(new MockAlarmWrapper("a3", Status.MAJOR)));
+        assertEquals(Status.NORMAL, stateMachine.getOperationalStatus(b2));
+        assertEquals(Status.MAJOR, stateMachine.getOperationalStatus(b1));
+        assertEquals(4, stateChangeHandler.getStateChanges().size());
+    }
+
+    @Test
+    public void canHandleAlarmsConcurrently() throws InterruptedException {
+        final int numReductionKeys = 200;
+        BusinessServiceBuilder builder = MockBusinessServiceHierarchy.builder()
+                .withBusinessService(1);
+        for (int i = 0; i < numReductionKeys; i++) {
+            builder.withReductionKey(i, "a" + i);
+        }
+        MockBusinessServiceHierarchy h = builder.commit().build();
+        BusinessService b1 = h.getBusinessServiceById(1);
+
+        DefaultBusinessServiceStateMachine stateMachine = new DefaultBusinessServiceStateMachine();
+        stateMachine.setBusinessServices(h.getBusinessServices());
+
+        // Every thread raises its own alarms
+        final int numThreads = 4;
+        final AtomicInteger numAlarmsNotApplied = new AtomicInteger();
+        final List<Thread> threads = Lists.newArrayList();
+        for (int t = 0; t < numThreads; t++) {
+            final int offset = t;
+            threads.add(new Thread(() -> {
+                for (int i = offset; i < numReductionKeys; i += numThreads) {
+                    stateMachine.handleNewOrUpdatedAlarm(new MockAlarmWrapper("a" + i, i == 42 ? Status.CRITICAL : Status.MINOR));
+                    // The alarm is applied by the time the call returns
+                    if (!stateMachine.getOperationalStatus("a" + i).isGreaterThan(Status.NORMAL)) {
+                        numAlarmsNotApplied.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, numAlarmsNotApplied.get());
+        assertEquals(Status.CRITICAL, stateMachine.getOperationalStatus(b1));
+        assertEquals(Status.MINOR, stateMachine.getOperationalStatus("a0"));
+        assertEquals(Status.CRITICAL, stateMachine.getOperationalStatus("a42"));
+    }
+
     @Test
     public void canPerformRootCauseAndImpactAnalysis() {
         // Create a hierarchy using all of the available reduction functions
@@ -37,6 +37,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -49,6 +51,7 @@ import org.opennms.netmgt.icmp.proxy.PingSweepRequestBuilder;
 import org.opennms.netmgt.icmp.proxy.PingSweepSummary;
 import org.opennms.netmgt.model.discovery.IPPollRange;
 import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Log;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,6 +61,11 @@ public class DiscoveryTaskExecutorImpl implements DiscoveryTaskExecutor {
     
     private static final Logger LOG = LoggerFactory.getLogger(DiscoveryTaskExecutorImpl.class);
 
+    /**
+     * Maximum number of newSuspect events sent in a single event log.
+     */
+    private static final int EVENT_BATCH_SIZE = Integer.getInteger("org.opennms.netmgt.discovery.eventBatchSize", 100);
+
     @Autowired
     private RangeChunker rangeChunker;
 
@@ -67,8 +75,18 @@ public class DiscoveryTaskExecutorImpl implements DiscoveryTaskExecutor {
     @Autowired
     private EventForwarder eventForwarder;
 
+    @Autowired(required=false)
+    private IpAddressFilter ipAddressFilter;
+
     private final AtomicInteger taskIdTracker = new AtomicInteger();
 
+    /**
+     * The last task that was started at every location, used to run the jobs of
+     * concurrent tasks at the same location one after the other so that the
+     * packet rate configured for the location is not multiplied.
+     */
+    private final ConcurrentMap<String, CompletableFuture<Void>> lastTaskByLocation = new ConcurrentHashMap<>();
+
     @Override
     public CompletableFuture<Void> handleDiscoveryTask(DiscoveryConfiguration config) {
         // Use the range chunker to generate a series of jobs, keyed by location
@@ -85,7 +103,8 @@ public class DiscoveryTaskExecutorImpl implements DiscoveryTaskExecutor {
 
         // Asynchronously run the jobs at each location:
         //   Each location will be processed in parallel
-        //   The jobs at each location will be processed in series
+        //   The jobs at each location will be processed in series, after the jobs of
+        //   the previous tasks at the same location
         final List<CompletableFuture<Void>> futures = new ArrayList<>(jobsByLocation.keySet().size());
 
         // Set the logging context so that our messages always appear in the same log file, even
@@ -103,15 +122,30 @@ public class DiscoveryTaskExecutorImpl implements DiscoveryTaskExecutor {
     }
 
     private CompletableFuture<Void> triggerJobsAsync(String location, List<DiscoveryJob> jobs, int taskId) {
-        LOG.debug("Processing {} jobs at location {} (on task #{}).", jobs.size(), location, taskId);
-
         // Track the jobs
         final Queue<DiscoveryJob> queue = new LinkedList<>(jobs);
         final AtomicInteger jobIndexTracker = new AtomicInteger();
         final CompletableFuture<Void> future = new CompletableFuture<>();
 
+        final CompletableFuture<Void> previousTask = lastTaskByLocation.put(location, future);
+        future.whenComplete((v, ex) -> lastTaskByLocation.remove(location, future));
+
         // Trigger the first job, which will automatically trigger the next job when complete
-        triggerNextJobAsync(location, queue, jobIndexTracker, jobs.size(), taskId, future);
+        if (previousTask == null) {
+            LOG.debug("Processing {} jobs at location {} (on task #{}).", jobs.size(), location, taskId);
+            triggerNextJobAsync(location, queue, jobIndexTracker, jobs.size(), taskId, future);
+        } else {
+            LOG.debug("Queuing {} jobs at location {} (on task #{}) until the previous task at this location completes.", jobs.size(), location, taskId);
+            previousTask.whenComplete((v, ex) -> {
+                Logging.withPrefix(Discovery.getLoggingCategory(), new Runnable() {
+                    @Override
+                    public void run() {
+                        LOG.debug("Processing {} jobs at location {} (on task #{}).", jobs.size(), location, taskId);
+                        triggerNextJobAsync(location, queue, jobIndexTracker, jobs.size(), taskId, future);
+                    }
+                });
+            });
+        }
 
         return future;
     }
@@ -147,13 +181,8 @@ public class DiscoveryTaskExecutorImpl implements DiscoveryTaskExecutor {
                     if (summary != null) {
                         LOG.debug("Job {} of {} at location {} (on task #{}) completed succesfully.",
                                 jobIndex, totalNumberOfJobs, location, taskId);
-                        // Generate an event log containing a newSuspect event for every host
-                        // that responded to our pings
-                        final Log eventLog = toNewSuspectEvents(job, summary);
-                        // Avoid forwarding an empty log
-                        if (eventLog.getEvents() != null && eventLog.getEvents().getEventCount() >= 1) {
-                            eventForwarder.sendNow(toNewSuspectEvents(job, summary));
-                        }
+                        // Send a newSuspect event for every host that responded to our pings
+                        sendNewSuspectEvents(job, summary);
                     } else {
                         LOG.error("An error occurred while processing job {} of {} at location {} (on task #{})."
                                 + " No newSuspect events will be generated.", jobIndex, totalNumberOfJobs, location, taskId, ex);
@@ -166,21 +195,45 @@ public class DiscoveryTaskExecutorImpl implements DiscoveryTaskExecutor {
         });
     }
 
-    protected static Log toNewSuspectEvents(DiscoveryJob job, PingSweepSummary summary) {
-        final Log eventLog = new Log();
+    private void sendNewSuspectEvents(DiscoveryJob job, PingSweepSummary summary) {
+        Log eventLog = new Log();
+        int numberOfEvents = 0;
+        int numberOfManagedResponses = 0;
         for (Entry<InetAddress, Double> entry : summary.getResponses().entrySet()) {
-            EventBuilder eb = new EventBuilder(EventConstants.NEW_SUSPECT_INTERFACE_EVENT_UEI, Discovery.DAEMON_NAME);
-            eb.setInterface(entry.getKey());
-            eb.addParam("RTT", entry.getValue());
-            if (job.getForeignSource() != null) {
-                eb.addParam(EventConstants.PARM_FOREIGN_SOURCE, job.getForeignSource());
+            // The address may have been provisioned since the job was created, in which
+            // case Provisiond would discard the event anyway
+            if (ipAddressFilter != null && !ipAddressFilter.matches(job.getLocation(), entry.getKey())) {
+                numberOfManagedResponses++;
+                continue;
             }
-            if (job.getLocation() != null) {
-                eb.addParam(EventConstants.PARM_LOCATION, job.getLocation());
+            eventLog.addEvent(toNewSuspectEvent(job, entry.getKey(), entry.getValue()));
+            if (++numberOfEvents >= EVENT_BATCH_SIZE) {
+                eventForwarder.sendNow(eventLog);
+                eventLog = new Log();
+                numberOfEvents = 0;
             }
-            eventLog.addEvent(eb.getEvent());
         }
-        return eventLog;
+        // Avoid forwarding an empty log
+        if (numberOfEvents > 0) {
+            eventForwarder.sendNow(eventLog);
+        }
+        if (numberOfManagedResponses > 0) {
+            LOG.debug("Skipped the newSuspect events of {} responding addresses that are already managed at location {}.",
+                    numberOfManagedResponses, job.getLocation());
+        }
+    }
+
+    protected static Event toNewSuspectEvent(DiscoveryJob job, InetAddress address, double rtt) {
+        EventBuilder eb = new EventBuilder(EventConstants.NEW_SUSPECT_INTERFACE_EVENT_UEI, Discovery.DAEMON_NAME);
+        eb.setInterface(address);
+        eb.addParam("RTT", rtt);
+        if (job.getForeignSource() != null) {
+            eb.addParam(EventConstants.PARM_FOREIGN_SOURCE, job.getForeignSource());
+        }
+        if (job.getLocation() != null) {
+            eb.addParam(EventConstants.PARM_LOCATION, job.getLocation());
+        }
+        return eb.getEvent();
     }
 
     public void setRangeChunker(RangeChunker rangeChunker) {
@@ -194,4 +247,8 @@ public class DiscoveryTaskExecutorImpl implements DiscoveryTaskExecutor {
     public void setEventForwarder(EventForwarder eventForwarder) {
         this.eventForwarder = eventForwarder;
     }
+
+    public void setIpAddressFilter(IpAddressFilter ipAddressFilter) {
+        this.ipAddressFilter = ipAddressFilter;
+    }
 }
@@ -35,4 +35,14 @@ public interface IpAddressFilter {
 	boolean matches(String location, InetAddress address);
 
 	boolean matches(String location, String address);
+
+	/**
+	 * Returns a filter that can be used to match a large number of addresses
+	 * in a row, i.e. all of the addresses of a discovery task. The snapshot may
+	 * not reflect the changes made after it was taken, and is meant to be
+	 * used by a single thread.
+	 */
+	default IpAddressFilter snapshot() {
+		return this;
+	}
 }
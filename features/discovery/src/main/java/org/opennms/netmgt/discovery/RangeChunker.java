@@ -28,24 +28,19 @@
 
 package org.opennms.netmgt.discovery;
 
-import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import org.opennms.core.network.IPAddress;
 import org.opennms.netmgt.config.DiscoveryConfigFactory;
 import org.opennms.netmgt.config.discovery.DiscoveryConfiguration;
 import org.opennms.netmgt.dao.api.MonitoringLocationDao;
+import org.opennms.netmgt.model.discovery.IPPollAddress;
 import org.opennms.netmgt.model.discovery.IPPollRange;
 
-import com.google.common.base.Preconditions;
-import com.google.common.collect.Lists;
-
 /**
  * <p>This class generates a list of {@link DiscoveryJob} instances that
  * are based on a "chunk" of a number of IP addresses that should be
@@ -89,81 +84,95 @@ public class RangeChunker {
 
         final DiscoveryConfigFactory configFactory = new DiscoveryConfigFactory(config);
 
-        final AtomicReference<IPPollRange> previousRange = new AtomicReference<>();
-
-        return StreamSupport.stream(configFactory.getConfiguredAddresses().spliterator(), false)
-            .filter(address -> {
-                // If there is no IP address filter set or the filter matches
-                return ipAddressFilter.matches(address.getLocation(), address.getAddress());
-            })
-            // TODO: We could optimize this further by not unrolling IPPollRanges into individual
-            // IPPollAddresses during the mapping.
-            .map(address -> {
-                // Create a singleton IPPollRange
-                return new IPPollRange(
-                    // Make sure that foreignSource is not null so that we can partition on the value
-                    address.getForeignSource() == null ? foreignSourceFromConfig : address.getForeignSource(),
-                    // Make sure that location is not null so that we can partition on the value
-                    address.getLocation() == null ? locationFromConfig : address.getLocation(),
+        // Take a snapshot of the filter so that the managed addresses are not
+        // looked up one by one while going through large ranges
+        final IpAddressFilter filter = ipAddressFilter.snapshot();
+
+        // The configured addresses are iterated lazily and coalesced into the ranges
+        // of the jobs as they come, so that only the ranges are kept in memory and not
+        // one object for every address
+        final Map<ForeignSourceLocationKey, JobBuilder> buildersByKey = new LinkedHashMap<>();
+        for (final IPPollAddress address : configFactory.getConfiguredAddresses()) {
+            if (!filter.matches(address.getLocation(), address.getAddress())) {
+                continue;
+            }
+            final ForeignSourceLocationKey key = new ForeignSourceLocationKey(
+                // Make sure that foreignSource is not null so that we can partition on the value
+                address.getForeignSource() == null ? foreignSourceFromConfig : address.getForeignSource(),
+                // Make sure that location is not null so that we can partition on the value
+                address.getLocation() == null ? locationFromConfig : address.getLocation()
+            );
+            buildersByKey.computeIfAbsent(key, k -> new JobBuilder(k, chunkSize, packetsPerSecond)).add(address);
+        }
+
+        final Map<String, List<DiscoveryJob>> jobsByLocation = new LinkedHashMap<>();
+        for (final JobBuilder builder : buildersByKey.values()) {
+            jobsByLocation.computeIfAbsent(builder.getLocation(), l -> new ArrayList<>()).addAll(builder.build());
+        }
+        return jobsByLocation;
+    }
+
+    /**
+     * Groups the addresses of a foreign source and location into jobs of at most
+     * chunkSize addresses. Addresses that follow the last range of the current job
+     * and share its timeout and retries extend that range.
+     */
+    private static class JobBuilder {
+        private final ForeignSourceLocationKey m_key;
+        private final int m_chunkSize;
+        private final double m_packetsPerSecond;
+        private final List<DiscoveryJob> m_jobs = new ArrayList<>();
+        private List<IPPollRange> m_ranges = new ArrayList<>();
+        private IPPollRange m_lastRange;
+        private int m_numberOfAddresses = 0;
+
+        public JobBuilder(ForeignSourceLocationKey key, int chunkSize, double packetsPerSecond) {
+            m_key = key;
+            m_chunkSize = chunkSize;
+            m_packetsPerSecond = packetsPerSecond;
+        }
+
+        public String getLocation() {
+            return m_key.getLocation();
+        }
+
+        public void add(IPPollAddress address) {
+            if (isConsecutive(m_lastRange, address)) {
+                m_lastRange.getAddressRange().incrementEnd();
+            } else {
+                m_lastRange = new IPPollRange(
+                    m_key.getForeignSource(),
+                    m_key.getLocation(),
                     address.getAddress(),
                     address.getAddress(),
                     address.getTimeout(),
                     address.getRetries()
                 );
-            })
-            .collect(Collectors.groupingBy(range -> {
-                // Create a Map<ForeignSourceLocationKey,List<IPPollRange>>
-                return new ForeignSourceLocationKey(
-                    // Make sure that foreignSource is not null so that we can partition on the value
-                    range.getForeignSource() == null ? foreignSourceFromConfig : range.getForeignSource(),
-                    // Make sure that location is not null so that we can partition on the value
-                    range.getLocation() == null ? locationFromConfig : range.getLocation()
-                );
-            }, LinkedHashMap::new, Collectors.toList()))
-            .entrySet().stream()
-            // Flat map one list of IPPollRanges to many chunked DiscoveryJobs
-            .flatMap(entry -> {
-                // Partition the list of address values
-                return Lists.partition(entry.getValue(), chunkSize).stream()
-                    // Map each partition value to a separate DiscoveryJob
-                    .map(ranges -> {
-                        DiscoveryJob retval = new DiscoveryJob(
-                            ranges.stream()
-                                .map(address -> {
-                                    // If this address is consecutive with the previous range,
-                                    // then just extend the range to cover this address too
-                                    if (isConsecutive(previousRange.get(), address)) {
-                                        previousRange.get().getAddressRange().incrementEnd();
-                                        return null;
-                                    }
-                                    previousRange.set(address);
-                                    return address;
-                                })
-                                // Filter out all of the consecutive values that we nulled out
-                                .filter(Objects::nonNull)
-                                // Convert back into a list of ranges
-                                .collect(Collectors.toList()),
-                            entry.getKey().getForeignSource(),
-                            entry.getKey().getLocation(),
-                            packetsPerSecond
-                        );
-                        // Reset the previousRange value
-                        previousRange.set(null);
-                        return retval;
-                    })
-                    // Collect the DiscoveryJobs
-                    .collect(Collectors.toList()).stream();
-            })
-            .collect(Collectors.groupingBy(DiscoveryJob::getLocation,
-                    LinkedHashMap::new, Collectors.toList()));
+                m_ranges.add(m_lastRange);
+            }
+            if (++m_numberOfAddresses >= m_chunkSize) {
+                flush();
+            }
+        }
+
+        public List<DiscoveryJob> build() {
+            flush();
+            return m_jobs;
+        }
+
+        private void flush() {
+            if (!m_ranges.isEmpty()) {
+                m_jobs.add(new DiscoveryJob(m_ranges, m_key.getForeignSource(), m_key.getLocation(), m_packetsPerSecond));
+            }
+            m_ranges = new ArrayList<>();
+            m_lastRange = null;
+            m_numberOfAddresses = 0;
+        }
     }
 
-    protected static boolean isConsecutive(IPPollRange range, IPPollRange address) {
-        Preconditions.checkState(BigInteger.ONE.equals(address.getAddressRange().size()));
-        return range != null && 
-            new IPAddress(range.getAddressRange().getEnd()).isPredecessorOf(new IPAddress(address.getAddressRange().getEnd())) &&
-            Objects.equals(range.getForeignSource(), address.getForeignSource()) &&
-            Objects.equals(range.getLocation(), address.getLocation()) &&
+    protected static boolean isConsecutive(IPPollRange range, IPPollAddress address) {
+        return range != null &&
+            new IPAddress(range.getAddressRange().getEnd()).isPredecessorOf(new IPAddress(address.getAddress())) &&
             range.getRetries() == address.getRetries() &&
             range.getTimeout() == address.getTimeout();
     }
@@ -29,9 +29,12 @@
 package org.opennms.netmgt.discovery;
 
 import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 
 import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.LocationUtils;
 import org.opennms.netmgt.dao.api.InterfaceToNodeCache;
 
 import com.google.common.collect.Iterables;
@@ -57,4 +60,37 @@ public class UnmanagedInterfaceFilter implements IpAddressFilter {
     public boolean matches(String location, String address) {
         return matches(location, InetAddressUtils.addr(address));
     }
+
+    /**
+     * Copies the managed addresses of every location that is queried into a
+     * {@link CompactAddressSet}, so that the addresses of large ranges can be
+     * matched without going through the cache and its lock for every one of them.
+     */
+    @Override
+    public IpAddressFilter snapshot() {
+        return new Snapshot(interfaceToNodeCache);
+    }
+
+    private static class Snapshot implements IpAddressFilter {
+        private final InterfaceToNodeCache interfaceToNodeCache;
+        private final Map<String, CompactAddressSet> managedAddressesByLocation = new HashMap<>();
+
+        private Snapshot(InterfaceToNodeCache interfaceToNodeCache) {
+            this.interfaceToNodeCache = interfaceToNodeCache;
+        }
+
+        @Override
+        public boolean matches(String location, InetAddress address) {
+            return !managedAddressesByLocation.computeIfAbsent(LocationUtils.getEffectiveLocationName(location), l -> {
+                final CompactAddressSet.Builder builder = CompactAddressSet.builder();
+                interfaceToNodeCache.forEachAddress(l, builder::add);
+                return builder.build();
+            }).contains(address);
+        }
+
+        @Override
+        public boolean matches(String location, String address) {
+            return matches(location, InetAddressUtils.addr(address));
+        }
+    }
 }
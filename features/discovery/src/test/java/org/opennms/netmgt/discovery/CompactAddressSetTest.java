@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+
+public class CompactAddressSetTest {
+
+    @Test
+    public void testContains() {
+        CompactAddressSet.Builder builder = CompactAddressSet.builder();
+        builder.add(InetAddressUtils.addr("10.0.0.1"));
+        builder.add(InetAddressUtils.addr("192.168.1.1"));
+        builder.add(InetAddressUtils.addr("255.255.255.255"));
+        builder.add(InetAddressUtils.addr("10.0.0.1"));
+        builder.add(InetAddressUtils.addr("fe80::1"));
+        CompactAddressSet set = builder.build();
+
+        assertEquals(4, set.size());
+        assertTrue(set.contains(InetAddressUtils.addr("10.0.0.1")));
+        assertTrue(set.contains(InetAddressUtils.addr("192.168.1.1")));
+        assertTrue(set.contains(InetAddressUtils.addr("255.255.255.255")));
+        assertTrue(set.contains(InetAddressUtils.addr("fe80::1")));
+        assertFalse(set.contains(InetAddressUtils.addr("10.0.0.2")));
+        assertFalse(set.contains(InetAddressUtils.addr("0.0.0.0")));
+        assertFalse(set.contains(InetAddressUtils.addr("fe80::2")));
+        assertFalse(CompactAddressSet.EMPTY.contains(InetAddressUtils.addr("10.0.0.1")));
+    }
+
+    @Test
+    public void testManyAddresses() {
+        CompactAddressSet.Builder builder = CompactAddressSet.builder();
+        for (int i = 0; i < 100000; i += 2) {
+            builder.add(InetAddressUtils.getInetAddress(new byte[] { 10, (byte)(i >> 16), (byte)(i >> 8), (byte)i }));
+        }
+        CompactAddressSet set = builder.build();
+
+        assertEquals(50000, set.size());
+        for (int i = 0; i < 100000; i++) {
+            assertEquals(i % 2 == 0, set.contains(InetAddressUtils.getInetAddress(new byte[] { 10, (byte)(i >> 16), (byte)(i >> 8), (byte)i })));
+        }
+    }
+}
@@ -35,16 +35,19 @@ import java.net.InetAddress;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.IntStream;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.opennms.core.network.IPAddress;
+import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.discovery.DiscoveryConfiguration;
 import org.opennms.netmgt.config.discovery.ExcludeRange;
 import org.opennms.netmgt.config.discovery.IncludeRange;
 import org.opennms.netmgt.config.discovery.IncludeUrl;
 import org.opennms.netmgt.config.discovery.Specific;
+import org.opennms.netmgt.dao.api.InterfaceToNodeCache;
 import org.opennms.netmgt.model.discovery.IPPollRange;
 
 public class RangeChunkerTest {
@@ -55,6 +58,7 @@ public class RangeChunkerTest {
     public void setUp() {
         ipAddressFilter = mock(IpAddressFilter.class);
         when(ipAddressFilter.matches(any(), any(InetAddress.class))).thenReturn(true);
+        when(ipAddressFilter.snapshot()).thenReturn(ipAddressFilter);
     }
 
 	@Test
@@ -224,6 +228,40 @@ public class RangeChunkerTest {
 		assertEquals(5, jobs.get("123").get(0).getRanges().size());
 	}
 
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testManagedAddressesAreSkipped() {
+		InterfaceToNodeCache cache = mock(InterfaceToNodeCache.class);
+		doAnswer(invocation -> {
+			Consumer<InetAddress> consumer = (Consumer<InetAddress>)invocation.getArguments()[1];
+			consumer.accept(InetAddressUtils.addr("10.0.0.3"));
+			consumer.accept(InetAddressUtils.addr("10.0.0.7"));
+			return null;
+		}).when(cache).forEachAddress(eq("123"), any());
+
+		DiscoveryConfiguration config = new DiscoveryConfiguration();
+		IncludeRange range = new IncludeRange();
+		range.setBegin("10.0.0.0");
+		range.setEnd("10.0.0.9");
+		range.setLocation("123");
+		config.addIncludeRange(range);
+
+		Map<String, List<DiscoveryJob>> jobs = new RangeChunker(new UnmanagedInterfaceFilter(cache)).chunk(config);
+		printJobs(jobs);
+
+		// The ranges are split around the managed addresses
+		assertEquals(1, jobs.get("123").size());
+		List<IPPollRange> ranges = jobs.get("123").get(0).getRanges();
+		assertEquals(3, ranges.size());
+		assertEquals("10.0.0.4", new IPAddress(ranges.get(1).getAddressRange().getBegin()).toString());
+		assertEquals("10.0.0.6", new IPAddress(ranges.get(1).getAddressRange().getEnd()).toString());
+		assertEquals("10.0.0.9", new IPAddress(ranges.get(2).getAddressRange().getEnd()).toString());
+
+		// The managed addresses are loaded once instead of being looked up one by one
+		verify(cache, times(1)).forEachAddress(eq("123"), any());
+		verify(cache, never()).getNodeId(any(), any());
+	}
+
 	private static void printJobs(Map<String, List<DiscoveryJob>> jobs) {
 	    jobs.entrySet().stream()
 	        .forEach(j -> {
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An Aho-Corasick automaton that finds all the occurrences of a set of
+ * keywords in a single pass over the text.
+ *
+ * The transitions of every state are kept in sorted arrays, the transitions
+ * of the root state for ASCII characters in a table since most characters of
+ * a text lead back to the root.
+ */
+final class AhoCorasick {
+
+    private static final int ROOT = 0;
+
+    private static final int NONE = -1;
+
+    private static final int ASCII = 128;
+
+    private final int m_size;
+
+    private final char[][] m_keys;
+
+    private final int[][] m_next;
+
+    private final int[] m_rootNext = new int[ASCII];
+
+    private final int[] m_fail;
+
+    /**
+     * Closest state on the failure chain, excluding the state itself, that
+     * ends a keyword.
+     */
+    private final int[] m_outputLink;
+
+    private final int[][] m_outputs;
+
+    /**
+     * @param keywords the keywords, the index of a keyword in the list is the
+     * bit set by {@link #findAll(CharSequence, BitSet)}. Empty keywords are
+     * never found.
+     */
+    public AhoCorasick(List<String> keywords) {
+        m_size = keywords.size();
+
+        // build the trie
+        final List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        final List<List<Integer>> outputs = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        outputs.add(new ArrayList<>());
+        for (int k = 0; k < keywords.size(); k++) {
+            final String keyword = keywords.get(k);
+            if (keyword.isEmpty()) {
+                continue;
+            }
+            int state = ROOT;
+            for (int i = 0; i < keyword.length(); i++) {
+                Integer next = trie.get(state).get(keyword.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    outputs.add(new ArrayList<>());
+                    trie.get(state).put(keyword.charAt(i), next);
+                }
+                state = next;
+            }
+            outputs.get(state).add(k);
+        }
+
+        final int states = trie.size();
+        m_keys = new char[states][];
+        m_next = new int[states][];
+        m_outputs = new int[states][];
+        for (int s = 0; s < states; s++) {
+            final TreeMap<Character, Integer> transitions = trie.get(s);
+            m_keys[s] = new char[transitions.size()];
+            m_next[s] = new int[transitions.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> transition : transitions.entrySet()) {
+                m_keys[s][i] = transition.getKey();
+                m_next[s][i] = transition.getValue();
+                i++;
+            }
+            m_outputs[s] = outputs.get(s).stream().mapToInt(Integer::intValue).toArray();
+        }
+        Arrays.fill(m_rootNext, ROOT);
+        for (int i = 0; i < m_keys[ROOT].length && m_keys[ROOT][i] < ASCII; i++) {
+            m_rootNext[m_keys[ROOT][i]] = m_next[ROOT][i];
+        }
+
+        // compute the failure and output links breadth first
+        m_fail = new int[states];
+        m_outputLink = new int[states];
+        m_outputLink[ROOT] = NONE;
+        final Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : m_next[ROOT]) {
+            m_fail[child] = ROOT;
+            m_outputLink[child] = NONE;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.poll();
+            for (int i = 0; i < m_keys[state].length; i++) {
+                final char c = m_keys[state][i];
+                final int child = m_next[state][i];
+                int fail = m_fail[state];
+                int next;
+                while ((next = transition(fail, c)) == NONE && fail != ROOT) {
+                    fail = m_fail[fail];
+                }
+                m_fail[child] = next == NONE ? ROOT : next;
+                m_outputLink[child] = m_outputs[m_fail[child]].length > 0 ? m_fail[child] : m_outputLink[m_fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of keywords.
+     */
+    public int size() {
+        return m_size;
+    }
+
+    /**
+     * Sets the bit of every keyword found in the text.
+     */
+    public void findAll(CharSequence text, BitSet found) {
+        int state = ROOT;
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            int next;
+            while ((next = transition(state, c)) == NONE && state != ROOT) {
+                state = m_fail[state];
+            }
+            state = next == NONE ? ROOT : next;
+            for (int s = m_outputs[state].length > 0 ? state : m_outputLink[state]; s != NONE; s = m_outputLink[s]) {
+                for (int keyword : m_outputs[s]) {
+                    found.set(keyword);
+                }
+            }
+        }
+    }
+
+    private int transition(int state, char c) {
+        if (state == ROOT && c < ASCII) {
+            final int next = m_rootNext[c];
+            return next == ROOT ? NONE : next;
+        }
+        final int i = Arrays.binarySearch(m_keys[state], c);
+        return i < 0 ? NONE : m_next[state][i];
+    }
+}
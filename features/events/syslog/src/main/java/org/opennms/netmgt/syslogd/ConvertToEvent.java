@@ -33,7 +33,7 @@ import static org.opennms.core.utils.InetAddressUtils.str;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.Collections;
+import java.util.BitSet;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -267,8 +267,16 @@ public class ConvertToEvent {
 
         EventBuilder bldr = toEventBuilder(message, systemId, location);
 
-        final List<UeiMatch> ueiMatch = (config.getUeiList() == null ? Collections.emptyList() : config.getUeiList());
-        for (final UeiMatch uei : ueiMatch) {
+        final SyslogMatchers matchers = SyslogMatchers.forConfig(config);
+        final MatchSet<UeiMatch> ueiMatches = matchers.getUeiMatches();
+        final String messageText = message.getMessage();
+        final BitSet found = ueiMatches.scan(messageText);
+        for (int i = 0; i < ueiMatches.size(); i++) {
+            // skip the entries whose substring or regex literal is not in the message
+            if (!ueiMatches.mayMatch(i, found)) {
+                continue;
+            }
+            final UeiMatch uei = ueiMatches.get(i);
             final boolean messageMatchesUeiListEntry = containsIgnoreCase(uei.getFacilities(), facilityTxt) &&
                                               containsIgnoreCase(uei.getSeverities(), priorityTxt) &&
                                               matchProcess(uei.getProcessMatch().orElse(null), message.getProcessName()) &&
@@ -276,46 +284,23 @@ public class ConvertToEvent {
                                               matchHostAddr(uei.getHostaddrMatch().orElse(null), str(message.getHostAddress()));
 
             if (messageMatchesUeiListEntry) {
-                if (uei.getMatch().getType().equals("substr")) {
-                    if (matchSubstring(message.getMessage(), uei, bldr, config.getDiscardUei())) {
-                        break;
-                    }
-                } else if ((uei.getMatch().getType().startsWith("regex"))) {
-                    if (matchRegex(message.getMessage(), uei, bldr, config.getDiscardUei())) {
+                final Pattern pattern = ueiMatches.getPattern(i);
+                if (pattern == null) {
+                    if (matchSubstring(uei, bldr, config.getDiscardUei())) {
                         break;
                     }
+                } else if (matchRegex(messageText, uei, pattern, bldr, config.getDiscardUei())) {
+                    break;
                 }
             }
         }
 
         // Time to verify if we need to hide the message
-        final List<HideMatch> hideMatch = (config.getHideMessages() == null ? Collections.emptyList() : config.getHideMessages());
+        final MatchSet<HideMatch> hideMatches = matchers.getHideMatches();
         boolean doHide = false;
-        if (hideMatch.size() > 0) {
+        if (hideMatches.size() > 0) {
             // Match this regex against the full string of the message
-            final String fullText = message.asRfc3164Message();
-
-            for (final HideMatch hide : hideMatch) {
-                if (hide.getMatch().getType().equals("substr")) {
-                    if (fullText.contains(hide.getMatch().getExpression())) {
-                        // We should hide the message based on this match
-                        doHide = true;
-                        break;
-                    }
-                } else if (hide.getMatch().getType().equals("regex")) {
-                    try {
-                        Pattern msgPat = getPattern(hide.getMatch().getExpression());
-                        Matcher msgMat = msgPat.matcher(fullText);
-                        if (msgMat.find()) {
-                            // We should hide the message based on this match
-                            doHide = true;
-                            break;
-                        }
-                    } catch (PatternSyntaxException pse) {
-                        LOG.warn("Failed to compile hide-match regex pattern '{}'", hide.getMatch().getExpression(), pse);
-                    }
-                }
-            }
+            doHide = hideMatches.indexOf(message.asRfc3164Message()) >= 0;
         }
 
         if (doHide) {
@@ -373,32 +358,26 @@ public class ConvertToEvent {
     }
 
     /**
-     * Checks the message for substring matches to a {@link UeiMatch}. If the message
-     * matches, then the UEI is updated (or the event is discarded if the discard
-     * UEI is used). Parameter assignments are NOT performed for substring matches.
+     * Updates the UEI of a message that matches a substring {@link UeiMatch}
+     * (or discards the event if the discard UEI is used). Parameter
+     * assignments are NOT performed for substring matches.
      * 
-     * @param message
      * @param uei
      * @param bldr
      * @param discardUei
      * @return
      * @throws MessageDiscardedException
      */
-    private static boolean matchSubstring(String message, final UeiMatch uei, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
+    private static boolean matchSubstring(final UeiMatch uei, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
         final boolean traceEnabled = LOG.isTraceEnabled();
-        if (message.contains(uei.getMatch().getExpression())) {
-            if (discardUei.equals(uei.getUei())) {
-                if (traceEnabled) LOG.trace("Specified UEI '{}' is same as discard-uei, discarding this message.", uei.getUei());
-                throw new MessageDiscardedException();
-            } else {
-                // Update the UEI to the new value
-                if (traceEnabled) LOG.trace("Changed the UEI of a Syslogd event, based on substring match, to : {}", uei.getUei());
-                bldr.setUei(uei.getUei());
-                return true;
-            }
+        if (discardUei.equals(uei.getUei())) {
+            if (traceEnabled) LOG.trace("Specified UEI '{}' is same as discard-uei, discarding this message.", uei.getUei());
+            throw new MessageDiscardedException();
         } else {
-            if (traceEnabled) LOG.trace("No substring match for text of a Syslogd event to : {}", uei.getMatch().getExpression());
-            return false;
+            // Update the UEI to the new value
+            if (traceEnabled) LOG.trace("Changed the UEI of a Syslogd event, based on substring match, to : {}", uei.getUei());
+            bldr.setUei(uei.getUei());
+            return true;
         }
     }
 
@@ -409,19 +388,15 @@ public class ConvertToEvent {
      * 
      * @param message
      * @param uei
+     * @param msgPat the compiled expression of the match
      * @param bldr
      * @param discardUei
      * @return
      * @throws MessageDiscardedException
      */
-    private static boolean matchRegex(final String message, final UeiMatch uei, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
+    private static boolean matchRegex(final String message, final UeiMatch uei, final Pattern msgPat, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
         final boolean traceEnabled = LOG.isTraceEnabled();
         final String expression = uei.getMatch().getExpression();
-        final Pattern msgPat = getPattern(expression);
-        if (msgPat == null) {
-            LOG.debug("Unable to create pattern for expression '{}'", expression);
-            return false;
-        } 
 
         final Matcher msgMat = msgPat.matcher(message);
 
@@ -0,0 +1,401 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.syslogd.Match;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The message matches of a list of {@link org.opennms.netmgt.config.syslogd.UeiMatch}
+ * or {@link org.opennms.netmgt.config.syslogd.HideMatch} compiled for matching
+ * many entries against the same text.
+ *
+ * The substrings of the substring matches and the literals that every match
+ * of a regular expression must contain are searched at once with an
+ * {@link AhoCorasick} automaton. Only the entries whose literals were all
+ * found, and the regular expressions without such literals, have to be
+ * evaluated, in the configured order.
+ *
+ * @param <T> the type of the entries
+ */
+final class MatchSet<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MatchSet.class);
+
+    /**
+     * Shorter literals are found in most messages and aren't worth indexing.
+     */
+    private static final int MIN_LITERAL_LENGTH = 2;
+
+    private final List<T> m_entries;
+
+    private final Function<T, Match> m_match;
+
+    private final String[] m_types;
+
+    private final String[] m_expressions;
+
+    private final Pattern[] m_patterns;
+
+    private static final int[] ALWAYS = new int[0];
+
+    /**
+     * The indexes in the automaton of the literals of every entry, empty for
+     * the entries that always have to be evaluated and null for the entries
+     * that can't match.
+     */
+    private final int[][] m_literals;
+
+    private final boolean[] m_substring;
+
+    private final AhoCorasick m_automaton;
+
+    /**
+     * @param entries the entries, in the configured order
+     * @param match returns the match of an entry
+     * @param isRegex returns true if a match type is a regular expression
+     */
+    public MatchSet(List<T> entries, Function<T, Match> match, Predicate<String> isRegex) {
+        m_entries = entries == null ? Collections.emptyList() : new ArrayList<>(entries);
+        m_match = match;
+        m_types = new String[m_entries.size()];
+        m_expressions = new String[m_entries.size()];
+        m_patterns = new Pattern[m_entries.size()];
+        m_literals = new int[m_entries.size()][];
+        m_substring = new boolean[m_entries.size()];
+
+        final Map<String, Integer> literalIndexes = new HashMap<>();
+        final List<String> literals = new ArrayList<>();
+        for (int i = 0; i < m_entries.size(); i++) {
+            final Match m = match.apply(m_entries.get(i));
+            final List<String> required;
+            m_types[i] = m == null ? null : m.getType();
+            m_expressions[i] = m == null ? null : m.getExpression();
+            if (m == null || m.getType() == null || m.getExpression() == null) {
+                continue;
+            } else if ("substr".equals(m.getType())) {
+                m_substring[i] = true;
+                required = m.getExpression().isEmpty() ? Collections.emptyList() : Collections.singletonList(m.getExpression());
+            } else if (isRegex.test(m.getType())) {
+                try {
+                    m_patterns[i] = Pattern.compile(m.getExpression(), Pattern.MULTILINE);
+                } catch (final PatternSyntaxException e) {
+                    LOG.warn("Failed to compile regex pattern '{}'", m.getExpression(), e);
+                    continue;
+                }
+                required = requiredLiterals(m.getExpression());
+            } else {
+                continue;
+            }
+            final int[] indexes = new int[required.size()];
+            for (int l = 0; l < indexes.length; l++) {
+                Integer index = literalIndexes.get(required.get(l));
+                if (index == null) {
+                    index = literals.size();
+                    literalIndexes.put(required.get(l), index);
+                    literals.add(required.get(l));
+                }
+                indexes[l] = index;
+            }
+            m_literals[i] = indexes.length == 0 ? ALWAYS : indexes;
+        }
+        m_automaton = literals.isEmpty() ? null : new AhoCorasick(literals);
+        LOG.debug("Compiled {} matches with {} literals", m_entries.size(), literals.size());
+    }
+
+    /**
+     * Returns true if the entries and their matches are the ones this set was
+     * compiled from, i.e. the list was not refilled or edited since.
+     */
+    public boolean isCompiledFrom(List<T> entries) {
+        if ((entries == null ? 0 : entries.size()) != m_entries.size()) {
+            return false;
+        }
+        for (int i = 0; i < m_entries.size(); i++) {
+            final T entry = entries.get(i);
+            if (entry != m_entries.get(i)) {
+                return false;
+            }
+            final Match m = m_match.apply(entry);
+            if (!Objects.equals(m == null ? null : m.getType(), m_types[i])
+                    || !Objects.equals(m == null ? null : m.getExpression(), m_expressions[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return m_entries.size();
+    }
+
+    public T get(int index) {
+        return m_entries.get(index);
+    }
+
+    /**
+     * Returns the compiled regular expression of an entry, or null if the
+     * entry is a substring match.
+     */
+    public Pattern getPattern(int index) {
+        return m_patterns[index];
+    }
+
+    /**
+     * Finds the literals of all the entries in the text, the result is
+     * passed to {@link #mayMatch(int, BitSet)}.
+     */
+    public BitSet scan(CharSequence text) {
+        final BitSet found = new BitSet();
+        if (m_automaton != null && text != null) {
+            m_automaton.findAll(text, found);
+        }
+        return found;
+    }
+
+    /**
+     * Returns false if the entry can't match the scanned text. A substring
+     * entry that may match does match.
+     */
+    public boolean mayMatch(int index, BitSet found) {
+        final int[] literals = m_literals[index];
+        if (literals == null) {
+            return false;
+        }
+        for (int literal : literals) {
+            if (!found.get(literal)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the entry matches the scanned text.
+     */
+    public boolean matches(int index, String text, BitSet found) {
+        if (!mayMatch(index, found)) {
+            return false;
+        }
+        return m_substring[index] || text != null && m_patterns[index].matcher(text).find();
+    }
+
+    /**
+     * Returns the index of the first entry that matches the text, or -1.
+     */
+    public int indexOf(String text) {
+        final BitSet found = scan(text);
+        for (int i = 0; i < m_entries.size(); i++) {
+            if (matches(i, text, found)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the literals that are part of any text matched by the regular
+     * expression (with no other flag than {@link Pattern#MULTILINE}), i.e.
+     * the literal sequences outside of the groups and classes. The
+     * expressions with embedded flags, quoting or alternation at the top
+     * level have no literal.
+     */
+    protected static List<String> requiredLiterals(String regex) {
+        final List<String> literals = new ArrayList<>();
+        final StringBuilder run = new StringBuilder();
+        // true if the last char of the run was the last atom
+        boolean lastIsLiteral = false;
+        int i = 0;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            switch (c) {
+            case '\\':
+                if (i + 1 >= regex.length()) {
+                    return Collections.emptyList();
+                }
+                final char escaped = regex.charAt(i + 1);
+                i += 2;
+                if (Character.isLetterOrDigit(escaped)) {
+                    if (escaped == 'Q') {
+                        return Collections.emptyList();
+                    }
+                    // a class, a boundary, a back reference or an encoded char:
+                    // skip the rest of the escape, maybe a few literals too
+                    while (i < regex.length() && isEscapeChar(regex.charAt(i))) {
+                        i++;
+                    }
+                    endRun(literals, run);
+                    lastIsLiteral = false;
+                } else {
+                    run.append(escaped);
+                    lastIsLiteral = true;
+                }
+                continue;
+            case '[':
+                i = skipClass(regex, i);
+                break;
+            case '(':
+                if (i + 2 < regex.length() && regex.charAt(i + 1) == '?' && isFlag(regex.charAt(i + 2))) {
+                    return Collections.emptyList();
+                }
+                i = skipGroup(regex, i);
+                break;
+            case '|':
+                return Collections.emptyList();
+            case '?':
+            case '*':
+            case '{':
+                if (lastIsLiteral) {
+                    // the last char is optional
+                    removeLastChar(run);
+                }
+                if (c == '{') {
+                    final int end = regex.indexOf('}', i);
+                    i = end < 0 ? regex.length() : end;
+                }
+                i++;
+                break;
+            case '+':
+            case '.':
+            case '^':
+            case '$':
+            case ')':
+            case ']':
+            case '}':
+                i++;
+                break;
+            default:
+                run.append(c);
+                lastIsLiteral = true;
+                i++;
+                continue;
+            }
+            if (i < 0) {
+                return Collections.emptyList();
+            }
+            endRun(literals, run);
+            lastIsLiteral = false;
+        }
+        endRun(literals, run);
+        return literals;
+    }
+
+    private static void endRun(List<String> literals, StringBuilder run) {
+        if (run.length() >= MIN_LITERAL_LENGTH) {
+            literals.add(run.toString());
+        }
+        run.setLength(0);
+    }
+
+    private static void removeLastChar(StringBuilder run) {
+        int length = run.length() - 1;
+        if (length > 0 && Character.isLowSurrogate(run.charAt(length)) && Character.isHighSurrogate(run.charAt(length - 1))) {
+            length--;
+        }
+        run.setLength(Math.max(0, length));
+    }
+
+    private static boolean isEscapeChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '{' || c == '}' || c == '<' || c == '>' || c == ',' || c == '_';
+    }
+
+    private static boolean isFlag(char c) {
+        return Character.isLetter(c) || c == '-';
+    }
+
+    /**
+     * Returns the index following the class starting at the given index, or
+     * -1 if the class isn't closed.
+     */
+    private static int skipClass(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            // a leading ] is a literal
+            i++;
+        }
+        int depth = 1;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index following the group starting at the given index, or
+     * -1 if the group isn't closed.
+     */
+    private static int skipGroup(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+}
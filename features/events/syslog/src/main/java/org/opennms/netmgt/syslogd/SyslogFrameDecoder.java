@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+
+/**
+ * Splits a TCP stream of syslog messages into frames as described in
+ * <a href="https://tools.ietf.org/html/rfc6587">RFC 6587</a>.
+ *
+ * A frame starting with a digit uses the octet-counting framing, i.e.
+ * <code>MSG-LEN SP SYSLOG-MSG</code>. Any other frame uses the non-transparent
+ * framing and ends with a line feed, an optional carriage return before the
+ * line feed is dropped. The framing can change from one message to the next.
+ *
+ * The frames are retained slices of the cumulated buffer and must be released
+ * by the next handler.
+ */
+public class SyslogFrameDecoder extends ByteToMessageDecoder {
+
+    /**
+     * Maximum number of digits of MSG-LEN, messages are never longer than
+     * the maximum frame length anyway.
+     */
+    private static final int MAX_LENGTH_DIGITS = 10;
+
+    private final int m_maxFrameLength;
+
+    public SyslogFrameDecoder(int maxFrameLength) {
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength must be a positive integer: " + maxFrameLength);
+        }
+        m_maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        while (in.isReadable()) {
+            final ByteBuf frame = isDigit(in.getByte(in.readerIndex())) ? decodeOctetCounted(in) : decodeNonTransparent(in);
+            if (frame == null) {
+                // wait for more data
+                return;
+            }
+            if (frame.isReadable()) {
+                out.add(frame);
+            } else {
+                frame.release();
+            }
+        }
+    }
+
+    private ByteBuf decodeOctetCounted(ByteBuf in) throws TooLongFrameException {
+        final int start = in.readerIndex();
+        final int end = in.writerIndex();
+        long length = 0;
+        int i = start;
+        for (; i < end; i++) {
+            final byte b = in.getByte(i);
+            if (b == ' ') {
+                break;
+            }
+            if (!isDigit(b) || i - start >= MAX_LENGTH_DIGITS) {
+                in.skipBytes(in.readableBytes());
+                throw new TooLongFrameException("Invalid syslog message length at offset " + (i - start));
+            }
+            length = length * 10 + (b - '0');
+        }
+        if (length > m_maxFrameLength) {
+            in.skipBytes(in.readableBytes());
+            throw new TooLongFrameException("Syslog message length " + length + " exceeds " + m_maxFrameLength);
+        }
+        if (i == end || end - i - 1 < length) {
+            // the length or the message is incomplete
+            return null;
+        }
+        in.readerIndex(i + 1);
+        return in.readRetainedSlice((int)length);
+    }
+
+    private ByteBuf decodeNonTransparent(ByteBuf in) throws TooLongFrameException {
+        final int lf = in.indexOf(in.readerIndex(), in.writerIndex(), (byte)'\n');
+        if (lf < 0) {
+            if (in.readableBytes() > m_maxFrameLength) {
+                in.skipBytes(in.readableBytes());
+                throw new TooLongFrameException("Syslog message exceeds " + m_maxFrameLength + " bytes without a line feed");
+            }
+            return null;
+        }
+        int length = lf - in.readerIndex();
+        if (length > 0 && in.getByte(lf - 1) == '\r') {
+            length--;
+        }
+        final ByteBuf frame = in.readRetainedSlice(length);
+        in.readerIndex(lf + 1);
+        return frame;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.List;
+
+import org.opennms.netmgt.config.SyslogdConfig;
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+
+/**
+ * The compiled UEI and hide matches of the syslogd configuration.
+ *
+ * The last compiled matches are kept and reused as long as the configuration
+ * returns the same entries with the same matches, i.e. until it is reloaded
+ * or edited.
+ */
+final class SyslogMatchers {
+
+    private static volatile SyslogMatchers s_last;
+
+    private final MatchSet<UeiMatch> m_ueiMatches;
+
+    private final MatchSet<HideMatch> m_hideMatches;
+
+    private SyslogMatchers(List<UeiMatch> ueiList, List<HideMatch> hideList) {
+        m_ueiMatches = new MatchSet<>(ueiList, UeiMatch::getMatch, type -> type.startsWith("regex"));
+        m_hideMatches = new MatchSet<>(hideList, HideMatch::getMatch, type -> type.equals("regex"));
+    }
+
+    public static SyslogMatchers forConfig(SyslogdConfig config) {
+        final List<UeiMatch> ueiList = config.getUeiList();
+        final List<HideMatch> hideList = config.getHideMessages();
+        SyslogMatchers matchers = s_last;
+        if (matchers == null || !matchers.isCompiledFrom(ueiList, hideList)) {
+            matchers = new SyslogMatchers(ueiList, hideList);
+            s_last = matchers;
+        }
+        return matchers;
+    }
+
+    public MatchSet<UeiMatch> getUeiMatches() {
+        return m_ueiMatches;
+    }
+
+    public MatchSet<HideMatch> getHideMatches() {
+        return m_hideMatches;
+    }
+
+    private boolean isCompiledFrom(List<UeiMatch> ueiList, List<HideMatch> hideList) {
+        // the lists are refilled in place on reload, so the entries are compared
+        return m_ueiMatches.isCompiledFrom(ueiList) && m_hideMatches.isCompiledFrom(hideList);
+    }
+}
@@ -0,0 +1,421 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.ipc.sink.api.AsyncDispatcher;
+import org.opennms.core.logging.Logging;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.config.SyslogdConfig;
+import org.opennms.netmgt.syslogd.api.SyslogConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Receives syslog messages with Netty, without Camel.
+ *
+ * When the native epoll transport is available, several UDP sockets are bound
+ * to the same address with SO_REUSEPORT, each one read by a thread of its own.
+ * Otherwise a single NIO socket is used. The datagrams are read into pooled
+ * direct buffers and the messages read at once from a socket are handed to
+ * the dispatcher as a single batch.
+ *
+ * The Sink aggregation keeps the messages until its batch is complete, so the
+ * bytes are copied once from the pooled buffer into a buffer of the message
+ * size instead of keeping the pooled buffer.
+ *
+ * Syslog over TCP, optionally with TLS, is received by the same event loops
+ * when a TCP port is set. Both the octet-counting and the non-transparent
+ * framing of RFC 6587 are supported, see {@link SyslogFrameDecoder}.
+ */
+public class SyslogReceiverNettyImpl extends SinkDispatchingSyslogReceiver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SyslogReceiverNettyImpl.class);
+
+    /**
+     * Maximum size of a datagram and of a TCP frame.
+     */
+    private static final int MAX_MESSAGE_SIZE = 0xffff;
+
+    /**
+     * Maximum number of datagrams read from a socket before the batch is
+     * dispatched.
+     */
+    private static final int MAX_MESSAGES_PER_READ = 64;
+
+    private final SyslogdConfig m_config;
+
+    private final List<Channel> m_channels = new CopyOnWriteArrayList<>();
+
+    private MetricRegistry m_metrics = new MetricRegistry();
+
+    private int m_udpChannels = 0;
+
+    private int m_tcpPort = 0;
+
+    private String m_tlsCertificate;
+
+    private String m_tlsPrivateKey;
+
+    private volatile EventLoopGroup m_group;
+
+    private volatile int m_boundPort;
+
+    private Meter m_packetMeter;
+
+    private Histogram m_packetSizeHistogram;
+
+    private Counter m_dispatchErrors;
+
+    public SyslogReceiverNettyImpl(final SyslogdConfig config) {
+        super(config);
+        m_config = config;
+    }
+
+    @Override
+    public String getName() {
+        String listenAddress = m_config.getListenAddress() == null? "0.0.0.0" : m_config.getListenAddress();
+        return getClass().getSimpleName() + " [" + listenAddress + ":" + m_config.getSyslogPort() + "]";
+    }
+
+    public boolean isStarted() {
+        return m_group != null && !m_channels.isEmpty();
+    }
+
+    /**
+     * Number of UDP sockets bound with SO_REUSEPORT. Use 0 for one socket per
+     * processor. A single socket is used when epoll is not available.
+     */
+    public void setUdpChannels(int udpChannels) {
+        m_udpChannels = udpChannels;
+    }
+
+    /**
+     * Port on which syslog over TCP is received, 0 disables TCP.
+     */
+    public void setTcpPort(int tcpPort) {
+        m_tcpPort = tcpPort;
+    }
+
+    /**
+     * PEM encoded certificate chain used for TLS on the TCP port. TLS is
+     * enabled when both the certificate and the private key are set.
+     */
+    public void setTlsCertificate(String tlsCertificate) {
+        m_tlsCertificate = tlsCertificate;
+    }
+
+    /**
+     * PEM encoded PKCS#8 private key used for TLS on the TCP port.
+     */
+    public void setTlsPrivateKey(String tlsPrivateKey) {
+        m_tlsPrivateKey = tlsPrivateKey;
+    }
+
+    public void setMetricRegistry(MetricRegistry metrics) {
+        m_metrics = metrics;
+    }
+
+    protected int getNumUdpChannels() {
+        final int udpChannels = m_udpChannels > 0 ? m_udpChannels : Runtime.getRuntime().availableProcessors();
+        return udpChannels > 1 && isEpollAvailable() ? udpChannels : 1;
+    }
+
+    /**
+     * Returns the UDP port the receiver is bound to, which differs from the
+     * configured one when that one is 0.
+     */
+    public int getBoundPort() {
+        return m_boundPort;
+    }
+
+    @Override
+    public void run() {
+        // Setup logging and create the dispatcher
+        super.run();
+
+        final boolean epoll = isEpollAvailable();
+        final int udpChannels = getNumUdpChannels();
+        final DefaultThreadFactory threadFactory = new DefaultThreadFactory("OpenNMS.Syslogd.Receiver") {
+            @Override
+            protected Thread newThread(Runnable r, String name) {
+                return super.newThread(() -> {
+                    Logging.putPrefix(Syslogd.LOG4J_CATEGORY);
+                    r.run();
+                }, name);
+            }
+        };
+        m_group = epoll ? new EpollEventLoopGroup(udpChannels, threadFactory) : new NioEventLoopGroup(udpChannels, threadFactory);
+
+        registerMetrics();
+
+        final InetAddress address = InetAddressUtils.addr(m_config.getListenAddress() == null ? "0.0.0.0" : m_config.getListenAddress());
+        try {
+            final Bootstrap bootstrap = new Bootstrap()
+                    .group(m_group)
+                    .channel(epoll ? EpollDatagramChannel.class : NioDatagramChannel.class)
+                    .option(ChannelOption.SO_REUSEADDR, true)
+                    .option(ChannelOption.SO_RCVBUF, Integer.MAX_VALUE)
+                    .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(MAX_MESSAGE_SIZE).maxMessagesPerRead(MAX_MESSAGES_PER_READ))
+                    .handler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) {
+                            ch.pipeline().addLast(new SyslogMessageHandler());
+                        }
+                    });
+            if (udpChannels > 1) {
+                bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+
+            int port = m_config.getSyslogPort();
+            for (int i = 0; i < udpChannels; i++) {
+                // every channel is registered with the next event loop of the group
+                final Channel channel = bootstrap.bind(address, port).sync().channel();
+                m_channels.add(channel);
+                if (port == 0) {
+                    // bind the other sockets to the port picked for the first one
+                    port = ((InetSocketAddress)channel.localAddress()).getPort();
+                }
+            }
+            m_boundPort = port;
+            LOG.info("Listening for syslog messages on {}:{}/udp with {} socket(s)", InetAddressUtils.str(address), port, udpChannels);
+
+            if (m_tcpPort > 0) {
+                bindTcp(address, epoll);
+            }
+        } catch (Throwable e) {
+            LOG.error("Could not start the syslog receiver on {}:{}", InetAddressUtils.str(address), m_config.getSyslogPort(), e);
+        }
+    }
+
+    private void bindTcp(InetAddress address, boolean epoll) throws Exception {
+        final SslContext sslContext;
+        if (m_tlsCertificate != null && !m_tlsCertificate.isEmpty() && m_tlsPrivateKey != null && !m_tlsPrivateKey.isEmpty()) {
+            sslContext = SslContextBuilder.forServer(new File(m_tlsCertificate), new File(m_tlsPrivateKey)).build();
+        } else {
+            sslContext = null;
+        }
+
+        final ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(m_group)
+                .channel(epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
+                .option(ChannelOption.SO_REUSEADDR, true)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        if (sslContext != null) {
+                            ch.pipeline().addLast(sslContext.newHandler(ch.alloc()));
+                        }
+                        ch.pipeline().addLast(new SyslogFrameDecoder(MAX_MESSAGE_SIZE));
+                        ch.pipeline().addLast(new SyslogMessageHandler());
+                    }
+                });
+        m_channels.add(bootstrap.bind(address, m_tcpPort).sync().channel());
+        LOG.info("Listening for syslog messages on {}:{}/tcp{}", InetAddressUtils.str(address), m_tcpPort, sslContext != null ? " with TLS" : "");
+    }
+
+    private void registerMetrics() {
+        m_packetMeter = m_metrics.meter(MetricRegistry.name(getClass(), "packets"));
+        m_packetSizeHistogram = m_metrics.histogram(MetricRegistry.name(getClass(), "packetSize"));
+        m_dispatchErrors = m_metrics.counter(MetricRegistry.name(getClass(), "dispatchErrors"));
+        m_metrics.register(MetricRegistry.name(getClass(), "queueSize"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                final AsyncDispatcher<SyslogConnection> dispatcher = m_dispatcher;
+                return dispatcher != null ? dispatcher.getQueueSize() : 0;
+            }
+        });
+        m_metrics.register(MetricRegistry.name(getClass(), "kernelDrops"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return UdpKernelStats.forPort(m_boundPort).getDrops();
+            }
+        });
+        m_metrics.register(MetricRegistry.name(getClass(), "kernelRxQueue"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return UdpKernelStats.forPort(m_boundPort).getRxQueue();
+            }
+        });
+    }
+
+    /**
+     * stop the current receiver
+     * @throws InterruptedException
+     */
+    @Override
+    public void stop() throws InterruptedException {
+        for (Channel channel : m_channels) {
+            channel.close().awaitUninterruptibly();
+        }
+        m_channels.clear();
+
+        final EventLoopGroup group = m_group;
+        if (group != null) {
+            group.shutdownGracefully(0, 5, TimeUnit.SECONDS).await();
+            m_group = null;
+        }
+
+        final String prefix = MetricRegistry.name(getClass());
+        m_metrics.removeMatching((name, metric) -> name.startsWith(prefix));
+
+        super.stop();
+    }
+
+    private static boolean isEpollAvailable() {
+        try {
+            return Epoll.isAvailable();
+        } catch (NoClassDefFoundError | UnsatisfiedLinkError e) {
+            LOG.debug("The native epoll transport is not available", e);
+            return false;
+        }
+    }
+
+    /**
+     * Collects the messages read at once from a channel and dispatches them
+     * together. Every channel has its own handler, called by a single thread.
+     */
+    private class SyslogMessageHandler extends ChannelInboundHandlerAdapter {
+
+        private final List<SyslogConnection> m_batch = new ArrayList<>(MAX_MESSAGES_PER_READ);
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            try {
+                final InetSocketAddress source;
+                final ByteBuf content;
+                if (msg instanceof DatagramPacket) {
+                    source = ((DatagramPacket)msg).sender();
+                    content = ((DatagramPacket)msg).content();
+                } else if (msg instanceof ByteBuf) {
+                    source = (InetSocketAddress)ctx.channel().remoteAddress();
+                    content = (ByteBuf)msg;
+                } else {
+                    LOG.warn("Unexpected message type: {}", msg.getClass());
+                    return;
+                }
+
+                final byte[] bytes = new byte[content.readableBytes()];
+                content.getBytes(content.readerIndex(), bytes);
+                m_packetMeter.mark();
+                m_packetSizeHistogram.update(bytes.length);
+
+                m_batch.add(new SyslogConnection(source, ByteBuffer.wrap(bytes)));
+                if (m_batch.size() >= MAX_MESSAGES_PER_READ) {
+                    dispatch();
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            dispatch();
+            ctx.fireChannelReadComplete();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            dispatch();
+            ctx.fireChannelInactive();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            if (ctx.channel() instanceof DatagramChannel) {
+                LOG.warn("Failed to receive a syslog message on {}", ctx.channel().localAddress(), cause);
+            } else {
+                // the stream can't be resynchronized
+                LOG.warn("Closing the syslog connection from {}", ctx.channel().remoteAddress(), cause);
+                ctx.close();
+            }
+        }
+
+        private void dispatch() {
+            if (m_batch.isEmpty()) {
+                return;
+            }
+            final AsyncDispatcher<SyslogConnection> dispatcher = m_dispatcher;
+            if (dispatcher == null) {
+                m_batch.clear();
+                return;
+            }
+            final int size = m_batch.size();
+            // the batch is copied by the dispatcher, blocks while its queue is full
+            dispatcher.sendAll(m_batch).whenComplete((failed, e) -> {
+                final int errors = e != null ? size : failed;
+                if (errors > 0) {
+                    m_dispatchErrors.inc(errors);
+                    LOG.debug("Failed to dispatch {} of {} syslog message(s)", errors, size, e);
+                }
+            });
+            m_batch.clear();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the state of the UDP sockets bound to a port from
+ * <code>/proc/net/udp</code> and <code>/proc/net/udp6</code>.
+ *
+ * The kernel counts, for every socket, the datagrams dropped because its
+ * receive buffer was full and the number of bytes waiting in the buffer. The
+ * values of all the sockets bound to the port, e.g. with SO_REUSEPORT, are
+ * summed up. Both values are -1 when the files are not available.
+ */
+final class UdpKernelStats {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UdpKernelStats.class);
+
+    private static final Path[] PROC_NET_UDP = new Path[] {
+            Paths.get("/proc/net/udp"),
+            Paths.get("/proc/net/udp6")
+    };
+
+    private final long m_drops;
+
+    private final long m_rxQueue;
+
+    private UdpKernelStats(long drops, long rxQueue) {
+        m_drops = drops;
+        m_rxQueue = rxQueue;
+    }
+
+    /**
+     * Number of datagrams dropped by the kernel.
+     */
+    public long getDrops() {
+        return m_drops;
+    }
+
+    /**
+     * Number of bytes received by the kernel and not yet read.
+     */
+    public long getRxQueue() {
+        return m_rxQueue;
+    }
+
+    public static UdpKernelStats forPort(int port) {
+        UdpKernelStats stats = new UdpKernelStats(-1, -1);
+        for (Path path : PROC_NET_UDP) {
+            if (!Files.isReadable(path)) {
+                continue;
+            }
+            try {
+                stats = stats.add(parse(Files.readAllLines(path, StandardCharsets.US_ASCII), port));
+            } catch (IOException | RuntimeException e) {
+                LOG.debug("Failed to read the UDP socket statistics from {}", path, e);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Parses the content of <code>/proc/net/udp</code>, i.e. a header and one
+     * line per socket:
+     * <pre>
+     *   sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode ref pointer drops
+     *  155: 00000000:05EA 00000000:0000 07 00000000:00000000 00:00000000 00000000     0        0 20551 2 0000000000000000 12
+     * </pre>
+     */
+    protected static UdpKernelStats parse(List<String> lines, int port) {
+        long drops = 0;
+        long rxQueue = 0;
+        for (String line : lines) {
+            final String[] fields = line.trim().split("\\s+");
+            if (fields.length < 13 || !fields[0].endsWith(":")) {
+                // header
+                continue;
+            }
+            final int colon = fields[1].lastIndexOf(':');
+            if (colon < 0 || Integer.parseInt(fields[1].substring(colon + 1), 16) != port) {
+                continue;
+            }
+            final String queues = fields[4];
+            rxQueue += Long.parseLong(queues.substring(queues.indexOf(':') + 1), 16);
+            drops += Long.parseLong(fields[fields.length - 1]);
+        }
+        return new UdpKernelStats(drops, rxQueue);
+    }
+
+    private UdpKernelStats add(UdpKernelStats other) {
+        return new UdpKernelStats(Math.max(0, m_drops) + other.m_drops, Math.max(0, m_rxQueue) + other.m_rxQueue);
+    }
+}
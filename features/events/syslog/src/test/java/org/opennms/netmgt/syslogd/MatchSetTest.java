@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.opennms.netmgt.config.syslogd.Match;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class MatchSetTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MatchSetTest.class);
+
+    @Test
+    public void testRequiredLiterals() {
+        assertEquals(Arrays.asList("Killed process ", " ("), MatchSet.requiredLiterals("^Killed process (\\d+) \\((.*)\\).*$"));
+        assertEquals(Arrays.asList("sudo:", " : ", " incorrect password attempt", " ; TTY="),
+                MatchSet.requiredLiterals("^sudo:\\s+(.*?) : (\\d+) incorrect password attempts? ; TTY=(.*?)"));
+        assertEquals(Arrays.asList("abc"), MatchSet.requiredLiterals("abcd?e*f{2}"));
+        assertEquals(Arrays.asList("www.opennms"), MatchSet.requiredLiterals("www\\.opennms.?[a-z]+"));
+        assertEquals(Arrays.asList("ab"), MatchSet.requiredLiterals("x+ab+"));
+        assertEquals(Collections.emptyList(), MatchSet.requiredLiterals(".*"));
+        assertEquals(Collections.emptyList(), MatchSet.requiredLiterals("^(.*)$"));
+        assertEquals(Collections.emptyList(), MatchSet.requiredLiterals("foo|bar"));
+        assertEquals(Collections.emptyList(), MatchSet.requiredLiterals("(?i)foo"));
+        assertEquals(Collections.emptyList(), MatchSet.requiredLiterals("\\Qfoo\\E"));
+        // the groups and classes are skipped
+        assertEquals(Arrays.asList("Interface ", " is online"), MatchSet.requiredLiterals("^Interface (a|b) is online[)|]$"));
+        // the letters following an escape may belong to it
+        assertEquals(Arrays.asList(" port "), MatchSet.requiredLiterals("\\k<user> port \\p{Alpha}"));
+    }
+
+    @Test
+    public void testRequiredLiteralIsInEveryMatch() {
+        final List<String> regexes = Arrays.asList("ab?c+d*e", "a.b{1,2}c\\.d", "x[abc]yz?", "(foo)?bar(baz)*", "\\d+ms\\b", "a\\+b+c");
+        final Random random = new Random(42);
+        final char[] alphabet = "abcdefoxyz.+ms012".toCharArray();
+        for (String regex : regexes) {
+            final Pattern pattern = Pattern.compile(regex, Pattern.MULTILINE);
+            final List<String> literals = MatchSet.requiredLiterals(regex);
+            for (int i = 0; i < 20000; i++) {
+                final char[] text = new char[random.nextInt(12)];
+                for (int c = 0; c < text.length; c++) {
+                    text[c] = alphabet[random.nextInt(alphabet.length)];
+                }
+                final String s = new String(text);
+                if (pattern.matcher(s).find()) {
+                    for (String literal : literals) {
+                        assertTrue(regex + " matched " + s + " without " + literal, s.contains(literal));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAhoCorasick() {
+        final AhoCorasick automaton = new AhoCorasick(Arrays.asList("he", "she", "his", "hers", "", "s"));
+        final BitSet found = new BitSet();
+        automaton.findAll("ushers", found);
+        assertEquals("{0, 1, 3, 5}", found.toString());
+
+        found.clear();
+        automaton.findAll("this \u00e9t\u00e9", found);
+        assertEquals("{2, 5}", found.toString());
+    }
+
+    @Test
+    public void testFirstMatchInOrder() {
+        final List<UeiMatch> entries = new ArrayList<>();
+        entries.add(ueiMatch("regex", "^Failed (.*?) for (\\S+) from"));
+        entries.add(ueiMatch("substr", "shutdown"));
+        entries.add(ueiMatch("regex", "invalid("));
+        entries.add(ueiMatch("regex", "^Interface (.*) is offline$"));
+        entries.add(ueiMatch("regex", ".*"));
+        final MatchSet<UeiMatch> matches = new MatchSet<>(entries, UeiMatch::getMatch, type -> type.startsWith("regex"));
+
+        assertEquals(0, matches.indexOf("Failed password for root from 10.0.0.1"));
+        assertEquals(1, matches.indexOf("system shutdown"));
+        assertEquals(3, matches.indexOf("Interface eth0 is offline"));
+        assertEquals(4, matches.indexOf("Interface eth0 is online"));
+        assertNull(matches.getPattern(1));
+    }
+
+    @Test
+    public void testIsCompiledFrom() {
+        final List<UeiMatch> entries = new ArrayList<>();
+        entries.add(ueiMatch("regex", "^Interface (.*) is offline$"));
+        entries.add(ueiMatch("substr", "shutdown"));
+        final MatchSet<UeiMatch> matches = new MatchSet<>(entries, UeiMatch::getMatch, type -> type.startsWith("regex"));
+        assertTrue(matches.isCompiledFrom(entries));
+
+        // a reload refills the same list with the same number of entries
+        final List<UeiMatch> reloaded = Arrays.asList(ueiMatch("regex", "^Interface (.*) is online$"), ueiMatch("substr", "shutdown"));
+        entries.clear();
+        entries.addAll(reloaded);
+        assertFalse(matches.isCompiledFrom(entries));
+
+        final MatchSet<UeiMatch> recompiled = new MatchSet<>(entries, UeiMatch::getMatch, type -> type.startsWith("regex"));
+        assertTrue(recompiled.isCompiledFrom(entries));
+        entries.get(1).getMatch().setExpression("reboot");
+        assertFalse(recompiled.isCompiledFrom(entries));
+        assertFalse(recompiled.isCompiledFrom(null));
+    }
+
+    @Test
+    public void testMatchSetAgainstLoop() {
+        matchSetAgainstLoop(40, 2000);
+    }
+
+    /*
+     * Only runs when the org.opennms.syslogd.matcher.benchmark system property is set to true.
+     */
+    @Test
+    public void testMatchBenchmark() {
+        assumeTrue(Boolean.getBoolean("org.opennms.syslogd.matcher.benchmark"));
+        matchSetAgainstLoop(Integer.getInteger("org.opennms.syslogd.matcher.benchmark.rules", 600),
+                            Integer.getInteger("org.opennms.syslogd.matcher.benchmark.messages", 20000));
+    }
+
+    /**
+     * Matches messages against a ruleset modeled on the shipped syslog
+     * configurations, with the loop over all of the entries and with the
+     * compiled match set, and checks that both return the same entry.
+     */
+    private void matchSetAgainstLoop(final int rules, final int messages) {
+        final Random random = new Random(42);
+
+        final List<UeiMatch> entries = new ArrayList<>();
+        for (int i = 0; i < rules; i++) {
+            switch (i % 4) {
+            case 0:
+                entries.add(ueiMatch("substr", "%SYS-" + i + "-CONFIG_I: Configured from console"));
+                break;
+            case 1:
+                entries.add(ueiMatch("regex", "^Failed (.*?) for invalid user (\\S+) from (.*?) port (\\d+) ssh" + i + "$"));
+                break;
+            case 2:
+                entries.add(ueiMatch("regex", "^Interface (.*) changed state to (up|down) on line card " + i + "$"));
+                break;
+            default:
+                entries.add(ueiMatch("regex", "^sudo:\\s+(.*?) : (\\d+) incorrect password attempts? ; TTY=(.*?) ; rule=" + i));
+                break;
+            }
+        }
+        final List<String> texts = new ArrayList<>();
+        for (int i = 0; i < messages; i++) {
+            final int rule = random.nextInt(rules);
+            if (i % 10 == 0) {
+                texts.add("Failed password for invalid user admin from 10.0.0." + (i % 255) + " port 22 ssh" + rule);
+            } else if (i % 10 == 1) {
+                texts.add("%SYS-" + rule + "-CONFIG_I: Configured from console by admin on vty0");
+            } else {
+                texts.add("kernel: [" + i + "] eth" + (i % 4) + ": link is not ready, dropped " + rule + " packets");
+            }
+        }
+
+        final Pattern[] patterns = new Pattern[rules];
+        for (int i = 0; i < rules; i++) {
+            final Match match = entries.get(i).getMatch();
+            if (match.getType().startsWith("regex")) {
+                patterns[i] = Pattern.compile(match.getExpression(), Pattern.MULTILINE);
+            }
+        }
+        final int[] expected = new int[messages];
+        long start = System.nanoTime();
+        for (int m = 0; m < messages; m++) {
+            expected[m] = -1;
+            for (int i = 0; i < rules; i++) {
+                final boolean matches = patterns[i] == null
+                        ? texts.get(m).contains(entries.get(i).getMatch().getExpression())
+                        : patterns[i].matcher(texts.get(m)).find();
+                if (matches) {
+                    expected[m] = i;
+                    break;
+                }
+            }
+        }
+        final long loop = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        final MatchSet<UeiMatch> matches = new MatchSet<>(entries, UeiMatch::getMatch, type -> type.startsWith("regex"));
+        final long compile = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int matched = 0;
+        for (int m = 0; m < messages; m++) {
+            final int index = matches.indexOf(texts.get(m));
+            assertEquals(texts.get(m), expected[m], index);
+            if (index >= 0) {
+                matched++;
+            }
+        }
+        final long compiled = System.nanoTime() - start;
+        assertTrue(matched > 0);
+
+        LOG.info("matchSetAgainstLoop: rules: {}, messages: {}, matched: {}, loop: {} ms, compile: {} ms, match set: {} ms",
+                rules, messages, matched, loop / 1000000, compile / 1000000, compiled / 1000000);
+    }
+
+    private static UeiMatch ueiMatch(String type, String expression) {
+        final Match match = new Match();
+        match.setType(type);
+        match.setExpression(expression);
+        final UeiMatch ueiMatch = new UeiMatch();
+        ueiMatch.setMatch(match);
+        ueiMatch.setUei("uei.opennms.org/test/" + expression.hashCode());
+        return ueiMatch;
+    }
+}
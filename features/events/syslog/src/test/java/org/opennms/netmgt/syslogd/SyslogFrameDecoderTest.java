@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.TooLongFrameException;
+
+public class SyslogFrameDecoderTest {
+
+    @Test
+    public void testOctetCounting() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new SyslogFrameDecoder(1024));
+        channel.writeInbound(buffer("11 <13>hello a9 <13>bye"));
+        assertEquals("<13>hello a", readFrame(channel));
+        assertNull(channel.readInbound());
+
+        // the rest of the second message
+        channel.writeInbound(buffer("!!"));
+        assertEquals("<13>bye!!", readFrame(channel));
+        assertNull(channel.readInbound());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testNonTransparentFraming() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new SyslogFrameDecoder(1024));
+        channel.writeInbound(buffer("<13>first\n<13>second\r\n\n<13>th"));
+        assertEquals("<13>first", readFrame(channel));
+        assertEquals("<13>second", readFrame(channel));
+        assertNull(channel.readInbound());
+
+        // mixed with octet counting
+        channel.writeInbound(buffer("ird\n8 <13>last"));
+        assertEquals("<13>third", readFrame(channel));
+        assertEquals("<13>last", readFrame(channel));
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testTooLongFrame() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new SyslogFrameDecoder(8));
+        try {
+            channel.writeInbound(buffer("9 <13>hello"));
+            fail("The frame is too long");
+        } catch (DecoderException e) {
+            assertEquals(TooLongFrameException.class, e.getClass());
+        }
+        // the stream is skipped, the next message is decoded
+        channel.writeInbound(buffer("<13>ok\n"));
+        assertEquals("<13>ok", readFrame(channel));
+        assertFalse(channel.finish());
+    }
+
+    private static ByteBuf buffer(String s) {
+        return Unpooled.copiedBuffer(s, StandardCharsets.US_ASCII);
+    }
+
+    private static String readFrame(EmbeddedChannel channel) {
+        final ByteBuf frame = channel.readInbound();
+        try {
+            return frame.toString(StandardCharsets.US_ASCII);
+        } finally {
+            frame.release();
+        }
+    }
+}
@@ -105,6 +105,10 @@ public class SyslogdImplementationsIT implements InitializingBean {
     @Qualifier("syslogReceiverCamelNetty")
     private SyslogReceiver m_netty;
 
+    @Autowired
+    @Qualifier("syslogReceiverNetty")
+    private SyslogReceiver m_nativeNetty;
+
     @Override
     public void afterPropertiesSet() throws Exception {
         BeanUtils.assertAutowiring(this);
@@ -148,6 +152,16 @@ public class SyslogdImplementationsIT implements InitializingBean {
         doTestSyslogd(m_netty);
     }
 
+    @Test(timeout=3*60*1000)
+    @Transactional
+    public void testNettyReceiver() throws Exception {
+        try {
+            doTestSyslogd(m_nativeNetty);
+        } finally {
+            m_nativeNetty.stop();
+        }
+    }
+
     @Test(timeout=3*60*1000)
     @Transactional
     public void testJavaNetReceiver() throws Exception {
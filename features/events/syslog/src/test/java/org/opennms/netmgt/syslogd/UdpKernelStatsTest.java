@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class UdpKernelStatsTest {
+
+    @Test
+    public void testParse() {
+        final List<String> lines = Arrays.asList(
+                "   sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode ref pointer drops",
+                "  155: 00000000:05EA 00000000:0000 07 00000000:00000100 00:00000000 00000000     0        0 20551 2 0000000000000000 12",
+                "  155: 00000000:05EA 00000000:0000 07 00000000:00000010 00:00000000 00000000     0        0 20552 2 0000000000000000 3",
+                "  160: 0100007F:0035 00000000:0000 07 00000000:00000000 00:00000000 00000000     0        0 12345 2 0000000000000000 99");
+
+        UdpKernelStats stats = UdpKernelStats.parse(lines, 1514);
+        assertEquals(15, stats.getDrops());
+        assertEquals(0x110, stats.getRxQueue());
+
+        stats = UdpKernelStats.parse(lines, 162);
+        assertEquals(0, stats.getDrops());
+        assertEquals(0, stats.getRxQueue());
+    }
+}
@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.transport.UdpTransportMapping;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+
+/**
+ * An SNMP4J transport that receives the traps with Netty.
+ *
+ * When the native epoll transport is available, several sockets are bound
+ * to the same address with SO_REUSEPORT, each one with a thread of its own:
+ * the kernel spreads the datagrams over the sockets and every thread decodes
+ * and dispatches the traps it received. Otherwise a single NIO socket is used.
+ *
+ * The messages are copied out of the Netty buffers before being handed to
+ * SNMP4J, so they can be decoded by another thread.
+ */
+public class NettyTrapTransportMapping extends UdpTransportMapping {
+    private static final Logger LOG = LoggerFactory.getLogger(NettyTrapTransportMapping.class);
+
+    private final int m_numSockets;
+
+    private final boolean m_reusePort;
+
+    private final List<Channel> m_channels = new CopyOnWriteArrayList<>();
+
+    private volatile EventLoopGroup m_group;
+
+    private volatile Runnable m_readCompleteListener;
+
+    public NettyTrapTransportMapping(UdpAddress udpAddress, int numSockets) {
+        super(udpAddress);
+        m_numSockets = Math.max(1, numSockets);
+        m_reusePort = m_numSockets > 1 && isEpollAvailable();
+    }
+
+    /**
+     * Returns true if the traps are received by several sockets bound with
+     * SO_REUSEPORT, false if they are all received by a single socket.
+     */
+    public boolean isReusePort() {
+        return m_reusePort;
+    }
+
+    public int getNumSockets() {
+        return m_reusePort ? m_numSockets : 1;
+    }
+
+    /**
+     * Sets a callback invoked by the receiving thread once it has processed
+     * all of the datagrams read at once from its socket.
+     */
+    public void setReadCompleteListener(Runnable readCompleteListener) {
+        m_readCompleteListener = readCompleteListener;
+    }
+
+    /**
+     * Returns true if the current thread is one of the threads receiving
+     * the traps.
+     */
+    public boolean inReceiveThread() {
+        final EventLoopGroup group = m_group;
+        if (group == null) {
+            return false;
+        }
+        for (EventExecutor executor : group) {
+            if (executor.inEventLoop()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void listen() throws IOException {
+        if (m_group != null) {
+            throw new SocketException("Port already listening");
+        }
+
+        final int numSockets = getNumSockets();
+        final DefaultThreadFactory threadFactory = new DefaultThreadFactory("OpenNMS.Trapd.Receiver");
+        final Bootstrap bootstrap = new Bootstrap()
+                .option(ChannelOption.SO_REUSEADDR, true)
+                .option(ChannelOption.SO_RCVBUF, Integer.MAX_VALUE)
+                .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(getMaxInboundMessageSize()))
+                .handler(new TrapPacketHandler());
+        if (m_reusePort) {
+            m_group = new EpollEventLoopGroup(numSockets, threadFactory);
+            bootstrap.group(m_group)
+                .channel(EpollDatagramChannel.class)
+                .option(EpollChannelOption.SO_REUSEPORT, true);
+        } else {
+            m_group = new NioEventLoopGroup(1, threadFactory);
+            bootstrap.group(m_group)
+                .channel(NioDatagramChannel.class);
+        }
+
+        try {
+            final InetAddress address = udpAddress.getInetAddress();
+            int port = udpAddress.getPort();
+            for (int i = 0; i < numSockets; i++) {
+                // every channel is registered with the next event loop of the group
+                final Channel channel = bootstrap.bind(address, port).sync().channel();
+                m_channels.add(channel);
+                if (port == 0) {
+                    // bind the other sockets to the port picked for the first one
+                    port = ((InetSocketAddress)channel.localAddress()).getPort();
+                    udpAddress = new UdpAddress(address, port);
+                }
+            }
+            LOG.debug("Listening for traps on {} with {} socket(s)", udpAddress, numSockets);
+        } catch (Exception e) {
+            close();
+            if (e instanceof IOException) {
+                throw (IOException)e;
+            }
+            throw new IOException("Failed to listen on " + udpAddress, e);
+        }
+    }
+
+    @Override
+    public boolean isListening() {
+        return m_group != null;
+    }
+
+    @Override
+    public void sendMessage(UdpAddress targetAddress, byte[] message, TransportStateReference tmStateReference) throws IOException {
+        // answer from the socket that received the request, e.g. for informs
+        Channel channel = null;
+        if (tmStateReference != null && tmStateReference.getSessionID() instanceof Channel) {
+            channel = (Channel)tmStateReference.getSessionID();
+        } else if (!m_channels.isEmpty()) {
+            channel = m_channels.get(0);
+        }
+        if (channel == null || !channel.isActive()) {
+            throw new SocketException("Transport is not listening");
+        }
+        channel.writeAndFlush(new DatagramPacket(Unpooled.wrappedBuffer(message),
+                new InetSocketAddress(targetAddress.getInetAddress(), targetAddress.getPort())));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        final EventLoopGroup group = m_group;
+        if (group == null) {
+            return;
+        }
+        for (Channel channel : m_channels) {
+            channel.close().awaitUninterruptibly();
+        }
+        m_channels.clear();
+        group.shutdownGracefully(0, 5, TimeUnit.SECONDS).awaitUninterruptibly();
+        m_group = null;
+    }
+
+    private static boolean isEpollAvailable() {
+        try {
+            return Epoll.isAvailable();
+        } catch (NoClassDefFoundError | UnsatisfiedLinkError e) {
+            LOG.debug("The native epoll transport is not available", e);
+            return false;
+        }
+    }
+
+    @Sharable
+    private class TrapPacketHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) {
+            final ByteBuf content = packet.content();
+            final byte[] bytes = new byte[content.readableBytes()];
+            content.getBytes(content.readerIndex(), bytes);
+
+            final InetSocketAddress sender = packet.sender();
+            final TransportStateReference stateReference = new TransportStateReference(NettyTrapTransportMapping.this, udpAddress, null,
+                    SecurityLevel.undefined, SecurityLevel.undefined, false, ctx.channel());
+            fireProcessMessage(new UdpAddress(sender.getAddress(), sender.getPort()), ByteBuffer.wrap(bytes), stateReference);
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            final Runnable readCompleteListener = m_readCompleteListener;
+            if (readCompleteListener != null) {
+                readCompleteListener.run();
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            LOG.warn("Failed to process a trap received on {}", ctx.channel().localAddress(), cause);
+        }
+    }
+}
@@ -32,6 +32,8 @@ import java.io.IOException;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.net.InetAddress;
 import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 import org.opennms.core.ipc.sink.api.AsyncDispatcher;
@@ -45,8 +47,12 @@ import org.opennms.netmgt.snmp.SnmpException;
 import org.opennms.netmgt.snmp.SnmpUtils;
 import org.opennms.netmgt.snmp.TrapInformation;
 import org.opennms.netmgt.snmp.TrapNotificationListener;
+import org.opennms.netmgt.snmp.snmp4j.Snmp4JStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.util.ThreadPool;
+import org.snmp4j.util.WorkerPool;
 import org.springframework.beans.factory.annotation.Autowired;
 
 public class TrapListener implements TrapNotificationListener {
@@ -62,7 +68,17 @@ public class TrapListener implements TrapNotificationListener {
 
     private TrapdConfig m_config;
 
-    private AsyncDispatcher<TrapInformationWrapper> m_dispatcher;
+    private volatile AsyncDispatcher<TrapInformationWrapper> m_dispatcher;
+
+    // Only used when the traps are received with Netty, see TrapdConfig.getReceiveThreads()
+    private Snmp4JStrategy m_snmp4JStrategy;
+
+    private volatile NettyTrapTransportMapping m_transport;
+
+    private WorkerPool m_workerPool;
+
+    // Traps decoded by a receiving thread, sent at once when its read is complete
+    private final ThreadLocal<List<TrapInformationWrapper>> m_pendingTraps = ThreadLocal.withInitial(ArrayList::new);
 
     public TrapListener(final TrapdConfig config) throws SocketException {
         Objects.requireNonNull(config, "Config cannot be null");
@@ -71,20 +87,58 @@ public class TrapListener implements TrapNotificationListener {
 
     @Override
     public void trapReceived(TrapInformation trapInformation) {
+        final TrapInformationWrapper message;
         try {
-            getMessageDispatcher().send(new TrapInformationWrapper(trapInformation))
-                    .whenComplete((t,ex) -> {
-                        if (ex != null) {
-                            LOG.error("An error occured while forwarding trap {} for further processing. The trap will be dropped.", trapInformation, ex);
-                            // This trap will never reach the sink consumer
-                            TrapSinkConsumer.trapdInstrumentation.incErrorCount();
-                        }
-                    });
+            message = new TrapInformationWrapper(trapInformation);
         } catch (final SnmpException | IllegalArgumentException ex) {
             LOG.error("Received trap {} is not valid and cannot be processed. The trap will be dropped.", trapInformation, ex);
             // This trap will never reach the sink consumer
             TrapSinkConsumer.trapdInstrumentation.incErrorCount();
+            return;
+        }
+
+        final NettyTrapTransportMapping transport = m_transport;
+        if (transport != null && transport.inReceiveThread()) {
+            final List<TrapInformationWrapper> pendingTraps = m_pendingTraps.get();
+            pendingTraps.add(message);
+            if (pendingTraps.size() >= m_config.getBatchSize()) {
+                flushPendingTraps();
+            }
+            return;
         }
+
+        getMessageDispatcher().send(message)
+                .whenComplete((t,ex) -> {
+                    if (ex != null) {
+                        LOG.error("An error occured while forwarding trap {} for further processing. The trap will be dropped.", trapInformation, ex);
+                        // This trap will never reach the sink consumer
+                        TrapSinkConsumer.trapdInstrumentation.incErrorCount();
+                    }
+                });
+    }
+
+    /**
+     * Sends the traps decoded by the current thread since its last read
+     * as a single batch.
+     */
+    private void flushPendingTraps() {
+        final List<TrapInformationWrapper> pendingTraps = m_pendingTraps.get();
+        if (pendingTraps.isEmpty()) {
+            return;
+        }
+        final int count = pendingTraps.size();
+        getMessageDispatcher().sendAll(pendingTraps)
+                .whenComplete((failed,ex) -> {
+                    final int dropped = ex != null ? count : failed;
+                    if (dropped > 0) {
+                        LOG.error("An error occured while forwarding {} of {} traps for further processing. These traps will be dropped.", dropped, count, ex);
+                        // These traps will never reach the sink consumer
+                        for (int i = 0; i < dropped; i++) {
+                            TrapSinkConsumer.trapdInstrumentation.incErrorCount();
+                        }
+                    }
+                });
+        pendingTraps.clear();
     }
 
     @Override
@@ -97,7 +151,11 @@ public class TrapListener implements TrapNotificationListener {
         final InetAddress address = getInetAddress();
         try {
             LOG.info("Listening on {}:{}", address == null ? "[all interfaces]" : InetAddressUtils.str(address), m_snmpTrapPort);
-            SnmpUtils.registerForTraps(this, address, m_snmpTrapPort, m_config.getSnmpV3Users());
+            if (m_config.getReceiveThreads() > 0) {
+                registerReceivers(address, m_snmpTrapPort);
+            } else {
+                SnmpUtils.registerForTraps(this, address, m_snmpTrapPort, m_config.getSnmpV3Users());
+            }
             m_registeredForTraps = true;
             
             LOG.debug("init: Creating the trap session");
@@ -122,7 +180,11 @@ public class TrapListener implements TrapNotificationListener {
         try {
             if (m_registeredForTraps) {
                 LOG.debug("stop: Closing SNMP trap session.");
-                SnmpUtils.unregisterForTraps(this, getInetAddress(), m_config.getSnmpTrapPort());
+                if (m_transport != null) {
+                    unregisterReceivers();
+                } else {
+                    SnmpUtils.unregisterForTraps(this, getInetAddress(), m_config.getSnmpTrapPort());
+                }
                 m_registeredForTraps = false;
                 LOG.debug("stop: SNMP trap session closed.");
             } else {
@@ -180,6 +242,48 @@ public class TrapListener implements TrapNotificationListener {
         LOG.info("TrapListener service has been restarted.");
     }
 
+    /**
+     * Receives the traps with Netty on several sockets, see {@link NettyTrapTransportMapping}.
+     * When the platform cannot bind several sockets to the same port, the
+     * traps are decoded by a pool of threads instead.
+     */
+    private void registerReceivers(final InetAddress address, final int port) throws IOException {
+        final UdpAddress udpAddress = address == null ? new UdpAddress(port) : new UdpAddress(address, port);
+        final NettyTrapTransportMapping transport = new NettyTrapTransportMapping(udpAddress, m_config.getReceiveThreads());
+        transport.setReadCompleteListener(this::flushPendingTraps);
+        if (!transport.isReusePort() && m_config.getReceiveThreads() > 1) {
+            LOG.info("Several sockets cannot be bound to the trap port, decoding the traps with {} threads instead.", m_config.getReceiveThreads());
+            m_workerPool = ThreadPool.create("OpenNMS.Trapd.Decoder", m_config.getReceiveThreads());
+        }
+        m_transport = transport;
+        try {
+            if (m_snmp4JStrategy == null) {
+                m_snmp4JStrategy = new Snmp4JStrategy();
+            }
+            m_snmp4JStrategy.registerForTraps(this, address, port, transport, m_workerPool, m_config.getSnmpV3Users());
+        } catch (IOException | RuntimeException e) {
+            m_transport = null;
+            stopWorkerPool();
+            throw e;
+        }
+    }
+
+    private void unregisterReceivers() throws IOException {
+        try {
+            m_snmp4JStrategy.unregisterForTraps(this, getInetAddress(), m_config.getSnmpTrapPort());
+        } finally {
+            m_transport = null;
+            stopWorkerPool();
+        }
+    }
+
+    private void stopWorkerPool() {
+        if (m_workerPool != null) {
+            m_workerPool.stop();
+            m_workerPool = null;
+        }
+    }
+
     private InetAddress getInetAddress() {
         if (m_config.getSnmpTrapAddress().equals("*")) {
             return null;
@@ -187,19 +291,29 @@ public class TrapListener implements TrapNotificationListener {
         return InetAddressUtils.addr(m_config.getSnmpTrapAddress());
     }
 
-    // We only want to create the messageDispatcher once
+    // We only want to create the messageDispatcher once, traps may be received by several threads
     private AsyncDispatcher<TrapInformationWrapper> getMessageDispatcher() {
-        if (m_dispatcher == null) {
-            Objects.requireNonNull(m_messageDispatcherFactory);
-            m_dispatcher = m_messageDispatcherFactory.createAsyncDispatcher(new TrapSinkModule(m_config, m_distPollerDao.whoami()));
+        AsyncDispatcher<TrapInformationWrapper> dispatcher = m_dispatcher;
+        if (dispatcher == null) {
+            synchronized (this) {
+                dispatcher = m_dispatcher;
+                if (dispatcher == null) {
+                    Objects.requireNonNull(m_messageDispatcherFactory);
+                    dispatcher = m_messageDispatcherFactory.createAsyncDispatcher(new TrapSinkModule(m_config, m_distPollerDao.whoami()));
+                    m_dispatcher = dispatcher;
+                }
+            }
         }
-        return m_dispatcher;
+        return dispatcher;
     }
 
     protected boolean hasConfigurationChanged(TrapdConfig newConfig) {
         if (newConfig.getSnmpTrapPort() != m_config.getSnmpTrapPort()) {
             LOG.info("SNMP trap port has been updated from trapd-confguration.xml.");
             return true;
+        } else if (newConfig.getReceiveThreads() != m_config.getReceiveThreads()) {
+            LOG.info("Number of trap receive threads has been updated from trapd-confguration.xml.");
+            return true;
         } else if (
                 newConfig.getSnmpTrapAddress() != null
                         && !newConfig.getSnmpTrapAddress().equalsIgnoreCase("*")
@@ -62,6 +62,7 @@ public class TrapdConfigBean implements TrapdConfig, Serializable {
 	private int batchSize;
 	private int queueSize;
 	private int numThreads;
+	private int receiveThreads;
 	private boolean useAddressFromVarbind;
 
 	public TrapdConfigBean() {
@@ -81,6 +82,7 @@ public class TrapdConfigBean implements TrapdConfig, Serializable {
 		setBatchSize(trapdConfiguration.getBatchSize());
 		setQueueSize(trapdConfiguration.getQueueSize());
 		setNumThreads(trapdConfiguration.getThreads());
+		setReceiveThreads(trapdConfiguration.getReceiveThreads());
 		if (trapdConfiguration.getSnmpv3UserCollection() != null) {
 			setSnmpV3Users(trapdConfiguration.getSnmpv3UserCollection().stream()
 						.map(TrapdConfigBean::toSnmpV3User)
@@ -171,6 +173,7 @@ public class TrapdConfigBean implements TrapdConfig, Serializable {
 		setBatchSize(config.getBatchSize());
 		setQueueSize(config.getQueueSize());
 		setNumThreads(config.getNumThreads());
+		setReceiveThreads(config.getReceiveThreads());
 		setSnmpV3Users(config.getSnmpV3Users());
 	}
 
@@ -190,6 +193,15 @@ public class TrapdConfigBean implements TrapdConfig, Serializable {
 		this.numThreads = numThreads;
 	}
 
+	@Override
+	public int getReceiveThreads() {
+		return receiveThreads;
+	}
+
+	public void setReceiveThreads(int receiveThreads) {
+		this.receiveThreads = receiveThreads;
+	}
+
 	private static SnmpV3User toSnmpV3User(Snmpv3User snmpv3User) {
 		SnmpV3User snmpV3User = new SnmpV3User();
 		snmpV3User.setAuthPassPhrase(snmpv3User.getAuthPassphrase());
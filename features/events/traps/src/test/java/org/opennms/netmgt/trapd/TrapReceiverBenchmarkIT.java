@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.opennms.core.ipc.sink.api.AsyncDispatcher;
+import org.opennms.core.ipc.sink.api.Message;
+import org.opennms.core.ipc.sink.api.MessageDispatcherFactory;
+import org.opennms.core.ipc.sink.api.SinkModule;
+import org.opennms.core.ipc.sink.api.SyncDispatcher;
+import org.opennms.netmgt.dao.api.DistPollerDao;
+import org.opennms.netmgt.model.OnmsDistPoller;
+import org.opennms.netmgt.snmp.snmp4j.Snmp4JUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.PDU;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.TimeTicks;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * Sends traps over the loopback interface to a {@link TrapListener} receiving
+ * them with Netty, and reports the number of traps received per second and
+ * the number of traps dropped on the way.
+ *
+ * The benchmark only runs when the org.opennms.trapd.benchmark system
+ * property is set to true.
+ */
+public class TrapReceiverBenchmarkIT {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TrapReceiverBenchmarkIT.class);
+
+    private final AtomicLong m_received = new AtomicLong();
+    private final AtomicInteger m_sends = new AtomicInteger();
+    private final AtomicInteger m_batches = new AtomicInteger();
+
+    private TrapListener m_listener;
+
+    @After
+    public void tearDown() {
+        if (m_listener != null) {
+            m_listener.stop();
+        }
+    }
+
+    @Test(timeout=60000)
+    public void testSingleSocketBatchesTraps() throws Exception {
+        final int port = startListener(1);
+
+        final int traps = 100;
+        sendTraps(port, 1, traps);
+        waitForTraps(traps, 10000);
+
+        // the traps are decoded on the receiving thread and sent per read,
+        // UDP may drop some of them
+        assertTrue(m_received.get() > 0);
+        assertEquals(0, m_sends.get());
+        assertTrue(m_batches.get() > 0);
+    }
+
+    @Test(timeout=120000)
+    public void testLoopbackBenchmark() throws Exception {
+        assumeTrue(Boolean.getBoolean("org.opennms.trapd.benchmark"));
+        final int receiveThreads = Integer.getInteger("org.opennms.trapd.benchmark.threads", 4);
+        final int senders = Integer.getInteger("org.opennms.trapd.benchmark.senders", 4);
+        final int traps = Integer.getInteger("org.opennms.trapd.benchmark.traps", 50000);
+        final int port = startListener(receiveThreads);
+
+        final long start = System.nanoTime();
+        sendTraps(port, senders, traps);
+        waitForTraps(traps, 10000);
+        final long elapsed = Math.max(1, System.nanoTime() - start);
+
+        final long received = m_received.get();
+        LOG.info("testLoopbackBenchmark: receive threads: {}, senders: {}, traps sent: {}, received: {}, dropped: {}, {} traps/s, batches: {}",
+                 receiveThreads, senders, traps, received, traps - received,
+                 received * 1000000000L / elapsed, m_batches.get());
+        assertTrue(received > 0);
+    }
+
+    private int startListener(int receiveThreads) throws Exception {
+        final int port;
+        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            port = socket.getLocalPort();
+        }
+
+        final TrapdConfigBean config = new TrapdConfigBean();
+        config.setSnmpTrapAddress(InetAddress.getLoopbackAddress().getHostAddress());
+        config.setSnmpTrapPort(port);
+        config.setReceiveThreads(receiveThreads);
+        config.setBatchSize(1000);
+        config.setBatchIntervalMs(500);
+        config.setQueueSize(10000);
+
+        final DistPollerDao distPollerDao = Mockito.mock(DistPollerDao.class);
+        Mockito.when(distPollerDao.whoami()).thenReturn(Mockito.mock(OnmsDistPoller.class));
+
+        m_listener = new TrapListener(config);
+        m_listener.setDistPollerDao(distPollerDao);
+        m_listener.setMessageDispatcherFactory(new CountingDispatcherFactory());
+        m_listener.start();
+        return port;
+    }
+
+    private static void sendTraps(int port, int senders, int traps) throws Exception {
+        final PDU pdu = new PDU();
+        pdu.setType(PDU.TRAP);
+        pdu.add(new VariableBinding(SnmpConstants.sysUpTime, new TimeTicks(1000)));
+        pdu.add(new VariableBinding(SnmpConstants.snmpTrapOID, new OID(".1.3.6.1.4.1.5813.1.1")));
+        final InetAddress address = InetAddress.getLoopbackAddress();
+        final byte[] bytes = Snmp4JUtils.convertPduToBytes(address, port, "public", pdu);
+
+        // every sender uses a socket of its own so that the datagrams are spread
+        final List<Thread> threads = new ArrayList<>(senders);
+        for (int i = 0; i < senders; i++) {
+            final int count = traps / senders + (i < traps % senders ? 1 : 0);
+            final Thread thread = new Thread(() -> {
+                try (DatagramSocket socket = new DatagramSocket()) {
+                    final DatagramPacket packet = new DatagramPacket(bytes, bytes.length, address, port);
+                    for (int j = 0; j < count; j++) {
+                        socket.send(packet);
+                    }
+                } catch (Exception e) {
+                    LOG.error("Failed to send traps", e);
+                }
+            }, "TrapSender-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private void waitForTraps(int traps, long timeoutMs) throws InterruptedException {
+        // stop waiting once everything arrived, or nothing arrives anymore
+        final long deadline = System.currentTimeMillis() + timeoutMs;
+        long previous = -1;
+        while (m_received.get() < traps && m_received.get() != previous && System.currentTimeMillis() < deadline) {
+            previous = m_received.get();
+            Thread.sleep(250);
+        }
+    }
+
+    private class CountingDispatcherFactory implements MessageDispatcherFactory {
+        @Override
+        public <S extends Message, T extends Message> SyncDispatcher<S> createSyncDispatcher(SinkModule<S, T> module) {
+            throw new UnsupportedOperationException();
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        @Override
+        public <S extends Message, T extends Message> AsyncDispatcher<S> createAsyncDispatcher(SinkModule<S, T> module) {
+            return (AsyncDispatcher)new CountingDispatcher();
+        }
+    }
+
+    private class CountingDispatcher implements AsyncDispatcher<TrapInformationWrapper> {
+        @Override
+        public CompletableFuture<TrapInformationWrapper> send(TrapInformationWrapper message) {
+            m_sends.incrementAndGet();
+            m_received.incrementAndGet();
+            return CompletableFuture.completedFuture(message);
+        }
+
+        @Override
+        public CompletableFuture<Integer> sendAll(Collection<TrapInformationWrapper> messages) {
+            m_batches.incrementAndGet();
+            m_received.addAndGet(messages.size());
+            return CompletableFuture.completedFuture(0);
+        }
+
+        @Override
+        public int getQueueSize() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+            // pass
+        }
+    }
+}
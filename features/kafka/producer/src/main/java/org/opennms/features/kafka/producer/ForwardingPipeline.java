@@ -0,0 +1,438 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.features.kafka.producer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Decouples the event and alarm listeners from the Kafka producer.
+ *
+ * Listeners submit records to one of several bounded queues, chosen by the
+ * record key so that the records of the same alarm (or node) are always
+ * sent in order. Every queue is drained in batches by its own worker, which
+ * maps the records and refreshes all the nodes referenced by the batch at
+ * once before sending them. When a queue is full the record is dropped
+ * instead of blocking the listener.
+ *
+ * Records that Kafka fails to deliver are appended to an optional
+ * {@link OverflowBuffer}. While the buffer is not empty all new records
+ * are appended to it as well, to preserve their order, and a background
+ * task replays the buffer until Kafka is available again.
+ *
+ * Records that were already in flight when a send failed may still be
+ * delivered before the failed record is replayed. Kafka acknowledges the
+ * records of a partition in order, so when a newer record with the key of a
+ * failed one is acknowledged while overflowing, it is appended to the buffer
+ * again and replayed after the failed record: the latest state of the key
+ * is delivered last.
+ */
+public class ForwardingPipeline implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(ForwardingPipeline.class);
+
+    private static final long POLL_TIMEOUT_MS = 500;
+    private static final long DEFAULT_REPLAY_INTERVAL_MS = TimeUnit.SECONDS.toMillis(5);
+    private static final long REPLAY_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private final Producer<String, byte[]> producer;
+    private final Consumer<Set<Long>> nodeEnricher;
+    private final OverflowBuffer overflow;
+    private final int batchSize;
+    private final List<BlockingQueue<PendingRecord>> queues = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final Map<String, TopicStats> statsByTopic = new ConcurrentHashMap<>();
+    private final Object overflowLock = new Object();
+    // topic and key of the records that failed since the buffer started to overflow, guarded by overflowLock
+    private final Set<String> failedKeys = new HashSet<>();
+
+    private long replayIntervalMs = DEFAULT_REPLAY_INTERVAL_MS;
+    private volatile boolean running = false;
+    private volatile boolean overflowing = false;
+    private ScheduledExecutorService replayer;
+
+    /**
+     * @param nodeEnricher called by the workers with the ids of the nodes referenced by a batch, may be null
+     * @param overflow the buffer of the records that could not be delivered, may be null
+     */
+    public ForwardingPipeline(Producer<String, byte[]> producer, Consumer<Set<Long>> nodeEnricher, OverflowBuffer overflow,
+                              int threads, int queueSize, int batchSize) {
+        this.producer = producer;
+        this.nodeEnricher = nodeEnricher;
+        this.overflow = overflow;
+        this.batchSize = Math.max(1, batchSize);
+        final int numThreads = Math.max(1, threads);
+        for (int i = 0; i < numThreads; i++) {
+            queues.add(new ArrayBlockingQueue<>(Math.max(1, queueSize / numThreads)));
+        }
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < queues.size(); i++) {
+            final BlockingQueue<PendingRecord> queue = queues.get(i);
+            final Thread worker = new Thread(() -> runWorker(queue), "kafka-producer-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        if (overflow != null) {
+            overflow.getRecoveredByTopic().forEach((topic, count) -> {
+                for (long i = 0; i < count; i++) {
+                    getStats(topic).onRecovered();
+                }
+            });
+            overflowing = !overflow.isEmpty();
+            replayer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("kafka-producer-overflow-replay-%d")
+                    .setDaemon(true)
+                    .build());
+            replayer.scheduleWithFixedDelay(this::replay, replayIntervalMs, replayIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queues a record without blocking.
+     *
+     * @param partitionKey records with the same partition key are sent in order
+     * @param nodeId the node to forward before the record, may be null
+     * @param callable maps the record on a worker thread, returns null to skip the record
+     * @param callback called once the record was acknowledged, may be null
+     * @return false if the queue was full and the record was dropped
+     */
+    public boolean submit(String topic, String partitionKey, Long nodeId,
+                          Callable<ProducerRecord<String, byte[]>> callable, Consumer<RecordMetadata> callback) {
+        final TopicStats stats = getStats(topic);
+        stats.onQueued();
+        if (!queues.get(partition(partitionKey)).offer(new PendingRecord(stats, nodeId, callable, callback))) {
+            stats.onDropped();
+            LOG.debug("Forwarding queue is full, dropping record for topic: {} with key: {}.", topic, partitionKey);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sends a record that is already mapped, e.g. from the node enricher.
+     */
+    public void send(ProducerRecord<String, byte[]> record, Consumer<RecordMetadata> callback) {
+        final TopicStats stats = getStats(record.topic());
+        stats.onQueued();
+        doSend(record, stats, callback);
+    }
+
+    private void runWorker(BlockingQueue<PendingRecord> queue) {
+        final List<PendingRecord> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                final PendingRecord first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                LOG.error("Unexpected error while forwarding records.", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<PendingRecord> batch) {
+        if (nodeEnricher != null) {
+            // a single lookup for all the nodes referenced by the batch
+            final Set<Long> nodeIds = new LinkedHashSet<>();
+            for (PendingRecord pending : batch) {
+                if (pending.nodeId != null) {
+                    nodeIds.add(pending.nodeId);
+                }
+            }
+            if (!nodeIds.isEmpty()) {
+                try {
+                    nodeEnricher.accept(nodeIds);
+                } catch (RuntimeException e) {
+                    LOG.warn("Failed to forward nodes: {}.", nodeIds, e);
+                }
+            }
+        }
+
+        for (PendingRecord pending : batch) {
+            final ProducerRecord<String, byte[]> record;
+            try {
+                record = pending.callable.call();
+            } catch (Exception e) {
+                LOG.error("Failed to map record for topic: {}. The record will be dropped.", pending.stats.getTopic(), e);
+                pending.stats.onDropped();
+                continue;
+            }
+            if (record == null) {
+                pending.stats.onSkipped();
+                continue;
+            }
+            doSend(record, pending.stats, pending.callback);
+        }
+    }
+
+    private void doSend(ProducerRecord<String, byte[]> record, TopicStats stats, Consumer<RecordMetadata> callback) {
+        if (overflow != null) {
+            synchronized (overflowLock) {
+                if (overflowing) {
+                    appendToOverflow(record, stats);
+                    return;
+                }
+            }
+        }
+
+        try {
+            producer.send(record, (recordMetadata, e) -> {
+                if (e != null) {
+                    LOG.warn("Failed to send record to producer: {}.", record, e);
+                    onSendFailed(record, stats);
+                    return;
+                }
+                stats.onSent();
+                onSendSucceeded(record, stats);
+                if (callback != null) {
+                    callback.accept(recordMetadata);
+                }
+            });
+        } catch (KafkaException e) {
+            LOG.warn("Failed to send record to producer: {}.", record, e);
+            onSendFailed(record, stats);
+        }
+    }
+
+    private void onSendFailed(ProducerRecord<String, byte[]> record, TopicStats stats) {
+        if (overflow == null) {
+            stats.onDropped();
+            return;
+        }
+        synchronized (overflowLock) {
+            if (!overflowing) {
+                LOG.warn("Kafka is unavailable, records will be written to the overflow buffer until it is available again.");
+                overflowing = true;
+            }
+            if (appendToOverflow(record, stats) && record.key() != null) {
+                failedKeys.add(getFailedKey(record));
+            }
+        }
+    }
+
+    /**
+     * Appends a record that was delivered after an older record with the
+     * same key failed, so that it is replayed after the failed record.
+     */
+    private void onSendSucceeded(ProducerRecord<String, byte[]> record, TopicStats stats) {
+        if (overflow == null || record.key() == null) {
+            return;
+        }
+        synchronized (overflowLock) {
+            if (!overflowing || !failedKeys.contains(getFailedKey(record))) {
+                return;
+            }
+            try {
+                if (overflow.append(record)) {
+                    stats.onReappended();
+                } else {
+                    LOG.warn("Overflow buffer is full, the record for topic: {} with key: {} may be replayed out of order.", record.topic(), record.key());
+                }
+            } catch (IOException e) {
+                LOG.error("Failed to write record to the overflow buffer, the record for topic: {} with key: {} may be replayed out of order.", record.topic(), record.key(), e);
+            }
+        }
+    }
+
+    private static String getFailedKey(ProducerRecord<String, byte[]> record) {
+        return record.topic() + '\0' + record.key();
+    }
+
+    private boolean appendToOverflow(ProducerRecord<String, byte[]> record, TopicStats stats) {
+        try {
+            if (overflow.append(record)) {
+                stats.onOverflowed();
+                return true;
+            }
+            LOG.warn("Overflow buffer is full, dropping record for topic: {} with key: {}.", record.topic(), record.key());
+        } catch (IOException e) {
+            LOG.error("Failed to write record to the overflow buffer, the record will be dropped.", e);
+        }
+        stats.onDropped();
+        return false;
+    }
+
+    /**
+     * Replays the overflow buffer in order, stops at the first failure.
+     */
+    private void replay() {
+        if (!overflowing) {
+            return;
+        }
+        try {
+            while (running) {
+                final List<ProducerRecord<String, byte[]>> records = overflow.peek(batchSize);
+                if (records.isEmpty()) {
+                    synchronized (overflowLock) {
+                        if (overflow.isEmpty()) {
+                            overflowing = false;
+                            failedKeys.clear();
+                            LOG.info("All the records of the overflow buffer were delivered.");
+                            return;
+                        }
+                    }
+                    continue;
+                }
+                final List<Future<RecordMetadata>> futures = new ArrayList<>(records.size());
+                for (ProducerRecord<String, byte[]> record : records) {
+                    futures.add(producer.send(record));
+                }
+                for (Future<RecordMetadata> future : futures) {
+                    future.get(REPLAY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                }
+                overflow.remove(records.size());
+                for (ProducerRecord<String, byte[]> record : records) {
+                    getStats(record.topic()).onReplayed();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOG.debug("Failed to replay the overflow buffer, will try again in {}ms: {}", replayIntervalMs, e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the workers and sends the records that are still queued.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            running = false;
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        workers.clear();
+        if (replayer != null) {
+            replayer.shutdownNow();
+            replayer = null;
+        }
+
+        final List<PendingRecord> remaining = new ArrayList<>();
+        for (BlockingQueue<PendingRecord> queue : queues) {
+            queue.drainTo(remaining);
+        }
+        if (!remaining.isEmpty()) {
+            LOG.info("Forwarding {} queued records before shutting down.", remaining.size());
+            process(remaining);
+        }
+    }
+
+    public void setReplayIntervalMs(long replayIntervalMs) {
+        this.replayIntervalMs = replayIntervalMs;
+    }
+
+    private int partition(String partitionKey) {
+        if (partitionKey == null) {
+            return 0;
+        }
+        return (partitionKey.hashCode() & Integer.MAX_VALUE) % queues.size();
+    }
+
+    private TopicStats getStats(String topic) {
+        return statsByTopic.computeIfAbsent(topic, TopicStats::new);
+    }
+
+    public Map<String, TopicStats> getTopicStats() {
+        return new TreeMap<>(statsByTopic);
+    }
+
+    public int getQueueSize() {
+        int size = 0;
+        for (BlockingQueue<PendingRecord> queue : queues) {
+            size += queue.size();
+        }
+        return size;
+    }
+
+    public boolean isOverflowing() {
+        return overflowing;
+    }
+
+    private static class PendingRecord {
+        private final TopicStats stats;
+        private final Long nodeId;
+        private final Callable<ProducerRecord<String, byte[]>> callable;
+        private final Consumer<RecordMetadata> callback;
+
+        private PendingRecord(TopicStats stats, Long nodeId, Callable<ProducerRecord<String, byte[]>> callable,
+                              Consumer<RecordMetadata> callback) {
+            this.stats = stats;
+            this.nodeId = nodeId;
+            this.callable = callable;
+            this.callback = callback;
+        }
+    }
+}
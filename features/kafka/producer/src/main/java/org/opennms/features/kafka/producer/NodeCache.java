@@ -28,9 +28,13 @@
 
 package org.opennms.features.kafka.producer;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 import org.opennms.netmgt.dao.api.NodeDao;
@@ -79,6 +83,48 @@ public class NodeCache {
         });
     }
 
+    /**
+     * Looks up all the given nodes that were not updated within the timeout
+     * in a single transaction and triggers the consumer for each of them.
+     * The consumer is called with a null node if the node was deleted.
+     */
+    public void triggerIfNeeded(Collection<Long> nodeIds, BiConsumer<Long, OnmsNode> consumer) {
+        final long now = System.currentTimeMillis();
+        final List<Long> nodeIdsToUpdate = new ArrayList<>(nodeIds.size());
+        synchronized (this) {
+            for (Long nodeId : nodeIds) {
+                final Long lastUpdated = lastUpdatedByNodeId.get(nodeId);
+                if (lastUpdated != null && now - lastUpdated <= timeoutInMs) {
+                    // No update required
+                    continue;
+                }
+                // Mark the node as updated right away, so that other threads don't look it up as well
+                lastUpdatedByNodeId.put(nodeId, now);
+                nodeIdsToUpdate.add(nodeId);
+            }
+        }
+        if (nodeIdsToUpdate.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionOperations.execute((TransactionCallback<Void>) status -> {
+                for (Long nodeId : nodeIdsToUpdate) {
+                    // Trigger the consumer while holding the transaction
+                    // in order to allow relationships to be loaded
+                    consumer.accept(nodeId, nodeDao.get(nodeId.intValue()));
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // Try again on the next trigger
+            synchronized (this) {
+                nodeIdsToUpdate.forEach(lastUpdatedByNodeId::remove);
+            }
+            throw e;
+        }
+    }
+
     public void setTimeoutInMs(long timeoutInMs) {
         this.timeoutInMs = timeoutInMs;
     }
@@ -28,13 +28,18 @@
 
 package org.opennms.features.kafka.producer;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import org.apache.kafka.clients.producer.KafkaProducer;
@@ -42,6 +47,7 @@ import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.opennms.features.kafka.producer.datasync.PendingAlarmSends;
 import org.opennms.features.kafka.producer.model.OpennmsModelProtos;
 import org.opennms.netmgt.alarmd.api.AlarmLifecycleListener;
 import org.opennms.netmgt.alarmd.api.AlarmLifecycleSubscriptionService;
@@ -64,6 +70,11 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
     public static final String KAFKA_CLIENT_PID = "org.opennms.features.kafka.producer.client";
     private static final ExpressionParser SPEL_PARSER = new SpelExpressionParser();
 
+    /**
+     * Alarms sent longer ago without acknowledgement are considered lost by the alarm synchronization.
+     */
+    private static final long PENDING_ALARM_SEND_EXPIRY_MS = TimeUnit.MINUTES.toMillis(5);
+
     private final ProtobufMapper protobufMapper;
     private final NodeCache nodeCache;
     private final ConfigurationAdmin configAdmin;
@@ -84,7 +95,17 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
     private final CountDownLatch forwardedAlarm = new CountDownLatch(1);
     private final CountDownLatch forwardedNode = new CountDownLatch(1);
 
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private int queueSize = 10000;
+    private int batchSize = 100;
+    private String overflowDirectory;
+    private long overflowMaxSizeMb = 256;
+
     private KafkaProducer<String, byte[]> producer;
+    private OverflowBuffer overflowBuffer;
+    private ForwardingPipeline pipeline;
+
+    private final PendingAlarmSends pendingAlarmSends = new PendingAlarmSends(PENDING_ALARM_SEND_EXPIRY_MS);
 
     public OpennmsKafkaProducer(ProtobufMapper protobufMapper, NodeCache nodeCache,
                                 ConfigurationAdmin configAdmin, EventSubscriptionService eventSubscriptionService,
@@ -120,6 +141,14 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
             Thread.currentThread().setContextClassLoader(currentClassLoader);
         }
 
+        final File overflowFile = getOverflowFile();
+        if (overflowFile != null) {
+            overflowBuffer = new OverflowBuffer(overflowFile, overflowMaxSizeMb * 1024 * 1024);
+        }
+        pipeline = new ForwardingPipeline(producer, forwardNodes ? this::maybeUpdateNodes : null, overflowBuffer,
+                numThreads, queueSize, batchSize);
+        pipeline.start();
+
         if (forwardEvents) {
             eventSubscriptionService.addEventListener(this);
         }
@@ -129,17 +158,41 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
     }
 
     public void destroy() {
+        if (forwardEvents) {
+            eventSubscriptionService.removeEventListener(this);
+        }
+        if (forwardAlarms) {
+            alarmLifecycleSubscriptionService.removeAlarmLifecycleListener(this);
+        }
+
+        if (pipeline != null) {
+            pipeline.close();
+        }
         if (producer != null) {
             producer.close();
             producer = null;
         }
+        if (overflowBuffer != null) {
+            try {
+                overflowBuffer.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the overflow buffer.", e);
+            }
+            overflowBuffer = null;
+        }
+        pipeline = null;
+    }
 
-        if (forwardEvents) {
-            eventSubscriptionService.removeEventListener(this);
+    private File getOverflowFile() {
+        if (!Strings.isNullOrEmpty(overflowDirectory)) {
+            return new File(overflowDirectory, "overflow.dat");
         }
-        if (forwardAlarms) {
-            alarmLifecycleSubscriptionService.removeAlarmLifecycleListener(this);
+        final String karafData = System.getProperty("karaf.data");
+        if (karafData != null) {
+            return new File(new File(new File(karafData, "kafka"), "producer-overflow"), "overflow.dat");
         }
+        LOG.info("No overflow directory configured, records that can't be delivered will be dropped.");
+        return null;
     }
 
     private void forwardEvent(Event event) {
@@ -162,12 +215,10 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
         }
 
         // Node handling
-        if (forwardNodes && event.getNodeid() != null && event.getNodeid() != 0) {
-            maybeUpdateNode(event.getNodeid());
-        }
+        final Long nodeId = forwardNodes && event.getNodeid() != null && event.getNodeid() != 0 ? event.getNodeid() : null;
 
-        // Forward!
-        sendRecord(() -> {
+        // Forward! The event is mapped by the pipeline workers
+        sendRecord(eventTopic, event.getUei(), nodeId, () -> {
             final OpennmsModelProtos.Event mappedEvent = protobufMapper.toEvent(event).build();
             LOG.debug("Sending event with UEI: {}", mappedEvent.getUei());
             return new ProducerRecord<>(eventTopic, mappedEvent.getUei(), mappedEvent.toByteArray());
@@ -182,13 +233,9 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
         // Always push null records, no good way to perform filtering on these
         if (alarm == null) {
             // The alarm was deleted, push a null record to the reduction key
-            sendRecord(() -> {
+            sendAlarmRecord(reductionKey, null, () -> {
                 LOG.debug("Deleting alarm with reduction key: {}", reductionKey);
                 return new ProducerRecord<>(alarmTopic, reductionKey, null);
-            }, recordMetadata -> {
-                // We've got an ACK from the server that the alarm was forwarded
-                // Let other threads know when we've successfully forwarded an alarm
-                forwardedAlarm.countDown();
             });
             return;
         }
@@ -212,24 +259,38 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
         }
 
         // Node handling
-        if (forwardNodes && alarm.getNodeId() != null) {
-            maybeUpdateNode(alarm.getNodeId());
-        }
+        final Long nodeId = forwardNodes && alarm.getNodeId() != null ? alarm.getNodeId().longValue() : null;
+
+        // The alarm is mapped right away, while the session of the caller is still open
+        // to load its relationships, the rest is done by the pipeline workers
+        final OpennmsModelProtos.Alarm mappedAlarm = protobufMapper.toAlarm(alarm).build();
 
         // Forward!
-        sendRecord(() -> {
-            final OpennmsModelProtos.Alarm mappedAlarm = protobufMapper.toAlarm(alarm).build();
+        sendAlarmRecord(reductionKey, nodeId, () -> {
             LOG.debug("Sending alarm with reduction key: {}", reductionKey);
             return new ProducerRecord<>(alarmTopic, reductionKey, mappedAlarm.toByteArray());
-        }, recordMetadata -> {
+        });
+    }
+
+    /**
+     * Sends the alarm record, keeping track of it until it is acknowledged so
+     * that the alarm synchronization does not send it again in the meantime.
+     */
+    private void sendAlarmRecord(String reductionKey, Long nodeId, Callable<ProducerRecord<String,byte[]>> callable) {
+        pendingAlarmSends.onSubmitted(reductionKey);
+        final boolean submitted = sendRecord(alarmTopic, reductionKey, nodeId, callable, recordMetadata -> {
+            pendingAlarmSends.onCompleted(reductionKey);
             // We've got an ACK from the server that the alarm was forwarded
             // Let other threads know when we've successfully forwarded an alarm
             forwardedAlarm.countDown();
         });
+        if (!submitted) {
+            pendingAlarmSends.onCompleted(reductionKey);
+        }
     }
 
-    private void maybeUpdateNode(long nodeId) {
-        nodeCache.triggerIfNeeded(nodeId, (node) -> {
+    private void maybeUpdateNodes(Set<Long> nodeIds) {
+        nodeCache.triggerIfNeeded(nodeIds, (nodeId, node) -> {
             final String nodeCriteria;
             if (node != null && node.getForeignSource() != null && node.getForeignId() != null) {
                 nodeCriteria = String.format("%s:%s", node.getForeignSource(), node.getForeignId());
@@ -239,18 +300,14 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
 
             if (node == null) {
                 // The node was deleted, push a null record
-                sendRecord(() -> {
-                    LOG.debug("Deleting node with criteria: {}", nodeCriteria);
-                    return new ProducerRecord<>(nodeTopic, nodeCriteria, null);
-                });
+                LOG.debug("Deleting node with criteria: {}", nodeCriteria);
+                pipeline.send(new ProducerRecord<>(nodeTopic, nodeCriteria, null), null);
                 return;
             }
 
-            sendRecord(() -> {
-                final OpennmsModelProtos.Node mappedNode = protobufMapper.toNode(node).build();
-                LOG.debug("Sending node with criteria: {}", nodeCriteria);
-                return new ProducerRecord<>(nodeTopic, nodeCriteria, mappedNode.toByteArray());
-            }, recordMetadata -> {
+            final OpennmsModelProtos.Node mappedNode = protobufMapper.toNode(node).build();
+            LOG.debug("Sending node with criteria: {}", nodeCriteria);
+            pipeline.send(new ProducerRecord<>(nodeTopic, nodeCriteria, mappedNode.toByteArray()), recordMetadata -> {
                 // We've got an ACK from the server that the node was forwarded
                 // Let other threads know when we've successfully forwarded a node
                 forwardedNode.countDown();
@@ -258,32 +315,12 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
         });
     }
 
-    private void sendRecord(Callable<ProducerRecord<String,byte[]>> callable) {
-        sendRecord(callable, null);
-    }
-
-    private void sendRecord(Callable<ProducerRecord<String,byte[]>> callable, Consumer<RecordMetadata> callback) {
-        if (producer == null) {
-            return;
-        }
-
-        final ProducerRecord<String,byte[]> record;
-        try {
-            record = callable.call();
-        } catch (Exception e) {
-            // Propagate
-            throw new RuntimeException(e);
+    private boolean sendRecord(String topic, String partitionKey, Long nodeId,
+                               Callable<ProducerRecord<String,byte[]>> callable, Consumer<RecordMetadata> callback) {
+        if (pipeline == null) {
+            return false;
         }
-
-        producer.send(record, (recordMetadata, e) -> {
-            if (e != null) {
-                LOG.warn("Failed to send record to producer: {}.", record, e);
-                return;
-            }
-            if (callback != null) {
-                callback.accept(recordMetadata);
-            }
-        });
+        return pipeline.submit(topic, partitionKey, nodeId, callable, callback);
     }
 
     @Override
@@ -341,6 +378,48 @@ public class OpennmsKafkaProducer implements AlarmLifecycleListener, EventListen
         }
     }
 
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads > 0 ? numThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setOverflowDirectory(String overflowDirectory) {
+        this.overflowDirectory = overflowDirectory;
+    }
+
+    public void setOverflowMaxSizeMb(long overflowMaxSizeMb) {
+        this.overflowMaxSizeMb = overflowMaxSizeMb;
+    }
+
+    /**
+     * @return the lag and drop counters of every topic
+     */
+    public Map<String, TopicStats> getTopicStats() {
+        return pipeline != null ? pipeline.getTopicStats() : Collections.emptyMap();
+    }
+
+    public int getQueueSize() {
+        return pipeline != null ? pipeline.getQueueSize() : 0;
+    }
+
+    public boolean isOverflowing() {
+        return pipeline != null && pipeline.isOverflowing();
+    }
+
+    /**
+     * @return the alarms sent that were not acknowledged yet, skipped by the alarm synchronization
+     */
+    public PendingAlarmSends getPendingAlarmSends() {
+        return pendingAlarmSends;
+    }
+
     public boolean isForwardingAlarms() {
         return forwardAlarms;
     }
@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.features.kafka.producer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded, append only file of the records that could not be delivered
+ * while Kafka was unavailable.
+ *
+ * Records are replayed in the order in which they were appended. The read
+ * position is only kept in memory, so records that were replayed right
+ * before a restart may be delivered twice: this is harmless for the
+ * compacted alarm and node topics, which are keyed.
+ *
+ * The size is bounded by the records that were not delivered yet. When the
+ * file would grow past the bound, the delivered records at its start are
+ * discarded by copying the remaining ones to a new file, which then
+ * atomically replaces the old one.
+ */
+public class OverflowBuffer implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OverflowBuffer.class);
+
+    private final File file;
+    private final long maxSize;
+    private RandomAccessFile raf;
+    private final Map<String, Long> recoveredByTopic = new LinkedHashMap<>();
+
+    private long readOffset = 0;
+    private long writeOffset = 0;
+    private long count = 0;
+
+    public OverflowBuffer(File file, long maxSize) throws IOException {
+        this.file = file;
+        this.maxSize = maxSize;
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        // left behind by a compaction that did not complete
+        Files.deleteIfExists(getCompactedFile().toPath());
+        raf = new RandomAccessFile(file, "rw");
+        recover();
+    }
+
+    /**
+     * Scans the existing records and truncates a record that was only
+     * partially written.
+     */
+    private void recover() throws IOException {
+        final long length = raf.length();
+        long offset = 0;
+        while (offset + 4 <= length) {
+            raf.seek(offset);
+            final int size = raf.readInt();
+            if (size <= 0 || offset + 4 + size > length) {
+                break;
+            }
+            final ProducerRecord<String, byte[]> record;
+            try {
+                record = readRecord(offset, size);
+            } catch (IOException e) {
+                break;
+            }
+            recoveredByTopic.merge(record.topic(), 1L, Long::sum);
+            offset += 4 + size;
+            count++;
+        }
+        if (offset != length) {
+            LOG.warn("Truncating {} bytes of incomplete records from {}.", length - offset, file);
+            raf.setLength(offset);
+        }
+        writeOffset = offset;
+        if (count > 0) {
+            LOG.info("Recovered {} records from overflow buffer {}.", count, file);
+        }
+    }
+
+    /**
+     * @return the number of records of each topic found in the buffer when it was opened
+     */
+    public Map<String, Long> getRecoveredByTopic() {
+        return recoveredByTopic;
+    }
+
+    /**
+     * @return false if the buffer is full
+     */
+    public synchronized boolean append(ProducerRecord<String, byte[]> record) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeUTF(record.topic());
+        out.writeBoolean(record.key() != null);
+        if (record.key() != null) {
+            out.writeUTF(record.key());
+        }
+        if (record.value() == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(record.value().length);
+            out.write(record.value());
+        }
+        out.flush();
+        final byte[] data = bytes.toByteArray();
+        if (writeOffset - readOffset + data.length > maxSize) {
+            return false;
+        }
+        if (writeOffset + data.length > maxSize) {
+            compact();
+        }
+        // length prefix
+        final int size = data.length - 4;
+        data[0] = (byte) (size >>> 24);
+        data[1] = (byte) (size >>> 16);
+        data[2] = (byte) (size >>> 8);
+        data[3] = (byte) size;
+        raf.seek(writeOffset);
+        raf.write(data);
+        writeOffset += data.length;
+        count++;
+        return true;
+    }
+
+    /**
+     * Returns up to max records from the read position without removing them.
+     */
+    public synchronized List<ProducerRecord<String, byte[]>> peek(int max) throws IOException {
+        final List<ProducerRecord<String, byte[]>> records = new ArrayList<>();
+        long offset = readOffset;
+        while (records.size() < max && offset < writeOffset) {
+            raf.seek(offset);
+            final int size = raf.readInt();
+            records.add(readRecord(offset, size));
+            offset += 4 + size;
+        }
+        return records;
+    }
+
+    /**
+     * Removes the given number of records, once they were delivered.
+     */
+    public synchronized void remove(int records) throws IOException {
+        for (int i = 0; i < records && readOffset < writeOffset; i++) {
+            raf.seek(readOffset);
+            readOffset += 4 + raf.readInt();
+            count--;
+        }
+        if (readOffset >= writeOffset) {
+            // everything was delivered, start again with an empty file
+            raf.setLength(0);
+            readOffset = 0;
+            writeOffset = 0;
+            count = 0;
+        }
+    }
+
+    /**
+     * Replaces the file with a copy of the records that were not delivered yet.
+     */
+    private void compact() throws IOException {
+        final File compacted = getCompactedFile();
+        try (RandomAccessFile out = new RandomAccessFile(compacted, "rw")) {
+            out.setLength(0);
+            final byte[] buffer = new byte[64 * 1024];
+            raf.seek(readOffset);
+            long remaining = writeOffset - readOffset;
+            while (remaining > 0) {
+                final int length = (int) Math.min(buffer.length, remaining);
+                raf.readFully(buffer, 0, length);
+                out.write(buffer, 0, length);
+                remaining -= length;
+            }
+            out.getFD().sync();
+        }
+        raf.close();
+        try {
+            Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writeOffset -= readOffset;
+            readOffset = 0;
+        } finally {
+            raf = new RandomAccessFile(file, "rw");
+        }
+        LOG.debug("Compacted overflow buffer {} to {} bytes.", file, writeOffset - readOffset);
+    }
+
+    private File getCompactedFile() {
+        return new File(file.getPath() + ".compact");
+    }
+
+    public synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    public synchronized long size() {
+        return count;
+    }
+
+    public synchronized long getSizeInBytes() {
+        return writeOffset - readOffset;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        raf.close();
+    }
+
+    private ProducerRecord<String, byte[]> readRecord(long offset, int size) throws IOException {
+        raf.seek(offset + 4);
+        final String topic = raf.readUTF();
+        final String key = raf.readBoolean() ? raf.readUTF() : null;
+        final int valueLength = raf.readInt();
+        byte[] value = null;
+        if (valueLength >= 0) {
+            value = new byte[valueLength];
+            raf.readFully(value);
+        }
+        return new ProducerRecord<>(topic, key, value);
+    }
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.features.kafka.producer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the records forwarded to a topic.
+ */
+public class TopicStats {
+
+    private final String topic;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+    private final AtomicLong overflowDepth = new AtomicLong();
+
+    public TopicStats(String topic) {
+        this.topic = topic;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * @return the number of records that were accepted but are not yet
+     * acknowledged by Kafka, including the records in the overflow buffer
+     */
+    public long getLag() {
+        return pending.get() + overflowDepth.get();
+    }
+
+    public long getPending() {
+        return pending.get();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getOverflowed() {
+        return overflowed.get();
+    }
+
+    public long getOverflowDepth() {
+        return overflowDepth.get();
+    }
+
+    void onQueued() {
+        pending.incrementAndGet();
+    }
+
+    void onSent() {
+        pending.decrementAndGet();
+        sent.incrementAndGet();
+    }
+
+    void onSkipped() {
+        pending.decrementAndGet();
+    }
+
+    void onDropped() {
+        pending.decrementAndGet();
+        dropped.incrementAndGet();
+    }
+
+    void onOverflowed() {
+        pending.decrementAndGet();
+        overflowed.incrementAndGet();
+        overflowDepth.incrementAndGet();
+    }
+
+    void onRecovered() {
+        overflowDepth.incrementAndGet();
+    }
+
+    void onReappended() {
+        overflowDepth.incrementAndGet();
+    }
+
+    void onReplayed() {
+        overflowDepth.decrementAndGet();
+        sent.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("topic: %s, lag: %d, sent: %d, dropped: %d, overflowed: %d, in overflow: %d",
+                topic, getLag(), getSent(), getDropped(), getOverflowed(), getOverflowDepth());
+    }
+}
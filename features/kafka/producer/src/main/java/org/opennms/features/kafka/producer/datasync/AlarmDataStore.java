@@ -42,6 +42,17 @@ public interface AlarmDataStore {
 
     OpennmsModelProtos.Alarm getAlarm(String reductionKey);
 
+    /**
+     * Reconciles all of the alarms in the database with those in the store.
+     */
     AlarmSyncResults synchronizeAlarmsWithDb();
 
+    /**
+     * Reconciles the alarms in the database with those in the store.
+     *
+     * @param fullSync when false, only the alarms that changed since the previous
+     *                 synchronization are reconciled
+     */
+    AlarmSyncResults synchronizeAlarmsWithDb(boolean fullSync);
+
 }
@@ -28,46 +28,67 @@
 
 package org.opennms.features.kafka.producer.datasync;
 
-import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
-import org.opennms.features.kafka.producer.model.OpennmsModelProtos;
-import org.opennms.netmgt.model.OnmsAlarm;
-
 public class AlarmSyncResults {
-    private final Map<String, OpennmsModelProtos.Alarm> alarmsInKtableByReductionKey;
-    private final List<OnmsAlarm> alarmsInDb;
-    private final Map<String, OnmsAlarm> alarmsInDbByReductionKey;
+    private final boolean fullSync;
+    private final long numReductionKeysChecked;
+    private final long numReductionKeysSkipped;
+    private final long numAlarmsInKtable;
+    private final long numAlarmsInDb;
     private final Set<String> reductionKeysAdded;
     private final Set<String> reductionKeysDeleted;
     private final Set<String> reductionKeysUpdated;
 
-    public AlarmSyncResults(Map<String, OpennmsModelProtos.Alarm> alarmsInKtableByReductionKey,
-                            List<OnmsAlarm> alarmsInDb,
-                            Map<String, OnmsAlarm> alarmsInDbByReductionKey,
+    public AlarmSyncResults(boolean fullSync,
+                            long numReductionKeysChecked,
+                            long numReductionKeysSkipped,
+                            long numAlarmsInKtable,
+                            long numAlarmsInDb,
                             Set<String> reductionKeysAdded,
                             Set<String> reductionKeysDeleted,
                             Set<String> reductionKeysUpdated) {
-        this.alarmsInKtableByReductionKey = Objects.requireNonNull(alarmsInKtableByReductionKey);
-        this.alarmsInDb = Objects.requireNonNull(alarmsInDb);
-        this.alarmsInDbByReductionKey = Objects.requireNonNull(alarmsInDbByReductionKey);
+        this.fullSync = fullSync;
+        this.numReductionKeysChecked = numReductionKeysChecked;
+        this.numReductionKeysSkipped = numReductionKeysSkipped;
+        this.numAlarmsInKtable = numAlarmsInKtable;
+        this.numAlarmsInDb = numAlarmsInDb;
         this.reductionKeysAdded = Objects.requireNonNull(reductionKeysAdded);
         this.reductionKeysDeleted = Objects.requireNonNull(reductionKeysDeleted);
         this.reductionKeysUpdated = Objects.requireNonNull(reductionKeysUpdated);
     }
 
-    public Map<String, OpennmsModelProtos.Alarm> getAlarmsInKtableByReductionKey() {
-        return alarmsInKtableByReductionKey;
+    /**
+     * @return true if all the alarms were reconciled, false if only the alarms
+     * that changed since the previous synchronization were
+     */
+    public boolean isFullSync() {
+        return fullSync;
+    }
+
+    public long getNumReductionKeysChecked() {
+        return numReductionKeysChecked;
+    }
+
+    /**
+     * @return the number of reduction keys that were not reconciled, since
+     * the producer was still waiting for Kafka to acknowledge their alarm
+     */
+    public long getNumReductionKeysSkipped() {
+        return numReductionKeysSkipped;
     }
 
-    public List<OnmsAlarm> getAlarmsInDb() {
-        return alarmsInDb;
+    /**
+     * @return the number of alarms in the ktable, this is an estimate when
+     * performing an incremental synchronization
+     */
+    public long getNumAlarmsInKtable() {
+        return numAlarmsInKtable;
     }
 
-    public Map<String, OnmsAlarm> getAlarmsInDbByReductionKey() {
-        return alarmsInDbByReductionKey;
+    public long getNumAlarmsInDb() {
+        return numAlarmsInDb;
     }
 
     public Set<String> getReductionKeysAdded() {
@@ -31,6 +31,9 @@ package org.opennms.features.kafka.producer.datasync;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.LinkedHashMap;
@@ -58,8 +61,11 @@ import org.apache.kafka.streams.kstream.GlobalKTable;
 import org.apache.kafka.streams.kstream.KStream;
 import org.apache.kafka.streams.kstream.KTable;
 import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.state.KeyValueIterator;
 import org.apache.kafka.streams.state.QueryableStoreTypes;
 import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.opennms.core.criteria.CriteriaBuilder;
+import org.opennms.core.criteria.restrictions.Restrictions;
 import org.opennms.features.kafka.producer.OpennmsKafkaProducer;
 import org.opennms.features.kafka.producer.ProtobufMapper;
 import org.opennms.features.kafka.producer.model.OpennmsModelProtos;
@@ -70,7 +76,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.support.TransactionOperations;
 
-import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.InvalidProtocolBufferException;
 
@@ -81,6 +86,12 @@ public class KafkaAlarmDataSync implements AlarmDataStore, Runnable {
     private static final String ALARM_STORE_NAME = "alarm_store";
     public static final String KAFKA_STREAMS_PID = "org.opennms.features.kafka.producer.streams";
 
+    /**
+     * The incremental synchronizations also look at the alarms that changed shortly before the
+     * previous one started, for the transactions that were not committed yet at that time.
+     */
+    private static final long CHANGE_WINDOW_OVERLAP_MS = TimeUnit.MINUTES.toMillis(1);
+
     private final ConfigurationAdmin configAdmin;
     private final OpennmsKafkaProducer kafkaProducer;
     private final TransactionOperations transactionOperations;
@@ -90,6 +101,11 @@ public class KafkaAlarmDataSync implements AlarmDataStore, Runnable {
 
     private String alarmTopic;
     private long alarmSyncIntervalMs;
+    private long alarmFullSyncIntervalMs = TimeUnit.HOURS.toMillis(1);
+    private int alarmSyncPageSize = 1000;
+
+    private long lastSyncStartMs = -1;
+    private long lastFullSyncMs;
 
     private KafkaStreams streams;
     private ScheduledExecutorService scheduler;
@@ -197,17 +213,17 @@ public class KafkaAlarmDataSync implements AlarmDataStore, Runnable {
     }
 
     private void doSynchronizeAlarmsWithDb() {
-        LOG.debug("Performing alarm synchronization with ktable.");
+        final boolean fullSync = lastFullSyncMs <= 0 || alarmFullSyncIntervalMs <= 0
+                || System.currentTimeMillis() - lastFullSyncMs >= alarmFullSyncIntervalMs;
+        LOG.debug("Performing {} alarm synchronization with ktable.", fullSync ? "full" : "incremental");
         try {
-            final AlarmSyncResults results = synchronizeAlarmsWithDb();
+            final AlarmSyncResults results = synchronizeAlarmsWithDb(fullSync);
             if (LOG.isDebugEnabled()) {
-                LOG.debug("Done performing alarm synchronization with the ktable. Executed {} updates.",
-                        results.getReductionKeysAdded().size()
-                                + results.getReductionKeysDeleted().size()
-                                + results.getReductionKeysUpdated().size());
+                LOG.debug("Done performing alarm synchronization with the ktable. Checked {} reduction keys and executed {} updates.",
+                        results.getNumReductionKeysChecked(), results.getNumUpdates());
                 LOG.debug("Reduction keys added to ktable: {}", results.getReductionKeysAdded());
                 LOG.debug("Reduction keys deleted from the ktable: {}", results.getReductionKeysDeleted());
-                LOG.debug("Reduction keys updated in the ktable: {}", results.getReductionKeysAdded());
+                LOG.debug("Reduction keys updated in the ktable: {}", results.getReductionKeysUpdated());
             }
         } catch (Exception e) {
             LOG.error("An error occurred while performing alarm synchronization with the ktable. Will try again after {} ms.",
@@ -216,42 +232,176 @@ public class KafkaAlarmDataSync implements AlarmDataStore, Runnable {
     }
 
     @Override
-    public synchronized AlarmSyncResults synchronizeAlarmsWithDb() {
-        // Retrieve the map of alarms by reduction key from the ktable
-        final Map<String, OpennmsModelProtos.Alarm> alarmsInKtableByReductionKey = getAlarms();
+    public AlarmSyncResults synchronizeAlarmsWithDb() {
+        return synchronizeAlarmsWithDb(true);
+    }
 
-        // Perform the synchronization in a single transaction context
-        return transactionOperations.execute(status -> {
-            final Set<String> reductionKeysInKtable = alarmsInKtableByReductionKey.keySet();
+    @Override
+    public synchronized AlarmSyncResults synchronizeAlarmsWithDb(boolean fullSync) {
+        if (!fullSync && lastSyncStartMs < 0) {
+            // The ktable may still contain alarms from before we started, reconcile everything once
+            LOG.debug("No full synchronization was performed yet, performing a full synchronization.");
+            fullSync = true;
+        }
 
-            final List<OnmsAlarm> alarmsInDb = alarmDao.findAll();
-            final Map<String, OnmsAlarm> alarmsInDbByReductionKey = alarmsInDb.stream()
-                    .collect(Collectors.toMap(OnmsAlarm::getReductionKey, a -> a));
-            final Set<String> reductionKeysInDb = alarmsInDbByReductionKey.keySet();
+        // Alarms changed after this point are reconciled by the next pass
+        final long syncStartMs = System.currentTimeMillis();
+        final PendingAlarmSends pendingSends = kafkaProducer.getPendingAlarmSends();
+        pendingSends.expire();
+        final ReadOnlyKeyValueStore<String, byte[]> store = getAlarmTableNow();
+        final SyncState state = new SyncState(pendingSends);
+        if (fullSync) {
+            synchronizeAllAlarms(store, state);
+        } else {
+            synchronizeChangedAlarms(store, new Date(lastSyncStartMs - CHANGE_WINDOW_OVERLAP_MS), state);
+        }
 
-            // Push deletes for keys that are in the ktable, but not in the database
-            final Set<String> reductionKeysNotInDb = Sets.difference(reductionKeysInKtable, reductionKeysInDb);
-            reductionKeysNotInDb.forEach(kafkaProducer::handleDeletedAlarm);
+        lastSyncStartMs = syncStartMs;
+        if (fullSync) {
+            lastFullSyncMs = syncStartMs;
+        }
+        return new AlarmSyncResults(fullSync, state.numReductionKeysChecked, state.numReductionKeysSkipped,
+                state.numAlarmsInKtable, state.numAlarmsInDb,
+                state.reductionKeysAdded, state.reductionKeysDeleted, state.reductionKeysUpdated);
+    }
 
-            // Push new entries for keys that are in the database, but not in the ktable
-            final Set<String> reductionKeysNotInKtable = Sets.difference(reductionKeysInDb, reductionKeysInKtable);
-            reductionKeysNotInKtable.forEach(rkey -> kafkaProducer.handleNewOrUpdatedAlarm(alarmsInDbByReductionKey.get(rkey)));
-
-            // Handle Updates
-            final Set<String> reductionKeysUpdated = new LinkedHashSet<>();
-            final Set<String> commonReductionKeys = Sets.intersection(reductionKeysInKtable, reductionKeysInDb);
-            commonReductionKeys.forEach(rkey -> {
-                final OnmsAlarm dbAlarm = alarmsInDbByReductionKey.get(rkey);
-                final OpennmsModelProtos.Alarm mappedDbAlarm = protobufMapper.toAlarm(dbAlarm).build();
-                final OpennmsModelProtos.Alarm alarmFromKtable = alarmsInKtableByReductionKey.get(rkey);
-                if (!Objects.equals(mappedDbAlarm, alarmFromKtable)) {
-                    kafkaProducer.handleNewOrUpdatedAlarm(dbAlarm);
-                    reductionKeysUpdated.add(rkey);
+    /**
+     * Reconciles the alarms that changed since the given time according to the database: the
+     * alarms that were created, reduced, acknowledged, suppressed or updated by an automation.
+     * The other changes, including the deleted alarms, are reconciled by the full synchronization.
+     */
+    private void synchronizeChangedAlarms(ReadOnlyKeyValueStore<String, byte[]> store, Date changedSince, SyncState state) {
+        synchronizeAlarmsInDb(store, changedSince, state);
+        state.numReductionKeysChecked = state.numAlarmsInDb;
+        state.numAlarmsInKtable = store.approximateNumEntries();
+        state.numAlarmsInDb = transactionOperations.execute(status -> alarmDao.countAll());
+    }
+
+    /**
+     * Reconciles all of the alarms without loading them all at once: the alarms in the database
+     * are walked in pages ordered by id, each in its own transaction, and the keys of the ktable
+     * are walked in chunks to find the ones that are no longer in the database.
+     */
+    private void synchronizeAllAlarms(ReadOnlyKeyValueStore<String, byte[]> store, SyncState state) {
+        synchronizeAlarmsInDb(store, null, state);
+
+        // Push deletes for keys that are in the ktable, but not in the database
+        final List<String> reductionKeys = new ArrayList<>(alarmSyncPageSize);
+        try (KeyValueIterator<String, byte[]> it = store.all()) {
+            while (it.hasNext()) {
+                reductionKeys.add(it.next().key);
+                if (reductionKeys.size() >= alarmSyncPageSize) {
+                    deleteAlarmsNotInDb(reductionKeys, state);
+                    reductionKeys.clear();
+                }
+            }
+        }
+        deleteAlarmsNotInDb(reductionKeys, state);
+        state.numReductionKeysChecked = state.numAlarmsInDb + state.reductionKeysDeleted.size();
+    }
+
+    /**
+     * Walks the alarms of the database in pages of {@link #alarmSyncPageSize} ordered by id,
+     * each in its own transaction, and reconciles them with the ktable.
+     *
+     * @param changedSince only walk the alarms that changed after this time, or null for all of them
+     */
+    private void synchronizeAlarmsInDb(ReadOnlyKeyValueStore<String, byte[]> store, Date changedSince, SyncState state) {
+        Integer lastAlarmId = 0;
+        while (lastAlarmId != null) {
+            final Integer afterAlarmId = lastAlarmId;
+            lastAlarmId = transactionOperations.execute(status -> {
+                final CriteriaBuilder builder = new CriteriaBuilder(OnmsAlarm.class)
+                        .gt("id", afterAlarmId);
+                if (changedSince != null) {
+                    builder.or(Restrictions.gt("firstEventTime", changedSince),
+                            Restrictions.gt("lastEventTime", changedSince),
+                            Restrictions.gt("alarmAckTime", changedSince),
+                            Restrictions.gt("suppressedTime", changedSince),
+                            Restrictions.gt("lastAutomationTime", changedSince));
+                }
+                final List<OnmsAlarm> alarmsInDb = alarmDao.findMatching(builder
+                        .orderBy("id").asc()
+                        .limit(alarmSyncPageSize)
+                        .toCriteria());
+                for (OnmsAlarm dbAlarm : alarmsInDb) {
+                    synchronizeAlarm(dbAlarm, store.get(dbAlarm.getReductionKey()), state);
                 }
+                state.numAlarmsInDb += alarmsInDb.size();
+                return alarmsInDb.size() < alarmSyncPageSize ? null : alarmsInDb.get(alarmsInDb.size() - 1).getId();
             });
-            return new AlarmSyncResults(alarmsInKtableByReductionKey, alarmsInDb, alarmsInDbByReductionKey,
-                    reductionKeysNotInKtable, reductionKeysNotInDb, reductionKeysUpdated);
-        });
+        }
+    }
+
+    private void deleteAlarmsNotInDb(List<String> reductionKeys, SyncState state) {
+        state.numAlarmsInKtable += reductionKeys.size();
+        if (reductionKeys.isEmpty()) {
+            return;
+        }
+        final Set<String> reductionKeysInDb = transactionOperations.execute(status ->
+                findAlarmsByReductionKey(reductionKeys).keySet());
+        for (String reductionKey : reductionKeys) {
+            if (reductionKeysInDb.contains(reductionKey)) {
+                continue;
+            }
+            if (state.pendingSends.isPending(reductionKey)) {
+                // The ktable is not up to date yet
+                state.numReductionKeysSkipped++;
+            } else {
+                kafkaProducer.handleDeletedAlarm(reductionKey);
+                state.reductionKeysDeleted.add(reductionKey);
+            }
+        }
+    }
+
+    private void synchronizeAlarm(OnmsAlarm dbAlarm, byte[] alarmBytesInKtable, SyncState state) {
+        if (state.pendingSends.isPending(dbAlarm.getReductionKey())) {
+            // The alarm was sent, but the ktable is not up to date yet
+            state.numReductionKeysSkipped++;
+            return;
+        }
+        if (alarmBytesInKtable == null) {
+            // Push new entries for keys that are in the database, but not in the ktable
+            kafkaProducer.handleNewOrUpdatedAlarm(dbAlarm);
+            state.reductionKeysAdded.add(dbAlarm.getReductionKey());
+            return;
+        }
+
+        OpennmsModelProtos.Alarm alarmFromKtable;
+        try {
+            alarmFromKtable = OpennmsModelProtos.Alarm.parseFrom(alarmBytesInKtable);
+        } catch (InvalidProtocolBufferException e) {
+            LOG.warn("Failed to parse alarm for bytes at reduction key '{}'. The alarm will be replaced.", dbAlarm.getReductionKey());
+            alarmFromKtable = null;
+        }
+        final OpennmsModelProtos.Alarm mappedDbAlarm = protobufMapper.toAlarm(dbAlarm).build();
+        if (!Objects.equals(mappedDbAlarm, alarmFromKtable)) {
+            kafkaProducer.handleNewOrUpdatedAlarm(dbAlarm);
+            state.reductionKeysUpdated.add(dbAlarm.getReductionKey());
+        }
+    }
+
+    private Map<String, OnmsAlarm> findAlarmsByReductionKey(Collection<String> reductionKeys) {
+        return alarmDao.findMatching(new CriteriaBuilder(OnmsAlarm.class)
+                .in("reductionKey", reductionKeys)
+                .toCriteria())
+                .stream()
+                .collect(Collectors.toMap(OnmsAlarm::getReductionKey, a -> a));
+    }
+
+    private static class SyncState {
+        private final PendingAlarmSends pendingSends;
+        private final Set<String> reductionKeysAdded = new LinkedHashSet<>();
+        private final Set<String> reductionKeysDeleted = new LinkedHashSet<>();
+        private final Set<String> reductionKeysUpdated = new LinkedHashSet<>();
+        private long numReductionKeysChecked;
+        private long numReductionKeysSkipped;
+        private long numAlarmsInKtable;
+        private long numAlarmsInDb;
+
+        private SyncState(PendingAlarmSends pendingSends) {
+            this.pendingSends = pendingSends;
+        }
     }
 
     private Properties loadStreamsProperties() throws IOException {
@@ -288,6 +438,14 @@ public class KafkaAlarmDataSync implements AlarmDataStore, Runnable {
         alarmSyncIntervalMs = intervalMs;
     }
 
+    public void setAlarmFullSyncIntervalMs(long intervalMs) {
+        alarmFullSyncIntervalMs = intervalMs;
+    }
+
+    public void setAlarmSyncPageSize(int pageSize) {
+        alarmSyncPageSize = Math.max(1, pageSize);
+    }
+
     private ReadOnlyKeyValueStore<String, byte[]> getAlarmTableNow() throws InvalidStateStoreException {
         return streams.store(ALARM_STORE_NAME, QueryableStoreTypes.keyValueStore());
     }
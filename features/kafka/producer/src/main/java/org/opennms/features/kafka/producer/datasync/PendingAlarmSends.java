@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.features.kafka.producer.datasync;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps track of the alarms that were submitted to the producer, but that
+ * were not acknowledged by Kafka yet, so that the alarm synchronization does
+ * not send these alarms a second time while the ktable is only lagging behind.
+ *
+ * The sends that are not acknowledged within the expiry, i.e. because they
+ * were dropped, are no longer considered pending, so that the synchronization
+ * reconciles their alarms.
+ */
+public class PendingAlarmSends {
+
+    private static class Pending {
+        private final int count;
+        private final long lastSubmittedMs;
+
+        private Pending(int count, long lastSubmittedMs) {
+            this.count = count;
+            this.lastSubmittedMs = lastSubmittedMs;
+        }
+    }
+
+    private final Map<String, Pending> pendingByReductionKey = new ConcurrentHashMap<>();
+
+    private final long expiryMs;
+
+    private final LongSupplier clock;
+
+    public PendingAlarmSends(long expiryMs) {
+        this(expiryMs, System::currentTimeMillis);
+    }
+
+    PendingAlarmSends(long expiryMs, LongSupplier clock) {
+        this.expiryMs = expiryMs;
+        this.clock = clock;
+    }
+
+    /**
+     * Records a send of the alarm with the given reduction key.
+     */
+    public void onSubmitted(String reductionKey) {
+        if (reductionKey == null) {
+            return;
+        }
+        final long now = clock.getAsLong();
+        pendingByReductionKey.merge(reductionKey, new Pending(1, now),
+                (previous, pending) -> new Pending(previous.count + 1, now));
+    }
+
+    /**
+     * Records the end of a send of the alarm with the given reduction key,
+     * either because it was acknowledged or because it was dropped.
+     */
+    public void onCompleted(String reductionKey) {
+        if (reductionKey == null) {
+            return;
+        }
+        pendingByReductionKey.computeIfPresent(reductionKey,
+                (key, pending) -> pending.count > 1 ? new Pending(pending.count - 1, pending.lastSubmittedMs) : null);
+    }
+
+    /**
+     * @return true if a send of the alarm is still waiting for an acknowledgement
+     */
+    public boolean isPending(String reductionKey) {
+        final Pending pending = reductionKey != null ? pendingByReductionKey.get(reductionKey) : null;
+        return pending != null && !isExpired(pending, clock.getAsLong());
+    }
+
+    /**
+     * Forgets the sends that were not acknowledged within the expiry.
+     */
+    public void expire() {
+        final long now = clock.getAsLong();
+        pendingByReductionKey.values().removeIf(pending -> isExpired(pending, now));
+    }
+
+    public int size() {
+        return pendingByReductionKey.size();
+    }
+
+    private boolean isExpired(Pending pending, long now) {
+        return now - pending.lastSubmittedMs >= expiryMs;
+    }
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.features.kafka.producer.shell;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.opennms.features.kafka.producer.OpennmsKafkaProducer;
+import org.opennms.features.kafka.producer.TopicStats;
+
+@Command(scope = "kafka-producer", name = "stats", description = "Displays the lag and drop counters of the forwarded topics.")
+@Service
+public class ProducerStats implements Action {
+
+    @Reference
+    private OpennmsKafkaProducer kafkaProducer;
+
+    @Override
+    public Object execute() {
+        System.out.printf("Queued records: %d\n", kafkaProducer.getQueueSize());
+        System.out.printf("Writing to the overflow buffer: %s\n\n", kafkaProducer.isOverflowing());
+        System.out.printf("%-20s %10s %12s %10s %12s %12s\n", "Topic", "Lag", "Sent", "Dropped", "Overflowed", "In overflow");
+        for (TopicStats stats : kafkaProducer.getTopicStats().values()) {
+            System.out.printf("%-20s %10d %12d %10d %12d %12d\n", stats.getTopic(), stats.getLag(), stats.getSent(),
+                    stats.getDropped(), stats.getOverflowed(), stats.getOverflowDepth());
+        }
+        return null;
+    }
+}
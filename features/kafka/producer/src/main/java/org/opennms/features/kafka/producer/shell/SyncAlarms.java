@@ -33,6 +33,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
 import org.opennms.features.kafka.producer.datasync.AlarmDataStore;
@@ -45,6 +46,9 @@ public class SyncAlarms implements Action {
     @Reference
     private AlarmDataStore alarmDataStore;
 
+    @Option(name = "-i", aliases = "--incremental", description = "Only synchronize the alarms that changed in the database since the previous synchronization.")
+    private boolean incremental = false;
+
     @Override
     public Object execute() {
         if (!waitForAlarmDataStore(alarmDataStore)) {
@@ -53,13 +57,15 @@ public class SyncAlarms implements Action {
 
         System.out.println("Performing synchronization of alarms from the database with those in the ktable.");
         final long start = System.currentTimeMillis();
-        final AlarmSyncResults results = alarmDataStore.synchronizeAlarmsWithDb();
+        final AlarmSyncResults results = alarmDataStore.synchronizeAlarmsWithDb(!incremental);
         final long delay = System.currentTimeMillis() - start;
         System.out.printf("Executed %d updates in %dms.\n\n", results.getNumUpdates(), delay);
 
-        System.out.printf("Number of reduction keys in ktable: %d\n", results.getAlarmsInKtableByReductionKey().size());
-        System.out.printf("Number of reduction keys in the db: %d (%d alarms total)\n",
-                results.getAlarmsInDbByReductionKey().size(), results.getAlarmsInDb().size());
+        System.out.printf("Synchronization: %s\n", results.isFullSync() ? "full" : "incremental");
+        System.out.printf("Number of reduction keys checked: %d\n", results.getNumReductionKeysChecked());
+        System.out.printf("Number of reduction keys with pending sends: %d\n", results.getNumReductionKeysSkipped());
+        System.out.printf("Number of reduction keys in ktable: %d\n", results.getNumAlarmsInKtable());
+        System.out.printf("Number of alarms in the db: %d\n", results.getNumAlarmsInDb());
 
         if (results.getNumUpdates() > 0) {
             System.out.print("Reduction keys added to the ktable:");
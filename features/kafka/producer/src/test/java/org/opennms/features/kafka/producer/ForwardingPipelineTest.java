@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.features.kafka.producer;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ForwardingPipelineTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private ForwardingPipeline pipeline;
+
+    @After
+    public void tearDown() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    public void canLookupNodesOncePerBatch() {
+        final MockProducer<String, byte[]> producer = new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+        final List<Set<Long>> lookups = Collections.synchronizedList(new ArrayList<>());
+        pipeline = new ForwardingPipeline(producer, lookups::add, null, 1, 100, 10);
+
+        // queue the alarms before starting the worker so that they are processed in a single batch
+        for (int i = 0; i < 5; i++) {
+            final String reductionKey = "uei.opennms.org/nodes/nodeDown::1:" + i;
+            assertTrue(pipeline.submit("alarms", reductionKey, 1L, () -> new ProducerRecord<>("alarms", reductionKey, new byte[0]), null));
+        }
+        pipeline.start();
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> producer.history().size(), equalTo(5));
+        assertEquals(1, lookups.size());
+        assertEquals(Collections.singleton(1L), lookups.get(0));
+        assertEquals(5, pipeline.getTopicStats().get("alarms").getSent());
+        assertEquals(0, pipeline.getTopicStats().get("alarms").getLag());
+    }
+
+    @Test
+    public void canDropWhenQueueIsFull() {
+        final MockProducer<String, byte[]> producer = new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+        pipeline = new ForwardingPipeline(producer, null, null, 1, 2, 10);
+
+        assertTrue(pipeline.submit("events", "uei", null, () -> new ProducerRecord<>("events", "uei", new byte[0]), null));
+        assertTrue(pipeline.submit("events", "uei", null, () -> new ProducerRecord<>("events", "uei", new byte[0]), null));
+        assertFalse(pipeline.submit("events", "uei", null, () -> new ProducerRecord<>("events", "uei", new byte[0]), null));
+
+        final TopicStats stats = pipeline.getTopicStats().get("events");
+        assertEquals(1, stats.getDropped());
+        assertEquals(2, stats.getLag());
+    }
+
+    @Test
+    public void canOverflowAndReplayInOrder() throws Exception {
+        final File overflowFile = tempFolder.newFile();
+        final MockProducer<String, byte[]> producer = new MockProducer<>(false, new StringSerializer(), new ByteArraySerializer());
+        final OverflowBuffer overflow = new OverflowBuffer(overflowFile, 1024 * 1024);
+        pipeline = new ForwardingPipeline(producer, null, overflow, 1, 100, 10);
+        pipeline.setReplayIntervalMs(100);
+        pipeline.start();
+
+        pipeline.submit("alarms", "a", null, () -> new ProducerRecord<>("alarms", "a", new byte[]{1}), null);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> producer.history().size(), equalTo(1));
+
+        // Kafka is unavailable
+        assertTrue(producer.errorNext(new TimeoutException("Kafka is down")));
+        assertTrue(pipeline.isOverflowing());
+        assertEquals(1, overflow.size());
+
+        // new records go to the overflow buffer, behind the failed one
+        pipeline.submit("alarms", "b", null, () -> new ProducerRecord<>("alarms", "b", new byte[]{2}), null);
+        pipeline.submit("alarms", "a", null, () -> new ProducerRecord<>("alarms", "a", null), null);
+        await().atMost(10, TimeUnit.SECONDS).until(overflow::size, equalTo(3L));
+        assertEquals(3, pipeline.getTopicStats().get("alarms").getLag());
+
+        // the buffer is replayed in order once Kafka is available
+        await().atMost(10, TimeUnit.SECONDS).until(() -> {
+            // acknowledge the replayed records
+            producer.completeNext();
+            return pipeline.isOverflowing();
+        }, equalTo(false));
+
+        assertEquals(Collections.emptyList(), overflow.peek(10));
+        assertEquals("[a, a, b, a]", producer.history().stream().map(ProducerRecord::key).collect(Collectors.toList()).toString());
+        assertEquals(null, producer.history().get(3).value());
+        assertEquals(0, pipeline.getTopicStats().get("alarms").getLag());
+        assertEquals(3, pipeline.getTopicStats().get("alarms").getSent());
+        assertEquals(0, pipeline.getTopicStats().get("alarms").getDropped());
+    }
+
+    @Test
+    public void canRecoverOverflowBuffer() throws Exception {
+        final File overflowFile = tempFolder.newFile();
+        try (OverflowBuffer overflow = new OverflowBuffer(overflowFile, 1024 * 1024)) {
+            assertTrue(overflow.append(new ProducerRecord<>("alarms", "a", new byte[]{1, 2, 3})));
+            assertTrue(overflow.append(new ProducerRecord<>("nodes", "fs:1", null)));
+        }
+        // a record that was only partially written is discarded
+        try (RandomAccessFile raf = new RandomAccessFile(overflowFile, "rw")) {
+            raf.seek(raf.length());
+            raf.writeInt(100);
+            raf.write(new byte[10]);
+        }
+
+        try (OverflowBuffer overflow = new OverflowBuffer(overflowFile, 1024 * 1024)) {
+            assertEquals(2, overflow.size());
+            assertEquals(Long.valueOf(1), overflow.getRecoveredByTopic().get("nodes"));
+            final List<ProducerRecord<String, byte[]>> records = overflow.peek(10);
+            assertEquals("a", records.get(0).key());
+            assertEquals(3, records.get(0).value().length);
+            assertEquals("nodes", records.get(1).topic());
+            assertEquals(null, records.get(1).value());
+
+            overflow.remove(2);
+            assertTrue(overflow.isEmpty());
+            assertEquals(0, overflowFile.length());
+
+            // the buffer is bounded
+            final OverflowBuffer small = new OverflowBuffer(tempFolder.newFile(), 32);
+            assertTrue(small.append(new ProducerRecord<>("alarms", "a", new byte[4])));
+            assertFalse(small.append(new ProducerRecord<>("alarms", "b", new byte[4])));
+            small.close();
+        }
+    }
+
+    @Test
+    public void canReplayRecordsDeliveredAfterAFailedOne() throws Exception {
+        final File overflowFile = tempFolder.newFile();
+        final MockProducer<String, byte[]> producer = new MockProducer<>(false, new StringSerializer(), new ByteArraySerializer());
+        final OverflowBuffer overflow = new OverflowBuffer(overflowFile, 1024 * 1024);
+        pipeline = new ForwardingPipeline(producer, null, overflow, 1, 100, 10);
+        pipeline.setReplayIntervalMs(100);
+        pipeline.start();
+
+        pipeline.submit("alarms", "a", null, () -> new ProducerRecord<>("alarms", "a", new byte[]{1}), null);
+        pipeline.submit("alarms", "a", null, () -> new ProducerRecord<>("alarms", "a", new byte[]{2}), null);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> producer.history().size(), equalTo(2));
+
+        // the first record fails while the second one is in flight
+        assertTrue(producer.errorNext(new TimeoutException("Kafka is down")));
+        assertTrue(producer.completeNext());
+        // the second record is replayed after the first one
+        assertEquals(2, overflow.size());
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> {
+            producer.completeNext();
+            return pipeline.isOverflowing();
+        }, equalTo(false));
+
+        final List<ProducerRecord<String, byte[]>> history = producer.history();
+        assertEquals(4, history.size());
+        assertEquals(1, history.get(2).value()[0]);
+        assertEquals(2, history.get(3).value()[0]);
+        assertEquals(0, pipeline.getTopicStats().get("alarms").getLag());
+    }
+
+    @Test
+    public void canCompactOverflowBuffer() throws Exception {
+        final File overflowFile = tempFolder.newFile();
+        // every record takes 24 bytes
+        try (OverflowBuffer overflow = new OverflowBuffer(overflowFile, 60)) {
+            assertTrue(overflow.append(new ProducerRecord<>("alarms", "a", new byte[4])));
+            assertTrue(overflow.append(new ProducerRecord<>("alarms", "b", new byte[4])));
+            assertFalse(overflow.append(new ProducerRecord<>("alarms", "c", new byte[4])));
+
+            // the space of the delivered records is reclaimed
+            overflow.remove(1);
+            assertTrue(overflow.append(new ProducerRecord<>("alarms", "c", new byte[4])));
+            assertEquals(48, overflowFile.length());
+            assertEquals(2, overflow.size());
+            assertEquals("[b, c]", overflow.peek(10).stream().map(ProducerRecord::key).collect(Collectors.toList()).toString());
+            assertFalse(overflow.append(new ProducerRecord<>("alarms", "d", new byte[4])));
+        }
+
+        try (OverflowBuffer overflow = new OverflowBuffer(overflowFile, 60)) {
+            assertEquals(2, overflow.size());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.features.kafka.producer.datasync;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class PendingAlarmSendsTest {
+
+    @Test
+    public void canTrackPendingSends() {
+        final PendingAlarmSends pendingSends = new PendingAlarmSends(1000);
+        assertThat(pendingSends.isPending("a"), equalTo(false));
+
+        pendingSends.onSubmitted("a");
+        pendingSends.onSubmitted("a");
+        pendingSends.onSubmitted("b");
+        assertThat(pendingSends.isPending("a"), equalTo(true));
+        assertThat(pendingSends.isPending("b"), equalTo(true));
+
+        // The key stays pending until all of its sends completed
+        pendingSends.onCompleted("a");
+        assertThat(pendingSends.isPending("a"), equalTo(true));
+        pendingSends.onCompleted("a");
+        assertThat(pendingSends.isPending("a"), equalTo(false));
+        assertThat(pendingSends.size(), equalTo(1));
+
+        // Completions of unknown keys are ignored
+        pendingSends.onCompleted("c");
+        pendingSends.onSubmitted(null);
+        assertThat(pendingSends.size(), equalTo(1));
+    }
+
+    @Test
+    public void canExpireLostSends() {
+        final AtomicLong now = new AtomicLong(0);
+        final PendingAlarmSends pendingSends = new PendingAlarmSends(1000, now::get);
+        pendingSends.onSubmitted("a");
+        now.set(500);
+        pendingSends.onSubmitted("b");
+
+        now.set(1000);
+        assertThat(pendingSends.isPending("a"), equalTo(false));
+        assertThat(pendingSends.isPending("b"), equalTo(true));
+
+        pendingSends.expire();
+        assertThat(pendingSends.size(), equalTo(1));
+
+        // A new send of the key makes it pending again
+        pendingSends.onSubmitted("a");
+        assertThat(pendingSends.isPending("a"), equalTo(true));
+    }
+}
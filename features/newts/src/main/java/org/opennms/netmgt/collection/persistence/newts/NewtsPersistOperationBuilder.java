@@ -122,8 +122,12 @@ public class NewtsPersistOperationBuilder implements PersistOperationBuilder {
 
     @Override
     public void commit() throws PersistException {
-        m_newtsWriter.insert(getSamplesToInsert());
-        m_newtsWriter.index(getSamplesToIndex());
+        final boolean inserted = m_newtsWriter.insert(getSamplesToInsert());
+        final boolean indexed = m_newtsWriter.index(getSamplesToIndex());
+        if (!inserted || !indexed) {
+            // The drops are counted and logged by the writer, report them to the collector
+            throw new PersistException(new IllegalStateException("The Newts ring buffer is full, the samples of " + m_name + " were dropped."));
+        }
     }
 
     public List<Sample> getSamplesToInsert() {
@@ -216,7 +216,9 @@ public class NewtsResourceStorageDao implements ResourceStorageDao {
 
         // Index, but do not insert the sample(s)
         // The key/value pair specified in the attributes map will be merged with the others.
-        m_newtsWriter.index(Lists.newArrayList(sample));
+        if (!m_newtsWriter.index(Lists.newArrayList(sample))) {
+            LOG.warn("The Newts ring buffer is full, the string attribute {} of {} was dropped.", key, path);
+        }
     }
 
     @Override
@@ -28,11 +28,16 @@
 
 package org.opennms.netmgt.newts;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.Executor;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -50,18 +55,21 @@ import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.math.DoubleMath;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.EventTranslatorOneArg;
 import com.lmax.disruptor.FatalExceptionHandler;
 import com.lmax.disruptor.RingBuffer;
-import com.lmax.disruptor.WorkHandler;
-import com.lmax.disruptor.WorkerPool;
+import com.lmax.disruptor.SequenceBarrier;
 import com.swrve.ratelimitedlogger.RateLimitedLog;
 
 /**
@@ -70,9 +78,31 @@ import com.swrve.ratelimitedlogger.RateLimitedLog;
  * Calls to {@link #insert()} publish the samples to a ring buffer so
  * that they don't block while the data is being persisted.
  *
+ * Every writer thread consumes its share of the ring buffer entries and
+ * coalesces the samples of consecutive entries until <code>max_batch_size</code>
+ * samples are available or the ring buffer has no more entries, so that
+ * the many small batches published by the collectors are written with fewer,
+ * fuller calls to the repository. Before being written, the samples are grouped
+ * by resource, which is the partition key of the samples table, so that a
+ * batch touches as few partitions as possible.
+ *
+ * When the ring buffer is full, callers wait up to <code>ring_buffer_publish_timeout</code>
+ * milliseconds for free space before the samples are dropped. The waits are
+ * reported with the <code>ring-buffer.backpressure</code> metric and
+ * {@link #insert(List)} returns false when the samples are dropped, which the
+ * persisters report to the collectors as a persist failure.
+ *
+ * All the writer threads see every entry and the ring buffer can only wrap
+ * around past the slowest of them, so one writer thread stuck on a slow
+ * write holds back the others' space: they keep writing their own entries,
+ * but once the stuck thread is <code>ring_buffer_size</code> entries behind the
+ * ring buffer is full and the callers are throttled as above. The delay is
+ * bounded by the timeouts of the repository, since a write that fails releases
+ * the thread and its samples are counted in <code>writer.failed-samples</code>.
+ *
  * @author jwhite
  */
-public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBean {
+public class NewtsWriter implements DisposableBean {
 
     private static final Logger LOG = LoggerFactory.getLogger(NewtsWriter.class);
 
@@ -81,13 +111,19 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
             .maxRate(5).every(Duration.standardSeconds(30))
             .build();
 
+    private static final long PUBLISH_RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static final long DRAIN_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
     @Autowired
     private SampleRepository m_sampleRepository;
 
     @Autowired
     private Indexer m_indexer;
 
-    private WorkerPool<SampleBatchEvent> m_workerPool;
+    private ExecutorService m_executor;
+
+    private final List<BatchEventProcessor<SampleBatchEvent>> m_processors = new ArrayList<>();
 
     private RingBuffer<SampleBatchEvent> m_ringBuffer;
 
@@ -97,26 +133,47 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
 
     private final int m_numWriterThreads;
 
+    private final long m_publishTimeoutNanos;
+
     private final Meter m_droppedSamples;
 
+    private final Timer m_backpressure;
+
+    private final Histogram m_batchSize;
+
+    private final Timer m_insertTimer;
+
+    private final Timer m_indexTimer;
+
+    private final Meter m_insertedSamples;
+
+    private final Meter m_failedSamples;
+
     /**
      * The {@link RingBuffer} doesn't appear to expose any methods that indicate the number
      * of elements that are currently "queued", so we keep track of them with this atomic counter.
      */
     private final AtomicLong m_numEntriesOnRingBuffer = new AtomicLong();
 
+    public NewtsWriter(Integer maxBatchSize, Integer ringBufferSize, Integer numWriterThreads, MetricRegistry registry) {
+        this(maxBatchSize, ringBufferSize, numWriterThreads, 0, registry);
+    }
+
     @Inject
     public NewtsWriter(@Named("newts.max_batch_size") Integer maxBatchSize, @Named("newts.ring_buffer_size") Integer ringBufferSize,
-            @Named("newts.writer_threads") Integer numWriterThreads, MetricRegistry registry) {
+            @Named("newts.writer_threads") Integer numWriterThreads, @Named("newts.ring_buffer_publish_timeout") Integer publishTimeoutMs,
+            MetricRegistry registry) {
         Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be strictly positive");
         Preconditions.checkArgument(ringBufferSize > 0, "ringBufferSize must be positive");
         Preconditions.checkArgument(DoubleMath.isMathematicalInteger(Math.log(ringBufferSize) / Math.log(2)), "ringBufferSize must be a power of two");
         Preconditions.checkArgument(numWriterThreads > 0, "numWriterThreads must be positive");
+        Preconditions.checkArgument(publishTimeoutMs >= 0, "publishTimeoutMs must be positive or zero");
         Preconditions.checkNotNull(registry, "metric registry");
 
         m_maxBatchSize = maxBatchSize;
         m_ringBufferSize = ringBufferSize;
         m_numWriterThreads = numWriterThreads;
+        m_publishTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(publishTimeoutMs);
         m_numEntriesOnRingBuffer.set(0L);
 
         registry.register(MetricRegistry.name("ring-buffer", "size"),
@@ -135,52 +192,82 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
                 });
 
         m_droppedSamples = registry.meter(MetricRegistry.name("ring-buffer", "dropped-samples"));
-
-        LOG.debug("Using max_batch_size: {} and ring_buffer_size: {}", maxBatchSize, m_ringBufferSize);
-        setUpWorkerPool();
+        m_backpressure = registry.timer(MetricRegistry.name("ring-buffer", "backpressure"));
+        m_batchSize = registry.histogram(MetricRegistry.name("writer", "batch-size"));
+        m_insertTimer = registry.timer(MetricRegistry.name("writer", "insert"));
+        m_indexTimer = registry.timer(MetricRegistry.name("writer", "index"));
+        m_insertedSamples = registry.meter(MetricRegistry.name("writer", "inserted-samples"));
+        m_failedSamples = registry.meter(MetricRegistry.name("writer", "failed-samples"));
+
+        LOG.debug("Using max_batch_size: {}, ring_buffer_size: {} and ring_buffer_publish_timeout: {}ms",
+                maxBatchSize, m_ringBufferSize, publishTimeoutMs);
+        setUpProcessors();
     }
 
-    private void setUpWorkerPool() {
+    private void setUpProcessors() {
         // Executor that will be used to construct new threads for consumers
         final ThreadFactory namedThreadFactory = new ThreadFactoryBuilder()
                 .setNameFormat("NewtsWriter-Consumer-%d").build();
-        final Executor executor = Executors.newCachedThreadPool(namedThreadFactory);
+        m_executor = Executors.newFixedThreadPool(m_numWriterThreads, namedThreadFactory);
 
-        @SuppressWarnings("unchecked")
-        final WorkHandler<SampleBatchEvent> handlers[] = new WorkHandler[m_numWriterThreads];
+        m_ringBuffer = RingBuffer.createMultiProducer(SampleBatchEvent::new, m_ringBufferSize);
+        final SequenceBarrier barrier = m_ringBuffer.newBarrier();
         for (int i = 0; i < m_numWriterThreads; i++) {
-            handlers[i] = this;
+            final BatchEventProcessor<SampleBatchEvent> processor =
+                    new BatchEventProcessor<SampleBatchEvent>(m_ringBuffer, barrier, new Worker(i));
+            processor.setExceptionHandler(new FatalExceptionHandler());
+            m_ringBuffer.addGatingSequences(processor.getSequence());
+            m_processors.add(processor);
+        }
+        for (BatchEventProcessor<SampleBatchEvent> processor : m_processors) {
+            m_executor.execute(processor);
         }
-
-        m_ringBuffer = RingBuffer.createMultiProducer(SampleBatchEvent::new, m_ringBufferSize);
-        m_workerPool = new WorkerPool<SampleBatchEvent>(
-                m_ringBuffer,
-                m_ringBuffer.newBarrier(),
-                new FatalExceptionHandler(),
-                handlers);
-        m_ringBuffer.addGatingSequences(m_workerPool.getWorkerSequences());
-
-        m_workerPool.start(executor);
     }
 
     @Override
     public void destroy() throws Exception {
-        if (m_workerPool != null) {
-            m_workerPool.drainAndHalt();
+        if (m_ringBuffer == null) {
+            return;
         }
+        // Wait for the published entries to be written, but don't hold up the shutdown
+        // if the repository is unavailable
+        final long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (m_ringBuffer.getMinimumGatingSequence() < m_ringBuffer.getCursor()) {
+            if (System.currentTimeMillis() >= deadline) {
+                LOG.warn("Timed out after {}ms while waiting for the ring buffer to drain. {} entries will not be written.",
+                        DRAIN_TIMEOUT_MS, m_numEntriesOnRingBuffer.get());
+                break;
+            }
+            Thread.sleep(10);
+        }
+        for (BatchEventProcessor<SampleBatchEvent> processor : m_processors) {
+            processor.halt();
+        }
+        m_executor.shutdown();
+        m_executor.awaitTermination(30, TimeUnit.SECONDS);
     }
 
-    public void insert(List<Sample> samples) {
-        pushToRingBuffer(samples, TRANSLATOR);
+    /**
+     * Publishes the samples to the ring buffer.
+     *
+     * @return false if the ring buffer was full and the samples were dropped
+     */
+    public boolean insert(List<Sample> samples) {
+        return pushToRingBuffer(samples, TRANSLATOR);
     }
 
-    public void index(List<Sample> samples) {
-        pushToRingBuffer(samples, INDEX_ONLY_TRANSLATOR);
+    /**
+     * Publishes the samples to the ring buffer for indexing only.
+     *
+     * @return false if the ring buffer was full and the samples were dropped
+     */
+    public boolean index(List<Sample> samples) {
+        return pushToRingBuffer(samples, INDEX_ONLY_TRANSLATOR);
     }
 
-    private void pushToRingBuffer(List<Sample> samples, EventTranslatorOneArg<SampleBatchEvent, List<Sample>> translator) {
+    private boolean pushToRingBuffer(List<Sample> samples, EventTranslatorOneArg<SampleBatchEvent, List<Sample>> translator) {
         // Add the samples to the ring buffer
-        if (!m_ringBuffer.tryPublishEvent(translator, samples)) {
+        if (!m_ringBuffer.tryPublishEvent(translator, samples) && !waitAndPublish(samples, translator)) {
             RATE_LIMITED_LOGGER.error("The ring buffer is full. {} samples associated with resource ids {} will be dropped.",
                     samples.size(), new Object() {
                         @Override
@@ -194,43 +281,150 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
                         }
                     });
             m_droppedSamples.mark(samples.size());
-            return;
+            return false;
         }
         // Increase our entry counter
         m_numEntriesOnRingBuffer.incrementAndGet();
+        return true;
     }
 
-    @Override
-    public void onEvent(SampleBatchEvent event) throws Exception {
-        // We'd expect the logs from this thread to be in collectd.log
-        Logging.putPrefix("collectd");
+    /**
+     * Blocks the caller until there is room on the ring buffer or the
+     * publish timeout expires.
+     */
+    private boolean waitAndPublish(List<Sample> samples, EventTranslatorOneArg<SampleBatchEvent, List<Sample>> translator) {
+        if (m_publishTimeoutNanos <= 0) {
+            return false;
+        }
+        final Timer.Context context = m_backpressure.time();
+        try {
+            final long deadline = System.nanoTime() + m_publishTimeoutNanos;
+            while (System.nanoTime() < deadline) {
+                LockSupport.parkNanos(PUBLISH_RETRY_NANOS);
+                if (m_ringBuffer.tryPublishEvent(translator, samples)) {
+                    return true;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+            }
+            return false;
+        } finally {
+            context.stop();
+        }
+    }
 
-        List<Sample> samples = event.getSamples();
-        // Decrement our entry counter
-        m_numEntriesOnRingBuffer.decrementAndGet();
+    /**
+     * Handles the ring buffer entries whose sequence modulo the number of
+     * writer threads equals the ordinal of the worker.
+     */
+    private class Worker implements EventHandler<SampleBatchEvent> {
+        private final int m_ordinal;
+        private final List<Sample> m_toInsert = new ArrayList<>();
+        private final List<Sample> m_toIndex = new ArrayList<>();
+
+        private Worker(int ordinal) {
+            m_ordinal = ordinal;
+        }
 
-        // Partition the samples into collections smaller then max_batch_size
-        for (List<Sample> batch : Lists.partition(samples, m_maxBatchSize)) {
+        @Override
+        public void onEvent(SampleBatchEvent event, long sequence, boolean endOfBatch) throws Exception {
+            if (sequence % m_numWriterThreads == m_ordinal) {
+                // Decrement our entry counter
+                m_numEntriesOnRingBuffer.decrementAndGet();
+                final List<Sample> buffer = event.isIndexOnly() ? m_toIndex : m_toInsert;
+                buffer.addAll(event.getSamples());
+                // Release the reference, the entry is reused by the ring buffer
+                event.setSamples(null);
+                if (buffer.size() >= m_maxBatchSize) {
+                    flush(buffer, event.isIndexOnly());
+                }
+            }
+            // The ring buffer has no more entries available for now:
+            // write what has been coalesced instead of waiting for more
+            if (endOfBatch) {
+                flush(m_toInsert, false);
+                flush(m_toIndex, true);
+            }
+        }
+
+        private void flush(List<Sample> buffer, boolean indexOnly) {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            // We'd expect the logs from this thread to be in collectd.log
+            Logging.putPrefix("collectd");
             try {
-                if (event.isIndexOnly() && !NewtsUtils.DISABLE_INDEXING) {
+                for (List<Sample> batch : Lists.partition(groupByResource(buffer), m_maxBatchSize)) {
+                    write(batch, indexOnly);
+                }
+            } finally {
+                buffer.clear();
+            }
+        }
+    }
+
+    private void write(List<Sample> batch, boolean indexOnly) {
+        m_batchSize.update(batch.size());
+        try {
+            if (indexOnly) {
+                if (!NewtsUtils.DISABLE_INDEXING) {
                     LOG.debug("Indexing {} samples", batch.size());
-                    m_indexer.update(batch);
-                } else {
-                    LOG.debug("Inserting {} samples", batch.size());
+                    final Timer.Context context = m_indexTimer.time();
+                    try {
+                        m_indexer.update(batch);
+                    } finally {
+                        context.stop();
+                    }
+                }
+            } else {
+                LOG.debug("Inserting {} samples", batch.size());
+                final Timer.Context context = m_insertTimer.time();
+                try {
                     m_sampleRepository.insert(batch);
+                } finally {
+                    context.stop();
                 }
+                m_insertedSamples.mark(batch.size());
+            }
 
-                if (LOG.isDebugEnabled()) {
-                    String uniqueResourceIds = batch.stream()
-                        .map(s -> s.getResource().getId())
-                        .distinct()
-                        .collect(Collectors.joining(", "));
-                    LOG.debug("Successfully inserted samples for resources with ids {}", uniqueResourceIds);
-                }
-            } catch (Throwable t) {
-                RATE_LIMITED_LOGGER.error("An error occurred while inserting samples. Some sample may be lost.", t);
+            if (LOG.isDebugEnabled()) {
+                String uniqueResourceIds = batch.stream()
+                    .map(s -> s.getResource().getId())
+                    .distinct()
+                    .collect(Collectors.joining(", "));
+                LOG.debug("Successfully inserted samples for resources with ids {}", uniqueResourceIds);
+            }
+        } catch (Throwable t) {
+            m_failedSamples.mark(batch.size());
+            RATE_LIMITED_LOGGER.error("An error occurred while inserting samples. Some sample may be lost.", t);
+        }
+    }
+
+    /**
+     * Reorders the samples so that the samples of the same resource, and
+     * therefore of the same partition, are contiguous. The order of the
+     * samples of a resource is preserved.
+     */
+    @VisibleForTesting
+    static List<Sample> groupByResource(List<Sample> samples) {
+        final Map<String, List<Sample>> byResource = new LinkedHashMap<>();
+        for (Sample sample : samples) {
+            List<Sample> resourceSamples = byResource.get(sample.getResource().getId());
+            if (resourceSamples == null) {
+                resourceSamples = new ArrayList<>();
+                byResource.put(sample.getResource().getId(), resourceSamples);
             }
+            resourceSamples.add(sample);
+        }
+        if (byResource.size() == 1) {
+            return new ArrayList<>(samples);
+        }
+        final List<Sample> grouped = new ArrayList<>(samples.size());
+        for (List<Sample> resourceSamples : byResource.values()) {
+            grouped.addAll(resourceSamples);
         }
+        return grouped;
     }
 
     private static final EventTranslatorOneArg<SampleBatchEvent, List<Sample>> TRANSLATOR =
@@ -0,0 +1,611 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.newts.support;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.nustaq.serialization.FSTConfiguration;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.cassandra.search.ResourceMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * A caching strategy that stores the {@link org.opennms.newts.cassandra.search.ResourceMetadata}
+ * outside of the heap, in a memory-mapped file.
+ *
+ * The file contains a fixed size open addressing hash table, keyed by a
+ * 64 bit hash of the context and resource id, followed by an append-only
+ * region of records holding the resource key and the FST serialized metadata.
+ * A lookup is a probe in the mapped table and a deserialization of the record,
+ * so the heap usage does not depend on the number of cached resources.
+ *
+ * The file is mapped in segments of at most 1GB, so it is not limited to the
+ * 2GB a single {@link MappedByteBuffer} can address.
+ *
+ * Since the file is kept across restarts, the indexer does not need to write
+ * the whole search index again after a reboot. When the table or the record
+ * region are full, the live records are compacted to the start of the region
+ * and the table is rebuilt without the deleted entries. If the live records
+ * alone use more than three quarters of the table or of the region, the
+ * records written the longest time ago are evicted during the compaction,
+ * and their resources are indexed again just like entries evicted from the
+ * {@link GuavaSearchableResourceMetadataCache}.
+ *
+ * Searching by prefix scans the records and is meant for the infrequent
+ * lookups of the resource storage dao, not for the indexing path.
+ */
+public class MappedResourceMetadataCache implements SearchableResourceMetadataCache, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedResourceMetadataCache.class);
+
+    private static final FSTConfiguration conf = FSTConfiguration.createDefaultConfiguration();
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private static final int MAGIC = 0x4e4d4331; // NMC1
+    private static final int VERSION = 2;
+
+    // magic, version, slots, used slots, live entries, end of the records
+    private static final int HEADER_SIZE = 32;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int SLOTS_OFFSET = 8;
+    private static final int USED_OFFSET = 12;
+    private static final int SIZE_OFFSET = 16;
+    private static final int END_OFFSET = 24;
+
+    // hash (long), record offset (long, -1 for deleted entries)
+    private static final int SLOT_SIZE = 16;
+    private static final long EMPTY = 0L;
+    private static final long DELETED = -1L;
+
+    // key length (int), value length (int), key, value, padded to 8 bytes
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int RECORD_ALIGNMENT = 8;
+
+    private final File m_file;
+    private final int m_slots;
+    private final long m_recordsStart;
+    private final long m_fileSize;
+    private final int m_segmentShift;
+    private final long m_segmentMask;
+    private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
+
+    private RandomAccessFile m_raf;
+    private MappedByteBuffer[] m_segments;
+
+    private final Meter m_hits;
+    private final Meter m_misses;
+    private final Meter m_evictions;
+    private final Counter m_compactions;
+
+    @Inject
+    public MappedResourceMetadataCache(@Named("search.resourceMetadata.maxCacheEntries") long maxEntries,
+            @Named("search.resourceMetadata.mappedFile") String file,
+            @Named("search.resourceMetadata.mappedFileSize") Long fileSize,
+            MetricRegistry registry) throws IOException {
+        this(maxEntries, file, fileSize, DEFAULT_SEGMENT_SIZE, registry);
+    }
+
+    MappedResourceMetadataCache(long maxEntries, String file, Long fileSize, int segmentSize,
+            MetricRegistry registry) throws IOException {
+        Preconditions.checkArgument(maxEntries > 0, "maxEntries must be strictly positive");
+        Preconditions.checkNotNull(file, "file argument");
+        Preconditions.checkNotNull(fileSize, "fileSize argument");
+        Preconditions.checkNotNull(registry, "registry argument");
+        Preconditions.checkArgument(segmentSize >= SLOT_SIZE && Integer.bitCount(segmentSize) == 1,
+                "segmentSize must be a power of two");
+
+        // keep the table at most half full
+        int slots = Integer.highestOneBit((int) Math.min(maxEntries * 2, 1 << 29));
+        if (slots < maxEntries * 2) {
+            slots <<= 1;
+        }
+        m_slots = slots;
+        m_recordsStart = HEADER_SIZE + (long) m_slots * SLOT_SIZE;
+        Preconditions.checkArgument(fileSize > m_recordsStart, "fileSize must be greater than %s bytes for %s entries", m_recordsStart, maxEntries);
+
+        m_fileSize = fileSize;
+        m_segmentShift = Integer.numberOfTrailingZeros(segmentSize);
+        m_segmentMask = segmentSize - 1;
+        m_file = new File(file);
+
+        m_hits = registry.meter(name("cache", "hits"));
+        m_misses = registry.meter(name("cache", "misses"));
+        m_evictions = registry.meter(name("cache", "evictions"));
+        m_compactions = registry.counter(name("cache", "compactions"));
+
+        open();
+
+        LOG.info("Initializing resource metadata cache in {} ({} max entries, {} bytes)", m_file, maxEntries, fileSize);
+
+        registry.register(MetricRegistry.name("cache", "size"),
+                new Gauge<Long>() {
+                    @Override
+                    public Long getValue() {
+                        return size();
+                    }
+                });
+        registry.register(MetricRegistry.name("cache", "max-size"),
+                new Gauge<Long>() {
+                    @Override
+                    public Long getValue() {
+                        return maxEntries;
+                    }
+                });
+        registry.register(MetricRegistry.name("cache", "bytes-used"),
+                new Gauge<Long>() {
+                    @Override
+                    public Long getValue() {
+                        return bytesUsed();
+                    }
+                });
+    }
+
+    private void open() throws IOException {
+        final File parent = m_file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        m_raf = new RandomAccessFile(m_file, "rw");
+        final boolean existing = m_raf.length() > 0;
+        m_raf.setLength(m_fileSize);
+
+        final FileChannel channel = m_raf.getChannel();
+        m_segments = new MappedByteBuffer[(int) ((m_fileSize + m_segmentMask) >>> m_segmentShift)];
+        for (int i = 0; i < m_segments.length; i++) {
+            final long start = (long) i << m_segmentShift;
+            m_segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(m_fileSize - start, m_segmentMask + 1));
+        }
+
+        if (existing && getInt(MAGIC_OFFSET) == MAGIC
+                && getInt(VERSION_OFFSET) == VERSION
+                && getInt(SLOTS_OFFSET) == m_slots
+                && getLong(END_OFFSET) >= m_recordsStart
+                && getLong(END_OFFSET) <= m_fileSize) {
+            LOG.info("Loaded {} cached resources from {}", getLong(SIZE_OFFSET), m_file);
+        } else {
+            if (existing) {
+                LOG.info("The resource metadata cache in {} is not compatible with the current configuration and will be cleared.", m_file);
+            }
+            reset();
+        }
+    }
+
+    /**
+     * Clears the table and the records, the caller must hold the write lock
+     * or have exclusive access to the segments.
+     */
+    private void reset() {
+        clearTable();
+        putInt(MAGIC_OFFSET, MAGIC);
+        putInt(VERSION_OFFSET, VERSION);
+        putInt(SLOTS_OFFSET, m_slots);
+        putLong(SIZE_OFFSET, 0L);
+        putLong(END_OFFSET, m_recordsStart);
+    }
+
+    private void clearTable() {
+        for (long pos = HEADER_SIZE; pos < m_recordsStart; pos += 8) {
+            putLong(pos, EMPTY);
+        }
+        putInt(USED_OFFSET, 0);
+    }
+
+    @Override
+    public Optional<ResourceMetadata> get(Context context, Resource resource) {
+        final byte[] key = key(context, resource.getId());
+        m_lock.readLock().lock();
+        try {
+            final long record = find(key, hash(key));
+            if (record < 0) {
+                m_misses.mark();
+                return Optional.absent();
+            }
+            m_hits.mark();
+            return Optional.of(readMetadata(record));
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void merge(Context context, Resource resource, ResourceMetadata metadata) {
+        final byte[] key = key(context, resource.getId());
+        final long hash = hash(key);
+        m_lock.writeLock().lock();
+        try {
+            final ResourceMetadata updated;
+            final long record = find(key, hash);
+            if (record < 0) {
+                updated = new ResourceMetadata();
+                updated.merge(metadata);
+            } else {
+                updated = readMetadata(record);
+                if (!updated.merge(metadata)) {
+                    // Nothing changed
+                    return;
+                }
+            }
+            put(key, hash, conf.asByteArray(updated));
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Context context, Resource resource) {
+        final byte[] key = key(context, resource.getId());
+        final long hash = hash(key);
+        m_lock.writeLock().lock();
+        try {
+            final int slot = findSlot(key, hash);
+            if (slot >= 0) {
+                putLong(slotOffset(slot) + 8, DELETED);
+                putLong(SIZE_OFFSET, getLong(SIZE_OFFSET) - 1);
+            }
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> getResourceIdsWithPrefix(Context context, String resourceIdPrefix) {
+        final byte[] prefix = key(context, resourceIdPrefix);
+        final int contextLength = key(context, "").length;
+        final List<String> resourceIds = new ArrayList<>();
+        m_lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < m_slots; slot++) {
+                final long offset = slotOffset(slot);
+                final long record = getLong(offset + 8);
+                if (getLong(offset) == EMPTY || record == DELETED) {
+                    continue;
+                }
+                final byte[] key = readKey(record);
+                if (startsWith(key, prefix)) {
+                    resourceIds.add(new String(key, contextLength, key.length - contextLength, StandardCharsets.UTF_8));
+                }
+            }
+        } finally {
+            m_lock.readLock().unlock();
+        }
+        return resourceIds;
+    }
+
+    public long size() {
+        m_lock.readLock().lock();
+        try {
+            return getLong(SIZE_OFFSET);
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    public long bytesUsed() {
+        m_lock.readLock().lock();
+        try {
+            return getLong(END_OFFSET);
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes the mapped file to disk.
+     */
+    @Override
+    public void close() throws IOException {
+        m_lock.writeLock().lock();
+        try {
+            if (m_raf != null) {
+                for (MappedByteBuffer segment : m_segments) {
+                    segment.force();
+                }
+                m_raf.close();
+                m_raf = null;
+            }
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends a new record for the key and points its slot to it, compacting
+     * the cache first if there is no room left. The caller must hold the
+     * write lock.
+     */
+    private void put(byte[] key, long hash, byte[] value) {
+        final long recordSize = recordSize(key.length, value.length);
+        if (recordSize > m_fileSize - m_recordsStart) {
+            LOG.warn("The metadata of resource {} does not fit in the cache.", new String(key, StandardCharsets.UTF_8));
+            return;
+        }
+        int slot = findSlot(key, hash);
+        if ((slot < 0 && getInt(USED_OFFSET) >= m_slots / 2)
+                || getLong(END_OFFSET) + recordSize > m_fileSize) {
+            compact(recordSize);
+            // the previous version of the record may have been evicted
+            slot = findSlot(key, hash);
+        }
+
+        final long record = getLong(END_OFFSET);
+        putInt(record, key.length);
+        putInt(record + 4, value.length);
+        write(record + RECORD_HEADER_SIZE, key);
+        write(record + RECORD_HEADER_SIZE + key.length, value);
+        putLong(END_OFFSET, record + recordSize);
+
+        if (slot >= 0) {
+            // replace the previous version of the record
+            putLong(slotOffset(slot) + 8, record);
+            return;
+        }
+        insert(hash, record);
+        putLong(SIZE_OFFSET, getLong(SIZE_OFFSET) + 1);
+    }
+
+    /**
+     * Points the first empty slot of the probe sequence of the hash to the
+     * record. The caller must hold the write lock.
+     */
+    private void insert(long hash, long record) {
+        int slot = (int) (spread(hash) & (m_slots - 1));
+        while (getLong(slotOffset(slot)) != EMPTY) {
+            slot = (slot + 1) & (m_slots - 1);
+        }
+        putLong(slotOffset(slot) + 8, record);
+        putLong(slotOffset(slot), hash);
+        putInt(USED_OFFSET, getInt(USED_OFFSET) + 1);
+    }
+
+    /**
+     * Moves the live records to the start of the record region and rebuilds
+     * the table without the deleted entries.
+     *
+     * Records are appended, so their offsets give the order in which they
+     * were written. The oldest ones are evicted until the live entries use at
+     * most three quarters of the table and of the region, once the record of
+     * the given size is added, so a compaction leaves enough room for the
+     * next ones to be rare. The caller must hold the write lock.
+     */
+    private void compact(long neededBytes) {
+        final long[] records = new long[getInt(USED_OFFSET)];
+        int count = 0;
+        for (int slot = 0; slot < m_slots; slot++) {
+            final long offset = slotOffset(slot);
+            final long record = getLong(offset + 8);
+            if (getLong(offset) != EMPTY && record != DELETED) {
+                records[count++] = record;
+            }
+        }
+        Arrays.sort(records, 0, count);
+
+        long liveBytes = 0;
+        for (int i = 0; i < count; i++) {
+            liveBytes += recordSize(records[i]);
+        }
+        final long maxEntries = m_slots * 3L / 8;
+        final long maxBytes = (m_fileSize - m_recordsStart) * 3 / 4 - neededBytes;
+        int first = 0;
+        while (first < count && (count - first > maxEntries || liveBytes > maxBytes)) {
+            liveBytes -= recordSize(records[first]);
+            first++;
+        }
+
+        LOG.info("Compacting the resource metadata cache: keeping {} entries ({} bytes), evicting {} entries.", count - first, liveBytes, first);
+        m_compactions.inc();
+        m_evictions.mark(first);
+
+        // an interrupted compaction leaves an invalid header, and the cache is cleared when it is opened again
+        putInt(MAGIC_OFFSET, 0);
+        clearTable();
+        long end = m_recordsStart;
+        for (int i = first; i < count; i++) {
+            final long recordSize = recordSize(records[i]);
+            if (records[i] != end) {
+                // the records only move towards the start of the region, so the source is never overwritten before it is read
+                final byte[] bytes = new byte[(int) recordSize];
+                read(records[i], bytes);
+                write(end, bytes);
+            }
+            insert(hash(readKey(end)), end);
+            end += recordSize;
+        }
+        putLong(SIZE_OFFSET, count - first);
+        putLong(END_OFFSET, end);
+        putInt(MAGIC_OFFSET, MAGIC);
+    }
+
+    /**
+     * @return the offset of the record of the key or -1
+     */
+    private long find(byte[] key, long hash) {
+        final int slot = findSlot(key, hash);
+        return slot < 0 ? -1 : getLong(slotOffset(slot) + 8);
+    }
+
+    /**
+     * @return the slot holding the live entry of the key or -1
+     */
+    private int findSlot(byte[] key, long hash) {
+        int slot = (int) (spread(hash) & (m_slots - 1));
+        for (int probes = 0; probes < m_slots; probes++) {
+            final long offset = slotOffset(slot);
+            final long slotHash = getLong(offset);
+            if (slotHash == EMPTY) {
+                return -1;
+            }
+            if (slotHash == hash) {
+                final long record = getLong(offset + 8);
+                if (record != DELETED && Arrays.equals(key, readKey(record))) {
+                    return slot;
+                }
+            }
+            slot = (slot + 1) & (m_slots - 1);
+        }
+        return -1;
+    }
+
+    private byte[] readKey(long record) {
+        final byte[] key = new byte[getInt(record)];
+        read(record + RECORD_HEADER_SIZE, key);
+        return key;
+    }
+
+    private ResourceMetadata readMetadata(long record) {
+        final int keyLength = getInt(record);
+        final byte[] value = new byte[getInt(record + 4)];
+        read(record + RECORD_HEADER_SIZE + keyLength, value);
+        return (ResourceMetadata) conf.asObject(value);
+    }
+
+    private long recordSize(long record) {
+        return recordSize(getInt(record), getInt(record + 4));
+    }
+
+    private static long recordSize(int keyLength, int valueLength) {
+        final long size = RECORD_HEADER_SIZE + (long) keyLength + valueLength;
+        return (size + RECORD_ALIGNMENT - 1) & -RECORD_ALIGNMENT;
+    }
+
+    private long slotOffset(int slot) {
+        return HEADER_SIZE + (long) slot * SLOT_SIZE;
+    }
+
+    /*
+     * The header, the slots and the records are aligned on 8 bytes and the
+     * segments are a power of two, so ints and longs never span two segments.
+     * Keys and values may, and are copied one segment at a time.
+     */
+
+    private MappedByteBuffer segment(long pos) {
+        return m_segments[(int) (pos >>> m_segmentShift)];
+    }
+
+    private int index(long pos) {
+        return (int) (pos & m_segmentMask);
+    }
+
+    private int getInt(long pos) {
+        return segment(pos).getInt(index(pos));
+    }
+
+    private void putInt(long pos, int value) {
+        segment(pos).putInt(index(pos), value);
+    }
+
+    private long getLong(long pos) {
+        return segment(pos).getLong(index(pos));
+    }
+
+    private void putLong(long pos, long value) {
+        segment(pos).putLong(index(pos), value);
+    }
+
+    private void read(long pos, byte[] bytes) {
+        int done = 0;
+        while (done < bytes.length) {
+            final ByteBuffer dup = segment(pos + done).duplicate();
+            final int index = index(pos + done);
+            final int length = Math.min(bytes.length - done, dup.capacity() - index);
+            dup.position(index);
+            dup.get(bytes, done, length);
+            done += length;
+        }
+    }
+
+    private void write(long pos, byte[] bytes) {
+        int done = 0;
+        while (done < bytes.length) {
+            final ByteBuffer dup = segment(pos + done).duplicate();
+            final int index = index(pos + done);
+            final int length = Math.min(bytes.length - done, dup.capacity() - index);
+            dup.position(index);
+            dup.put(bytes, done, length);
+            done += length;
+        }
+    }
+
+    private static byte[] key(Context context, String resourceId) {
+        return (context.getId() + ":" + resourceId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long hash(byte[] key) {
+        final long hash = HASH.hashBytes(key).asLong();
+        // 0 and -1 are reserved
+        return hash == EMPTY || hash == DELETED ? 1L : hash;
+    }
+
+    private static long spread(long hash) {
+        return hash ^ (hash >>> 32);
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        if (key.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (key[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
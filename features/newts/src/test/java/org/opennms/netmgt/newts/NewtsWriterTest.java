@@ -29,8 +29,14 @@
 package org.opennms.netmgt.newts;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
@@ -119,6 +125,89 @@ public class NewtsWriterTest {
         assertEquals(ringBufferSize, sampleRepo.getNumSamplesInserted());
     }
 
+    /**
+     * Verifies that the samples published while the writer thread is busy
+     * are coalesced in batches of up to max_batch_size samples.
+     */
+    @Test
+    public void samplesAreCoalescedInBatches() throws Exception {
+        int maxBatchSize = 16;
+        int numSamples = 200;
+
+        Lock lock = new ReentrantLock();
+        LockedSampleRepository sampleRepo = new LockedSampleRepository(lock);
+        MetricRegistry registry = new MetricRegistry();
+        NewtsWriter writer = new NewtsWriter(maxBatchSize, 1024, 1, registry);
+        writer.setSampleRepository(sampleRepo);
+
+        lock.lock();
+        for (int i = 0; i < numSamples; i++) {
+            Resource x = new Resource("x" + (i % 3));
+            Sample s = new Sample(Timestamp.now(), x, "y", MetricType.COUNTER, new Counter(i));
+            assertTrue(writer.insert(Lists.newArrayList(s)));
+        }
+        lock.unlock();
+        writer.destroy();
+
+        assertEquals(numSamples, sampleRepo.getNumSamplesInserted());
+        // The first sample is written alone while the others are queued behind it
+        assertTrue(sampleRepo.getBatchSizes().size() < numSamples / 2);
+        for (int batchSize : sampleRepo.getBatchSizes()) {
+            assertTrue(batchSize <= maxBatchSize);
+        }
+        assertEquals(numSamples, registry.meter(MetricRegistry.name("writer", "inserted-samples")).getCount());
+    }
+
+    /**
+     * Verifies that callers wait for room on the ring buffer up to the
+     * publish timeout before the samples are dropped.
+     */
+    @Test
+    public void callersWaitWhenRingBufferIsFull() throws Exception {
+        Resource x = new Resource("x");
+        int ringBufferSize = 8;
+
+        Lock lock = new ReentrantLock();
+        LockedSampleRepository sampleRepo = new LockedSampleRepository(lock);
+        MetricRegistry registry = new MetricRegistry();
+        NewtsWriter writer = new NewtsWriter(1, ringBufferSize, 1, 100, registry);
+        writer.setSampleRepository(sampleRepo);
+
+        lock.lock();
+        for (int i = 0; i < ringBufferSize; i++) {
+            Sample s = new Sample(Timestamp.now(), x, "y", MetricType.COUNTER, new Counter(i));
+            assertTrue(writer.insert(Lists.newArrayList(s)));
+        }
+
+        // The ring buffer is full: the caller waits for the timeout and the samples are dropped
+        long start = System.currentTimeMillis();
+        assertFalse(writer.insert(Lists.newArrayList(new Sample(Timestamp.now(), x, "y", MetricType.COUNTER, new Counter(0)))));
+        assertTrue(System.currentTimeMillis() - start >= 100);
+        assertEquals(1, registry.meter(MetricRegistry.name("ring-buffer", "dropped-samples")).getCount());
+        assertEquals(1, registry.timer(MetricRegistry.name("ring-buffer", "backpressure")).getCount());
+
+        lock.unlock();
+        writer.destroy();
+        assertEquals(ringBufferSize, sampleRepo.getNumSamplesInserted());
+    }
+
+    @Test
+    public void samplesAreGroupedByResource() {
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            samples.add(new Sample(Timestamp.now(), new Resource("r" + (i % 2)), "y", MetricType.COUNTER, new Counter(i)));
+        }
+        List<Sample> grouped = NewtsWriter.groupByResource(samples);
+        assertEquals(6, grouped.size());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i < 3 ? "r0" : "r1", grouped.get(i).getResource().getId());
+        }
+        // The order within a resource is preserved
+        assertSame(samples.get(0), grouped.get(0));
+        assertSame(samples.get(2), grouped.get(1));
+        assertSame(samples.get(4), grouped.get(2));
+    }
+
     private static class LatchedSampleRepository extends MockSampleRepository {
         private final CountDownLatch latch;
 
@@ -141,6 +230,7 @@ public class NewtsWriterTest {
         private final Lock lock;
         private final AtomicInteger numThreadsLocked = new AtomicInteger(0);
         private final AtomicInteger numSamplesInserted = new AtomicInteger(0);
+        private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
 
         public LockedSampleRepository(Lock lock) {
             this.lock = lock;
@@ -151,6 +241,7 @@ public class NewtsWriterTest {
             numThreadsLocked.incrementAndGet();
             lock.lock();
             numSamplesInserted.addAndGet(samples.size());
+            batchSizes.add(samples.size());
             lock.unlock();
             numThreadsLocked.decrementAndGet();
         }
@@ -162,6 +253,10 @@ public class NewtsWriterTest {
         public int getNumSamplesInserted() {
             return numSamplesInserted.get();
         }
+
+        public List<Integer> getBatchSizes() {
+            return batchSizes;
+        }
     }
 
     private static class MockSampleRepository implements SampleRepository {
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.newts.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.cassandra.search.ResourceMetadata;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class MappedResourceMetadataCacheTest {
+
+    private static final long FILE_SIZE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder m_tempFolder = new TemporaryFolder();
+
+    private final Context m_ctx = Context.DEFAULT_CONTEXT;
+
+    @Test
+    public void canMergeAndGet() throws IOException {
+        MetricRegistry registry = new MetricRegistry();
+        try (MappedResourceMetadataCache cache = createCache(new File(m_tempFolder.getRoot(), "cache"), 128, registry)) {
+            Resource resource = new Resource("a:b:c");
+            assertFalse(cache.get(m_ctx, resource).isPresent());
+
+            cache.merge(m_ctx, resource, metadata("m1", "a1", "1"));
+            ResourceMetadata cached = cache.get(m_ctx, resource).get();
+            assertTrue(cached.containsMetric("m1"));
+            assertTrue(cached.containsAttribute("a1", "1"));
+            assertFalse(cached.containsMetric("m2"));
+
+            cache.merge(m_ctx, resource, metadata("m2", "a1", "2"));
+            cached = cache.get(m_ctx, resource).get();
+            assertTrue(cached.containsMetric("m1"));
+            assertTrue(cached.containsMetric("m2"));
+            assertTrue(cached.containsAttribute("a1", "2"));
+            assertEquals(1, cache.size());
+
+            // merging known metadata does not append a new record
+            long bytesUsed = cache.bytesUsed();
+            cache.merge(m_ctx, resource, metadata("m1", null, null));
+            assertEquals(bytesUsed, cache.bytesUsed());
+
+            cache.delete(m_ctx, resource);
+            assertFalse(cache.get(m_ctx, resource).isPresent());
+            assertEquals(0, cache.size());
+
+            assertEquals(2, registry.meter(MetricRegistry.name("cache", "hits")).getCount());
+            assertEquals(2, registry.meter(MetricRegistry.name("cache", "misses")).getCount());
+        }
+    }
+
+    @Test
+    public void canGetEntriesWithPrefix() throws IOException {
+        try (MappedResourceMetadataCache cache = createCache(new File(m_tempFolder.getRoot(), "cache"), 128, new MetricRegistry())) {
+            assertTrue(cache.getResourceIdsWithPrefix(m_ctx, "a").isEmpty());
+
+            cache.merge(m_ctx, new Resource("a:b:c"), new ResourceMetadata());
+            cache.merge(m_ctx, new Resource("x:y"), new ResourceMetadata());
+
+            assertTrue(cache.getResourceIdsWithPrefix(m_ctx, "a").contains("a:b:c"));
+            assertTrue(cache.getResourceIdsWithPrefix(m_ctx, "a:b").contains("a:b:c"));
+            assertTrue(cache.getResourceIdsWithPrefix(m_ctx, "a:b:c").contains("a:b:c"));
+            assertTrue(cache.getResourceIdsWithPrefix(m_ctx, "a:b:c:d").isEmpty());
+            assertEquals(1, cache.getResourceIdsWithPrefix(m_ctx, "x").size());
+            assertTrue(cache.getResourceIdsWithPrefix(new Context("other"), "a").isEmpty());
+        }
+    }
+
+    @Test
+    public void entriesArePersistedAcrossRestarts() throws IOException {
+        File file = new File(m_tempFolder.getRoot(), "cache");
+        try (MappedResourceMetadataCache cache = createCache(file, 128, new MetricRegistry())) {
+            for (int k = 0; k < 50; k++) {
+                cache.merge(m_ctx, new Resource("snmp:" + k), metadata("m" + k, null, null));
+            }
+        }
+
+        try (MappedResourceMetadataCache cache = createCache(file, 128, new MetricRegistry())) {
+            assertEquals(50, cache.size());
+            for (int k = 0; k < 50; k++) {
+                assertTrue(cache.get(m_ctx, new Resource("snmp:" + k)).get().containsMetric("m" + k));
+            }
+        }
+
+        // a different number of entries changes the layout: the cache starts empty
+        try (MappedResourceMetadataCache cache = createCache(file, 1024, new MetricRegistry())) {
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    public void oldestEntriesAreEvictedWhenFull() throws IOException {
+        MetricRegistry registry = new MetricRegistry();
+        try (MappedResourceMetadataCache cache = createCache(new File(m_tempFolder.getRoot(), "cache"), 16, registry)) {
+            for (int k = 0; k < 100; k++) {
+                cache.merge(m_ctx, new Resource("snmp:" + k), metadata("m", null, null));
+                assertTrue(cache.get(m_ctx, new Resource("snmp:" + k)).isPresent());
+            }
+            assertTrue(cache.size() <= 16);
+            assertFalse(cache.get(m_ctx, new Resource("snmp:0")).isPresent());
+            // a compaction keeps the most recently written entries
+            for (int k = 88; k < 100; k++) {
+                assertTrue(cache.get(m_ctx, new Resource("snmp:" + k)).isPresent());
+            }
+            assertTrue(registry.counter(MetricRegistry.name("cache", "compactions")).getCount() > 0);
+            assertTrue(registry.meter(MetricRegistry.name("cache", "evictions")).getCount() > 0);
+        }
+    }
+
+    @Test
+    public void recordsAreCompactedWithoutEvictingLiveEntries() throws IOException {
+        MetricRegistry registry = new MetricRegistry();
+        File file = new File(m_tempFolder.getRoot(), "cache");
+        try (MappedResourceMetadataCache cache = new MappedResourceMetadataCache(128, file.getAbsolutePath(), 64 * 1024L, 1024, registry)) {
+            // every update appends a new version of the record, filling the region several times
+            for (int i = 0; i < 1000; i++) {
+                for (int k = 0; k < 10; k++) {
+                    cache.merge(m_ctx, new Resource("snmp:" + k), metadata("m", "a", Integer.toString(i)));
+                }
+            }
+            assertEquals(10, cache.size());
+            for (int k = 0; k < 10; k++) {
+                assertTrue(cache.get(m_ctx, new Resource("snmp:" + k)).get().containsAttribute("a", "999"));
+            }
+            assertTrue(registry.counter(MetricRegistry.name("cache", "compactions")).getCount() > 0);
+            assertEquals(0, registry.meter(MetricRegistry.name("cache", "evictions")).getCount());
+        }
+
+        // the compacted file is loaded again
+        try (MappedResourceMetadataCache cache = createCache(file, 128, new MetricRegistry())) {
+            assertEquals(10, cache.size());
+            assertTrue(cache.get(m_ctx, new Resource("snmp:9")).get().containsAttribute("a", "999"));
+        }
+    }
+
+    @Test
+    public void recordsCanSpanSegments() throws IOException {
+        File file = new File(m_tempFolder.getRoot(), "cache");
+        // segments smaller than the records and than the table
+        try (MappedResourceMetadataCache cache = new MappedResourceMetadataCache(128, file.getAbsolutePath(), FILE_SIZE, 64, new MetricRegistry())) {
+            for (int k = 0; k < 100; k++) {
+                cache.merge(m_ctx, new Resource("snmp:" + k), metadata("metric" + k, "attribute", "value" + k));
+            }
+            for (int k = 0; k < 100; k++) {
+                ResourceMetadata cached = cache.get(m_ctx, new Resource("snmp:" + k)).get();
+                assertTrue(cached.containsMetric("metric" + k));
+                assertTrue(cached.containsAttribute("attribute", "value" + k));
+            }
+            assertEquals(100, cache.getResourceIdsWithPrefix(m_ctx, "snmp").size());
+        }
+
+        // the layout of the file does not depend on the size of the segments
+        try (MappedResourceMetadataCache cache = createCache(file, 128, new MetricRegistry())) {
+            assertEquals(100, cache.size());
+            assertTrue(cache.get(m_ctx, new Resource("snmp:42")).get().containsMetric("metric42"));
+        }
+    }
+
+    private static ResourceMetadata metadata(String metric, String attributeKey, String attributeValue) {
+        ResourceMetadata metadata = new ResourceMetadata();
+        metadata.putMetric(metric);
+        if (attributeKey != null) {
+            metadata.putAttribute(attributeKey, attributeValue);
+        }
+        return metadata;
+    }
+
+    private static MappedResourceMetadataCache createCache(File file, long maxEntries, MetricRegistry registry) throws IOException {
+        return new MappedResourceMetadataCache(maxEntries, file.getAbsolutePath(), FILE_SIZE, registry);
+    }
+}
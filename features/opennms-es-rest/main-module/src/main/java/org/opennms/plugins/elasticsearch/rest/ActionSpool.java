@@ -0,0 +1,365 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.plugins.elasticsearch.rest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded, memory-mapped FIFO spool of {@link SpooledAction}s that sits
+ * between the event listener and the bulk indexers.
+ *
+ * The spool is a ring buffer in a file of fixed size: a small header stores
+ * the read and write positions, followed by length prefixed records. Since
+ * the file is mapped, the content survives a restart of the container and
+ * is indexed once Elasticsearch is reachable again.
+ *
+ * The actions handed out by {@link #poll(int, long)} stay in the spool until
+ * their {@link Batch} is acknowledged with {@link #ack(Batch)}, so the
+ * actions that were being indexed when the container stopped are indexed
+ * again after the restart. Batches may be acknowledged in any order, the
+ * read position stored in the file only moves past the oldest batches once
+ * they are all acknowledged.
+ *
+ * When the spool is full {@link #offer(SpooledAction, long)} waits for the
+ * indexers to make room, which throttles the event listener.
+ */
+public class ActionSpool implements AutoCloseable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ActionSpool.class);
+
+	private static final int MAGIC = 0x4f4e4532; // ONE2
+
+	private static final int HEADER_SIZE = 32;
+
+	private static final int HEAD_OFFSET = 8;
+
+	private static final int TAIL_OFFSET = 16;
+
+	private static final int COUNT_OFFSET = 24;
+
+	private static final int WRAP = -1;
+
+	private final File file;
+
+	private final RandomAccessFile raf;
+
+	private final MappedByteBuffer buffer;
+
+	private final int capacity;
+
+	// monotonic byte positions, the offset in the ring is position % capacity
+	// the records before head are acknowledged, the ones before next are handed out
+	private long head;
+
+	private long next;
+
+	private long tail;
+
+	// number of records after head, and after next
+	private int count;
+
+	private int pending;
+
+	// the batches handed out and not acknowledged yet, by start position
+	private final Map<Long, Batch> inFlight = new TreeMap<>();
+
+	private boolean closed = false;
+
+	/**
+	 * Actions handed out by {@link ActionSpool#poll(int, long)}, which
+	 * remain in the spool until the batch is acknowledged.
+	 */
+	public static class Batch {
+		private final long start;
+		private final long end;
+		private final int records;
+		private final List<SpooledAction> actions;
+		private boolean acknowledged = false;
+
+		private Batch(long start, long end, int records, List<SpooledAction> actions) {
+			this.start = start;
+			this.end = end;
+			this.records = records;
+			this.actions = Collections.unmodifiableList(actions);
+		}
+
+		public List<SpooledAction> getActions() {
+			return actions;
+		}
+
+		public boolean isEmpty() {
+			return actions.isEmpty();
+		}
+	}
+
+	public ActionSpool(File file, int capacity) throws IOException {
+		if (capacity < 1024) {
+			throw new IllegalArgumentException("The spool capacity must be at least 1024 bytes: " + capacity);
+		}
+		this.file = file;
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		raf = new RandomAccessFile(file, "rw");
+
+		boolean recovered = false;
+		int existingCapacity = capacity;
+		if (raf.length() > HEADER_SIZE) {
+			raf.seek(0);
+			if (raf.readInt() == MAGIC) {
+				existingCapacity = (int) (raf.length() - HEADER_SIZE);
+				recovered = true;
+				if (existingCapacity != capacity) {
+					LOG.warn("Spool {} has a capacity of {} bytes instead of {}, keeping the existing capacity until the spool is deleted.", file, existingCapacity, capacity);
+				}
+			}
+		}
+		this.capacity = existingCapacity;
+		raf.setLength(HEADER_SIZE + (long) this.capacity);
+		buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) this.capacity);
+
+		if (recovered) {
+			head = buffer.getLong(HEAD_OFFSET);
+			tail = buffer.getLong(TAIL_OFFSET);
+			count = buffer.getInt(COUNT_OFFSET);
+			if (head < 0 || tail < head || tail - head > this.capacity || count < 0 || (count == 0) != (tail == head)) {
+				LOG.warn("Spool {} is corrupted, discarding its content.", file);
+				reset();
+			} else if (count > 0) {
+				LOG.info("Recovered {} actions from spool {}.", count, file);
+			}
+			next = head;
+			pending = count;
+		} else {
+			buffer.putInt(0, MAGIC);
+			reset();
+		}
+	}
+
+	/**
+	 * Appends the action to the spool, waiting up to the given time for room.
+	 *
+	 * @return false if the spool is still full after the timeout or if the
+	 * action is larger than the spool
+	 */
+	public synchronized boolean offer(SpooledAction action, long timeoutMs) throws InterruptedException {
+		final byte[] bytes = action.toBytes();
+		final int recordSize = 4 + bytes.length;
+		if (recordSize > capacity) {
+			LOG.warn("Action {} of {} bytes is larger than the spool, it can't be spooled.", action, bytes.length);
+			return false;
+		}
+
+		final long deadline = System.currentTimeMillis() + timeoutMs;
+		while (!closed && (tail - head) + padding(recordSize) + recordSize > capacity) {
+			final long wait = deadline - System.currentTimeMillis();
+			if (wait <= 0) {
+				return false;
+			}
+			wait(wait);
+		}
+		if (closed) {
+			return false;
+		}
+
+		final int pad = padding(recordSize);
+		if (pad > 0) {
+			if (pad >= 4) {
+				buffer.putInt(HEADER_SIZE + offset(tail), WRAP);
+			}
+			tail += pad;
+		}
+		final int position = HEADER_SIZE + offset(tail);
+		buffer.putInt(position, bytes.length);
+		final ByteBuffer record = buffer.duplicate();
+		record.position(position + 4);
+		record.put(bytes);
+		tail += recordSize;
+		count++;
+		pending++;
+		writeHeader();
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * Hands out up to max actions that were not handed out yet, waiting up
+	 * to the given time for the first one. The actions remain in the spool
+	 * until the batch is acknowledged with {@link #ack(Batch)}.
+	 *
+	 * A record with an invalid length, e.g. because the file was damaged,
+	 * can't be skipped on its own: the records from there to the end of the
+	 * spool are discarded so that the spool remains usable.
+	 */
+	public synchronized Batch poll(int max, long timeoutMs) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + timeoutMs;
+		while (!closed && pending == 0) {
+			final long wait = deadline - System.currentTimeMillis();
+			if (wait <= 0) {
+				return new Batch(next, next, 0, new ArrayList<>(0));
+			}
+			wait(wait);
+		}
+
+		final long start = next;
+		int records = 0;
+		final List<SpooledAction> actions = new ArrayList<>(Math.min(max, pending));
+		while (pending > 0 && actions.size() < max) {
+			final int remaining = capacity - offset(next);
+			if (remaining < 4 || buffer.getInt(HEADER_SIZE + offset(next)) == WRAP) {
+				next += remaining;
+			}
+			final int position = HEADER_SIZE + offset(next);
+			final int length = buffer.getInt(position);
+			if (length < 0 || length > capacity - offset(next) - 4 || next + 4 + length > tail) {
+				LOG.error("Spool {} has a record of {} bytes at position {}, discarding the {} actions from there to the end of the spool.", file, length, next, pending);
+				records += pending;
+				pending = 0;
+				next = tail;
+				break;
+			}
+			final byte[] bytes = new byte[length];
+			final ByteBuffer record = buffer.duplicate();
+			record.position(position + 4);
+			record.get(bytes);
+			next += 4 + length;
+			pending--;
+			records++;
+			try {
+				actions.add(SpooledAction.fromBytes(bytes));
+			} catch (IOException | RuntimeException e) {
+				LOG.warn("Discarding unreadable action from spool {}.", file, e);
+			}
+		}
+		final Batch batch = new Batch(start, next, records, actions);
+		if (records > 0) {
+			inFlight.put(start, batch);
+		}
+		return batch;
+	}
+
+	/**
+	 * Removes the actions of the batch from the spool, once they are indexed or dropped.
+	 */
+	public synchronized void ack(Batch batch) {
+		if (batch.records == 0 || batch.acknowledged || inFlight.get(batch.start) != batch) {
+			return;
+		}
+		batch.acknowledged = true;
+		boolean moved = false;
+		while (!inFlight.isEmpty()) {
+			final Batch oldest = inFlight.values().iterator().next();
+			if (!oldest.acknowledged) {
+				break;
+			}
+			inFlight.remove(oldest.start);
+			head = oldest.end;
+			count -= oldest.records;
+			moved = true;
+		}
+		if (!moved) {
+			return;
+		}
+		if (count == 0 && inFlight.isEmpty()) {
+			// start again at the beginning of the file
+			head = 0;
+			next = 0;
+			tail = 0;
+		}
+		writeHeader();
+		notifyAll();
+	}
+
+	/**
+	 * @return the number of actions in the spool, including the ones handed out and not acknowledged yet
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	public synchronized long getUsedBytes() {
+		return tail - head;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			notifyAll();
+			buffer.force();
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return the number of bytes to skip at the end of the ring so that the
+	 * record is written in one piece.
+	 */
+	private int padding(int recordSize) {
+		final int remaining = capacity - offset(tail);
+		return remaining < recordSize ? remaining : 0;
+	}
+
+	private int offset(long position) {
+		return (int) (position % capacity);
+	}
+
+	private void reset() {
+		head = 0;
+		next = 0;
+		tail = 0;
+		count = 0;
+		pending = 0;
+		writeHeader();
+	}
+
+	private void writeHeader() {
+		buffer.putLong(HEAD_OFFSET, head);
+		buffer.putLong(TAIL_OFFSET, tail);
+		buffer.putInt(COUNT_OFFSET, count);
+	}
+}
@@ -0,0 +1,511 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.plugins.elasticsearch.rest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.searchbox.action.BulkableAction;
+import io.searchbox.client.JestClient;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
+import io.searchbox.core.BulkResult.BulkResultItem;
+import io.searchbox.core.DocumentResult;
+
+/**
+ * Drains the {@link ActionSpool} with concurrent bulk requests.
+ *
+ * <p>A fixed number of workers poll batches of actions from the spool, but
+ * only as many of them as the current concurrency limit allows send a bulk
+ * request at the same time. The limit grows by one for every bulk request
+ * answered within the target latency and is halved when Elasticsearch is
+ * slow or fails (AIMD), so the number of concurrent requests follows the
+ * latency of the cluster.</p>
+ *
+ * <p>The result of every bulk request is checked item by item: rejected
+ * (429), unavailable (5xx) and missing index (404) items are retried by the
+ * same worker after an exponential backoff, while the other failures are
+ * logged and dropped. No new batch is taken from the spool while a batch is
+ * retried, so that a failed update is not applied after a newer one. When
+ * the whole request fails, e.g. because the cluster is down, all of the
+ * actions are retried without counting an attempt.</p>
+ *
+ * <p>A batch is only acknowledged to the spool once all of its actions are
+ * indexed or dropped, so nothing is lost when the container stops while
+ * Elasticsearch is unavailable. Actions are dropped after maxRetries
+ * rejections, or once they have been in the spool for longer than
+ * maxRetryAge.</p>
+ */
+public class BulkIndexer implements AutoCloseable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(BulkIndexer.class);
+
+	private static final long POLL_TIMEOUT_MS = 500;
+
+	private static final long RETRY_WAIT_MS = 50;
+
+	private static final int RATE_WINDOW_SECONDS = 60;
+
+	private final ActionSpool spool;
+
+	private final Supplier<JestClient> clientSupplier;
+
+	private final Runnable clientReset;
+
+	private int bulkSize = 500;
+
+	private int maxWorkers = 4;
+
+	private long targetLatency = 1000;
+
+	private int maxRetries = 10;
+
+	private long maxRetryAge = TimeUnit.DAYS.toMillis(1);
+
+	private long initialBackoff = 100;
+
+	private long maxBackoff = 30000;
+
+	private long offerTimeout = 1000;
+
+	private final List<Thread> workers = new ArrayList<>();
+
+	private volatile boolean running = false;
+
+	private final ConcurrencyLimit limit = new ConcurrencyLimit();
+
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+	// number of workers retrying a batch
+	private final AtomicInteger retrying = new AtomicInteger();
+
+	private volatile long retryAfter = 0;
+
+	private final AtomicLong indexed = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private final AtomicLong retried = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	// number of indexed actions for each of the last seconds
+	private final long[] rateSeconds = new long[RATE_WINDOW_SECONDS];
+
+	private final long[] rateCounts = new long[RATE_WINDOW_SECONDS];
+
+	public BulkIndexer(ActionSpool spool, Supplier<JestClient> clientSupplier, Runnable clientReset) {
+		this.spool = spool;
+		this.clientSupplier = clientSupplier;
+		this.clientReset = clientReset;
+	}
+
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		for (int i = 0; i < maxWorkers; i++) {
+			final Thread worker = new Thread(this::runWorker, BulkIndexer.class.getSimpleName() + "-Thread-" + (i + 1));
+			worker.setDaemon(true);
+			worker.start();
+			workers.add(worker);
+		}
+	}
+
+	/**
+	 * Spools the actions, waiting for room when the spool is full.
+	 */
+	public void submit(List<BulkableAction<DocumentResult>> actions) {
+		for (BulkableAction<DocumentResult> action : actions) {
+			spool(SpooledAction.of(action));
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			running = false;
+		}
+		limit.wakeUp();
+		for (Thread worker : workers) {
+			try {
+				worker.join(TimeUnit.SECONDS.toMillis(30));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		workers.clear();
+		spool.close();
+	}
+
+	private void runWorker() {
+		while (running) {
+			try {
+				waitForBackoff();
+				waitForRetries();
+				if (!limit.acquire(POLL_TIMEOUT_MS)) {
+					continue;
+				}
+				try {
+					process(spool.poll(bulkSize, POLL_TIMEOUT_MS));
+				} finally {
+					limit.release();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Throwable e) {
+				LOG.error("Unexpected problem sending events to Elasticsearch", e);
+			}
+		}
+	}
+
+	/**
+	 * Indexes the actions of the batch, retrying the failed ones in place,
+	 * and acknowledges the batch once every action is indexed or dropped.
+	 */
+	private void process(ActionSpool.Batch batch) throws InterruptedException {
+		if (batch.isEmpty()) {
+			// nothing to index, or only unreadable records
+			spool.ack(batch);
+			return;
+		}
+		try {
+			List<SpooledAction> actions = index(batch.getActions());
+			if (!actions.isEmpty()) {
+				retrying.incrementAndGet();
+				try {
+					while (!actions.isEmpty()) {
+						retried.addAndGet(actions.size());
+						waitForBackoff();
+						if (!running) {
+							// the batch remains in the spool and is indexed again after a restart
+							return;
+						}
+						actions = index(actions);
+					}
+				} finally {
+					retrying.decrementAndGet();
+				}
+			}
+		} catch (RuntimeException e) {
+			// the batch would otherwise hold on to its place in the spool forever
+			LOG.error("Dropping {} actions that could not be indexed.", batch.getActions().size(), e);
+			failed.addAndGet(batch.getActions().size());
+		}
+		spool.ack(batch);
+	}
+
+	/**
+	 * @return the actions to retry
+	 */
+	private List<SpooledAction> index(List<SpooledAction> batch) {
+		final List<BulkableAction<DocumentResult>> actions = new ArrayList<>(batch.size());
+		for (SpooledAction action : batch) {
+			actions.add(action.toAction());
+		}
+
+		final long start = System.currentTimeMillis();
+		final BulkResult result;
+		try {
+			result = clientSupplier.get().execute(new Bulk.Builder().addAction(actions).build());
+		} catch (IOException | RuntimeException e) {
+			LOG.warn("Bulk request of {} actions failed, they will be retried: {}", batch.size(), e.getMessage());
+			// Shutdown the ES client, it will be recreated as needed
+			clientReset.run();
+			onFailure();
+			return retries(batch, false);
+		}
+		final long latency = System.currentTimeMillis() - start;
+
+		final List<BulkResultItem> items = hasItems(result) ? result.getItems() : null;
+		if (items == null || items.size() != batch.size()) {
+			final int responseCode = result == null ? -1 : result.getResponseCode();
+			if (result == null) {
+				EventToIndex.logEsError("Bulk API action", null, null, null, -1, null);
+			} else {
+				EventToIndex.logEsError("Bulk API action", null, null, result.getJsonString(), responseCode, result.getErrorMessage());
+			}
+			onFailure();
+			// the request itself was rejected: only count an attempt if retrying can't help
+			return retries(batch, responseCode >= 400 && responseCode < 500 && responseCode != 429);
+		}
+
+		final List<SpooledAction> retries = new ArrayList<>();
+		final Map<String, String> missingIndices = new LinkedHashMap<>();
+		int succeeded = 0;
+		for (int i = 0; i < items.size(); i++) {
+			final BulkResultItem item = items.get(i);
+			final SpooledAction action = batch.get(i);
+			if (item.status >= 200 && item.status < 300) {
+				succeeded++;
+				if (LOG.isDebugEnabled()) {
+					EventToIndex.logEsDebug(item.operation, action.getIndex(), item.type, "none", item.status, item.error);
+				}
+			} else if (item.status == 404 && !"delete".equals(action.getMethod())) {
+				// index doesn't exist for upsert command so create new index and try again
+				missingIndices.put(action.getIndex(), action.getType());
+				retries.add(action);
+			} else if (item.status == 429 || item.status >= 500) {
+				retries.add(action);
+			} else {
+				EventToIndex.logEsError(item.operation, action.getIndex(), item.type, "none", item.status, item.error);
+				failed.incrementAndGet();
+			}
+		}
+		markIndexed(succeeded);
+
+		for (Map.Entry<String, String> missing : missingIndices.entrySet()) {
+			try {
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("index name {} doesn't exist, creating new index", missing.getKey());
+				}
+				EventToIndex.createIndex(clientSupplier.get(), missing.getKey(), missing.getValue());
+			} catch (IOException e) {
+				LOG.warn("Failed to create index {}: {}", missing.getKey(), e.getMessage());
+			}
+		}
+
+		if (retries.isEmpty()) {
+			consecutiveFailures.set(0);
+			limit.onSample(latency <= targetLatency);
+			return retries;
+		}
+		onFailure();
+		return retries(retries, true);
+	}
+
+	private static boolean hasItems(BulkResult result) {
+		return result != null && result.getJsonObject() != null && result.getJsonObject().has("items");
+	}
+
+	/**
+	 * @return the actions that may be retried, the others are dropped
+	 */
+	private List<SpooledAction> retries(List<SpooledAction> actions, boolean countAttempt) {
+		final long oldest = System.currentTimeMillis() - maxRetryAge;
+		final List<SpooledAction> retries = new ArrayList<>(actions.size());
+		for (SpooledAction action : actions) {
+			final SpooledAction retry = countAttempt ? action.retry() : action;
+			if (retry.getAttempts() > maxRetries) {
+				LOG.error("Dropping {} after {} attempts.", action, action.getAttempts() + 1);
+				failed.incrementAndGet();
+			} else if (retry.getSpooledAt() < oldest) {
+				LOG.error("Dropping {}, it was spooled more than {} ms ago.", action, maxRetryAge);
+				failed.incrementAndGet();
+			} else {
+				retries.add(retry);
+			}
+		}
+		return retries;
+	}
+
+	private void spool(SpooledAction action) {
+		try {
+			if (!spool.offer(action, offerTimeout)) {
+				dropped.incrementAndGet();
+				LOG.warn("Elasticsearch forwarder spool is full, dropping {}.", action);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			dropped.incrementAndGet();
+		}
+	}
+
+	private void onFailure() {
+		final int failures = consecutiveFailures.incrementAndGet();
+		final long backoff = Math.min(maxBackoff, initialBackoff << Math.min(failures - 1, 20));
+		retryAfter = System.currentTimeMillis() + backoff;
+		limit.onSample(false);
+	}
+
+	private void waitForBackoff() throws InterruptedException {
+		long wait;
+		while (running && (wait = retryAfter - System.currentTimeMillis()) > 0) {
+			Thread.sleep(Math.min(wait, POLL_TIMEOUT_MS));
+		}
+	}
+
+	/**
+	 * Waits while another worker retries a batch, so that newer actions are not indexed before the retried ones.
+	 */
+	private void waitForRetries() throws InterruptedException {
+		while (running && retrying.get() > 0) {
+			Thread.sleep(RETRY_WAIT_MS);
+		}
+	}
+
+	private synchronized void markIndexed(int count) {
+		indexed.addAndGet(count);
+		final long second = System.currentTimeMillis() / 1000;
+		final int slot = (int) (second % RATE_WINDOW_SECONDS);
+		if (rateSeconds[slot] != second) {
+			rateSeconds[slot] = second;
+			rateCounts[slot] = 0;
+		}
+		rateCounts[slot] += count;
+	}
+
+	/**
+	 * @return the number of actions indexed per second over the last minute
+	 */
+	public synchronized double getIndexingRate() {
+		final long now = System.currentTimeMillis() / 1000;
+		long total = 0;
+		for (int i = 0; i < RATE_WINDOW_SECONDS; i++) {
+			if (now - rateSeconds[i] < RATE_WINDOW_SECONDS) {
+				total += rateCounts[i];
+			}
+		}
+		return (double) total / RATE_WINDOW_SECONDS;
+	}
+
+	public int getSpoolDepth() {
+		return spool.size();
+	}
+
+	public long getSpoolUsedBytes() {
+		return spool.getUsedBytes();
+	}
+
+	public long getIndexedCount() {
+		return indexed.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	public long getRetriedCount() {
+		return retried.get();
+	}
+
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	public int getConcurrencyLimit() {
+		return limit.getLimit();
+	}
+
+	public void setBulkSize(int bulkSize) {
+		this.bulkSize = bulkSize;
+	}
+
+	public void setMaxWorkers(int maxWorkers) {
+		this.maxWorkers = maxWorkers;
+	}
+
+	public void setTargetLatency(long targetLatency) {
+		this.targetLatency = targetLatency;
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	/**
+	 * @param maxRetryAge time in milliseconds after which an action that can't be indexed is dropped
+	 */
+	public void setMaxRetryAge(long maxRetryAge) {
+		this.maxRetryAge = maxRetryAge;
+	}
+
+	public void setInitialBackoff(long initialBackoff) {
+		this.initialBackoff = initialBackoff;
+	}
+
+	public void setMaxBackoff(long maxBackoff) {
+		this.maxBackoff = maxBackoff;
+	}
+
+	public void setOfferTimeout(long offerTimeout) {
+		this.offerTimeout = offerTimeout;
+	}
+
+	/**
+	 * Additive increase, multiplicative decrease limit of the number of
+	 * concurrent bulk requests.
+	 */
+	private class ConcurrencyLimit {
+		private int current = 1;
+		private int inFlight = 0;
+
+		synchronized boolean acquire(long timeoutMs) throws InterruptedException {
+			final long deadline = System.currentTimeMillis() + timeoutMs;
+			while (running && inFlight >= current) {
+				final long wait = deadline - System.currentTimeMillis();
+				if (wait <= 0) {
+					return false;
+				}
+				wait(wait);
+			}
+			if (!running) {
+				return false;
+			}
+			inFlight++;
+			return true;
+		}
+
+		synchronized void release() {
+			inFlight--;
+			notifyAll();
+		}
+
+		synchronized void onSample(boolean fast) {
+			if (fast) {
+				current = Math.min(maxWorkers, current + 1);
+			} else {
+				current = Math.max(1, current / 2);
+			}
+			notifyAll();
+		}
+
+		synchronized void wakeUp() {
+			notifyAll();
+		}
+
+		synchronized int getLimit() {
+			return current;
+		}
+	}
+}
@@ -28,6 +28,7 @@
 
 package org.opennms.plugins.elasticsearch.rest;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -60,9 +61,6 @@ import org.slf4j.LoggerFactory;
 import io.searchbox.action.BulkableAction;
 import io.searchbox.client.JestClient;
 import io.searchbox.client.JestResult;
-import io.searchbox.core.Bulk;
-import io.searchbox.core.BulkResult;
-import io.searchbox.core.BulkResult.BulkResultItem;
 import io.searchbox.core.DocumentResult;
 import io.searchbox.core.Index;
 import io.searchbox.core.Update;
@@ -144,6 +142,8 @@ public class EventToIndex implements AutoCloseable {
 
 	public static final int DEFAULT_NUMBER_OF_THREADS = Runtime.getRuntime().availableProcessors() * 2;
 
+	public static final int DEFAULT_SPOOL_SIZE_MB = 64;
+
 	private boolean logEventDescription=false;
 
 	private boolean logAllEvents=false;
@@ -168,6 +168,22 @@ public class EventToIndex implements AutoCloseable {
 
 	private int threads = DEFAULT_NUMBER_OF_THREADS;
 
+	private String spoolFile = null;
+
+	private int spoolSize = DEFAULT_SPOOL_SIZE_MB;
+
+	private int bulkSize = 500;
+
+	private int bulkWorkers = 4;
+
+	private long bulkTargetLatency = 1000;
+
+	private int bulkMaxRetries = 10;
+
+	private long bulkMaxRetryAge = TimeUnit.DAYS.toMinutes(1);
+
+	private volatile BulkIndexer bulkIndexer = null;
+
 	private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
 		threads,
 		threads,
@@ -225,6 +241,98 @@ public class EventToIndex implements AutoCloseable {
 		}
 	}
 
+	public String getSpoolFile() {
+		return spoolFile;
+	}
+
+	/**
+	 * @param spoolFile the file of the spool, when empty the spool is kept in
+	 * <code>${karaf.data}/elasticsearch/forwarder.spool</code>
+	 */
+	public void setSpoolFile(String spoolFile) {
+		this.spoolFile = spoolFile;
+	}
+
+	public int getSpoolSize() {
+		return spoolSize;
+	}
+
+	/**
+	 * @param spoolSize the size of the spool in MB
+	 */
+	public void setSpoolSize(int spoolSize) {
+		this.spoolSize = spoolSize > 0 ? spoolSize : DEFAULT_SPOOL_SIZE_MB;
+	}
+
+	public int getBulkSize() {
+		return bulkSize;
+	}
+
+	public void setBulkSize(int bulkSize) {
+		this.bulkSize = bulkSize > 0 ? bulkSize : 1;
+	}
+
+	public int getBulkWorkers() {
+		return bulkWorkers;
+	}
+
+	public void setBulkWorkers(int bulkWorkers) {
+		this.bulkWorkers = bulkWorkers > 0 ? bulkWorkers : 1;
+	}
+
+	public long getBulkTargetLatency() {
+		return bulkTargetLatency;
+	}
+
+	public void setBulkTargetLatency(long bulkTargetLatency) {
+		this.bulkTargetLatency = bulkTargetLatency;
+	}
+
+	public int getBulkMaxRetries() {
+		return bulkMaxRetries;
+	}
+
+	public void setBulkMaxRetries(int bulkMaxRetries) {
+		this.bulkMaxRetries = bulkMaxRetries;
+	}
+
+	public long getBulkMaxRetryAge() {
+		return bulkMaxRetryAge;
+	}
+
+	/**
+	 * @param bulkMaxRetryAge minutes after which a document that can't be indexed is dropped
+	 */
+	public void setBulkMaxRetryAge(long bulkMaxRetryAge) {
+		this.bulkMaxRetryAge = bulkMaxRetryAge;
+	}
+
+	/**
+	 * @return the number of actions waiting in the spool
+	 */
+	public int getSpoolDepth() {
+		return bulkIndexer == null ? 0 : bulkIndexer.getSpoolDepth();
+	}
+
+	/**
+	 * @return the number of documents indexed per second over the last minute
+	 */
+	public double getIndexingRate() {
+		return bulkIndexer == null ? 0 : bulkIndexer.getIndexingRate();
+	}
+
+	public long getIndexedCount() {
+		return bulkIndexer == null ? 0 : bulkIndexer.getIndexedCount();
+	}
+
+	public long getFailedCount() {
+		return bulkIndexer == null ? 0 : bulkIndexer.getFailedCount();
+	}
+
+	public long getDroppedCount() {
+		return bulkIndexer == null ? 0 : bulkIndexer.getDroppedCount();
+	}
+
 	public NodeCache getNodeCache() {
 		return nodeCache;
 	}
@@ -315,8 +423,73 @@ public class EventToIndex implements AutoCloseable {
 		}
 	}
 
+	/**
+	 * Opens the spool and starts the bulk workers, so that the actions
+	 * recovered from the spool after a restart are indexed without waiting
+	 * for new events.
+	 */
+	public void init() {
+		getBulkIndexer();
+	}
+
+	/**
+	 * returns the bulk indexer, opening the spool and starting the bulk
+	 * workers on first use if {@link #init()} was not called
+	 * @return
+	 */
+	private BulkIndexer getBulkIndexer() {
+		if (bulkIndexer == null) {
+			synchronized(this){
+				if (bulkIndexer == null){
+					final File file = getSpoolPath();
+					try {
+						final BulkIndexer indexer = new BulkIndexer(new ActionSpool(file, spoolSize * 1024 * 1024), this::getJestClient, this::closeJestClient);
+						indexer.setBulkSize(bulkSize);
+						indexer.setMaxWorkers(bulkWorkers);
+						indexer.setTargetLatency(bulkTargetLatency);
+						indexer.setMaxRetries(bulkMaxRetries);
+						indexer.setMaxRetryAge(TimeUnit.MINUTES.toMillis(bulkMaxRetryAge));
+						indexer.start();
+						bulkIndexer = indexer;
+					} catch (IOException e) {
+						throw new RuntimeException("Failed to open the Elasticsearch forwarder spool " + file, e);
+					}
+				}
+			}
+		}
+		return bulkIndexer;
+	}
+
+	private File getSpoolPath() {
+		if (spoolFile != null && !spoolFile.trim().isEmpty()) {
+			return new File(spoolFile.trim());
+		}
+		final String data = System.getProperty("karaf.data");
+		if (data != null) {
+			return new File(new File(data, "elasticsearch"), "forwarder.spool");
+		}
+		try {
+			final File file = File.createTempFile("opennms-es-forwarder", ".spool");
+			file.deleteOnExit();
+			return file;
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to create the Elasticsearch forwarder spool", e);
+		}
+	}
+
 	@Override
 	public void close(){
+		synchronized(this){
+			if (bulkIndexer != null) {
+				try {
+					bulkIndexer.close();
+				} catch (IOException e) {
+					LOG.warn("Unexpected exception while closing the spool", e);
+				}
+				bulkIndexer = null;
+			}
+		}
+
 		closeJestClient();
 
 		// Shutdown the thread pool
@@ -346,107 +519,11 @@ public class EventToIndex implements AutoCloseable {
 
 	private void sendEvents(final List<BulkableAction<DocumentResult>> actions) {
 		if (actions != null && actions.size() > 0) {
-			// Split the actions up by index
-			for (Map.Entry<String,List<BulkableAction<DocumentResult>>> entry : actions.stream().collect(Collectors.groupingBy(BulkableAction::getIndex)).entrySet()) {
-
-				try {
-					final List<BulkableAction<DocumentResult>> actionList = entry.getValue();
-
-					if (entry.getValue().size() == 1) {
-						// Not bulk
-						final BulkableAction<DocumentResult> action = actionList.get(0);
-						executeSingleAction(getJestClient(), action);
-					} else {
-						// The type will be identical for all events in the same index
-						final String type = actionList.get(0).getType();
-
-						final Bulk.Builder builder = new Bulk.Builder()
-								.defaultIndex(entry.getKey())
-								.defaultType(type);
-
-						// Add all actions to the bulk operation
-						builder.addAction(actionList);
-
-						final Bulk bulk = builder.build();
-
-						BulkResult result = getJestClient().execute(bulk);
-
-						// If the bulk command fails completely...
-						if (result == null || !result.isSucceeded()) {
-							if (result == null) {
-								logEsError("Bulk API action", entry.getKey(), type, null, -1, null);
-							} else {
-								logEsError("Bulk API action", entry.getKey(), type, result.getJsonString(), result.getResponseCode(), result.getErrorMessage());
-							}
-
-							// Try and issue the bulk actions individually as a fallback
-							for (BulkableAction<DocumentResult> action : entry.getValue()) {
-								executeSingleAction(getJestClient(), action);
-							}
-
-							continue;
-						}
-
-						// Check the return codes of the results
-						List<BulkResultItem> items = result.getItems();
-						boolean all404s = true;
-						for (BulkResultItem item : items) {
-							if (item.status != 404) {
-								all404s = false;
-								break;
-							}
-						}
-
-						if(all404s){
-							// index doesn't exist for upsert command so create new index and try again
-
-							if(LOG.isDebugEnabled()) {
-								LOG.debug("index name "+entry.getKey() + " doesn't exist, creating new index");
-							}
-
-							createIndex(getJestClient(), entry.getKey(), type);
-
-							result = getJestClient().execute(bulk);
-						}
-
-						// If the bulk command fails completely...
-						if (result == null || !result.isSucceeded()) {
-							if (result == null) {
-								logEsError("Bulk API action", entry.getKey(), type, null, -1, null);
-							} else {
-								logEsError("Bulk API action", entry.getKey(), type, result.getJsonString(), result.getResponseCode(), result.getErrorMessage());
-							}
-
-							// Try and issue the bulk actions individually as a fallback
-							for (BulkableAction<DocumentResult> action : entry.getValue()) {
-								executeSingleAction(getJestClient(), action);
-							}
-
-							continue;
-						}
-
-						// Log any unsuccessful completions as errors
-						for (BulkResultItem item : result.getItems()) {
-							if(item.status >= 200 && item.status < 300){
-								if (LOG.isDebugEnabled()) {
-									// If debug is enabled, log all completions
-									logEsDebug(item.operation, entry.getKey(), item.type, "none", item.status, item.error);
-								}
-							} else {
-								logEsError(item.operation, entry.getKey(), item.type, "none", item.status, item.error);
-							}
-						}
-					}
-				} catch (Throwable ex){
-					LOG.error("Unexpected problem sending event to Elasticsearch", ex);
-					// Shutdown the ES client, it will be recreated as needed
-					closeJestClient();
-				}
-			}
+			getBulkIndexer().submit(actions);
 		}
 	}
 
-	private static final void logEsError(String operation, String index, String type, String result, int responseCode, String errorMessage) {
+	static final void logEsError(String operation, String index, String type, String result, int responseCode, String errorMessage) {
 		LOG.error("Error while performing {} on Elasticsearch index: {}, type: {}\n" +
 				"   received result: {}\n" + 
 				"   response code: {}\n" + 
@@ -455,7 +532,7 @@ public class EventToIndex implements AutoCloseable {
 		);
 	}
 
-	private static final void logEsDebug(String operation, String index, String type, String result, int responseCode, String errorMessage) {
+	static final void logEsDebug(String operation, String index, String type, String result, int responseCode, String errorMessage) {
 		LOG.debug("Performed {} on Elasticsearch index: {}, type: {}\n" +
 				"   received result: {}\n" + 
 				"   response code: {}\n" + 
@@ -464,43 +541,6 @@ public class EventToIndex implements AutoCloseable {
 		);
 	}
 
-	/**
-	 * This executes single Elasticsearch actions, creating indices as needed.
-	 * 
-	 * @param client
-	 * @param action
-	 * @throws IOException
-	 */
-	private static void executeSingleAction(JestClient client, BulkableAction<DocumentResult> action) throws IOException {
-
-		DocumentResult result = client.execute(action);
-
-		if(result == null || result.getResponseCode() == 404){
-			// index doesn't exist for upsert command so create new index and try again
-
-			if(LOG.isDebugEnabled()) {
-				if (result == null) {
-					logEsDebug(action.getRestMethodName(), action.getIndex(), action.getType(), null, -1, null);
-				} else {
-					logEsDebug(action.getRestMethodName(), action.getIndex(), action.getType(), result.getJsonString(), result.getResponseCode(), result.getErrorMessage());
-				}
-				LOG.debug("index name "+action.getIndex() + " doesn't exist, creating new index");
-			}
-
-			createIndex(client, action.getIndex(), action.getType());
-
-			result = client.execute(action);
-		}
-
-		if (result == null) {
-			logEsError(action.getRestMethodName(), action.getIndex(), action.getType(), null, -1, null);
-		} else if (!result.isSucceeded()){
-			logEsError(action.getRestMethodName(), action.getIndex(), action.getType(), result.getJsonString(), result.getResponseCode(), result.getErrorMessage());
-		} else if(LOG.isDebugEnabled()) {
-			logEsDebug(action.getRestMethodName(), action.getIndex(), action.getType(), result.getJsonString(), result.getResponseCode(), result.getErrorMessage());
-		}
-	}
-
 	/** 
 	 * <p>This method converts events into a sequence of Elasticsearch index/update commands.
 	 * Three types of actions are possible:</p>
@@ -1003,7 +1043,7 @@ public class EventToIndex implements AutoCloseable {
 		}
 	}
 
-	private static void createIndex(JestClient client, String name, String type) throws IOException {
+	static void createIndex(JestClient client, String name, String type) throws IOException {
 		// create new index
 		CreateIndex createIndex = new CreateIndex.Builder(name).build();
 		JestResult result = new OnmsJestResult(client.execute(createIndex));
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.plugins.elasticsearch.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.Gson;
+
+import io.searchbox.action.BulkableAction;
+import io.searchbox.core.Delete;
+import io.searchbox.core.DocumentResult;
+import io.searchbox.core.Index;
+import io.searchbox.core.Update;
+
+/**
+ * Serializable form of a bulk index/update/delete action as it is stored in
+ * the {@link ActionSpool}. The payload is the JSON document (or update
+ * script) rendered once when the action is spooled.
+ */
+public class SpooledAction {
+
+	private static final Gson GSON = new Gson();
+
+	private final String method;
+	private final String index;
+	private final String type;
+	private final String id;
+	private final String payload;
+	private final int attempts;
+	private final long spooledAt;
+
+	public SpooledAction(String method, String index, String type, String id, String payload, int attempts) {
+		this(method, index, type, id, payload, attempts, System.currentTimeMillis());
+	}
+
+	public SpooledAction(String method, String index, String type, String id, String payload, int attempts, long spooledAt) {
+		this.method = method;
+		this.index = index;
+		this.type = type;
+		this.id = id;
+		this.payload = payload;
+		this.attempts = attempts;
+		this.spooledAt = spooledAt;
+	}
+
+	public static SpooledAction of(BulkableAction<DocumentResult> action) {
+		return new SpooledAction(action.getBulkMethodName(), action.getIndex(), action.getType(), action.getId(), action.getData(GSON), 0);
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public String getIndex() {
+		return index;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getPayload() {
+		return payload;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * @return the time the action was first spooled, in milliseconds since the epoch
+	 */
+	public long getSpooledAt() {
+		return spooledAt;
+	}
+
+	/**
+	 * @return a copy of this action with the number of attempts incremented
+	 */
+	public SpooledAction retry() {
+		return new SpooledAction(method, index, type, id, payload, attempts + 1, spooledAt);
+	}
+
+	public BulkableAction<DocumentResult> toAction() {
+		if ("update".equals(method)) {
+			return new Update.Builder(payload).index(index).type(type).id(id).build();
+		} else if ("delete".equals(method)) {
+			return new Delete.Builder(id).index(index).type(type).build();
+		} else {
+			Index.Builder builder = new Index.Builder(payload).index(index).type(type);
+			if (id != null) {
+				builder = builder.id(id);
+			}
+			return builder.build();
+		}
+	}
+
+	public byte[] toBytes() {
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload == null ? 64 : payload.length() + 64);
+			final DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(attempts);
+			out.writeLong(spooledAt);
+			writeString(out, method);
+			writeString(out, index);
+			writeString(out, type);
+			writeString(out, id);
+			writeString(out, payload);
+			out.flush();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			// Cannot happen with a ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static SpooledAction fromBytes(byte[] bytes) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		final int attempts = in.readInt();
+		final long spooledAt = in.readLong();
+		return new SpooledAction(readString(in), readString(in), readString(in), readString(in), readString(in), attempts, spooledAt);
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		} else {
+			final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > in.available()) {
+			throw new IOException("String of " + length + " bytes in a record of " + in.available() + " remaining bytes");
+		}
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String toString() {
+		return method + " " + index + "/" + type + "/" + id + " (attempts: " + attempts + ")";
+	}
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.plugins.elasticsearch.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.plugins.elasticsearch.rest.ActionSpool;
+import org.opennms.plugins.elasticsearch.rest.SpooledAction;
+
+public class ActionSpoolTest {
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	@Test
+	public void canSpoolAndPoll() throws Exception {
+		try (ActionSpool spool = new ActionSpool(tempFolder.newFile(), 4096)) {
+			assertTrue(spool.offer(action(1), 0));
+			assertTrue(spool.offer(new SpooledAction("index", "opennms-events-raw-2018.01", "eventdata", null, "{}", 0), 0));
+			assertEquals(2, spool.size());
+
+			final ActionSpool.Batch batch = spool.poll(10, 0);
+			final List<SpooledAction> actions = batch.getActions();
+			assertEquals(2, actions.size());
+			assertEquals("1", actions.get(0).getId());
+			assertEquals("update", actions.get(0).getMethod());
+			assertEquals("{\"doc\":{\"id\":1}}", actions.get(0).getPayload());
+			assertNull(actions.get(1).getId());
+			assertTrue(spool.poll(10, 0).isEmpty());
+
+			// the actions remain in the spool until they are acknowledged
+			assertEquals(2, spool.size());
+			spool.ack(batch);
+			assertEquals(0, spool.size());
+			assertEquals(0, spool.getUsedBytes());
+		}
+	}
+
+	@Test
+	public void canWrapAround() throws Exception {
+		try (ActionSpool spool = new ActionSpool(tempFolder.newFile(), 1024)) {
+			int next = 0;
+			for (int round = 0; round < 100; round++) {
+				// keep a few actions in the spool so that records cross the end of the file
+				while (spool.offer(action(next), 0)) {
+					next++;
+				}
+				assertFalse(spool.offer(action(next), 0));
+				final int expected = next - spool.size();
+				final ActionSpool.Batch batch = spool.poll(3, 0);
+				final List<SpooledAction> actions = batch.getActions();
+				for (int i = 0; i < actions.size(); i++) {
+					assertEquals(Integer.toString(expected + i), actions.get(i).getId());
+				}
+				// no room is made before the acknowledgement
+				assertFalse(spool.offer(action(next), 0));
+				spool.ack(batch);
+			}
+		}
+	}
+
+	@Test
+	public void canAcknowledgeOutOfOrder() throws Exception {
+		try (ActionSpool spool = new ActionSpool(tempFolder.newFile(), 4096)) {
+			for (int i = 0; i < 6; i++) {
+				assertTrue(spool.offer(action(i), 0));
+			}
+			final ActionSpool.Batch first = spool.poll(2, 0);
+			final ActionSpool.Batch second = spool.poll(2, 0);
+			final long used = spool.getUsedBytes();
+
+			spool.ack(second);
+			assertEquals(6, spool.size());
+			assertEquals(used, spool.getUsedBytes());
+
+			spool.ack(first);
+			assertEquals(2, spool.size());
+			assertEquals("4", spool.poll(10, 0).getActions().get(0).getId());
+		}
+	}
+
+	@Test
+	public void canRecoverAfterRestart() throws Exception {
+		final File file = tempFolder.newFile();
+		try (ActionSpool spool = new ActionSpool(file, 4096)) {
+			for (int i = 0; i < 5; i++) {
+				assertTrue(spool.offer(action(i), 0));
+			}
+			spool.ack(spool.poll(2, 0));
+			assertTrue(spool.offer(action(1).retry(), 0));
+			// handed out, but not acknowledged before the restart
+			assertEquals(2, spool.poll(2, 0).getActions().size());
+		}
+
+		// the capacity of an existing spool is kept
+		try (ActionSpool spool = new ActionSpool(file, 8192)) {
+			assertEquals(4096, spool.getCapacity());
+			assertEquals(4, spool.size());
+			List<SpooledAction> actions = spool.poll(10, 0).getActions();
+			assertEquals("2", actions.get(0).getId());
+			assertEquals("4", actions.get(2).getId());
+			assertEquals("1", actions.get(3).getId());
+			assertEquals(1, actions.get(3).getAttempts());
+		}
+	}
+
+	@Test
+	public void canDiscardCorruptedRecords() throws Exception {
+		final File file = tempFolder.newFile();
+		try (ActionSpool spool = new ActionSpool(file, 4096)) {
+			for (int i = 0; i < 3; i++) {
+				assertTrue(spool.offer(action(i), 0));
+			}
+		}
+		// overwrite the length of the second record
+		final int firstRecord = 4 + action(0).toBytes().length;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(32 + firstRecord);
+			raf.writeInt(Integer.MAX_VALUE);
+		}
+
+		try (ActionSpool spool = new ActionSpool(file, 4096)) {
+			final ActionSpool.Batch batch = spool.poll(10, 0);
+			assertEquals(1, batch.getActions().size());
+			assertEquals("0", batch.getActions().get(0).getId());
+			spool.ack(batch);
+			assertEquals(0, spool.size());
+
+			// the spool remains usable
+			assertTrue(spool.offer(action(3), 0));
+			assertEquals("3", spool.poll(10, 0).getActions().get(0).getId());
+		}
+	}
+
+	private static SpooledAction action(int id) {
+		return new SpooledAction("update", "opennms-alarms", "alarmdata", Integer.toString(id), "{\"doc\":{\"id\":" + id + "}}", 0);
+	}
+}
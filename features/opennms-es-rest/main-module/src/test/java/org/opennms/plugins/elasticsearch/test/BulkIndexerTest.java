@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.plugins.elasticsearch.test;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.plugins.elasticsearch.rest.ActionSpool;
+import org.opennms.plugins.elasticsearch.rest.BulkIndexer;
+import org.opennms.plugins.elasticsearch.rest.RestClientFactory;
+
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+
+import io.searchbox.client.JestClient;
+import io.searchbox.core.Index;
+
+public class BulkIndexerTest {
+
+	@Rule
+	public WireMockRule wireMockRule = new WireMockRule(WireMockConfiguration.wireMockConfig().dynamicPort());
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private JestClient client;
+
+	private BulkIndexer indexer;
+
+	@Before
+	public void setUp() throws Exception {
+		RestClientFactory restClientFactory = new RestClientFactory(wireMockRule.url(""), "", "");
+		restClientFactory.setTimeout(3000);
+		restClientFactory.setSocketTimeout(3000);
+		restClientFactory.setRetries(0);
+		client = restClientFactory.getJestClient();
+
+		indexer = new BulkIndexer(new ActionSpool(tempFolder.newFile(), 1024 * 1024), () -> client, () -> {});
+		indexer.setInitialBackoff(10);
+		indexer.setMaxWorkers(2);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		indexer.close();
+		client.shutdownClient();
+	}
+
+	/**
+	 * The first bulk request is partially rejected: the rejected document
+	 * is indexed by a second bulk request while the invalid one is dropped.
+	 */
+	@Test(timeout = 30000)
+	public void canRetryRejectedItems() throws Exception {
+		stubFor(post(urlPathEqualTo("/_bulk"))
+				.inScenario("bulk")
+				.whenScenarioStateIs(Scenario.STARTED)
+				.willReturn(aResponse().withStatus(200).withBody("{\"took\":1,\"errors\":true,\"items\":["
+						+ item("1", 201, null) + ","
+						+ item("2", 429, "{\"type\":\"es_rejected_execution_exception\",\"reason\":\"queue is full\"}") + ","
+						+ item("3", 400, "{\"type\":\"mapper_parsing_exception\",\"reason\":\"failed to parse\"}")
+						+ "]}"))
+				.willSetStateTo("retry"));
+		stubFor(post(urlPathEqualTo("/_bulk"))
+				.inScenario("bulk")
+				.whenScenarioStateIs("retry")
+				.willReturn(aResponse().withStatus(200).withBody("{\"took\":1,\"errors\":false,\"items\":["
+						+ item("2", 201, null)
+						+ "]}")));
+
+		indexer.start();
+		indexer.submit(Arrays.asList(
+				new Index.Builder("{\"id\":1}").index("opennms-events-raw").type("eventdata").id("1").build(),
+				new Index.Builder("{\"id\":2}").index("opennms-events-raw").type("eventdata").id("2").build(),
+				new Index.Builder("{\"id\":3}").index("opennms-events-raw").type("eventdata").id("3").build()));
+
+		while (indexer.getIndexedCount() + indexer.getFailedCount() < 3) {
+			TimeUnit.MILLISECONDS.sleep(50);
+		}
+
+		assertEquals(2, indexer.getIndexedCount());
+		assertEquals(1, indexer.getFailedCount());
+		assertEquals(1, indexer.getRetriedCount());
+		assertEquals(0, indexer.getDroppedCount());
+		assertEquals(0, indexer.getSpoolDepth());
+		verify(2, postRequestedFor(urlPathEqualTo("/_bulk")));
+	}
+
+	/**
+	 * Documents stay in the spool while Elasticsearch fails and are indexed
+	 * once it is available again.
+	 */
+	@Test(timeout = 30000)
+	public void canRetryFailedBulkRequests() throws Exception {
+		stubFor(post(urlPathEqualTo("/_bulk"))
+				.inScenario("unavailable")
+				.whenScenarioStateIs(Scenario.STARTED)
+				.willReturn(aResponse().withStatus(503).withBody("{\"error\":\"unavailable\",\"status\":503}"))
+				.willSetStateTo("available"));
+		stubFor(post(urlPathEqualTo("/_bulk"))
+				.inScenario("unavailable")
+				.whenScenarioStateIs("available")
+				.willReturn(aResponse().withStatus(200).withBody("{\"took\":1,\"errors\":false,\"items\":["
+						+ item("1", 201, null)
+						+ "]}")));
+
+		indexer.start();
+		indexer.submit(Arrays.asList(
+				new Index.Builder("{\"id\":1}").index("opennms-events-raw").type("eventdata").id("1").build()));
+
+		while (indexer.getIndexedCount() < 1) {
+			TimeUnit.MILLISECONDS.sleep(50);
+		}
+
+		assertEquals(0, indexer.getFailedCount());
+		assertEquals(1, indexer.getRetriedCount());
+		verify(2, postRequestedFor(urlPathEqualTo("/_bulk")));
+	}
+
+	/**
+	 * Documents that can't be indexed for longer than the maximum retry age
+	 * are dropped instead of being retried forever.
+	 */
+	@Test(timeout = 30000)
+	public void canDropDocumentsAfterMaxRetryAge() throws Exception {
+		stubFor(post(urlPathEqualTo("/_bulk"))
+				.willReturn(aResponse().withStatus(503).withBody("{\"error\":\"unavailable\",\"status\":503}")));
+
+		indexer.setMaxRetryAge(500);
+		indexer.start();
+		indexer.submit(Arrays.asList(
+				new Index.Builder("{\"id\":1}").index("opennms-events-raw").type("eventdata").id("1").build()));
+
+		while (indexer.getFailedCount() < 1) {
+			TimeUnit.MILLISECONDS.sleep(50);
+		}
+
+		assertEquals(0, indexer.getIndexedCount());
+		assertEquals(0, indexer.getSpoolDepth());
+	}
+
+	/**
+	 * The actions recovered from the spool after a restart are indexed as
+	 * soon as the indexer is started, without waiting for new actions.
+	 */
+	@Test(timeout = 30000)
+	public void canIndexRecoveredActionsOnStart() throws Exception {
+		stubFor(post(urlPathEqualTo("/_bulk"))
+				.willReturn(aResponse().withStatus(200).withBody("{\"took\":1,\"errors\":false,\"items\":["
+						+ item("1", 201, null)
+						+ "]}")));
+
+		// spool an action and stop before it is indexed
+		final File file = tempFolder.newFile();
+		final BulkIndexer stopped = new BulkIndexer(new ActionSpool(file, 1024 * 1024), () -> client, () -> {});
+		stopped.submit(Arrays.asList(
+				new Index.Builder("{\"id\":1}").index("opennms-events-raw").type("eventdata").id("1").build()));
+		stopped.close();
+
+		indexer.close();
+		indexer = new BulkIndexer(new ActionSpool(file, 1024 * 1024), () -> client, () -> {});
+		assertEquals(1, indexer.getSpoolDepth());
+		indexer.start();
+
+		while (indexer.getIndexedCount() < 1) {
+			TimeUnit.MILLISECONDS.sleep(50);
+		}
+		assertEquals(0, indexer.getSpoolDepth());
+		verify(1, postRequestedFor(urlPathEqualTo("/_bulk")));
+	}
+
+	private static String item(String id, int status, String error) {
+		return "{\"index\":{\"_index\":\"opennms-events-raw\",\"_type\":\"eventdata\",\"_id\":\"" + id + "\",\"status\":" + status
+				+ (error == null ? "" : ",\"error\":" + error) + "}}";
+	}
+}
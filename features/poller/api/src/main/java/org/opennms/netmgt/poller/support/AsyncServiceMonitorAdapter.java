@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.support;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.ServiceMonitor;
+
+/**
+ * Exposes a blocking {@link ServiceMonitor} as an {@link AsyncServiceMonitor}
+ * by running its polls on the given executor.
+ */
+public class AsyncServiceMonitorAdapter implements AsyncServiceMonitor {
+
+    private final ServiceMonitor m_monitor;
+    private final Executor m_executor;
+
+    public AsyncServiceMonitorAdapter(ServiceMonitor monitor, Executor executor) {
+        m_monitor = Objects.requireNonNull(monitor);
+        m_executor = Objects.requireNonNull(executor);
+    }
+
+    /**
+     * Returns the monitor itself if it is already asynchronous, or an adapter
+     * running its polls on the given executor otherwise.
+     */
+    public static AsyncServiceMonitor wrap(ServiceMonitor monitor, Executor executor) {
+        if (monitor instanceof AsyncServiceMonitor) {
+            return (AsyncServiceMonitor)monitor;
+        }
+        return new AsyncServiceMonitorAdapter(monitor, executor);
+    }
+
+    public ServiceMonitor getMonitor() {
+        return m_monitor;
+    }
+
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        return CompletableFuture.supplyAsync(() -> m_monitor.poll(svc, parameters), m_executor);
+    }
+
+    @Override
+    public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+        return m_monitor.poll(svc, parameters);
+    }
+
+    @Override
+    public Map<String, Object> getRuntimeAttributes(MonitoredService svc, Map<String, Object> parameters) {
+        return m_monitor.getRuntimeAttributes(svc, parameters);
+    }
+
+    @Override
+    public String getEffectiveLocation(String location) {
+        return m_monitor.getEffectiveLocation(location);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AsyncServiceMonitorAdapter[monitor=%s]", m_monitor);
+    }
+}
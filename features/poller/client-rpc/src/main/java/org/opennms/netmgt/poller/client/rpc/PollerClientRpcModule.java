@@ -30,13 +30,16 @@ package org.opennms.netmgt.poller.client.rpc;
 
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
-import java.util.function.Supplier;
+import java.util.function.BiFunction;
 
 import org.opennms.core.rpc.xml.AbstractXmlRpcModule;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
 import org.opennms.netmgt.poller.ServiceMonitorRegistry;
+import org.opennms.netmgt.poller.support.AsyncServiceMonitorAdapter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
@@ -68,19 +71,31 @@ public class PollerClientRpcModule extends AbstractXmlRpcModule<PollerRequestDTO
             return CompletableFuture.completedFuture(new PollerResponseDTO(PollStatus.unknown("No monitor found with class name '" + className + "'.")));
         }
 
-        return CompletableFuture.supplyAsync(new Supplier<PollerResponseDTO>() {
-            @Override
-            public PollerResponseDTO get() {
-                PollStatus pollStatus;
-                try {
-                    final Map<String, Object> parameters = request.getMonitorParameters();
-                    pollStatus = monitor.poll(request, parameters);
-                } catch (RuntimeException e) {
-                    pollStatus = PollStatus.unknown(e.getMessage());
+        // Asynchronous monitors are invoked directly, the others are run on the executor
+        final AsyncServiceMonitor asyncMonitor = AsyncServiceMonitorAdapter.wrap(monitor, executor);
+        CompletableFuture<PollStatus> future;
+        try {
+            final Map<String, Object> parameters = request.getMonitorParameters();
+            future = asyncMonitor.pollAsync(request, parameters);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.completedFuture(PollStatus.unknown(e.getMessage()));
+        }
+
+        final BiFunction<PollStatus, Throwable, PollerResponseDTO> toResponse = (pollStatus, ex) -> {
+            if (ex != null) {
+                final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                if (!(cause instanceof RuntimeException)) {
+                    throw new CompletionException(cause);
                 }
-                return new PollerResponseDTO(pollStatus);
+                pollStatus = PollStatus.unknown(cause.getMessage());
             }
-        }, executor);
+            return new PollerResponseDTO(pollStatus);
+        };
+        if (asyncMonitor == monitor) {
+            // Don't build and send the response on the I/O thread of the monitor
+            return future.handleAsync(toResponse, executor);
+        }
+        return future.handle(toResponse);
     }
 
     public void setServiceMonitorRegistry(ServiceMonitorRegistry serviceMonitorRegistry) {
@@ -34,9 +34,13 @@ import java.net.ConnectException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NoRouteToHostException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
@@ -44,16 +48,18 @@ import org.opennms.core.utils.TimeoutTracker;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
-import org.opennms.netmgt.poller.support.AbstractServiceMonitor;
+import org.opennms.netmgt.poller.monitors.support.NioEventLoop;
+import org.opennms.netmgt.poller.support.AbstractAsyncServiceMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
 import org.xbill.DNS.Message;
 import org.xbill.DNS.Name;
 import org.xbill.DNS.Record;
 import org.xbill.DNS.Section;
-import org.xbill.DNS.SimpleResolver;
 import org.xbill.DNS.Type;
+import org.xbill.DNS.WireParseException;
 
 /**
  * <P>
@@ -67,7 +73,7 @@ import org.xbill.DNS.Type;
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  */
 @Distributable
-final public class DnsMonitor extends AbstractServiceMonitor {
+final public class DnsMonitor extends AbstractAsyncServiceMonitor {
     private static final Logger LOG = LoggerFactory.getLogger(DnsMonitor.class);
     /**
      * Default DNS port.
@@ -102,6 +108,11 @@ final public class DnsMonitor extends AbstractServiceMonitor {
      */
     private static final int DEFAULT_MAX_ANSWERS = Integer.MAX_VALUE;
 
+    /**
+     * Length of the DNS header, the response id is in its first two bytes
+     */
+    private static final int DNS_HEADER_LENGTH = 12;
+
     /**
      * {@inheritDoc}
      *
@@ -116,9 +127,15 @@ final public class DnsMonitor extends AbstractServiceMonitor {
      * received, it is parsed and validated. If the DNS lookup was successful
      * the service status is set to SERVICE_AVAILABLE and the method returns.
      * </P>
+     *
+     * <P>
+     * The queries are sent by the shared {@link NioEventLoop}, no thread is
+     * blocked while waiting for the response. If the response is truncated
+     * the query is sent again over TCP.
+     * </P>
      */
     @Override
-    public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
         // get the parameters
         //
         TimeoutTracker timeoutTracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
@@ -150,92 +167,196 @@ final public class DnsMonitor extends AbstractServiceMonitor {
         //
         final InetAddress addr = svc.getAddress();
 
-        PollStatus serviceStatus = null;
-        serviceStatus = pollDNS(timeoutTracker, port, addr, lookup, fatalCodes, minAnswers, maxAnswers);
+        final DnsPoll poll = new DnsPoll(NioEventLoop.getInstance(), timeoutTracker, port, addr, lookup, fatalCodes, minAnswers, maxAnswers);
+        poll.start();
+        return poll.getFuture();
+    }
 
-        if (serviceStatus == null) {
-            String reason = "Never received valid DNS response for address: " + addr;
-            LOG.debug(reason);
-            serviceStatus = PollStatus.unavailable(reason);
+    /**
+     * The state of one poll, every attempt is chained to the completion of
+     * the previous one.
+     */
+    private static class DnsPoll {
+        private final CompletableFuture<PollStatus> m_future = new CompletableFuture<>();
+        private final NioEventLoop m_loop;
+        private final TimeoutTracker m_timeoutTracker;
+        private final int m_port;
+        private final InetAddress m_address;
+        private final String m_addr;
+        private final String m_lookup;
+        private final List<Integer> m_fatalCodes;
+        private final int m_minAnswers;
+        private final int m_maxAnswers;
+
+        private DnsPoll(final NioEventLoop loop, final TimeoutTracker timeoutTracker, final int port, final InetAddress address, final String lookup, final List<Integer> fatalCodes, int minAnswers, int maxAnswers) {
+            m_loop = loop;
+            m_timeoutTracker = timeoutTracker;
+            m_port = port;
+            m_address = address;
+            m_addr = InetAddressUtils.str(address);
+            m_lookup = lookup;
+            m_fatalCodes = fatalCodes;
+            m_minAnswers = minAnswers;
+            m_maxAnswers = maxAnswers;
         }
-        
-        // 
-        //
-        // return the status of the service
-        //
-        return serviceStatus;
-    }
 
-    private PollStatus pollDNS(final TimeoutTracker timeoutTracker, final int port, final InetAddress address, final String lookup, final List<Integer> fatalCodes, int minAnswers, int maxAnswers) {
-    	final String addr = InetAddressUtils.str(address);
-        for (timeoutTracker.reset(); timeoutTracker.shouldRetry(); timeoutTracker.nextAttempt()) {
+        public CompletableFuture<PollStatus> getFuture() {
+            return m_future;
+        }
+
+        public void start() {
+            m_timeoutTracker.reset();
+            attempt();
+        }
+
+        private void attempt() {
+            if (!m_timeoutTracker.shouldRetry()) {
+                String reason = "Never received valid DNS response for address: " + m_addr;
+                LOG.debug(reason);
+                m_future.complete(PollStatus.unavailable(reason));
+                return;
+            }
+
+            final long delay = m_timeoutTracker.getNextAttemptDelayInMillis();
+            if (delay > 0) {
+                // strict timeouts: wait for the timer instead of sleeping in startAttempt()
+                m_loop.schedule(this::attempt, delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            final Message query;
             try {
-                final Name name = Name.fromString(lookup, Name.root);
-                final SimpleResolver resolver = new SimpleResolver();
-                resolver.setAddress(new InetSocketAddress(addr, port));
-                resolver.setLocalAddress((InetSocketAddress)null);
-                double timeout = timeoutTracker.getSoTimeout() / 1000d;
-                resolver.setTimeout((timeout < 1 ? 1 : (int) timeout));
+                final Name name = Name.fromString(m_lookup, Name.root);
                 final Record question = Record.newRecord(name, Type.A, DClass.IN);
-                final Message query = Message.newQuery(question);
-                PollStatus status;
+                query = Message.newQuery(question);
+            } catch (final IOException e) {
+                handleException(e);
+                return;
+            }
+            final int id = query.getHeader().getID();
+            // same rounding as the timeout of the SimpleResolver, in seconds
+            double timeout = m_timeoutTracker.getSoTimeout() / 1000d;
 
-                timeoutTracker.startAttempt();
-                final Message response = resolver.send(query);
-                double responseTime = timeoutTracker.elapsedTimeInMillis();
+            m_timeoutTracker.startAttempt();
+            m_loop.exchange(new InetSocketAddress(m_address, m_port), ByteBuffer.wrap(query.toWire()),
+                    // ignore the datagrams that don't answer this query
+                    datagram -> datagram.remaining() >= DNS_HEADER_LENGTH && (datagram.getShort(datagram.position()) & 0xFFFF) == id,
+                    (timeout < 1 ? 1 : (int) timeout), TimeUnit.SECONDS)
+                .whenComplete((datagram, e) -> onResponse(query, datagram, e, false));
+        }
 
-                final Integer rcode = response.getHeader().getRcode();
-                LOG.debug("received response code: {}", rcode);
+        /**
+         * Sends the query again over TCP, prefixed by its length, as the
+         * {@link org.xbill.DNS.SimpleResolver} does when the UDP response
+         * is truncated.
+         */
+        private void exchangeOverTcp(final Message query) {
+            final long timeout = m_timeoutTracker.getSoTimeout();
+            final byte[] wire = query.toWire();
+            final ByteBuffer request = ByteBuffer.allocate(2 + wire.length);
+            request.putShort((short) wire.length).put(wire).flip();
 
-                if (fatalCodes.contains(rcode)) {
-                    status = PollStatus.unavailable("Received an invalid DNS response for address: " + addr);
-                    LOG.debug(status.getReason());
-                    return status;
-                } else if (minAnswers != DEFAULT_MIN_ANSWERS || maxAnswers != DEFAULT_MAX_ANSWERS) {
-                    int numAnswers = response.getSectionArray(Section.ANSWER).length;
-                    boolean tooFewAnswers = numAnswers < minAnswers;
-                    boolean tooManyAnswers = numAnswers > maxAnswers;
-                    if (tooFewAnswers) {
-                        status = PollStatus.unavailable("Response contained only " + numAnswers + " answer(s), but at least " + minAnswers + " answers(s) are needed.");
-                        LOG.warn(status.getReason());
-                        return status;
-                    }
-                    if (tooManyAnswers) {
-                        status = PollStatus.unavailable("Response contained " + numAnswers + " answer(s), but " + maxAnswers + " or fewer answers(s) are needed.");
-                        LOG.warn(status.getReason());
-                        return status;
+            m_loop.connect(new InetSocketAddress(m_address, m_port), timeout, TimeUnit.MILLISECONDS)
+                .thenCompose(session -> session.write(request, timeout, TimeUnit.MILLISECONDS)
+                        .thenCompose(v -> session.readFully(ByteBuffer.allocate(2), timeout, TimeUnit.MILLISECONDS))
+                        .thenCompose(length -> session.readFully(ByteBuffer.allocate(length.getShort(0) & 0xFFFF), timeout, TimeUnit.MILLISECONDS))
+                        .whenComplete((response, e) -> session.close()))
+                .whenComplete((response, e) -> {
+                    if (response != null) {
+                        response.flip();
                     }
-                    status = PollStatus.up(responseTime);
-                    LOG.debug("valid DNS response received with {} answer(s), responseTime = {}ms", numAnswers, responseTime);
+                    onResponse(query, response, e, true);
+                });
+        }
+
+        private void onResponse(final Message query, final ByteBuffer buffer, final Throwable e, final boolean overTcp) {
+            if (e != null) {
+                if (handleException(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e)) {
+                    m_timeoutTracker.nextAttempt();
+                    attempt();
+                }
+                return;
+            }
+            try {
+                final byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                final Message response = new Message(bytes);
+                if (response.getHeader().getID() != query.getHeader().getID()) {
+                    throw new WireParseException("invalid message id");
+                }
+                if (!overTcp && response.getHeader().getFlag(Flags.TC)) {
+                    LOG.debug("truncated response received from {}, retrying over TCP", m_addr);
+                    exchangeOverTcp(query);
+                    return;
+                }
+                m_future.complete(checkResponse(response, m_timeoutTracker.elapsedTimeInMillis()));
+            } catch (final IOException ex) {
+                handleException(ex);
+            } catch (final RuntimeException ex) {
+                m_future.completeExceptionally(ex);
+            }
+        }
+
+        private PollStatus checkResponse(final Message response, final double responseTime) {
+            PollStatus status;
+            final Integer rcode = response.getHeader().getRcode();
+            LOG.debug("received response code: {}", rcode);
+
+            if (m_fatalCodes.contains(rcode)) {
+                status = PollStatus.unavailable("Received an invalid DNS response for address: " + m_addr);
+                LOG.debug(status.getReason());
+                return status;
+            } else if (m_minAnswers != DEFAULT_MIN_ANSWERS || m_maxAnswers != DEFAULT_MAX_ANSWERS) {
+                int numAnswers = response.getSectionArray(Section.ANSWER).length;
+                boolean tooFewAnswers = numAnswers < m_minAnswers;
+                boolean tooManyAnswers = numAnswers > m_maxAnswers;
+                if (tooFewAnswers) {
+                    status = PollStatus.unavailable("Response contained only " + numAnswers + " answer(s), but at least " + m_minAnswers + " answers(s) are needed.");
+                    LOG.warn(status.getReason());
                     return status;
-                } else {
-                    status = PollStatus.up(responseTime);
-                    LOG.debug("valid DNS response received, responseTime = {}ms", responseTime);
+                }
+                if (tooManyAnswers) {
+                    status = PollStatus.unavailable("Response contained " + numAnswers + " answer(s), but " + m_maxAnswers + " or fewer answers(s) are needed.");
+                    LOG.warn(status.getReason());
                     return status;
                 }
+                status = PollStatus.up(responseTime);
+                LOG.debug("valid DNS response received with {} answer(s), responseTime = {}ms", numAnswers, responseTime);
+                return status;
+            } else {
+                status = PollStatus.up(responseTime);
+                LOG.debug("valid DNS response received, responseTime = {}ms", responseTime);
+                return status;
+            }
+        }
 
-            } catch (final InterruptedIOException e) {
+        /**
+         * Completes the poll unless the exception is a timeout.
+         *
+         * @return true if another attempt must be made
+         */
+        private boolean handleException(final Throwable e) {
+            if (e instanceof InterruptedIOException) {
                 // No response received, retry without marking the poll failed. If we get this condition over and over until 
-                // the retries are exhausted, it will leave serviceStatus null and we'll get the log message at the bottom 
-            } catch (final NoRouteToHostException e) {
-                String reason1 = "No route to host exception for address: " + addr;
+                // the retries are exhausted, we'll get the log message in attempt()
+                return true;
+            } else if (e instanceof NoRouteToHostException) {
+                String reason1 = "No route to host exception for address: " + m_addr;
                 LOG.debug(reason1, e);
-                return PollStatus.unavailable(reason1);
-            } catch (final ConnectException e) {
-                String reason1 = "Connection exception for address: " + addr;
+                m_future.complete(PollStatus.unavailable(reason1));
+            } else if (e instanceof ConnectException) {
+                String reason1 = "Connection exception for address: " + m_addr;
                 LOG.debug(reason1, e);
-                return PollStatus.unavailable(reason1);
-            } catch (final IOException e) {
-                String reason1 = "IOException while polling address: " + addr + " " + e.getMessage();
+                m_future.complete(PollStatus.unavailable(reason1));
+            } else if (e instanceof IOException) {
+                String reason1 = "IOException while polling address: " + m_addr + " " + e.getMessage();
                 LOG.debug(reason1, e);
-                return PollStatus.unavailable(reason1);
+                m_future.complete(PollStatus.unavailable(reason1));
+            } else {
+                m_future.completeExceptionally(e);
             }
+            return false;
         }
-        String reason = "Never received valid DNS response for address: " + addr;
-       
-        LOG.debug(reason);
-        return PollStatus.unavailable(reason);
     }
 
-
 }
@@ -28,16 +28,16 @@
 
 package org.opennms.netmgt.poller.monitors;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
 import java.net.ConnectException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NoRouteToHostException;
-import java.net.Socket;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
@@ -45,7 +45,9 @@ import org.opennms.core.utils.TimeoutTracker;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
-import org.opennms.netmgt.poller.support.AbstractServiceMonitor;
+import org.opennms.netmgt.poller.monitors.support.NioEventLoop;
+import org.opennms.netmgt.poller.monitors.support.NioTcpSession;
+import org.opennms.netmgt.poller.support.AbstractAsyncServiceMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,7 +63,7 @@ import org.slf4j.LoggerFactory;
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  */
 @Distributable
-final public class TcpMonitor extends AbstractServiceMonitor {
+final public class TcpMonitor extends AbstractAsyncServiceMonitor {
 
     public static final Logger LOG = LoggerFactory.getLogger(TcpMonitor.class);
 
@@ -95,9 +97,12 @@ final public class TcpMonitor extends AbstractServiceMonitor {
      * interface is parsed and if the banner text indicates that we are talking
      * to Provided that the interface's response is valid we set the service
      * status to SERVICE_AVAILABLE and return.
+     *
+     * The connections and reads are done by the shared {@link NioEventLoop},
+     * no thread is blocked while waiting for the remote host.
      */
     @Override
-    public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
         //
         // Process parameters
         //
@@ -122,95 +127,153 @@ final public class TcpMonitor extends AbstractServiceMonitor {
         //
         InetAddress ipAddr = svc.getAddress();
 
-        final String hostAddress = InetAddressUtils.str(ipAddr);
-	LOG.debug("poll: address = {}, port = {}, {}", hostAddress, port, tracker);
+        LOG.debug("poll: address = {}, port = {}, {}", InetAddressUtils.str(ipAddr), port, tracker);
 
         // Give it a whirl
         //
-        PollStatus serviceStatus = PollStatus.unavailable();
-
-        for (tracker.reset(); tracker.shouldRetry() && !serviceStatus.isAvailable(); tracker.nextAttempt()) {
-            Socket socket = null;
-            try {
-                
-                tracker.startAttempt();
+        final TcpPoll poll = new TcpPoll(NioEventLoop.getInstance(), tracker, ipAddr, port, strBannerMatch);
+        poll.start();
+        return poll.getFuture();
+    }
 
-                socket = new Socket();
-                socket.connect(new InetSocketAddress(ipAddr, port), tracker.getConnectionTimeout());
-                socket.setSoTimeout(tracker.getSoTimeout());
-                LOG.debug("TcpMonitor: connected to host: {} on port: {}", ipAddr, port);
+    /**
+     * The state of one poll, every attempt is chained to the completion of
+     * the previous one.
+     */
+    private static class TcpPoll {
+        private final CompletableFuture<PollStatus> m_future = new CompletableFuture<>();
+        private final NioEventLoop m_loop;
+        private final TimeoutTracker m_tracker;
+        private final InetAddress m_ipAddr;
+        private final String m_hostAddress;
+        private final int m_port;
+        private final String m_bannerMatch;
+        private volatile PollStatus m_serviceStatus = PollStatus.unavailable();
 
-                // We're connected, so upgrade status to unresponsive
-                serviceStatus = PollStatus.unresponsive();
+        private TcpPoll(NioEventLoop loop, TimeoutTracker tracker, InetAddress ipAddr, int port, String bannerMatch) {
+            m_loop = loop;
+            m_tracker = tracker;
+            m_ipAddr = ipAddr;
+            m_hostAddress = InetAddressUtils.str(ipAddr);
+            m_port = port;
+            m_bannerMatch = bannerMatch;
+        }
 
-                if (strBannerMatch == null || strBannerMatch.length() == 0 || strBannerMatch.equals("*")) {
-                    serviceStatus = PollStatus.available(tracker.elapsedTimeInMillis());
-                    break;
-                }
+        public CompletableFuture<PollStatus> getFuture() {
+            return m_future;
+        }
 
-                BufferedReader rdr = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        public void start() {
+            m_tracker.reset();
+            attempt();
+        }
 
+        private void attempt() {
+            if (!m_tracker.shouldRetry()) {
                 //
-                // Tokenize the Banner Line, and check the first
-                // line for a valid return.
+                // return the status of the service
                 //
-                String response = rdr.readLine();
-                double responseTime = tracker.elapsedTimeInMillis();
+                m_future.complete(m_serviceStatus);
+                return;
+            }
+
+            final long delay = m_tracker.getNextAttemptDelayInMillis();
+            if (delay > 0) {
+                // strict timeouts: wait for the timer instead of sleeping in startAttempt()
+                m_loop.schedule(this::attempt, delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            m_tracker.startAttempt();
+            m_loop.connect(new InetSocketAddress(m_ipAddr, m_port), m_tracker.getConnectionTimeout(), TimeUnit.MILLISECONDS)
+                .thenCompose(this::checkBanner)
+                .whenComplete((status, e) -> {
+                    if (e != null) {
+                        status = handleException(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                        if (status == null) {
+                            return;
+                        }
+                    }
+                    if (status != null) {
+                        m_serviceStatus = status;
+                    }
+                    if (m_serviceStatus.isAvailable()) {
+                        m_future.complete(m_serviceStatus);
+                        return;
+                    }
+                    m_tracker.nextAttempt();
+                    attempt();
+                });
+        }
+
+        /**
+         * Returns null when no banner was received, the service then stays
+         * unresponsive and the next attempt is made.
+         */
+        private CompletableFuture<PollStatus> checkBanner(NioTcpSession session) {
+            LOG.debug("TcpMonitor: connected to host: {} on port: {}", m_ipAddr, m_port);
+
+            // We're connected, so upgrade status to unresponsive
+            m_serviceStatus = PollStatus.unresponsive();
+
+            if (m_bannerMatch == null || m_bannerMatch.length() == 0 || m_bannerMatch.equals("*")) {
+                session.close();
+                return CompletableFuture.completedFuture(PollStatus.available(m_tracker.elapsedTimeInMillis()));
+            }
+
+            return session.readLine(m_tracker.getSoTimeout(), TimeUnit.MILLISECONDS).thenApply(response -> {
+                session.close();
+                double responseTime = m_tracker.elapsedTimeInMillis();
 
                 if (response == null)
-                    continue;
+                    return null;
                 LOG.debug("poll: banner = {}", response);
                 LOG.debug("poll: responseTime= {}ms", responseTime);
 
                 //Could it be a regex?
-                if (strBannerMatch.charAt(0)=='~'){
-                  if (!response.matches(strBannerMatch.substring(1)))
-                    serviceStatus = PollStatus.unavailable("Banner does not match Regex '"+strBannerMatch+"'");
+                if (m_bannerMatch.charAt(0)=='~'){
+                  if (!response.matches(m_bannerMatch.substring(1)))
+                    return PollStatus.unavailable("Banner does not match Regex '"+m_bannerMatch+"'");
                   else
-                    serviceStatus = PollStatus.available(responseTime);
+                    return PollStatus.available(responseTime);
                 }
                 else {
-                  if (response.indexOf(strBannerMatch) > -1) {
-                    serviceStatus = PollStatus.available(responseTime);
+                  if (response.indexOf(m_bannerMatch) > -1) {
+                    return PollStatus.available(responseTime);
                   }
                   else {
-                    serviceStatus = PollStatus.unavailable("Banner: '"+response+"' does not contain match string '"+strBannerMatch+"'");
+                    return PollStatus.unavailable("Banner: '"+response+"' does not contain match string '"+m_bannerMatch+"'");
                   }
                 }
+            });
+        }
 
-            } catch (NoRouteToHostException e) {
-            	String reason = "No route to host exception for address " + hostAddress;
+        /**
+         * Returns the status of the failed attempt, or completes the poll and
+         * returns null when no other attempt must be made.
+         */
+        private PollStatus handleException(Throwable e) {
+            if (e instanceof NoRouteToHostException) {
+                String reason = "No route to host exception for address " + m_hostAddress;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-                break; // Break out of for(;;)
-            } catch (InterruptedIOException e) {
-            	String reason = "did not connect to host with " + tracker;
+                m_future.complete(PollStatus.unavailable(reason));
+                return null;
+            } else if (e instanceof InterruptedIOException) {
+                String reason = "did not connect to host with " + m_tracker;
                 LOG.debug(reason);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (ConnectException e) {
-            	String reason = "Connection exception for address: " + ipAddr;
+                return PollStatus.unavailable(reason);
+            } else if (e instanceof ConnectException) {
+                String reason = "Connection exception for address: " + m_ipAddr;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (IOException e) {
-            	String reason = "IOException while polling address: " + ipAddr;
+                return PollStatus.unavailable(reason);
+            } else if (e instanceof IOException) {
+                String reason = "IOException while polling address: " + m_ipAddr;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } finally {
-                try {
-                    // Close the socket
-                    if (socket != null)
-                        socket.close();
-                } catch (IOException e) {
-                    e.fillInStackTrace();
-                    LOG.debug("poll: Error closing socket.", e);
-                }
+                return PollStatus.unavailable(reason);
             }
+            m_future.completeExceptionally(e);
+            return null;
         }
-
-        //
-        // return the status of the service
-        //
-        return serviceStatus;
     }
 
 }
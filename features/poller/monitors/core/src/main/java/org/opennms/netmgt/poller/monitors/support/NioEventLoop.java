@@ -0,0 +1,374 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.monitors.support;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.opennms.core.utils.HashedTimerWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A selector thread shared by the asynchronous monitors.
+ *
+ * Connections, reads and datagram exchanges are registered with a single
+ * {@link Selector} and their timeouts with a {@link HashedTimerWheel}, so an
+ * outstanding poll costs a channel and a few objects instead of a thread
+ * blocked for the whole connect/timeout/retry cycle.
+ *
+ * The futures returned by the loop are completed on the loop thread: the
+ * callbacks chained to them must not block.
+ */
+public class NioEventLoop {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NioEventLoop.class);
+
+    public static final long TICK_MILLIS = Long.getLong("org.opennms.poller.nio.tickMillis", 10L);
+
+    private static final int TICKS_PER_WHEEL = 512;
+
+    private static final int MAX_DATAGRAM_SIZE = 65535;
+
+    private static NioEventLoop s_instance;
+
+    /**
+     * Invoked on the loop thread when a registered channel is ready.
+     */
+    interface Handler {
+        void ready(SelectionKey key) throws IOException;
+
+        void failed(Throwable t);
+    }
+
+    private final String m_name;
+    private final Selector m_selector;
+    private final HashedTimerWheel m_timers = new HashedTimerWheel(TICK_MILLIS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+    private final Queue<Runnable> m_tasks = new ConcurrentLinkedQueue<>();
+    private volatile Thread m_thread;
+    private volatile boolean m_running = false;
+
+    public NioEventLoop(String name) throws IOException {
+        m_name = name;
+        m_selector = Selector.open();
+    }
+
+    /**
+     * Returns the event loop shared by all the monitors, starting it if
+     * needed.
+     */
+    public static synchronized NioEventLoop getInstance() {
+        if (s_instance == null || !s_instance.isRunning()) {
+            try {
+                s_instance = new NioEventLoop("Poller-NIO");
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to open the selector of the poller event loop.", e);
+            }
+            s_instance.start();
+        }
+        return s_instance;
+    }
+
+    public synchronized void start() {
+        if (m_thread != null) {
+            return;
+        }
+        m_running = true;
+        m_thread = new Thread(this::loop, m_name);
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    public void stop() {
+        m_running = false;
+        m_selector.wakeup();
+    }
+
+    public boolean isRunning() {
+        return m_running;
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == m_thread;
+    }
+
+    /**
+     * Runs the task on the loop thread.
+     *
+     * @throws RejectedExecutionException if the loop is stopped
+     */
+    public void execute(Runnable task) {
+        if (!m_running) {
+            throw new RejectedExecutionException("The event loop " + m_name + " is stopped.");
+        }
+        m_tasks.add(task);
+        if (!inEventLoop()) {
+            m_selector.wakeup();
+        }
+    }
+
+    /**
+     * Runs the task on the loop thread once the delay elapsed.
+     */
+    public HashedTimerWheel.Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return m_timers.newTimeout(task, delay, unit);
+    }
+
+    /**
+     * Connects to the given address.
+     *
+     * The future fails with a {@link SocketTimeoutException} if the connection
+     * is not established within the timeout, or with the exception thrown by
+     * {@link SocketChannel#finishConnect()} i.e. a
+     * {@link java.net.ConnectException} or
+     * {@link java.net.NoRouteToHostException}.
+     */
+    public CompletableFuture<NioTcpSession> connect(final InetSocketAddress address, final long timeout, final TimeUnit unit) {
+        final CompletableFuture<NioTcpSession> future = new CompletableFuture<>();
+        final SocketChannel channel;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        submit(future, channel, () -> {
+            if (channel.connect(address)) {
+                future.complete(new NioTcpSession(this, channel));
+                return;
+            }
+            final HashedTimerWheel.Timeout connectTimeout = schedule(() -> {
+                closeQuietly(channel);
+                future.completeExceptionally(new SocketTimeoutException("connect timed out"));
+            }, timeout, unit);
+            register(channel, SelectionKey.OP_CONNECT, new Handler() {
+                @Override
+                public void ready(SelectionKey key) throws IOException {
+                    if (channel.finishConnect()) {
+                        connectTimeout.cancel();
+                        key.interestOps(0);
+                        future.complete(new NioTcpSession(NioEventLoop.this, channel));
+                    }
+                }
+
+                @Override
+                public void failed(Throwable t) {
+                    connectTimeout.cancel();
+                    closeQuietly(channel);
+                    future.completeExceptionally(t);
+                }
+            });
+        });
+        return future;
+    }
+
+    /**
+     * Sends the request to the given address and waits for the first datagram
+     * accepted by the filter.
+     *
+     * The future fails with a {@link SocketTimeoutException} if no datagram
+     * was accepted within the timeout, or with a
+     * {@link java.net.PortUnreachableException} if the host reported the port
+     * as closed.
+     */
+    public CompletableFuture<ByteBuffer> exchange(final InetSocketAddress address, final ByteBuffer request, final Predicate<ByteBuffer> filter, final long timeout, final TimeUnit unit) {
+        final CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        final DatagramChannel channel;
+        try {
+            channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(address);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        submit(future, channel, () -> {
+            final HashedTimerWheel.Timeout receiveTimeout = schedule(() -> {
+                closeQuietly(channel);
+                future.completeExceptionally(new SocketTimeoutException("Receive timed out"));
+            }, timeout, unit);
+            final Handler handler = new Handler() {
+                @Override
+                public void ready(SelectionKey key) throws IOException {
+                    final ByteBuffer response = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+                    while (channel.read(response) > 0) {
+                        response.flip();
+                        if (filter.test(response.duplicate())) {
+                            receiveTimeout.cancel();
+                            closeQuietly(channel);
+                            future.complete(response);
+                            return;
+                        }
+                        response.clear();
+                    }
+                }
+
+                @Override
+                public void failed(Throwable t) {
+                    receiveTimeout.cancel();
+                    closeQuietly(channel);
+                    future.completeExceptionally(t);
+                }
+            };
+            try {
+                channel.write(request);
+            } catch (IOException e) {
+                handler.failed(e);
+                return;
+            }
+            register(channel, SelectionKey.OP_READ, handler);
+        });
+        return future;
+    }
+
+    /**
+     * Registers the channel with the selector, or updates its registration.
+     * Must be called from the loop thread.
+     */
+    void register(SelectableChannel channel, int ops, Handler handler) throws IOException {
+        final SelectionKey key = channel.keyFor(m_selector);
+        if (key == null) {
+            channel.register(m_selector, ops, handler);
+        } else if (key.isValid()) {
+            key.attach(handler);
+            key.interestOps(ops);
+        } else {
+            throw new ClosedChannelException();
+        }
+    }
+
+    interface IOTask {
+        void run() throws IOException;
+    }
+
+    /**
+     * Runs the task on the loop thread, failing the future and closing the
+     * channel if the task throws.
+     */
+    void submit(CompletableFuture<?> future, Closeable channel, IOTask task) {
+        try {
+            execute(() -> {
+                try {
+                    task.run();
+                } catch (IOException | RuntimeException e) {
+                    closeQuietly(channel);
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            closeQuietly(channel);
+            future.completeExceptionally(e);
+        }
+    }
+
+    private void loop() {
+        LOG.info("Event loop {} started.", m_name);
+        while (m_running) {
+            try {
+                m_selector.select(TICK_MILLIS);
+                final Iterator<SelectionKey> it = m_selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    final SelectionKey key = it.next();
+                    it.remove();
+                    final Handler handler = (Handler)key.attachment();
+                    try {
+                        if (key.isValid()) {
+                            handler.ready(key);
+                        }
+                    } catch (Throwable t) {
+                        key.cancel();
+                        handler.failed(t);
+                    }
+                }
+                runTasks();
+                m_timers.expireTimeouts(System.nanoTime());
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (Throwable t) {
+                LOG.warn("Unexpected error in the event loop {}.", m_name, t);
+            }
+        }
+
+        // fail everything that is still outstanding
+        runTasks();
+        for (SelectionKey key : m_selector.keys()) {
+            final Handler handler = (Handler)key.attachment();
+            if (handler != null) {
+                handler.failed(new ClosedChannelException());
+            }
+        }
+        closeQuietly(m_selector);
+        LOG.info("Event loop {} stopped.", m_name);
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = m_tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                LOG.warn("Task {} failed in the event loop {}.", task, m_name, t);
+            }
+        }
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOG.debug("Failed to close {}.", closeable, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NioEventLoop[name=%s, running=%s]", m_name, m_running);
+    }
+}
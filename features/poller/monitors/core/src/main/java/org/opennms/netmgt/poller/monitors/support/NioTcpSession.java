@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.monitors.support;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.utils.HashedTimerWheel;
+
+/**
+ * A TCP connection established by the {@link NioEventLoop}.
+ *
+ * Only one read or write can be outstanding at a time. A read or write that
+ * times out closes the session, like a blocking socket would have to be
+ * closed after a {@link java.net.SocketTimeoutException}.
+ */
+public class NioTcpSession implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final NioEventLoop m_loop;
+    private final SocketChannel m_channel;
+    private final ByteBuffer m_in = ByteBuffer.allocate(BUFFER_SIZE);
+    private final Charset m_charset = Charset.defaultCharset();
+
+    NioTcpSession(NioEventLoop loop, SocketChannel channel) {
+        m_loop = loop;
+        m_channel = channel;
+    }
+
+    /**
+     * Reads the next line sent by the peer, without the line terminator.
+     *
+     * As with {@link java.io.BufferedReader#readLine()} the future completes
+     * with null if the peer closed the connection before sending anything,
+     * and with the last incomplete line otherwise. Lines longer than the
+     * buffer are split.
+     */
+    public CompletableFuture<String> readLine(final long timeout, final TimeUnit unit) {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        m_loop.submit(future, this, () -> {
+            final String buffered = pollLine(false);
+            if (buffered != null) {
+                future.complete(buffered);
+                return;
+            }
+            final HashedTimerWheel.Timeout readTimeout = m_loop.schedule(() -> {
+                close();
+                future.completeExceptionally(new SocketTimeoutException("Read timed out"));
+            }, timeout, unit);
+            m_loop.register(m_channel, SelectionKey.OP_READ, new NioEventLoop.Handler() {
+                @Override
+                public void ready(SelectionKey key) throws IOException {
+                    final boolean eof = m_channel.read(m_in) < 0;
+                    final String line = pollLine(eof);
+                    if (line != null || eof) {
+                        readTimeout.cancel();
+                        key.interestOps(0);
+                        future.complete(line);
+                    }
+                }
+
+                @Override
+                public void failed(Throwable t) {
+                    readTimeout.cancel();
+                    close();
+                    future.completeExceptionally(t);
+                }
+            });
+        });
+        return future;
+    }
+
+    /**
+     * Reads bytes sent by the peer until the buffer is full.
+     *
+     * The future fails with an {@link EOFException} if the peer closed the
+     * connection before the buffer was filled.
+     */
+    public CompletableFuture<ByteBuffer> readFully(final ByteBuffer dst, final long timeout, final TimeUnit unit) {
+        final CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        m_loop.submit(future, this, () -> {
+            pollBytes(dst);
+            if (!dst.hasRemaining()) {
+                future.complete(dst);
+                return;
+            }
+            final HashedTimerWheel.Timeout readTimeout = m_loop.schedule(() -> {
+                close();
+                future.completeExceptionally(new SocketTimeoutException("Read timed out"));
+            }, timeout, unit);
+            m_loop.register(m_channel, SelectionKey.OP_READ, new NioEventLoop.Handler() {
+                @Override
+                public void ready(SelectionKey key) throws IOException {
+                    if (m_channel.read(dst) < 0) {
+                        throw new EOFException("Connection closed after " + dst.position() + " bytes, expected " + dst.limit());
+                    }
+                    if (!dst.hasRemaining()) {
+                        readTimeout.cancel();
+                        key.interestOps(0);
+                        future.complete(dst);
+                    }
+                }
+
+                @Override
+                public void failed(Throwable t) {
+                    readTimeout.cancel();
+                    close();
+                    future.completeExceptionally(t);
+                }
+            });
+        });
+        return future;
+    }
+
+    /**
+     * Writes all the remaining bytes of the buffer.
+     */
+    public CompletableFuture<Void> write(final ByteBuffer data, final long timeout, final TimeUnit unit) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        m_loop.submit(future, this, () -> {
+            m_channel.write(data);
+            if (!data.hasRemaining()) {
+                future.complete(null);
+                return;
+            }
+            final HashedTimerWheel.Timeout writeTimeout = m_loop.schedule(() -> {
+                close();
+                future.completeExceptionally(new SocketTimeoutException("Write timed out"));
+            }, timeout, unit);
+            m_loop.register(m_channel, SelectionKey.OP_WRITE, new NioEventLoop.Handler() {
+                @Override
+                public void ready(SelectionKey key) throws IOException {
+                    m_channel.write(data);
+                    if (!data.hasRemaining()) {
+                        writeTimeout.cancel();
+                        key.interestOps(0);
+                        future.complete(null);
+                    }
+                }
+
+                @Override
+                public void failed(Throwable t) {
+                    writeTimeout.cancel();
+                    close();
+                    future.completeExceptionally(t);
+                }
+            });
+        });
+        return future;
+    }
+
+    public CompletableFuture<Void> write(final String data, final long timeout, final TimeUnit unit) {
+        return write(ByteBuffer.wrap(data.getBytes(m_charset)), timeout, unit);
+    }
+
+    /**
+     * Returns the next buffered line, or null if no complete line was
+     * received yet. Must be called from the loop thread.
+     */
+    private String pollLine(boolean eof) {
+        m_in.flip();
+        try {
+            int end = -1;
+            for (int i = m_in.position(); i < m_in.limit(); i++) {
+                if (m_in.get(i) == '\n') {
+                    end = i;
+                    break;
+                }
+            }
+            if (end < 0) {
+                if ((eof && m_in.hasRemaining()) || m_in.remaining() == m_in.capacity()) {
+                    end = m_in.limit();
+                } else {
+                    return null;
+                }
+            }
+            final byte[] bytes = new byte[end - m_in.position()];
+            m_in.get(bytes);
+            if (m_in.hasRemaining()) {
+                // skip the line feed
+                m_in.get();
+            }
+            int length = bytes.length;
+            if (length > 0 && bytes[length - 1] == '\r') {
+                length--;
+            }
+            return new String(bytes, 0, length, m_charset);
+        } finally {
+            m_in.compact();
+        }
+    }
+
+    /**
+     * Moves the bytes already buffered by {@link #readLine(long, TimeUnit)}
+     * to the given buffer. Must be called from the loop thread.
+     */
+    private void pollBytes(ByteBuffer dst) {
+        m_in.flip();
+        try {
+            while (m_in.hasRemaining() && dst.hasRemaining()) {
+                dst.put(m_in.get());
+            }
+        } finally {
+            m_in.compact();
+        }
+    }
+
+    public boolean isOpen() {
+        return m_channel.isOpen();
+    }
+
+    @Override
+    public void close() {
+        NioEventLoop.closeQuietly(m_channel);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NioTcpSession[channel=%s]", m_channel);
+    }
+}
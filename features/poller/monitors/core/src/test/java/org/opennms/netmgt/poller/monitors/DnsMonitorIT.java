@@ -34,10 +34,19 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 import static org.opennms.core.utils.InetAddressUtils.addr;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -54,9 +63,14 @@ import org.opennms.netmgt.poller.mock.MonitorTestUtils;
 import org.opennms.test.JUnitConfigurationEnvironment;
 import org.opennms.test.mock.MockUtil;
 import org.springframework.test.context.ContextConfiguration;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
 import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Message;
 import org.xbill.DNS.Options;
 import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
 import org.xbill.DNS.SimpleResolver;
 import org.xbill.DNS.TextParseException;
 import org.xbill.DNS.Type;
@@ -293,4 +307,75 @@ public class DnsMonitorIT {
         final Record[] answers = l.getAnswers();
         assertNull(answers);
     }
+
+    @Test
+    public void testTruncatedResponseIsRetriedOverTcp() throws Exception {
+        final AtomicInteger tcpQueries = new AtomicInteger();
+        // the UDP responses are truncated, only the TCP ones contain the answer
+        try (final ServerSocket tcp = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+             final DatagramSocket udp = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), tcp.getLocalPort()))) {
+            final Thread udpResponder = new Thread(() -> {
+                final byte[] buffer = new byte[512];
+                while (!udp.isClosed()) {
+                    try {
+                        final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                        udp.receive(packet);
+                        final byte[] response = respond(new Message(packet.getData()), true).toWire();
+                        udp.send(new DatagramPacket(response, response.length, packet.getSocketAddress()));
+                    } catch (IOException e) {
+                        // closed
+                    }
+                }
+            }, "dns-udp-responder");
+            final Thread tcpResponder = new Thread(() -> {
+                while (!tcp.isClosed()) {
+                    try (final Socket socket = tcp.accept()) {
+                        final DataInputStream in = new DataInputStream(socket.getInputStream());
+                        final byte[] query = new byte[in.readUnsignedShort()];
+                        in.readFully(query);
+                        tcpQueries.incrementAndGet();
+                        final byte[] response = respond(new Message(query), false).toWire();
+                        final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                        out.writeShort(response.length);
+                        out.write(response);
+                        out.flush();
+                    } catch (IOException e) {
+                        // closed
+                    }
+                }
+            }, "dns-tcp-responder");
+            udpResponder.setDaemon(true);
+            tcpResponder.setDaemon(true);
+            udpResponder.start();
+            tcpResponder.start();
+
+            final Map<String, Object> m = new ConcurrentSkipListMap<String, Object>();
+
+            final ServiceMonitor monitor = new DnsMonitor();
+            final MonitoredService svc = MonitorTestUtils.getMonitoredService(99, InetAddress.getLoopbackAddress(), "DNS");
+
+            m.put("port", String.valueOf(tcp.getLocalPort()));
+            m.put("retry", "1");
+            m.put("timeout", "3000");
+            m.put("lookup", "test.example.com");
+            m.put("min-answers", "1");
+
+            final PollStatus status = monitor.poll(svc, m);
+            MockUtil.println("Reason: "+status.getReason());
+            assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+            assertEquals(1, tcpQueries.get());
+        }
+    }
+
+    private static Message respond(final Message query, final boolean truncated) throws IOException {
+        final Message response = new Message(query.getHeader().getID());
+        response.getHeader().setFlag(Flags.QR);
+        response.addRecord(query.getQuestion(), Section.QUESTION);
+        if (truncated) {
+            response.getHeader().setFlag(Flags.TC);
+        } else {
+            response.addRecord(new ARecord(query.getQuestion().getName(), DClass.IN, 60, addr("192.168.0.1")), Section.ANSWER);
+        }
+        return response;
+    }
 }
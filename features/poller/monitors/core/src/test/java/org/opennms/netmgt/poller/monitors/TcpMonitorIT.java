@@ -34,7 +34,13 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assume.assumeTrue;
 import static org.opennms.core.utils.InetAddressUtils.addr;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.concurrent.ConcurrentSkipListMap;
 
@@ -149,4 +155,73 @@ public class TcpMonitorIT {
         assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
         assertNull(status.getReason());
     }
+
+    @Test
+    public void testLocalBannerMatch() throws Exception {
+        try (final ServerSocket server = startBannerServer("220 localhost ESMTP ready\r\n")) {
+            assertEquals(PollStatus.SERVICE_AVAILABLE, pollLocalhost(server.getLocalPort(), "ESMTP").getStatusCode());
+            assertEquals(PollStatus.SERVICE_AVAILABLE, pollLocalhost(server.getLocalPort(), "~^220 .*ready$").getStatusCode());
+
+            final PollStatus status = pollLocalhost(server.getLocalPort(), "SSH");
+            MockUtil.println("Reason: "+status.getReason());
+            assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+            assertEquals("Banner: '220 localhost ESMTP ready' does not contain match string 'SSH'", status.getReason());
+        }
+    }
+
+    @Test
+    public void testLocalBannerTimeout() throws Exception {
+        // accepts the connections but never sends a banner
+        try (final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            final PollStatus status = pollLocalhost(server.getLocalPort(), "ESMTP");
+            MockUtil.println("Reason: "+status.getReason());
+            assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+            assertNotNull(status.getReason());
+        }
+    }
+
+    @Test
+    public void testLocalConnectionRefused() throws Exception {
+        final int port;
+        try (final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            port = server.getLocalPort();
+        }
+        final PollStatus status = pollLocalhost(port, null);
+        MockUtil.println("Reason: "+status.getReason());
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertNotNull(status.getReason());
+    }
+
+    private static PollStatus pollLocalhost(final int port, final String banner) throws UnknownHostException {
+        final Map<String, Object> m = new ConcurrentSkipListMap<String, Object>();
+        m.put(TcpMonitor.PARAMETER_PORT, String.valueOf(port));
+        m.put("retry", "1");
+        m.put("timeout", "500");
+        if (banner != null) {
+            m.put(TcpMonitor.PARAMETER_BANNER, banner);
+        }
+        final MonitoredService svc = MonitorTestUtils.getMonitoredService(3, InetAddress.getLoopbackAddress(), "TCP");
+        return new TcpMonitor().poll(svc, m);
+    }
+
+    /**
+     * Sends the banner to every connection, then closes it.
+     */
+    private static ServerSocket startBannerServer(final String banner) throws IOException {
+        final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try (final Socket socket = server.accept()) {
+                    final OutputStream out = socket.getOutputStream();
+                    out.write(banner.getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        }, "tcp-banner-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
 }
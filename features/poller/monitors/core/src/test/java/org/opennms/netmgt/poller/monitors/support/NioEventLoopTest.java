@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.monitors.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.utils.HashedTimerWheel;
+
+public class NioEventLoopTest {
+
+    private NioEventLoop m_loop;
+
+    @Before
+    public void setUp() throws Exception {
+        m_loop = new NioEventLoop("NioEventLoopTest");
+        m_loop.start();
+    }
+
+    @After
+    public void tearDown() {
+        m_loop.stop();
+    }
+
+    @Test
+    public void testTimerWheel() {
+        final HashedTimerWheel wheel = new HashedTimerWheel(10, TimeUnit.MILLISECONDS, 8);
+        final AtomicInteger fired = new AtomicInteger();
+        final long now = System.nanoTime();
+        wheel.newTimeout(() -> fired.addAndGet(1), 50, TimeUnit.MILLISECONDS);
+        // longer than a full rotation of the wheel
+        wheel.newTimeout(() -> fired.addAndGet(100), 300, TimeUnit.MILLISECONDS);
+        final HashedTimerWheel.Timeout cancelled = wheel.newTimeout(() -> fired.addAndGet(10), 60, TimeUnit.MILLISECONDS);
+        assertTrue(cancelled.cancel());
+
+        assertEquals(0, wheel.expireTimeouts(now));
+        assertEquals(1, wheel.expireTimeouts(now + TimeUnit.MILLISECONDS.toNanos(100)));
+        assertEquals(1, fired.get());
+        assertEquals(0, wheel.expireTimeouts(now + TimeUnit.MILLISECONDS.toNanos(200)));
+        assertEquals(1, wheel.expireTimeouts(now + TimeUnit.MILLISECONDS.toNanos(400)));
+        assertEquals(101, fired.get());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test(timeout = 30000)
+    public void testReadLines() throws Exception {
+        try (final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            final Thread thread = new Thread(() -> {
+                try (final Socket socket = server.accept()) {
+                    final OutputStream out = socket.getOutputStream();
+                    out.write("220 ready\r\n".getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                    Thread.sleep(100);
+                    out.write("second line\nlast".getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                } catch (Exception e) {
+                    // the test fails on the client side
+                }
+            });
+            thread.start();
+
+            final NioTcpSession session = m_loop.connect(new InetSocketAddress(server.getInetAddress(), server.getLocalPort()), 5, TimeUnit.SECONDS).get();
+            try {
+                assertEquals("220 ready", session.readLine(5, TimeUnit.SECONDS).get());
+                assertEquals("second line", session.readLine(5, TimeUnit.SECONDS).get());
+                assertEquals("last", session.readLine(5, TimeUnit.SECONDS).get());
+                assertNull(session.readLine(5, TimeUnit.SECONDS).get());
+            } finally {
+                session.close();
+            }
+            thread.join();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testConnectionRefused() throws Exception {
+        final int port;
+        try (final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = server.getLocalPort();
+        }
+        try {
+            m_loop.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 5, TimeUnit.SECONDS).get();
+            fail("The connection should have been refused.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ConnectException);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testExchange() throws Exception {
+        try (final DatagramSocket server = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            final Thread thread = new Thread(() -> {
+                try {
+                    final DatagramPacket request = new DatagramPacket(new byte[64], 64);
+                    server.receive(request);
+                    // an unrelated datagram is ignored
+                    server.send(new DatagramPacket(new byte[] { 0 }, 1, request.getSocketAddress()));
+                    server.send(new DatagramPacket(request.getData(), request.getLength(), request.getSocketAddress()));
+                } catch (Exception e) {
+                    // the test fails on the client side
+                }
+            });
+            thread.start();
+
+            final ByteBuffer response = m_loop.exchange(new InetSocketAddress(server.getLocalAddress(), server.getLocalPort()),
+                    ByteBuffer.wrap("ping".getBytes(StandardCharsets.US_ASCII)),
+                    datagram -> datagram.remaining() == 4, 5, TimeUnit.SECONDS).get();
+            assertEquals("ping", StandardCharsets.US_ASCII.decode(response).toString());
+            thread.join();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testStop() throws Exception {
+        m_loop.stop();
+        assertFalse(m_loop.isRunning());
+        try {
+            m_loop.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), 7), 5, TimeUnit.SECONDS).get();
+            fail("The event loop is stopped.");
+        } catch (ExecutionException e) {
+            // expected
+        }
+    }
+}
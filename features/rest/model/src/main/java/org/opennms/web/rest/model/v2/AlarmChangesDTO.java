@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.web.rest.model.v2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * The alarms that were created, updated or deleted since a given version of
+ * the alarm read model.
+ *
+ * When {@link #isReset()} is true the changes that happened since the
+ * requested version are no longer known, and {@link #getAlarms()} contains
+ * all of the current alarms instead.
+ */
+@XmlRootElement(name="alarm-changes")
+@XmlAccessorType(XmlAccessType.NONE)
+public class AlarmChangesDTO {
+
+    @XmlAttribute(name="version")
+    private long version;
+
+    @XmlAttribute(name="reset")
+    private boolean reset;
+
+    @XmlElementWrapper(name="alarms")
+    @XmlElement(name="alarm")
+    @JsonProperty("alarm")
+    private List<AlarmDTO> alarms = new ArrayList<>();
+
+    @XmlElementWrapper(name="deleted")
+    @XmlElement(name="alarmId")
+    @JsonProperty("deleted")
+    private List<Integer> deletedAlarmIds = new ArrayList<>();
+
+    public AlarmChangesDTO() {
+        // No-arg constructor for JAXB
+    }
+
+    public AlarmChangesDTO(long version, boolean reset, List<AlarmDTO> alarms, List<Integer> deletedAlarmIds) {
+        this.version = version;
+        this.reset = reset;
+        this.alarms = alarms;
+        this.deletedAlarmIds = deletedAlarmIds;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    public void setReset(boolean reset) {
+        this.reset = reset;
+    }
+
+    public List<AlarmDTO> getAlarms() {
+        return alarms;
+    }
+
+    public void setAlarms(List<AlarmDTO> alarms) {
+        this.alarms = alarms;
+    }
+
+    public List<Integer> getDeletedAlarmIds() {
+        return deletedAlarmIds;
+    }
+
+    public void setDeletedAlarmIds(List<Integer> deletedAlarmIds) {
+        this.deletedAlarmIds = deletedAlarmIds;
+    }
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.web.rest.model.v2;
+
+import java.util.Date;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * A change of an alarm, an outage or of the status of a node, pushed to the
+ * clients of the change feed.
+ *
+ * Alarm changes are either {@link #ACTION_UPDATE} with the alarm, or
+ * {@link #ACTION_DELETE} with only the alarm id. Outage changes are
+ * {@link #ACTION_CREATED} or {@link #ACTION_RESOLVED}, node changes are
+ * {@link #ACTION_DOWN} or {@link #ACTION_UP} and the UEI tells whether the
+ * node, an interface or a service changed.
+ */
+@XmlRootElement(name="change")
+@XmlAccessorType(XmlAccessType.NONE)
+public class ChangeDTO {
+
+    public static final String TYPE_ALARM = "alarm";
+    public static final String TYPE_OUTAGE = "outage";
+    public static final String TYPE_NODE = "node";
+
+    public static final String ACTION_UPDATE = "update";
+    public static final String ACTION_DELETE = "delete";
+    public static final String ACTION_CREATED = "created";
+    public static final String ACTION_RESOLVED = "resolved";
+    public static final String ACTION_DOWN = "down";
+    public static final String ACTION_UP = "up";
+
+    @XmlAttribute(name="sequence")
+    private long sequence;
+
+    @XmlAttribute(name="type")
+    private String type;
+
+    @XmlAttribute(name="action")
+    private String action;
+
+    @XmlElement(name="id")
+    private Integer id;
+
+    @XmlElement(name="nodeId")
+    private Integer nodeId;
+
+    @XmlElement(name="ipAddress")
+    private String ipAddress;
+
+    @XmlElement(name="serviceName")
+    private String serviceName;
+
+    @XmlElement(name="uei")
+    private String uei;
+
+    @XmlElement(name="severity")
+    private String severity;
+
+    @XmlElement(name="time")
+    private Date time;
+
+    @XmlElement(name="alarm")
+    private AlarmDTO alarm;
+
+    public ChangeDTO() {
+        // No-arg constructor for JAXB
+    }
+
+    public ChangeDTO(String type, String action) {
+        this.type = type;
+        this.action = action;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public void setAction(String action) {
+        this.action = action;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public Integer getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(Integer nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public String getIpAddress() {
+        return ipAddress;
+    }
+
+    public void setIpAddress(String ipAddress) {
+        this.ipAddress = ipAddress;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public void setServiceName(String serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    public String getUei() {
+        return uei;
+    }
+
+    public void setUei(String uei) {
+        this.uei = uei;
+    }
+
+    public String getSeverity() {
+        return severity;
+    }
+
+    public void setSeverity(String severity) {
+        this.severity = severity;
+    }
+
+    public Date getTime() {
+        return time;
+    }
+
+    public void setTime(Date time) {
+        this.time = time;
+    }
+
+    public AlarmDTO getAlarm() {
+        return alarm;
+    }
+
+    public void setAlarm(AlarmDTO alarm) {
+        this.alarm = alarm;
+    }
+}
@@ -58,4 +58,12 @@ public interface Adapter {
      */
     void handleMessageLog(TelemetryMessageLog messageLog);
 
+    /**
+     * Called once the adapter is no longer used, i.e. when the daemon is
+     * stopped or reloaded, to release the resources held by the adapter.
+     */
+    default void destroy() {
+        // pass
+    }
+
 }
@@ -112,34 +112,48 @@ public abstract class AbstractPersistingAdapter implements Adapter {
                 result = handleMessage(message, messageLog);
             } catch (Exception e) {
                 LOG.warn("Failed to build a collection set from message: {}. Dropping.", message, e);
-                return;
+                continue;
             }
 
             if (!result.isPresent()) {
                 LOG.debug("No collection set was returned when processing message: {}. Dropping.", message);
-                return;
+                continue;
             }
 
-            // Locate the matching package definition
-            final Package pkg = getPackageFor(protocol, result.get().getAgent());
-            if (pkg == null) {
-                LOG.warn("No matching package found for message: {}. Dropping.", message);
-                return;
-            }
+            persist(result.get(), message);
+        }
+    }
 
-            // Build the repository from the package definition
-            final RrdRepository repository = new RrdRepository();
-            repository.setStep(pkg.getRrd().getStep());
-            repository.setHeartBeat(repository.getStep() * 2);
-            repository.setRraList(pkg.getRrd().getRras());
-            repository.setRrdBaseDir(new File(pkg.getRrd().getBaseDir()));
-
-            // Persist!
-            final CollectionSet collectionSet = result.get().getCollectionSet();
-            LOG.trace("Persisting collection set: {} for message: {}", collectionSet, message);
-            final Persister persister = persisterFactory.createPersister(EMPTY_SERVICE_PARAMETERS, repository);
-            collectionSet.visit(persister);
+    /**
+     * Persists a collection set with the repository of the package matching
+     * its agent.
+     *
+     * Also used by the implementations that build collection sets outside of
+     * {@link #handleMessage}.
+     *
+     * @param result the collection set to persist
+     * @param source what the collection set was built from, for logging
+     */
+    protected void persist(CollectionSetWithAgent result, Object source) {
+        // Locate the matching package definition
+        final Package pkg = getPackageFor(protocol, result.getAgent());
+        if (pkg == null) {
+            LOG.warn("No matching package found for: {}. Dropping.", source);
+            return;
         }
+
+        // Build the repository from the package definition
+        final RrdRepository repository = new RrdRepository();
+        repository.setStep(pkg.getRrd().getStep());
+        repository.setHeartBeat(repository.getStep() * 2);
+        repository.setRraList(pkg.getRrd().getRras());
+        repository.setRrdBaseDir(new File(pkg.getRrd().getBaseDir()));
+
+        // Persist!
+        final CollectionSet collectionSet = result.getCollectionSet();
+        LOG.trace("Persisting collection set: {} for: {}", collectionSet, source);
+        final Persister persister = persisterFactory.createPersister(EMPTY_SERVICE_PARAMETERS, repository);
+        collectionSet.visit(persister);
     }
 
     @Override
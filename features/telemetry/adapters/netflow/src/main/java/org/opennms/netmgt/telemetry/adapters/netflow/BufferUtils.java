@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Absolute, big-endian reads on the packet buffer. None of these methods
+ * move the position of the buffer.
+ */
+final class BufferUtils {
+
+    private BufferUtils() {
+    }
+
+    static int uint8(ByteBuffer buffer, int index) {
+        return buffer.get(index) & 0xff;
+    }
+
+    static int uint16(ByteBuffer buffer, int index) {
+        return buffer.getShort(index) & 0xffff;
+    }
+
+    static long uint32(ByteBuffer buffer, int index) {
+        return buffer.getInt(index) & 0xffffffffL;
+    }
+
+    /**
+     * Reads an unsigned integer encoded on 1 to 8 bytes. Fields with the
+     * reduced size encoding of RFC 7011 are shorter than their nominal type.
+     */
+    static long uint(ByteBuffer buffer, int index, int length) {
+        switch (length) {
+        case 1:
+            return uint8(buffer, index);
+        case 2:
+            return uint16(buffer, index);
+        case 4:
+            return uint32(buffer, index);
+        case 8:
+            return buffer.getLong(index);
+        default:
+            long value = 0;
+            for (int i = 0; i < length && i < 8; i++) {
+                value = (value << 8) | uint8(buffer, index + i);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Copies an IPv4 or IPv6 address, returns null for any other length.
+     */
+    static byte[] address(ByteBuffer buffer, int index, int length) {
+        if (length != 4 && length != 16) {
+            return null;
+        }
+        final byte[] addr = new byte[length];
+        for (int i = 0; i < length; i++) {
+            addr[i] = buffer.get(index + i);
+        }
+        return addr;
+    }
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+/**
+ * The traffic exchanged between two endpoints with a given protocol, in both
+ * directions. The endpoints are ordered so that the flows of both directions
+ * have the same key.
+ */
+public class Conversation {
+
+    private final int protocol;
+    private final byte[] lowAddr;
+    private final int lowPort;
+    private final byte[] highAddr;
+    private final int highPort;
+    private final int hashCode;
+
+    private long bytes;
+    private long packets;
+
+    private Conversation(int protocol, byte[] lowAddr, int lowPort, byte[] highAddr, int highPort) {
+        this.protocol = protocol;
+        this.lowAddr = lowAddr;
+        this.lowPort = lowPort;
+        this.highAddr = highAddr;
+        this.highPort = highPort;
+        int h = protocol;
+        h = 31 * h + Arrays.hashCode(lowAddr);
+        h = 31 * h + lowPort;
+        h = 31 * h + Arrays.hashCode(highAddr);
+        h = 31 * h + highPort;
+        this.hashCode = h;
+    }
+
+    /**
+     * @return the conversation of the flow, or null if the flow has no addresses
+     */
+    public static Conversation of(Flow flow) {
+        final byte[] src = flow.getSrcAddr();
+        final byte[] dst = flow.getDstAddr();
+        if (src == null || dst == null) {
+            return null;
+        }
+        int cmp = compare(src, dst);
+        if (cmp == 0) {
+            cmp = Integer.compare(flow.getSrcPort(), flow.getDstPort());
+        }
+        if (cmp <= 0) {
+            return new Conversation(flow.getProtocol(), src, flow.getSrcPort(), dst, flow.getDstPort());
+        } else {
+            return new Conversation(flow.getProtocol(), dst, flow.getDstPort(), src, flow.getSrcPort());
+        }
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        if (a.length != b.length) {
+            return Integer.compare(a.length, b.length);
+        }
+        for (int i = 0; i < a.length; i++) {
+            final int cmp = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    void add(long bytes, long packets) {
+        this.bytes += bytes;
+        this.packets += packets;
+    }
+
+    public int getProtocol() {
+        return protocol;
+    }
+
+    public InetAddress getLowAddress() {
+        return toInetAddress(lowAddr);
+    }
+
+    public int getLowPort() {
+        return lowPort;
+    }
+
+    public InetAddress getHighAddress() {
+        return toInetAddress(highAddr);
+    }
+
+    public int getHighPort() {
+        return highPort;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getPackets() {
+        return packets;
+    }
+
+    private static InetAddress toInetAddress(byte[] addr) {
+        try {
+            return InetAddress.getByAddress(addr);
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Conversation)) {
+            return false;
+        }
+        final Conversation other = (Conversation) obj;
+        return protocol == other.protocol
+                && lowPort == other.lowPort
+                && highPort == other.highPort
+                && Arrays.equals(lowAddr, other.lowAddr)
+                && Arrays.equals(highAddr, other.highAddr);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d %s:%d <-> %s:%d %d bytes %d packets", protocol,
+                getLowAddress().getHostAddress(), lowPort, getHighAddress().getHostAddress(), highPort,
+                bytes, packets);
+    }
+}
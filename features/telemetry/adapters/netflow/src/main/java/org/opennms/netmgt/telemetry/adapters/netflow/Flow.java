@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * A flow record decoded from a NetFlow v5, NetFlow v9 or IPFIX packet.
+ *
+ * The addresses are kept as raw 4 or 16 byte arrays and are only converted
+ * to {@link InetAddress} on demand, since most flows are only aggregated.
+ */
+public class Flow {
+
+    private byte[] srcAddr;
+    private byte[] dstAddr;
+    private int srcPort;
+    private int dstPort;
+    private int protocol;
+    private int tos;
+    private int tcpFlags;
+    private int inputIfIndex;
+    private int outputIfIndex;
+    private long bytes;
+    private long packets;
+    private long firstSwitched;
+    private long lastSwitched;
+
+    public byte[] getSrcAddr() {
+        return srcAddr;
+    }
+
+    public void setSrcAddr(byte[] srcAddr) {
+        this.srcAddr = srcAddr;
+    }
+
+    public byte[] getDstAddr() {
+        return dstAddr;
+    }
+
+    public void setDstAddr(byte[] dstAddr) {
+        this.dstAddr = dstAddr;
+    }
+
+    public int getSrcPort() {
+        return srcPort;
+    }
+
+    public void setSrcPort(int srcPort) {
+        this.srcPort = srcPort;
+    }
+
+    public int getDstPort() {
+        return dstPort;
+    }
+
+    public void setDstPort(int dstPort) {
+        this.dstPort = dstPort;
+    }
+
+    public int getProtocol() {
+        return protocol;
+    }
+
+    public void setProtocol(int protocol) {
+        this.protocol = protocol;
+    }
+
+    public int getTos() {
+        return tos;
+    }
+
+    public void setTos(int tos) {
+        this.tos = tos;
+    }
+
+    public int getTcpFlags() {
+        return tcpFlags;
+    }
+
+    public void setTcpFlags(int tcpFlags) {
+        this.tcpFlags = tcpFlags;
+    }
+
+    public int getInputIfIndex() {
+        return inputIfIndex;
+    }
+
+    public void setInputIfIndex(int inputIfIndex) {
+        this.inputIfIndex = inputIfIndex;
+    }
+
+    public int getOutputIfIndex() {
+        return outputIfIndex;
+    }
+
+    public void setOutputIfIndex(int outputIfIndex) {
+        this.outputIfIndex = outputIfIndex;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public long getPackets() {
+        return packets;
+    }
+
+    public void setPackets(long packets) {
+        this.packets = packets;
+    }
+
+    /**
+     * @return the time at which the first packet of the flow was seen, in milliseconds since the epoch
+     */
+    public long getFirstSwitched() {
+        return firstSwitched;
+    }
+
+    public void setFirstSwitched(long firstSwitched) {
+        this.firstSwitched = firstSwitched;
+    }
+
+    /**
+     * @return the time at which the last packet of the flow was seen, in milliseconds since the epoch
+     */
+    public long getLastSwitched() {
+        return lastSwitched;
+    }
+
+    public void setLastSwitched(long lastSwitched) {
+        this.lastSwitched = lastSwitched;
+    }
+
+    public InetAddress getSrcInetAddress() {
+        return toInetAddress(srcAddr);
+    }
+
+    public InetAddress getDstInetAddress() {
+        return toInetAddress(dstAddr);
+    }
+
+    private static InetAddress toInetAddress(byte[] addr) {
+        if (addr == null) {
+            return null;
+        }
+        try {
+            return InetAddress.getByAddress(addr);
+        } catch (UnknownHostException e) {
+            // Only thrown for illegal lengths, which the decoders never produce
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Flow[src=%s:%d, dst=%s:%d, protocol=%d, input=%d, output=%d, bytes=%d, packets=%d]",
+                getSrcInetAddress(), srcPort, getDstInetAddress(), dstPort, protocol,
+                inputIfIndex, outputIfIndex, bytes, packets);
+    }
+}
@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Aggregates the flows of each node in memory, by interface and by
+ * conversation, on time buckets.
+ *
+ * The byte and packet counters of the interfaces are totals, which are
+ * persisted as counters at the end of every bucket. The conversations are
+ * only kept for the current bucket, from which the top N are reported.
+ *
+ * The buckets are aligned on the interval and assigned by receive time. The
+ * bucket of a node is closed by the first message received for that node
+ * after the end of the bucket, or by the next {@link #sweep(long)} when the
+ * node stops exporting. Messages handled late by another thread are added to
+ * the current bucket.
+ *
+ * This class is thread-safe, the flows of different nodes are aggregated
+ * concurrently.
+ */
+public class FlowAggregator {
+
+    private static final Comparator<Conversation> BY_BYTES = Comparator.comparingLong(Conversation::getBytes);
+
+    private final long interval;
+    private final int topN;
+    private final int maxConversations;
+
+    private final ConcurrentMap<Integer, NodeAggregate> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * @param interval the length of the buckets in milliseconds
+     * @param topN the number of conversations reported for every interface
+     * @param maxConversations the maximum number of conversations tracked by
+     *        interface during a bucket, when it is reached the smallest half
+     *        of the conversations is evicted
+     */
+    public FlowAggregator(long interval, int topN, int maxConversations) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be positive: " + interval);
+        }
+        if (maxConversations < 2 * topN) {
+            throw new IllegalArgumentException("maxConversations must be at least twice topN: " + maxConversations);
+        }
+        this.interval = interval;
+        this.topN = topN;
+        this.maxConversations = maxConversations;
+    }
+
+    /**
+     * Aggregates the flows of a message.
+     *
+     * @param nodeId the node that exported the flows
+     * @param timestamp the time at which the message was received
+     * @param flows the flows of the message
+     * @return the summary of the previous bucket of the node if the message
+     *         starts a new bucket
+     */
+    public Optional<FlowSummary> aggregate(int nodeId, long timestamp, Collection<Flow> flows) {
+        NodeAggregate node = nodes.get(nodeId);
+        if (node == null) {
+            node = nodes.computeIfAbsent(nodeId, NodeAggregate::new);
+        }
+
+        final long bucketStart = timestamp - timestamp % interval;
+        synchronized (node) {
+            FlowSummary summary = null;
+            if (node.bucketStart < 0) {
+                // Never reopen a bucket that was closed by a sweep
+                node.bucketStart = Math.max(bucketStart, node.closedUntil);
+            } else if (bucketStart > node.bucketStart) {
+                summary = close(node);
+                node.bucketStart = bucketStart;
+            }
+            for (Flow flow : flows) {
+                add(node, flow);
+            }
+            return Optional.ofNullable(summary);
+        }
+    }
+
+    /**
+     * Closes the buckets that ended before the given time, for the nodes that
+     * did not export anything since.
+     *
+     * The next message of a swept node starts a new bucket.
+     *
+     * @param now the current time
+     * @return the summaries of the closed buckets
+     */
+    public List<FlowSummary> sweep(long now) {
+        final List<FlowSummary> summaries = new ArrayList<>();
+        for (NodeAggregate node : nodes.values()) {
+            synchronized (node) {
+                if (node.bucketStart >= 0 && node.bucketStart + interval <= now) {
+                    summaries.add(close(node));
+                    node.closedUntil = node.bucketStart + interval;
+                    node.bucketStart = -1;
+                }
+            }
+        }
+        return summaries;
+    }
+
+    private void add(NodeAggregate node, Flow flow) {
+        final long bytes = flow.getBytes();
+        final long packets = flow.getPackets();
+        final int input = flow.getInputIfIndex();
+        final int output = flow.getOutputIfIndex();
+        // ifIndex 0 is used for unknown interfaces and dropped traffic
+        if (input > 0) {
+            final InterfaceAggregate iface = node.getInterface(input);
+            iface.inBytes += bytes;
+            iface.inPackets += packets;
+            addConversation(iface, flow, bytes, packets);
+        }
+        if (output > 0 && output != input) {
+            final InterfaceAggregate iface = node.getInterface(output);
+            iface.outBytes += bytes;
+            iface.outPackets += packets;
+            addConversation(iface, flow, bytes, packets);
+        }
+    }
+
+    private void addConversation(InterfaceAggregate iface, Flow flow, long bytes, long packets) {
+        final Conversation key = Conversation.of(flow);
+        if (key == null) {
+            return;
+        }
+        Conversation conversation = iface.conversations.get(key);
+        if (conversation == null) {
+            if (iface.conversations.size() >= maxConversations) {
+                evict(iface);
+            }
+            conversation = key;
+            iface.conversations.put(key, conversation);
+        }
+        conversation.add(bytes, packets);
+    }
+
+    /**
+     * Keeps the largest half of the conversations. The top N may miss a
+     * conversation that was evicted before growing, which only happens when
+     * there are many more conversations than the limit.
+     */
+    private void evict(InterfaceAggregate iface) {
+        final List<Conversation> largest = top(iface.conversations.values(), maxConversations / 2);
+        iface.conversations = new HashMap<>(maxConversations * 2);
+        for (Conversation conversation : largest) {
+            iface.conversations.put(conversation, conversation);
+        }
+    }
+
+    private FlowSummary close(NodeAggregate node) {
+        final List<FlowSummary.Interface> interfaces = new ArrayList<>(node.interfaces.size());
+        for (InterfaceAggregate iface : node.interfaces.values()) {
+            interfaces.add(new FlowSummary.Interface(iface.ifIndex, iface.inBytes, iface.inPackets,
+                    iface.outBytes, iface.outPackets, top(iface.conversations.values(), topN)));
+            if (!iface.conversations.isEmpty()) {
+                iface.conversations = new HashMap<>();
+            }
+        }
+        interfaces.sort(Comparator.comparingInt(FlowSummary.Interface::getIfIndex));
+        return new FlowSummary(node.nodeId, node.bucketStart, node.bucketStart + interval, interfaces);
+    }
+
+    /**
+     * @return the n conversations with the most bytes, in descending order
+     */
+    private static List<Conversation> top(Collection<Conversation> conversations, int n) {
+        if (n <= 0 || conversations.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+        // Min-heap of the n largest conversations seen so far
+        final PriorityQueue<Conversation> heap = new PriorityQueue<>(n + 1, BY_BYTES);
+        for (Conversation conversation : conversations) {
+            if (heap.size() < n) {
+                heap.add(conversation);
+            } else if (conversation.getBytes() > heap.peek().getBytes()) {
+                heap.poll();
+                heap.add(conversation);
+            }
+        }
+        final List<Conversation> top = new ArrayList<>(heap);
+        top.sort(BY_BYTES.reversed());
+        return top;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public int getTopN() {
+        return topN;
+    }
+
+    public int getMaxConversations() {
+        return maxConversations;
+    }
+
+    private static class NodeAggregate {
+        private final int nodeId;
+        private final Map<Integer, InterfaceAggregate> interfaces = new HashMap<>();
+        private long bucketStart = -1;
+        private long closedUntil = -1;
+
+        private NodeAggregate(int nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        private InterfaceAggregate getInterface(int ifIndex) {
+            InterfaceAggregate iface = interfaces.get(ifIndex);
+            if (iface == null) {
+                iface = new InterfaceAggregate(ifIndex);
+                interfaces.put(ifIndex, iface);
+            }
+            return iface;
+        }
+    }
+
+    private static class InterfaceAggregate {
+        private final int ifIndex;
+        private long inBytes;
+        private long inPackets;
+        private long outBytes;
+        private long outPackets;
+        private Map<Conversation, Conversation> conversations = new HashMap<>();
+
+        private InterfaceAggregate(int ifIndex) {
+            this.ifIndex = ifIndex;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Decodes NetFlow v5, NetFlow v9 and IPFIX packets into {@link Flow}s.
+ *
+ * The records are read in place from the packet buffer. The templates of the
+ * NetFlow v9 and IPFIX exporters are kept by exporter, so a single decoder
+ * must be used for all of the packets of a protocol.
+ *
+ * This class is thread-safe.
+ */
+public class FlowDecoder {
+
+    private final ConcurrentMap<String, TemplateCache> templatesByExporter = new ConcurrentHashMap<>();
+
+    private final LongAdder missingTemplates = new LongAdder();
+
+    /**
+     * Decodes the packet from the current position of the buffer to its limit.
+     * The position of the buffer is left unchanged.
+     *
+     * @param exporter identifies the exporter, e.g. its location and address
+     * @param buffer the UDP payload
+     * @param consumer called for every flow record
+     * @return the number of flows decoded
+     * @throws InvalidFlowException if the packet is malformed or of an unsupported version
+     */
+    public int decode(String exporter, ByteBuffer buffer, Consumer<Flow> consumer) throws InvalidFlowException {
+        // Index the packet from 0, in network byte order
+        final ByteBuffer packet = buffer.slice();
+        if (packet.limit() < 2) {
+            throw new InvalidFlowException("Packet of %d bytes is too short", packet.limit());
+        }
+        final int version = BufferUtils.uint16(packet, 0);
+        switch (version) {
+        case Netflow5Decoder.VERSION:
+            return Netflow5Decoder.decode(packet, consumer);
+        case Netflow9Decoder.VERSION:
+            return Netflow9Decoder.decode(packet, getTemplates(exporter), consumer, missingTemplates);
+        case IpfixDecoder.VERSION:
+            return IpfixDecoder.decode(packet, getTemplates(exporter), consumer, missingTemplates);
+        default:
+            throw new InvalidFlowException("Unsupported flow export version %d", version);
+        }
+    }
+
+    private TemplateCache getTemplates(String exporter) {
+        final TemplateCache templates = templatesByExporter.get(exporter);
+        if (templates != null) {
+            return templates;
+        }
+        return templatesByExporter.computeIfAbsent(exporter, k -> new TemplateCache());
+    }
+
+    /**
+     * @return the number of data sets dropped because their template was not received yet
+     */
+    public long getMissingTemplates() {
+        return missingTemplates.sum();
+    }
+
+    /**
+     * @return the number of templates currently known for all of the exporters
+     */
+    public int getTemplateCount() {
+        int count = 0;
+        for (TemplateCache templates : templatesByExporter.values()) {
+            count += templates.size();
+        }
+        return count;
+    }
+}
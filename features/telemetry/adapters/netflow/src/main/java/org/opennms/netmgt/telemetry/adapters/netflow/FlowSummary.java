@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The traffic of the interfaces of a node, as of the end of a time bucket.
+ */
+public class FlowSummary {
+
+    private final int nodeId;
+    private final long bucketStart;
+    private final long bucketEnd;
+    private final List<Interface> interfaces;
+
+    public FlowSummary(int nodeId, long bucketStart, long bucketEnd, List<Interface> interfaces) {
+        this.nodeId = nodeId;
+        this.bucketStart = bucketStart;
+        this.bucketEnd = bucketEnd;
+        this.interfaces = Collections.unmodifiableList(interfaces);
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public long getBucketStart() {
+        return bucketStart;
+    }
+
+    public long getBucketEnd() {
+        return bucketEnd;
+    }
+
+    public List<Interface> getInterfaces() {
+        return interfaces;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FlowSummary[nodeId=%d, bucketStart=%d, bucketEnd=%d, interfaces=%s]",
+                nodeId, bucketStart, bucketEnd, interfaces);
+    }
+
+    /**
+     * The counters of an interface, which are totals since the first flow
+     * received, and its top conversations during the bucket.
+     */
+    public static class Interface {
+        private final int ifIndex;
+        private final long inBytes;
+        private final long inPackets;
+        private final long outBytes;
+        private final long outPackets;
+        private final List<Conversation> topConversations;
+
+        public Interface(int ifIndex, long inBytes, long inPackets, long outBytes, long outPackets, List<Conversation> topConversations) {
+            this.ifIndex = ifIndex;
+            this.inBytes = inBytes;
+            this.inPackets = inPackets;
+            this.outBytes = outBytes;
+            this.outPackets = outPackets;
+            this.topConversations = Collections.unmodifiableList(topConversations);
+        }
+
+        public int getIfIndex() {
+            return ifIndex;
+        }
+
+        public long getInBytes() {
+            return inBytes;
+        }
+
+        public long getInPackets() {
+            return inPackets;
+        }
+
+        public long getOutBytes() {
+            return outBytes;
+        }
+
+        public long getOutPackets() {
+            return outPackets;
+        }
+
+        /**
+         * @return the conversations with the most bytes during the bucket, in descending order
+         */
+        public List<Conversation> getTopConversations() {
+            return topConversations;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Interface[ifIndex=%d, inBytes=%d, inPackets=%d, outBytes=%d, outPackets=%d, topConversations=%s]",
+                    ifIndex, inBytes, inPackets, outBytes, outPackets, topConversations);
+        }
+    }
+}
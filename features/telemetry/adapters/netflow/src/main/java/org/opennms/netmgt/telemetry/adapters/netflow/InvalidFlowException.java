@@ -1,8 +1,8 @@
 /*******************************************************************************
  * This file is part of OpenNMS(R).
  *
- * Copyright (C) 2006-2014 The OpenNMS Group, Inc.
- * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
  *
  * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
  *
@@ -26,21 +26,20 @@
  *     http://www.opennms.com/
  *******************************************************************************/
 
-package org.opennms.netmgt.notifd;
+package org.opennms.netmgt.telemetry.adapters.netflow;
 
-import java.util.List;
+/**
+ * Thrown when a packet is not a valid NetFlow v5, NetFlow v9 or IPFIX message.
+ */
+public class InvalidFlowException extends Exception {
 
-import junit.framework.TestCase;
+    private static final long serialVersionUID = 8624561920587316427L;
 
-public class DuplicateTreeMapTest extends TestCase {
-    public void testPutItem() {
-        DuplicateTreeMap<Long, String> m = new DuplicateTreeMap<Long, String>();
-        m.putItem((long) 1, "foo");
-        
-        assertNotNull("value of key 1 is null", m.get((long) 1));
-        assertTrue("class is not an instance of List", m.get((long) 1) instanceof List<?>);
-        List<String> list = m.get((long) 1);
-        assertEquals("list size", 1, list.size());
-        assertEquals("list item zero content", "foo", list.get(0));
+    public InvalidFlowException(String message) {
+        super(message);
+    }
+
+    public InvalidFlowException(String format, Object... args) {
+        super(String.format(format, args));
     }
 }
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import static org.opennms.netmgt.telemetry.adapters.netflow.BufferUtils.uint16;
+import static org.opennms.netmgt.telemetry.adapters.netflow.BufferUtils.uint32;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Decodes IPFIX messages (RFC 7011): a 16 byte header followed by template,
+ * options template and data sets.
+ */
+final class IpfixDecoder {
+
+    static final int VERSION = 10;
+    static final int HEADER_LENGTH = 16;
+
+    private static final int TEMPLATE_SET = 2;
+    private static final int OPTIONS_TEMPLATE_SET = 3;
+    private static final int MIN_DATA_SET = 256;
+
+    private IpfixDecoder() {
+    }
+
+    static int decode(ByteBuffer buffer, TemplateCache templates, Consumer<Flow> consumer, LongAdder missingTemplates) throws InvalidFlowException {
+        if (buffer.limit() < HEADER_LENGTH) {
+            throw new InvalidFlowException("IPFIX message of %d bytes is shorter than its header", buffer.limit());
+        }
+        final int limit = uint16(buffer, 2);
+        if (limit < HEADER_LENGTH || limit > buffer.limit()) {
+            throw new InvalidFlowException("IPFIX message length %d does not match the %d bytes received", limit, buffer.limit());
+        }
+        final long exportTime = uint32(buffer, 4) * 1000L;
+        final long domainId = uint32(buffer, 12);
+
+        int count = 0;
+        int offset = HEADER_LENGTH;
+        while (offset + 4 <= limit) {
+            final int id = uint16(buffer, offset);
+            final int length = uint16(buffer, offset + 2);
+            if (length < 4 || offset + length > limit) {
+                throw new InvalidFlowException("IPFIX set %d has an invalid length of %d bytes", id, length);
+            }
+            final int end = offset + length;
+            if (id == TEMPLATE_SET) {
+                decodeTemplates(buffer, offset + 4, end, domainId, templates, false);
+            } else if (id == OPTIONS_TEMPLATE_SET) {
+                decodeTemplates(buffer, offset + 4, end, domainId, templates, true);
+            } else if (id >= MIN_DATA_SET) {
+                final Template template = templates.get(domainId, id);
+                if (template == null) {
+                    missingTemplates.increment();
+                } else if (!template.isOptions()) {
+                    int index = offset + 4;
+                    // The set may end with padding shorter than a record
+                    while (index + template.getMinRecordLength() <= end) {
+                        final Flow flow = new Flow();
+                        // The system uptime fields are relative to systemInitTimeMilliseconds,
+                        // which is only exported in options records, so they are not used
+                        index = template.decodeRecord(buffer, index, end, flow, -1, exportTime);
+                        if (index < 0) {
+                            break;
+                        }
+                        consumer.accept(flow);
+                        count++;
+                    }
+                }
+            }
+            offset = end;
+        }
+        return count;
+    }
+
+    private static void decodeTemplates(ByteBuffer buffer, int offset, int end, long domainId, TemplateCache templates, boolean options) throws InvalidFlowException {
+        while (offset + 4 <= end) {
+            final int templateId = uint16(buffer, offset);
+            final int fieldCount = uint16(buffer, offset + 2);
+            offset += 4;
+
+            if (fieldCount == 0) {
+                // Template withdrawal, the set id withdraws all of the templates of the set type
+                if (templateId == TEMPLATE_SET || templateId == OPTIONS_TEMPLATE_SET) {
+                    templates.removeAll(domainId, options);
+                } else {
+                    templates.remove(domainId, templateId);
+                }
+                continue;
+            }
+            if (options) {
+                // Skip the scope field count, the scope fields are never decoded
+                offset += 2;
+            }
+
+            final int[] types = new int[fieldCount];
+            final int[] lengths = new int[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                if (offset + 4 > end) {
+                    throw new InvalidFlowException("IPFIX template %d with %d fields overflows its set", templateId, fieldCount);
+                }
+                final int type = uint16(buffer, offset);
+                lengths[i] = uint16(buffer, offset + 2);
+                offset += 4;
+                if ((type & 0x8000) != 0) {
+                    // Followed by the private enterprise number
+                    offset += 4;
+                    types[i] = Template.ENTERPRISE;
+                } else {
+                    types[i] = type;
+                }
+            }
+            if (offset > end) {
+                throw new InvalidFlowException("IPFIX template %d with %d fields overflows its set", templateId, fieldCount);
+            }
+
+            final Template template = new Template(types, lengths, options);
+            if (templateId < MIN_DATA_SET || template.getMinRecordLength() == 0) {
+                throw new InvalidFlowException("IPFIX template %d is invalid", templateId);
+            }
+            templates.put(domainId, templateId, template);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import static org.opennms.netmgt.telemetry.adapters.netflow.BufferUtils.address;
+import static org.opennms.netmgt.telemetry.adapters.netflow.BufferUtils.uint16;
+import static org.opennms.netmgt.telemetry.adapters.netflow.BufferUtils.uint32;
+import static org.opennms.netmgt.telemetry.adapters.netflow.BufferUtils.uint8;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Decodes NetFlow v5 packets, which have a fixed 24 byte header followed by
+ * up to 30 records of 48 bytes.
+ */
+final class Netflow5Decoder {
+
+    static final int VERSION = 5;
+    static final int HEADER_LENGTH = 24;
+    static final int RECORD_LENGTH = 48;
+
+    private Netflow5Decoder() {
+    }
+
+    static int decode(ByteBuffer buffer, Consumer<Flow> consumer) throws InvalidFlowException {
+        if (buffer.limit() < HEADER_LENGTH) {
+            throw new InvalidFlowException("NetFlow v5 packet of %d bytes is shorter than its header", buffer.limit());
+        }
+        final int count = uint16(buffer, 2);
+        if (buffer.limit() < HEADER_LENGTH + count * RECORD_LENGTH) {
+            throw new InvalidFlowException("NetFlow v5 packet of %d bytes is too short for %d records", buffer.limit(), count);
+        }
+
+        final long sysUptime = uint32(buffer, 4);
+        final long unixMillis = uint32(buffer, 8) * 1000L + uint32(buffer, 12) / 1000000L;
+        final long bootTime = unixMillis - sysUptime;
+        // The two high bits are the sampling mode, the others the sampling interval
+        final int samplingInterval = uint16(buffer, 22) & 0x3fff;
+        final int multiplier = samplingInterval > 1 ? samplingInterval : 1;
+
+        for (int i = 0; i < count; i++) {
+            final int offset = HEADER_LENGTH + i * RECORD_LENGTH;
+            final Flow flow = new Flow();
+            flow.setSrcAddr(address(buffer, offset, 4));
+            flow.setDstAddr(address(buffer, offset + 4, 4));
+            flow.setInputIfIndex(uint16(buffer, offset + 12));
+            flow.setOutputIfIndex(uint16(buffer, offset + 14));
+            flow.setPackets(uint32(buffer, offset + 16) * multiplier);
+            flow.setBytes(uint32(buffer, offset + 20) * multiplier);
+            flow.setFirstSwitched(bootTime + uint32(buffer, offset + 24));
+            flow.setLastSwitched(bootTime + uint32(buffer, offset + 28));
+            flow.setSrcPort(uint16(buffer, offset + 32));
+            flow.setDstPort(uint16(buffer, offset + 34));
+            flow.setTcpFlags(uint8(buffer, offset + 37));
+            flow.setProtocol(uint8(buffer, offset + 38));
+            flow.setTos(uint8(buffer, offset + 39));
+            consumer.accept(flow);
+        }
+        return count;
+    }
+}
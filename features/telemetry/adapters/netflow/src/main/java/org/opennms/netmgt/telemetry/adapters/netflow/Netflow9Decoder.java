@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import static org.opennms.netmgt.telemetry.adapters.netflow.BufferUtils.uint16;
+import static org.opennms.netmgt.telemetry.adapters.netflow.BufferUtils.uint32;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Decodes NetFlow v9 packets (RFC 3954): a 20 byte header followed by
+ * template, options template and data flow sets.
+ */
+final class Netflow9Decoder {
+
+    static final int VERSION = 9;
+    static final int HEADER_LENGTH = 20;
+
+    private static final int TEMPLATE_FLOWSET = 0;
+    private static final int OPTIONS_TEMPLATE_FLOWSET = 1;
+    private static final int MIN_DATA_FLOWSET = 256;
+
+    private Netflow9Decoder() {
+    }
+
+    static int decode(ByteBuffer buffer, TemplateCache templates, Consumer<Flow> consumer, LongAdder missingTemplates) throws InvalidFlowException {
+        final int limit = buffer.limit();
+        if (limit < HEADER_LENGTH) {
+            throw new InvalidFlowException("NetFlow v9 packet of %d bytes is shorter than its header", limit);
+        }
+        final long sysUptime = uint32(buffer, 4);
+        final long exportTime = uint32(buffer, 8) * 1000L;
+        final long bootTime = exportTime - sysUptime;
+        final long sourceId = uint32(buffer, 16);
+
+        int count = 0;
+        int offset = HEADER_LENGTH;
+        while (offset + 4 <= limit) {
+            final int id = uint16(buffer, offset);
+            final int length = uint16(buffer, offset + 2);
+            if (length < 4 || offset + length > limit) {
+                throw new InvalidFlowException("NetFlow v9 flow set %d has an invalid length of %d bytes", id, length);
+            }
+            final int end = offset + length;
+            if (id == TEMPLATE_FLOWSET) {
+                decodeTemplates(buffer, offset + 4, end, sourceId, templates);
+            } else if (id == OPTIONS_TEMPLATE_FLOWSET) {
+                decodeOptionsTemplates(buffer, offset + 4, end, sourceId, templates);
+            } else if (id >= MIN_DATA_FLOWSET) {
+                final Template template = templates.get(sourceId, id);
+                if (template == null) {
+                    missingTemplates.increment();
+                } else if (!template.isOptions()) {
+                    int index = offset + 4;
+                    // The flow set may end with padding shorter than a record
+                    while (index + template.getMinRecordLength() <= end) {
+                        final Flow flow = new Flow();
+                        index = template.decodeRecord(buffer, index, end, flow, bootTime, exportTime);
+                        if (index < 0) {
+                            break;
+                        }
+                        consumer.accept(flow);
+                        count++;
+                    }
+                }
+            }
+            offset = end;
+        }
+        return count;
+    }
+
+    private static void decodeTemplates(ByteBuffer buffer, int offset, int end, long sourceId, TemplateCache templates) throws InvalidFlowException {
+        while (offset + 4 <= end) {
+            final int templateId = uint16(buffer, offset);
+            final int fieldCount = uint16(buffer, offset + 2);
+            offset += 4;
+            if (offset + fieldCount * 4 > end) {
+                throw new InvalidFlowException("NetFlow v9 template %d with %d fields overflows its flow set", templateId, fieldCount);
+            }
+            final int[] types = new int[fieldCount];
+            final int[] lengths = new int[fieldCount];
+            for (int i = 0; i < fieldCount; i++, offset += 4) {
+                types[i] = uint16(buffer, offset);
+                lengths[i] = uint16(buffer, offset + 2);
+            }
+            put(templates, sourceId, templateId, new Template(types, lengths, false));
+        }
+    }
+
+    private static void decodeOptionsTemplates(ByteBuffer buffer, int offset, int end, long sourceId, TemplateCache templates) throws InvalidFlowException {
+        while (offset + 6 <= end) {
+            final int templateId = uint16(buffer, offset);
+            final int scopeLength = uint16(buffer, offset + 2);
+            final int optionLength = uint16(buffer, offset + 4);
+            offset += 6;
+            final int fieldsLength = scopeLength + optionLength;
+            if (fieldsLength % 4 != 0 || offset + fieldsLength > end) {
+                throw new InvalidFlowException("NetFlow v9 options template %d has invalid lengths %d and %d", templateId, scopeLength, optionLength);
+            }
+            final int fieldCount = fieldsLength / 4;
+            final int[] types = new int[fieldCount];
+            final int[] lengths = new int[fieldCount];
+            for (int i = 0; i < fieldCount; i++, offset += 4) {
+                // Options records are skipped, only the lengths of their fields are needed
+                types[i] = Template.ENTERPRISE;
+                lengths[i] = uint16(buffer, offset + 2);
+            }
+            put(templates, sourceId, templateId, new Template(types, lengths, true));
+        }
+    }
+
+    private static void put(TemplateCache templates, long sourceId, int templateId, Template template) throws InvalidFlowException {
+        if (templateId < MIN_DATA_FLOWSET || template.getMinRecordLength() == 0) {
+            throw new InvalidFlowException("NetFlow v9 template %d is invalid", templateId);
+        }
+        templates.put(sourceId, templateId, template);
+    }
+}
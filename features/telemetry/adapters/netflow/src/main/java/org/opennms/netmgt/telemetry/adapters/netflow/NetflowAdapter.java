@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.collection.api.AttributeType;
+import org.opennms.netmgt.collection.api.CollectionAgent;
+import org.opennms.netmgt.collection.api.CollectionAgentFactory;
+import org.opennms.netmgt.collection.support.builder.CollectionSetBuilder;
+import org.opennms.netmgt.collection.support.builder.DeferredGenericTypeResource;
+import org.opennms.netmgt.collection.support.builder.NodeLevelResource;
+import org.opennms.netmgt.dao.api.InterfaceToNodeCache;
+import org.opennms.netmgt.telemetry.adapters.api.TelemetryMessage;
+import org.opennms.netmgt.telemetry.adapters.api.TelemetryMessageLog;
+import org.opennms.netmgt.telemetry.adapters.collection.AbstractPersistingAdapter;
+import org.opennms.netmgt.telemetry.adapters.collection.CollectionSetWithAgent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Decodes NetFlow v5, NetFlow v9 and IPFIX packets and persists the traffic
+ * of the interfaces of the exporters.
+ *
+ * The exporter is resolved to a node with the {@link InterfaceToNodeCache},
+ * the flows of exporters that are not managed are dropped without being
+ * decoded. The flows are aggregated by the {@link FlowAggregator} and a
+ * collection set is only persisted when the bucket of a node is closed.
+ *
+ * The buckets of the nodes that stopped exporting are closed by a sweep
+ * running every interval, so the last bucket of an exporter is persisted
+ * too. The open buckets are closed and persisted when the adapter is
+ * destroyed, so that a stop or a reload does not lose them.
+ */
+public class NetflowAdapter extends AbstractPersistingAdapter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NetflowAdapter.class);
+
+    protected static final String RESOURCE_TYPE = "netflowIf";
+
+    protected static final String GROUP = "netflow";
+
+    @Autowired
+    private CollectionAgentFactory collectionAgentFactory;
+
+    @Autowired
+    private InterfaceToNodeCache interfaceToNodeCache;
+
+    private final FlowDecoder decoder = new FlowDecoder();
+
+    private volatile FlowAggregator aggregator;
+
+    private ScheduledExecutorService sweeper;
+
+    /**
+     * The last address of the exporter of each node, used to persist the
+     * buckets closed by the sweep.
+     */
+    private final ConcurrentMap<Integer, InetAddress> exporters = new ConcurrentHashMap<>();
+
+    private int interval = 60;
+
+    private int topN = 10;
+
+    private int maxConversations = 10000;
+
+    @Override
+    public Optional<CollectionSetWithAgent> handleMessage(TelemetryMessage message, TelemetryMessageLog messageLog) throws Exception {
+        final InetAddress exporter = InetAddressUtils.addr(messageLog.getSourceAddress());
+        final Optional<Integer> nodeId = interfaceToNodeCache.getFirstNodeId(messageLog.getLocation(), exporter);
+        if (!nodeId.isPresent()) {
+            LOG.debug("No node found for exporter {} at location {}. Dropping flows.", messageLog.getSourceAddress(), messageLog.getLocation());
+            return Optional.empty();
+        }
+        if (!exporter.equals(exporters.get(nodeId.get()))) {
+            exporters.put(nodeId.get(), exporter);
+        }
+
+        final List<Flow> flows = new ArrayList<>();
+        decoder.decode(messageLog.getLocation() + ":" + messageLog.getSourceAddress(), ByteBuffer.wrap(message.getByteArray()), flows::add);
+        LOG.trace("Decoded {} flows from exporter {}.", flows.size(), messageLog.getSourceAddress());
+
+        final Optional<FlowSummary> summary = getAggregator().aggregate(nodeId.get(), message.getTimestamp(), flows);
+        if (!summary.isPresent()) {
+            return Optional.empty();
+        }
+        LOG.debug("Persisting flow summary: {}", summary.get());
+        return Optional.of(toCollectionSetWithAgent(exporter, summary.get()));
+    }
+
+    /**
+     * Persists the buckets of the nodes that did not export anything since
+     * the end of their bucket.
+     *
+     * @param now the current time, or {@link Long#MAX_VALUE} to persist all of the open buckets
+     */
+    protected void sweep(long now) {
+        for (FlowSummary summary : getAggregator().sweep(now)) {
+            final InetAddress exporter = exporters.get(summary.getNodeId());
+            LOG.debug("Persisting swept flow summary: {}", summary);
+            try {
+                persist(toCollectionSetWithAgent(exporter, summary), summary);
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to persist flow summary: {}. Dropping.", summary, e);
+            }
+        }
+    }
+
+    private CollectionSetWithAgent toCollectionSetWithAgent(InetAddress exporter, FlowSummary summary) {
+        // NOTE: This will throw a IllegalArgumentException if the nodeId/inetAddress pair does not exist in the database
+        final CollectionAgent agent = collectionAgentFactory.createCollectionAgent(Integer.toString(summary.getNodeId()), exporter);
+        return new CollectionSetWithAgent(agent, toCollectionSetBuilder(agent, summary).build());
+    }
+
+    protected static CollectionSetBuilder toCollectionSetBuilder(CollectionAgent agent, FlowSummary summary) {
+        final NodeLevelResource nodeResource = new NodeLevelResource(summary.getNodeId());
+        final CollectionSetBuilder builder = new CollectionSetBuilder(agent);
+        for (FlowSummary.Interface iface : summary.getInterfaces()) {
+            final DeferredGenericTypeResource resource = new DeferredGenericTypeResource(nodeResource, RESOURCE_TYPE, Integer.toString(iface.getIfIndex()));
+            builder.withNumericAttribute(resource, GROUP, "flowInBytes", iface.getInBytes(), AttributeType.COUNTER);
+            builder.withNumericAttribute(resource, GROUP, "flowInPkts", iface.getInPackets(), AttributeType.COUNTER);
+            builder.withNumericAttribute(resource, GROUP, "flowOutBytes", iface.getOutBytes(), AttributeType.COUNTER);
+            builder.withNumericAttribute(resource, GROUP, "flowOutPkts", iface.getOutPackets(), AttributeType.COUNTER);
+            int rank = 1;
+            for (Conversation conversation : iface.getTopConversations()) {
+                builder.withStringAttribute(resource, GROUP, "topConversation" + rank++, conversation.toString());
+            }
+        }
+        return builder;
+    }
+
+    private FlowAggregator getAggregator() {
+        FlowAggregator result = aggregator;
+        if (result == null) {
+            synchronized (this) {
+                // Built on first use, once the parameters are set
+                if (aggregator == null) {
+                    aggregator = new FlowAggregator(TimeUnit.SECONDS.toMillis(interval), topN, maxConversations);
+                    sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                        final Thread thread = new Thread(r, "netflow-sweeper");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    sweeper.scheduleWithFixedDelay(() -> sweep(System.currentTimeMillis()), interval, interval, TimeUnit.SECONDS);
+                }
+                result = aggregator;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (sweeper == null) {
+            return;
+        }
+        // Let a running sweep finish, so that its buckets are not persisted twice
+        sweeper.shutdown();
+        try {
+            if (!sweeper.awaitTermination(interval, TimeUnit.SECONDS)) {
+                LOG.warn("The sweep of the flow buckets did not finish in {} seconds.", interval);
+                sweeper.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sweep(Long.MAX_VALUE);
+    }
+
+    public FlowDecoder getDecoder() {
+        return decoder;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public void setInterval(int interval) {
+        this.interval = interval;
+    }
+
+    public int getTopN() {
+        return topN;
+    }
+
+    public void setTopN(int topN) {
+        this.topN = topN;
+    }
+
+    public int getMaxConversations() {
+        return maxConversations;
+    }
+
+    public void setMaxConversations(int maxConversations) {
+        this.maxConversations = maxConversations;
+    }
+
+    public void setCollectionAgentFactory(CollectionAgentFactory collectionAgentFactory) {
+        this.collectionAgentFactory = collectionAgentFactory;
+    }
+
+    public void setInterfaceToNodeCache(InterfaceToNodeCache interfaceToNodeCache) {
+        this.interfaceToNodeCache = interfaceToNodeCache;
+    }
+}
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import static org.opennms.netmgt.telemetry.adapters.netflow.BufferUtils.address;
+import static org.opennms.netmgt.telemetry.adapters.netflow.BufferUtils.uint;
+import static org.opennms.netmgt.telemetry.adapters.netflow.BufferUtils.uint16;
+import static org.opennms.netmgt.telemetry.adapters.netflow.BufferUtils.uint8;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A NetFlow v9 or IPFIX template: the ordered list of the types and lengths
+ * of the fields of the data records.
+ *
+ * The field types decoded into a {@link Flow} have the same identifiers in
+ * NetFlow v9 (RFC 3954) and in the IPFIX information model (RFC 7012).
+ * Enterprise specific fields and all other types are skipped.
+ */
+final class Template {
+
+    static final int VARIABLE_LENGTH = 0xffff;
+
+    /** Type used for the enterprise specific fields, which are never decoded. */
+    static final int ENTERPRISE = -1;
+
+    static final int IN_BYTES = 1;
+    static final int IN_PKTS = 2;
+    static final int PROTOCOL = 4;
+    static final int SRC_TOS = 5;
+    static final int TCP_FLAGS = 6;
+    static final int L4_SRC_PORT = 7;
+    static final int IPV4_SRC_ADDR = 8;
+    static final int INPUT_SNMP = 10;
+    static final int L4_DST_PORT = 11;
+    static final int IPV4_DST_ADDR = 12;
+    static final int OUTPUT_SNMP = 14;
+    static final int LAST_SWITCHED = 21;
+    static final int FIRST_SWITCHED = 22;
+    static final int OUT_BYTES = 23;
+    static final int OUT_PKTS = 24;
+    static final int IPV6_SRC_ADDR = 27;
+    static final int IPV6_DST_ADDR = 28;
+    static final int FLOW_START_SECONDS = 150;
+    static final int FLOW_END_SECONDS = 151;
+    static final int FLOW_START_MILLISECONDS = 152;
+    static final int FLOW_END_MILLISECONDS = 153;
+
+    private final int[] types;
+    private final int[] lengths;
+    private final boolean options;
+    private final int minRecordLength;
+
+    Template(int[] types, int[] lengths, boolean options) {
+        this.types = types;
+        this.lengths = lengths;
+        this.options = options;
+        int min = 0;
+        for (int length : lengths) {
+            // A variable length field takes at least its length byte
+            min += length == VARIABLE_LENGTH ? 1 : length;
+        }
+        this.minRecordLength = min;
+    }
+
+    /**
+     * @return true if the data records of this template are options (e.g.
+     * sampling or interface tables) instead of flows
+     */
+    boolean isOptions() {
+        return options;
+    }
+
+    int getMinRecordLength() {
+        return minRecordLength;
+    }
+
+    int getFieldCount() {
+        return types.length;
+    }
+
+    /**
+     * Decodes the data record at the given offset.
+     *
+     * @param bootTime the time at which the exporter booted, used to convert
+     *        the system uptime fields, or a negative value if unknown
+     * @param exportTime the time at which the packet was exported, used when
+     *        the record has no usable timestamp
+     * @return the offset of the next record, or -1 if the record is truncated
+     */
+    int decodeRecord(ByteBuffer buffer, int offset, int limit, Flow flow, long bootTime, long exportTime) {
+        long outBytes = 0;
+        long outPackets = 0;
+        long first = -1;
+        long last = -1;
+        int index = offset;
+        for (int i = 0; i < types.length; i++) {
+            int length = lengths[i];
+            if (length == VARIABLE_LENGTH) {
+                if (index + 1 > limit) {
+                    return -1;
+                }
+                length = uint8(buffer, index++);
+                if (length == 0xff) {
+                    if (index + 2 > limit) {
+                        return -1;
+                    }
+                    length = uint16(buffer, index);
+                    index += 2;
+                }
+            }
+            if (index + length > limit) {
+                return -1;
+            }
+            switch (types[i]) {
+            case IN_BYTES:
+                flow.setBytes(uint(buffer, index, length));
+                break;
+            case IN_PKTS:
+                flow.setPackets(uint(buffer, index, length));
+                break;
+            case OUT_BYTES:
+                outBytes = uint(buffer, index, length);
+                break;
+            case OUT_PKTS:
+                outPackets = uint(buffer, index, length);
+                break;
+            case PROTOCOL:
+                flow.setProtocol((int) uint(buffer, index, length));
+                break;
+            case SRC_TOS:
+                flow.setTos((int) uint(buffer, index, length));
+                break;
+            case TCP_FLAGS:
+                // 1 byte in NetFlow v9, 2 bytes in IPFIX
+                flow.setTcpFlags((int) uint(buffer, index, length) & 0xff);
+                break;
+            case L4_SRC_PORT:
+                flow.setSrcPort((int) uint(buffer, index, length));
+                break;
+            case L4_DST_PORT:
+                flow.setDstPort((int) uint(buffer, index, length));
+                break;
+            case IPV4_SRC_ADDR:
+            case IPV6_SRC_ADDR:
+                flow.setSrcAddr(address(buffer, index, length));
+                break;
+            case IPV4_DST_ADDR:
+            case IPV6_DST_ADDR:
+                flow.setDstAddr(address(buffer, index, length));
+                break;
+            case INPUT_SNMP:
+                flow.setInputIfIndex((int) uint(buffer, index, length));
+                break;
+            case OUTPUT_SNMP:
+                flow.setOutputIfIndex((int) uint(buffer, index, length));
+                break;
+            case FIRST_SWITCHED:
+                if (bootTime >= 0) {
+                    first = bootTime + uint(buffer, index, length);
+                }
+                break;
+            case LAST_SWITCHED:
+                if (bootTime >= 0) {
+                    last = bootTime + uint(buffer, index, length);
+                }
+                break;
+            case FLOW_START_SECONDS:
+                first = uint(buffer, index, length) * 1000L;
+                break;
+            case FLOW_END_SECONDS:
+                last = uint(buffer, index, length) * 1000L;
+                break;
+            case FLOW_START_MILLISECONDS:
+                first = uint(buffer, index, length);
+                break;
+            case FLOW_END_MILLISECONDS:
+                last = uint(buffer, index, length);
+                break;
+            default:
+                break;
+            }
+            index += length;
+        }
+
+        // Egress flows (e.g. NetFlow v9 with DIRECTION=1) only carry the out counters
+        if (flow.getBytes() == 0 && flow.getPackets() == 0) {
+            flow.setBytes(outBytes);
+            flow.setPackets(outPackets);
+        }
+        if (last < 0) {
+            last = exportTime;
+        }
+        flow.setLastSwitched(last);
+        flow.setFirstSwitched(first < 0 ? last : first);
+        return index;
+    }
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The templates announced by one exporter, by observation domain (or source
+ * id for NetFlow v9) and template id.
+ *
+ * Template and data sets may be handled concurrently by several threads, so
+ * the data sets received before their template are dropped until the
+ * exporter refreshes it.
+ */
+final class TemplateCache {
+
+    private final ConcurrentMap<Long, Template> templates = new ConcurrentHashMap<>();
+
+    private static Long key(long domainId, int templateId) {
+        return (domainId << 16) | templateId;
+    }
+
+    Template get(long domainId, int templateId) {
+        return templates.get(key(domainId, templateId));
+    }
+
+    void put(long domainId, int templateId, Template template) {
+        templates.put(key(domainId, templateId), template);
+    }
+
+    void remove(long domainId, int templateId) {
+        templates.remove(key(domainId, templateId));
+    }
+
+    /**
+     * Removes all the templates or all the options templates of the domain.
+     */
+    void removeAll(long domainId, boolean options) {
+        templates.entrySet().removeIf(e -> (e.getKey() >>> 16) == domainId
+                && e.getValue().isOptions() == options);
+    }
+
+    int size() {
+        return templates.size();
+    }
+}
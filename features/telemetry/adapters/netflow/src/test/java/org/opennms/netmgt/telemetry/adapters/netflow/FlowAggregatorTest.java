@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+
+public class FlowAggregatorTest {
+
+    private static final long BUCKET = 60000L;
+
+    private static Flow flow(int src, int srcPort, int dst, int dstPort, int input, int output, long bytes) {
+        final Flow flow = new Flow();
+        flow.setSrcAddr(new byte[] { 10, 0, 0, (byte) src });
+        flow.setSrcPort(srcPort);
+        flow.setDstAddr(new byte[] { 10, 0, 0, (byte) dst });
+        flow.setDstPort(dstPort);
+        flow.setProtocol(6);
+        flow.setInputIfIndex(input);
+        flow.setOutputIfIndex(output);
+        flow.setBytes(bytes);
+        flow.setPackets(1);
+        return flow;
+    }
+
+    @Test
+    public void testCountersAndConversations() {
+        final FlowAggregator aggregator = new FlowAggregator(BUCKET, 2, 100);
+
+        // Both directions of the same conversation, and dropped traffic with output 0
+        assertFalse(aggregator.aggregate(1, 10 * BUCKET, Arrays.asList(
+                flow(1, 5000, 2, 80, 1, 2, 100),
+                flow(2, 80, 1, 5000, 2, 1, 1000),
+                flow(3, 5000, 2, 80, 1, 0, 10))).isPresent());
+        assertFalse(aggregator.aggregate(1, 10 * BUCKET + 59999, Arrays.asList(
+                flow(4, 5000, 2, 80, 1, 2, 50))).isPresent());
+
+        final FlowSummary summary = aggregator.aggregate(1, 11 * BUCKET, Collections.emptyList()).get();
+        assertEquals(1, summary.getNodeId());
+        assertEquals(10 * BUCKET, summary.getBucketStart());
+        assertEquals(11 * BUCKET, summary.getBucketEnd());
+        assertEquals(2, summary.getInterfaces().size());
+
+        final FlowSummary.Interface if1 = summary.getInterfaces().get(0);
+        assertEquals(1, if1.getIfIndex());
+        assertEquals(160, if1.getInBytes());
+        assertEquals(3, if1.getInPackets());
+        assertEquals(1000, if1.getOutBytes());
+        assertEquals(1, if1.getOutPackets());
+        assertEquals(2, if1.getTopConversations().size());
+        final Conversation top = if1.getTopConversations().get(0);
+        assertEquals(1100, top.getBytes());
+        assertEquals(2, top.getPackets());
+        assertEquals("10.0.0.1", top.getLowAddress().getHostAddress());
+        assertEquals(5000, top.getLowPort());
+        assertEquals("10.0.0.2", top.getHighAddress().getHostAddress());
+        assertEquals(80, top.getHighPort());
+        assertEquals(50, if1.getTopConversations().get(1).getBytes());
+
+        final FlowSummary.Interface if2 = summary.getInterfaces().get(1);
+        assertEquals(2, if2.getIfIndex());
+        assertEquals(1000, if2.getInBytes());
+        assertEquals(150, if2.getOutBytes());
+    }
+
+    @Test
+    public void testBuckets() {
+        final FlowAggregator aggregator = new FlowAggregator(BUCKET, 10, 100);
+        aggregator.aggregate(1, BUCKET, Arrays.asList(flow(1, 1, 2, 2, 1, 2, 100)));
+        aggregator.aggregate(2, BUCKET, Arrays.asList(flow(1, 1, 2, 2, 1, 2, 7)));
+
+        // A late message is added to the current bucket
+        assertFalse(aggregator.aggregate(1, BUCKET - 1, Arrays.asList(flow(1, 1, 2, 2, 1, 2, 100))).isPresent());
+
+        // The counters are totals, the conversations are reset on every bucket
+        FlowSummary summary = aggregator.aggregate(1, 3 * BUCKET, Arrays.asList(flow(1, 1, 2, 2, 1, 2, 300))).get();
+        assertEquals(200, summary.getInterfaces().get(0).getInBytes());
+        assertEquals(200, summary.getInterfaces().get(0).getTopConversations().get(0).getBytes());
+        summary = aggregator.aggregate(1, 4 * BUCKET, Collections.emptyList()).get();
+        assertEquals(3 * BUCKET, summary.getBucketStart());
+        assertEquals(500, summary.getInterfaces().get(0).getInBytes());
+        assertEquals(300, summary.getInterfaces().get(0).getTopConversations().get(0).getBytes());
+
+        // The buckets of the nodes are independent
+        summary = aggregator.aggregate(2, 4 * BUCKET, Collections.emptyList()).get();
+        assertEquals(BUCKET, summary.getBucketStart());
+        assertEquals(7, summary.getInterfaces().get(0).getInBytes());
+    }
+
+    @Test
+    public void testSweep() {
+        final FlowAggregator aggregator = new FlowAggregator(BUCKET, 10, 100);
+        aggregator.aggregate(1, BUCKET, Arrays.asList(flow(1, 1, 2, 2, 1, 2, 100)));
+        aggregator.aggregate(2, 2 * BUCKET, Arrays.asList(flow(1, 1, 2, 2, 1, 2, 7)));
+
+        // Only the buckets that ended are closed
+        assertTrue(aggregator.sweep(2 * BUCKET - 1).isEmpty());
+        List<FlowSummary> summaries = aggregator.sweep(2 * BUCKET);
+        assertEquals(1, summaries.size());
+        assertEquals(1, summaries.get(0).getNodeId());
+        assertEquals(BUCKET, summaries.get(0).getBucketStart());
+        assertEquals(100, summaries.get(0).getInterfaces().get(0).getInBytes());
+        assertTrue(aggregator.sweep(2 * BUCKET).isEmpty());
+
+        // A late message does not reopen the swept bucket
+        assertFalse(aggregator.aggregate(1, 2 * BUCKET - 1, Arrays.asList(flow(1, 1, 2, 2, 1, 2, 100))).isPresent());
+        summaries = aggregator.sweep(5 * BUCKET);
+        assertEquals(2, summaries.size());
+        summaries.sort((a, b) -> Integer.compare(a.getNodeId(), b.getNodeId()));
+        assertEquals(2 * BUCKET, summaries.get(0).getBucketStart());
+        assertEquals(200, summaries.get(0).getInterfaces().get(0).getInBytes());
+        assertEquals(100, summaries.get(0).getInterfaces().get(0).getTopConversations().get(0).getBytes());
+        assertEquals(2, summaries.get(1).getNodeId());
+        assertEquals(7, summaries.get(1).getInterfaces().get(0).getInBytes());
+
+        // The next message of a swept node starts a new bucket
+        assertFalse(aggregator.aggregate(1, 7 * BUCKET, Collections.emptyList()).isPresent());
+        assertEquals(7 * BUCKET, aggregator.aggregate(1, 8 * BUCKET, Collections.emptyList()).get().getBucketStart());
+
+        // Sweeping with the largest time closes all of the open buckets
+        summaries = aggregator.sweep(Long.MAX_VALUE);
+        assertEquals(1, summaries.size());
+        assertEquals(8 * BUCKET, summaries.get(0).getBucketStart());
+        assertTrue(aggregator.sweep(Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void testTopConversationsWithEviction() {
+        final FlowAggregator aggregator = new FlowAggregator(BUCKET, 5, 20);
+        final List<Flow> flows = new ArrayList<>();
+        // Many small conversations and a few large ones, spread over the bucket
+        for (int i = 0; i < 1000; i++) {
+            flows.add(flow(1, 10000 + i, 2, 80, 1, 2, 10));
+            if (i % 100 == 0) {
+                for (int j = 0; j < 5; j++) {
+                    flows.add(flow(3, 20000 + j, 2, 80, 1, 2, 1000));
+                }
+            }
+        }
+        aggregator.aggregate(1, 0, flows);
+        final FlowSummary summary = aggregator.aggregate(1, BUCKET, Collections.emptyList()).get();
+        final List<Conversation> top = summary.getInterfaces().get(0).getTopConversations();
+        assertEquals(5, top.size());
+        for (Conversation conversation : top) {
+            assertEquals(10000, conversation.getBytes());
+            assertTrue(conversation.getHighPort() >= 20000);
+        }
+        // The counters are not affected by the eviction
+        assertEquals(1000 * 10 + 50 * 1000, summary.getInterfaces().get(0).getInBytes());
+    }
+
+    @Test
+    public void testNoSummaryForFirstBucket() {
+        final FlowAggregator aggregator = new FlowAggregator(BUCKET, 10, 100);
+        final Optional<FlowSummary> summary = aggregator.aggregate(1, 5 * BUCKET, Collections.emptyList());
+        assertFalse(summary.isPresent());
+    }
+}
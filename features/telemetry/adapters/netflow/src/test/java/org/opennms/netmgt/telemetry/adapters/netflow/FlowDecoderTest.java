@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class FlowDecoderTest {
+
+    private static final long NOW = 1520000000000L;
+
+    private static Flow flow(int i) {
+        final Flow flow = new Flow();
+        flow.setSrcAddr(new byte[] { 10, 0, 0, (byte) i });
+        flow.setDstAddr(new byte[] { (byte) 192, (byte) 168, 1, (byte) (i * 3) });
+        flow.setSrcPort(1024 + i);
+        flow.setDstPort(443);
+        flow.setProtocol(6);
+        flow.setTcpFlags(0x1b);
+        flow.setInputIfIndex(1 + i % 4);
+        flow.setOutputIfIndex(10);
+        flow.setBytes(1500L * (i + 1));
+        flow.setPackets(i + 1);
+        flow.setFirstSwitched(NOW - 30000 + i);
+        flow.setLastSwitched(NOW - 1000 + i);
+        return flow;
+    }
+
+    private static List<Flow> flows(int count) {
+        final List<Flow> flows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            flows.add(flow(i));
+        }
+        return flows;
+    }
+
+    private static void assertFlowEquals(Flow expected, Flow actual, boolean withTimes) {
+        assertArrayEquals(expected.getSrcAddr(), actual.getSrcAddr());
+        assertArrayEquals(expected.getDstAddr(), actual.getDstAddr());
+        assertEquals(expected.getSrcPort(), actual.getSrcPort());
+        assertEquals(expected.getDstPort(), actual.getDstPort());
+        assertEquals(expected.getProtocol(), actual.getProtocol());
+        assertEquals(expected.getInputIfIndex(), actual.getInputIfIndex());
+        assertEquals(expected.getOutputIfIndex(), actual.getOutputIfIndex());
+        assertEquals(expected.getBytes(), actual.getBytes());
+        assertEquals(expected.getPackets(), actual.getPackets());
+        assertEquals(expected.getLastSwitched(), actual.getLastSwitched());
+        if (withTimes) {
+            assertEquals(expected.getTcpFlags(), actual.getTcpFlags());
+            assertEquals(expected.getFirstSwitched(), actual.getFirstSwitched());
+        }
+    }
+
+    private static List<Flow> decode(FlowDecoder decoder, ByteBuffer buffer) throws InvalidFlowException {
+        final List<Flow> flows = new ArrayList<>();
+        final int count = decoder.decode("Default:10.0.0.1", buffer, flows::add);
+        assertEquals(flows.size(), count);
+        return flows;
+    }
+
+    @Test
+    public void testNetflow5() throws Exception {
+        final List<Flow> expected = flows(30);
+        final List<Flow> actual = decode(new FlowDecoder(), FlowPackets.netflow5(NOW, 3600000, 0, expected));
+        assertEquals(30, actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertFlowEquals(expected.get(i), actual.get(i), true);
+        }
+    }
+
+    @Test
+    public void testNetflow5Sampling() throws Exception {
+        final List<Flow> actual = decode(new FlowDecoder(), FlowPackets.netflow5(NOW, 3600000, 0x4000 | 100, Arrays.asList(flow(1))));
+        assertEquals(300000L, actual.get(0).getBytes());
+        assertEquals(200L, actual.get(0).getPackets());
+    }
+
+    @Test
+    public void testNetflow9() throws Exception {
+        final FlowDecoder decoder = new FlowDecoder();
+
+        // Data received before its template is dropped
+        assertEquals(0, decode(decoder, FlowPackets.netflow9(NOW / 1000, 3600000, false, flows(5))).size());
+        assertEquals(1, decoder.getMissingTemplates());
+
+        final List<Flow> expected = flows(7);
+        List<Flow> actual = decode(decoder, FlowPackets.netflow9(NOW / 1000, 3600000, true, expected));
+        assertEquals(7, actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertFlowEquals(expected.get(i), actual.get(i), true);
+        }
+
+        // The template is reused by the following packets
+        actual = decode(decoder, FlowPackets.netflow9(NOW / 1000, 3600000, false, expected.subList(0, 3)));
+        assertEquals(3, actual.size());
+        assertFlowEquals(expected.get(2), actual.get(2), true);
+        assertEquals(1, decoder.getTemplateCount());
+
+        // But not by other exporters
+        final List<Flow> other = new ArrayList<>();
+        decoder.decode("Default:10.0.0.2", FlowPackets.netflow9(NOW / 1000, 3600000, false, expected), other::add);
+        assertEquals(0, other.size());
+        assertEquals(2, decoder.getMissingTemplates());
+    }
+
+    @Test
+    public void testIpfix() throws Exception {
+        final FlowDecoder decoder = new FlowDecoder();
+        final List<Flow> expected = flows(20);
+        final List<Flow> actual = decode(decoder, FlowPackets.ipfix(NOW / 1000, true, expected));
+        assertEquals(20, actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertFlowEquals(expected.get(i), actual.get(i), false);
+            // Without a start time the flow starts when it ends
+            assertEquals(expected.get(i).getLastSwitched(), actual.get(i).getFirstSwitched());
+        }
+        assertEquals(20, decode(decoder, FlowPackets.ipfix(NOW / 1000, false, expected)).size());
+    }
+
+    @Test
+    public void testIpfixTemplateWithdrawal() throws Exception {
+        final FlowDecoder decoder = new FlowDecoder();
+        decode(decoder, FlowPackets.ipfix(NOW / 1000, true, flows(1)));
+        assertEquals(1, decoder.getTemplateCount());
+
+        final ByteBuffer withdrawal = ByteBuffer.allocate(24);
+        withdrawal.putShort((short) 10);
+        withdrawal.putShort((short) 24);
+        withdrawal.putInt((int) (NOW / 1000));
+        withdrawal.putInt(2);
+        withdrawal.putInt((int) FlowPackets.SOURCE_ID);
+        withdrawal.putShort((short) 2);
+        withdrawal.putShort((short) 8);
+        withdrawal.putShort((short) FlowPackets.TEMPLATE_ID);
+        withdrawal.putShort((short) 0);
+        withdrawal.flip();
+        decode(decoder, withdrawal);
+        assertEquals(0, decoder.getTemplateCount());
+        assertEquals(0, decode(decoder, FlowPackets.ipfix(NOW / 1000, false, flows(1))).size());
+    }
+
+    @Test
+    public void testBufferOffsetAndPosition() throws Exception {
+        // Decode a packet that does not start at the beginning of its array
+        final ByteBuffer packet = FlowPackets.netflow5(NOW, 3600000, 0, flows(2));
+        final byte[] array = new byte[packet.limit() + 10];
+        packet.get(array, 10, packet.limit());
+        final ByteBuffer buffer = ByteBuffer.wrap(array, 10, array.length - 10);
+        assertEquals(2, decode(new FlowDecoder(), buffer).size());
+        assertEquals(10, buffer.position());
+    }
+
+    @Test
+    public void testInvalidPackets() {
+        final FlowDecoder decoder = new FlowDecoder();
+        assertInvalid(decoder, ByteBuffer.wrap(new byte[] { 0 }));
+        assertInvalid(decoder, ByteBuffer.wrap(new byte[] { 0, 1, 0, 0 }));
+
+        // Truncated records and sets
+        final ByteBuffer v5 = FlowPackets.netflow5(NOW, 3600000, 0, flows(3));
+        v5.limit(v5.limit() - 1);
+        assertInvalid(decoder, v5);
+        final ByteBuffer v9 = FlowPackets.netflow9(NOW / 1000, 3600000, true, flows(3));
+        v9.limit(v9.limit() - 8);
+        assertInvalid(decoder, v9);
+        final ByteBuffer ipfix = FlowPackets.ipfix(NOW / 1000, true, flows(3));
+        ipfix.limit(ipfix.limit() - 1);
+        assertInvalid(decoder, ipfix);
+    }
+
+    private static void assertInvalid(FlowDecoder decoder, ByteBuffer buffer) {
+        try {
+            decoder.decode("Default:10.0.0.1", buffer, flow -> fail("Unexpected flow: " + flow));
+            fail("Expected an InvalidFlowException");
+        } catch (InvalidFlowException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Builds NetFlow v5, NetFlow v9 and IPFIX packets for the tests.
+ */
+class FlowPackets {
+
+    static final int TEMPLATE_ID = 256;
+
+    static final long SOURCE_ID = 7;
+
+    private FlowPackets() {
+    }
+
+    static ByteBuffer netflow5(long unixMillis, long sysUptime, int samplingInterval, List<Flow> flows) {
+        final ByteBuffer buffer = ByteBuffer.allocate(Netflow5Decoder.HEADER_LENGTH + flows.size() * Netflow5Decoder.RECORD_LENGTH);
+        buffer.putShort((short) 5);
+        buffer.putShort((short) flows.size());
+        buffer.putInt((int) sysUptime);
+        buffer.putInt((int) (unixMillis / 1000));
+        buffer.putInt((int) (unixMillis % 1000) * 1000000);
+        buffer.putInt(1); // flow sequence
+        buffer.put((byte) 0); // engine type
+        buffer.put((byte) 0); // engine id
+        buffer.putShort((short) samplingInterval);
+        final long bootTime = unixMillis - sysUptime;
+        for (Flow flow : flows) {
+            buffer.put(flow.getSrcAddr());
+            buffer.put(flow.getDstAddr());
+            buffer.putInt(0); // next hop
+            buffer.putShort((short) flow.getInputIfIndex());
+            buffer.putShort((short) flow.getOutputIfIndex());
+            buffer.putInt((int) flow.getPackets());
+            buffer.putInt((int) flow.getBytes());
+            buffer.putInt((int) (flow.getFirstSwitched() - bootTime));
+            buffer.putInt((int) (flow.getLastSwitched() - bootTime));
+            buffer.putShort((short) flow.getSrcPort());
+            buffer.putShort((short) flow.getDstPort());
+            buffer.put((byte) 0); // pad
+            buffer.put((byte) flow.getTcpFlags());
+            buffer.put((byte) flow.getProtocol());
+            buffer.put((byte) flow.getTos());
+            buffer.putInt(0); // src and dst as
+            buffer.putShort((short) 0); // src and dst mask
+            buffer.putShort((short) 0); // pad
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static final int[][] NETFLOW9_FIELDS = {
+            { Template.IPV4_SRC_ADDR, 4 },
+            { Template.IPV4_DST_ADDR, 4 },
+            { Template.L4_SRC_PORT, 2 },
+            { Template.L4_DST_PORT, 2 },
+            { Template.PROTOCOL, 1 },
+            { Template.TCP_FLAGS, 1 },
+            { Template.INPUT_SNMP, 2 },
+            { Template.OUTPUT_SNMP, 2 },
+            { Template.IN_BYTES, 4 },
+            { Template.IN_PKTS, 4 },
+            { Template.FIRST_SWITCHED, 4 },
+            { Template.LAST_SWITCHED, 4 },
+    };
+
+    private static final int NETFLOW9_RECORD_LENGTH = 34;
+
+    static ByteBuffer netflow9(long unixSecs, long sysUptime, boolean withTemplate, List<Flow> flows) {
+        final ByteBuffer buffer = ByteBuffer.allocate(Netflow9Decoder.HEADER_LENGTH + 8 + NETFLOW9_FIELDS.length * 4
+                + 4 + flows.size() * NETFLOW9_RECORD_LENGTH + 3);
+        buffer.putShort((short) 9);
+        buffer.putShort((short) (flows.size() + (withTemplate ? 1 : 0)));
+        buffer.putInt((int) sysUptime);
+        buffer.putInt((int) unixSecs);
+        buffer.putInt(1); // sequence
+        buffer.putInt((int) SOURCE_ID);
+
+        if (withTemplate) {
+            buffer.putShort((short) 0);
+            buffer.putShort((short) (8 + NETFLOW9_FIELDS.length * 4));
+            buffer.putShort((short) TEMPLATE_ID);
+            buffer.putShort((short) NETFLOW9_FIELDS.length);
+            for (int[] field : NETFLOW9_FIELDS) {
+                buffer.putShort((short) field[0]);
+                buffer.putShort((short) field[1]);
+            }
+        }
+
+        if (!flows.isEmpty()) {
+            final long bootTime = unixSecs * 1000 - sysUptime;
+            final int length = 4 + flows.size() * NETFLOW9_RECORD_LENGTH;
+            final int padding = (4 - length % 4) % 4;
+            buffer.putShort((short) TEMPLATE_ID);
+            buffer.putShort((short) (length + padding));
+            for (Flow flow : flows) {
+                buffer.put(flow.getSrcAddr());
+                buffer.put(flow.getDstAddr());
+                buffer.putShort((short) flow.getSrcPort());
+                buffer.putShort((short) flow.getDstPort());
+                buffer.put((byte) flow.getProtocol());
+                buffer.put((byte) flow.getTcpFlags());
+                buffer.putShort((short) flow.getInputIfIndex());
+                buffer.putShort((short) flow.getOutputIfIndex());
+                buffer.putInt((int) flow.getBytes());
+                buffer.putInt((int) flow.getPackets());
+                buffer.putInt((int) (flow.getFirstSwitched() - bootTime));
+                buffer.putInt((int) (flow.getLastSwitched() - bootTime));
+            }
+            for (int i = 0; i < padding; i++) {
+                buffer.put((byte) 0);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * The IPFIX template also has an enterprise specific field and a variable
+     * length interface name, which must be skipped.
+     */
+    static ByteBuffer ipfix(long exportSecs, boolean withTemplate, List<Flow> flows) {
+        final ByteBuffer buffer = ByteBuffer.allocate(0xffff);
+        buffer.putShort((short) 10);
+        buffer.putShort((short) 0); // length, set below
+        buffer.putInt((int) exportSecs);
+        buffer.putInt(1); // sequence
+        buffer.putInt((int) SOURCE_ID);
+
+        if (withTemplate) {
+            final int start = buffer.position();
+            buffer.putShort((short) 2);
+            buffer.putShort((short) 0); // length, set below
+            buffer.putShort((short) TEMPLATE_ID);
+            buffer.putShort((short) 12);
+            field(buffer, 8, 4); // sourceIPv4Address
+            field(buffer, 12, 4); // destinationIPv4Address
+            field(buffer, 7, 2); // sourceTransportPort
+            field(buffer, 11, 2); // destinationTransportPort
+            field(buffer, 4, 1); // protocolIdentifier
+            field(buffer, 0x8000 | 100, 4); // enterprise specific
+            buffer.putInt(9);
+            field(buffer, 10, 4); // ingressInterface
+            field(buffer, 14, 4); // egressInterface
+            field(buffer, 82, Template.VARIABLE_LENGTH); // interfaceName
+            field(buffer, 1, 8); // octetDeltaCount
+            field(buffer, 2, 8); // packetDeltaCount
+            field(buffer, 153, 8); // flowEndMilliseconds
+            buffer.putShort(start + 2, (short) (buffer.position() - start));
+        }
+
+        if (!flows.isEmpty()) {
+            final int start = buffer.position();
+            buffer.putShort((short) TEMPLATE_ID);
+            buffer.putShort((short) 0); // length, set below
+            for (Flow flow : flows) {
+                buffer.put(flow.getSrcAddr());
+                buffer.put(flow.getDstAddr());
+                buffer.putShort((short) flow.getSrcPort());
+                buffer.putShort((short) flow.getDstPort());
+                buffer.put((byte) flow.getProtocol());
+                buffer.putInt(0xcafe);
+                buffer.putInt(flow.getInputIfIndex());
+                buffer.putInt(flow.getOutputIfIndex());
+                final String ifName = "ge-0/0/" + flow.getInputIfIndex();
+                buffer.put((byte) ifName.length());
+                for (int i = 0; i < ifName.length(); i++) {
+                    buffer.put((byte) ifName.charAt(i));
+                }
+                buffer.putLong(flow.getBytes());
+                buffer.putLong(flow.getPackets());
+                buffer.putLong(flow.getLastSwitched());
+            }
+            buffer.putShort(start + 2, (short) (buffer.position() - start));
+        }
+        buffer.putShort(2, (short) buffer.position());
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void field(ByteBuffer buffer, int type, int length) {
+        buffer.putShort((short) type);
+        buffer.putShort((short) length);
+    }
+}
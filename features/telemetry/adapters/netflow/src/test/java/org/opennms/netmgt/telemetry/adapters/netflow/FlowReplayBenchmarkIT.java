@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replays a pcap capture through the decoders and the aggregator.
+ *
+ * A capture of NetFlow v5, NetFlow v9 and IPFIX datagrams is synthesized
+ * unless a capture is given with the
+ * {@code org.opennms.netmgt.telemetry.adapters.netflow.benchmark.pcap}
+ * property, e.g. {@code mvn verify -Dit.test=FlowReplayBenchmarkIT
+ * -Dorg.opennms.netmgt.telemetry.adapters.netflow.benchmark=true
+ * -Dorg.opennms.netmgt.telemetry.adapters.netflow.benchmark.pcap=flows.pcap}.
+ * Every source address of the capture is handled as a different node.
+ *
+ * The benchmark only runs when the
+ * org.opennms.netmgt.telemetry.adapters.netflow.benchmark system property is
+ * set to true.
+ */
+public class FlowReplayBenchmarkIT {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FlowReplayBenchmarkIT.class);
+
+    private static final String PROPERTY_PREFIX = "org.opennms.netmgt.telemetry.adapters.netflow.benchmark.";
+
+    private static final int PACKETS = Integer.getInteger(PROPERTY_PREFIX + "packets", 20000);
+
+    private static final int ROUNDS = Integer.getInteger(PROPERTY_PREFIX + "rounds", 5);
+
+    private static final int THREADS = Integer.getInteger(PROPERTY_PREFIX + "threads", Runtime.getRuntime().availableProcessors());
+
+    private static final long START = 1520000000000L;
+
+    @Test
+    public void testReplay() throws Exception {
+        assumeTrue(Boolean.getBoolean("org.opennms.netmgt.telemetry.adapters.netflow.benchmark"));
+        final String pcap = System.getProperty(PROPERTY_PREFIX + "pcap");
+        final List<PcapReplay.Datagram> datagrams;
+        if (pcap != null && !pcap.isEmpty()) {
+            datagrams = PcapReplay.read(new File(pcap));
+        } else {
+            final File file = File.createTempFile("flows", ".pcap");
+            try {
+                PcapReplay.write(file, synthesize(PACKETS));
+                datagrams = PcapReplay.read(file);
+            } finally {
+                file.delete();
+            }
+            assertEquals(PACKETS, datagrams.size());
+        }
+        assertTrue("No datagrams to replay", !datagrams.isEmpty());
+
+        final Map<InetAddress, Integer> nodeIds = new HashMap<>();
+        for (PcapReplay.Datagram datagram : datagrams) {
+            nodeIds.putIfAbsent(datagram.getSource().getAddress(), nodeIds.size() + 1);
+        }
+        final long span = datagrams.get(datagrams.size() - 1).getTimestamp() - datagrams.get(0).getTimestamp() + 1;
+
+        // The first round is sequential so that the templates are received before their data
+        final FlowDecoder decoder = new FlowDecoder();
+        final FlowAggregator aggregator = new FlowAggregator(1000, 10, 10000);
+        final long expectedFlows = replay(decoder, aggregator, nodeIds, datagrams, 0, 1, 0).flows.sum();
+        LOG.info("Decoded {} flows from {} datagrams of {} exporters, {} templates, {} data sets without template.",
+                expectedFlows, datagrams.size(), nodeIds.size(), decoder.getTemplateCount(), decoder.getMissingTemplates());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final long missingTemplates = decoder.getMissingTemplates();
+            final long start = System.nanoTime();
+            final List<Future<Counters>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                final int offset = thread;
+                futures.add(executor.submit(new Callable<Counters>() {
+                    @Override
+                    public Counters call() throws Exception {
+                        final Counters counters = new Counters();
+                        for (int round = 1; round <= ROUNDS; round++) {
+                            counters.add(replay(decoder, aggregator, nodeIds, datagrams, offset, THREADS, round * span));
+                        }
+                        return counters;
+                    }
+                }));
+            }
+            final Counters total = new Counters();
+            for (Future<Counters> future : futures) {
+                total.add(future.get());
+            }
+            final long elapsed = Math.max(1, (System.nanoTime() - start) / 1000000);
+
+            LOG.info("Replayed {} datagrams and {} flows in {} ms with {} threads: {} datagrams/s, {} flows/s, {} summaries.",
+                    total.datagrams.sum(), total.flows.sum(), elapsed, THREADS,
+                    total.datagrams.sum() * 1000 / elapsed, total.flows.sum() * 1000 / elapsed, total.summaries.sum());
+            assertEquals((long) datagrams.size() * ROUNDS, total.datagrams.sum());
+            assertEquals(missingTemplates, decoder.getMissingTemplates());
+            assertEquals(expectedFlows * ROUNDS, total.flows.sum());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Counters replay(FlowDecoder decoder, FlowAggregator aggregator, Map<InetAddress, Integer> nodeIds,
+            List<PcapReplay.Datagram> datagrams, int offset, int stride, long shift) {
+        final Counters counters = new Counters();
+        final List<Flow> flows = new ArrayList<>();
+        for (int i = offset; i < datagrams.size(); i += stride) {
+            final PcapReplay.Datagram datagram = datagrams.get(i);
+            final InetAddress exporter = datagram.getSource().getAddress();
+            flows.clear();
+            try {
+                decoder.decode(exporter.getHostAddress(), ByteBuffer.wrap(datagram.getPayload()), flows::add);
+            } catch (InvalidFlowException e) {
+                counters.invalid.increment();
+                continue;
+            }
+            if (aggregator.aggregate(nodeIds.get(exporter), datagram.getTimestamp() + shift, flows).isPresent()) {
+                counters.summaries.increment();
+            }
+            counters.datagrams.increment();
+            counters.flows.add(flows.size());
+        }
+        return counters;
+    }
+
+    /**
+     * Round-robins NetFlow v5, NetFlow v9 and IPFIX exporters, one datagram
+     * per millisecond. The templates are refreshed every 20 datagrams.
+     */
+    private static List<PcapReplay.Datagram> synthesize(int count) throws Exception {
+        final List<PcapReplay.Datagram> datagrams = new ArrayList<>(count);
+        final InetAddress[] exporters = {
+                InetAddress.getByName("10.0.0.1"), InetAddress.getByName("10.0.0.2"), InetAddress.getByName("10.0.0.3")
+        };
+        int seed = 0;
+        for (int i = 0; i < count; i++) {
+            final long timestamp = START + i;
+            final int exporter = i % exporters.length;
+            final boolean withTemplate = (i / exporters.length) % 20 == 0;
+            final List<Flow> flows = new ArrayList<>();
+            final int flowCount = exporter == 0 ? 30 : exporter == 1 ? 24 : 20;
+            for (int j = 0; j < flowCount; j++) {
+                flows.add(flow(seed++, timestamp));
+            }
+            final ByteBuffer payload;
+            switch (exporter) {
+            case 0:
+                payload = FlowPackets.netflow5(timestamp, 3600000, 0, flows);
+                break;
+            case 1:
+                payload = FlowPackets.netflow9(timestamp / 1000, 3600000, withTemplate, flows);
+                break;
+            default:
+                payload = FlowPackets.ipfix(timestamp / 1000, withTemplate, flows);
+                break;
+            }
+            final byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            datagrams.add(new PcapReplay.Datagram(timestamp, new InetSocketAddress(exporters[exporter], 50000), 2055, bytes));
+        }
+        return datagrams;
+    }
+
+    private static Flow flow(int seed, long timestamp) {
+        // A few heavy conversations and a long tail of small ones
+        final int host = seed % 7 == 0 ? seed % 5 : seed % 5000;
+        final Flow flow = new Flow();
+        flow.setSrcAddr(new byte[] { 10, 1, (byte) (host >> 8), (byte) host });
+        flow.setDstAddr(new byte[] { (byte) 172, 16, 0, (byte) (seed % 13) });
+        flow.setSrcPort(1024 + host);
+        flow.setDstPort(seed % 2 == 0 ? 443 : 80);
+        flow.setProtocol(6);
+        flow.setInputIfIndex(1 + seed % 8);
+        flow.setOutputIfIndex(9 + seed % 2);
+        flow.setBytes(seed % 7 == 0 ? 150000 : 1500);
+        flow.setPackets(seed % 7 == 0 ? 100 : 1);
+        flow.setFirstSwitched(timestamp - 10000);
+        flow.setLastSwitched(timestamp - 1000);
+        return flow;
+    }
+
+    private static class Counters {
+        private final LongAdder datagrams = new LongAdder();
+        private final LongAdder flows = new LongAdder();
+        private final LongAdder summaries = new LongAdder();
+        private final LongAdder invalid = new LongAdder();
+
+        private void add(Counters other) {
+            datagrams.add(other.datagrams.sum());
+            flows.add(other.flows.sum());
+            summaries.add(other.summaries.sum());
+            invalid.add(other.invalid.sum());
+        }
+    }
+}
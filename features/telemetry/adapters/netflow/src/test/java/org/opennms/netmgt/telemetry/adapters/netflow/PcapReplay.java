@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the UDP datagrams of a libpcap capture file, e.g. recorded with
+ * {@code tcpdump -w flows.pcap udp port 2055}, so that they can be replayed
+ * through the decoders. Also writes captures of synthesized datagrams.
+ *
+ * Only the classic pcap format is supported, with Ethernet, raw IP and
+ * Linux cooked link types. Fragmented datagrams are skipped.
+ */
+class PcapReplay {
+
+    private static final int MAGIC = 0xa1b2c3d4;
+    private static final int MAGIC_NANOS = 0xa1b23c4d;
+
+    private static final int LINKTYPE_ETHERNET = 1;
+    private static final int LINKTYPE_RAW = 101;
+    private static final int LINKTYPE_LINUX_SLL = 113;
+
+    private static final int ETHERTYPE_IPV4 = 0x0800;
+    private static final int ETHERTYPE_IPV6 = 0x86dd;
+    private static final int ETHERTYPE_VLAN = 0x8100;
+
+    private static final int PROTOCOL_UDP = 17;
+
+    static class Datagram {
+        private final long timestamp;
+        private final InetSocketAddress source;
+        private final int destinationPort;
+        private final byte[] payload;
+
+        Datagram(long timestamp, InetSocketAddress source, int destinationPort, byte[] payload) {
+            this.timestamp = timestamp;
+            this.source = source;
+            this.destinationPort = destinationPort;
+            this.payload = payload;
+        }
+
+        long getTimestamp() {
+            return timestamp;
+        }
+
+        InetSocketAddress getSource() {
+            return source;
+        }
+
+        int getDestinationPort() {
+            return destinationPort;
+        }
+
+        byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    private PcapReplay() {
+    }
+
+    static List<Datagram> read(File file) throws IOException {
+        final List<Datagram> datagrams = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            final byte[] header = new byte[24];
+            in.readFully(header);
+            final ByteBuffer fileHeader = ByteBuffer.wrap(header);
+            int magic = fileHeader.getInt(0);
+            if (magic != MAGIC && magic != MAGIC_NANOS) {
+                fileHeader.order(ByteOrder.LITTLE_ENDIAN);
+                magic = fileHeader.getInt(0);
+                if (magic != MAGIC && magic != MAGIC_NANOS) {
+                    throw new IOException("Not a pcap file: " + file);
+                }
+            }
+            final long fractionsPerMilli = magic == MAGIC_NANOS ? 1000000L : 1000L;
+            final int linkType = fileHeader.getInt(20);
+
+            final byte[] recordHeader = new byte[16];
+            final ByteBuffer record = ByteBuffer.wrap(recordHeader).order(fileHeader.order());
+            while (true) {
+                try {
+                    in.readFully(recordHeader);
+                } catch (EOFException e) {
+                    break;
+                }
+                final long timestamp = (record.getInt(0) & 0xffffffffL) * 1000L + (record.getInt(4) & 0xffffffffL) / fractionsPerMilli;
+                final byte[] frame = new byte[record.getInt(8)];
+                in.readFully(frame);
+                final Datagram datagram = decodeFrame(timestamp, linkType, ByteBuffer.wrap(frame));
+                if (datagram != null) {
+                    datagrams.add(datagram);
+                }
+            }
+        }
+        return datagrams;
+    }
+
+    private static Datagram decodeFrame(long timestamp, int linkType, ByteBuffer frame) throws IOException {
+        int offset;
+        int etherType;
+        switch (linkType) {
+        case LINKTYPE_ETHERNET:
+            offset = 14;
+            etherType = frame.getShort(12) & 0xffff;
+            while (etherType == ETHERTYPE_VLAN && frame.limit() >= offset + 4) {
+                etherType = frame.getShort(offset + 2) & 0xffff;
+                offset += 4;
+            }
+            break;
+        case LINKTYPE_LINUX_SLL:
+            offset = 16;
+            etherType = frame.getShort(14) & 0xffff;
+            break;
+        case LINKTYPE_RAW:
+            offset = 0;
+            etherType = (frame.get(0) >> 4) == 6 ? ETHERTYPE_IPV6 : ETHERTYPE_IPV4;
+            break;
+        default:
+            throw new IOException("Unsupported link type " + linkType);
+        }
+
+        final byte[] source;
+        final int udp;
+        if (etherType == ETHERTYPE_IPV4) {
+            final int headerLength = (frame.get(offset) & 0x0f) * 4;
+            final int fragment = frame.getShort(offset + 6) & 0x3fff;
+            if (frame.get(offset + 9) != PROTOCOL_UDP || fragment != 0) {
+                return null;
+            }
+            source = new byte[4];
+            frame.position(offset + 12);
+            frame.get(source);
+            udp = offset + headerLength;
+        } else if (etherType == ETHERTYPE_IPV6) {
+            // Extension headers are not supported
+            if (frame.get(offset + 6) != PROTOCOL_UDP) {
+                return null;
+            }
+            source = new byte[16];
+            frame.position(offset + 8);
+            frame.get(source);
+            udp = offset + 40;
+        } else {
+            return null;
+        }
+
+        final int sourcePort = frame.getShort(udp) & 0xffff;
+        final int destinationPort = frame.getShort(udp + 2) & 0xffff;
+        final int length = Math.min((frame.getShort(udp + 4) & 0xffff) - 8, frame.limit() - udp - 8);
+        final byte[] payload = new byte[length];
+        frame.position(udp + 8);
+        frame.get(payload);
+        return new Datagram(timestamp, new InetSocketAddress(InetAddress.getByAddress(source), sourcePort), destinationPort, payload);
+    }
+
+    /**
+     * Writes the datagrams as IPv4 over Ethernet. The checksums are not computed.
+     */
+    static void write(File file, List<Datagram> datagrams) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(2);
+            out.writeShort(4);
+            out.writeInt(0); // time zone
+            out.writeInt(0); // accuracy
+            out.writeInt(0xffff); // snap length
+            out.writeInt(LINKTYPE_ETHERNET);
+            for (Datagram datagram : datagrams) {
+                final byte[] payload = datagram.getPayload();
+                final int length = 14 + 20 + 8 + payload.length;
+                out.writeInt((int) (datagram.getTimestamp() / 1000));
+                out.writeInt((int) (datagram.getTimestamp() % 1000) * 1000);
+                out.writeInt(length);
+                out.writeInt(length);
+                // Ethernet
+                out.write(new byte[12]);
+                out.writeShort(ETHERTYPE_IPV4);
+                // IPv4
+                out.writeByte(0x45);
+                out.writeByte(0);
+                out.writeShort(20 + 8 + payload.length);
+                out.writeInt(0); // identification and fragment
+                out.writeByte(64);
+                out.writeByte(PROTOCOL_UDP);
+                out.writeShort(0);
+                out.write(datagram.getSource().getAddress().getAddress());
+                out.write(new byte[] { 127, 0, 0, 1 });
+                // UDP
+                out.writeShort(datagram.getSource().getPort());
+                out.writeShort(datagram.getDestinationPort());
+                out.writeShort(8 + payload.length);
+                out.writeShort(0);
+                out.write(payload);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class TemplateCacheTest {
+
+    private static Template template(boolean options) {
+        return new Template(new int[] { 8 }, new int[] { 4 }, options);
+    }
+
+    @Test
+    public void testRemoveAll() {
+        final TemplateCache cache = new TemplateCache();
+        cache.put(1, 256, template(false));
+        cache.put(1, 257, template(true));
+        cache.put(2, 256, template(false));
+        cache.put(2, 257, template(true));
+
+        // The withdrawal of all the templates keeps the options templates
+        cache.removeAll(1, false);
+        assertNull(cache.get(1, 256));
+        assertNotNull(cache.get(1, 257));
+
+        // and the withdrawal of all the options templates keeps the templates
+        cache.removeAll(2, true);
+        assertNotNull(cache.get(2, 256));
+        assertNull(cache.get(2, 257));
+
+        assertEquals(2, cache.size());
+    }
+}
@@ -99,6 +99,17 @@ public class TelemetryMessageConsumer implements MessageConsumer<TelemetryMessag
         }
     }
 
+    public void destroy() {
+        for (Adapter adapter : adapters) {
+            try {
+                adapter.destroy();
+            } catch (RuntimeException e) {
+                LOG.warn("Adapter: {} failed to stop.", adapter, e);
+            }
+        }
+        adapters.clear();
+    }
+
     private Adapter buildAdapter(org.opennms.netmgt.telemetry.config.model.Adapter adapterDef) throws Exception {
 
         Adapter adapter = adapterRegistry.getAdapter(adapterDef.getClassName(), protocolDef, adapterDef.getParameterMap());
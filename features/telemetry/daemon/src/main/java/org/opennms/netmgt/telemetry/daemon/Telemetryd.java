@@ -170,6 +170,7 @@ public class Telemetryd implements SpringServiceDaemon {
             } catch (Exception e) {
                 LOG.error("Error while stopping consumer.", e);
             }
+            consumer.destroy();
         }
         consumers.clear();
 
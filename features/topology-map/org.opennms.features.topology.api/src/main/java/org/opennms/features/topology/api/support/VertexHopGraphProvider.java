@@ -278,6 +278,11 @@ public class VertexHopGraphProvider implements GraphProvider, SelectionAware {
         m_delegate.refresh();
     }
 
+    @Override
+    public void forceRefresh() {
+        m_delegate.forceRefresh();
+    }
+
     @Override
     public String getNamespace() {
         return m_delegate.getNamespace();
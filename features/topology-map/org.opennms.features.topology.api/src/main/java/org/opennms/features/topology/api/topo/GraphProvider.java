@@ -37,6 +37,14 @@ public interface GraphProvider extends VertexProvider, EdgeProvider, SelectionAw
 
 	void refresh();
 
+	/**
+	 * Reloads the graph like {@link #refresh()}, but without using any cache
+	 * kept by the provider. Called when the user explicitly asks for a refresh.
+	 */
+	default void forceRefresh() {
+		refresh();
+	}
+
 	void resetContainer();
 
 	void addVertices(Vertex... vertices);
@@ -58,6 +58,7 @@ import org.opennms.features.topology.api.SelectionContext;
 import org.opennms.features.topology.api.SelectionListener;
 import org.opennms.features.topology.api.SelectionManager;
 import org.opennms.features.topology.api.SelectionNotifier;
+import org.opennms.features.topology.api.TopologyServiceClient;
 import org.opennms.features.topology.api.VerticesUpdateManager;
 import org.opennms.features.topology.api.WidgetContext;
 import org.opennms.features.topology.api.WidgetManager;
@@ -72,6 +73,7 @@ import org.opennms.features.topology.api.support.VertexHopGraphProvider.VertexHo
 import org.opennms.features.topology.api.topo.CollapsibleCriteria;
 import org.opennms.features.topology.api.topo.Criteria;
 import org.opennms.features.topology.api.topo.DefaultTopologyProviderInfo;
+import org.opennms.features.topology.api.topo.GraphProvider;
 import org.opennms.features.topology.api.topo.TopologyProviderInfo;
 import org.opennms.features.topology.api.topo.Vertex;
 import org.opennms.features.topology.api.topo.VertexRef;
@@ -790,6 +792,12 @@ public class TopologyUI extends UI implements MenuUpdateListener, ContextMenuHan
         m_toolbarPanel = new ToolbarPanel(new ToolbarPanelController() {
             @Override
             public void refreshUI() {
+                // an explicit refresh reloads the graph instead of using the caches of the provider
+                final TopologyServiceClient client = m_graphContainer.getTopologyServiceClient();
+                final GraphProvider graphProvider = client.getGraphProviderBy(client.getNamespace());
+                if (graphProvider != null) {
+                    graphProvider.forceRefresh();
+                }
                 new TopologyUI.DynamicUpdateRefresher().refreshUI();
             }
 
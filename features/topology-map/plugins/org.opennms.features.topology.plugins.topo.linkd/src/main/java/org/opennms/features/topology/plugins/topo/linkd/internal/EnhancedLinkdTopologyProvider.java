@@ -420,6 +420,8 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
     private IpNetToMediaDao m_ipNetToMediaDao;
 
     private SelectionAware selectionAwareDelegate = new EnhancedLinkdSelectionAware();
+
+    private LinkdTopologyCache m_topologyCache;
     
     public final static String LLDP_EDGE_NAMESPACE = TOPOLOGY_NAMESPACE_LINKD + "::LLDP";
     public final static String OSPF_EDGE_NAMESPACE = TOPOLOGY_NAMESPACE_LINKD + "::OSPF";
@@ -439,6 +441,7 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
     private final Timer m_loadBridgeLinksTimer;
     private final Timer m_loadNoLinksTimer;
     private final Timer m_loadManualLinksTimer;
+    private final Timer m_loadCachedTimer;
 
     public EnhancedLinkdTopologyProvider(MetricRegistry registry) {
         Objects.requireNonNull(registry);
@@ -454,6 +457,7 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
         m_loadBridgeLinksTimer = registry.timer(MetricRegistry.name("enlinkd", "load", "links", "bridge"));
         m_loadNoLinksTimer = registry.timer(MetricRegistry.name("enlinkd", "load", "links", "none"));
         m_loadManualLinksTimer = registry.timer(MetricRegistry.name("enlinkd", "load", "links", "manual"));
+        m_loadCachedTimer = registry.timer(MetricRegistry.name("enlinkd", "load", "cached"));
     }
 
     private void loadCompleteTopology() {
@@ -1043,12 +1047,47 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
     @Override
     @Transactional
     public void refresh() {
+        // taken before loading, so that a load that misses an invalidation is not cached
+        final long generation = m_topologyCache == null ? 0 : m_topologyCache.getGeneration();
+        final LinkdTopologyCache.Snapshot snapshot = m_topologyCache == null ? null : m_topologyCache.getSnapshot();
+        if (snapshot != null) {
+            final Timer.Context context = m_loadCachedTimer.time();
+            try {
+                loadCachedTopology(snapshot);
+            } finally {
+                context.stop();
+            }
+            return;
+        }
         final Timer.Context context = m_loadFullTimer.time();
         try {
             loadCompleteTopology();
         } finally {
             context.stop();
         }
+        if (m_topologyCache != null) {
+            m_topologyCache.update(generation, getVertices(), getEdges());
+        }
+    }
+
+    @Override
+    @Transactional
+    public void forceRefresh() {
+        if (m_topologyCache != null) {
+            m_topologyCache.invalidate();
+        }
+        refresh();
+    }
+
+    private void loadCachedTopology(LinkdTopologyCache.Snapshot snapshot) {
+        try{
+            resetContainer();
+        } catch (Exception e){
+            LOG.error("Exception reset Container: "+e.getMessage(),e);
+        }
+        addVertices(snapshot.getVertices());
+        addEdges(snapshot.getEdges());
+        LOG.debug("Loaded {} vertices and {} edges from cache", snapshot.getVertexCount(), snapshot.getEdgeCount());
     }
 
     private String getEdgeTooltipText(BridgeMacLink sourcelink,
@@ -1280,6 +1319,14 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
         m_cdpLinkDao = cdpLinkDao;
     }
 
+    public LinkdTopologyCache getTopologyCache() {
+        return m_topologyCache;
+    }
+
+    public void setTopologyCache(LinkdTopologyCache topologyCache) {
+        m_topologyCache = topologyCache;
+    }
+
     public CdpElementDao getCdpElementDao() {
         return m_cdpElementDao;
     }
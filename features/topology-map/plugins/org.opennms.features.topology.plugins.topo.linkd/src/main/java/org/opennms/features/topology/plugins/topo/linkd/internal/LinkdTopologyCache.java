@@ -0,0 +1,370 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.features.topology.plugins.topo.linkd.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.features.topology.api.topo.Edge;
+import org.opennms.features.topology.api.topo.Vertex;
+import org.opennms.features.topology.api.topo.VertexRef;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventIpcManager;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.model.events.EventUtils;
+import org.opennms.netmgt.xml.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Keeps the last topology calculated by the {@link EnhancedLinkdTopologyProvider}
+ * so that a refresh of the topology map does not run the LLDP, CDP, OSPF,
+ * IS-IS and bridge link matching again.
+ *
+ * The graph is stored as an immutable {@link Snapshot} of vertex and edge
+ * arrays with a compressed adjacency list (CSR), so that the neighbourhood of
+ * a set of focus vertices up to a semantic zoom level is a breadth first
+ * visit over primitive arrays.
+ *
+ * The snapshot is invalidated by the node and topology events the cache
+ * listens to and expires after {@link #getMaxAge()} milliseconds, since
+ * enlinkd updates the links on every collection without sending events.
+ * Every invalidation increments the generation of the cache: a graph loaded
+ * while the cache was invalidated is not published, since it may miss the
+ * change. An explicit refresh of the user bypasses the cache, see
+ * {@link EnhancedLinkdTopologyProvider#forceRefresh()}.
+ */
+public class LinkdTopologyCache implements EventListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LinkdTopologyCache.class);
+
+    public static final long DEFAULT_MAX_AGE = 300000;
+
+    private static final List<String> UEI_LIST = Lists.newArrayList(
+            EventConstants.RELOAD_TOPOLOGY_UEI,
+            EventConstants.RELOAD_DAEMON_CONFIG_SUCCESSFUL_UEI,
+            EventConstants.NODE_ADDED_EVENT_UEI,
+            EventConstants.NODE_DELETED_EVENT_UEI,
+            EventConstants.NODE_UPDATED_EVENT_UEI,
+            EventConstants.NODE_LABEL_CHANGED_EVENT_UEI,
+            EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI,
+            EventConstants.INTERFACE_DELETED_EVENT_UEI,
+            EventConstants.PRIMARY_SNMP_INTERFACE_CHANGED_EVENT_UEI);
+
+    /**
+     * Immutable columnar representation of the linkd graph.
+     */
+    public static final class Snapshot {
+        private final long m_created;
+        private final Vertex[] m_vertices;
+        private final Edge[] m_edges;
+        // edge -> source and target vertex index
+        private final int[] m_edgeSource;
+        private final int[] m_edgeTarget;
+        // vertex -> [m_adjOffsets[v], m_adjOffsets[v+1]) in m_adjEdges
+        private final int[] m_adjOffsets;
+        private final int[] m_adjEdges;
+        private final Map<String, Integer> m_vertexIndex;
+
+        Snapshot(Collection<Vertex> vertices, Collection<Edge> edges, long created) {
+            m_created = created;
+            m_vertices = vertices.toArray(new Vertex[vertices.size()]);
+            m_vertexIndex = new HashMap<>(m_vertices.length * 2);
+            for (int i = 0; i < m_vertices.length; i++) {
+                m_vertexIndex.put(key(m_vertices[i]), i);
+            }
+
+            // edges whose vertices are unknown cannot be rendered: drop them
+            final List<Edge> valid = new ArrayList<>(edges.size());
+            final int[] source = new int[edges.size()];
+            final int[] target = new int[edges.size()];
+            final int[] degree = new int[m_vertices.length + 1];
+            for (Edge edge : edges) {
+                Integer s = m_vertexIndex.get(key(edge.getSource().getVertex()));
+                Integer t = m_vertexIndex.get(key(edge.getTarget().getVertex()));
+                if (s == null || t == null) {
+                    LOG.debug("Snapshot: skipping edge {} with unknown vertex", edge.getId());
+                    continue;
+                }
+                source[valid.size()] = s;
+                target[valid.size()] = t;
+                degree[s]++;
+                if (t.intValue() != s.intValue()) {
+                    degree[t]++;
+                }
+                valid.add(edge);
+            }
+            m_edges = valid.toArray(new Edge[valid.size()]);
+            m_edgeSource = Arrays.copyOf(source, m_edges.length);
+            m_edgeTarget = Arrays.copyOf(target, m_edges.length);
+
+            m_adjOffsets = new int[m_vertices.length + 1];
+            for (int v = 0; v < m_vertices.length; v++) {
+                m_adjOffsets[v + 1] = m_adjOffsets[v] + degree[v];
+            }
+            m_adjEdges = new int[m_adjOffsets[m_vertices.length]];
+            final int[] fill = Arrays.copyOf(m_adjOffsets, m_vertices.length);
+            for (int e = 0; e < m_edges.length; e++) {
+                m_adjEdges[fill[m_edgeSource[e]]++] = e;
+                if (m_edgeTarget[e] != m_edgeSource[e]) {
+                    m_adjEdges[fill[m_edgeTarget[e]]++] = e;
+                }
+            }
+        }
+
+        public long getCreated() {
+            return m_created;
+        }
+
+        public int getVertexCount() {
+            return m_vertices.length;
+        }
+
+        public int getEdgeCount() {
+            return m_edges.length;
+        }
+
+        /**
+         * @return a copy of the vertex array, to be added to a graph provider.
+         */
+        public Vertex[] getVertices() {
+            return m_vertices.clone();
+        }
+
+        /**
+         * @return a copy of the edge array, to be added to a graph provider.
+         */
+        public Edge[] getEdges() {
+            return m_edges.clone();
+        }
+
+        /**
+         * Returns the vertices reachable from the focus vertices in at most
+         * <code>szl</code> hops. Unknown focus vertices are ignored.
+         */
+        public List<Vertex> getVertices(Collection<? extends VertexRef> focus, int szl) {
+            final BitSet visited = visit(focus, szl);
+            final List<Vertex> vertices = new ArrayList<>(visited.cardinality());
+            for (int v = visited.nextSetBit(0); v >= 0; v = visited.nextSetBit(v + 1)) {
+                vertices.add(m_vertices[v]);
+            }
+            return vertices;
+        }
+
+        /**
+         * Returns the edges between the vertices reachable from the focus
+         * vertices in at most <code>szl</code> hops.
+         */
+        public List<Edge> getEdges(Collection<? extends VertexRef> focus, int szl) {
+            final BitSet visited = visit(focus, szl);
+            final List<Edge> edges = new ArrayList<>();
+            for (int e = 0; e < m_edges.length; e++) {
+                if (visited.get(m_edgeSource[e]) && visited.get(m_edgeTarget[e])) {
+                    edges.add(m_edges[e]);
+                }
+            }
+            return edges;
+        }
+
+        private BitSet visit(Collection<? extends VertexRef> focus, int szl) {
+            final BitSet visited = new BitSet(m_vertices.length);
+            int[] frontier = new int[m_vertices.length];
+            int[] next = new int[m_vertices.length];
+            int frontierSize = 0;
+            for (VertexRef ref : focus) {
+                Integer v = m_vertexIndex.get(key(ref));
+                if (v != null && !visited.get(v)) {
+                    visited.set(v);
+                    frontier[frontierSize++] = v;
+                }
+            }
+            for (int hop = 0; hop < szl && frontierSize > 0; hop++) {
+                int nextSize = 0;
+                for (int i = 0; i < frontierSize; i++) {
+                    final int v = frontier[i];
+                    for (int a = m_adjOffsets[v]; a < m_adjOffsets[v + 1]; a++) {
+                        final int e = m_adjEdges[a];
+                        final int w = m_edgeSource[e] == v ? m_edgeTarget[e] : m_edgeSource[e];
+                        if (!visited.get(w)) {
+                            visited.set(w);
+                            next[nextSize++] = w;
+                        }
+                    }
+                }
+                int[] swap = frontier;
+                frontier = next;
+                next = swap;
+                frontierSize = nextSize;
+            }
+            return visited;
+        }
+
+        private static String key(VertexRef ref) {
+            return ref.getNamespace() + ":" + ref.getId();
+        }
+    }
+
+    private final EventIpcManager m_eventIpcManager;
+
+    private volatile Snapshot m_snapshot;
+
+    private final AtomicLong m_generation = new AtomicLong();
+
+    private volatile long m_maxAge = DEFAULT_MAX_AGE;
+
+    public LinkdTopologyCache() {
+        this(null);
+    }
+
+    public LinkdTopologyCache(EventIpcManager eventIpcManager) {
+        m_eventIpcManager = eventIpcManager;
+    }
+
+    public void init() {
+        if (m_eventIpcManager != null) {
+            m_eventIpcManager.addEventListener(this, UEI_LIST);
+        }
+    }
+
+    public void destroy() {
+        if (m_eventIpcManager != null) {
+            m_eventIpcManager.removeEventListener(this, UEI_LIST);
+        }
+        invalidate();
+    }
+
+    public long getMaxAge() {
+        return m_maxAge;
+    }
+
+    /**
+     * @param maxAge the time in milliseconds after which the snapshot is
+     * recalculated, 0 or negative to keep it until it is invalidated.
+     */
+    public void setMaxAge(long maxAge) {
+        m_maxAge = maxAge;
+    }
+
+    /**
+     * @return the current snapshot or null if there is none or it has expired.
+     */
+    public Snapshot getSnapshot() {
+        final Snapshot snapshot = m_snapshot;
+        if (snapshot == null) {
+            return null;
+        }
+        if (m_maxAge > 0 && System.currentTimeMillis() - snapshot.getCreated() > m_maxAge) {
+            LOG.debug("getSnapshot: snapshot expired");
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the generation of the cache, to be passed to
+     * {@link #update(long, Collection, Collection)} by the loads started now.
+     */
+    public long getGeneration() {
+        return m_generation.get();
+    }
+
+    /**
+     * Replaces the snapshot with the given graph, unless the cache was
+     * invalidated since the graph started loading.
+     *
+     * @param generation the generation of the cache when the graph started
+     * loading
+     * @return the snapshot of the graph, published or not
+     */
+    public Snapshot update(long generation, Collection<Vertex> vertices, Collection<Edge> edges) {
+        Objects.requireNonNull(vertices);
+        Objects.requireNonNull(edges);
+        final Snapshot snapshot = new Snapshot(vertices, edges, System.currentTimeMillis());
+        synchronized (m_generation) {
+            if (m_generation.get() != generation) {
+                LOG.debug("update: the cache was invalidated while loading generation {}, not caching the graph", generation);
+                return snapshot;
+            }
+            m_snapshot = snapshot;
+        }
+        LOG.debug("update: cached {} vertices and {} edges", snapshot.getVertexCount(), snapshot.getEdgeCount());
+        return snapshot;
+    }
+
+    public void invalidate() {
+        synchronized (m_generation) {
+            m_generation.incrementAndGet();
+            m_snapshot = null;
+        }
+    }
+
+    public List<Vertex> getVertices(Collection<? extends VertexRef> focus, int szl) {
+        final Snapshot snapshot = getSnapshot();
+        return snapshot == null ? Collections.<Vertex>emptyList() : snapshot.getVertices(focus, szl);
+    }
+
+    public List<Edge> getEdges(Collection<? extends VertexRef> focus, int szl) {
+        final Snapshot snapshot = getSnapshot();
+        return snapshot == null ? Collections.<Edge>emptyList() : snapshot.getEdges(focus, szl);
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    public void onEvent(Event e) {
+        if (EventConstants.RELOAD_TOPOLOGY_UEI.equals(e.getUei())) {
+            final String namespace = EventUtils.getParm(e, EventConstants.PARAM_TOPOLOGY_NAMESPACE);
+            if (namespace != null && !"all".equalsIgnoreCase(namespace)
+                    && !AbstractLinkdTopologyProvider.TOPOLOGY_NAMESPACE_LINKD.equals(namespace)) {
+                return;
+            }
+        } else if (EventConstants.RELOAD_DAEMON_CONFIG_SUCCESSFUL_UEI.equals(e.getUei())) {
+            final String daemonName = EventUtils.getParm(e, EventConstants.PARM_DAEMON_NAME);
+            if (daemonName == null || !"enlinkd".equalsIgnoreCase(daemonName)) {
+                return;
+            }
+        }
+        LOG.debug("onEvent: invalidating topology cache on event {}", e.getUei());
+        invalidate();
+    }
+}
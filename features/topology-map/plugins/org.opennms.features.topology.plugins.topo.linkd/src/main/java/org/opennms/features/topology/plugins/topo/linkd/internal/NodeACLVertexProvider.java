@@ -76,6 +76,11 @@ public class NodeACLVertexProvider implements GraphProvider {
         m_delegate.refresh();
     }
 
+    @Override
+    public void forceRefresh() {
+        m_delegate.forceRefresh();
+    }
+
     @Override
     public void resetContainer() {
         m_delegate.resetContainer();
@@ -30,6 +30,9 @@ package org.opennms.features.topology.plugins.topo.linkd.internal;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Collection;
@@ -223,6 +226,29 @@ public class EnhancedLinkdTopologyProviderTest {
         assertEquals(0, m_topologyProvider.getSemanticZoomLevel(vertexE));
     }
 
+    @Test
+    public void testForceRefreshBypassesTheCache() {
+        final LinkdTopologyCache cache = new LinkdTopologyCache();
+        cache.setMaxAge(0);
+        m_topologyProvider.setTopologyCache(cache);
+        try {
+            m_topologyProvider.refresh();
+            final LinkdTopologyCache.Snapshot snapshot = cache.getSnapshot();
+            assertNotNull(snapshot);
+            assertEquals(8, snapshot.getVertexCount());
+
+            m_topologyProvider.refresh();
+            assertSame(snapshot, cache.getSnapshot());
+
+            m_topologyProvider.forceRefresh();
+            assertNotNull(cache.getSnapshot());
+            assertNotSame(snapshot, cache.getSnapshot());
+            assertEquals(8, m_topologyProvider.getVertices().size());
+        } finally {
+            m_topologyProvider.setTopologyCache(null);
+        }
+    }
+
     @Test
     public void testLoadSimpleGraph() throws Exception {
         assertEquals(8, m_topologyProvider.getVertices().size());
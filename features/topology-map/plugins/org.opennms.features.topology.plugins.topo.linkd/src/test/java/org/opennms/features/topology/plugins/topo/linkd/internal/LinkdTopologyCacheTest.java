@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.features.topology.plugins.topo.linkd.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.features.topology.api.topo.DefaultVertexRef;
+import org.opennms.features.topology.api.topo.Edge;
+import org.opennms.features.topology.api.topo.SimpleLeafVertex;
+import org.opennms.features.topology.api.topo.Vertex;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.model.events.EventBuilder;
+
+public class LinkdTopologyCacheTest {
+
+    private static final String NS = AbstractLinkdTopologyProvider.TOPOLOGY_NAMESPACE_LINKD;
+
+    private final List<Vertex> m_vertices = new ArrayList<>();
+    private final List<Edge> m_edges = new ArrayList<>();
+
+    private LinkdTopologyCache m_cache;
+
+    /*
+     * 1 - 2 - 3 - 4   5 (no links)
+     *     |
+     *     6
+     */
+    @Before
+    public void setUp() {
+        for (int i = 1; i <= 6; i++) {
+            m_vertices.add(new SimpleLeafVertex(NS, String.valueOf(i), 0, 0));
+        }
+        connect(1, 2);
+        connect(2, 3);
+        connect(3, 4);
+        connect(2, 6);
+        // an edge to a vertex that is not in the graph is dropped
+        m_edges.add(new LinkdEdge(NS, "dangling", m_vertices.get(0), new SimpleLeafVertex(NS, "99", 0, 0)));
+
+        m_cache = new LinkdTopologyCache();
+        m_cache.setMaxAge(0);
+    }
+
+    @Test
+    public void testSnapshot() {
+        assertNull(m_cache.getSnapshot());
+        LinkdTopologyCache.Snapshot snapshot = m_cache.update(m_cache.getGeneration(), m_vertices, m_edges);
+        assertEquals(6, snapshot.getVertexCount());
+        assertEquals(4, snapshot.getEdgeCount());
+        assertEquals(6, snapshot.getVertices().length);
+        assertEquals(4, snapshot.getEdges().length);
+        assertTrue(snapshot == m_cache.getSnapshot());
+    }
+
+    @Test
+    public void testSemanticZoomLevel() {
+        m_cache.update(m_cache.getGeneration(), m_vertices, m_edges);
+        assertEquals(ids("1"), ids(m_cache.getVertices(focus("1"), 0)));
+        assertEquals(ids("1", "2"), ids(m_cache.getVertices(focus("1"), 1)));
+        assertEquals(ids("1", "2", "3", "6"), ids(m_cache.getVertices(focus("1"), 2)));
+        assertEquals(ids("1", "2", "3", "4", "6"), ids(m_cache.getVertices(focus("1"), 10)));
+        assertEquals(ids("1", "2", "3", "4", "5", "6"), ids(m_cache.getVertices(focus("1", "5"), 3)));
+        assertEquals(ids("5"), ids(m_cache.getVertices(focus("5", "unknown"), 3)));
+
+        assertEquals(1, m_cache.getEdges(focus("1"), 1).size());
+        assertEquals(3, m_cache.getEdges(focus("1"), 2).size());
+        assertEquals(0, m_cache.getEdges(focus("5"), 2).size());
+    }
+
+    @Test
+    public void testInvalidation() {
+        m_cache.update(m_cache.getGeneration(), m_vertices, m_edges);
+        m_cache.onEvent(new EventBuilder(EventConstants.RELOAD_TOPOLOGY_UEI, "test")
+                        .addParam(EventConstants.PARAM_TOPOLOGY_NAMESPACE, "bsm").getEvent());
+        assertNotNull(m_cache.getSnapshot());
+        m_cache.onEvent(new EventBuilder(EventConstants.RELOAD_DAEMON_CONFIG_SUCCESSFUL_UEI, "test")
+                        .addParam(EventConstants.PARM_DAEMON_NAME, "Eventd").getEvent());
+        assertNotNull(m_cache.getSnapshot());
+        m_cache.onEvent(new EventBuilder(EventConstants.NODE_DELETED_EVENT_UEI, "test").setNodeid(1).getEvent());
+        assertNull(m_cache.getSnapshot());
+        assertTrue(m_cache.getVertices(focus("1"), 1).isEmpty());
+
+        m_cache.update(m_cache.getGeneration(), m_vertices, m_edges);
+        m_cache.onEvent(new EventBuilder(EventConstants.RELOAD_TOPOLOGY_UEI, "test")
+                        .addParam(EventConstants.PARAM_TOPOLOGY_NAMESPACE, NS).getEvent());
+        assertNull(m_cache.getSnapshot());
+    }
+
+    @Test
+    public void testInvalidationDuringLoad() {
+        m_cache.update(m_cache.getGeneration(), m_vertices, m_edges);
+
+        // a load starts, then a node is deleted before it completes
+        final long generation = m_cache.getGeneration();
+        m_cache.onEvent(new EventBuilder(EventConstants.NODE_DELETED_EVENT_UEI, "test").setNodeid(1).getEvent());
+        final LinkdTopologyCache.Snapshot snapshot = m_cache.update(generation, m_vertices, m_edges);
+        assertEquals(6, snapshot.getVertexCount());
+        assertNull(m_cache.getSnapshot());
+
+        // the next load is cached
+        m_cache.update(m_cache.getGeneration(), m_vertices, m_edges);
+        assertNotNull(m_cache.getSnapshot());
+    }
+
+    @Test
+    public void testMaxAge() throws Exception {
+        m_cache.setMaxAge(1);
+        m_cache.update(m_cache.getGeneration(), m_vertices, m_edges);
+        Thread.sleep(10);
+        assertNull(m_cache.getSnapshot());
+    }
+
+    private void connect(int source, int target) {
+        m_edges.add(new LinkdEdge(NS, source + "-" + target, m_vertices.get(source - 1), m_vertices.get(target - 1)));
+    }
+
+    private static List<DefaultVertexRef> focus(String... ids) {
+        List<DefaultVertexRef> focus = new ArrayList<>();
+        for (String id : ids) {
+            focus.add(new DefaultVertexRef(NS, id));
+        }
+        return focus;
+    }
+
+    private static Set<String> ids(String... ids) {
+        Set<String> set = new HashSet<>();
+        Collections.addAll(set, ids);
+        return set;
+    }
+
+    private static Set<String> ids(List<Vertex> vertices) {
+        Set<String> set = new HashSet<>();
+        for (Vertex vertex : vertices) {
+            set.add(vertex.getId());
+        }
+        return set;
+    }
+}
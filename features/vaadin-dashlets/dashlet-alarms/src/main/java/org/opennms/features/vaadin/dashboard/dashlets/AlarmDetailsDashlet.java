@@ -54,6 +54,7 @@ import org.opennms.features.vaadin.dashboard.model.AbstractDashlet;
 import org.opennms.features.vaadin.dashboard.model.AbstractDashletComponent;
 import org.opennms.features.vaadin.dashboard.model.DashletComponent;
 import org.opennms.features.vaadin.dashboard.model.DashletSpec;
+import org.opennms.netmgt.alarmd.api.support.AlarmChangeTracker;
 import org.opennms.netmgt.dao.api.AlarmDao;
 import org.opennms.netmgt.dao.api.AlarmRepository;
 import org.opennms.netmgt.dao.api.NodeDao;
@@ -66,6 +67,7 @@ import org.opennms.osgi.EventProxy;
 import org.opennms.osgi.VaadinApplicationContextImpl;
 import org.springframework.transaction.support.TransactionOperations;
 
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -103,6 +105,18 @@ public class AlarmDetailsDashlet extends AbstractDashlet {
     private final AlarmRepository m_alarmRepository;
 
     private final TransactionOperations m_transactionTemplate;
+    /**
+     * Tells when the alarms have to be queried again
+     */
+    private final AlarmChangeTracker.Watch m_alarmWatch;
+    /**
+     * The alarms found by the last query
+     */
+    private List<OnmsAlarm> m_alarms;
+    /**
+     * The nodes of the alarms found by the last query
+     */
+    private final Map<Integer, OnmsNode> m_nodes = new HashMap<>();
 
     /**
      * Constructor for instantiating new objects.
@@ -110,8 +124,9 @@ public class AlarmDetailsDashlet extends AbstractDashlet {
      * @param dashletSpec the {@link DashletSpec} to be used
      * @param alarmDao    the {@link AlarmDao} to be used
      * @param nodeDao     the {@link NodeDao} to be used
+     * @param alarmChangeTracker the {@link AlarmChangeTracker} to be used
      */
-    public AlarmDetailsDashlet(String name, DashletSpec dashletSpec, AlarmDao alarmDao, NodeDao nodeDao, AlarmRepository alarmRepository, TransactionOperations transactionTemplate) {
+    public AlarmDetailsDashlet(String name, DashletSpec dashletSpec, AlarmDao alarmDao, NodeDao nodeDao, AlarmRepository alarmRepository, TransactionOperations transactionTemplate, AlarmChangeTracker alarmChangeTracker) {
         super(name, dashletSpec);
 
         /**
@@ -121,6 +136,7 @@ public class AlarmDetailsDashlet extends AbstractDashlet {
         m_nodeDao = nodeDao;
         m_alarmRepository = alarmRepository;
         m_transactionTemplate = transactionTemplate;
+        m_alarmWatch = alarmChangeTracker.newWatch();
     }
 
     @Override
@@ -130,6 +146,10 @@ public class AlarmDetailsDashlet extends AbstractDashlet {
             m_wallboardComponent = new AbstractDashletComponent() {
 
                 private VerticalLayout m_verticalLayout;
+                /**
+                 * The alarms shown
+                 */
+                private List<OnmsAlarm> m_shownAlarms;
 
                 {
                     m_verticalLayout = new VerticalLayout();
@@ -158,6 +178,12 @@ public class AlarmDetailsDashlet extends AbstractDashlet {
                 @Override
                 public void refresh() {
                     List<OnmsAlarm> alarms = getAlarms();
+
+                    if (alarms == m_shownAlarms) {
+                        return;
+                    }
+                    m_shownAlarms = alarms;
+
                     m_verticalLayout.removeAllComponents();
                     injectWallboardStyles();
 
@@ -183,6 +209,10 @@ public class AlarmDetailsDashlet extends AbstractDashlet {
             m_dashboardComponent = new AbstractDashletComponent() {
 
                 private AlarmTable m_alarmTable;
+                /**
+                 * The alarms shown
+                 */
+                private List<OnmsAlarm> m_shownAlarms;
 
                 {
                     m_alarmTable = new AlarmTable("Alarms", new AlarmDaoContainer(m_alarmDao, m_transactionTemplate), m_alarmRepository);
@@ -239,6 +269,11 @@ public class AlarmDetailsDashlet extends AbstractDashlet {
                 public void refresh() {
                     List<OnmsAlarm> alarms = getAlarms();
 
+                    if (alarms == m_shownAlarms) {
+                        return;
+                    }
+                    m_shownAlarms = alarms;
+
                     List<Integer> alarmIds = new LinkedList<>();
 
                     if (alarms.size() > 0) {
@@ -280,11 +315,17 @@ public class AlarmDetailsDashlet extends AbstractDashlet {
     }
 
     /**
-     * Returns the alarms defined by this dashlet.
+     * Returns the alarms defined by this dashlet. The alarms are only queried
+     * again when alarmd reported a change since the last query, otherwise the
+     * same list is returned.
      *
      * @return the list of alarms
      */
     private List<OnmsAlarm> getAlarms() {
+        if (!m_alarmWatch.hasChanged() && m_alarms != null) {
+            return m_alarms;
+        }
+
         final CriteriaBuilder alarmCb = new CriteriaBuilder(OnmsAlarm.class);
 
         alarmCb.alias("node", "node");
@@ -313,7 +354,10 @@ public class AlarmDetailsDashlet extends AbstractDashlet {
             }
         }
 
-        return Lists.newArrayList(onmsAlarmMap.values());
+        m_alarms = Lists.newArrayList(onmsAlarmMap.values());
+        m_nodes.clear();
+
+        return m_alarms;
     }
 
     /**
@@ -339,6 +383,10 @@ public class AlarmDetailsDashlet extends AbstractDashlet {
                 OnmsNode onmsNode = null;
 
                 if (onmsAlarm.getNodeId() != null) {
+                    onmsNode = m_nodes.get(onmsAlarm.getNodeId());
+                }
+
+                if (onmsNode == null && onmsAlarm.getNodeId() != null) {
                     CriteriaBuilder nodeCb = new CriteriaBuilder(OnmsNode.class);
                     nodeCb.eq("id", onmsAlarm.getNodeId());
 
@@ -346,6 +394,7 @@ public class AlarmDetailsDashlet extends AbstractDashlet {
 
                     if (nodes.size() == 1) {
                         onmsNode = nodes.get(0);
+                        m_nodes.put(onmsAlarm.getNodeId(), onmsNode);
                     }
                 }
 
@@ -32,6 +32,7 @@ import org.opennms.features.vaadin.dashboard.model.AbstractDashletFactory;
 import org.opennms.features.vaadin.dashboard.model.Dashlet;
 import org.opennms.features.vaadin.dashboard.model.DashletConfigurationWindow;
 import org.opennms.features.vaadin.dashboard.model.DashletSpec;
+import org.opennms.netmgt.alarmd.api.support.AlarmChangeTracker;
 import org.opennms.netmgt.dao.api.AlarmDao;
 import org.opennms.netmgt.dao.api.AlarmRepository;
 import org.opennms.netmgt.dao.api.NodeDao;
@@ -56,17 +57,20 @@ public class AlarmDetailsDashletFactory extends AbstractDashletFactory {
 
     private final TransactionOperations m_transactionTemplate;
 
+    private final AlarmChangeTracker m_alarmChangeTracker;
+
     /**
      * Constructor used for instantiating a new factory.
      *
      * @param alarmDao the {@link AlarmDao} to be used
      * @param nodeDao  the {@link NodeDao} to be used
      */
-    public AlarmDetailsDashletFactory(AlarmDao alarmDao, NodeDao nodeDao, AlarmRepository alarmRepository, TransactionOperations transactionTemplate) {
+    public AlarmDetailsDashletFactory(AlarmDao alarmDao, NodeDao nodeDao, AlarmRepository alarmRepository, TransactionOperations transactionTemplate, AlarmChangeTracker alarmChangeTracker) {
         m_alarmDao = alarmDao;
         m_nodeDao = nodeDao;
         m_alarmRepository = alarmRepository;
         m_transactionTemplate = transactionTemplate;
+        m_alarmChangeTracker = alarmChangeTracker;
     }
 
     /**
@@ -76,7 +80,7 @@ public class AlarmDetailsDashletFactory extends AbstractDashletFactory {
      * @return a new {@link Dashlet} instance
      */
     public Dashlet newDashletInstance(DashletSpec dashletSpec) {
-        return new AlarmDetailsDashlet(getName(), dashletSpec, m_alarmDao, m_nodeDao, m_alarmRepository, m_transactionTemplate);
+        return new AlarmDetailsDashlet(getName(), dashletSpec, m_alarmDao, m_nodeDao, m_alarmRepository, m_transactionTemplate, m_alarmChangeTracker);
     }
 
     /**
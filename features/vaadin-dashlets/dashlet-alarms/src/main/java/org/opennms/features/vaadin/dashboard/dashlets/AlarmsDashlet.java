@@ -42,6 +42,7 @@ import org.opennms.features.vaadin.dashboard.model.AbstractDashlet;
 import org.opennms.features.vaadin.dashboard.model.AbstractDashletComponent;
 import org.opennms.features.vaadin.dashboard.model.DashletComponent;
 import org.opennms.features.vaadin.dashboard.model.DashletSpec;
+import org.opennms.netmgt.alarmd.api.support.AlarmChangeTracker;
 import org.opennms.netmgt.dao.api.AlarmDao;
 import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.model.OnmsAlarm;
@@ -51,6 +52,7 @@ import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.OnmsSeverity;
 
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -87,7 +89,18 @@ public class AlarmsDashlet extends AbstractDashlet {
      * dashboard layout
      */
     private DashletComponent m_dashboardComponent = null;
-
+    /**
+     * Tells when the alarms have to be queried again
+     */
+    private AlarmChangeTracker.Watch m_alarmWatch;
+    /**
+     * The alarms found by the last query
+     */
+    private List<OnmsAlarm> m_alarms;
+    /**
+     * The nodes of the alarms found by the last query
+     */
+    private Map<Integer, OnmsNode> m_nodes = new HashMap<>();
 
     /**
      * Constructor for instantiating new objects.
@@ -95,14 +108,16 @@ public class AlarmsDashlet extends AbstractDashlet {
      * @param dashletSpec the {@link DashletSpec} to be used
      * @param alarmDao    the {@link AlarmDao} to be used
      * @param nodeDao     the {@link NodeDao} to be used
+     * @param alarmChangeTracker the {@link AlarmChangeTracker} to be used
      */
-    public AlarmsDashlet(String name, DashletSpec dashletSpec, AlarmDao alarmDao, NodeDao nodeDao) {
+    public AlarmsDashlet(String name, DashletSpec dashletSpec, AlarmDao alarmDao, NodeDao nodeDao, AlarmChangeTracker alarmChangeTracker) {
         super(name, dashletSpec);
         /**
          * Setting the member fields
          */
         m_alarmDao = alarmDao;
         m_nodeDao = nodeDao;
+        m_alarmWatch = alarmChangeTracker.newWatch();
     }
 
     @Override
@@ -209,11 +224,16 @@ public class AlarmsDashlet extends AbstractDashlet {
     }
 
     /**
-     * Returns the alarms defined by this dashlet.
+     * Returns the alarms defined by this dashlet. The alarms are only queried
+     * again when alarmd reported a change since the last query.
      *
      * @return the list of alarms
      */
     private List<OnmsAlarm> getAlarms() {
+        if (!m_alarmWatch.hasChanged() && m_alarms != null) {
+            return m_alarms;
+        }
+
         final CriteriaBuilder alarmCb = new CriteriaBuilder(OnmsAlarm.class);
 
         alarmCb.alias("node", "node");
@@ -242,7 +262,10 @@ public class AlarmsDashlet extends AbstractDashlet {
             }
         }
 
-        return Lists.newArrayList(onmsAlarmMap.values());
+        m_alarms = Lists.newArrayList(onmsAlarmMap.values());
+        m_nodes.clear();
+
+        return m_alarms;
     }
 
     /**
@@ -261,6 +284,10 @@ public class AlarmsDashlet extends AbstractDashlet {
                 OnmsNode onmsNode = null;
 
                 if (onmsAlarm.getNodeId() != null) {
+                    onmsNode = m_nodes.get(onmsAlarm.getNodeId());
+                }
+
+                if (onmsNode == null && onmsAlarm.getNodeId() != null) {
                     CriteriaBuilder nodeCb = new CriteriaBuilder(OnmsNode.class);
                     nodeCb.eq("id", onmsAlarm.getNodeId());
 
@@ -268,6 +295,7 @@ public class AlarmsDashlet extends AbstractDashlet {
 
                     if (nodes.size() == 1) {
                         onmsNode = nodes.get(0);
+                        m_nodes.put(onmsAlarm.getNodeId(), onmsNode);
                     }
                 }
                 component.addComponent(createAlarmComponent(onmsAlarm, onmsNode));
@@ -33,6 +33,7 @@ import org.opennms.features.vaadin.dashboard.model.Dashlet;
 import org.opennms.features.vaadin.dashboard.model.DashletConfigurationWindow;
 import org.opennms.features.vaadin.dashboard.model.DashletSpec;
 import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.alarmd.api.support.AlarmChangeTracker;
 import org.opennms.netmgt.dao.api.NodeDao;
 
 /**
@@ -49,16 +50,22 @@ public class AlarmsDashletFactory extends AbstractDashletFactory {
      * The {@link NodeDao} used
      */
     private NodeDao m_nodeDao;
+    /**
+     * The {@link AlarmChangeTracker} used
+     */
+    private AlarmChangeTracker m_alarmChangeTracker;
 
     /**
      * Constructor used for instantiating a new factory.
      *
      * @param alarmDao the {@link AlarmDao} to be used
      * @param nodeDao  the {@link NodeDao} to be used
+     * @param alarmChangeTracker the {@link AlarmChangeTracker} to be used
      */
-    public AlarmsDashletFactory(AlarmDao alarmDao, NodeDao nodeDao) {
+    public AlarmsDashletFactory(AlarmDao alarmDao, NodeDao nodeDao, AlarmChangeTracker alarmChangeTracker) {
         m_alarmDao = alarmDao;
         m_nodeDao = nodeDao;
+        m_alarmChangeTracker = alarmChangeTracker;
     }
 
     /**
@@ -68,7 +75,7 @@ public class AlarmsDashletFactory extends AbstractDashletFactory {
      * @return a new {@link Dashlet} instance
      */
     public Dashlet newDashletInstance(DashletSpec dashletSpec) {
-        return new AlarmsDashlet(getName(), dashletSpec, m_alarmDao, m_nodeDao);
+        return new AlarmsDashlet(getName(), dashletSpec, m_alarmDao, m_nodeDao, m_alarmChangeTracker);
     }
 
     /**
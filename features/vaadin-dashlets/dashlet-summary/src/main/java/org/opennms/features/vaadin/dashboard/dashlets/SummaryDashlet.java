@@ -35,6 +35,7 @@ import com.vaadin.ui.*;
 import org.opennms.core.criteria.CriteriaBuilder;
 import org.opennms.core.criteria.restrictions.SqlRestriction.Type;
 import org.opennms.features.vaadin.dashboard.model.*;
+import org.opennms.netmgt.alarmd.api.support.AlarmChangeTracker;
 import org.opennms.netmgt.dao.api.AlarmDao;
 import org.opennms.netmgt.model.OnmsAlarm;
 import org.opennms.netmgt.model.OnmsSeverity;
@@ -50,6 +51,10 @@ public class SummaryDashlet extends AbstractDashlet {
      * The {@link AlarmDao} used
      */
     private AlarmDao m_alarmDao;
+    /**
+     * The {@link AlarmChangeTracker} used
+     */
+    private AlarmChangeTracker m_alarmChangeTracker;
     /**
      * Timeslot to use
      */
@@ -75,12 +80,13 @@ public class SummaryDashlet extends AbstractDashlet {
      *
      * @param dashletSpec the {@link DashletSpec} to be used
      */
-    public SummaryDashlet(String name, DashletSpec dashletSpec, AlarmDao alarmDao) {
+    public SummaryDashlet(String name, DashletSpec dashletSpec, AlarmDao alarmDao, AlarmChangeTracker alarmChangeTracker) {
         super(name, dashletSpec);
         /**
          * Setting the member fields
          */
         m_alarmDao = alarmDao;
+        m_alarmChangeTracker = alarmChangeTracker;
     }
 
     /**
@@ -452,6 +458,10 @@ public class SummaryDashlet extends AbstractDashlet {
         if (m_wallboardComponent == null) {
             m_wallboardComponent = new AbstractDashletComponent() {
                 private HorizontalLayout m_horizontalLayout = new HorizontalLayout();
+                /**
+                 * Tells when the alarms have to be counted again
+                 */
+                private AlarmChangeTracker.Watch m_alarmWatch = m_alarmChangeTracker.newWatch();
 
                 {
                     m_horizontalLayout.setCaption(getName());
@@ -477,6 +487,13 @@ public class SummaryDashlet extends AbstractDashlet {
 
                 @Override
                 public void refresh() {
+                    /**
+                     * Only count the alarms again when alarmd reported a change, or the counts got too old
+                     */
+                    if (!m_alarmWatch.hasChanged()) {
+                        return;
+                    }
+
                     m_timeslot = 3600;
 
                     try {
@@ -522,6 +539,10 @@ public class SummaryDashlet extends AbstractDashlet {
         if (m_dashboardComponent == null) {
             m_dashboardComponent = new AbstractDashletComponent() {
                 private HorizontalLayout m_horizontalLayout = new HorizontalLayout();
+                /**
+                 * Tells when the alarms have to be counted again
+                 */
+                private AlarmChangeTracker.Watch m_alarmWatch = m_alarmChangeTracker.newWatch();
 
                 {
                     m_horizontalLayout.setCaption(getName());
@@ -547,6 +568,13 @@ public class SummaryDashlet extends AbstractDashlet {
 
                 @Override
                 public void refresh() {
+                    /**
+                     * Only count the alarms again when alarmd reported a change, or the counts got too old
+                     */
+                    if (!m_alarmWatch.hasChanged()) {
+                        return;
+                    }
+
                     m_timeslot = 3600;
 
                     try {
@@ -31,6 +31,7 @@ package org.opennms.features.vaadin.dashboard.dashlets;
 import org.opennms.features.vaadin.dashboard.model.AbstractDashletFactory;
 import org.opennms.features.vaadin.dashboard.model.Dashlet;
 import org.opennms.features.vaadin.dashboard.model.DashletSpec;
+import org.opennms.netmgt.alarmd.api.support.AlarmChangeTracker;
 import org.opennms.netmgt.dao.api.AlarmDao;
 
 /**
@@ -43,12 +44,17 @@ public class SummaryDashletFactory extends AbstractDashletFactory {
      * The {@link AlarmDao} used
      */
     private AlarmDao m_alarmDao;
+    /**
+     * The {@link AlarmChangeTracker} used
+     */
+    private AlarmChangeTracker m_alarmChangeTracker;
 
     /**
      * Constructor for instantiating a new factory.
      */
-    public SummaryDashletFactory(AlarmDao alarmDao) {
+    public SummaryDashletFactory(AlarmDao alarmDao, AlarmChangeTracker alarmChangeTracker) {
         m_alarmDao = alarmDao;
+        m_alarmChangeTracker = alarmChangeTracker;
     }
 
     /**
@@ -58,7 +64,7 @@ public class SummaryDashletFactory extends AbstractDashletFactory {
      * @return a new {@link Dashlet} instance
      */
     public Dashlet newDashletInstance(DashletSpec dashletSpec) {
-        return new SummaryDashlet(getName(), dashletSpec, m_alarmDao);
+        return new SummaryDashlet(getName(), dashletSpec, m_alarmDao, m_alarmChangeTracker);
     }
 
     /**
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd.api.support;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.opennms.netmgt.alarmd.api.AlarmLifecycleListener;
+import org.opennms.netmgt.alarmd.api.AlarmLifecycleSubscriptionService;
+import org.opennms.netmgt.model.OnmsAlarm;
+
+/**
+ * Counts the alarm changes reported by alarmd, so that the clients which used
+ * to query the alarms on a timer only query them again once they changed.
+ *
+ * Acknowledgements and the alarms aging out of a time window are not reported
+ * by alarmd, so a {@link Watch} also reports a change once its last change is
+ * older than the maximum age.
+ */
+public class AlarmChangeTracker implements AlarmLifecycleListener {
+
+    public static final long DEFAULT_MAX_AGE_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private final AlarmLifecycleSubscriptionService m_subscriptionService;
+
+    private final long m_maxAgeMs;
+
+    private final LongSupplier m_clock;
+
+    private final AtomicLong m_version = new AtomicLong();
+
+    public AlarmChangeTracker(AlarmLifecycleSubscriptionService subscriptionService) {
+        this(subscriptionService, DEFAULT_MAX_AGE_MS, System::currentTimeMillis);
+    }
+
+    AlarmChangeTracker(AlarmLifecycleSubscriptionService subscriptionService, long maxAgeMs, LongSupplier clock) {
+        m_subscriptionService = Objects.requireNonNull(subscriptionService);
+        m_maxAgeMs = maxAgeMs;
+        m_clock = Objects.requireNonNull(clock);
+    }
+
+    public void init() {
+        m_subscriptionService.addAlarmLifecyleListener(this);
+    }
+
+    public void destroy() {
+        m_subscriptionService.removeAlarmLifecycleListener(this);
+    }
+
+    @Override
+    public void handleNewOrUpdatedAlarm(OnmsAlarm alarm) {
+        m_version.incrementAndGet();
+    }
+
+    @Override
+    public void handleDeletedAlarm(int alarmId, String reductionKey) {
+        m_version.incrementAndGet();
+    }
+
+    public long getVersion() {
+        return m_version.get();
+    }
+
+    /**
+     * Returns a watch which reports a change on its first call.
+     */
+    public Watch newWatch() {
+        return new Watch();
+    }
+
+    /**
+     * Tells one client whether the alarms changed since it last queried them.
+     * A watch is not thread-safe, it is meant to be used by a single client.
+     */
+    public class Watch {
+        private boolean m_started;
+        private long m_seenVersion;
+        private long m_changedAt;
+
+        private Watch() {
+        }
+
+        /**
+         * Returns true if the alarms changed since the previous call returning
+         * true, or that call is older than the maximum age. The caller is
+         * expected to query the alarms again when true is returned.
+         */
+        public boolean hasChanged() {
+            final long version = getVersion();
+            final long now = m_clock.getAsLong();
+            if (m_started && version == m_seenVersion && now - m_changedAt < m_maxAgeMs) {
+                return false;
+            }
+            m_started = true;
+            m_seenVersion = version;
+            m_changedAt = now;
+            return true;
+        }
+    }
+}
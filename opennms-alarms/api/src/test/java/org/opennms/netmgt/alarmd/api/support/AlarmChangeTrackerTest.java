@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd.api.support;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.opennms.netmgt.alarmd.api.AlarmLifecycleListener;
+import org.opennms.netmgt.alarmd.api.AlarmLifecycleSubscriptionService;
+import org.opennms.netmgt.model.OnmsAlarm;
+
+public class AlarmChangeTrackerTest {
+
+    private AlarmLifecycleListener m_listener;
+
+    private final AlarmLifecycleSubscriptionService m_subscriptionService = new AlarmLifecycleSubscriptionService() {
+        @Override
+        public void addAlarmLifecyleListener(AlarmLifecycleListener listener) {
+            m_listener = listener;
+        }
+
+        @Override
+        public void removeAlarmLifecycleListener(AlarmLifecycleListener listener) {
+            m_listener = null;
+        }
+    };
+
+    @Test
+    public void testWatch() {
+        final AtomicLong now = new AtomicLong(1000);
+        final AlarmChangeTracker tracker = new AlarmChangeTracker(m_subscriptionService, 60000, now::get);
+        tracker.init();
+        assertSame(tracker, m_listener);
+
+        final AlarmChangeTracker.Watch watch = tracker.newWatch();
+        final AlarmChangeTracker.Watch other = tracker.newWatch();
+        assertTrue(watch.hasChanged());
+        assertFalse(watch.hasChanged());
+
+        m_listener.handleNewOrUpdatedAlarm(new OnmsAlarm());
+        assertTrue(watch.hasChanged());
+        assertFalse(watch.hasChanged());
+
+        m_listener.handleDeletedAlarm(1, "uei.opennms.org/test::1");
+        now.addAndGet(59999);
+        assertTrue(watch.hasChanged());
+        now.addAndGet(59999);
+        assertFalse(watch.hasChanged());
+        // the changes are reported again once the maximum age is reached
+        now.incrementAndGet();
+        assertTrue(watch.hasChanged());
+
+        // every watch sees the changes
+        assertTrue(other.hasChanged());
+        assertFalse(other.hasChanged());
+
+        tracker.destroy();
+        assertNull(m_listener);
+    }
+}
@@ -114,6 +114,13 @@ public class TrapdConfiguration implements  Serializable {
 	@XmlAttribute(name="batch-interval", required=false)
     private int _batchInterval = 500;
 
+    /**
+     * Number of threads used for receiving and decoding traps.
+     * 0 uses the single threaded SNMP4J listener.
+     */
+	@XmlAttribute(name="receive-threads", required=false)
+    private int _receiveThreads = 0;
+
     /**
      * keeps track of state for field: _newSuspectOnTrap
      */
@@ -206,7 +213,7 @@ public class TrapdConfiguration implements  Serializable {
 
     public int hashCode() {
         return Objects.hash(_snmpTrapAddress, _snmpTrapPort, _has_snmpTrapPort, _newSuspectOnTrap, _snmpv3UserList,
-                _includeRawMessage, _threads, _queueSize, _batchSize, _batchInterval, _useAddessFromVarbind);
+                _includeRawMessage, _threads, _queueSize, _batchSize, _batchInterval, _useAddessFromVarbind, _receiveThreads);
     }
 
     @Override()
@@ -226,7 +233,8 @@ public class TrapdConfiguration implements  Serializable {
                     && Objects.equals(_queueSize, other._queueSize)
                     && Objects.equals(_batchSize, other._batchSize)
                     && Objects.equals(_batchInterval, other._batchInterval)
-                    && Objects.equals(_useAddessFromVarbind, other._useAddessFromVarbind);
+                    && Objects.equals(_useAddessFromVarbind, other._useAddessFromVarbind)
+                    && Objects.equals(_receiveThreads, other._receiveThreads);
             return equals;
         }
         return false;
@@ -554,4 +562,12 @@ public class TrapdConfiguration implements  Serializable {
     public void setBatchInterval(int _batchInterval) {
         this._batchInterval = _batchInterval;
     }
+
+    public int getReceiveThreads() {
+        return _receiveThreads;
+    }
+
+    public void setReceiveThreads(int _receiveThreads) {
+        this._receiveThreads = _receiveThreads;
+    }
 }
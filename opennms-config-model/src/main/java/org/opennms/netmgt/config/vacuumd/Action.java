@@ -51,12 +51,21 @@ public class Action implements Serializable {
 
     private static final String DEFAULT_DATA_SOURCE = "opennms";
 
+    private static final Integer DEFAULT_BATCH_SIZE = 1000;
+
     @XmlAttribute(name = "name", required = true)
     private String m_name;
 
     @XmlAttribute(name = "data-source")
     private String m_dataSource;
 
+    /**
+     * Number of trigger rows for which the statement is sent to the database
+     * at once
+     */
+    @XmlAttribute(name = "batch-size")
+    private Integer m_batchSize;
+
     /**
      * Just a generic string used for SQL statements
      */
@@ -88,6 +97,14 @@ public class Action implements Serializable {
         m_dataSource = ConfigUtils.normalizeString(dataSource);
     }
 
+    public Integer getBatchSize() {
+        return m_batchSize == null ? DEFAULT_BATCH_SIZE : m_batchSize;
+    }
+
+    public void setBatchSize(final Integer batchSize) {
+        m_batchSize = batchSize;
+    }
+
     public Statement getStatement() {
         return m_statement;
     }
@@ -97,7 +114,7 @@ public class Action implements Serializable {
     }
 
     public int hashCode() {
-        return Objects.hash(m_name, m_dataSource, m_statement);
+        return Objects.hash(m_name, m_dataSource, m_batchSize, m_statement);
     }
 
     @Override()
@@ -110,6 +127,7 @@ public class Action implements Serializable {
             final Action that = (Action) obj;
             return Objects.equals(this.m_name, that.m_name) &&
                     Objects.equals(this.m_dataSource, that.m_dataSource) &&
+                    Objects.equals(this.m_batchSize, that.m_batchSize) &&
                     Objects.equals(this.m_statement, that.m_statement);
         }
         return false;
@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.notifications.Notification;
+import org.opennms.netmgt.config.notifications.Notifications;
+import org.opennms.netmgt.config.notifications.Varbind;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Parm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Precompiled view of the notifications configuration used to match events.
+ *
+ * Notifications with a plain UEI are indexed by UEI, notifications using
+ * <code>MATCH-ANY-UEI</code> or a <code>~regex</code> UEI are kept apart and
+ * tested with a precompiled pattern. The candidates of a UEI are computed once
+ * and memoized, so that matching an event against hundreds of notifications
+ * is a map lookup. Severity and varbind patterns are compiled when the index
+ * is built.
+ *
+ * The candidates are returned in configuration order. The status of the
+ * notifications is not part of the index since it can be changed at runtime.
+ *
+ * A new index must be built whenever the configuration is reloaded or saved.
+ */
+public class NotificationIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationIndex.class);
+
+    public static final String MATCH_ANY_UEI = "MATCH-ANY-UEI";
+
+    private static final int MAX_MEMOIZED_UEIS = 10000;
+
+    private final Notifications m_notifications;
+    private final int m_count;
+    private final Map<String, List<Entry>> m_byUei = new HashMap<>();
+    private final List<Entry> m_wildcards = new ArrayList<>();
+    private final Map<String, List<Entry>> m_candidates = new ConcurrentHashMap<>();
+
+    public NotificationIndex(final Notifications notifications) {
+        m_notifications = notifications;
+        m_count = notifications.getNotifications().size();
+
+        int position = 0;
+        for (final Notification notif : notifications.getNotifications()) {
+            final Entry entry;
+            try {
+                entry = new Entry(position++, notif);
+            } catch (final PatternSyntaxException e) {
+                LOG.error("Invalid regular expression in notification {}, the notification will never match: {}", notif.getName(), e.getMessage());
+                continue;
+            }
+            if (entry.isWildcard()) {
+                m_wildcards.add(entry);
+            } else {
+                List<Entry> entries = m_byUei.get(notif.getUei());
+                if (entries == null) {
+                    entries = new ArrayList<>(1);
+                    m_byUei.put(notif.getUei(), entries);
+                }
+                entries.add(entry);
+            }
+        }
+    }
+
+    /**
+     * @return true if the index was built from the given configuration and
+     * no notification has been added or removed since.
+     */
+    public boolean isBuiltFrom(final Notifications notifications) {
+        return m_notifications == notifications && notifications.getNotifications().size() == m_count;
+    }
+
+    /**
+     * Returns the notifications whose UEI matches the given UEI, in
+     * configuration order.
+     */
+    public List<Entry> getCandidates(final String uei) {
+        if (uei == null) {
+            return Collections.emptyList();
+        }
+        List<Entry> candidates = m_candidates.get(uei);
+        if (candidates == null) {
+            candidates = computeCandidates(uei);
+            if (m_candidates.size() >= MAX_MEMOIZED_UEIS) {
+                // UEIs are usually a small set; don't let events with generated UEIs fill the heap
+                m_candidates.clear();
+            }
+            m_candidates.put(uei, candidates);
+        }
+        return candidates;
+    }
+
+    public boolean hasUei(final String uei) {
+        return !getCandidates(uei).isEmpty();
+    }
+
+    private List<Entry> computeCandidates(final String uei) {
+        final List<Entry> exact = m_byUei.get(uei);
+        final List<Entry> candidates = new ArrayList<>();
+        int i = 0;
+        for (final Entry wildcard : m_wildcards) {
+            if (!wildcard.matchesUei(uei)) {
+                continue;
+            }
+            // merge both sorted lists to keep the configuration order
+            while (exact != null && i < exact.size() && exact.get(i).getPosition() < wildcard.getPosition()) {
+                candidates.add(exact.get(i++));
+            }
+            candidates.add(wildcard);
+        }
+        while (exact != null && i < exact.size()) {
+            candidates.add(exact.get(i++));
+        }
+        return candidates.isEmpty() ? Collections.<Entry>emptyList() : Collections.unmodifiableList(candidates);
+    }
+
+    /**
+     * A notification with its precompiled UEI, severity and varbind matchers.
+     */
+    public static class Entry {
+        private final int m_position;
+        private final Notification m_notification;
+        private final boolean m_matchAnyUei;
+        private final Pattern m_ueiPattern;
+        private final Pattern m_severityPattern;
+        private final String m_varbindName;
+        private final String m_varbindPrefix;
+        private final Pattern m_varbindPattern;
+
+        private Entry(final int position, final Notification notif) {
+            m_position = position;
+            m_notification = notif;
+
+            final String uei = notif.getUei();
+            m_matchAnyUei = MATCH_ANY_UEI.equals(uei);
+            m_ueiPattern = !m_matchAnyUei && uei != null && uei.length() > 0 && uei.charAt(0) == '~' ? Pattern.compile(uei.substring(1)) : null;
+            m_severityPattern = notif.getEventSeverity().isPresent() ? Pattern.compile(notif.getEventSeverity().get().toLowerCase()) : null;
+
+            final Varbind varbind = notif.getVarbind();
+            if (varbind == null || varbind.getVbname() == null || varbind.getVbvalue() == null) {
+                // a varbind without value always matches
+                m_varbindName = null;
+                m_varbindPrefix = null;
+                m_varbindPattern = null;
+            } else if (varbind.getVbvalue().length() > 0 && varbind.getVbvalue().charAt(0) == '~') {
+                m_varbindName = varbind.getVbname();
+                m_varbindPrefix = null;
+                m_varbindPattern = Pattern.compile(varbind.getVbvalue().substring(1));
+            } else {
+                m_varbindName = varbind.getVbname();
+                m_varbindPrefix = varbind.getVbvalue();
+                m_varbindPattern = null;
+            }
+        }
+
+        public int getPosition() {
+            return m_position;
+        }
+
+        public Notification getNotification() {
+            return m_notification;
+        }
+
+        private boolean isWildcard() {
+            return m_matchAnyUei || m_ueiPattern != null;
+        }
+
+        public boolean matchesUei(final String uei) {
+            if (m_matchAnyUei) {
+                return true;
+            } else if (m_ueiPattern != null) {
+                return m_ueiPattern.matcher(uei).matches();
+            }
+            return uei.equals(m_notification.getUei());
+        }
+
+        public boolean matchesSeverity(final String severity) {
+            if (m_severityPattern == null) {
+                return true;
+            }
+            return severity != null && m_severityPattern.matcher(severity.toLowerCase()).matches();
+        }
+
+        /**
+         * Same semantic as {@link NotifdConfigManager#matchNotificationParameters(Event, Notification)}.
+         */
+        public boolean matchesParameters(final Event event) {
+            if (m_varbindName == null) {
+                return true;
+            }
+            for (final Parm parm : event.getParmCollection()) {
+                if (parm.getValue() == null || parm.getValue().getContent() == null || !m_varbindName.equals(parm.getParmName())) {
+                    continue;
+                }
+                final String content = parm.getValue().getContent();
+                if (m_varbindPattern != null ? m_varbindPattern.matcher(content).matches() : content.startsWith(m_varbindPrefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
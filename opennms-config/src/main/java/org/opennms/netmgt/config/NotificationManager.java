@@ -49,7 +49,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
@@ -63,7 +66,6 @@ import org.opennms.netmgt.config.notifications.Notification;
 import org.opennms.netmgt.config.notifications.Notifications;
 import org.opennms.netmgt.config.notifications.Parameter;
 import org.opennms.netmgt.events.api.EventConstants;
-import org.opennms.netmgt.filter.FilterDaoFactory;
 import org.opennms.netmgt.filter.api.FilterParseException;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
@@ -101,6 +103,9 @@ public abstract class NotificationManager {
     private long m_binaryNoticesInterrupted = 0;
     private long m_javaNoticesInterrupted = 0;
     private long m_unknownNoticesInterrupted = 0;
+    private final AtomicLong m_noticesRetried = new AtomicLong();
+    private final AtomicLong m_noticesTimedOut = new AtomicLong();
+    private final Map<String, Long> m_noticeLateness = new ConcurrentHashMap<>();
     
     /**
      * 
@@ -148,6 +153,9 @@ public abstract class NotificationManager {
     NotifdConfigManager m_configManager;
     private DataSource m_dataSource;
 
+    private volatile NotificationIndex m_index;
+    private final NotificationRuleMembershipCache m_ruleMembershipCache = new NotificationRuleMembershipCache();
+
     /**
      * A parameter expansion algorithm, designed to replace strings delimited by
      * percent signs '%' with a value supplied by a Map object.
@@ -190,6 +198,7 @@ public abstract class NotificationManager {
     @Deprecated
     public synchronized void parseXML(final Reader reader) {
         m_notifications = JaxbUtils.unmarshal(Notifications.class, reader, true);
+        m_index = null;
         oldHeader = m_notifications.getHeader();
     }
 
@@ -203,6 +212,7 @@ public abstract class NotificationManager {
         try (final Reader reader = new InputStreamReader(stream)) {
             m_notifications = JaxbUtils.unmarshal(Notifications.class, reader, true);
         }
+        m_index = null;
         oldHeader = m_notifications.getHeader();
     }
 
@@ -216,18 +226,20 @@ public abstract class NotificationManager {
     public boolean hasUei(final String uei) throws IOException {
         update();
 
-        for (Notification notif : m_notifications.getNotifications()) {
-            if (uei.equals(notif.getUei()) || "MATCH-ANY-UEI".equals(notif.getUei())) {
-                return true;
-            } else if (notif.getUei().charAt(0) == '~') {
-                if (uei.matches(notif.getUei().substring(1))) {
-                    return true;
-                }
+        return getIndex().hasUei(uei);
+    }
 
-            }
+    /**
+     * Returns the index of the current configuration, building it if the
+     * configuration was reloaded or changed.
+     */
+    private NotificationIndex getIndex() {
+        NotificationIndex index = m_index;
+        if (index == null || !index.isBuiltFrom(m_notifications)) {
+            index = new NotificationIndex(m_notifications);
+            m_index = index;
         }
-
-        return false;
+        return index;
     }
 
     /**
@@ -253,27 +265,10 @@ public abstract class NotificationManager {
             return null;
         }
 
-        for (Notification curNotif : m_notifications.getNotifications()) {
-
-            LOG.trace("Checking notification {} against event {} with UEI {}", curNotif.getUei(), event.getDbid(), event.getUei());
-
-            if (event.getUei().equals(curNotif.getUei()) || "MATCH-ANY-UEI".equals(curNotif.getUei())) {
-                // Match!
-            	LOG.debug("Exact match using notification UEI {} for event UEI: {}", curNotif.getUei(), event.getUei());
-            } else if (curNotif.getUei().charAt(0) == '~') {
-                if (event.getUei().matches(curNotif.getUei().substring(1))) {
-                	//Match!
-                    LOG.debug("Regex hit using notification UEI {} for event UEI: {}", curNotif.getUei(), event.getUei());
-                } else {
-
-                    LOG.trace("Notification regex {} failed to match event UEI: {}", event.getUei(), curNotif.getUei());
-                    continue;
-                }
-            } else {
+        for (NotificationIndex.Entry entry : getIndex().getCandidates(event.getUei())) {
+            final Notification curNotif = entry.getNotification();
 
-                LOG.debug("Notification UEI {} did not match UEI of event {}: {}", curNotif.getUei(), event.getDbid(), event.getUei());
-                continue;
-            }
+            LOG.debug("UEI match using notification UEI {} for event {} with UEI {}", curNotif.getUei(), event.getDbid(), event.getUei());
 
             /**
              * Check if event severity matches pattern in notification
@@ -281,11 +276,7 @@ public abstract class NotificationManager {
 
             LOG.trace("Checking event severity: {} against notification severity: {}", curNotif.getEventSeverity().orElse(null), event.getSeverity());
             // parameter is optional, return true if not set
-            if (!curNotif.getEventSeverity().isPresent()) {
-                // Skip matching on severity
-            } else if (event.getSeverity().toLowerCase().matches(curNotif.getEventSeverity().get().toLowerCase())) {
-                // Severities match
-            } else {
+            if (!entry.matchesSeverity(event.getSeverity())) {
 
                 LOG.debug("Event severity: {} did not match notification severity: {}", curNotif.getEventSeverity().orElse(null), event.getSeverity());
                 continue;
@@ -298,14 +289,13 @@ public abstract class NotificationManager {
             // Then the service has to match if configured, the interface if configured, and the node if configured.
 
             if (curNotif.getStatus().equals("on")) {
-                if (nodeInterfaceServiceValid(curNotif, event)) {
-                    boolean parmsmatched = getConfigManager().matchNotificationParameters(event, curNotif);
-
-                    if (!parmsmatched) {
+                // the precompiled varbind matcher is cheaper than the filter rule, check it first
+                if (!entry.matchesParameters(event)) {
 
-                        LOG.debug("Event {} did not match parameters for notice {}", event.getUei(), curNotif.getName());
-                        continue;
-                    }
+                    LOG.debug("Event {} did not match parameters for notice {}", event.getUei(), curNotif.getName());
+                    continue;
+                }
+                if (nodeInterfaceServiceValid(curNotif, event)) {
                     // Add this notification to the return value
                     notifList.add(curNotif);
 
@@ -369,6 +359,16 @@ public abstract class NotificationManager {
             return true;
         }
 
+        if (event.getNodeid() != 0 && (event.getInterface() == null || "0.0.0.0".equals(event.getInterface()))) {
+            // node only: check the node against the cached members of the rule
+            try {
+                return m_ruleMembershipCache.isNodeMatching(notif.getRule(), event.getNodeid().intValue());
+            } catch (FilterParseException e) {
+                LOG.error("Invalid filter rule for notification {}: {}", notif.getName(), notif.getRule(), e);
+                throw e;
+            }
+        }
+
         final StringBuilder constraints = new StringBuilder();
         if (event.getNodeid() != 0) {
             constraints.append(" & (nodeId == " + event.getNodeid() + ")");
@@ -387,9 +387,22 @@ public abstract class NotificationManager {
         return isRuleMatchingFilter(notif, rule);
     }
 
+    /**
+     * Drops the cached evaluation of the notification rules when the event
+     * changes the nodes, interfaces or services the rules are evaluated
+     * against.
+     *
+     * @param event a {@link org.opennms.netmgt.xml.event.Event} object.
+     */
+    public void handleInventoryEvent(final Event event) {
+        if (event != null && m_ruleMembershipCache.handleEvent(event.getUei())) {
+            LOG.debug("Event {} changed the inventory, cleared the notification rules cache.", event.getUei());
+        }
+    }
+
     private boolean isRuleMatchingFilter(final Notification notif, final String rule) {
         try {
-            return FilterDaoFactory.getInstance().isRuleMatching(rule);
+            return m_ruleMembershipCache.isRuleMatching(rule);
         } catch (FilterParseException e) {
             LOG.error("Invalid filter rule for notification {}: {}", notif.getName(), notif.getRule(), e);
             throw e;
@@ -1121,6 +1134,7 @@ public abstract class NotificationManager {
         // isn't lost if the XML from the marshal is hosed.
         final String xmlString = JaxbUtils.marshal(m_notifications);
         saveXML(xmlString);
+        m_index = null;
 
         update();
     }
@@ -1340,6 +1354,22 @@ public abstract class NotificationManager {
     public void incrementUnknownInterrupted() {
         m_unknownNoticesInterrupted++;
     }
+
+    public void incrementRetried(long retries) {
+        m_noticesRetried.addAndGet(retries);
+    }
+
+    public void incrementTimedOut() {
+        m_noticesTimedOut.incrementAndGet();
+    }
+
+    /**
+     * Records how late, in milliseconds, the last notice of the destination
+     * path was started compared to its scheduled send time.
+     */
+    public void updateNoticeLateness(String destinationPath, long lateness) {
+        m_noticeLateness.put(destinationPath == null ? "unknown" : destinationPath, Math.max(0, lateness));
+    }
     
     public long getNotificationTasksQueued() {
         return m_notifTasksQueued;
@@ -1380,4 +1410,32 @@ public abstract class NotificationManager {
     public long getUnknownNoticesInterrupted() {
         return m_unknownNoticesInterrupted;
     }
+
+    public long getNoticesRetried() {
+        return m_noticesRetried.get();
+    }
+
+    public long getNoticesTimedOut() {
+        return m_noticesTimedOut.get();
+    }
+
+    /**
+     * @return the lateness in milliseconds of the last notice started for
+     * each destination path.
+     */
+    public Map<String, Long> getNoticeLateness() {
+        return Collections.unmodifiableMap(new TreeMap<String, Long>(m_noticeLateness));
+    }
+
+    /**
+     * @return the highest lateness in milliseconds of the last notices of the
+     * destination paths.
+     */
+    public long getMaxNoticeLateness() {
+        long max = 0;
+        for (final Long lateness : m_noticeLateness.values()) {
+            max = Math.max(max, lateness);
+        }
+        return max;
+    }
 }
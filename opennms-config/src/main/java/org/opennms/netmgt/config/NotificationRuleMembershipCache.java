@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.config;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.filter.FilterDaoFactory;
+import org.opennms.netmgt.filter.api.FilterParseException;
+
+/**
+ * Caches the evaluation of the notification filter rules against the
+ * inventory.
+ *
+ * For events with only a node, the nodes matching a rule are loaded once with
+ * a single query and kept as a bitset, so checking a node is a bit lookup.
+ * Events with an interface or a service are memoized by their complete rule.
+ *
+ * The content is dropped when an event changing the inventory is received
+ * (see {@link #INVENTORY_EVENT_UEIS}) and at least every
+ * <code>org.opennms.notifd.ruleMembershipCacheTtl</code> milliseconds (5
+ * minutes by default, 0 disables the cache) to cover changes made without
+ * events. Rules that fail to parse are never cached.
+ */
+public class NotificationRuleMembershipCache {
+
+    public static final String TTL_PROPERTY = "org.opennms.notifd.ruleMembershipCacheTtl";
+
+    public static final Set<String> INVENTORY_EVENT_UEIS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            EventConstants.NODE_ADDED_EVENT_UEI,
+            EventConstants.NODE_DELETED_EVENT_UEI,
+            EventConstants.NODE_UPDATED_EVENT_UEI,
+            EventConstants.NODE_LABEL_CHANGED_EVENT_UEI,
+            EventConstants.NODE_INFO_CHANGED_EVENT_UEI,
+            EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI,
+            EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI,
+            EventConstants.INTERFACE_DELETED_EVENT_UEI,
+            EventConstants.INTERFACE_REPARENTED_EVENT_UEI,
+            EventConstants.PRIMARY_SNMP_INTERFACE_CHANGED_EVENT_UEI,
+            EventConstants.NODE_GAINED_SERVICE_EVENT_UEI,
+            EventConstants.SERVICE_DELETED_EVENT_UEI,
+            EventConstants.SERVICE_UNMANAGED_EVENT_UEI,
+            EventConstants.ASSET_INFO_CHANGED_EVENT_UEI)));
+
+    private static final int MAX_MEMOIZED_RULES = 10000;
+
+    private final long m_ttl;
+    private final Map<String, BitSet> m_nodes = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> m_rules = new ConcurrentHashMap<>();
+    private volatile long m_lastClear = System.currentTimeMillis();
+    private final AtomicLong m_generation = new AtomicLong();
+
+    public NotificationRuleMembershipCache() {
+        this(Long.getLong(TTL_PROPERTY, 300000L));
+    }
+
+    public NotificationRuleMembershipCache(final long ttl) {
+        m_ttl = ttl;
+    }
+
+    public boolean isEnabled() {
+        return m_ttl > 0;
+    }
+
+    /**
+     * @return true if the node matches the notification rule, same as
+     * <code>isRuleMatching("((" + rule + ") &amp; (nodeId == " + nodeId + "))")</code>
+     */
+    public boolean isNodeMatching(final String rule, final int nodeId) throws FilterParseException {
+        if (!isEnabled()) {
+            return FilterDaoFactory.getInstance().isRuleMatching("((" + rule + ") & (nodeId == " + nodeId + "))");
+        }
+        expire();
+        BitSet nodes = m_nodes.get(rule);
+        if (nodes == null) {
+            final long generation = m_generation.get();
+            nodes = new BitSet();
+            for (final Integer id : FilterDaoFactory.getInstance().getNodeMap(rule).keySet()) {
+                nodes.set(id);
+            }
+            if (m_nodes.size() >= MAX_MEMOIZED_RULES) {
+                m_nodes.clear();
+            }
+            // don't store a result computed before the inventory changed
+            if (generation == m_generation.get()) {
+                m_nodes.put(rule, nodes);
+            }
+        }
+        return nodeId >= 0 && nodes.get(nodeId);
+    }
+
+    /**
+     * @return the memoized result of {@link org.opennms.netmgt.filter.api.FilterDao#isRuleMatching(String)}
+     */
+    public boolean isRuleMatching(final String rule) throws FilterParseException {
+        if (!isEnabled()) {
+            return FilterDaoFactory.getInstance().isRuleMatching(rule);
+        }
+        expire();
+        Boolean matching = m_rules.get(rule);
+        if (matching == null) {
+            final long generation = m_generation.get();
+            matching = FilterDaoFactory.getInstance().isRuleMatching(rule);
+            if (m_rules.size() >= MAX_MEMOIZED_RULES) {
+                m_rules.clear();
+            }
+            if (generation == m_generation.get()) {
+                m_rules.put(rule, matching);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Drops the cache if the event changes the inventory.
+     *
+     * @return true if the cache was cleared
+     */
+    public boolean handleEvent(final String uei) {
+        if (uei != null && INVENTORY_EVENT_UEIS.contains(uei)) {
+            clear();
+            return true;
+        }
+        return false;
+    }
+
+    public void clear() {
+        m_generation.incrementAndGet();
+        m_lastClear = System.currentTimeMillis();
+        m_nodes.clear();
+        m_rules.clear();
+    }
+
+    private void expire() {
+        if (System.currentTimeMillis() - m_lastClear > m_ttl) {
+            clear();
+        }
+    }
+}
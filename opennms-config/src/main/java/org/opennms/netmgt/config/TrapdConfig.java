@@ -81,6 +81,16 @@ public interface TrapdConfig {
      */
     int getBatchIntervalMs();
 
+    /**
+     * Number of threads used for receiving and decoding traps.
+     *
+     * When greater than 0, traps are received on that many sockets
+     * instead of the single threaded SNMP4J listener.
+     *
+     * @return number of threads, or 0 for the SNMP4J listener
+     */
+    int getReceiveThreads();
+
     void update(TrapdConfig config);
 
     boolean shouldUseAddressFromVarbind();
@@ -222,6 +222,11 @@ public final class TrapdConfigFactory implements TrapdConfig {
         return m_config.getBatchInterval();
     }
 
+    @Override
+    public int getReceiveThreads() {
+        return m_config.getReceiveThreads();
+    }
+
     @Override
     public boolean shouldUseAddressFromVarbind() {
         return m_config.shouldUseAddressFromVarbind();
@@ -236,6 +241,7 @@ public final class TrapdConfigFactory implements TrapdConfig {
         m_config.setBatchSize(config.getBatchSize());
         m_config.setBatchInterval(config.getBatchIntervalMs());
         m_config.setThreads(config.getNumThreads());
+        m_config.setReceiveThreads(config.getReceiveThreads());
         m_config.setIncludeRawMessage(config.isIncludeRawMessage());
 
         final List<Snmpv3User> snmpv3Users = config.getSnmpV3Users().stream().map(u -> {
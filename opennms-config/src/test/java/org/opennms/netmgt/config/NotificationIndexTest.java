@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.netmgt.config.notifications.Notification;
+import org.opennms.netmgt.config.notifications.Notifications;
+import org.opennms.netmgt.config.notifications.Varbind;
+import org.opennms.netmgt.filter.FilterDaoFactory;
+import org.opennms.netmgt.filter.api.FilterDao;
+import org.opennms.netmgt.filter.api.FilterParseException;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+
+public class NotificationIndexTest {
+
+    @After
+    public void tearDown() {
+        FilterDaoFactory.setInstance(null);
+    }
+
+    @Test
+    public void testCandidatesKeepConfigurationOrder() {
+        Notifications notifications = new Notifications();
+        notifications.addNotification(notification("any", "MATCH-ANY-UEI"));
+        notifications.addNotification(notification("down", "uei.opennms.org/nodes/nodeDown"));
+        notifications.addNotification(notification("regex", "~uei.opennms.org/nodes/node.*"));
+        notifications.addNotification(notification("up", "uei.opennms.org/nodes/nodeUp"));
+        notifications.addNotification(notification("down2", "uei.opennms.org/nodes/nodeDown"));
+        notifications.addNotification(notification("bogus", "~uei.opennms.org/(nodes"));
+
+        NotificationIndex index = new NotificationIndex(notifications);
+        assertEquals("[any, down, regex, down2]", names(index.getCandidates("uei.opennms.org/nodes/nodeDown")));
+        assertEquals("[any, regex, up]", names(index.getCandidates("uei.opennms.org/nodes/nodeUp")));
+        assertEquals("[any]", names(index.getCandidates("uei.opennms.org/internal/test")));
+        assertTrue(index.hasUei("uei.opennms.org/internal/test"));
+
+        assertTrue(index.isBuiltFrom(notifications));
+        notifications.addNotification(notification("new", "uei.opennms.org/internal/test"));
+        assertFalse(index.isBuiltFrom(notifications));
+        assertFalse(index.isBuiltFrom(new Notifications()));
+    }
+
+    @Test
+    public void testSeverityAndVarbindMatchers() {
+        Notification severity = notification("severity", "uei.opennms.org/test");
+        severity.setEventSeverity("Major|Critical");
+        Notification prefix = notification("prefix", "uei.opennms.org/test");
+        prefix.setVarbind(varbind("ifDescr", "eth"));
+        Notification regex = notification("regex", "uei.opennms.org/test");
+        regex.setVarbind(varbind("ifDescr", "~.*[0-9]/[0-9]+"));
+        Notification noValue = notification("noValue", "uei.opennms.org/test");
+        noValue.setVarbind(varbind("ifDescr", null));
+
+        Notifications notifications = new Notifications();
+        notifications.addNotification(severity);
+        notifications.addNotification(prefix);
+        notifications.addNotification(regex);
+        notifications.addNotification(noValue);
+        List<NotificationIndex.Entry> entries = new NotificationIndex(notifications).getCandidates("uei.opennms.org/test");
+        assertEquals(4, entries.size());
+
+        assertTrue(entries.get(0).matchesSeverity("CRITICAL"));
+        assertFalse(entries.get(0).matchesSeverity("Minor"));
+        assertFalse(entries.get(0).matchesSeverity(null));
+        assertTrue(entries.get(1).matchesSeverity("Minor"));
+
+        Event eth = new EventBuilder("uei.opennms.org/test", "test").addParam("ifDescr", "eth0").getEvent();
+        Event gi = new EventBuilder("uei.opennms.org/test", "test").addParam("ifDescr", "GigabitEthernet0/12").getEvent();
+        Event none = new EventBuilder("uei.opennms.org/test", "test").getEvent();
+        assertTrue(entries.get(1).matchesParameters(eth));
+        assertFalse(entries.get(1).matchesParameters(gi));
+        assertFalse(entries.get(2).matchesParameters(eth));
+        assertTrue(entries.get(2).matchesParameters(gi));
+        assertFalse(entries.get(2).matchesParameters(none));
+        assertTrue(entries.get(3).matchesParameters(none));
+        assertTrue(entries.get(0).matchesParameters(none));
+    }
+
+    @Test
+    public void testRuleMembershipCache() {
+        CountingFilterDao filterDao = new CountingFilterDao();
+        filterDao.m_nodes.put(1, "node1");
+        filterDao.m_nodes.put(3, "node3");
+        FilterDaoFactory.setInstance(filterDao);
+
+        NotificationRuleMembershipCache cache = new NotificationRuleMembershipCache(60000);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(cache.isNodeMatching("IPADDR != '0.0.0.0'", 1));
+            assertFalse(cache.isNodeMatching("IPADDR != '0.0.0.0'", 2));
+            assertTrue(cache.isNodeMatching("IPADDR != '0.0.0.0'", 3));
+            assertTrue(cache.isRuleMatching("((IPADDR != '0.0.0.0') & (ipAddr == '10.0.0.1'))"));
+        }
+        assertEquals(1, filterDao.m_nodeMapQueries);
+        assertEquals(1, filterDao.m_ruleQueries);
+
+        // the cache is dropped when the inventory changes
+        assertFalse(cache.handleEvent("uei.opennms.org/nodes/nodeDown"));
+        assertTrue(cache.handleEvent("uei.opennms.org/nodes/nodeAdded"));
+        filterDao.m_nodes.put(2, "node2");
+        assertTrue(cache.isNodeMatching("IPADDR != '0.0.0.0'", 2));
+        assertEquals(2, filterDao.m_nodeMapQueries);
+
+        // failures are not cached
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.isNodeMatching("bogus", 1);
+            } catch (FilterParseException e) {
+                // expected
+            }
+        }
+        assertEquals(4, filterDao.m_nodeMapQueries);
+
+        // disabled
+        NotificationRuleMembershipCache disabled = new NotificationRuleMembershipCache(0);
+        disabled.isNodeMatching("IPADDR != '0.0.0.0'", 1);
+        disabled.isNodeMatching("IPADDR != '0.0.0.0'", 1);
+        assertEquals(3, filterDao.m_ruleQueries);
+    }
+
+    private static Notification notification(String name, String uei) {
+        Notification notif = new Notification();
+        notif.setName(name);
+        notif.setStatus("on");
+        notif.setUei(uei);
+        notif.setRule("IPADDR != '0.0.0.0'");
+        return notif;
+    }
+
+    private static Varbind varbind(String name, String value) {
+        Varbind varbind = new Varbind();
+        varbind.setVbname(name);
+        if (value != null) {
+            varbind.setVbvalue(value);
+        }
+        return varbind;
+    }
+
+    private static String names(List<NotificationIndex.Entry> entries) {
+        List<String> names = new ArrayList<>();
+        for (NotificationIndex.Entry entry : entries) {
+            names.add(entry.getNotification().getName());
+        }
+        return names.toString();
+    }
+
+    private static class CountingFilterDao implements FilterDao {
+        private final SortedMap<Integer, String> m_nodes = new TreeMap<>();
+        private int m_nodeMapQueries = 0;
+        private int m_ruleQueries = 0;
+
+        @Override
+        public SortedMap<Integer, String> getNodeMap(String rule) throws FilterParseException {
+            m_nodeMapQueries++;
+            if ("bogus".equals(rule)) {
+                throw new FilterParseException("bogus rule");
+            }
+            return new TreeMap<>(m_nodes);
+        }
+
+        @Override
+        public boolean isRuleMatching(String rule) throws FilterParseException {
+            m_ruleQueries++;
+            return true;
+        }
+
+        @Override
+        public Map<InetAddress, Set<String>> getIPAddressServiceMap(String rule) throws FilterParseException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void flushActiveIpAddressListCache() {
+        }
+
+        @Override
+        public List<InetAddress> getActiveIPAddressList(String rule) throws FilterParseException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<InetAddress> getIPAddressList(String rule) throws FilterParseException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isValid(String addr, String rule) throws FilterParseException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void validateRule(String rule) throws FilterParseException {
+        }
+    }
+}
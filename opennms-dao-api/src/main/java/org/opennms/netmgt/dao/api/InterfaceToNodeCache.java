@@ -30,6 +30,7 @@ package org.opennms.netmgt.dao.api;
 
 import java.net.InetAddress;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface InterfaceToNodeCache {
 
@@ -41,6 +42,11 @@ public interface InterfaceToNodeCache {
 
 	boolean removeNodeId(String location, InetAddress ipAddr, int nodeId);
 
+	/**
+	 * Removes all the addresses of the given node, at every location.
+	 */
+	void removeNode(int nodeId);
+
 	int size();
 
 	/**
@@ -50,4 +56,10 @@ public interface InterfaceToNodeCache {
 
 	Optional<Integer> getFirstNodeId(String location, InetAddress ipAddr);
 
+	/**
+	 * Invokes the given consumer with every managed address at the given location.
+	 * The consumer must not call back into the cache.
+	 */
+	void forEachAddress(String location, Consumer<InetAddress> consumer);
+
 }
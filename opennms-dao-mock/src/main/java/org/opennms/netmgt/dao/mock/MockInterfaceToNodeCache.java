@@ -30,6 +30,7 @@ package org.opennms.netmgt.dao.mock;
 
 import java.net.InetAddress;
 import java.util.Collections;
+import java.util.function.Consumer;
 
 import org.opennms.netmgt.dao.api.AbstractInterfaceToNodeCache;
 
@@ -45,11 +46,17 @@ public class MockInterfaceToNodeCache extends AbstractInterfaceToNodeCache {
         return false;
     }
 
+    @Override
+    public void removeNode(int nodeId) {}
+
     @Override
     public Iterable<Integer> getNodeId(String location, InetAddress ipAddr) {
         return Collections.emptySet();
     }
 
+    @Override
+    public void forEachAddress(String location, Consumer<InetAddress> consumer) {}
+
     @Override
     public void dataSourceSync() {}
 
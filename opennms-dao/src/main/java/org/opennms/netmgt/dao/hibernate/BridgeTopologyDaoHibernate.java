@@ -41,6 +41,7 @@ import org.opennms.netmgt.dao.api.BridgeBridgeLinkDao;
 import org.opennms.netmgt.dao.api.BridgeMacLinkDao;
 import org.opennms.netmgt.dao.api.BridgeTopologyDao;
 import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.dao.support.BatchUpsertTemplate;
 import org.opennms.netmgt.dao.support.UpsertTemplate;
 import org.opennms.netmgt.model.BridgeBridgeLink;
 import org.opennms.netmgt.model.BridgeMacLink;
@@ -97,13 +98,14 @@ public class BridgeTopologyDaoHibernate implements BridgeTopologyDao {
                 continue;
             for (BridgeMacLink forward: forwarders) {
                 forward.setBridgeMacLinkLastPollTime(new Date());
-                saveBridgeMacLink(forward);
             }
+            saveBridgeMacLinks(nodeId, forwarders);
         }
     }
     
     @Override 
     public void save(BroadcastDomain domain) {
+        Map<Integer, List<BridgeMacLink>> macLinksByNode = new HashMap<Integer, List<BridgeMacLink>>();
         for (SharedSegment segment : domain.getTopology()) {
             //FIXME why I can have a segment without a designated port?
             if (!segment.hasDesignatedBridgeport())
@@ -114,46 +116,55 @@ public class BridgeTopologyDaoHibernate implements BridgeTopologyDao {
             }
             for (BridgeMacLink link : segment.getBridgeMacLinks()) {
                 link.setBridgeMacLinkLastPollTime(new Date());
-                saveBridgeMacLink(link);
+                if (!macLinksByNode.containsKey(link.getNode().getId()))
+                    macLinksByNode.put(link.getNode().getId(), new ArrayList<BridgeMacLink>());
+                macLinksByNode.get(link.getNode().getId()).add(link);
             }
         }
+        // one bulk upsert for each bridge instead of one transaction for each mac
+        for (Map.Entry<Integer, List<BridgeMacLink>> entry : macLinksByNode.entrySet()) {
+            saveBridgeMacLinks(entry.getKey(), entry.getValue());
+        }
     }
 
     @Transactional
-    protected void saveBridgeMacLink(final BridgeMacLink saveMe) {
-        new UpsertTemplate<BridgeMacLink, BridgeMacLinkDao>(
-                                                            m_transactionManager,
-                                                            m_bridgeMacLinkDao) {
+    protected void saveBridgeMacLinks(final Integer nodeId, final List<BridgeMacLink> links) {
+        final OnmsNode node = m_nodeDao.get(nodeId);
+        if (node == null) {
+            LOG.warn("saveBridgeMacLinks: node [{}] not found, skipping {} bridge mac links", nodeId, links.size());
+            return;
+        }
+        new BatchUpsertTemplate<BridgeMacLink, String, BridgeMacLinkDao>(
+                                                                         m_transactionManager,
+                                                                         m_bridgeMacLinkDao) {
+
+            @Override
+            protected List<BridgeMacLink> query() {
+                return m_dao.findByNodeId(nodeId);
+            }
 
             @Override
-            protected BridgeMacLink query() {
-                return m_dao.getByNodeIdBridgePortMac(saveMe.getNode().getId(),
-                                                      saveMe.getBridgePort(),
-                                                      saveMe.getMacAddress());
+            protected String getKey(BridgeMacLink link) {
+                return link.getBridgePort() + ":" + link.getMacAddress();
             }
 
             @Override
-            protected BridgeMacLink doUpdate(BridgeMacLink link) {
+            protected BridgeMacLink doUpdate(BridgeMacLink link, BridgeMacLink saveMe) {
                 link.merge(saveMe);
                 m_dao.update(link);
-                m_dao.flush();
                 return link;
             }
 
             @Override
-            protected BridgeMacLink doInsert() {
-                final OnmsNode node = m_nodeDao.get(saveMe.getNode().getId());
-                if (node == null)
-                    return null;
+            protected BridgeMacLink doInsert(BridgeMacLink saveMe) {
                 saveMe.setNode(node);
                 if (saveMe.getBridgeMacLinkLastPollTime() == null)
                     saveMe.setBridgeMacLinkLastPollTime(saveMe.getBridgeMacLinkCreateTime());
                 m_dao.saveOrUpdate(saveMe);
-                m_dao.flush();
                 return saveMe;
             }
 
-        }.execute();
+        }.execute(links);
     }
 
     @Transactional
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.support;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opennms.netmgt.dao.api.OnmsDao;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * A bulk version of the {@link UpsertTemplate}.
+ *
+ * Instead of one transaction, one query and one flush for every object, the
+ * existing objects of the whole batch (typically all the links of a node) are
+ * loaded with a single query and indexed by a natural key. Every scanned
+ * object is then either merged into the matching database object or inserted,
+ * and the session is flushed once at the end of the batch.
+ *
+ * As in the {@link UpsertTemplate} the table is locked before inserting and the
+ * existing objects are queried again, so that objects inserted concurrently
+ * while waiting for the lock are updated instead of duplicated.
+ *
+ * @param <T> the persistent type
+ * @param <K> the natural key of the persistent type
+ * @param <D> the dao
+ */
+public abstract class BatchUpsertTemplate<T, K, D extends OnmsDao<T, ?>> {
+    protected final PlatformTransactionManager m_transactionManager;
+    protected final D m_dao;
+
+    public BatchUpsertTemplate(PlatformTransactionManager transactionManager, D dao) {
+        m_transactionManager = transactionManager;
+        m_dao = dao;
+    }
+
+    /**
+     * Upserts all the objects in one transaction and returns the persisted
+     * objects. Null objects, and objects for which {@link #doInsert(Object)}
+     * returns null, are skipped.
+     */
+    public List<T> execute(final Collection<T> scanned) {
+        if (scanned == null || scanned.isEmpty()) {
+            return new ArrayList<T>(0);
+        }
+        TransactionTemplate template = new TransactionTemplate(m_transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRED);
+        return template.execute(new TransactionCallback<List<T>>() {
+
+            @Override
+            public List<T> doInTransaction(TransactionStatus status) {
+                return doUpsert(scanned);
+            }
+        });
+    }
+
+    private List<T> doUpsert(Collection<T> scanned) {
+        final List<T> persisted = new ArrayList<T>(scanned.size());
+        final List<T> toInsert = new ArrayList<T>();
+
+        Map<K, T> existing = index(query());
+        for (T scannedObj : scanned) {
+            if (scannedObj == null) {
+                continue;
+            }
+            T dbObj = existing.get(getKey(scannedObj));
+            if (dbObj != null) {
+                persisted.add(doUpdate(dbObj, scannedObj));
+            } else {
+                toInsert.add(scannedObj);
+            }
+        }
+
+        if (!toInsert.isEmpty()) {
+            // lock the table since we are about to insert and don't want it inserted
+            m_dao.lock();
+
+            // make sure nothing was inserted while we waited for the lock
+            existing = index(query());
+            for (T scannedObj : toInsert) {
+                T dbObj = existing.get(getKey(scannedObj));
+                if (dbObj != null) {
+                    persisted.add(doUpdate(dbObj, scannedObj));
+                    continue;
+                }
+                T inserted = doInsert(scannedObj);
+                if (inserted != null) {
+                    // duplicated keys within the batch must update the object just inserted
+                    existing.put(getKey(inserted), inserted);
+                    persisted.add(inserted);
+                }
+            }
+        }
+        m_dao.flush();
+        return persisted;
+    }
+
+    private Map<K, T> index(List<T> dbObjs) {
+        final Map<K, T> index = new HashMap<K, T>();
+        if (dbObjs != null) {
+            for (T dbObj : dbObjs) {
+                index.put(getKey(dbObj), dbObj);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Override this method to load all the existing objects that may match
+     * the batch, e.g. all the links of the node.
+     */
+    protected abstract List<T> query();
+
+    /**
+     * Override this method to return the natural key used to match scanned and
+     * existing objects. The key must implement equals and hashCode.
+     */
+    protected abstract K getKey(T obj);
+
+    /**
+     * Override this method to merge the scanned object into the existing one.
+     * The session is flushed at the end of the batch.
+     */
+    protected abstract T doUpdate(T dbObj, T scannedObj);
+
+    /**
+     * Override this method to insert the scanned object. Return null to skip
+     * the object. The session is flushed at the end of the batch.
+     */
+    protected abstract T doInsert(T scannedObj);
+
+}
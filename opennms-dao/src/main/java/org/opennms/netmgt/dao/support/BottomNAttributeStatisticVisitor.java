@@ -41,6 +41,10 @@ import org.springframework.util.Assert;
 /**
  * <p>BottomNAttributeStatisticVisitor class.</p>
  *
+ * Only the best {@link #getCount()} statistics are retained while visiting,
+ * so the memory used by a report does not depend on the number of attributes
+ * that are visited. The visitor can be shared by concurrent fetch workers.
+ *
  * @author <a href="mailto:dj@opennms.org">DJ Gregor</a>
  * @version $Id: $
  */
@@ -59,10 +63,15 @@ public class BottomNAttributeStatisticVisitor implements AttributeStatisticVisit
 
     /** {@inheritDoc} */
     @Override
-    public void visit(OnmsAttribute attribute, double statistic) {
+    public synchronized void visit(OnmsAttribute attribute, double statistic) {
         Assert.notNull(attribute, "attribute argument must not be null");
         
         m_results.add(new AttributeStatistic(attribute, statistic));
+
+        // drop the statistic that can no longer make it in the results
+        if (m_count != null && m_results.size() > Math.max(m_count, 1)) {
+            m_results.remove(m_results.last());
+        }
     }
 
     /**
@@ -97,7 +106,7 @@ public class BottomNAttributeStatisticVisitor implements AttributeStatisticVisit
      * @return top attribute statistics (up to getCount() number)
      */
     @Override
-    public SortedSet<AttributeStatistic> getResults() {
+    public synchronized SortedSet<AttributeStatistic> getResults() {
         SortedSet<AttributeStatistic> top = new TreeSet<AttributeStatistic>(new AttributeStatisticComparator());
         
         for (AttributeStatistic stat : m_results) {
@@ -0,0 +1,381 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.dao.support;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.opennms.core.utils.LocationUtils;
+import org.opennms.netmgt.model.PrimaryType;
+
+/**
+ * Index of the managed IP addresses of every location and the nodes they
+ * belong to, used by the InterfaceToNodeCache.
+ *
+ * The addresses of a location are stored in two immutable path-compressed
+ * binary radix trees (PATRICIA tries), one for IPv4 and one for IPv6, keyed by
+ * the bits of the address. An update copies the path from the root to the
+ * modified leaf and publishes the new root, so lookups never lock and always
+ * see a consistent tree. Updates are serialized on the index.
+ *
+ * Looking up an IPv4 address does not allocate: the key is the value returned
+ * by {@link Inet4Address#hashCode()}, which is the address itself, and the
+ * leaves hold the immutable list of node ids that is returned to the caller.
+ */
+public class InterfaceToNodeIndex {
+
+    private static final List<PrimaryType> REMOVAL_ORDER = Arrays.asList(PrimaryType.PRIMARY, PrimaryType.SECONDARY, PrimaryType.NOT_ELIGIBLE);
+
+    private final Map<String, LocationTrees> m_treesByLocation = new ConcurrentHashMap<>();
+
+    private volatile int m_size = 0;
+
+    /**
+     * Returns the ids of the nodes that have the given address at the given
+     * location, sorted by the management priority of their interface.
+     */
+    public List<Integer> getNodeIds(final String location, final InetAddress address) {
+        final Leaf leaf = find(location, address);
+        return leaf != null ? leaf.nodeIds : Collections.emptyList();
+    }
+
+    public Optional<Integer> getFirstNodeId(final String location, final InetAddress address) {
+        final Leaf leaf = find(location, address);
+        return leaf != null ? leaf.firstNodeId : Optional.empty();
+    }
+
+    public synchronized boolean add(final String location, final InetAddress address, final int nodeId, final PrimaryType type) {
+        final LocationTrees trees = m_treesByLocation.computeIfAbsent(LocationUtils.getEffectiveLocationName(location), l -> new LocationTrees());
+        final Value value = new Value(nodeId, type != null ? type : PrimaryType.NOT_ELIGIBLE);
+        final Leaf leaf = trees.get(address);
+
+        final Value[] values;
+        if (leaf == null) {
+            values = new Value[] { value };
+        } else {
+            int index = Arrays.binarySearch(leaf.values, value);
+            if (index >= 0) {
+                return false;
+            }
+            index = -(index + 1);
+            values = new Value[leaf.values.length + 1];
+            System.arraycopy(leaf.values, 0, values, 0, index);
+            values[index] = value;
+            System.arraycopy(leaf.values, index, values, index + 1, leaf.values.length - index);
+        }
+        trees.put(address, values);
+        m_size++;
+        return true;
+    }
+
+    public synchronized boolean remove(final String location, final InetAddress address, final int nodeId) {
+        final LocationTrees trees = m_treesByLocation.get(LocationUtils.getEffectiveLocationName(location));
+        if (trees == null) {
+            return false;
+        }
+        final Leaf leaf = trees.get(address);
+        if (leaf == null) {
+            return false;
+        }
+        for (final PrimaryType type : REMOVAL_ORDER) {
+            final int index = Arrays.binarySearch(leaf.values, new Value(nodeId, type));
+            if (index >= 0) {
+                final Value[] values = new Value[leaf.values.length - 1];
+                System.arraycopy(leaf.values, 0, values, 0, index);
+                System.arraycopy(leaf.values, index + 1, values, index, values.length - index);
+                trees.put(address, values);
+                m_size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes all the addresses of the given node, at every location.
+     *
+     * @return the number of removed entries
+     */
+    public synchronized int removeNode(final int nodeId) {
+        int removed = 0;
+        for (final Map.Entry<String, LocationTrees> entry : m_treesByLocation.entrySet()) {
+            final List<InetAddress> addresses = new ArrayList<>();
+            entry.getValue().forEachLeaf(leaf -> {
+                for (final Value value : leaf.values) {
+                    if (value.nodeId == nodeId) {
+                        addresses.add(leaf.address);
+                        return;
+                    }
+                }
+            });
+            for (final InetAddress address : addresses) {
+                while (remove(entry.getKey(), address, nodeId)) {
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Invokes the given consumer with every address at the given location. The
+     * addresses are the ones of the trees at the time of the call.
+     */
+    public void forEachAddress(final String location, final Consumer<InetAddress> consumer) {
+        final LocationTrees trees = m_treesByLocation.get(LocationUtils.getEffectiveLocationName(location));
+        if (trees != null) {
+            trees.forEachLeaf(leaf -> consumer.accept(leaf.address));
+        }
+    }
+
+    /**
+     * Returns the number of (address, node) entries.
+     */
+    public int size() {
+        return m_size;
+    }
+
+    public synchronized void clear() {
+        m_treesByLocation.clear();
+        m_size = 0;
+    }
+
+    private Leaf find(final String location, final InetAddress address) {
+        if (address == null) {
+            return null;
+        }
+        final LocationTrees trees = m_treesByLocation.get(LocationUtils.getEffectiveLocationName(location));
+        if (trees == null) {
+            return null;
+        }
+        return trees.get(address);
+    }
+
+    private static class LocationTrees {
+        private volatile Node m_ipv4Root;
+        private volatile Node m_ipv6Root;
+
+        private Leaf get(final InetAddress address) {
+            if (address instanceof Inet4Address) {
+                return lookup(m_ipv4Root, 0L, address.hashCode() & 0xffffffffL);
+            }
+            final byte[] bytes = address.getAddress();
+            return lookup(m_ipv6Root, toLong(bytes, 0), toLong(bytes, 8));
+        }
+
+        private void put(final InetAddress address, final Value[] values) {
+            final byte[] bytes = address.getAddress();
+            if (address instanceof Inet4Address) {
+                final long lo = ((bytes[0] & 0xffL) << 24) | ((bytes[1] & 0xffL) << 16) | ((bytes[2] & 0xffL) << 8) | (bytes[3] & 0xffL);
+                m_ipv4Root = values.length == 0 ? delete(m_ipv4Root, 0L, lo) : insert(m_ipv4Root, new Leaf(0L, lo, address, values));
+            } else {
+                final long hi = toLong(bytes, 0);
+                final long lo = toLong(bytes, 8);
+                m_ipv6Root = values.length == 0 ? delete(m_ipv6Root, hi, lo) : insert(m_ipv6Root, new Leaf(hi, lo, address, values));
+            }
+        }
+
+        private void forEachLeaf(final Consumer<Leaf> consumer) {
+            visit(m_ipv4Root, consumer);
+            visit(m_ipv6Root, consumer);
+        }
+    }
+
+    private static long toLong(final byte[] bytes, final int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xff);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value of the given bit of the 128 bits key, bit 0 being the
+     * most significant one.
+     */
+    private static int bit(final long hi, final long lo, final int bit) {
+        return bit < 64 ? (int)(hi >>> (63 - bit)) & 1 : (int)(lo >>> (127 - bit)) & 1;
+    }
+
+    /**
+     * Returns the index of the first bit that differs between the two keys, or
+     * 128 if the keys are equal.
+     */
+    private static int firstDifferentBit(final long hi1, final long lo1, final long hi2, final long lo2) {
+        if (hi1 != hi2) {
+            return Long.numberOfLeadingZeros(hi1 ^ hi2);
+        }
+        if (lo1 != lo2) {
+            return 64 + Long.numberOfLeadingZeros(lo1 ^ lo2);
+        }
+        return 128;
+    }
+
+    private static Leaf lookup(Node node, final long hi, final long lo) {
+        while (node instanceof Branch) {
+            final Branch branch = (Branch)node;
+            node = bit(hi, lo, branch.bit) == 0 ? branch.left : branch.right;
+        }
+        final Leaf leaf = (Leaf)node;
+        return leaf != null && leaf.hi == hi && leaf.lo == lo ? leaf : null;
+    }
+
+    private static Node insert(final Node node, final Leaf leaf) {
+        if (node == null) {
+            return leaf;
+        }
+        final int firstDifferentBit = firstDifferentBit(leaf.hi, leaf.lo, node.hi, node.lo);
+        if (node instanceof Leaf) {
+            // Replace the leaf of the same address
+            return firstDifferentBit == 128 ? leaf : join(leaf, node, firstDifferentBit);
+        }
+        final Branch branch = (Branch)node;
+        if (firstDifferentBit < branch.bit) {
+            // The address is outside of the prefix of the branch
+            return join(leaf, branch, firstDifferentBit);
+        }
+        if (bit(leaf.hi, leaf.lo, branch.bit) == 0) {
+            return new Branch(branch.hi, branch.lo, branch.bit, insert(branch.left, leaf), branch.right);
+        } else {
+            return new Branch(branch.hi, branch.lo, branch.bit, branch.left, insert(branch.right, leaf));
+        }
+    }
+
+    private static Node join(final Leaf leaf, final Node node, final int bit) {
+        if (bit(leaf.hi, leaf.lo, bit) == 0) {
+            return new Branch(leaf.hi, leaf.lo, bit, leaf, node);
+        } else {
+            return new Branch(leaf.hi, leaf.lo, bit, node, leaf);
+        }
+    }
+
+    private static Node delete(final Node node, final long hi, final long lo) {
+        if (node == null) {
+            return null;
+        }
+        if (node instanceof Leaf) {
+            return node.hi == hi && node.lo == lo ? null : node;
+        }
+        final Branch branch = (Branch)node;
+        if (bit(hi, lo, branch.bit) == 0) {
+            final Node left = delete(branch.left, hi, lo);
+            if (left == branch.left) {
+                return branch;
+            }
+            return left == null ? branch.right : new Branch(branch.hi, branch.lo, branch.bit, left, branch.right);
+        } else {
+            final Node right = delete(branch.right, hi, lo);
+            if (right == branch.right) {
+                return branch;
+            }
+            return right == null ? branch.left : new Branch(branch.hi, branch.lo, branch.bit, branch.left, right);
+        }
+    }
+
+    private static void visit(final Node node, final Consumer<Leaf> consumer) {
+        if (node instanceof Branch) {
+            visit(((Branch)node).left, consumer);
+            visit(((Branch)node).right, consumer);
+        } else if (node != null) {
+            consumer.accept((Leaf)node);
+        }
+    }
+
+    /**
+     * A node of the tree. The key of a leaf is the address, the key of a branch
+     * is the key of any of its leaves, of which only the bits before the
+     * branching bit are relevant.
+     */
+    private static abstract class Node {
+        protected final long hi;
+        protected final long lo;
+
+        protected Node(final long hi, final long lo) {
+            this.hi = hi;
+            this.lo = lo;
+        }
+    }
+
+    private static final class Branch extends Node {
+        private final int bit;
+        private final Node left;
+        private final Node right;
+
+        private Branch(final long hi, final long lo, final int bit, final Node left, final Node right) {
+            super(hi, lo);
+            this.bit = bit;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private static final class Leaf extends Node {
+        private final InetAddress address;
+        private final Value[] values;
+        private final List<Integer> nodeIds;
+        private final Optional<Integer> firstNodeId;
+
+        private Leaf(final long hi, final long lo, final InetAddress address, final Value[] values) {
+            super(hi, lo);
+            this.address = address;
+            this.values = values;
+            final Integer[] ids = new Integer[values.length];
+            for (int i = 0; i < values.length; i++) {
+                ids[i] = values[i].nodeId;
+            }
+            this.nodeIds = Collections.unmodifiableList(Arrays.asList(ids));
+            this.firstNodeId = Optional.of(ids[0]);
+        }
+    }
+
+    private static final class Value implements Comparable<Value> {
+        private final int nodeId;
+        private final PrimaryType type;
+
+        private Value(final int nodeId, final PrimaryType type) {
+            this.nodeId = nodeId;
+            this.type = type;
+        }
+
+        @Override
+        public int compareTo(final Value that) {
+            final int result = this.type.compareTo(that.type);
+            return result != 0 ? result : Integer.compare(this.nodeId, that.nodeId);
+        }
+    }
+}
@@ -40,19 +40,34 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.Assert;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 /**
  * <p>RrdStatisticAttributeVisitor class.</p>
  *
+ * By default every attribute is fetched as soon as it is visited. When a fetch
+ * batch size greater than one or an executor is set, the attributes are queued
+ * and fetched in batches, one {@link MeasurementFetchStrategy#fetch} call per
+ * batch, on the executor. The number of batches waiting for the executor is
+ * bounded so the walk slows down instead of queuing the whole resource tree;
+ * {@link #flush()} must be called once the walk is complete.
+ *
  * @author <a href="mailto:dj@opennms.org">DJ Gregor</a>
  * @version $Id: $
  */
 public class RrdStatisticAttributeVisitor implements AttributeVisitor, InitializingBean {
     private static final Logger LOG = LoggerFactory.getLogger(RrdStatisticAttributeVisitor.class);
 
+    private static final long PROGRESS_INTERVAL = 10000;
+
     private MeasurementFetchStrategy m_fetchStrategy;
 
     private String m_consolidationFunction;
@@ -60,6 +75,13 @@ public class RrdStatisticAttributeVisitor implements AttributeVisitor, Initializ
     private Long m_endTime;
     private AttributeStatisticVisitor m_statisticVisitor;
 
+    private int m_fetchBatchSize = 1;
+    private Executor m_executor;
+    private int m_maxPendingBatches;
+    private Semaphore m_pendingBatches;
+    private List<OnmsAttribute> m_batch = new ArrayList<>();
+    private final AtomicLong m_attributesFetched = new AtomicLong();
+
     private interface Aggregator {
         double getValue();
         void aggregate(final double v);
@@ -146,11 +168,106 @@ public class RrdStatisticAttributeVisitor implements AttributeVisitor, Initializ
             return;
         }
 
-        final Source source = new Source();
-        source.setLabel("result");
-        source.setResourceId(attribute.getResource().getId().toString());
-        source.setAttribute(attribute.getName());
-        source.setAggregation(m_consolidationFunction.toUpperCase());
+        if (m_executor == null && m_fetchBatchSize <= 1) {
+            fetch(attribute);
+            accountFetched(1);
+            return;
+        }
+
+        m_batch.add(attribute);
+        if (m_batch.size() >= m_fetchBatchSize) {
+            submitBatch();
+        }
+    }
+
+    /**
+     * Fetches the attributes that are still queued and waits for all of the
+     * pending batches to complete.
+     */
+    public void flush() {
+        if (!m_batch.isEmpty()) {
+            submitBatch();
+        }
+        if (m_pendingBatches != null) {
+            m_pendingBatches.acquireUninterruptibly(m_maxPendingBatches);
+            m_pendingBatches.release(m_maxPendingBatches);
+        }
+        LOG.debug("Fetched the statistics of {} attributes", m_attributesFetched.get());
+    }
+
+    /**
+     * @return the number of attributes fetched so far
+     */
+    public long getAttributesFetched() {
+        return m_attributesFetched.get();
+    }
+
+    private void submitBatch() {
+        final List<OnmsAttribute> batch = m_batch;
+        m_batch = new ArrayList<>(m_fetchBatchSize);
+
+        if (m_executor == null) {
+            fetch(batch);
+            return;
+        }
+
+        m_pendingBatches.acquireUninterruptibly();
+        try {
+            m_executor.execute(() -> {
+                try {
+                    fetch(batch);
+                } finally {
+                    m_pendingBatches.release();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            m_pendingBatches.release();
+            LOG.debug("Executor rejected the batch, fetching it on the walking thread.", e);
+            fetch(batch);
+        }
+    }
+
+    private void fetch(List<OnmsAttribute> batch) {
+        if (batch.size() == 1) {
+            fetch(batch.get(0));
+            accountFetched(1);
+            return;
+        }
+
+        final List<Source> sources = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            sources.add(getSource(batch.get(i), "result" + i));
+        }
+
+        // relaxed, so a missing attribute does not fail the whole batch
+        final FetchResults results;
+        try {
+            results = m_fetchStrategy.fetch(m_startTime,
+                                            m_endTime,
+                                            1,
+                                            0,
+                                            null,
+                                            null,
+                                            sources,
+                                            true);
+        } catch (final Exception e) {
+            LOG.warn("Failed to fetch the statistics of {} attributes", batch.size(), e);
+            accountFetched(batch.size());
+            return;
+        }
+
+        if (results == null) {
+            LOG.warn("No statistic found for {} attributes", batch.size());
+        } else {
+            for (int i = 0; i < batch.size(); i++) {
+                visitStatistics(batch.get(i), sources.get(i), results.getColumns().get(sources.get(i).getLabel()));
+            }
+        }
+        accountFetched(batch.size());
+    }
+
+    private void fetch(OnmsAttribute attribute) {
+        final Source source = getSource(attribute, "result");
 
         final FetchResults results;
         try {
@@ -172,7 +289,19 @@ public class RrdStatisticAttributeVisitor implements AttributeVisitor, Initializ
             return;
         }
 
-        final double[] statistics = results.getColumns().get(source.getLabel());
+        visitStatistics(attribute, source, results.getColumns().get(source.getLabel()));
+    }
+
+    private Source getSource(OnmsAttribute attribute, String label) {
+        final Source source = new Source();
+        source.setLabel(label);
+        source.setResourceId(attribute.getResource().getId().toString());
+        source.setAttribute(attribute.getName());
+        source.setAggregation(m_consolidationFunction.toUpperCase());
+        return source;
+    }
+
+    private void visitStatistics(OnmsAttribute attribute, Source source, double[] statistics) {
         if (statistics == null || statistics.length == 0) {
             LOG.warn("Statistic is empty: {}", source);
             return;
@@ -206,6 +335,13 @@ public class RrdStatisticAttributeVisitor implements AttributeVisitor, Initializ
         m_statisticVisitor.visit(attribute, statistic);
     }
 
+    private void accountFetched(int count) {
+        final long fetched = m_attributesFetched.addAndGet(count);
+        if (fetched / PROGRESS_INTERVAL != (fetched - count) / PROGRESS_INTERVAL) {
+            LOG.info("Fetched the statistics of {} attributes", fetched);
+        }
+    }
+
     /**
      * <p>afterPropertiesSet</p>
      *
@@ -220,6 +356,27 @@ public class RrdStatisticAttributeVisitor implements AttributeVisitor, Initializ
         Assert.state(m_statisticVisitor != null, "property statisticVisitor must be set to a non-null value");
     }
 
+    public int getFetchBatchSize() {
+        return m_fetchBatchSize;
+    }
+
+    /**
+     * @param fetchBatchSize the number of attributes fetched at once, 1 to fetch every attribute on its own
+     */
+    public void setFetchBatchSize(int fetchBatchSize) {
+        m_fetchBatchSize = Math.max(1, fetchBatchSize);
+    }
+
+    /**
+     * @param executor the executor used to fetch the batches, or null to fetch them on the walking thread
+     * @param maxPendingBatches the maximum number of batches submitted to the executor and not yet fetched
+     */
+    public void setExecutor(Executor executor, int maxPendingBatches) {
+        m_executor = executor;
+        m_maxPendingBatches = Math.max(1, maxPendingBatches);
+        m_pendingBatches = executor != null ? new Semaphore(m_maxPendingBatches) : null;
+    }
+
     public MeasurementFetchStrategy getFetchStrategy() {
         return m_fetchStrategy;
     }
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.dao.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.model.PrimaryType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class InterfaceToNodeIndexTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InterfaceToNodeIndexTest.class);
+
+    @Test
+    public void testAddAndRemove() {
+        InterfaceToNodeIndex index = new InterfaceToNodeIndex();
+        assertTrue(index.add("Default", addr("192.168.1.1"), 2, PrimaryType.PRIMARY));
+        assertTrue(index.add("Default", addr("192.168.1.1"), 1, PrimaryType.PRIMARY));
+        assertFalse(index.add("Default", addr("192.168.1.1"), 1, PrimaryType.PRIMARY));
+        assertTrue(index.add("Default", addr("192.168.1.2"), 1, PrimaryType.SECONDARY));
+        assertEquals(3, index.size());
+
+        assertEquals(Arrays.asList(1, 2), index.getNodeIds("Default", addr("192.168.1.1")));
+        assertEquals(Optional.of(1), index.getFirstNodeId("Default", addr("192.168.1.1")));
+        assertEquals(Collections.emptyList(), index.getNodeIds("Default", addr("192.168.1.3")));
+        assertEquals(Optional.empty(), index.getFirstNodeId("Default", addr("192.168.1.3")));
+        assertEquals(Collections.emptyList(), index.getNodeIds("Default", null));
+
+        assertFalse(index.remove("Default", addr("192.168.1.1"), 3));
+        assertTrue(index.remove("Default", addr("192.168.1.1"), 1));
+        assertEquals(Arrays.asList(2), index.getNodeIds("Default", addr("192.168.1.1")));
+        assertTrue(index.remove("Default", addr("192.168.1.1"), 2));
+        assertEquals(Collections.emptyList(), index.getNodeIds("Default", addr("192.168.1.1")));
+        assertEquals(Arrays.asList(1), index.getNodeIds("Default", addr("192.168.1.2")));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testLocations() {
+        InterfaceToNodeIndex index = new InterfaceToNodeIndex();
+        index.add(null, addr("10.0.0.1"), 1, PrimaryType.PRIMARY);
+        index.add("Minion", addr("10.0.0.1"), 2, PrimaryType.PRIMARY);
+        index.add("Minion", addr("fe80::1"), 3, null);
+
+        assertEquals(Arrays.asList(1), index.getNodeIds("Default", addr("10.0.0.1")));
+        assertEquals(Arrays.asList(1), index.getNodeIds("", addr("10.0.0.1")));
+        assertEquals(Arrays.asList(2), index.getNodeIds("Minion", addr("10.0.0.1")));
+        assertEquals(Arrays.asList(3), index.getNodeIds("Minion", addr("fe80::1")));
+        assertEquals(Collections.emptyList(), index.getNodeIds("Default", addr("fe80::1")));
+        assertEquals(Collections.emptyList(), index.getNodeIds("Elsewhere", addr("10.0.0.1")));
+
+        Set<InetAddress> addresses = new HashSet<>();
+        index.forEachAddress("Minion", addresses::add);
+        assertEquals(new HashSet<>(Arrays.asList(addr("10.0.0.1"), addr("fe80::1"))), addresses);
+
+        assertEquals(2, index.removeNode(1) + index.removeNode(3));
+        assertEquals(1, index.size());
+        assertEquals(Collections.emptyList(), index.getNodeIds("Default", addr("10.0.0.1")));
+        assertEquals(Arrays.asList(2), index.getNodeIds("Minion", addr("10.0.0.1")));
+    }
+
+    /**
+     * The IPv4 lookups rely on {@link java.net.Inet4Address#hashCode()} being the address.
+     */
+    @Test
+    public void testInet4AddressHashCode() {
+        for (String address : new String[] { "0.0.0.0", "10.1.2.3", "127.0.0.1", "192.168.255.254", "255.255.255.255" }) {
+            byte[] b = addr(address).getAddress();
+            assertEquals(((b[0] & 0xff) << 24) | ((b[1] & 0xff) << 16) | ((b[2] & 0xff) << 8) | (b[3] & 0xff), addr(address).hashCode());
+        }
+    }
+
+    @Test
+    public void testRandomUpdates() {
+        final Random random = new Random(42);
+        final InterfaceToNodeIndex index = new InterfaceToNodeIndex();
+        final Map<InetAddress, Set<Integer>> expected = new HashMap<>();
+        final List<InetAddress> addresses = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            byte[] bytes = new byte[i % 4 == 0 ? 16 : 4];
+            random.nextBytes(bytes);
+            // Cluster some of the addresses
+            if (i % 3 == 0) {
+                bytes[0] = 10;
+            }
+            addresses.add(InetAddressUtils.getInetAddress(bytes));
+        }
+
+        int size = 0;
+        for (int i = 0; i < 20000; i++) {
+            InetAddress address = addresses.get(random.nextInt(addresses.size()));
+            int nodeId = random.nextInt(4);
+            Set<Integer> nodeIds = expected.computeIfAbsent(address, a -> new HashSet<>());
+            if (random.nextInt(3) == 0) {
+                boolean removed = nodeIds.remove(nodeId);
+                assertEquals(removed, index.remove("Default", address, nodeId));
+                size -= removed ? 1 : 0;
+            } else {
+                boolean added = nodeIds.add(nodeId);
+                assertEquals(added, index.add("Default", address, nodeId, PrimaryType.PRIMARY));
+                size += added ? 1 : 0;
+            }
+        }
+
+        assertEquals(size, index.size());
+        for (InetAddress address : addresses) {
+            Set<Integer> nodeIds = expected.getOrDefault(address, Collections.emptySet());
+            assertEquals(new HashSet<>(nodeIds), new HashSet<>(index.getNodeIds("Default", address)));
+        }
+        Set<InetAddress> indexed = new HashSet<>();
+        index.forEachAddress("Default", indexed::add);
+        expected.values().removeIf(Set::isEmpty);
+        assertEquals(expected.keySet(), indexed);
+    }
+
+    /*
+     * Looks up the addresses of a number of interfaces (e.g. 100000) spread
+     * over a few /16 and logs the cost of a lookup.
+     * Only runs when the org.opennms.dao.interfaceToNodeIndex.benchmark.interfaces
+     * system property is set.
+     */
+    @Test
+    public void testLookupBenchmark() {
+        final Integer property = Integer.getInteger("org.opennms.dao.interfaceToNodeIndex.benchmark.interfaces");
+        assumeTrue(property != null);
+        final int interfaces = property;
+        final int rounds = 10;
+
+        final InterfaceToNodeIndex index = new InterfaceToNodeIndex();
+        final InetAddress[] addresses = new InetAddress[interfaces];
+        long start = System.nanoTime();
+        for (int i = 0; i < interfaces; i++) {
+            addresses[i] = InetAddressUtils.getInetAddress(new byte[] { 10, (byte)(i >> 16), (byte)(i >> 8), (byte)i });
+            index.add("Default", addresses[i], i / 4, PrimaryType.PRIMARY);
+        }
+        final long indexed = System.nanoTime();
+
+        long found = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < interfaces; i++) {
+                found += index.getFirstNodeId("Default", addresses[i]).isPresent() ? 1 : 0;
+            }
+        }
+        final long lookedUp = System.nanoTime();
+
+        assertEquals((long)rounds * interfaces, found);
+        assertEquals(interfaces, index.size());
+        LOG.info("testLookupBenchmark: interfaces: {}, index: {} ms, lookup: {} ns",
+                interfaces, (indexed - start) / 1000000, (lookedUp - indexed) / (rounds * interfaces));
+    }
+}
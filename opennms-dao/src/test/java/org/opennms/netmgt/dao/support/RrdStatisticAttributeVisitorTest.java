@@ -30,7 +30,10 @@ package org.opennms.netmgt.dao.support;
 
 import static org.easymock.EasyMock.expect;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.opennms.netmgt.measurements.api.FetchResults;
 import org.opennms.netmgt.measurements.api.MeasurementFetchStrategy;
@@ -325,4 +328,80 @@ public class RrdStatisticAttributeVisitorTest extends TestCase {
         attributeVisitor2.visit(attribute);
         m_mocks.verifyAll();
     }
+
+    public void testVisitInBatches() throws Exception {
+        RrdStatisticAttributeVisitor attributeVisitor = new RrdStatisticAttributeVisitor();
+        attributeVisitor.setFetchStrategy(m_fetchStrategy);
+        attributeVisitor.setConsolidationFunction("AVERAGE");
+        attributeVisitor.setStartTime(m_startTime);
+        attributeVisitor.setEndTime(m_endTime);
+        attributeVisitor.setStatisticVisitor(m_statisticVisitor);
+        attributeVisitor.setFetchBatchSize(2);
+        attributeVisitor.setExecutor(Runnable::run, 1);
+        attributeVisitor.afterPropertiesSet();
+
+        MockResourceType resourceType = new MockResourceType();
+        resourceType.setName("interfaceSnmp");
+        OnmsAttribute attribute1 = new RrdGraphAttribute("ifInOctets", "something", "something else");
+        attribute1.setResource(new OnmsResource("1", "Interface One", resourceType, Collections.singleton(attribute1), ResourcePath.get("foo")));
+        OnmsAttribute attribute2 = new RrdGraphAttribute("ifInOctets", "something", "something else");
+        attribute2.setResource(new OnmsResource("2", "Interface Two", resourceType, Collections.singleton(attribute2), ResourcePath.get("bar")));
+        OnmsAttribute attribute3 = new RrdGraphAttribute("ifInOctets", "something", "something else");
+        attribute3.setResource(new OnmsResource("3", "Interface Three", resourceType, Collections.singleton(attribute3), ResourcePath.get("baz")));
+
+        Source source1 = new Source();
+        source1.setLabel("result0");
+        source1.setResourceId(attribute1.getResource().getId().toString());
+        source1.setAttribute(attribute1.getName());
+        source1.setAggregation("AVERAGE");
+        Source source2 = new Source();
+        source2.setLabel("result1");
+        source2.setResourceId(attribute2.getResource().getId().toString());
+        source2.setAttribute(attribute2.getName());
+        source2.setAggregation("AVERAGE");
+        Map<String, double[]> columns = new HashMap<>();
+        columns.put("result0", new double[] {1.0, 3.0});
+        columns.put("result1", new double[] {Double.NaN, Double.NaN});
+
+        // the first two attributes are fetched at once, the attribute without data is skipped
+        expect(m_fetchStrategy.fetch(m_startTime,
+                                     m_endTime,
+                                     1,
+                                     0,
+                                     null,
+                                     null,
+                                     Arrays.asList(source1, source2),
+                                     true))
+                .andReturn(new FetchResults(new long[] {m_startTime, m_endTime}, columns, m_endTime - m_startTime, Collections.emptyMap()));
+        m_statisticVisitor.visit(attribute1, 2.0);
+
+        // the last attribute is fetched on its own when flushing
+        Source source3 = new Source();
+        source3.setLabel("result");
+        source3.setResourceId(attribute3.getResource().getId().toString());
+        source3.setAttribute(attribute3.getName());
+        source3.setAggregation("AVERAGE");
+        expect(m_fetchStrategy.fetch(m_startTime,
+                                     m_endTime,
+                                     1,
+                                     0,
+                                     null,
+                                     null,
+                                     Collections.singletonList(source3),
+                                     false))
+                .andReturn(new FetchResults(new long[] {m_startTime},
+                                            Collections.singletonMap("result", new double[] {5.0}),
+                                            m_endTime - m_startTime,
+                                            Collections.emptyMap()));
+        m_statisticVisitor.visit(attribute3, 5.0);
+
+        m_mocks.replayAll();
+        attributeVisitor.visit(attribute1);
+        attributeVisitor.visit(attribute2);
+        attributeVisitor.visit(attribute3);
+        attributeVisitor.flush();
+        m_mocks.verifyAll();
+
+        assertEquals(3, attributeVisitor.getAttributesFetched());
+    }
 }
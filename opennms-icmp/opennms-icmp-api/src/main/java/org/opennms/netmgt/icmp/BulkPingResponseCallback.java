@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp;
+
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Forwards the responses of the requests of a sweep to the given callback
+ * and completes once all of them were handled.
+ *
+ * Call {@link #expectResponse()} before sending every request and
+ * {@link #doneSending()} after the last one, the hosts of the sweep don't need
+ * to be known in advance.
+ */
+public class BulkPingResponseCallback implements PingResponseCallback {
+
+    private final PingResponseCallback m_cb;
+    private final CompletableFuture<Void> m_future = new CompletableFuture<>();
+    // one more until all the requests were sent
+    private final AtomicLong m_outstanding = new AtomicLong(1);
+
+    public BulkPingResponseCallback(PingResponseCallback cb) {
+        m_cb = cb;
+    }
+
+    public void expectResponse() {
+        m_outstanding.incrementAndGet();
+    }
+
+    public void doneSending() {
+        handled();
+    }
+
+    /**
+     * Completes once the callback handled the response, timeout or error of
+     * every request.
+     */
+    public CompletableFuture<Void> getFuture() {
+        return m_future;
+    }
+
+    @Override
+    public void handleResponse(InetAddress address, EchoPacket response) {
+        try {
+            m_cb.handleResponse(address, response);
+        } finally {
+            handled();
+        }
+    }
+
+    @Override
+    public void handleTimeout(InetAddress address, EchoPacket request) {
+        try {
+            m_cb.handleTimeout(address, request);
+        } finally {
+            handled();
+        }
+    }
+
+    @Override
+    public void handleError(InetAddress address, EchoPacket request, Throwable t) {
+        try {
+            m_cb.handleError(address, request, t);
+        } finally {
+            handled();
+        }
+    }
+
+    private void handled() {
+        if (m_outstanding.decrementAndGet() == 0) {
+            m_future.complete(null);
+        }
+    }
+}
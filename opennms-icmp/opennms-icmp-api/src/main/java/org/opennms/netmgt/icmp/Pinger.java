@@ -31,6 +31,8 @@ package org.opennms.netmgt.icmp;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>Pinger class.</p>
@@ -133,6 +135,41 @@ public interface Pinger {
          */
         public List<Number> parallelPing(InetAddress host, int count, long timeout, long pingInterval) throws Exception;
         
+        /**
+         * Ping many hosts, sending at most the given number of packets per second.
+         * Calls the callback upon success, timeout or error for every host.
+         *
+         * Implementations may return before all of the requests are sent, the hosts
+         * are iterated lazily so large ranges don't need to be kept in memory.
+         *
+         * @param hosts The {@link java.net.InetAddress} addresses to poll.
+         * @param timeout The time to wait between each retry.
+         * @param retries The number of times to retry.
+         * @param packetsize The size in byte of the ICMP packet.
+         * @param packetsPerSecond The maximum rate at which packets are sent, or 0 for no limit.
+         * @param cb the {@link org.opennms.netmgt.icmp.PingResponseCallback} callback to call for every host
+         * @return a future completed once the callback was called for every host
+         */
+        public default CompletableFuture<Void> sweep(Iterable<? extends InetAddress> hosts, long timeout, int retries, int packetsize, double packetsPerSecond, PingResponseCallback cb) throws Exception {
+            final BulkPingResponseCallback bulk = new BulkPingResponseCallback(cb);
+            final long intervalNanos = packetsPerSecond > 0 ? (long)(TimeUnit.SECONDS.toNanos(1) / packetsPerSecond) : 0L;
+            long next = System.nanoTime();
+            for (final InetAddress host : hosts) {
+                if (intervalNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(next - System.nanoTime());
+                    next += intervalNanos;
+                }
+                bulk.expectResponse();
+                try {
+                    ping(host, timeout, retries, packetsize, 1, bulk);
+                } catch (Exception e) {
+                    bulk.handleError(host, null, e);
+                }
+            }
+            bulk.doneSending();
+            return bulk.getFuture();
+        }
+
 	public void setAllowFragmentation(final boolean allow) throws Exception;
 
 	public void setTrafficClass(final int tc) throws Exception;
@@ -30,6 +30,7 @@ package org.opennms.netmgt.icmp.best;
 
 import java.net.InetAddress;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.opennms.netmgt.icmp.NullPinger;
 import org.opennms.netmgt.icmp.PingResponseCallback;
@@ -85,6 +86,12 @@ public class BestMatchPinger implements Pinger {
         return m_pinger.parallelPing(host, count, timeout, pingInterval, size);
     }
 
+    @Override
+    public CompletableFuture<Void> sweep(final Iterable<? extends InetAddress> hosts, final long timeout, final int retries, final int packetsize, final double packetsPerSecond, final PingResponseCallback cb) throws Exception {
+        initialize();
+        return m_pinger.sweep(hosts, timeout, retries, packetsize, packetsPerSecond, cb);
+    }
+
     @Override
     public void initialize4() throws Exception {
         initialize();
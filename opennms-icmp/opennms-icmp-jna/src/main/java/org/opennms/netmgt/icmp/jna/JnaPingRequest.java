@@ -158,6 +158,34 @@ public class JnaPingRequest implements Request<JnaPingRequestId, JnaPingRequest,
         }
     }
     
+    /**
+     * Creates the request used to retry this one, with the same id, or null
+     * if there are no retries left.
+     */
+    JnaPingRequest createRetry() {
+        if (m_retries <= 0) {
+            return null;
+        }
+        return new JnaPingRequest(m_id, m_timeout, m_retries - 1, m_packetsize, m_callback);
+    }
+
+    /**
+     * Notifies the callback that the request timed out without checking the
+     * expiration, the {@link JnaPingTracker} tracks the timeouts itself.
+     */
+    void processExpired() {
+        try {
+            LOG.debug("{}: Ping Request Timed out {}", System.currentTimeMillis(), this);
+            m_callback.handleTimeout(getAddress(), this);
+        } finally {
+            setProcessed(true);
+        }
+    }
+
+    long getTimeout() {
+        return m_timeout;
+    }
+
     /**
      * <p>isExpired</p>
      *
@@ -249,7 +277,7 @@ public class JnaPingRequest implements Request<JnaPingRequestId, JnaPingRequest,
             m_expiration = System.currentTimeMillis() + m_timeout;
             v6.ping(addr6, m_id.getIdentifier(), m_id.getSequenceNumber(), m_id.getThreadId(), 1, 0, m_packetsize);
         } catch (final Throwable t) {
-            m_callback.handleError(getAddress(), this, t);
+            processError(t);
         }
     }
 
@@ -260,7 +288,7 @@ public class JnaPingRequest implements Request<JnaPingRequestId, JnaPingRequest,
             m_expiration = System.currentTimeMillis() + m_timeout;
             v4.ping(addr4, m_id.getIdentifier(), m_id.getSequenceNumber(), m_id.getThreadId(), 1, 0, m_packetsize);
         } catch (final Throwable t) {
-            m_callback.handleError(getAddress(), this, t);
+            processError(t);
         }
     }
 
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp.jna;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+
+/**
+ * Lock-free table of the outstanding ping requests, indexed by a primitive
+ * key.
+ *
+ * Every request gets a new key from a counter, the key is sent in the thread
+ * id field of the echo request and is returned by the echo reply. The key is
+ * also the position of the request in the table (modulo the capacity), so
+ * matching a reply does not box the key nor hash the address, and adding or
+ * removing a request is a single compare and set. Keys whose slot is still
+ * used by an older request are skipped, so the table should not be filled
+ * up to its capacity: see {@link #remainingCapacity()}.
+ */
+public class JnaPingRequestTable {
+
+    private final AtomicReferenceArray<JnaPingRequest> m_slots;
+    private final int m_mask;
+    private final AtomicLong m_nextKey = new AtomicLong(1);
+    private final AtomicInteger m_size = new AtomicInteger(0);
+
+    public JnaPingRequestTable(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0: " + capacity);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        m_slots = new AtomicReferenceArray<>(size);
+        m_mask = size - 1;
+    }
+
+    /**
+     * Adds the request created by the factory for a free key.
+     *
+     * A place in the table is reserved before looking for a free slot, so a
+     * full table fails without consuming keys.
+     *
+     * @param factory creates the request for the given key, the key must be
+     *   used as the thread id of the request
+     * @return the request
+     * @throws IllegalStateException if the table is full
+     */
+    public JnaPingRequest add(LongFunction<JnaPingRequest> factory) {
+        int size;
+        do {
+            size = m_size.get();
+            if (size >= m_slots.length()) {
+                throw new IllegalStateException("Too many outstanding ping requests: " + size);
+            }
+        } while (!m_size.compareAndSet(size, size + 1));
+
+        boolean added = false;
+        try {
+            // a slot is free, but it may be taken by a concurrent add
+            for (int attempt = 0; attempt < m_slots.length(); attempt++) {
+                final long key = m_nextKey.getAndIncrement();
+                final int slot = slot(key);
+                if (m_slots.get(slot) != null) {
+                    continue;
+                }
+                final JnaPingRequest request = factory.apply(key);
+                if (request.getThreadId() != key) {
+                    throw new IllegalArgumentException("The thread id of the request " + request + " is not the key " + key);
+                }
+                if (m_slots.compareAndSet(slot, null, request)) {
+                    added = true;
+                    return request;
+                }
+            }
+            throw new IllegalStateException("Too many outstanding ping requests: " + m_size.get());
+        } finally {
+            if (!added) {
+                m_size.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the outstanding request with the given key, or null.
+     */
+    public JnaPingRequest get(long key) {
+        final JnaPingRequest request = m_slots.get(slot(key));
+        return request != null && request.getThreadId() == key ? request : null;
+    }
+
+    /**
+     * Removes the request.
+     *
+     * @return false if the request was already removed or replaced
+     */
+    public boolean remove(JnaPingRequest request) {
+        if (m_slots.compareAndSet(slot(request.getThreadId()), request, null)) {
+            m_size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the request by its retry, which must have the same key.
+     *
+     * @return false if the request was already removed or replaced
+     */
+    public boolean replace(JnaPingRequest request, JnaPingRequest retry) {
+        if (request.getThreadId() != retry.getThreadId()) {
+            throw new IllegalArgumentException("The retry " + retry + " does not have the key of the request " + request);
+        }
+        return m_slots.compareAndSet(slot(request.getThreadId()), request, retry);
+    }
+
+    public int size() {
+        return m_size.get();
+    }
+
+    /**
+     * Returns the number of requests that can still be added.
+     */
+    public int remainingCapacity() {
+        return Math.max(0, m_slots.length() - m_size.get());
+    }
+
+    public int capacity() {
+        return m_slots.length();
+    }
+
+    private int slot(long key) {
+        return (int)(key & m_mask);
+    }
+}
@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp.jna;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.opennms.core.logging.Logging;
+import org.opennms.core.utils.HashedTimerWheel;
+import org.opennms.netmgt.icmp.BulkPingResponseCallback;
+import org.opennms.netmgt.icmp.PingResponseCallback;
+import org.opennms.protocols.rt.Messenger;
+import org.opennms.protocols.rt.ReplyHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the outstanding ping requests of a {@link JnaPinger}.
+ *
+ * The replies are matched by the socket reader threads of the messenger with
+ * a lock-free {@link JnaPingRequestTable}. The timeouts and retries are
+ * handled by a single timer thread with a {@link HashedTimerWheel}, instead
+ * of a delay queue ordered by expiration. The same thread paces the requests
+ * of the sweeps, so the callers never sleep between two packets.
+ */
+public class JnaPingTracker implements ReplyHandler<JnaPingReply>, Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(JnaPingTracker.class);
+
+    public static final String TICK_MILLIS_PROPERTY = "org.opennms.netmgt.icmp.jna.tickMillis";
+    public static final long TICK_MILLIS_DEFAULT = 10L;
+
+    public static final String MAX_OUTSTANDING_PROPERTY = "org.opennms.netmgt.icmp.jna.maxOutstanding";
+    public static final int MAX_OUTSTANDING_DEFAULT = 1 << 17;
+
+    private static final int TICKS_PER_WHEEL = 512;
+
+    /**
+     * Maximum number of requests sent by a sweep without rate limit on every
+     * tick, so that large sweeps don't delay the timeouts.
+     */
+    private static final int MAX_BURST = 1024;
+
+    /**
+     * Fraction of the request table kept free by the sweeps, for the single
+     * pings and so that free keys are found quickly.
+     */
+    private static final int SWEEP_HEADROOM_DIVISOR = 16;
+
+    private final String m_name;
+    private final int m_pingerId;
+    private final Messenger<JnaPingRequest, JnaPingReply> m_messenger;
+    private final long m_tickNanos;
+    private final JnaPingRequestTable m_requests;
+    private final int m_sweepHeadroom;
+    private final HashedTimerWheel m_timeouts;
+    private final Queue<Sweep> m_newSweeps = new ConcurrentLinkedQueue<>();
+    // only used by the timer thread
+    private final List<Sweep> m_sweeps = new ArrayList<>();
+    private volatile Thread m_thread;
+    private volatile boolean m_stopped = false;
+
+    public JnaPingTracker(String name, int pingerId, Messenger<JnaPingRequest, JnaPingReply> messenger) {
+        this(name, pingerId, messenger, Long.getLong(TICK_MILLIS_PROPERTY, TICK_MILLIS_DEFAULT), Integer.getInteger(MAX_OUTSTANDING_PROPERTY, MAX_OUTSTANDING_DEFAULT));
+    }
+
+    public JnaPingTracker(String name, int pingerId, Messenger<JnaPingRequest, JnaPingReply> messenger, long tickMillis, int maxOutstanding) {
+        m_name = name;
+        m_pingerId = pingerId;
+        m_messenger = messenger;
+        m_tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, tickMillis));
+        m_requests = new JnaPingRequestTable(maxOutstanding);
+        m_sweepHeadroom = Math.max(1, m_requests.capacity() / SWEEP_HEADROOM_DIVISOR);
+        m_timeouts = new HashedTimerWheel(m_tickNanos, TimeUnit.NANOSECONDS, TICKS_PER_WHEEL);
+    }
+
+    public synchronized void start() {
+        if (m_thread != null) {
+            return;
+        }
+        m_messenger.start(this);
+        m_thread = new Thread(this, m_name + "-Timer");
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    public synchronized void stop() {
+        m_stopped = true;
+        if (m_thread != null) {
+            m_thread.interrupt();
+        }
+    }
+
+    /**
+     * Sends a single request from the calling thread.
+     *
+     * @throws IllegalStateException if there are too many outstanding
+     *   requests, unlike the sweeps that wait for some of them to complete
+     */
+    public void ping(final InetAddress host, final int sequenceId, final long timeout, final int retries, final int packetsize, final PingResponseCallback cb) {
+        send(m_requests.add(key -> new JnaPingRequest(host, m_pingerId, sequenceId, key, timeout, retries, packetsize, cb)));
+    }
+
+    /**
+     * Sends a request to every host, one every interval, from the timer
+     * thread. The sending is paused while the table of the outstanding
+     * requests is almost full, and resumed on the next ticks.
+     *
+     * @param sequenceId the sequence id of the requests, or -1 to number them
+     *   from 0
+     * @param interval the interval between two requests in nanoseconds, or 0
+     *   to send them as fast as possible
+     * @return a future completed once the callback was called for every host
+     */
+    public CompletableFuture<Void> sweep(final Iterable<? extends InetAddress> hosts, final int sequenceId, final long timeout, final int retries, final int packetsize, final long interval, final PingResponseCallback cb) {
+        final Sweep sweep = new Sweep(hosts.iterator(), sequenceId, timeout, retries, packetsize, interval, cb);
+        m_newSweeps.add(sweep);
+        final Thread thread = m_thread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        return sweep.getFuture();
+    }
+
+    public int getOutstandingRequests() {
+        return m_requests.size();
+    }
+
+    @Override
+    public void handleReply(final JnaPingReply reply) {
+        JnaPingRequest request;
+        while ((request = m_requests.get(reply.getThreadId())) != null) {
+            if (!request.getId().equals(reply.getRequestId())) {
+                LOG.debug("Ignoring reply {} that does not match the request {}", reply, request);
+                return;
+            }
+            // the request may be replaced by its retry concurrently
+            if (m_requests.remove(request)) {
+                request.processResponse(reply);
+                return;
+            }
+        }
+        LOG.debug("No outstanding request found for reply {}", reply);
+    }
+
+    private void send(final JnaPingRequest request) {
+        m_timeouts.newTimeout(() -> expire(request), request.getTimeout(), TimeUnit.MILLISECONDS);
+        try {
+            m_messenger.sendRequest(request);
+        } catch (final Exception e) {
+            request.processError(e);
+        }
+        if (request.isProcessed() && m_requests.remove(request)) {
+            // the request could not be sent, the callback was notified of the error
+            LOG.debug("Failed to send the request {}", request);
+        }
+    }
+
+    private void expire(final JnaPingRequest request) {
+        final JnaPingRequest retry = request.createRetry();
+        if (retry != null) {
+            if (m_requests.replace(request, retry)) {
+                LOG.debug("{}: Retrying Ping Request {}", System.currentTimeMillis(), retry);
+                send(retry);
+            }
+        } else if (m_requests.remove(request)) {
+            request.processExpired();
+        }
+    }
+
+    @Override
+    public void run() {
+        Logging.putPrefix("icmp");
+        while (!m_stopped) {
+            final long now = System.nanoTime();
+            try {
+                m_timeouts.expireTimeouts(now);
+
+                Sweep sweep;
+                while ((sweep = m_newSweeps.poll()) != null) {
+                    m_sweeps.add(sweep);
+                }
+                for (final Iterator<Sweep> it = m_sweeps.iterator(); it.hasNext(); ) {
+                    if (it.next().sendDue(now)) {
+                        it.remove();
+                    }
+                }
+            } catch (final Throwable t) {
+                LOG.warn("Unexpected error while processing the ping timeouts and sweeps.", t);
+            }
+            LockSupport.parkNanos(this, m_tickNanos - (System.nanoTime() - now));
+        }
+    }
+
+    private class Sweep {
+        private final Iterator<? extends InetAddress> m_hosts;
+        private final int m_sequenceId;
+        private final long m_timeout;
+        private final int m_retries;
+        private final int m_packetsize;
+        private final long m_interval;
+        private final BulkPingResponseCallback m_cb;
+        private int m_sent = 0;
+        private boolean m_paused = false;
+        private long m_nextSend = System.nanoTime();
+
+        private Sweep(Iterator<? extends InetAddress> hosts, int sequenceId, long timeout, int retries, int packetsize, long interval, PingResponseCallback cb) {
+            m_hosts = hosts;
+            m_sequenceId = sequenceId;
+            m_timeout = timeout;
+            m_retries = retries;
+            m_packetsize = packetsize;
+            m_interval = interval;
+            m_cb = new BulkPingResponseCallback(cb);
+        }
+
+        private CompletableFuture<Void> getFuture() {
+            return m_cb.getFuture();
+        }
+
+        /**
+         * Sends the requests that are due.
+         *
+         * @return true once all the requests were sent
+         */
+        private boolean sendDue(long now) {
+            int burst = 0;
+            while (m_nextSend - now <= 0 && burst < MAX_BURST) {
+                if (!m_hosts.hasNext()) {
+                    break;
+                }
+                if (m_requests.remainingCapacity() <= m_sweepHeadroom) {
+                    // wait for the replies and timeouts to free some slots
+                    if (!m_paused) {
+                        LOG.debug("Pausing the sweep after {} requests, {} requests are outstanding.", m_sent, m_requests.size());
+                        m_paused = true;
+                    }
+                    break;
+                }
+                m_paused = false;
+                final InetAddress host = m_hosts.next();
+                m_cb.expectResponse();
+                try {
+                    ping(host, m_sequenceId < 0 ? m_sent : m_sequenceId, m_timeout, m_retries, m_packetsize, m_cb);
+                } catch (final Throwable t) {
+                    m_cb.handleError(host, null, t);
+                }
+                m_sent++;
+                burst++;
+                m_nextSend += m_interval;
+            }
+            if (m_interval > 0 && m_nextSend - now < -m_tickNanos) {
+                // don't try to catch up after a pause
+                m_nextSend = now;
+            }
+            if (m_hosts.hasNext()) {
+                return false;
+            }
+            m_cb.doneSending();
+            return true;
+        }
+    }
+}
@@ -35,16 +35,17 @@ import static org.opennms.netmgt.icmp.PingConstants.DEFAULT_TIMEOUT;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.security.SecureRandom;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.netmgt.icmp.ParallelPingResponseCallback;
 import org.opennms.netmgt.icmp.PingResponseCallback;
 import org.opennms.netmgt.icmp.Pinger;
 import org.opennms.netmgt.icmp.SinglePingResponseCallback;
-import org.opennms.protocols.rt.IDBasedRequestLocator;
-import org.opennms.protocols.rt.RequestTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,7 +60,7 @@ public class JnaPinger implements Pinger {
 
     private final int m_pingerId = new SecureRandom().nextInt(Short.MAX_VALUE);
 
-    private RequestTracker<JnaPingRequest, JnaPingReply> m_pingTracker;
+    private JnaPingTracker m_pingTracker;
     private JnaIcmpMessenger m_messenger;
 
     /**
@@ -70,9 +71,9 @@ public class JnaPinger implements Pinger {
         if (m_pingTracker != null) return;
         try {
             m_messenger = new JnaIcmpMessenger(m_pingerId);
-            m_pingTracker = Logging.withPrefix("icmp", new Callable<RequestTracker<JnaPingRequest,JnaPingReply>>() {
-                @Override public RequestTracker<JnaPingRequest, JnaPingReply> call() throws Exception {
-                    return new RequestTracker<JnaPingRequest, JnaPingReply>("JNA-ICMP-"+m_pingerId, m_messenger, new IDBasedRequestLocator<JnaPingRequestId, JnaPingRequest, JnaPingReply>());
+            m_pingTracker = Logging.withPrefix("icmp", new Callable<JnaPingTracker>() {
+                @Override public JnaPingTracker call() throws Exception {
+                    return new JnaPingTracker("JNA-ICMP-"+m_pingerId, m_pingerId, m_messenger);
                 }
             });
             m_pingTracker.start();
@@ -131,7 +132,7 @@ public class JnaPinger implements Pinger {
     @Override
     public void ping(final InetAddress host, final long timeout, final int retries, final int packetsize, final int sequenceId, final PingResponseCallback cb) throws Exception {
         initialize();
-        m_pingTracker.sendRequest(new JnaPingRequest(host, m_pingerId, sequenceId, timeout, retries, packetsize, cb));
+        m_pingTracker.ping(host, sequenceId, timeout, retries, packetsize, cb);
     }
 
     /**
@@ -147,7 +148,7 @@ public class JnaPinger implements Pinger {
     @Override
     public void ping(final InetAddress host, final long timeout, final int retries, final int sequenceId, final PingResponseCallback cb) throws Exception {
         initialize();
-        m_pingTracker.sendRequest(new JnaPingRequest(host, m_pingerId, sequenceId, timeout, retries, DEFAULT_PACKET_SIZE, cb));
+        m_pingTracker.ping(host, sequenceId, timeout, retries, DEFAULT_PACKET_SIZE, cb);
     }
 
 
@@ -229,12 +230,8 @@ public class JnaPinger implements Pinger {
         initialize();
         final ParallelPingResponseCallback cb = new ParallelPingResponseCallback(count);
 
-        final long threadId = JnaPingRequest.getNextTID();
-        for (int seqNum = 0; seqNum < count; seqNum++) {
-            final JnaPingRequest request = new JnaPingRequest(host, m_pingerId, seqNum, threadId, timeout == 0? DEFAULT_TIMEOUT : timeout, 0, size, cb);
-            m_pingTracker.sendRequest(request);
-            Thread.sleep(pingInterval);
-        }
+        // the requests are numbered from 0 and paced by the tracker
+        m_pingTracker.sweep(Collections.nCopies(count, host), -1, timeout == 0? DEFAULT_TIMEOUT : timeout, 0, size, TimeUnit.MILLISECONDS.toNanos(pingInterval), cb);
 
         cb.waitFor();
         return cb.getResponseTimes();
@@ -257,6 +254,18 @@ public class JnaPinger implements Pinger {
         return parallelPing(host, count, timeout, pingInterval, DEFAULT_PACKET_SIZE);
     }
 
+    /**
+     * Ping many hosts, sending at most the given number of packets per second.
+     * The requests are sent by the timer thread of the tracker, this method
+     * returns immediately.
+     */
+    @Override
+    public CompletableFuture<Void> sweep(final Iterable<? extends InetAddress> hosts, final long timeout, final int retries, final int packetsize, final double packetsPerSecond, final PingResponseCallback cb) throws Exception {
+        initialize();
+        final long interval = packetsPerSecond > 0 ? (long)(TimeUnit.SECONDS.toNanos(1) / packetsPerSecond) : 0L;
+        return m_pingTracker.sweep(hosts, 1, timeout, retries, packetsize, interval, cb);
+    }
+
     @Override
     public void setAllowFragmentation(boolean allow) throws Exception {
         initialize();
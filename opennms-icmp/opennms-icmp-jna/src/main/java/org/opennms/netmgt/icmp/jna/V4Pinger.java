@@ -102,7 +102,9 @@ public class V4Pinger extends AbstractPinger<Inet4Address> {
         for(int i = sequenceNumber; i < sequenceNumber + count; i++) {
             final V4PingRequest request = new V4PingRequest(identifier, i, threadId,packetSize);
             request.send(socket, addr);
-            Thread.sleep(interval);
+            if (interval > 0 && i < sequenceNumber + count - 1) {
+                Thread.sleep(interval);
+            }
         }
     }
 }
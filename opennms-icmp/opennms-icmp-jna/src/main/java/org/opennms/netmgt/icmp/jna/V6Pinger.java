@@ -111,7 +111,9 @@ public class V6Pinger extends AbstractPinger<Inet6Address> {
         for(int i = sequenceNumber; i < sequenceNumber + count; i++) {
             final V6PingRequest request = new V6PingRequest(identifier, i, threadId,packetSize);
             request.send(socket, addr);
-            Thread.sleep(interval);
+            if (interval > 0 && i < sequenceNumber + count - 1) {
+                Thread.sleep(interval);
+            }
         }
     }
 }
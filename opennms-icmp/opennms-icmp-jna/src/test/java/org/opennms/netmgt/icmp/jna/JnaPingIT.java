@@ -35,8 +35,13 @@ import static org.junit.Assert.assertTrue;
 
 import java.net.InetAddress;
 import java.net.NoRouteToHostException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -244,6 +249,71 @@ public class JnaPingIT {
         assertTrue("Collection contained some numeric values when all parallel pings should have failed", CollectionMath.countNotNull(items) == 0);
     }
 
+    @Test
+    @IfProfileValue(name="runPingTests", value="true")
+    public void testSweepIPv4() throws Exception {
+        final SweepCallback cb = new SweepCallback();
+        s_jnaPinger.sweep(Arrays.asList(m_goodHost, m_badHost, m_goodHost), PingConstants.DEFAULT_TIMEOUT, 1, PingConstants.DEFAULT_PACKET_SIZE, 100, cb)
+            .get(10, TimeUnit.SECONDS);
+        assertEquals(2, cb.responses.get());
+        assertEquals(1, cb.timeouts.get() + cb.errors.get());
+    }
+
+    /**
+     * Sweeps the loopback address at a fixed rate and prints the achieved
+     * rate and the round trip times. The number of pings and the rate can be
+     * set with the org.opennms.icmp.jna.benchmark.count and
+     * org.opennms.icmp.jna.benchmark.rate system properties.
+     */
+    @Test
+    @IfProfileValue(name="runPingTests", value="true")
+    public void testSweepLoopbackBenchmark() throws Exception {
+        final int count = Integer.getInteger("org.opennms.icmp.jna.benchmark.count", 5000);
+        final int rate = Integer.getInteger("org.opennms.icmp.jna.benchmark.rate", 5000);
+        final InetAddress loopback = InetAddress.getByName("127.0.0.1");
+
+        final SweepCallback cb = new SweepCallback();
+        final long start = System.nanoTime();
+        s_jnaPinger.sweep(Collections.nCopies(count, loopback), PingConstants.DEFAULT_TIMEOUT, 0, PingConstants.DEFAULT_PACKET_SIZE, rate, cb)
+            .get(count / rate + 60, TimeUnit.SECONDS);
+        final long elapsed = System.nanoTime() - start;
+
+        assertEquals(count, cb.responses.get() + cb.timeouts.get() + cb.errors.get());
+        assertTrue("No response received from the loopback address", cb.responses.get() > 0);
+        System.out.printf("sweep benchmark: pings = %d, target rate = %d/s, achieved rate = %.1f/s, passed = %d, timeouts = %d, errors = %d, min = %.3fms, average = %.3fms, max = %.3fms%n",
+                count, rate, count * 1e9 / elapsed, cb.responses.get(), cb.timeouts.get(), cb.errors.get(),
+                cb.minRtt.get() / 1000.0, cb.totalRtt.get() / 1000.0 / Math.max(1, cb.responses.get()), cb.maxRtt.get() / 1000.0);
+    }
+
+    private static class SweepCallback implements PingResponseCallback {
+        private final AtomicInteger responses = new AtomicInteger();
+        private final AtomicInteger timeouts = new AtomicInteger();
+        private final AtomicInteger errors = new AtomicInteger();
+        // microseconds
+        private final AtomicLong totalRtt = new AtomicLong();
+        private final AtomicLong minRtt = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong maxRtt = new AtomicLong();
+
+        @Override
+        public void handleResponse(InetAddress address, EchoPacket response) {
+            final long rtt = Math.round(response.elapsedTime(TimeUnit.MICROSECONDS));
+            totalRtt.addAndGet(rtt);
+            minRtt.accumulateAndGet(rtt, Math::min);
+            maxRtt.accumulateAndGet(rtt, Math::max);
+            responses.incrementAndGet();
+        }
+
+        @Override
+        public void handleTimeout(InetAddress address, EchoPacket request) {
+            timeouts.incrementAndGet();
+        }
+
+        @Override
+        public void handleError(InetAddress address, EchoPacket request, Throwable t) {
+            errors.incrementAndGet();
+        }
+    }
+
     private void printResponse(List<Number> items) {
         Long passed = CollectionMath.countNotNull(items);
         Long failed = CollectionMath.countNull(items);
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp.jna;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.opennms.netmgt.icmp.EchoPacket;
+import org.opennms.netmgt.icmp.PingResponseCallback;
+
+public class JnaPingRequestTableTest {
+
+    private static final PingResponseCallback NOOP_CALLBACK = new PingResponseCallback() {
+        @Override
+        public void handleResponse(InetAddress address, EchoPacket response) {
+        }
+
+        @Override
+        public void handleTimeout(InetAddress address, EchoPacket request) {
+        }
+
+        @Override
+        public void handleError(InetAddress address, EchoPacket request, Throwable t) {
+        }
+    };
+
+    private static JnaPingRequest request(long key) {
+        return new JnaPingRequest(InetAddress.getLoopbackAddress(), 1234, 1, key, 800, 2, 64, NOOP_CALLBACK);
+    }
+
+    @Test
+    public void testAddGetRemove() throws Exception {
+        final JnaPingRequestTable table = new JnaPingRequestTable(6);
+        assertEquals(8, table.capacity());
+
+        final JnaPingRequest request = table.add(key -> request(key));
+        final long key = request.getThreadId();
+        assertSame(request, table.get(key));
+        assertNull(table.get(key + table.capacity()));
+        assertEquals(1, table.size());
+
+        final JnaPingRequest retry = request.createRetry();
+        assertTrue(table.replace(request, retry));
+        assertFalse(table.remove(request));
+        assertSame(retry, table.get(key));
+
+        assertTrue(table.remove(retry));
+        assertFalse(table.remove(retry));
+        assertNull(table.get(key));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testFull() throws Exception {
+        final JnaPingRequestTable table = new JnaPingRequestTable(4);
+        final List<JnaPingRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            requests.add(table.add(key -> request(key)));
+        }
+        try {
+            table.add(key -> request(key));
+            fail("The table should be full");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // a free slot is found again with a new key
+        final long oldKey = requests.get(2).getThreadId();
+        assertTrue(table.remove(requests.get(2)));
+        final JnaPingRequest request = table.add(key -> request(key));
+        assertNotEquals(oldKey, request.getThreadId());
+        assertNull(table.get(oldKey));
+        assertSame(request, table.get(request.getThreadId()));
+    }
+
+    @Test
+    public void testFullDoesNotConsumeKeys() throws Exception {
+        final JnaPingRequestTable table = new JnaPingRequestTable(4);
+        final List<JnaPingRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            requests.add(table.add(key -> request(key)));
+        }
+        assertEquals(0, table.remainingCapacity());
+        for (int i = 0; i < 1000; i++) {
+            try {
+                table.add(key -> request(key));
+                fail("The table should be full");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+        assertEquals(4, table.size());
+
+        // the failed adds did not advance the keys
+        final long lastKey = requests.get(3).getThreadId();
+        assertTrue(table.remove(requests.get(0)));
+        assertEquals(1, table.remainingCapacity());
+        final JnaPingRequest request = table.add(key -> request(key));
+        assertTrue(request.getThreadId() - lastKey <= table.capacity());
+        assertEquals(0, table.remainingCapacity());
+    }
+
+    @Test(timeout = 30000)
+    public void testConcurrentAddRemove() throws Exception {
+        final JnaPingRequestTable table = new JnaPingRequestTable(1024);
+        final int threads = 4;
+        final int count = 10000;
+        final ConcurrentHashMap<Long, JnaPingRequest> keys = new ConcurrentHashMap<>();
+        final CountDownLatch latch = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        final JnaPingRequest request = table.add(key -> request(key));
+                        assertNull(keys.putIfAbsent(request.getThreadId(), request));
+                        assertSame(request, table.get(request.getThreadId()));
+                        assertTrue(table.remove(request));
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            }).start();
+        }
+        assertTrue(latch.await(20, TimeUnit.SECONDS));
+        assertEquals(threads * count, keys.size());
+        assertEquals(0, table.size());
+    }
+}
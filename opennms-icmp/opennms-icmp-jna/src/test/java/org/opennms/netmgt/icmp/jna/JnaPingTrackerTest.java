@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp.jna;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.icmp.EchoPacket;
+import org.opennms.netmgt.icmp.PingResponseCallback;
+import org.opennms.protocols.rt.Messenger;
+import org.opennms.protocols.rt.ReplyHandler;
+
+public class JnaPingTrackerTest {
+
+    private static final int MAX_OUTSTANDING = 64;
+
+    /**
+     * Never replies, so every request times out.
+     */
+    private final Messenger<JnaPingRequest, JnaPingReply> m_messenger = new Messenger<JnaPingRequest, JnaPingReply>() {
+        @Override
+        public void sendRequest(JnaPingRequest request) {
+            m_maxOutstanding.accumulateAndGet(m_tracker.getOutstandingRequests(), Math::max);
+        }
+
+        @Override
+        public void start(ReplyHandler<JnaPingReply> callback) {
+        }
+    };
+
+    private final AtomicInteger m_maxOutstanding = new AtomicInteger();
+    private final AtomicInteger m_timeouts = new AtomicInteger();
+    private final AtomicInteger m_errors = new AtomicInteger();
+
+    private final PingResponseCallback m_callback = new PingResponseCallback() {
+        @Override
+        public void handleResponse(InetAddress address, EchoPacket response) {
+        }
+
+        @Override
+        public void handleTimeout(InetAddress address, EchoPacket request) {
+            m_timeouts.incrementAndGet();
+        }
+
+        @Override
+        public void handleError(InetAddress address, EchoPacket request, Throwable t) {
+            m_errors.incrementAndGet();
+        }
+    };
+
+    private JnaPingTracker m_tracker;
+
+    @Before
+    public void setUp() {
+        m_tracker = new JnaPingTracker("test", 1234, m_messenger, 1, MAX_OUTSTANDING);
+        m_tracker.start();
+    }
+
+    @After
+    public void tearDown() {
+        m_tracker.stop();
+    }
+
+    @Test(timeout = 30000)
+    public void testSweepWaitsWhenTheTableIsFull() throws Exception {
+        final List<InetAddress> hosts = new ArrayList<>();
+        for (int i = 0; i < MAX_OUTSTANDING * 5; i++) {
+            hosts.add(InetAddress.getByAddress(new byte[] { 10, 0, (byte)(i >> 8), (byte)i }));
+        }
+
+        m_tracker.sweep(hosts, -1, 50, 0, 64, 0, m_callback).get(20, TimeUnit.SECONDS);
+
+        assertEquals(hosts.size(), m_timeouts.get());
+        assertEquals(0, m_errors.get());
+        assertTrue("outstanding requests: " + m_maxOutstanding.get(), m_maxOutstanding.get() < MAX_OUTSTANDING);
+        assertEquals(0, m_tracker.getOutstandingRequests());
+    }
+
+    @Test(timeout = 30000)
+    public void testSinglePingFailsWhenTheTableIsFull() throws Exception {
+        final InetAddress host = InetAddress.getLoopbackAddress();
+        for (int i = 0; i < MAX_OUTSTANDING; i++) {
+            m_tracker.ping(host, i, 10000, 0, 64, m_callback);
+        }
+        try {
+            m_tracker.ping(host, MAX_OUTSTANDING, 10000, 0, 64, m_callback);
+            fail("The request table should be full");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(MAX_OUTSTANDING, m_tracker.getOutstandingRequests());
+        assertEquals(0, m_errors.get());
+    }
+}
@@ -30,17 +30,17 @@ package org.opennms.netmgt.icmp.proxy;
 
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import org.opennms.core.rpc.xml.AbstractXmlRpcModule;
 import org.opennms.core.utils.IteratorUtils;
@@ -53,9 +53,7 @@ import org.opennms.netmgt.model.discovery.IPPollRange;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import com.google.common.base.Throwables;
-import com.google.common.collect.Sets;
-import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 @Component
@@ -81,94 +79,66 @@ public class PingSweepRpcModule extends AbstractXmlRpcModule<PingSweepRequestDTO
         final Pinger pinger = pingerFactory.getInstance();
         final PingSweepResultTracker tracker = new PingSweepResultTracker();
 
-        String location = request.getLocation();
-        int packetSize = request.getPacketSize();
-        List<IPPollRange> ranges = new ArrayList<>();
+        final String location = request.getLocation();
+        final int packetSize = request.getPacketSize();
+        final double packetsPerSecond = request.getPacketsPerSecond();
+
+        // Group the ranges by timeout and retries so that every group can be swept at once
+        final Map<List<Long>, List<IPPollRange>> rangesByTimeoutAndRetries = new LinkedHashMap<>();
         for (IPRangeDTO dto : request.getIpRanges()) {
             IPPollRange pollRange = new IPPollRange(null, location, dto.getBegin(), dto.getEnd(), dto.getTimeout(), dto.getRetries());
-            ranges.add(pollRange);
+            rangesByTimeoutAndRetries.computeIfAbsent(Arrays.asList(dto.getTimeout(), (long)dto.getRetries()), k -> new ArrayList<>()).add(pollRange);
         }
 
-        // Use a RateLimiter to limit the ping packets per second that we send
-        RateLimiter limiter = RateLimiter.create(request.getPacketsPerSecond());
-
-        List<IPPollAddress> addresses = StreamSupport.stream(getAddresses(ranges).spliterator(), false)
-                .filter(j -> j.getAddress() != null).collect(Collectors.toList());
-
-        return CompletableFuture.supplyAsync(() -> {
-            addresses.stream().forEach(pollAddress -> {
+        // Sweep the groups one after the other, the addresses of every group are
+        // generated lazily while the pinger paces the packets
+        CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+        for (List<IPPollRange> ranges : rangesByTimeoutAndRetries.values()) {
+            final long timeout = ranges.get(0).getTimeout();
+            final int retries = ranges.get(0).getRetries();
+            final Iterable<InetAddress> addresses = Iterables.filter(Iterables.transform(getAddresses(ranges), IPPollAddress::getAddress), Objects::nonNull);
+            future = future.thenComposeAsync(v -> {
                 try {
-                    tracker.expectCallbackFor(pollAddress.getAddress());
-                    limiter.acquire();
-                    pinger.ping(pollAddress.getAddress(), pollAddress.getTimeout(), pollAddress.getRetries(), packetSize, 1, tracker);
+                    return pinger.sweep(addresses, timeout, retries, packetSize, packetsPerSecond, tracker);
                 } catch (Exception e) {
-                    tracker.handleError(pollAddress.getAddress(), null, e);
-                    tracker.completeExceptionally(e);
+                    final CompletableFuture<Void> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(e);
+                    return failed;
                 }
-            });
-
-            try {
-                tracker.getLatch().await();
-            } catch (InterruptedException e) {
-                throw Throwables.propagate(e);
-            }
-            tracker.complete();
-            return tracker.getResponse();
-        } , executor);
-
+            }, executor);
+        }
+        return future.thenApply(v -> tracker.getResponse());
     }
 
-    private static class PingSweepResultTracker extends CompletableFuture<PingSweepResponseDTO>
-            implements PingResponseCallback {
+    private static class PingSweepResultTracker implements PingResponseCallback {
 
-        private final Set<InetAddress> waitingFor = Sets.newConcurrentHashSet();
-        private final CountDownLatch m_doneSignal = new CountDownLatch(1);
         private final PingSweepResponseDTO responseDTO = new PingSweepResponseDTO();
 
-        public void expectCallbackFor(InetAddress address) {
-            waitingFor.add(address);
-        }
-
         @Override
         public void handleResponse(InetAddress address, EchoPacket response) {
             if (response != null) {
                 PingSweepResultDTO sweepResult = new PingSweepResultDTO();
                 sweepResult.setAddress(address);
                 sweepResult.setRtt(response.elapsedTime(TimeUnit.MILLISECONDS));
-                responseDTO.addPingSweepResult(sweepResult);
+                synchronized (responseDTO) {
+                    responseDTO.addPingSweepResult(sweepResult);
+                }
             }
-            afterHandled(address);
         }
 
         @Override
         public void handleTimeout(InetAddress address, EchoPacket request) {
-            afterHandled(address);
+            // pass
         }
 
         @Override
         public void handleError(InetAddress address, EchoPacket request, Throwable t) {
-            afterHandled(address);
-        }
-
-        private void afterHandled(InetAddress address) {
-            waitingFor.remove(address);
-            if (waitingFor.isEmpty()) {
-                m_doneSignal.countDown();
-            }
-        }
-
-        public void complete() {
-            complete(responseDTO);
+            // pass
         }
 
         public PingSweepResponseDTO getResponse() {
             return responseDTO;
         }
-
-        public CountDownLatch getLatch() {
-            return m_doneSignal;
-        }
-
     }
 
     @Override
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.model.topology;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opennms.netmgt.model.BridgeMacLink;
+import org.opennms.netmgt.model.BridgeMacLink.BridgeDot1qTpFdbStatus;
+
+/**
+ * Primitive representation of the bridge forwarding table of one bridge.
+ *
+ * Learned entries are stored as a sorted array of interned mac indexes with
+ * a parallel array of bridge ports, so that the port of a mac is found by
+ * binary search. Learned and self macs are also kept as bitsets, so that the
+ * common macs of two bridges are a bitset intersection.
+ *
+ * When the same mac is learned more than once (e.g. on several vlans) the
+ * last entry in the bft wins, as it did with the map based lookup.
+ */
+public class BridgeForwardingTable {
+
+    private final Integer m_bridgeId;
+    private final List<BridgeMacLink> m_bft;
+    private final int[] m_learnedMacs;
+    private final int[] m_learnedPorts;
+    private final BitSet m_learned = new BitSet();
+    private final BitSet m_self = new BitSet();
+    private final Map<Integer, BitSet> m_portSets = new HashMap<Integer, BitSet>();
+
+    BridgeForwardingTable(BridgeForwardingTableIndex index, Integer bridgeId, List<BridgeMacLink> bft) {
+        m_bridgeId = bridgeId;
+        m_bft = bft;
+
+        final int size = bft == null ? 0 : bft.size();
+        final int[] ports = new int[size];
+        // (mac index << 32 | position) so that sorting keeps the bft order for duplicates
+        final long[] entries = new long[size];
+        int learned = 0;
+        for (int i = 0; i < size; i++) {
+            BridgeMacLink link = bft.get(i);
+            if (link.getNode() == null || link.getNode().getId() == null
+                    || bridgeId.intValue() != link.getNode().getId().intValue()) {
+                continue;
+            }
+            if (link.getBridgeDot1qTpFdbStatus() == BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_SELF) {
+                m_self.set(index.intern(link.getMacAddress()));
+            } else if (link.getBridgeDot1qTpFdbStatus() == BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED
+                    && link.getBridgePort() != null) {
+                ports[learned] = link.getBridgePort();
+                entries[learned] = ((long) index.intern(link.getMacAddress()) << 32) | learned;
+                learned++;
+            }
+        }
+        Arrays.sort(entries, 0, learned);
+
+        int[] macs = new int[learned];
+        int[] macPorts = new int[learned];
+        int count = 0;
+        for (int i = 0; i < learned; i++) {
+            int mac = (int) (entries[i] >>> 32);
+            int port = ports[(int) entries[i]];
+            if (count > 0 && macs[count - 1] == mac) {
+                macPorts[count - 1] = port;
+                continue;
+            }
+            macs[count] = mac;
+            macPorts[count] = port;
+            m_learned.set(mac);
+            count++;
+        }
+        m_learnedMacs = Arrays.copyOf(macs, count);
+        m_learnedPorts = Arrays.copyOf(macPorts, count);
+    }
+
+    public Integer getBridgeId() {
+        return m_bridgeId;
+    }
+
+    public boolean isBuiltFrom(List<BridgeMacLink> bft) {
+        return m_bft == bft;
+    }
+
+    /**
+     * @return the bridge port where the mac is learned or
+     * {@link BridgeForwardingTableIndex#NOT_FOUND}.
+     */
+    public int getPort(int mac) {
+        if (mac < 0) {
+            return BridgeForwardingTableIndex.NOT_FOUND;
+        }
+        int pos = Arrays.binarySearch(m_learnedMacs, mac);
+        return pos < 0 ? BridgeForwardingTableIndex.NOT_FOUND : m_learnedPorts[pos];
+    }
+
+    public boolean isLearned(int mac) {
+        return mac >= 0 && m_learned.get(mac);
+    }
+
+    /**
+     * @return a copy of the learned macs bitset.
+     */
+    public BitSet getLearned() {
+        return (BitSet) m_learned.clone();
+    }
+
+    /**
+     * @return a copy of the self macs bitset.
+     */
+    public BitSet getSelf() {
+        return (BitSet) m_self.clone();
+    }
+
+    public BitSet getCommonLearned(BridgeForwardingTable other) {
+        BitSet common = getLearned();
+        common.and(other.m_learned);
+        return common;
+    }
+
+    /**
+     * @return the macs learned on the given port; the set is computed once
+     * and must not be modified.
+     */
+    public BitSet getPortSet(int port) {
+        BitSet portSet = m_portSets.get(port);
+        if (portSet == null) {
+            portSet = new BitSet();
+            for (int i = 0; i < m_learnedMacs.length; i++) {
+                if (m_learnedPorts[i] == port) {
+                    portSet.set(m_learnedMacs[i]);
+                }
+            }
+            m_portSets.put(port, portSet);
+        }
+        return portSet;
+    }
+
+    public int size() {
+        return m_learnedMacs.length;
+    }
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.model.topology;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.opennms.netmgt.model.BridgeMacLink;
+
+/**
+ * Interns the MAC addresses seen on a {@link BroadcastDomain} and keeps one
+ * {@link BridgeForwardingTable} per bridge.
+ *
+ * Every MAC address is parsed once into a primitive <code>long</code> and
+ * given a dense integer index, so that forwarding tables can be stored as
+ * sorted primitive arrays and bitsets and compared with bitset intersections
+ * instead of building <code>Map&lt;String,BridgeMacLink&gt;</code> for every
+ * pair of bridges.
+ *
+ * Tables are kept per bridge and are rebuilt only when the bridge gets an
+ * updated BFT, so a recalculation of a domain in which only a few bridges
+ * changed does not re-index the unchanged ones.
+ *
+ * The index is not thread safe: callers are expected to hold the lock on the
+ * owning {@link BroadcastDomain}.
+ */
+public class BridgeForwardingTableIndex {
+
+    public static final int NOT_FOUND = -1;
+
+    private static final long FREE = -1L;
+
+    private static final int MAC_STRING_LENGTH = 12;
+
+    // open addressing long -> int map from mac to dense index
+    private long[] m_keys = new long[1024];
+    private int[] m_values = new int[1024];
+    private int m_keyCount = 0;
+
+    // dense index -> mac
+    private long[] m_macs = new long[1024];
+    private int m_size = 0;
+
+    // addresses that cannot be represented as 48 bit values
+    private final Map<String, Integer> m_invalidMacs = new HashMap<String, Integer>();
+
+    private final Map<Integer, BridgeForwardingTable> m_tables = new HashMap<Integer, BridgeForwardingTable>();
+
+    public BridgeForwardingTableIndex() {
+        Arrays.fill(m_keys, FREE);
+    }
+
+    /**
+     * Parses a 12 hex digits mac address into a long.
+     *
+     * @return the 48 bit value of the mac address or -1 if the string is
+     * not a valid mac address.
+     */
+    public static long macToLong(String mac) {
+        if (mac == null || mac.length() != MAC_STRING_LENGTH) {
+            return FREE;
+        }
+        long value = 0L;
+        for (int i = 0; i < MAC_STRING_LENGTH; i++) {
+            int digit = Character.digit(mac.charAt(i), 16);
+            if (digit < 0) {
+                return FREE;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    public static String longToMac(long mac) {
+        final char[] chars = new char[MAC_STRING_LENGTH];
+        for (int i = MAC_STRING_LENGTH - 1; i >= 0; i--) {
+            chars[i] = Character.forDigit((int) (mac & 0xf), 16);
+            mac >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns the dense index of the mac address, adding it if it was not
+     * yet known.
+     */
+    public int intern(String mac) {
+        long value = macToLong(mac);
+        if (value == FREE) {
+            Integer index = m_invalidMacs.get(mac);
+            if (index == null) {
+                index = add(FREE);
+                m_invalidMacs.put(mac, index);
+            }
+            return index;
+        }
+        int slot = slot(value);
+        if (m_keys[slot] == value) {
+            return m_values[slot];
+        }
+        int index = add(value);
+        m_keys[slot] = value;
+        m_values[slot] = index;
+        if (++m_keyCount * 2 > m_keys.length) {
+            rehash();
+        }
+        return index;
+    }
+
+    /**
+     * Returns the dense index of the mac address or {@link #NOT_FOUND}.
+     */
+    public int indexOf(String mac) {
+        long value = macToLong(mac);
+        if (value == FREE) {
+            Integer index = m_invalidMacs.get(mac);
+            return index == null ? NOT_FOUND : index;
+        }
+        int slot = slot(value);
+        return m_keys[slot] == value ? m_values[slot] : NOT_FOUND;
+    }
+
+    public String getMacAddress(int index) {
+        if (index < 0 || index >= m_size) {
+            return null;
+        }
+        if (m_macs[index] != FREE) {
+            return longToMac(m_macs[index]);
+        }
+        for (Map.Entry<String, Integer> entry : m_invalidMacs.entrySet()) {
+            if (entry.getValue().intValue() == index) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    public BitSet toBitSet(Set<String> macs) {
+        BitSet bits = new BitSet(m_size);
+        if (macs == null) {
+            return bits;
+        }
+        for (String mac : macs) {
+            bits.set(intern(mac));
+        }
+        return bits;
+    }
+
+    /**
+     * Replaces the table of the bridge with a table built from the given bft.
+     * To be called when the bridge gets an updated bft.
+     */
+    public BridgeForwardingTable update(Integer bridgeId, List<BridgeMacLink> bft) {
+        BridgeForwardingTable table = new BridgeForwardingTable(this, bridgeId, bft);
+        m_tables.put(bridgeId, table);
+        return table;
+    }
+
+    /**
+     * Returns the table of the bridge if it was built from the same bft,
+     * otherwise a table is built for the given bft without replacing the
+     * stored one.
+     */
+    public BridgeForwardingTable getTable(Integer bridgeId, List<BridgeMacLink> bft) {
+        BridgeForwardingTable table = m_tables.get(bridgeId);
+        if (table != null && table.isBuiltFrom(bft)) {
+            return table;
+        }
+        return new BridgeForwardingTable(this, bridgeId, bft);
+    }
+
+    public BridgeForwardingTable getTable(Integer bridgeId) {
+        return m_tables.get(bridgeId);
+    }
+
+    public void remove(Integer bridgeId) {
+        m_tables.remove(bridgeId);
+    }
+
+    public void clear() {
+        m_tables.clear();
+    }
+
+    private int add(long value) {
+        if (m_size == m_macs.length) {
+            m_macs = Arrays.copyOf(m_macs, m_size * 2);
+        }
+        m_macs[m_size] = value;
+        return m_size++;
+    }
+
+    private int slot(long value) {
+        int mask = m_keys.length - 1;
+        int slot = hash(value) & mask;
+        while (m_keys[slot] != FREE && m_keys[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        long[] keys = m_keys;
+        int[] values = m_values;
+        m_keys = new long[keys.length * 2];
+        m_values = new int[keys.length * 2];
+        Arrays.fill(m_keys, FREE);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == FREE) {
+                continue;
+            }
+            int slot = slot(keys[i]);
+            m_keys[slot] = keys[i];
+            m_values[slot] = values[i];
+        }
+    }
+
+    private static int hash(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -48,6 +48,12 @@ public class BroadcastDomain {
     
     volatile Map<Integer,List<BridgeMacLink>> m_forwarding = new HashMap<Integer,List<BridgeMacLink>>();
 
+    final BridgeForwardingTableIndex m_bftIndex = new BridgeForwardingTableIndex();
+
+    public BridgeForwardingTableIndex getBridgeForwardingTableIndex() {
+        return m_bftIndex;
+    }
+
     public void addForwarding(BridgeMacLink forward) {
         Integer bridgeid = forward.getNode().getId();
         if (bridgeid == null)
@@ -247,6 +253,7 @@ E:    	for (BridgeElement element: bridgeelements) {
         // if not in domain: return
         if (bridge==null)
             return;
+        m_bftIndex.remove(bridgeId);
         // if last bridge in domain: clear all and return
         if (m_bridges.size() == 1) {
             m_topology.clear();
@@ -468,6 +475,7 @@ E:    	for (BridgeElement element: bridgeelements) {
         m_topology.clear();
         m_bridges.clear();
         m_forwarding.clear();
+        m_bftIndex.clear();
     }
     
     public String printTopology() {
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.model.topology;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.opennms.netmgt.model.BridgeMacLink;
+import org.opennms.netmgt.model.BridgeMacLink.BridgeDot1qTpFdbStatus;
+import org.opennms.netmgt.model.OnmsNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class BridgeForwardingTableIndexTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BridgeForwardingTableIndexTest.class);
+
+    private final Map<Integer, OnmsNode> m_nodes = new HashMap<Integer, OnmsNode>();
+
+    @Test
+    public void testMacConversion() {
+        assertEquals(0x001e58a6aed7L, BridgeForwardingTableIndex.macToLong("001e58a6aed7"));
+        assertEquals(0x001e58a6aed7L, BridgeForwardingTableIndex.macToLong("001E58A6AED7"));
+        assertEquals("001e58a6aed7", BridgeForwardingTableIndex.longToMac(0x001e58a6aed7L));
+        assertEquals(-1L, BridgeForwardingTableIndex.macToLong("00:1e:58:a6:ae:d7"));
+        assertEquals(-1L, BridgeForwardingTableIndex.macToLong("00zz58a6aed7"));
+        assertEquals(-1L, BridgeForwardingTableIndex.macToLong(null));
+    }
+
+    @Test
+    public void testIntern() {
+        BridgeForwardingTableIndex index = new BridgeForwardingTableIndex();
+        assertEquals(BridgeForwardingTableIndex.NOT_FOUND, index.indexOf("001e58a6aed7"));
+        int mac = index.intern("001e58a6aed7");
+        assertEquals(mac, index.intern("001E58A6AED7"));
+        assertEquals(mac, index.indexOf("001e58a6aed7"));
+        assertEquals("001e58a6aed7", index.getMacAddress(mac));
+
+        int invalid = index.intern("not a mac");
+        assertEquals(invalid, index.indexOf("not a mac"));
+        assertEquals("not a mac", index.getMacAddress(invalid));
+        assertEquals(2, index.size());
+
+        // force a few rehash
+        for (long i = 0; i < 10000; i++) {
+            assertEquals(i + 2, index.intern(BridgeForwardingTableIndex.longToMac(i)));
+        }
+        assertEquals(mac, index.indexOf("001e58a6aed7"));
+        assertEquals(5002, index.indexOf(BridgeForwardingTableIndex.longToMac(5000)));
+    }
+
+    @Test
+    public void testTable() {
+        BridgeForwardingTableIndex index = new BridgeForwardingTableIndex();
+        List<BridgeMacLink> bft = new ArrayList<BridgeMacLink>();
+        bft.add(link(1, 10, "000000000001", BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED));
+        bft.add(link(1, 11, "000000000002", BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED));
+        // learned on two vlans: last one wins
+        bft.add(link(1, 12, "000000000001", BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED));
+        bft.add(link(1, 0, "0000000000ff", BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_SELF));
+        // entries of other bridges are ignored
+        bft.add(link(2, 20, "000000000003", BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED));
+
+        BridgeForwardingTable table = index.update(1, bft);
+        assertEquals(2, table.size());
+        assertEquals(12, table.getPort(index.indexOf("000000000001")));
+        assertEquals(11, table.getPort(index.indexOf("000000000002")));
+        assertEquals(BridgeForwardingTableIndex.NOT_FOUND, table.getPort(index.indexOf("000000000003")));
+        assertEquals(BridgeForwardingTableIndex.NOT_FOUND, table.getPort(index.indexOf("0000000000ff")));
+        assertEquals(BridgeForwardingTableIndex.NOT_FOUND, table.getPort(BridgeForwardingTableIndex.NOT_FOUND));
+        assertTrue(table.getSelf().get(index.indexOf("0000000000ff")));
+        assertFalse(table.isLearned(index.indexOf("0000000000ff")));
+        assertEquals(1, table.getPortSet(12).cardinality());
+        assertTrue(table.getPortSet(10).isEmpty());
+
+        assertSame(table, index.getTable(1, bft));
+        assertNotSame(table, index.getTable(1, new ArrayList<BridgeMacLink>(bft)));
+        index.remove(1);
+        assertNotSame(table, index.getTable(1, bft));
+    }
+
+    @Test
+    public void testCommonLearned() {
+        BridgeForwardingTableIndex index = new BridgeForwardingTableIndex();
+        List<BridgeMacLink> xbft = new ArrayList<BridgeMacLink>();
+        xbft.add(link(1, 1, "000000000001", BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED));
+        xbft.add(link(1, 1, "000000000002", BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED));
+        xbft.add(link(1, 2, "000000000003", BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED));
+        List<BridgeMacLink> ybft = new ArrayList<BridgeMacLink>();
+        ybft.add(link(2, 5, "000000000002", BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED));
+        ybft.add(link(2, 5, "000000000003", BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED));
+        ybft.add(link(2, 6, "000000000004", BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED));
+
+        BitSet common = index.update(1, xbft).getCommonLearned(index.update(2, ybft));
+        assertEquals(2, common.cardinality());
+        assertTrue(common.get(index.indexOf("000000000002")));
+        assertTrue(common.get(index.indexOf("000000000003")));
+    }
+
+    @Test
+    public void testSyntheticTopology() {
+        syntheticTopology(4, 3);
+    }
+
+    /*
+     * Only runs when the org.opennms.enlinkd.bft.benchmark system property is set to true.
+     */
+    @Test
+    public void testSyntheticTopologyBenchmark() {
+        assumeTrue(Boolean.getBoolean("org.opennms.enlinkd.bft.benchmark"));
+        syntheticTopology(Integer.getInteger("org.opennms.enlinkd.bft.benchmark.bridges", 200),
+                          Integer.getInteger("org.opennms.enlinkd.bft.benchmark.hosts", 24));
+    }
+
+    /*
+     * Synthetic L2 topology: a root bridge with one port to each of the other
+     * bridges, every bridge has a number of hosts on its access ports.
+     * The time spent to index all the bft and to compute the root - bridge
+     * common macs and connection ports is logged.
+     */
+    private void syntheticTopology(final int bridges, final int hosts) {
+        final int uplink = 1000;
+
+        List<BridgeMacLink> rootBft = new ArrayList<BridgeMacLink>();
+        Map<Integer, List<BridgeMacLink>> bfts = new HashMap<Integer, List<BridgeMacLink>>();
+        for (int b = 1; b <= bridges; b++) {
+            bfts.put(b, new ArrayList<BridgeMacLink>());
+        }
+        for (int b = 1; b <= bridges; b++) {
+            for (int h = 1; h <= hosts; h++) {
+                String mac = BridgeForwardingTableIndex.longToMac(((long) b << 16) | h);
+                rootBft.add(link(0, b, mac, BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED));
+                for (int o = 1; o <= bridges; o++) {
+                    bfts.get(o).add(link(o, o == b ? h : uplink, mac, BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED));
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        BridgeForwardingTableIndex index = new BridgeForwardingTableIndex();
+        BridgeForwardingTable root = index.update(0, rootBft);
+        for (int b = 1; b <= bridges; b++) {
+            index.update(b, bfts.get(b));
+        }
+        long indexed = System.nanoTime();
+
+        for (int b = 1; b <= bridges; b++) {
+            BridgeForwardingTable bridge = index.getTable(b, bfts.get(b));
+            BitSet common = root.getCommonLearned(bridge);
+            assertEquals(bridges * hosts, common.cardinality());
+            int ownHost = index.indexOf(BridgeForwardingTableIndex.longToMac(((long) b << 16) | 1));
+            assertEquals(b, root.getPort(ownHost));
+            assertEquals(1, bridge.getPort(ownHost));
+            int otherHost = index.indexOf(BridgeForwardingTableIndex.longToMac(((long) (b % bridges + 1) << 16) | 1));
+            if (bridges > 1) {
+                assertEquals(uplink, bridge.getPort(otherHost));
+            }
+        }
+        long compared = System.nanoTime();
+
+        LOG.info("syntheticTopology: bridges: {}, macs: {}, entries: {}, index: {} ms, compare root with all bridges: {} ms",
+                 bridges + 1, index.size(), rootBft.size() * (bridges + 1),
+                 (indexed - start) / 1000000, (compared - indexed) / 1000000);
+    }
+
+    private BridgeMacLink link(int nodeid, int port, String mac, BridgeDot1qTpFdbStatus status) {
+        OnmsNode node = m_nodes.get(nodeid);
+        if (node == null) {
+            node = new OnmsNode();
+            node.setId(nodeid);
+            m_nodes.put(nodeid, node);
+        }
+        BridgeMacLink link = new BridgeMacLink();
+        link.setNode(node);
+        link.setBridgePort(port);
+        link.setMacAddress(mac);
+        link.setBridgeDot1qTpFdbStatus(status);
+        return link;
+    }
+}
@@ -123,6 +123,16 @@ public interface EnhancedLinkdService {
 
     void store(int nodeId, CdpLink link);
 
+    /**
+     * Stores all the lldp links of the node with a single bulk upsert.
+     */
+    void storeLldpLinks(int nodeId, List<LldpLink> links);
+
+    /**
+     * Stores all the cdp links of the node with a single bulk upsert.
+     */
+    void storeCdpLinks(int nodeId, List<CdpLink> links);
+
     void store(int nodeId, IpNetToMedia link);
 
     void store(int nodeId, BridgeElement bridge);
@@ -53,6 +53,7 @@ import org.opennms.netmgt.dao.api.LldpLinkDao;
 import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.dao.api.OspfElementDao;
 import org.opennms.netmgt.dao.api.OspfLinkDao;
+import org.opennms.netmgt.dao.support.BatchUpsertTemplate;
 import org.opennms.netmgt.dao.support.UpsertTemplate;
 import org.opennms.netmgt.model.BridgeElement;
 import org.opennms.netmgt.model.BridgeMacLink;
@@ -305,6 +306,84 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
         }.execute();
     }
 
+    @Override
+    @Transactional
+    public void storeCdpLinks(final int nodeId, final List<CdpLink> links) {
+        if (links == null || links.isEmpty())
+            return;
+        final OnmsNode node = m_nodeDao.get(nodeId);
+        if (node == null)
+            return;
+        new BatchUpsertTemplate<CdpLink, List<Integer>, CdpLinkDao>(m_transactionManager,
+                                                                    m_cdpLinkDao) {
+
+            @Override
+            protected List<CdpLink> query() {
+                return m_dao.findByNodeId(nodeId);
+            }
+
+            @Override
+            protected List<Integer> getKey(CdpLink link) {
+                return Arrays.asList(link.getCdpCacheIfIndex(), link.getCdpCacheDeviceIndex());
+            }
+
+            @Override
+            protected CdpLink doUpdate(CdpLink dbCdpLink, CdpLink saveMe) {
+                dbCdpLink.merge(saveMe);
+                m_dao.update(dbCdpLink);
+                return dbCdpLink;
+            }
+
+            @Override
+            protected CdpLink doInsert(CdpLink saveMe) {
+                saveMe.setNode(node);
+                saveMe.setCdpLinkLastPollTime(saveMe.getCdpLinkCreateTime());
+                m_dao.saveOrUpdate(saveMe);
+                return saveMe;
+            }
+
+        }.execute(links);
+    }
+
+    @Override
+    @Transactional
+    public void storeLldpLinks(final int nodeId, final List<LldpLink> links) {
+        if (links == null || links.isEmpty())
+            return;
+        final OnmsNode node = m_nodeDao.get(nodeId);
+        if (node == null)
+            return;
+        new BatchUpsertTemplate<LldpLink, Integer, LldpLinkDao>(m_transactionManager,
+                                                                m_lldpLinkDao) {
+
+            @Override
+            protected List<LldpLink> query() {
+                return m_dao.findByNodeId(nodeId);
+            }
+
+            @Override
+            protected Integer getKey(LldpLink link) {
+                return link.getLldpLocalPortNum();
+            }
+
+            @Override
+            protected LldpLink doUpdate(LldpLink dbLldpLink, LldpLink saveMe) {
+                dbLldpLink.merge(saveMe);
+                m_dao.update(dbLldpLink);
+                return dbLldpLink;
+            }
+
+            @Override
+            protected LldpLink doInsert(LldpLink saveMe) {
+                saveMe.setNode(node);
+                saveMe.setLldpLinkLastPollTime(saveMe.getLldpLinkCreateTime());
+                m_dao.saveOrUpdate(saveMe);
+                return saveMe;
+            }
+
+        }.execute(links);
+    }
+
     @Override
     public void store(int nodeId, LldpLink link) {
         if (link == null)
@@ -293,6 +293,30 @@ public abstract class NodeDiscovery implements ReadyRunnable {
 
     public void setPackageName(String pkgName) {
     }
+
+    /**
+     * <p>
+     * getPartitionKey
+     * </p>
+     * 
+     * The collections of a node are partitioned by node id.
+     * 
+     * @return an int.
+     */
+    public int getPartitionKey() {
+        return getNodeId();
+    }
+
+    /**
+     * <p>
+     * isLongRunning
+     * </p>
+     * 
+     * @return a boolean.
+     */
+    public boolean isLongRunning() {
+        return false;
+    }
     /**
      * <p>
      * getInitialSleepTime
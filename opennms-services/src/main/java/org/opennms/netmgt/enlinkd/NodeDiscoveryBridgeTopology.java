@@ -29,6 +29,7 @@
 package org.opennms.netmgt.enlinkd;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -39,6 +40,8 @@ import java.util.Set;
 import org.opennms.netmgt.model.BridgeMacLink;
 import org.opennms.netmgt.model.BridgeMacLink.BridgeDot1qTpFdbStatus;
 import org.opennms.netmgt.model.topology.Bridge;
+import org.opennms.netmgt.model.topology.BridgeForwardingTable;
+import org.opennms.netmgt.model.topology.BridgeForwardingTableIndex;
 import org.opennms.netmgt.model.topology.BridgePort;
 import org.opennms.netmgt.model.topology.BroadcastDomain;
 import org.opennms.netmgt.model.topology.SharedSegment;
@@ -113,10 +116,7 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
 
         public BridgeTopologyHelper(Bridge xBridge, List<BridgeMacLink> xBFT,Bridge yBridge, List<BridgeMacLink> yBFT) {
             super();
-            Map<String,BridgeMacLink> xmactoport = new HashMap<String, BridgeMacLink>();
-            Map<String,BridgeMacLink> ymactoport = new HashMap<String, BridgeMacLink>();
-            Set<String> xmacs = new HashSet<String>();
-            Set<String> ymacs = new HashSet<String>();             		
+            BridgeForwardingTableIndex index = m_domain.getBridgeForwardingTableIndex();
             if (LOG.isDebugEnabled()) {
                 LOG.debug("simple connection [{} <--> {}]: searching.\n xbft\n{}\n ybft\n{}",
                     xBridge.getId(),
@@ -124,27 +124,15 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
                     BroadcastDomain.printTopologyBFT(xBFT),
                     BroadcastDomain.printTopologyBFT(yBFT));
             }
-            for (BridgeMacLink xlink: xBFT) {
-                if (xBridge.getId().intValue() == xlink.getNode().getId().intValue() && xlink.getBridgeDot1qTpFdbStatus() == BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED) {
-                    xmactoport.put(xlink.getMacAddress(), xlink);
-                }
-                if (xBridge.getId().intValue() == xlink.getNode().getId().intValue() && xlink.getBridgeDot1qTpFdbStatus() == BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_SELF) 
-                    xmacs.add(xlink.getMacAddress());
-            }
-            for (BridgeMacLink ylink: yBFT) {
-                if (yBridge.getId().intValue() == ylink.getNode().getId().intValue() && ylink.getBridgeDot1qTpFdbStatus() == BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED) {
-                    ymactoport.put(ylink.getMacAddress(), ylink);
-                }
-                if (yBridge.getId().intValue() == ylink.getNode().getId().intValue() && ylink.getBridgeDot1qTpFdbStatus() == BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_SELF) 
-                    ymacs.add(ylink.getMacAddress());
-            }
-            if (m_domain.getBridgeMacAddresses(xBridge.getId()) != null)
-                xmacs.addAll(m_domain.getBridgeMacAddresses(xBridge.getId()));
-            if (m_domain.getBridgeMacAddresses(yBridge.getId()) != null)
-                ymacs.addAll(m_domain.getBridgeMacAddresses(yBridge.getId()));
+            BridgeForwardingTable xmactoport = index.getTable(xBridge.getId(), xBFT);
+            BridgeForwardingTable ymactoport = index.getTable(yBridge.getId(), yBFT);
+            BitSet xmacs = xmactoport.getSelf();
+            BitSet ymacs = ymactoport.getSelf();
+            xmacs.or(index.toBitSet(m_domain.getBridgeMacAddresses(xBridge.getId())));
+            ymacs.or(index.toBitSet(m_domain.getBridgeMacAddresses(yBridge.getId())));
 
             // there is a mac of Y found on X BFT
-            Integer xy = condition1(ymacs, xmactoport);
+            Integer xy = condition1(index, ymacs, xmactoport);
             if (xy != null) {
             	m_xy=xy;
                 LOG.debug("simple connection: [{} port: {} --> {}].",
@@ -154,7 +142,7 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
             }
 
             // there is a mac of X found on Y BFT
-            Integer yx = condition1(xmacs, ymactoport);
+            Integer yx = condition1(index, xmacs, ymactoport);
             if (yx != null) {
             	m_yx=yx;
                 LOG.debug("simple connection: [{} <-- {} port: {}].",
@@ -164,18 +152,17 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
             }
             	            
             if (m_xy == null || m_yx == null) {
-                Set<String> commonlearnedmacs = new HashSet<String>(xmactoport.keySet()); 
-                commonlearnedmacs.retainAll(new HashSet<String>(ymactoport.keySet()));
+                BitSet commonlearnedmacs = xmactoport.getCommonLearned(ymactoport);
                 LOG.debug("simple connection: [{} <--> {}] common (learned mac): {}",
                 		xBridge.getId(),
                 		yBridge.getId(),
-                		commonlearnedmacs);
+                		commonlearnedmacs.cardinality());
                 if (m_yx != null && m_xy == null) { 
-                    m_xy = condition2(commonlearnedmacs,m_yx,ymactoport,xmactoport);
+                    m_xy = condition2(index,commonlearnedmacs,m_yx,ymactoport,xmactoport);
                 } else if (m_yx == null && m_xy != null) {
-                    m_yx = condition2(commonlearnedmacs,m_xy,xmactoport,ymactoport);
+                    m_yx = condition2(index,commonlearnedmacs,m_xy,xmactoport,ymactoport);
                 } else {
-                    List<Integer> ports = condition3(commonlearnedmacs,xmactoport,ymactoport);
+                    List<Integer> ports = condition3(index,commonlearnedmacs,xmactoport,ymactoport);
                     if (ports.size() == 2) {
                         m_xy = ports.get(0);
                         m_yx= ports.get(1);
@@ -194,9 +181,10 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
             BridgeMacLink xylink = null;
             BridgeMacLink yxlink = null;
             for (BridgeMacLink xlink: xBFT) {
+                int yport = ymactoport.getPort(index.indexOf(xlink.getMacAddress()));
                 if (xlink.getBridgePort() == m_xy && xlink.getBridgeDot1qTpFdbStatus() == BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED) {
-                    if (ymactoport.get(xlink.getMacAddress()) != null 
-                    		&& m_yx == ymactoport.get(xlink.getMacAddress()).getBridgePort()) {
+                    if (yport != BridgeForwardingTableIndex.NOT_FOUND 
+                    		&& m_yx.intValue() == yport) {
                     	m_macsOnSegment.add(xlink.getMacAddress());
                         LOG.debug("simple connection: [{}, port {}] <--> [{}, port {}], forward set: mac added: [bridge:[{}],port:{},mac:{}].", 
                                   xBridge.getId(), 
@@ -206,7 +194,7 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
                                   xlink.getNode().getId(),
                     		xlink.getBridgePort(),
                     		xlink.getMacAddress());
-                    } else if (ymactoport.get(xlink.getMacAddress()) == null){
+                    } else if (yport == BridgeForwardingTableIndex.NOT_FOUND){
                         m_forwardersX.add(xlink);
                         LOG.debug("simple connection: [{}, port {}] <--> [{}, port {}], through set: mac added: [bridge:[{}],port:{},mac:{}].", 
                                   xBridge.getId(), 
@@ -235,9 +223,10 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
             }
             
             for (BridgeMacLink ylink: yBFT) {
+                int xport = xmactoport.getPort(index.indexOf(ylink.getMacAddress()));
                 if (ylink.getBridgePort() == m_yx && ylink.getBridgeDot1qTpFdbStatus() == BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED) {
-                    if ( xmactoport.get(ylink.getMacAddress()) != null &&
-                    		m_xy == xmactoport.get(ylink.getMacAddress()).getBridgePort()) {
+                    if (xport != BridgeForwardingTableIndex.NOT_FOUND &&
+                    		m_xy.intValue() == xport) {
                     	m_macsOnSegment.add(ylink.getMacAddress());
                         LOG.debug("simple connection: [{}, port {}] <--> [{}, port {}], forward set: mac added: [bridge:[{}],port:{},mac:{}].", 
                                   xBridge.getId(), 
@@ -247,7 +236,7 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
                                   ylink.getNode().getId(),
                                 ylink.getBridgePort(),
                                 ylink.getMacAddress());
-                    } else if (xmactoport.get(ylink.getMacAddress()) == null){
+                    } else if (xport == BridgeForwardingTableIndex.NOT_FOUND){
                         m_forwardersY.add(ylink);
                         LOG.debug("simple connection: [{}, port {}] <--> [{}, port {}], through set: mac added: [bridge:[{}],port:{},mac:{}].", 
                                   xBridge.getId(), 
@@ -305,7 +294,7 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
             }
         }
 
-        private List<Integer> condition3(Set<String> commonlearnedmacs,Map<String,BridgeMacLink> xbft,Map<String,BridgeMacLink> ybft) {
+        private List<Integer> condition3(BridgeForwardingTableIndex index, BitSet commonlearnedmacs,BridgeForwardingTable xbft,BridgeForwardingTable ybft) {
         
         //
         // condition 3XY
@@ -317,36 +306,36 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
         //                                                  m_2 belongs to FDB(p2,X) FDB(yx,Y) 
         //                                                  m_3 belongs to FDB(xy,X) FDB(p3,Y)
         //
-            String mac1=null;
-            String mac2=null;
-            Integer yp1=null;
-            Integer yp2=null;
-            Integer xp1=null;
-            Integer xp2=null;
+            int mac1=BridgeForwardingTableIndex.NOT_FOUND;
+            int mac2=BridgeForwardingTableIndex.NOT_FOUND;
+            int yp1=BridgeForwardingTableIndex.NOT_FOUND;
+            int yp2=BridgeForwardingTableIndex.NOT_FOUND;
+            int xp1=BridgeForwardingTableIndex.NOT_FOUND;
+            int xp2=BridgeForwardingTableIndex.NOT_FOUND;
             List<Integer> bbports = new ArrayList<Integer>(2);
-            for (String mac: commonlearnedmacs) {
-                LOG.debug("condition3: parsing common BFT mac: {}",mac);
-                if (mac1 == null) {
+            for (int mac = commonlearnedmacs.nextSetBit(0); mac >= 0; mac = commonlearnedmacs.nextSetBit(mac+1)) {
+                LOG.debug("condition3: parsing common BFT mac: {}",index.getMacAddress(mac));
+                if (mac1 == BridgeForwardingTableIndex.NOT_FOUND) {
                     mac1=mac;
-                    yp1=ybft.get(mac).getBridgePort();
-                    xp1=xbft.get(mac).getBridgePort();
-                    LOG.debug("condition3: mac1: {} xp1: {} yp1: {} ", mac1,xp1,yp1);
+                    yp1=ybft.getPort(mac);
+                    xp1=xbft.getPort(mac);
+                    LOG.debug("condition3: mac1: {} xp1: {} yp1: {} ", index.getMacAddress(mac1),xp1,yp1);
                     continue;
                 }
-                if (ybft.get(mac).getBridgePort() == yp1 && xbft.get(mac).getBridgePort() == xp1)
+                if (ybft.getPort(mac) == yp1 && xbft.getPort(mac) == xp1)
                     continue;
-                if (mac2 == null) {
+                if (mac2 == BridgeForwardingTableIndex.NOT_FOUND) {
                     mac2=mac;
-                    yp2=ybft.get(mac).getBridgePort();
-                    xp2=xbft.get(mac).getBridgePort();
-                    LOG.debug("condition3: mac2: {} xp2: {} yp2: {} ", mac2,xp2,yp2);
+                    yp2=ybft.getPort(mac);
+                    xp2=xbft.getPort(mac);
+                    LOG.debug("condition3: mac2: {} xp2: {} yp2: {} ", index.getMacAddress(mac2),xp2,yp2);
                     continue;
                 }
-                if (ybft.get(mac).getBridgePort() == yp2 && xbft.get(mac).getBridgePort() == xp2)
+                if (ybft.getPort(mac) == yp2 && xbft.getPort(mac) == xp2)
                     continue;
-                Integer yp3 = ybft.get(mac).getBridgePort();
-                Integer xp3 = xbft.get(mac).getBridgePort();
-                LOG.debug("condition3: mac3: {} x3: {} yp3: {} ", mac,xp3,yp3);
+                int yp3 = ybft.getPort(mac);
+                int xp3 = xbft.getPort(mac);
+                LOG.debug("condition3: mac3: {} x3: {} yp3: {} ", index.getMacAddress(mac),xp3,yp3);
 
                 //m_1 belongs to FDB(p1,Y) FDB(xy,X) 
                 //m_2 belongs to FDB(p2,Y) FDB(xy,X) 
@@ -406,7 +395,7 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
 
             }
             // all macs on the same port
-            if (mac2 == null) {
+            if (mac1 != BridgeForwardingTableIndex.NOT_FOUND && mac2 == BridgeForwardingTableIndex.NOT_FOUND) {
             	bbports.add(0, xp1);
             	bbports.add(1, yp1);
             	return bbports;
@@ -417,46 +406,46 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
         // condition 2 yx found                         m_x belongs to FDB(yx,Y)
         // if exists m_1 and m_2, p1 and p2 on Y :      m_1 belongs to FDB(p1,Y) FDB(xy,X)
         //                                              m_2 belongs to FDB(p2,Y) FDB(xy,X)
-        private Integer condition2(Set<String> commonlearnedmacs, Integer yx, Map<String,BridgeMacLink> ybft, Map<String,BridgeMacLink> xbft) {
-            String mac1=null;
-            String mac2=null;
-            Integer p1=null;
-            Integer xy1=null;
-            Integer p2=null;
-            Integer xy2=null;
-            for (String mac: commonlearnedmacs) {
-                if (ybft.get(mac) == null || ybft.get(mac).getBridgePort() == null 
-                        ||xbft.get(mac) == null || xbft.get(mac).getBridgePort() == null )
+        private Integer condition2(BridgeForwardingTableIndex index, BitSet commonlearnedmacs, Integer yx, BridgeForwardingTable ybft, BridgeForwardingTable xbft) {
+            int mac1=BridgeForwardingTableIndex.NOT_FOUND;
+            int mac2=BridgeForwardingTableIndex.NOT_FOUND;
+            int p1=BridgeForwardingTableIndex.NOT_FOUND;
+            int xy1=BridgeForwardingTableIndex.NOT_FOUND;
+            int p2=BridgeForwardingTableIndex.NOT_FOUND;
+            int xy2=BridgeForwardingTableIndex.NOT_FOUND;
+            for (int mac = commonlearnedmacs.nextSetBit(0); mac >= 0; mac = commonlearnedmacs.nextSetBit(mac+1)) {
+                if (ybft.getPort(mac) == BridgeForwardingTableIndex.NOT_FOUND
+                        || xbft.getPort(mac) == BridgeForwardingTableIndex.NOT_FOUND)
                     continue;
-                if (mac1 == null) {
+                if (mac1 == BridgeForwardingTableIndex.NOT_FOUND) {
                     mac1 = mac;
-                    p1 = ybft.get(mac).getBridgePort();
-                    xy1= xbft.get(mac).getBridgePort();
-                    LOG.debug("condition2: mac1: {} xy1: {} p1: {} ", mac1,xy1,p1);
-                    if (p1.intValue() != yx.intValue()) {
+                    p1 = ybft.getPort(mac);
+                    xy1= xbft.getPort(mac);
+                    LOG.debug("condition2: mac1: {} xy1: {} p1: {} ", index.getMacAddress(mac1),xy1,p1);
+                    if (p1 != yx.intValue()) {
                         LOG.debug("condition2: p1 is not yx: so is on the other side. xy bridge port {}",xy1);
                         return xy1;
                     }
                     continue;
                 }
-                if (ybft.get(mac).getBridgePort().intValue() == p1.intValue())
+                if (ybft.getPort(mac) == p1)
                     continue;
                 mac2 = mac;
-                p2 = ybft.get(mac).getBridgePort();
-                xy2= xbft.get(mac).getBridgePort();
-                LOG.debug("condition2: mac2: {} xy2: {} p2: {} ", mac2,xy2,p2);
+                p2 = ybft.getPort(mac);
+                xy2= xbft.getPort(mac);
+                LOG.debug("condition2: mac2: {} xy2: {} p2: {} ", index.getMacAddress(mac2),xy2,p2);
                 // p1 and p2 are both different then yx
-                if (xy2.intValue() == xy1.intValue()) {
+                if (xy2 == xy1) {
                     LOG.debug("condition2: p1 and p2 are both different then yx: xy bridge port {}",xy1);
                     return xy1;
                 }
                 // p1 is yx means the p2 is on the other side of the switch and xy2 is the port
-                if (p1.intValue() == yx) {
+                if (p1 == yx.intValue()) {
                     LOG.debug("condition2: p1 is yx: p2 is on the other side of the switch: xy bridge port {}",xy2);
                     return xy2;
                 }
                 // p2 is yx means the p1 is on the other side of the switch and xy1 is the port
-                if (p2.intValue() == yx) {
+                if (p2 == yx.intValue()) {
                     LOG.debug("condition2: p2 is yx: p1 is on the other side of the switch: xy bridge port {}",xy1);
                     return xy1;
                 }
@@ -464,17 +453,17 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
             return null;
         }
         
-        private Integer condition1(Set<String> bridgemacaddressess, Map<String,BridgeMacLink> otherbridgebft) {
-            for (String mac: bridgemacaddressess) {
-                if (otherbridgebft.containsKey(mac)) {
-                    LOG.debug("condition1: base address {} --> port: {} ",
-                    		mac,otherbridgebft.get(mac).getBridgePort());
-
-                    return otherbridgebft.get(mac).getBridgePort();
-                }
+        private Integer condition1(BridgeForwardingTableIndex index, BitSet bridgemacaddressess, BridgeForwardingTable otherbridgebft) {
+            BitSet found = otherbridgebft.getLearned();
+            found.and(bridgemacaddressess);
+            int mac = found.nextSetBit(0);
+            if (mac >= 0) {
+                LOG.debug("condition1: base address {} --> port: {} ",
+                		index.getMacAddress(mac),otherbridgebft.getPort(mac));
+                return otherbridgebft.getPort(mac);
             }
             LOG.debug("condition1: base address: {}. Not found.",
-            		bridgemacaddressess);
+            		bridgemacaddressess.cardinality());
             return null;
         }
         
@@ -727,6 +716,16 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
     protected void runCollection() {
     }
 
+    /**
+     * The topology calculations may run for hours on large broadcast domains,
+     * they are executed apart from the node collections. The calculations on
+     * the same domain are serialized by the domain lock.
+     */
+    @Override
+    public boolean isLongRunning() {
+        return true;
+    }
+
     @Override
     public String getName() {
         return "DiscoveryBridgeTopology";
@@ -800,6 +799,7 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
             LOG.debug("calculate: node: [{}], elected root bridge: [{}], has updated bft",
                     getNodeId(), 
                      electedRoot.getId());
+            m_domain.getBridgeForwardingTableIndex().update(electedRoot.getId(), rootBft);
             m_domain.clearTopologyForBridge(electedRoot.getId());
             LOG.debug("calculate: node: [{}], cleared topology: domain root bridge: [{}]",
                       getNodeId(), 
@@ -837,6 +837,8 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
         Set<Bridge> nodetobeparsed = new HashSet<Bridge>(m_notYetParsedBFTMap.keySet());
         for (Bridge xBridge: nodetobeparsed) {
             List<BridgeMacLink> xBft = new ArrayList<BridgeMacLink>(m_notYetParsedBFTMap.remove(xBridge));
+            // index the updated bft once: it is compared with every bridge on the path to the root
+            m_domain.getBridgeForwardingTableIndex().update(xBridge.getId(), xBft);
             calculate(electedRoot, rootBft, xBridge, xBft);            
         }
         m_domain.cleanForwarders(m_domain.getMacsOnDomain());
@@ -130,8 +130,10 @@ public final class NodeDiscoveryCdp extends NodeDiscovery {
                                                                                                      m_linkd.getLocationAwareSnmpClient(),
                                                                                                      getLocation(),
                                                                                                      getNodeId());
+        List<CdpLink> cdplinks = new ArrayList<>(links.size());
         for (CdpLink link: links)
-            m_linkd.getQueryManager().store(getNodeId(),cdpInterfacePortNameGetter.get(link));
+            cdplinks.add(cdpInterfacePortNameGetter.get(link));
+        m_linkd.getQueryManager().storeCdpLinks(getNodeId(), cdplinks);
         
         m_linkd.getQueryManager().reconcileCdp(getNodeId(),now);
     }
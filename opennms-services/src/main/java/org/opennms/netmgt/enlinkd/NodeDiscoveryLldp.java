@@ -154,8 +154,10 @@ public final class NodeDiscoveryLldp extends NodeDiscovery {
                 new LldpLocPortGetter(peer,
                                 m_linkd.getLocationAwareSnmpClient(),
                                 getLocation(),getNodeId());
+        List<LldpLink> lldplinks = new ArrayList<>(links.size());
         for (LldpLink link: links)
-            m_linkd.getQueryManager().store(getNodeId(),lldpLocPort.getLldpLink(link));
+            lldplinks.add(lldpLocPort.getLldpLink(link));
+        m_linkd.getQueryManager().storeLldpLinks(getNodeId(), lldplinks);
 
         m_linkd.getQueryManager().reconcileLldp(getNodeId(),now);
     }
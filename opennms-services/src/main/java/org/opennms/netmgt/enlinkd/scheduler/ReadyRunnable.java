@@ -90,4 +90,26 @@ public interface ReadyRunnable extends Runnable {
      */
     public void setPackageName(String pkg);
 
+    /**
+     * <p>getPartitionKey</p>
+     *
+     * Runnables with the same partition key are executed one at a time on
+     * the same scheduler partition, runnables with different keys may run
+     * concurrently.
+     *
+     * @return an int.
+     */
+    public int getPartitionKey();
+
+    /**
+     * <p>isLongRunning</p>
+     *
+     * Long running runnables are executed on a separate pool instead of the
+     * partitions, so that they do not delay the other runnables of their
+     * partition.
+     *
+     * @return a boolean.
+     */
+    public boolean isLongRunning();
+
 }
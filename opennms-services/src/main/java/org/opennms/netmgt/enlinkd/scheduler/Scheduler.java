@@ -34,8 +34,8 @@ import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.core.fiber.PausableFiber;
@@ -47,8 +47,12 @@ import org.slf4j.LoggerFactory;
 
 /**
  * This class implements a simple scheduler to ensure the polling occurs at the
- * expected intervals. The scheduler employees a dynamic thread pool that adjust
- * to the load until a maximum thread count is reached.
+ * expected intervals. Ready runnables are hash partitioned by their
+ * {@link ReadyRunnable#getPartitionKey() partition key} on a fixed number of
+ * single threaded partitions: runnables with the same key (the same node) are
+ * executed in order on the same thread, while independent keys are executed
+ * concurrently. {@link ReadyRunnable#isLongRunning() Long running} runnables
+ * are executed on a separate pool.
  */
 public class Scheduler implements Runnable, PausableFiber, ScheduleTimer {
     private static final Logger LOG = LoggerFactory.getLogger(Scheduler.class);
@@ -66,10 +70,18 @@ public class Scheduler implements Runnable, PausableFiber, ScheduleTimer {
     private volatile int m_scheduled;
 
     /**
-     * The pool of threads that are used to executed the runnable instances
-     * scheduled by the class' instance.
+     * The single threaded partitions that are used to executed the runnable
+     * instances scheduled by the class' instance.
      */
-    private final ExecutorService m_runner;
+    private final ThreadPoolExecutor[] m_partitions;
+
+    /**
+     * The pool executing the long running runnables, e.g. the bridge topology
+     * calculations.
+     */
+    private final ThreadPoolExecutor m_longRunning;
+
+    private final String m_name;
 
     /**
      * The status for this fiber.
@@ -99,10 +111,16 @@ public class Scheduler implements Runnable, PausableFiber, ScheduleTimer {
 	 */
 	public Scheduler(String parent, int maxSize) {
 		m_status = START_PENDING;
-		m_runner = Executors.newFixedThreadPool(
-			maxSize,
-			new LogPreservingThreadFactory(parent, maxSize)
-		);
+		m_name = parent + "-Scheduler";
+		final LogPreservingThreadFactory threadFactory = new LogPreservingThreadFactory(parent, maxSize);
+		m_partitions = new ThreadPoolExecutor[Math.max(1, maxSize)];
+		for (int i = 0; i < m_partitions.length; i++) {
+			m_partitions[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>(), threadFactory);
+		}
+		m_longRunning = new ThreadPoolExecutor(m_partitions.length, m_partitions.length, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new LogPreservingThreadFactory(parent + "-LongRunning", m_partitions.length));
+		m_longRunning.allowCoreThreadTimeOut(true);
 		m_queues = new ConcurrentSkipListMap<Long,BlockingQueue<ReadyRunnable>>();
 		m_scheduled = 0;
 		m_worker = null;
@@ -172,6 +190,16 @@ public class Scheduler implements Runnable, PausableFiber, ScheduleTimer {
 
 		final long timeToRun = getCurrentTime() + interval;
 		ReadyRunnable timeKeeper = new ReadyRunnable() {
+                        @Override
+			public int getPartitionKey() {
+				return runnable.getPartitionKey();
+			}
+
+                        @Override
+			public boolean isLongRunning() {
+				return runnable.isLongRunning();
+			}
+
                         @Override
 			public boolean isReady() {
 				return getCurrentTime() >= timeToRun && runnable.isReady();
@@ -426,7 +454,10 @@ public class Scheduler implements Runnable, PausableFiber, ScheduleTimer {
 
 		m_status = STOP_PENDING;
 		m_worker.interrupt();
-		m_runner.shutdown();
+		for (ExecutorService partition : m_partitions) {
+			partition.shutdown();
+		}
+		m_longRunning.shutdown();
 
 		LOG.debug("stop: scheduler stopped");
 	}
@@ -498,7 +529,42 @@ public class Scheduler implements Runnable, PausableFiber, ScheduleTimer {
 	 */
         @Override
 	public String getName() {
-		return m_runner.toString();
+		return m_name;
+	}
+
+	/**
+	 * Returns the partition executing the runnables with the given key.
+	 *
+	 * @param partitionKey
+	 *            the {@link ReadyRunnable#getPartitionKey() partition key}
+	 * @return the index of the partition.
+	 */
+	public int getPartition(int partitionKey) {
+		// spread the keys: node ids are sequential
+		int h = partitionKey * 0x9E3779B9;
+		return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % m_partitions.length;
+	}
+
+	/**
+	 * Returns the number of runnables waiting for execution on each partition.
+	 *
+	 * @return an array of int.
+	 */
+	public int[] getPartitionQueueSizes() {
+		int[] sizes = new int[m_partitions.length];
+		for (int i = 0; i < m_partitions.length; i++) {
+			sizes[i] = m_partitions[i].getQueue().size();
+		}
+		return sizes;
+	}
+
+	/**
+	 * Returns the number of long running runnables waiting for execution.
+	 *
+	 * @return an int.
+	 */
+	public int getLongRunningQueueSize() {
+		return m_longRunning.getQueue().size();
 	}
 
     /**
@@ -585,20 +651,19 @@ public class Scheduler implements Runnable, PausableFiber, ScheduleTimer {
                                     LOG.debug("run: runnable {}, executing",
                                               readyRun.getInfo());
 
-                                    // Add runnable to the execution queue
-                                    m_runner.execute(readyRun);
+                                    // Add runnable to the execution queue of its partition
+                                    // or to the long running pool
+                                    int partition = readyRun.isLongRunning() ? -1 : getPartition(readyRun.getPartitionKey());
+                                    ThreadPoolExecutor e = partition < 0 ? m_longRunning : m_partitions[partition];
+                                    e.execute(readyRun);
                                     ++runned;
                                     
                                     // Increment the execution counter
                                     ++m_numTasksExecuted;
 
-                                    // Thread Pool Statistics
-                                    if (m_runner instanceof ThreadPoolExecutor) {
-                                        ThreadPoolExecutor e = (ThreadPoolExecutor) m_runner;
-                                        String ratio = String.format("%.3f", e.getTaskCount() > 0 ? new Double(e.getCompletedTaskCount())/new Double(e.getTaskCount()) : 0);
-                                        LOG.debug("thread pool statistics: activeCount={}, taskCount={}, completedTaskCount={}, completedRatio={}, poolSize={}",
-                                            e.getActiveCount(), e.getTaskCount(), e.getCompletedTaskCount(), ratio, e.getPoolSize());
-                                    }
+                                    // Partition Statistics
+                                    LOG.debug("partition statistics: partition={}, activeCount={}, queueSize={}, taskCount={}, completedTaskCount={}",
+                                        partition < 0 ? "longRunning" : partition, e.getActiveCount(), e.getQueue().size(), e.getTaskCount(), e.getCompletedTaskCount());
 
                                 } else {
                                     in.add(readyRun);
@@ -106,6 +106,7 @@ public final class BroadcastEventProcessor implements EventListener {
     private volatile NotificationCommandManager m_notificationCommandManager;
     private volatile EventConfDao m_eventConfDao;
     private volatile ThreadPoolExecutor m_notificationTaskExecutor;
+    private volatile NotificationDispatcher m_notificationDispatcher;
 
     @Autowired
     private volatile EventIpcManager m_eventManager;
@@ -155,6 +156,9 @@ public final class BroadcastEventProcessor implements EventListener {
                 queue,
                 threadFactory);
         m_notificationTaskExecutor.allowCoreThreadTimeOut(true);
+        // the strategies are invoked by bounded executors, one per strategy, so
+        // a slow strategy does not delay the others
+        m_notificationDispatcher = new NotificationDispatcher(effectiveMaxThreads);
     }
 
     private void assertPropertiesSet() {
@@ -195,6 +199,9 @@ public final class BroadcastEventProcessor implements EventListener {
      */
     public void close() {
         getEventManager().removeEventListener(this);
+        if (m_notificationDispatcher != null) {
+            m_notificationDispatcher.destroy();
+        }
     }
 
 
@@ -230,6 +237,9 @@ public final class BroadcastEventProcessor implements EventListener {
             return;
         }
 
+        // drop the cached rule evaluations before matching an event of the changed node
+        m_notificationManager.handleInventoryEvent(event);
+
         if (event.getLogmsg() != null && event.getLogmsg().getDest().equalsIgnoreCase("donotpersist")) {
             LOG.debug("discarding event {}, the event has been configured as 'doNotPersist'.", event.getUei());
             return;
@@ -333,6 +343,7 @@ public final class BroadcastEventProcessor implements EventListener {
                         LOG.debug("Acknowledging event {} {}:{}:{}", curAck.getAcknowledge(), event.getNodeid(), event.getInterface(), event.getService());
 
                         Collection<Integer> notifIDs = getNotificationManager().acknowledgeNotice(event, curAck.getAcknowledge(), curAck.getMatches().toArray(new String[0]));
+                        cancelQueuedNotices(notifIDs);
                         processed = true;
                         try {
                             // only send resolution notifications if notifications are globally turned on
@@ -360,6 +371,7 @@ public final class BroadcastEventProcessor implements EventListener {
                 return;
             }
             Collection<Integer> notifIDs = getNotificationManager().acknowledgeNoticeBasedOnAlarms(event);
+            cancelQueuedNotices(notifIDs);
             try {
                 // only send resolution notifications if notifications are globally turned on
                 if (autoAck.getNotify() && !notifIDs.isEmpty() && notifsOn) {
@@ -373,6 +385,29 @@ public final class BroadcastEventProcessor implements EventListener {
         }
     }
 
+    /**
+     * Removes the tasks of the acknowledged notices that are still waiting in
+     * the queues, so the escalations are dropped without being started.
+     */
+    private void cancelQueuedNotices(Collection<Integer> notifIDs) {
+        if (notifIDs == null || notifIDs.isEmpty() || m_noticeQueues == null) {
+            return;
+        }
+        synchronized (m_noticeQueues) {
+            for (NoticeQueue noticeQueue : m_noticeQueues.values()) {
+                synchronized (noticeQueue) {
+                    for (Integer notifId : notifIDs) {
+                        // negative ids flag notices that were already acknowledged
+                        int removed = noticeQueue.removeNotice(Math.abs(notifId));
+                        if (removed > 0) {
+                            LOG.debug("Removed {} queued tasks of acknowledged notice #{}", removed, Math.abs(notifId));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     private void sendResolvedNotifications(Collection<Integer> notifIDs, Event event,
             String resolutionPrefix, boolean skipNumericPrefix) throws Exception {
         for (int notifId : notifIDs) {
@@ -450,7 +485,9 @@ public final class BroadcastEventProcessor implements EventListener {
             NotificationTask newTask = makeUserTask(now, params, noticeId, targetName, commands, null, null);
 
             if (newTask != null) {
-                noticeQueue.putItem(now, newTask);
+                synchronized (noticeQueue) {
+                    noticeQueue.putItem(now, newTask);
+                }
             }
         } else if (targetName.indexOf('@') > -1) {
             NotificationTask newTask = makeEmailTask(now, params, noticeId, targetName, commands, null, null);
@@ -645,8 +682,8 @@ public final class BroadcastEventProcessor implements EventListener {
                         try {
                             synchronized(m_noticeQueues) {
                                 NoticeQueue noticeQueue = m_noticeQueues.get(queueID);
-                                processTargets(targets, targetSiblings, noticeQueue, startTime, paramMap, noticeId);
-                                processEscalations(escalations, targetSiblings, noticeQueue, startTime, paramMap, noticeId);
+                                processTargets(targets, targetSiblings, noticeQueue, startTime, paramMap, noticeId, notification.getDestinationPath());
+                                processEscalations(escalations, targetSiblings, noticeQueue, startTime, paramMap, noticeId, notification.getDestinationPath());
                             }
                         } catch (Throwable e) {
                             LOG.error("notice not scheduled due to error: ", e);
@@ -809,7 +846,7 @@ public final class BroadcastEventProcessor implements EventListener {
     /**
      *
      */
-    private void processTargets(Target[] targets, List<NotificationTask> targetSiblings, NoticeQueue noticeQueue, long startTime, Map<String, String> params, int noticeId) throws IOException {
+    private void processTargets(Target[] targets, List<NotificationTask> targetSiblings, NoticeQueue noticeQueue, long startTime, Map<String, String> params, int noticeId, String destinationPath) throws IOException {
         for (int i = 0; i < targets.length; i++) {
             String interval = (targets[i].getInterval().orElse(Target.DEFAULT_INTERVAL));
 
@@ -850,6 +887,7 @@ public final class BroadcastEventProcessor implements EventListener {
                 for (int index = 0; index < tasks.length; index++) {
                     NotificationTask task = tasks[index];
                     if (task != null) {
+                        task.setDestinationPath(destinationPath);
                         synchronized(noticeQueue) {
                             noticeQueue.putItem(task.getSendTime(), task);
                         }
@@ -921,11 +959,11 @@ public final class BroadcastEventProcessor implements EventListener {
     /**
      *
      */
-    private void processEscalations(Escalate[] escalations, List<NotificationTask> targetSiblings, NoticeQueue noticeQueue, long startTime, Map<String, String> params, int noticeId) throws IOException {
+    private void processEscalations(Escalate[] escalations, List<NotificationTask> targetSiblings, NoticeQueue noticeQueue, long startTime, Map<String, String> params, int noticeId, String destinationPath) throws IOException {
         for (int i = 0; i < escalations.length; i++) {
             Target[] targets = escalations[i].getTargets().toArray(new Target[0]);
             startTime += TimeConverter.convertToMillis(escalations[i].getDelay());
-            processTargets(targets, targetSiblings, noticeQueue, startTime, params, noticeId);
+            processTargets(targets, targetSiblings, noticeQueue, startTime, params, noticeId, destinationPath);
         }
     }
 
@@ -935,7 +973,7 @@ public final class BroadcastEventProcessor implements EventListener {
     NotificationTask makeUserTask(long sendTime, Map<String, String> parameters, int noticeId, String targetName, String[] commandList, List<NotificationTask> siblings, String autoNotify) throws IOException {
         NotificationTask task = null;
 
-        task = new NotificationTask(getNotificationManager(), getUserManager(), sendTime, parameters, siblings, autoNotify, m_notificationTaskExecutor);
+        task = new NotificationTask(getNotificationManager(), getUserManager(), sendTime, parameters, siblings, autoNotify, m_notificationTaskExecutor, m_notificationDispatcher);
 
         User user = getUserManager().getUser(targetName);
 
@@ -968,7 +1006,7 @@ public final class BroadcastEventProcessor implements EventListener {
     NotificationTask makeEmailTask(long sendTime, Map<String, String> parameters, int noticeId, String address, String[] commandList, List<NotificationTask> siblings, String autoNotify) throws IOException {
         NotificationTask task = null;
 
-        task = new NotificationTask(getNotificationManager(), getUserManager(), sendTime, parameters, siblings, autoNotify, m_notificationTaskExecutor);
+        task = new NotificationTask(getNotificationManager(), getUserManager(), sendTime, parameters, siblings, autoNotify, m_notificationTaskExecutor, m_notificationDispatcher);
 
         User user = new User();
         user.setUserId(address);
@@ -28,9 +28,6 @@
 
 package org.opennms.netmgt.notifd;
 
-import java.util.List;
-import java.util.SortedMap;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opennms.core.utils.TimeConverter;
@@ -158,16 +155,11 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
         if (m_noticeQueue != null) {
             synchronized(m_noticeQueue) {
                 try {
-                	final Long now = System.currentTimeMillis();
-                	final SortedMap<Long, List<NotificationTask>> readyNotices = m_noticeQueue.headMap(now);
-        
-                    for (final List<NotificationTask> list : readyNotices.values()) {
-                        for (final NotificationTask task : list) {
-                            startTask(task);
-                        }
+                    final long now = System.currentTimeMillis();
+                    for (final NotificationTask task : m_noticeQueue.removeReady(now)) {
+                        startTask(task);
                     }
-                    readyNotices.clear();
-        
+
                     if (m_noticeQueue != null && m_noticeQueue.size() > 0) {
 			LOG.debug("current state of tree: {}", m_noticeQueue);
                     }
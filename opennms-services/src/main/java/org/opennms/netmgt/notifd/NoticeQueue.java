@@ -25,44 +25,265 @@
  *     http://www.opennms.org/
  *     http://www.opennms.com/
  *******************************************************************************/
-
 package org.opennms.netmgt.notifd;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This is a data class designed to hold NotificationTasks in an ordered map
- * that can handle collisions.
+ * This is a data class designed to hold NotificationTasks until they are due.
+ *
+ * The tasks are kept in a hashed timing wheel: every task is linked in the
+ * bucket of the tick of its send time, so queueing and cancelling a task are
+ * O(1) and collecting the due tasks only visits the buckets of the ticks
+ * elapsed since the last call instead of the whole queue. Tasks due more than
+ * one wheel revolution ahead stay in their bucket until their time comes.
+ *
+ * The queue is not thread safe by itself, callers synchronize on it as they
+ * did when it was a sorted map.
  *
- * @author <A HREF="mailto:jason@opennms.org">Jason Johns </A>
- * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  * @author <A HREF="mailto:jason@opennms.org">Jason Johns </A>
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  * @version 1.1.1.1
  */
-public class NoticeQueue extends DuplicateTreeMap<Long, NotificationTask> {
+public class NoticeQueue {
     private static final Logger LOG = LoggerFactory.getLogger(NoticeQueue.class);
+
+    public static final long DEFAULT_TICK_DURATION = 1000;
+
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final Comparator<Timeout> SEND_TIME_ORDER = new Comparator<Timeout>() {
+        @Override
+        public int compare(Timeout a, Timeout b) {
+            return Long.compare(a.m_sendTime, b.m_sendTime);
+        }
+    };
+
+    private final long m_tickDuration;
+    private final Timeout[] m_buckets;
+    private final int m_mask;
+
+    private final Map<NotificationTask, Timeout> m_timeouts = new HashMap<>();
+    private final Map<Integer, Set<NotificationTask>> m_tasksByNotice = new HashMap<>();
+
     /**
-     * 
+     * The last tick whose bucket does not need to be visited again.
      */
-    private static final long serialVersionUID = 7463770974135218140L;
+    private long m_lastTick;
 
-    /** {@inheritDoc} */
-    @Override
-    public NotificationTask putItem(Long key, NotificationTask value) {
-        NotificationTask ret = super.putItem(key, value);
+    public NoticeQueue() {
+        this(DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE, System.currentTimeMillis());
+    }
+
+    /**
+     * @param tickDuration the duration of a tick in milliseconds
+     * @param wheelSize the number of buckets, rounded up to a power of two
+     * @param now the current time in milliseconds
+     */
+    public NoticeQueue(final long tickDuration, final int wheelSize, final long now) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0: " + tickDuration);
+        }
+        if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException("wheelSize must be in (0, 2^30]: " + wheelSize);
+        }
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        m_tickDuration = tickDuration;
+        m_buckets = new Timeout[size];
+        m_mask = size - 1;
+        m_lastTick = now / tickDuration - 1;
+    }
+
+    /**
+     * Queues the task to be started at the given time.
+     *
+     * @return the task if it was already queued, null otherwise
+     */
+    public NotificationTask putItem(final Long sendTime, final NotificationTask task) {
+        if (m_timeouts.containsKey(task)) {
+            return task;
+        }
+
+        // tasks already due go in the first bucket to be visited
+        final long tick = Math.max(sendTime / m_tickDuration, m_lastTick + 1);
+        final Timeout timeout = new Timeout(task, sendTime);
+        link(timeout, (int) (tick & m_mask));
+        m_timeouts.put(task, timeout);
+
+        Set<NotificationTask> tasks = m_tasksByNotice.get(task.getNotifyId());
+        if (tasks == null) {
+            tasks = new LinkedHashSet<>();
+            m_tasksByNotice.put(task.getNotifyId(), tasks);
+        }
+        tasks.add(task);
 
-        
         if (LOG.isDebugEnabled()) {
-            if (value.getNotifyId() == -1) {
+            if (task.getNotifyId() == -1) {
                 LOG.debug("autoNotify task queued");
             } else {
-                LOG.debug("task queued for notifyID {}", value.getNotifyId());
+                LOG.debug("task queued for notifyID {}", task.getNotifyId());
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Cancels a queued task.
+     *
+     * @return true if the task was queued
+     */
+    public boolean remove(final NotificationTask task) {
+        final Timeout timeout = m_timeouts.remove(task);
+        if (timeout == null) {
+            return false;
+        }
+        unlink(timeout);
+        final Set<NotificationTask> tasks = m_tasksByNotice.get(task.getNotifyId());
+        if (tasks != null) {
+            tasks.remove(task);
+            if (tasks.isEmpty()) {
+                m_tasksByNotice.remove(task.getNotifyId());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cancels all the queued tasks of a notice, e.g. when the notice is
+     * acknowledged before the escalations are sent.
+     *
+     * @return the number of tasks removed
+     */
+    public int removeNotice(final int noticeId) {
+        final Set<NotificationTask> tasks = m_tasksByNotice.remove(noticeId);
+        if (tasks == null) {
+            return 0;
+        }
+        for (final NotificationTask task : tasks) {
+            final Timeout timeout = m_timeouts.remove(task);
+            if (timeout != null) {
+                unlink(timeout);
             }
         }
-        
-        return ret;
+        return tasks.size();
+    }
+
+    /**
+     * Removes and returns the tasks with a send time before the given time,
+     * ordered by send time.
+     */
+    public List<NotificationTask> removeReady(final long now) {
+        final long nowTick = now / m_tickDuration;
+        if (nowTick <= m_lastTick) {
+            return Collections.emptyList();
+        }
+
+        final List<Timeout> ready = new ArrayList<>();
+        // after a full revolution every bucket has been visited
+        final long ticks = Math.min(nowTick - m_lastTick, m_buckets.length);
+        for (long tick = nowTick - ticks + 1; tick <= nowTick; tick++) {
+            Timeout timeout = m_buckets[(int) (tick & m_mask)];
+            while (timeout != null) {
+                final Timeout next = timeout.m_next;
+                if (timeout.m_sendTime < now) {
+                    unlink(timeout);
+                    ready.add(timeout);
+                }
+                timeout = next;
+            }
+        }
+        // the current tick is not over, visit its bucket again next time
+        m_lastTick = nowTick - 1;
+
+        if (ready.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Collections.sort(ready, SEND_TIME_ORDER);
+        final List<NotificationTask> tasks = new ArrayList<>(ready.size());
+        for (final Timeout timeout : ready) {
+            m_timeouts.remove(timeout.m_task);
+            final Set<NotificationTask> siblings = m_tasksByNotice.get(timeout.m_task.getNotifyId());
+            if (siblings != null) {
+                siblings.remove(timeout.m_task);
+                if (siblings.isEmpty()) {
+                    m_tasksByNotice.remove(timeout.m_task.getNotifyId());
+                }
+            }
+            tasks.add(timeout.m_task);
+        }
+        return tasks;
+    }
+
+    public boolean contains(final NotificationTask task) {
+        return m_timeouts.containsKey(task);
+    }
+
+    public int size() {
+        return m_timeouts.size();
+    }
+
+    public boolean isEmpty() {
+        return m_timeouts.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        final List<Timeout> timeouts = new ArrayList<>(m_timeouts.values());
+        Collections.sort(timeouts, SEND_TIME_ORDER);
+        final StringBuilder buffer = new StringBuilder();
+        for (final Timeout timeout : timeouts) {
+            buffer.append(timeout.m_task.toString() + System.getProperty("line.separator"));
+        }
+        return buffer.toString();
+    }
+
+    private void link(final Timeout timeout, final int bucket) {
+        timeout.m_bucket = bucket;
+        timeout.m_prev = null;
+        timeout.m_next = m_buckets[bucket];
+        if (timeout.m_next != null) {
+            timeout.m_next.m_prev = timeout;
+        }
+        m_buckets[bucket] = timeout;
+    }
+
+    private void unlink(final Timeout timeout) {
+        if (timeout.m_prev != null) {
+            timeout.m_prev.m_next = timeout.m_next;
+        } else if (m_buckets[timeout.m_bucket] == timeout) {
+            m_buckets[timeout.m_bucket] = timeout.m_next;
+        }
+        if (timeout.m_next != null) {
+            timeout.m_next.m_prev = timeout.m_prev;
+        }
+        timeout.m_prev = null;
+        timeout.m_next = null;
+    }
+
+    private static class Timeout {
+        private final NotificationTask m_task;
+        private final long m_sendTime;
+        private int m_bucket;
+        private Timeout m_prev;
+        private Timeout m_next;
+
+        private Timeout(final NotificationTask task, final long sendTime) {
+            m_task = task;
+            m_sendTime = sendTime;
+        }
     }
 }
@@ -0,0 +1,316 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.notifd;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import org.opennms.core.logging.Logging;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Sends the notifications through one bounded thread pool per notification
+ * strategy, so that a slow strategy (e.g. a mail relay that does not answer)
+ * only delays the notifications sent with that strategy and does not hold
+ * the threads that start the notification tasks.
+ *
+ * Every attempt is interrupted after a timeout. Attempts that time out, fail
+ * with an exception, return a non zero code or are rejected because the
+ * strategy queue is full can be retried after a delay, as long as the notice
+ * was not acknowledged in the meantime. Since a strategy may have partially
+ * sent the notification before failing, retries can produce duplicates, so
+ * they are disabled unless <code>org.opennms.notifd.dispatcher.retries</code>
+ * is greater than 0.
+ */
+public class NotificationDispatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    public static final String QUEUE_SIZE_PROPERTY = "org.opennms.notifd.dispatcher.queueSize";
+
+    public static final String TIMEOUT_PROPERTY = "org.opennms.notifd.dispatcher.timeout";
+
+    public static final String RETRIES_PROPERTY = "org.opennms.notifd.dispatcher.retries";
+
+    public static final String RETRY_DELAY_PROPERTY = "org.opennms.notifd.dispatcher.retryDelay";
+
+    /**
+     * Receives the result of a notification once it succeeded or the retries
+     * are exhausted.
+     */
+    public interface Callback {
+        /**
+         * @param returnCode the return code of the last attempt, 0 on success
+         * @param attempts the number of attempts
+         * @param cause the exception of the last attempt, a
+         * {@link TimeoutException} if it timed out, null otherwise
+         */
+        void completed(int returnCode, int attempts, Throwable cause);
+    }
+
+    private final int m_maxThreads;
+    private final int m_queueSize;
+    private final long m_timeout;
+    private final int m_retries;
+    private final long m_retryDelay;
+
+    private final Map<String, ThreadPoolExecutor> m_executors = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService m_scheduler;
+
+    /**
+     * Creates a dispatcher configured with the system properties.
+     *
+     * @param maxThreads the maximum number of concurrent sends per strategy
+     */
+    public NotificationDispatcher(final int maxThreads) {
+        this(maxThreads,
+             Integer.getInteger(QUEUE_SIZE_PROPERTY, 10000),
+             Long.getLong(TIMEOUT_PROPERTY, TimeUnit.MINUTES.toMillis(2)),
+             Integer.getInteger(RETRIES_PROPERTY, 0),
+             Long.getLong(RETRY_DELAY_PROPERTY, TimeUnit.SECONDS.toMillis(30)));
+    }
+
+    public NotificationDispatcher(final int maxThreads, final int queueSize, final long timeout, final int retries, final long retryDelay) {
+        m_maxThreads = maxThreads;
+        m_queueSize = queueSize;
+        m_timeout = timeout;
+        m_retries = Math.max(0, retries);
+        m_retryDelay = Math.max(0, retryDelay);
+
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                .setNameFormat("NotificationDispatcher-timer-%d")
+                .setDaemon(true)
+                .build());
+        scheduler.setRemoveOnCancelPolicy(true);
+        m_scheduler = scheduler;
+    }
+
+    /**
+     * Sends the notification asynchronously with the executor of the given
+     * strategy.
+     *
+     * @param strategy the name of the strategy, e.g. the class or the binary
+     * executed by the command
+     * @param send sends the notification and returns the return code of the
+     * strategy
+     */
+    public void dispatch(final String strategy, final Callable<Integer> send, final Callback callback) {
+        dispatch(strategy, send, () -> true, callback);
+    }
+
+    /**
+     * Sends the notification asynchronously with the executor of the given
+     * strategy.
+     *
+     * @param strategy the name of the strategy, e.g. the class or the binary
+     * executed by the command
+     * @param send sends the notification and returns the return code of the
+     * strategy
+     * @param retry called before every retry, returns false if the
+     * notification should no longer be sent, e.g. once the notice was
+     * acknowledged
+     */
+    public void dispatch(final String strategy, final Callable<Integer> send, final BooleanSupplier retry, final Callback callback) {
+        attempt(new Dispatch(strategy, send, retry, callback));
+    }
+
+    /**
+     * @return the number of notifications waiting for a thread of the
+     * strategy.
+     */
+    public int getQueueSize(final String strategy) {
+        final ThreadPoolExecutor executor = m_executors.get(strategy);
+        return executor == null ? 0 : executor.getQueue().size();
+    }
+
+    public void destroy() {
+        m_scheduler.shutdownNow();
+        for (final ThreadPoolExecutor executor : m_executors.values()) {
+            executor.shutdownNow();
+        }
+        m_executors.clear();
+    }
+
+    private void attempt(final Dispatch dispatch) {
+        final Attempt attempt = new Attempt(dispatch, ++dispatch.m_attempts);
+        try {
+            attempt.m_future = getExecutor(dispatch.m_strategy).submit(attempt);
+        } catch (final RejectedExecutionException e) {
+            LOG.warn("The queue of strategy {} is full, notification attempt #{} rejected.", dispatch.m_strategy, attempt.m_number);
+            attempt.complete(1, e);
+            return;
+        }
+        if (m_timeout > 0) {
+            attempt.m_timeout = m_scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    // complete first, the interrupted send must not win the race
+                    attempt.complete(1, new TimeoutException("Strategy " + dispatch.m_strategy + " did not complete within " + m_timeout + "ms"));
+                    attempt.m_future.cancel(true);
+                }
+            }, m_timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void completed(final Dispatch dispatch, final int returnCode, final Throwable cause) {
+        if ((returnCode != 0 || cause != null) && dispatch.m_attempts <= m_retries && !m_scheduler.isShutdown()) {
+            LOG.info("Notification attempt #{} with strategy {} failed (return code {}), retrying in {}ms.", dispatch.m_attempts, dispatch.m_strategy, returnCode, m_retryDelay, cause);
+            try {
+                m_scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (shouldRetry(dispatch)) {
+                            attempt(dispatch);
+                        } else {
+                            LOG.info("Notification with strategy {} is no longer needed, not retrying.", dispatch.m_strategy);
+                            notifyCallback(dispatch, returnCode, cause);
+                        }
+                    }
+                }, m_retryDelay, TimeUnit.MILLISECONDS);
+                return;
+            } catch (final RejectedExecutionException e) {
+                // shutting down
+            }
+        }
+        notifyCallback(dispatch, returnCode, cause);
+    }
+
+    private static boolean shouldRetry(final Dispatch dispatch) {
+        try {
+            return dispatch.m_retry.getAsBoolean();
+        } catch (final Throwable t) {
+            LOG.warn("Unable to determine whether notification with strategy {} should be retried, not retrying.", dispatch.m_strategy, t);
+            return false;
+        }
+    }
+
+    private static void notifyCallback(final Dispatch dispatch, final int returnCode, final Throwable cause) {
+        try {
+            dispatch.m_callback.completed(returnCode, dispatch.m_attempts, cause);
+        } catch (final Throwable t) {
+            LOG.warn("Notification callback failed.", t);
+        }
+    }
+
+    private ThreadPoolExecutor getExecutor(final String strategy) {
+        ThreadPoolExecutor executor = m_executors.get(strategy);
+        if (executor == null) {
+            synchronized (m_executors) {
+                executor = m_executors.get(strategy);
+                if (executor == null) {
+                    executor = new ThreadPoolExecutor(m_maxThreads, m_maxThreads,
+                            60L, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<Runnable>(m_queueSize),
+                            new ThreadFactoryBuilder().setNameFormat("NotificationDispatcher-" + getShortName(strategy) + "-%d").build());
+                    executor.allowCoreThreadTimeOut(true);
+                    m_executors.put(strategy, executor);
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static String getShortName(final String strategy) {
+        if (strategy == null) {
+            return "unknown";
+        }
+        final int index = Math.max(strategy.lastIndexOf('.'), Math.max(strategy.lastIndexOf('/'), strategy.lastIndexOf('\\')));
+        return strategy.substring(index + 1).replace("%", "%%");
+    }
+
+    private static class Dispatch {
+        private final String m_strategy;
+        private final Callable<Integer> m_send;
+        private final BooleanSupplier m_retry;
+        private final Callback m_callback;
+        private volatile int m_attempts = 0;
+
+        private Dispatch(final String strategy, final Callable<Integer> send, final BooleanSupplier retry, final Callback callback) {
+            m_strategy = strategy;
+            m_send = send;
+            m_retry = retry;
+            m_callback = callback;
+        }
+    }
+
+    private class Attempt implements Runnable {
+        private final Dispatch m_dispatch;
+        private final int m_number;
+        private final AtomicBoolean m_done = new AtomicBoolean(false);
+        private volatile Future<?> m_future;
+        private volatile ScheduledFuture<?> m_timeout;
+
+        private Attempt(final Dispatch dispatch, final int number) {
+            m_dispatch = dispatch;
+            m_number = number;
+        }
+
+        @Override
+        public void run() {
+            Logging.putPrefix(Notifd.getLoggingCategory());
+            int returnCode = 1;
+            Throwable cause = null;
+            try {
+                final Integer result = m_dispatch.m_send.call();
+                returnCode = result == null ? 1 : result;
+            } catch (final Throwable t) {
+                cause = t;
+            }
+            complete(returnCode, cause);
+        }
+
+        private void complete(final int returnCode, final Throwable cause) {
+            // the send and the timeout race to complete the attempt
+            if (!m_done.compareAndSet(false, true)) {
+                return;
+            }
+            final ScheduledFuture<?> timeout = m_timeout;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            completed(m_dispatch, returnCode, cause);
+        }
+    }
+}
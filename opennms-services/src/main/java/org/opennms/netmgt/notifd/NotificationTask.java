@@ -38,7 +38,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.netmgt.config.NotificationManager;
@@ -103,6 +106,10 @@ public class NotificationTask implements Runnable {
 
     private final Executor m_executor;
 
+    private final NotificationDispatcher m_dispatcher;
+
+    private volatile String m_destinationPath;
+
     /**
      * Constructor, initializes some information
      *
@@ -115,12 +122,23 @@ public class NotificationTask implements Runnable {
      * @param autoNotify a {@link java.lang.String} object.
      */
     public NotificationTask(NotificationManager notificationManager, UserManager userManager, long sendTime, Map<String, String> someParams, List<NotificationTask> siblings, String autoNotify, Executor executor) {
+        this(notificationManager, userManager, sendTime, someParams, siblings, autoNotify, executor, null);
+    }
+
+    /**
+     * Constructor, initializes some information
+     *
+     * @param dispatcher the dispatcher used to send the notifications
+     * asynchronously, if null the notifications are sent by the task thread
+     */
+    public NotificationTask(NotificationManager notificationManager, UserManager userManager, long sendTime, Map<String, String> someParams, List<NotificationTask> siblings, String autoNotify, Executor executor, NotificationDispatcher dispatcher) {
         m_notificationManager = notificationManager;
         m_userManager = userManager;
         m_sendTime = sendTime;
         m_params = new HashMap<String, String>(someParams);
         m_autoNotify = autoNotify;
         m_executor = Objects.requireNonNull(executor);
+        m_dispatcher = dispatcher;
     }
 
     /**
@@ -203,6 +221,25 @@ public class NotificationTask implements Runnable {
     public void setNoticeId(int anId) {
         m_notifyId = anId;
     }
+
+    /**
+     * Sets the destination path of the notice, used to report how late the
+     * notices of each path are sent.
+     *
+     * @param destinationPath the name of the destination path
+     */
+    public void setDestinationPath(String destinationPath) {
+        m_destinationPath = destinationPath;
+    }
+
+    /**
+     * <p>getDestinationPath</p>
+     *
+     * @return the name of the destination path or null
+     */
+    public String getDestinationPath() {
+        return m_destinationPath;
+    }
     
 
     /**
@@ -232,6 +269,8 @@ public class NotificationTask implements Runnable {
     public void run() {
         Logging.putPrefix(Notifd.getLoggingCategory());
 
+        getNotificationManager().updateNoticeLateness(m_destinationPath, System.currentTimeMillis() - m_sendTime);
+
         boolean outstanding = false;
         try {
             outstanding = getNotificationManager().noticeOutstanding(m_notifyId);
@@ -270,7 +309,12 @@ public class NotificationTask implements Runnable {
                             LOG.debug("Class created is: {}", command.getClass());
 
                             getNotificationManager().incrementAttempted(isBinary);
-                            
+
+                            if (m_dispatcher != null) {
+                                dispatch(command, strategy, isBinary);
+                                continue;
+                            }
+
                             int returnCode = strategy.execute(command.getExecute(), getArgumentList(command));
                             LOG.debug("command {} return code = {}", command.getName(), returnCode);
                             
@@ -306,6 +350,51 @@ public class NotificationTask implements Runnable {
         }
     }
 
+    /**
+     * Sends the command through the executor of its strategy, the result is
+     * counted once the command succeeded or its retries are exhausted.
+     */
+    private void dispatch(final Command command, final ExecutorStrategy strategy, final boolean isBinary) {
+        final List<org.opennms.netmgt.model.notifd.Argument> arguments = getArgumentList(command);
+        m_dispatcher.dispatch(command.getExecute(), new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return strategy.execute(command.getExecute(), arguments);
+            }
+        }, new BooleanSupplier() {
+            @Override
+            public boolean getAsBoolean() {
+                // don't send the notice again once someone responded
+                try {
+                    return getNotificationManager().noticeOutstanding(m_notifyId);
+                } catch (Throwable e) {
+                    LOG.error("Unable to get response status on notice #{}, it will not be retried", m_notifyId, e);
+                    return false;
+                }
+            }
+        }, new NotificationDispatcher.Callback() {
+            @Override
+            public void completed(int returnCode, int attempts, Throwable cause) {
+                LOG.debug("command {} return code = {} after {} attempt(s)", command.getName(), returnCode, attempts);
+                if (attempts > 1) {
+                    getNotificationManager().incrementRetried(attempts - 1);
+                }
+                if (cause instanceof TimeoutException) {
+                    LOG.warn("Notification command timed out: {} [#{}]", command.getName(), m_notifyId);
+                    getNotificationManager().incrementTimedOut();
+                    getNotificationManager().incrementInterrupted(isBinary);
+                } else if (cause != null) {
+                    LOG.warn("Notification command failed: {}", command.getName(), cause);
+                    getNotificationManager().incrementInterrupted(isBinary);
+                } else if (returnCode == 0) {
+                    getNotificationManager().incrementSucceeded(isBinary);
+                } else {
+                    getNotificationManager().incrementFailed(isBinary);
+                }
+            }
+        });
+    }
+
     private NotificationManager getNotificationManager() {
         return m_notificationManager;
     }
@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.notifd.jmx;
 
+import java.util.Map;
+
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -113,4 +115,24 @@ public class Notifd extends AbstractSpringContextJmxServiceDaemon<org.opennms.ne
     public long getUnknownNoticesInterrupted() {
         return getDaemon().getNotificationManager().getUnknownNoticesInterrupted();
     }
+
+    @Override
+    public long getNoticesRetried() {
+        return getDaemon().getNotificationManager().getNoticesRetried();
+    }
+
+    @Override
+    public long getNoticesTimedOut() {
+        return getDaemon().getNotificationManager().getNoticesTimedOut();
+    }
+
+    @Override
+    public long getMaxNoticeLateness() {
+        return getDaemon().getNotificationManager().getMaxNoticeLateness();
+    }
+
+    @Override
+    public Map<String, Long> getNoticeLateness() {
+        return getDaemon().getNotificationManager().getNoticeLateness();
+    }
 }
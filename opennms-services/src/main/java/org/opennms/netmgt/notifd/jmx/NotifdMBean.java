@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.notifd.jmx;
 
+import java.util.Map;
+
 import org.opennms.netmgt.daemon.BaseOnmsMBean;
 
 /**
@@ -97,4 +99,28 @@ public interface NotifdMBean extends BaseOnmsMBean {
      *         (threw an exception) since Notifd was last started.
      */
     public long getUnknownNoticesInterrupted();
+
+    /**
+     * @return The total number of notification retries since Notifd was last
+     *         started.
+     */
+    public long getNoticesRetried();
+
+    /**
+     * @return The total number of notifications that did not complete within
+     *         the dispatcher timeout since Notifd was last started.
+     */
+    public long getNoticesTimedOut();
+
+    /**
+     * @return The highest lateness, in milliseconds, of the last notices
+     *         started for each destination path.
+     */
+    public long getMaxNoticeLateness();
+
+    /**
+     * @return The lateness, in milliseconds, of the last notice started for
+     *         each destination path.
+     */
+    public Map<String, Long> getNoticeLateness();
 }
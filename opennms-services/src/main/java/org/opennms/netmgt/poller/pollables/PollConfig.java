@@ -28,7 +28,10 @@
 
 package org.opennms.netmgt.poller.pollables;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Timer;
 
 
@@ -47,6 +50,24 @@ public interface PollConfig extends Timer {
      */
     public PollStatus poll();
 
+    /**
+     * Starts the poll without waiting for its result. The returned future
+     * never completes exceptionally, and may be completed on a thread of the
+     * monitor: use {@link #runOnScheduler(long, ReadyRunnable)} to process the
+     * result.
+     *
+     * @return a {@link java.util.concurrent.CompletableFuture} object.
+     */
+    public CompletableFuture<PollStatus> pollAsync();
+
+    /**
+     * Runs the task with the scheduler of the service after the given delay.
+     *
+     * @return false if the timer cannot schedule tasks, the caller must then
+     * run the task itself
+     */
+    public boolean runOnScheduler(long delay, ReadyRunnable task);
+
     /**
      * <p>getCurrentTime</p>
      *
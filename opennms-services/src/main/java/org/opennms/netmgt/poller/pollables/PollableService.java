@@ -31,6 +31,8 @@ package org.opennms.netmgt.poller.pollables;
 import java.net.InetAddress;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.netmgt.events.api.EventConstants;
@@ -68,7 +70,27 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
 
 	private final String m_svcName;
 
+    /**
+     * When enabled the scheduler threads don't wait for the monitors: they
+     * start the poll and the result is processed by another scheduler run.
+     */
+    private static final boolean ASYNC_POLLS = Boolean.getBoolean("org.opennms.netmgt.poller.asyncPolls");
+
+    /**
+     * Delay before processing the result of an asynchronous poll again when
+     * the tree lock was not available.
+     */
+    private static final long POSTPONE_RESULT_MS = 1000;
+
+    /**
+     * The result of the asynchronous poll being processed by the current
+     * thread, so that neither another thread nor the poll of another service
+     * can consume it.
+     */
+    private static final ThreadLocal<PollResult> s_processedResult = new ThreadLocal<>();
+
     private volatile PollConfig m_pollConfig;
+    private final AtomicBoolean m_pollInProgress = new AtomicBoolean(false);
     private volatile PollStatus m_oldStatus;
     private volatile Schedule m_schedule;
     private volatile long m_statusChangeTime = 0L;
@@ -187,7 +209,15 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      */
     @Override
     public PollStatus poll() {
-        PollStatus newStatus = m_pollConfig.poll();
+        // use the result of the asynchronous poll of this service being processed, if any
+        final PollResult result = s_processedResult.get();
+        final PollStatus newStatus;
+        if (result != null && result.getService() == this) {
+            s_processedResult.remove();
+            newStatus = result.getStatus();
+        } else {
+            newStatus = m_pollConfig.poll();
+        }
         if (!newStatus.isUnknown()) { 
             updateStatus(newStatus);
         }
@@ -376,7 +406,87 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      */
     @Override
     public void run() {
-        doRun(500);
+        if (!ASYNC_POLLS) {
+            doRun(500);
+            return;
+        }
+
+        if (!m_pollInProgress.compareAndSet(false, true)) {
+            LOG.info("The previous poll of {} is still in progress, skipping this one.", this);
+            return;
+        }
+        final CompletableFuture<PollStatus> future;
+        try {
+            future = m_pollConfig.pollAsync();
+        } catch (RuntimeException e) {
+            m_pollInProgress.set(false);
+            throw e;
+        }
+        future.whenComplete((status, e) -> {
+            final PollResult result = new PollResult(status != null ? status : PollStatus.unknown("Poll of " + this + " failed: " + e));
+            // don't update the tree on the thread of the monitor
+            if (!m_pollConfig.runOnScheduler(0, result)) {
+                result.process(0);
+            }
+        });
+    }
+
+    /**
+     * The result of an asynchronous poll, processed with the tree lock by a
+     * scheduler thread. When the lock is not available, the processing is
+     * scheduled again instead of holding the scheduler thread.
+     */
+    private final class PollResult implements ReadyRunnable {
+        private final PollStatus m_status;
+
+        private PollResult(PollStatus status) {
+            m_status = status;
+        }
+
+        private PollableService getService() {
+            return PollableService.this;
+        }
+
+        private PollStatus getStatus() {
+            return m_status;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void run() {
+            try {
+                process(500);
+            } catch (PostponeNecessary e) {
+                if (!m_pollConfig.runOnScheduler(POSTPONE_RESULT_MS, this)) {
+                    process(0);
+                }
+            }
+        }
+
+        private void process(int timeout) {
+            boolean postponed = false;
+            s_processedResult.set(this);
+            try {
+                doRun(timeout);
+            } catch (PostponeNecessary e) {
+                postponed = true;
+                throw e;
+            } finally {
+                s_processedResult.remove();
+                if (!postponed) {
+                    m_pollInProgress.set(false);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Processing the poll result of " + PollableService.this;
+        }
     }
     
     /**
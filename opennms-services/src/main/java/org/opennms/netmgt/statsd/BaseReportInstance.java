@@ -30,6 +30,7 @@ package org.opennms.netmgt.statsd;
 
 import java.util.Date;
 import java.util.SortedSet;
+import java.util.concurrent.Executor;
 
 import org.opennms.netmgt.dao.api.ResourceDao;
 import org.opennms.netmgt.dao.support.AttributeMatchingResourceVisitor;
@@ -82,6 +83,26 @@ public abstract class BaseReportInstance extends AbstractReportInstance implemen
         m_rrdVisitor.setFetchStrategy(fetchStrategy);
     }
 
+    /**
+     * Fetches the statistics of the attributes in batches of the given size
+     * on the executor, while the resources are walked on the calling thread.
+     *
+     * @param executor the executor shared by the reports, or null to fetch on the calling thread
+     * @param fetchBatchSize the number of attributes fetched at once
+     * @param maxPendingBatches the maximum number of batches waiting for the executor
+     */
+    public void setFetchExecutor(Executor executor, int fetchBatchSize, int maxPendingBatches) {
+        m_rrdVisitor.setFetchBatchSize(fetchBatchSize);
+        m_rrdVisitor.setExecutor(executor, maxPendingBatches);
+    }
+
+    /**
+     * @return the number of attributes fetched so far by the current walk
+     */
+    public long getAttributesFetched() {
+        return m_rrdVisitor.getAttributesFetched();
+    }
+
     /**
      * <p>walk</p>
      */
@@ -89,6 +110,7 @@ public abstract class BaseReportInstance extends AbstractReportInstance implemen
     public void walk() {
         setJobStartedDate(new Date());
         getWalker().walk();
+        m_rrdVisitor.flush();
         setJobCompletedDate(new Date());
     }
 
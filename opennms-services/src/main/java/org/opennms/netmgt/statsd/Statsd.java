@@ -29,7 +29,10 @@
 package org.opennms.netmgt.statsd;
 
 import java.text.ParseException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.netmgt.daemon.SpringServiceDaemon;
 import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.dao.api.ResourceDao;
@@ -70,6 +73,16 @@ public class Statsd implements SpringServiceDaemon {
 
     private static final String LOG4J_CATEGORY = "statsd";
 
+    /**
+     * Number of threads fetching the statistics of the reports, shared by all the reports.
+     */
+    private static final int FETCH_THREADS = Integer.getInteger("org.opennms.statsd.fetchThreads", Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Number of attributes fetched by a single call to the fetch strategy.
+     */
+    private static final int FETCH_BATCH_SIZE = Integer.getInteger("org.opennms.statsd.fetchBatchSize", 20);
+
     @Autowired
     private NodeDao m_nodeDao;
 
@@ -88,6 +101,7 @@ public class Statsd implements SpringServiceDaemon {
     private Scheduler m_scheduler;
     private ReportDefinitionBuilder m_reportDefinitionBuilder;
     private volatile EventForwarder m_eventForwarder;
+    private ExecutorService m_fetchExecutor;
     
     private long m_reportsStarted = 0;
     private long m_reportsCompleted = 0;
@@ -175,6 +189,9 @@ public class Statsd implements SpringServiceDaemon {
         synchronized (m_scheduler) {
             m_scheduler.shutdown();
         }
+        if (m_fetchExecutor != null) {
+            m_fetchExecutor.shutdown();
+        }
         LOG.debug("start: lock released (unless reentrant).");
     }
 
@@ -232,6 +249,9 @@ public class Statsd implements SpringServiceDaemon {
             LOG.error("Could not create a report instance for report definition {}", reportDef, t);
             throw t;
         }
+        if (report instanceof BaseReportInstance && m_fetchExecutor != null) {
+            ((BaseReportInstance) report).setFetchExecutor(m_fetchExecutor, FETCH_BATCH_SIZE, 2 * FETCH_THREADS);
+        }
         
         // FIXME What if the walker or the persister throws an exception ?
         getTransactionTemplate().execute(new TransactionCallbackWithoutResult() {
@@ -244,6 +264,11 @@ public class Statsd implements SpringServiceDaemon {
                 LOG.debug("Completed report {}", report);
                 accountReportComplete();
                 
+                if (report instanceof BaseReportInstance) {
+                    LOG.info("Completed report {} with {} attributes in {} ms", report,
+                            ((BaseReportInstance) report).getAttributesFetched(), System.currentTimeMillis() - reportStartTime);
+                }
+
                 m_reportPersister.persist(report);
                 LOG.debug("Report {} persisted", report);
                 accountReportPersist();
@@ -269,6 +294,10 @@ public class Statsd implements SpringServiceDaemon {
         Assert.state(m_scheduler != null, "property scheduler must be set to a non-null value");
         Assert.state(m_reportDefinitionBuilder != null, "property reportDefinitionBuilder must be set to a non-null value");
         Assert.state(m_eventForwarder != null, "eventForwarder property must be set to a non-null value");
+
+        if (FETCH_THREADS > 0) {
+            m_fetchExecutor = Executors.newFixedThreadPool(FETCH_THREADS, new LogPreservingThreadFactory("Statsd-Fetch", FETCH_THREADS));
+        }
     }
 
     /**
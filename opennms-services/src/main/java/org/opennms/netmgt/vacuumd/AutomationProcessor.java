@@ -59,6 +59,8 @@ import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Schedule;
 import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Events;
+import org.opennms.netmgt.xml.event.Log;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -89,6 +91,7 @@ public class AutomationProcessor implements ReadyRunnable {
     
     private volatile Schedule m_schedule;
     private volatile boolean m_ready = false;
+    private volatile AutomationReport m_lastReport;
 
     static class TriggerProcessor {
     	private static final Logger LOG = LoggerFactory.getLogger(TriggerProcessor.class);
@@ -317,7 +320,7 @@ public class AutomationProcessor implements ReadyRunnable {
             return count;
         }
 
-        boolean execute() throws SQLException {
+        boolean execute(AutomationReport report) throws SQLException {
             //No trigger defined, just running the action.
             if (getTokenCount(getActionSQL()) != 0) {
                 LOG.info("execute: not running action: {}.  Action contains tokens in an automation ({}) with no trigger.", m_action.getName(), m_automationName);
@@ -325,33 +328,65 @@ public class AutomationProcessor implements ReadyRunnable {
             } else {
                 //Convert the sql to a PreparedStatement
                 PreparedStatement actionStatement = createPreparedStatement();
-                actionStatement.executeUpdate();
+                report.addActionRows(actionStatement.executeUpdate(), 1);
                 return true;
             }
         }
 
-        boolean processTriggerResults(TriggerResults triggerResults) throws SQLException {
+        int getBatchSize() {
+            return Math.max(1, m_action.getBatchSize());
+        }
+
+        boolean processTriggerResults(TriggerResults triggerResults, AutomationReport report) throws SQLException {
         	ResultSet triggerResultSet = triggerResults.getResultSet();
 
             triggerResultSet.beforeFirst();
             
             PreparedStatement actionStatement = createPreparedStatement();
-        
-            //Loop through the select results
-            while (triggerResultSet.next()) {                        
-                //Convert the sql to a PreparedStatement
-                assignStatementParameters(actionStatement, triggerResultSet);
-                actionStatement.executeUpdate();
+            final int batchSize = getBatchSize();
+
+            if (batchSize == 1 || getTokenCount(getActionSQL()) == 0) {
+                //Loop through the select results
+                while (triggerResultSet.next()) {
+                    //Convert the sql to a PreparedStatement
+                    assignStatementParameters(actionStatement, triggerResultSet);
+                    report.addActionRows(actionStatement.executeUpdate(), 1);
+                }
+                return true;
             }
 
+            //Send the statements for batchSize rows of the select results at once
+            int batched = 0;
+            while (triggerResultSet.next()) {
+                assignStatementParameters(actionStatement, triggerResultSet);
+                actionStatement.addBatch();
+                if (++batched == batchSize) {
+                    executeBatch(actionStatement, report);
+                    batched = 0;
+                }
+            }
+            if (batched > 0) {
+                executeBatch(actionStatement, report);
+            }
             return true;
         }
 
-		boolean processAction(TriggerResults triggerResults) throws SQLException {
+        private void executeBatch(PreparedStatement actionStatement, AutomationReport report) throws SQLException {
+            int rows = 0;
+            for (int count : actionStatement.executeBatch()) {
+                // the driver may return SUCCESS_NO_INFO instead of the number of rows
+                if (count > 0) {
+                    rows += count;
+                }
+            }
+            report.addActionRows(rows, 1);
+        }
+
+		boolean processAction(TriggerResults triggerResults, AutomationReport report) throws SQLException {
 			if (triggerResults.hasTrigger()) {
-			    return processTriggerResults(triggerResults);
+			    return processTriggerResults(triggerResults, report);
 			} else {
-			    return execute();
+			    return execute(report);
 			}
 		}
 
@@ -715,15 +750,20 @@ public class AutomationProcessor implements ReadyRunnable {
         LOG.debug("runAutomation: Executing trigger: {}", m_automation.getTriggerName().orElse(null));
 
         final List<Event> eventsToSend = new LinkedList<>();
+        final long start = System.currentTimeMillis();
+        final AutomationReport report = new AutomationReport(m_automation.getName(), start);
+        boolean success = false;
         Transaction.begin();
         try {
             LOG.debug("runAutomation: Processing automation: {}", m_automation.getName());
 
-            TriggerResults results = processTrigger();
+            TriggerResults results = processTrigger(report);
+            report.setTriggerDurationMs(System.currentTimeMillis() - start);
             
-            boolean success = false;
             if (results.isSuccessful()) {
-                success = processAction(results, eventsToSend);
+                final long actionStart = System.currentTimeMillis();
+                success = processAction(results, eventsToSend, report);
+                report.setActionDurationMs(System.currentTimeMillis() - actionStart);
             }
             
 			return success;
@@ -739,8 +779,16 @@ public class AutomationProcessor implements ReadyRunnable {
             // Always send the events out after the transaction is closed in order to ensure
             // that any event handlers can access the updated records
             LOG.debug("runAutomation: Sending {} events for automation: {}", eventsToSend.size(), m_automation.getName());
-            for (Event event : eventsToSend) {
-                Vacuumd.getSingleton().getEventManager().sendNow(event);
+            sendEvents(eventsToSend);
+
+            report.setEvents(eventsToSend.size());
+            report.setSuccessful(success);
+            report.setDurationMs(System.currentTimeMillis() - start);
+            m_lastReport = report;
+            if (report.getTriggerRows() > 0 || report.getActionRows() > 0 || !success) {
+                LOG.info("runAutomation: {}", report);
+            } else {
+                LOG.debug("runAutomation: {}", report);
             }
 
             LOG.debug("runAutomation: Done processing automation: {}", m_automation.getName());
@@ -748,13 +796,29 @@ public class AutomationProcessor implements ReadyRunnable {
 
     }
 
-    private boolean processAction(TriggerResults triggerResults, List<Event> eventsToSend) throws SQLException {
+    /**
+     * Sends all of the events of a run in a single log instead of one at a time.
+     */
+    private static void sendEvents(List<Event> eventsToSend) {
+        if (eventsToSend.isEmpty()) {
+            return;
+        }
+        final Events events = new Events();
+        for (Event event : eventsToSend) {
+            events.addEvent(event);
+        }
+        final Log log = new Log();
+        log.setEvents(events);
+        Vacuumd.getSingleton().getEventManager().sendNow(log);
+    }
+
+    private boolean processAction(TriggerResults triggerResults, List<Event> eventsToSend, AutomationReport report) throws SQLException {
 		LOG.debug("runAutomation: running action(s)/actionEvent(s) for : {}", m_automation.getName());
 		
         //Verfiy the trigger ResultSet returned the required number of rows and the required columns for the action statement
         m_action.checkForRequiredColumns(triggerResults);
         		
-		if (m_action.processAction(triggerResults)) {
+		if (m_action.processAction(triggerResults, report)) {
 		    eventsToSend.addAll(m_actionEvent.processActionEvent(triggerResults));
 		    if (m_autoEvent.hasEvent()) {
 		        eventsToSend.add(m_autoEvent.getEvent());
@@ -765,15 +829,17 @@ public class AutomationProcessor implements ReadyRunnable {
 		}
 	}
 
-	private TriggerResults processTrigger() throws SQLException {
+	private TriggerResults processTrigger(AutomationReport report) throws SQLException {
 		
 		if (m_trigger.hasTrigger()) {
 			//get a scrollable ResultSet so that we can count the rows and move back to the
             //beginning for processing.
 			
             ResultSet triggerResultSet = m_trigger.runTriggerQuery();
+            final int resultRows = countRows(triggerResultSet);
+            report.setTriggerRows(resultRows);
 
-            TriggerResults triggerResults = new TriggerResults(m_trigger, triggerResultSet, verifyRowCount(triggerResultSet));
+            TriggerResults triggerResults = new TriggerResults(m_trigger, triggerResultSet, verifyRowCount(resultRows));
 
 			return triggerResults;
             
@@ -795,12 +861,13 @@ public class AutomationProcessor implements ReadyRunnable {
         }
         
         
-        int resultRows;
-        boolean validRows = true;
         //determine if number of rows required by the trigger row-count and operator were
         //met by the trigger query, if so we'll run the action
-        resultRows = countRows(triggerResultSet);
-        
+        return verifyRowCount(countRows(triggerResultSet));
+    }
+
+    private boolean verifyRowCount(int resultRows) {
+        boolean validRows = true;
         int triggerRowCount = m_trigger.getTrigger().getRowCount();
         String triggerOperator = m_trigger.getTrigger().getOperator();
 
@@ -852,6 +919,13 @@ public class AutomationProcessor implements ReadyRunnable {
         return m_automation;
     }
     
+    /**
+     * @return the timing and row counts of the last run, or null if the automation did not run yet
+     */
+    public AutomationReport getLastReport() {
+        return m_lastReport;
+    }
+
     /**
      * <p>isReady</p>
      *
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.vacuumd;
+
+/**
+ * Timing and row counts of one run of an automation.
+ */
+public class AutomationReport {
+
+    private final String m_automationName;
+    private final long m_startTime;
+    private long m_triggerDurationMs;
+    private long m_actionDurationMs;
+    private long m_durationMs;
+    private int m_triggerRows;
+    private int m_actionRows;
+    private int m_statements;
+    private int m_events;
+    private boolean m_successful;
+
+    AutomationReport(String automationName, long startTime) {
+        m_automationName = automationName;
+        m_startTime = startTime;
+    }
+
+    void setTriggerDurationMs(long triggerDurationMs) {
+        m_triggerDurationMs = triggerDurationMs;
+    }
+
+    void setActionDurationMs(long actionDurationMs) {
+        m_actionDurationMs = actionDurationMs;
+    }
+
+    void setDurationMs(long durationMs) {
+        m_durationMs = durationMs;
+    }
+
+    void setTriggerRows(int triggerRows) {
+        m_triggerRows = triggerRows;
+    }
+
+    void addActionRows(int rows, int statements) {
+        m_actionRows += rows;
+        m_statements += statements;
+    }
+
+    void setEvents(int events) {
+        m_events = events;
+    }
+
+    void setSuccessful(boolean successful) {
+        m_successful = successful;
+    }
+
+    public String getAutomationName() {
+        return m_automationName;
+    }
+
+    public long getStartTime() {
+        return m_startTime;
+    }
+
+    public long getTriggerDurationMs() {
+        return m_triggerDurationMs;
+    }
+
+    public long getActionDurationMs() {
+        return m_actionDurationMs;
+    }
+
+    public long getDurationMs() {
+        return m_durationMs;
+    }
+
+    /**
+     * @return the number of rows returned by the trigger
+     */
+    public int getTriggerRows() {
+        return m_triggerRows;
+    }
+
+    /**
+     * @return the number of rows updated by the action, as reported by the database
+     */
+    public int getActionRows() {
+        return m_actionRows;
+    }
+
+    /**
+     * @return the number of statements or batches sent to the database by the action
+     */
+    public int getStatements() {
+        return m_statements;
+    }
+
+    public int getEvents() {
+        return m_events;
+    }
+
+    public boolean isSuccessful() {
+        return m_successful;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("automation %s %s in %dms: %d trigger rows in %dms, %d rows updated by %d statements in %dms, %d events",
+                m_automationName, m_successful ? "completed" : "failed", m_durationMs,
+                m_triggerRows, m_triggerDurationMs, m_actionRows, m_statements, m_actionDurationMs, m_events);
+    }
+}
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.enlinkd.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SchedulerTest {
+
+    private Scheduler m_scheduler;
+
+    @Before
+    public void setUp() {
+        m_scheduler = new Scheduler("SchedulerTest", 4);
+        m_scheduler.start();
+    }
+
+    @After
+    public void tearDown() {
+        m_scheduler.stop();
+    }
+
+    @Test
+    public void testPartition() {
+        for (int key = 0; key < 1000; key++) {
+            int partition = m_scheduler.getPartition(key);
+            assertTrue(partition >= 0 && partition < 4);
+            assertEquals(partition, m_scheduler.getPartition(key));
+        }
+        assertTrue(m_scheduler.getPartition(Integer.MIN_VALUE) >= 0);
+        assertEquals(4, m_scheduler.getPartitionQueueSizes().length);
+    }
+
+    @Test(timeout = 30000)
+    public void testSameKeyIsSerialized() throws Exception {
+        final int count = 20;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        for (int i = 0; i < count; i++) {
+            m_scheduler.schedule(0, new TestRunnable(42) {
+                @Override
+                public void run() {
+                    maxRunning.set(Math.max(maxRunning.get(), running.incrementAndGet()));
+                    threads.add(Thread.currentThread().getName());
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(20, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+        assertEquals(1, threads.size());
+    }
+
+    @Test(timeout = 30000)
+    public void testLongRunningDoesNotBlockPartition() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        m_scheduler.schedule(0, new TestRunnable(42, true) {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(20, TimeUnit.SECONDS));
+
+        // A node collection with the same key runs while the long running one is blocked
+        final CountDownLatch collected = new CountDownLatch(1);
+        m_scheduler.schedule(0, new TestRunnable(42) {
+            @Override
+            public void run() {
+                collected.countDown();
+            }
+        });
+        assertTrue(collected.await(20, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    private static class TestRunnable implements ReadyRunnable {
+        private final int m_key;
+        private final boolean m_longRunning;
+
+        TestRunnable(int key) {
+            this(key, false);
+        }
+
+        TestRunnable(int key, boolean longRunning) {
+            m_key = key;
+            m_longRunning = longRunning;
+        }
+
+        @Override
+        public void run() {
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void suspend() {
+        }
+
+        @Override
+        public boolean isSuspended() {
+            return false;
+        }
+
+        @Override
+        public void wakeUp() {
+        }
+
+        @Override
+        public void unschedule() {
+        }
+
+        @Override
+        public void schedule() {
+        }
+
+        @Override
+        public String getInfo() {
+            return "TestRunnable key=" + m_key;
+        }
+
+        @Override
+        public String getPackageName() {
+            return "default";
+        }
+
+        @Override
+        public void setPackageName(String pkg) {
+        }
+
+        @Override
+        public int getPartitionKey() {
+            return m_key;
+        }
+
+        @Override
+        public boolean isLongRunning() {
+            return m_longRunning;
+        }
+    }
+}
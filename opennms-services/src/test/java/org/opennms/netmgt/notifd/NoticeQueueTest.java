@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.notifd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+public class NoticeQueueTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void testReadyTasksAreOrderedBySendTime() {
+        NoticeQueue queue = new NoticeQueue(1000, 8, 0);
+        NotificationTask a = task(1, 5500);
+        NotificationTask b = task(1, 2500);
+        NotificationTask c = task(2, 2600);
+        // more than one revolution of the wheel ahead
+        NotificationTask d = task(3, 12500);
+
+        assertNull(queue.putItem(a.getSendTime(), a));
+        assertNull(queue.putItem(b.getSendTime(), b));
+        assertNull(queue.putItem(c.getSendTime(), c));
+        assertNull(queue.putItem(d.getSendTime(), d));
+        assertSame(a, queue.putItem(a.getSendTime(), a));
+        assertEquals(4, queue.size());
+
+        assertEquals(Collections.emptyList(), queue.removeReady(2500));
+        assertEquals(Arrays.asList(b), queue.removeReady(2501));
+        assertEquals(Arrays.asList(c, a), queue.removeReady(6000));
+        assertEquals(Collections.emptyList(), queue.removeReady(12000));
+        assertEquals(Arrays.asList(d), queue.removeReady(13000));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testLateTasksAndLongPauses() {
+        NoticeQueue queue = new NoticeQueue(1000, 8, 10000);
+        NotificationTask late = task(1, 1000);
+        queue.putItem(late.getSendTime(), late);
+        assertEquals(Arrays.asList(late), queue.removeReady(10001));
+
+        // the handler did not run for several revolutions
+        NotificationTask a = task(2, 11000);
+        NotificationTask b = task(2, 15000);
+        NotificationTask c = task(2, 90000);
+        queue.putItem(a.getSendTime(), a);
+        queue.putItem(b.getSendTime(), b);
+        queue.putItem(c.getSendTime(), c);
+        assertEquals(Arrays.asList(a, b), queue.removeReady(60000));
+        assertEquals(1, queue.size());
+        assertEquals(Arrays.asList(c), queue.removeReady(90001));
+    }
+
+    @Test
+    public void testCancel() {
+        NoticeQueue queue = new NoticeQueue(1000, 8, 0);
+        NotificationTask a = task(1, 1000);
+        NotificationTask b = task(1, 2000);
+        NotificationTask c = task(2, 1500);
+        NotificationTask d = task(1, 3000);
+        queue.putItem(a.getSendTime(), a);
+        queue.putItem(b.getSendTime(), b);
+        queue.putItem(c.getSendTime(), c);
+        queue.putItem(d.getSendTime(), d);
+
+        assertTrue(queue.remove(d));
+        assertFalse(queue.remove(d));
+        assertFalse(queue.contains(d));
+        assertEquals(2, queue.removeNotice(1));
+        assertEquals(0, queue.removeNotice(1));
+        assertEquals(1, queue.size());
+        assertEquals(Arrays.asList(c), queue.removeReady(5000));
+    }
+
+    private static NotificationTask task(int noticeId, long sendTime) {
+        NotificationTask task = new NotificationTask(null, null, sendTime, new HashMap<String, String>(), null, null, DIRECT);
+        task.setNoticeId(noticeId);
+        return task;
+    }
+}
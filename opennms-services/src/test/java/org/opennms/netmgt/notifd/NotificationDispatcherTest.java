@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.notifd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class NotificationDispatcherTest {
+
+    private NotificationDispatcher m_dispatcher;
+
+    @After
+    public void tearDown() {
+        if (m_dispatcher != null) {
+            m_dispatcher.destroy();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testRetryUntilSuccess() throws Exception {
+        m_dispatcher = new NotificationDispatcher(2, 10, 5000, 2, 10);
+        final AtomicInteger calls = new AtomicInteger();
+        final Result result = new Result();
+        m_dispatcher.dispatch("org.opennms.netmgt.notifd.TestStrategy", new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                if (calls.incrementAndGet() == 1) {
+                    throw new IllegalStateException("relay unavailable");
+                }
+                return calls.get() == 2 ? 1 : 0;
+            }
+        }, result);
+
+        assertTrue(result.await());
+        assertEquals(0, result.m_returnCode);
+        assertEquals(3, result.m_attempts);
+        assertNull(result.m_cause.get());
+        assertEquals(3, calls.get());
+    }
+
+    @Test(timeout = 30000)
+    public void testTimeout() throws Exception {
+        m_dispatcher = new NotificationDispatcher(1, 10, 100, 0, 10);
+        final Result result = new Result();
+        m_dispatcher.dispatch("slow", new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                return 0;
+            }
+        }, result);
+
+        assertTrue(result.await());
+        assertEquals(1, result.m_attempts);
+        assertTrue(result.m_cause.get() instanceof TimeoutException);
+    }
+
+    @Test(timeout = 30000)
+    public void testSlowStrategyDoesNotBlockOthers() throws Exception {
+        m_dispatcher = new NotificationDispatcher(1, 10, 0, 0, 10);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final Result slow = new Result();
+        m_dispatcher.dispatch("slow", new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                gate.await();
+                return 0;
+            }
+        }, slow);
+        final Result fast = new Result();
+        m_dispatcher.dispatch("fast", new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return 0;
+            }
+        }, fast);
+
+        assertTrue(fast.await());
+        assertEquals(1, slow.m_latch.getCount());
+        gate.countDown();
+        assertTrue(slow.await());
+    }
+
+    @Test(timeout = 30000)
+    public void testNoRetryOnceAcknowledged() throws Exception {
+        m_dispatcher = new NotificationDispatcher(2, 10, 5000, 2, 10);
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger checks = new AtomicInteger();
+        final Result result = new Result();
+        m_dispatcher.dispatch("org.opennms.netmgt.notifd.TestStrategy", new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                calls.incrementAndGet();
+                return 1;
+            }
+        }, () -> {
+            // the notice is acknowledged after the first attempt
+            checks.incrementAndGet();
+            return false;
+        }, result);
+
+        assertTrue(result.await());
+        assertEquals(1, result.m_returnCode);
+        assertEquals(1, result.m_attempts);
+        assertEquals(1, calls.get());
+        assertEquals(1, checks.get());
+    }
+
+    @Test
+    public void testRetriesAreDisabledByDefault() throws Exception {
+        m_dispatcher = new NotificationDispatcher(1);
+        final Result result = new Result();
+        m_dispatcher.dispatch("org.opennms.netmgt.notifd.TestStrategy", new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return 1;
+            }
+        }, result);
+
+        assertTrue(result.await());
+        assertEquals(1, result.m_attempts);
+    }
+
+    private static class Result implements NotificationDispatcher.Callback {
+        private final CountDownLatch m_latch = new CountDownLatch(1);
+        private final AtomicReference<Throwable> m_cause = new AtomicReference<>();
+        private volatile int m_returnCode = -1;
+        private volatile int m_attempts = 0;
+
+        @Override
+        public void completed(int returnCode, int attempts, Throwable cause) {
+            m_returnCode = returnCode;
+            m_attempts = attempts;
+            m_cause.set(cause);
+            m_latch.countDown();
+        }
+
+        private boolean await() throws InterruptedException {
+            return m_latch.await(20, TimeUnit.SECONDS);
+        }
+    }
+}
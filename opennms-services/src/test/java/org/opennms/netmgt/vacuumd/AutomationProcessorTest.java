@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.vacuumd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opennms.core.db.DataSourceFactory;
+import org.opennms.netmgt.config.VacuumdConfigFactory;
+import org.opennms.netmgt.events.api.EventIpcManager;
+import org.opennms.netmgt.model.events.EventUtils;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Log;
+
+/**
+ * Tests the batched actions, the reports and the events of the automations
+ * without a database.
+ */
+public class AutomationProcessorTest {
+
+    private static final String DATA_SOURCE = "vacuumd-test";
+
+    private static final String CONFIG = "<VacuumdConfiguration period=\"86400000\">\n" +
+            "  <automations>\n" +
+            "    <automation name=\"escalateInBatches\" interval=\"10000\" active=\"true\" trigger-name=\"selectAlarms\" action-name=\"escalateInBatches\" action-event=\"eventEscalated\"/>\n" +
+            "    <automation name=\"escalateRowByRow\" interval=\"10000\" active=\"true\" trigger-name=\"selectAlarms\" action-name=\"escalateRowByRow\"/>\n" +
+            "  </automations>\n" +
+            "  <triggers>\n" +
+            "    <trigger name=\"selectAlarms\" data-source=\"" + DATA_SOURCE + "\" operator=\"&gt;=\" row-count=\"1\">\n" +
+            "      <statement>SELECT alarmid, nodeid FROM alarms</statement>\n" +
+            "    </trigger>\n" +
+            "  </triggers>\n" +
+            "  <actions>\n" +
+            "    <action name=\"escalateInBatches\" data-source=\"" + DATA_SOURCE + "\" batch-size=\"2\">\n" +
+            "      <statement>UPDATE alarms SET severity = severity+1 WHERE alarmid = ${alarmid}</statement>\n" +
+            "    </action>\n" +
+            "    <action name=\"escalateRowByRow\" data-source=\"" + DATA_SOURCE + "\" batch-size=\"1\">\n" +
+            "      <statement>UPDATE alarms SET severity = severity+1 WHERE alarmid = ${alarmid}</statement>\n" +
+            "    </action>\n" +
+            "  </actions>\n" +
+            "  <action-events>\n" +
+            "    <action-event name=\"eventEscalated\" for-each-result=\"true\">\n" +
+            "      <assignment type=\"field\" name=\"uei\" value=\"uei.opennms.org/vacuumd/alarmEscalated\"/>\n" +
+            "      <assignment type=\"field\" name=\"nodeid\" value=\"${nodeid}\"/>\n" +
+            "      <assignment type=\"parameter\" name=\"alarmId\" value=\"${alarmid}\"/>\n" +
+            "    </action-event>\n" +
+            "  </action-events>\n" +
+            "</VacuumdConfiguration>";
+
+    private Connection m_connection;
+    private PreparedStatement m_actionStatement;
+    private EventIpcManager m_eventManager;
+
+    @Before
+    public void setUp() throws Exception {
+        VacuumdConfigFactory.setInstance(new VacuumdConfigFactory(new ByteArrayInputStream(CONFIG.getBytes(StandardCharsets.UTF_8))));
+
+        final List<Map<String, Object>> rows = new ArrayList<>();
+        for (int alarmId = 1; alarmId <= 3; alarmId++) {
+            final Map<String, Object> row = new LinkedHashMap<>();
+            row.put("alarmid", alarmId);
+            row.put("nodeid", 10 + alarmId);
+            rows.add(row);
+        }
+
+        final Statement triggerStatement = mock(Statement.class);
+        when(triggerStatement.executeQuery(anyString())).thenReturn(resultSet(rows));
+        m_actionStatement = mock(PreparedStatement.class);
+        m_connection = mock(Connection.class);
+        when(m_connection.createStatement(anyInt(), anyInt())).thenReturn(triggerStatement);
+        when(m_connection.prepareStatement(anyString())).thenReturn(m_actionStatement);
+        final DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(m_connection);
+        DataSourceFactory.setInstance(DATA_SOURCE, dataSource);
+
+        m_eventManager = mock(EventIpcManager.class);
+        Vacuumd.getSingleton().setEventManager(m_eventManager);
+    }
+
+    @After
+    public void tearDown() {
+        Vacuumd.getSingleton().setEventManager(null);
+    }
+
+    @Test
+    public void testBatchedAction() throws Exception {
+        // the driver may not know the number of rows updated by a statement
+        when(m_actionStatement.executeBatch()).thenReturn(new int[] { 1, 1 }, new int[] { Statement.SUCCESS_NO_INFO });
+
+        final AutomationProcessor processor = new AutomationProcessor(VacuumdConfigFactory.getInstance().getAutomation("escalateInBatches"));
+        assertTrue(processor.runAutomation());
+
+        for (int alarmId = 1; alarmId <= 3; alarmId++) {
+            verify(m_actionStatement).setObject(1, alarmId);
+        }
+        verify(m_actionStatement, times(3)).addBatch();
+        verify(m_actionStatement, times(2)).executeBatch();
+        verify(m_actionStatement, never()).executeUpdate();
+        verify(m_connection).commit();
+
+        final AutomationReport report = processor.getLastReport();
+        assertEquals("escalateInBatches", report.getAutomationName());
+        assertTrue(report.isSuccessful());
+        assertEquals(3, report.getTriggerRows());
+        assertEquals(2, report.getActionRows());
+        assertEquals(2, report.getStatements());
+        assertEquals(3, report.getEvents());
+
+        // all the events of the run are sent at once
+        final ArgumentCaptor<Log> log = ArgumentCaptor.forClass(Log.class);
+        verify(m_eventManager).sendNow(log.capture());
+        verify(m_eventManager, never()).sendNow(any(Event.class));
+        final List<Event> events = log.getValue().getEvents().getEventCollection();
+        assertEquals(3, events.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("uei.opennms.org/vacuumd/alarmEscalated", events.get(i).getUei());
+            assertEquals(Long.valueOf(11 + i), events.get(i).getNodeid());
+            assertEquals(String.valueOf(1 + i), EventUtils.getParm(events.get(i), "alarmId"));
+        }
+    }
+
+    @Test
+    public void testRowByRowAction() throws Exception {
+        when(m_actionStatement.executeUpdate()).thenReturn(1, 0, 1);
+
+        final AutomationProcessor processor = new AutomationProcessor(VacuumdConfigFactory.getInstance().getAutomation("escalateRowByRow"));
+        assertTrue(processor.runAutomation());
+
+        verify(m_actionStatement, times(3)).executeUpdate();
+        verify(m_actionStatement, never()).addBatch();
+        verify(m_actionStatement, never()).executeBatch();
+
+        final AutomationReport report = processor.getLastReport();
+        assertTrue(report.isSuccessful());
+        assertEquals(3, report.getTriggerRows());
+        assertEquals(2, report.getActionRows());
+        assertEquals(3, report.getStatements());
+        assertEquals(0, report.getEvents());
+
+        verify(m_eventManager, never()).sendNow(any(Log.class));
+    }
+
+    @Test
+    public void testFailedBatch() throws Exception {
+        when(m_actionStatement.executeBatch()).thenReturn(new int[] { 1, 1 }).thenThrow(new SQLException("deadlock detected"));
+
+        final AutomationProcessor processor = new AutomationProcessor(VacuumdConfigFactory.getInstance().getAutomation("escalateInBatches"));
+        assertFalse(processor.runAutomation());
+
+        verify(m_connection).rollback();
+        verify(m_connection, never()).commit();
+
+        final AutomationReport report = processor.getLastReport();
+        assertFalse(report.isSuccessful());
+        assertEquals(3, report.getTriggerRows());
+        assertEquals(0, report.getEvents());
+
+        // no event is sent for a rolled back action
+        verify(m_eventManager, never()).sendNow(any(Log.class));
+    }
+
+    /**
+     * A scrollable result set over the given rows.
+     */
+    private static ResultSet resultSet(final List<Map<String, Object>> rows) {
+        final AtomicInteger row = new AtomicInteger(-1);
+        return (ResultSet)Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "next":
+                return row.incrementAndGet() < rows.size();
+            case "beforeFirst":
+                row.set(-1);
+                return null;
+            case "findColumn":
+                if (rows.isEmpty() || !rows.get(0).containsKey(args[0])) {
+                    throw new SQLException("No column " + args[0]);
+                }
+                return new ArrayList<>(rows.get(0).keySet()).indexOf(args[0]) + 1;
+            case "getObject":
+                return rows.get(row.get()).get(args[0]);
+            case "getString":
+                final Object value = rows.get(row.get()).get(args[0]);
+                return value == null ? null : value.toString();
+            case "close":
+                return null;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
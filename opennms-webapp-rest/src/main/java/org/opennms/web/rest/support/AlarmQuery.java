@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.web.rest.support;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.opennms.netmgt.model.OnmsSeverity;
+
+/**
+ * A filtered, sorted and paged query against the {@link AlarmReadModel}.
+ *
+ * Every filter that is set must match, unset filters match every alarm.
+ */
+public class AlarmQuery {
+
+    public enum OrderBy {
+        ID,
+        LAST_EVENT_TIME,
+        FIRST_EVENT_TIME,
+        SEVERITY,
+        COUNT,
+        NODE_ID
+    }
+
+    private Set<OnmsSeverity> m_severities = Collections.emptySet();
+    private Integer m_nodeId;
+    private Set<Integer> m_nodeIds;
+    private String m_uei;
+    private Boolean m_acknowledged;
+    private OrderBy m_orderBy = OrderBy.LAST_EVENT_TIME;
+    private boolean m_ascending = false;
+    private int m_offset = 0;
+    private Integer m_limit;
+
+    public Set<OnmsSeverity> getSeverities() {
+        return m_severities;
+    }
+
+    public AlarmQuery setSeverities(Set<OnmsSeverity> severities) {
+        m_severities = severities == null ? Collections.emptySet() : severities;
+        return this;
+    }
+
+    /**
+     * Only match the alarms with the given severity or a higher one.
+     */
+    public AlarmQuery setMinimumSeverity(OnmsSeverity minimumSeverity) {
+        final Set<OnmsSeverity> severities = EnumSet.noneOf(OnmsSeverity.class);
+        for (OnmsSeverity severity : OnmsSeverity.values()) {
+            if (severity.isGreaterThanOrEqual(minimumSeverity)) {
+                severities.add(severity);
+            }
+        }
+        return setSeverities(severities);
+    }
+
+    public Integer getNodeId() {
+        return m_nodeId;
+    }
+
+    public AlarmQuery setNodeId(Integer nodeId) {
+        m_nodeId = nodeId;
+        return this;
+    }
+
+    public Set<Integer> getNodeIds() {
+        return m_nodeIds;
+    }
+
+    /**
+     * Only match the alarms of the given nodes, which excludes the alarms
+     * without node. Used to apply the ACLs of the user.
+     *
+     * @param nodeIds the ids of the nodes, or null to match the alarms of every node
+     */
+    public AlarmQuery setNodeIds(Set<Integer> nodeIds) {
+        m_nodeIds = nodeIds;
+        return this;
+    }
+
+    public String getUei() {
+        return m_uei;
+    }
+
+    public AlarmQuery setUei(String uei) {
+        m_uei = uei;
+        return this;
+    }
+
+    public Boolean getAcknowledged() {
+        return m_acknowledged;
+    }
+
+    public AlarmQuery setAcknowledged(Boolean acknowledged) {
+        m_acknowledged = acknowledged;
+        return this;
+    }
+
+    public OrderBy getOrderBy() {
+        return m_orderBy;
+    }
+
+    public AlarmQuery setOrderBy(OrderBy orderBy) {
+        m_orderBy = orderBy == null ? OrderBy.LAST_EVENT_TIME : orderBy;
+        return this;
+    }
+
+    public boolean isAscending() {
+        return m_ascending;
+    }
+
+    public AlarmQuery setAscending(boolean ascending) {
+        m_ascending = ascending;
+        return this;
+    }
+
+    public int getOffset() {
+        return m_offset;
+    }
+
+    public AlarmQuery setOffset(Integer offset) {
+        m_offset = offset == null ? 0 : Math.max(0, offset);
+        return this;
+    }
+
+    /**
+     * @return the maximum number of alarms to return, or null (or 0) for all of them
+     */
+    public Integer getLimit() {
+        return m_limit;
+    }
+
+    public AlarmQuery setLimit(Integer limit) {
+        m_limit = limit;
+        return this;
+    }
+}
@@ -0,0 +1,477 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.web.rest.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.opennms.web.rest.model.v2.AlarmChangesDTO;
+import org.opennms.web.rest.model.v2.AlarmDTO;
+
+/**
+ * An in-memory copy of the current alarms, indexed by severity, node, UEI
+ * and acknowledgement state, so that the common alarm list queries can be
+ * answered without querying the database.
+ *
+ * Every change increments the version of the model. The version can be used
+ * as an ETag, to be called back on the next change with {@link #onChange(long, Runnable)}
+ * and to retrieve only the alarms that changed since a previous version with
+ * {@link #getChangesSince(long)}.
+ */
+public class AlarmReadModel {
+
+    public static final int DEFAULT_MAX_DELETIONS = 10000;
+
+    private static class Entry {
+        private final AlarmDTO alarm;
+        private final long version;
+        private final OnmsSeverity severity;
+        private final boolean acknowledged;
+        private final List<Object> state;
+
+        private Entry(AlarmDTO alarm, long version) {
+            this.alarm = alarm;
+            this.version = version;
+            this.severity = OnmsSeverity.get(alarm.getSeverity());
+            this.acknowledged = alarm.getAckTime() != null;
+            this.state = getState(alarm);
+        }
+    }
+
+    public static class Result {
+        private final List<AlarmDTO> alarms;
+        private final int totalCount;
+        private final long version;
+
+        private Result(List<AlarmDTO> alarms, int totalCount, long version) {
+            this.alarms = alarms;
+            this.totalCount = totalCount;
+            this.version = version;
+        }
+
+        public List<AlarmDTO> getAlarms() {
+            return alarms;
+        }
+
+        public int getTotalCount() {
+            return totalCount;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    private static class Waiter {
+        private final long version;
+        private final Runnable callback;
+
+        private Waiter(long version, Runnable callback) {
+            this.version = version;
+            this.callback = Objects.requireNonNull(callback);
+        }
+    }
+
+    private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Entry> m_alarms = new HashMap<>();
+    private final Map<OnmsSeverity, Set<Integer>> m_bySeverity = new EnumMap<>(OnmsSeverity.class);
+    private final Map<Integer, Set<Integer>> m_byNode = new HashMap<>();
+    private final Map<String, Set<Integer>> m_byUei = new HashMap<>();
+    private final Map<Boolean, Set<Integer>> m_byAcknowledged = new HashMap<>();
+
+    // version of the last change -> alarm id, for the alarms in the model and the deleted ones
+    private final NavigableMap<Long, Integer> m_updates = new TreeMap<>();
+    private final NavigableMap<Long, Integer> m_deletions = new TreeMap<>();
+    private final int m_maxDeletions;
+
+    // the changes made before this version are no longer known
+    private long m_oldestKnownVersion;
+    private long m_version;
+
+    private final Object m_versionMonitor = new Object();
+    private volatile long m_publishedVersion;
+    // guarded by m_versionMonitor
+    private final List<Waiter> m_waiters = new ArrayList<>();
+
+    /**
+     * The versions start at the current time so that the versions handed out
+     * before a restart are older than the versions of the new model.
+     */
+    public AlarmReadModel() {
+        this(DEFAULT_MAX_DELETIONS, System.currentTimeMillis());
+    }
+
+    /**
+     * @param maxDeletions number of deleted alarm ids that are remembered to
+     *        answer {@link #getChangesSince(long)}
+     * @param initialVersion version of the empty model
+     */
+    public AlarmReadModel(int maxDeletions, long initialVersion) {
+        m_maxDeletions = Math.max(1, maxDeletions);
+        m_oldestKnownVersion = initialVersion;
+        m_version = initialVersion;
+        m_publishedVersion = initialVersion;
+    }
+
+    public long getVersion() {
+        return m_publishedVersion;
+    }
+
+    public int size() {
+        m_lock.readLock().lock();
+        try {
+            return m_alarms.size();
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds or replaces the given alarm.
+     */
+    public void update(AlarmDTO alarm) {
+        Objects.requireNonNull(alarm.getId(), "alarm id");
+        m_lock.writeLock().lock();
+        try {
+            doUpdate(alarm);
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+        publish();
+    }
+
+    public void delete(int alarmId) {
+        m_lock.writeLock().lock();
+        try {
+            doDelete(alarmId);
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+        publish();
+    }
+
+    /**
+     * Replaces the content of the model with the given alarms, loaded from
+     * the database. The alarms that were updated or deleted after the given
+     * version, i.e. while the alarms were being loaded, are left untouched.
+     * Alarms that did not change are not assigned a new version.
+     *
+     * @param alarms all of the current alarms
+     * @param loadedAtVersion the version of the model when the alarms started to be loaded
+     */
+    public void synchronize(Collection<AlarmDTO> alarms, long loadedAtVersion) {
+        m_lock.writeLock().lock();
+        try {
+            final Set<Integer> deletedSince = new HashSet<>(m_deletions.tailMap(loadedAtVersion, false).values());
+            final Set<Integer> loaded = new HashSet<>();
+            for (AlarmDTO alarm : alarms) {
+                loaded.add(alarm.getId());
+                final Entry existing = m_alarms.get(alarm.getId());
+                if (existing != null && (existing.version > loadedAtVersion || existing.state.equals(getState(alarm)))) {
+                    continue;
+                }
+                if (existing == null && deletedSince.contains(alarm.getId())) {
+                    continue;
+                }
+                doUpdate(alarm);
+            }
+            for (Entry entry : new ArrayList<>(m_alarms.values())) {
+                if (entry.version <= loadedAtVersion && !loaded.contains(entry.alarm.getId())) {
+                    doDelete(entry.alarm.getId());
+                }
+            }
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+        publish();
+    }
+
+    public Result query(AlarmQuery query) {
+        m_lock.readLock().lock();
+        try {
+            final List<Entry> matches = new ArrayList<>();
+            for (Integer alarmId : getCandidates(query)) {
+                final Entry entry = m_alarms.get(alarmId);
+                if (entry != null && matches(entry, query)) {
+                    matches.add(entry);
+                }
+            }
+
+            Comparator<Entry> comparator = getComparator(query.getOrderBy());
+            if (!query.isAscending()) {
+                comparator = comparator.reversed();
+            }
+            matches.sort(comparator);
+
+            final int from = Math.min(query.getOffset(), matches.size());
+            final int to = query.getLimit() == null || query.getLimit() <= 0 ? matches.size() : Math.min(matches.size(), from + query.getLimit());
+            final List<AlarmDTO> page = new ArrayList<>(to - from);
+            for (Entry entry : matches.subList(from, to)) {
+                page.add(entry.alarm);
+            }
+            return new Result(page, matches.size(), m_version);
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the alarms created or updated, and the ids of the alarms deleted after the given version
+     */
+    public AlarmChangesDTO getChangesSince(long version) {
+        return getChangesSince(version, null);
+    }
+
+    /**
+     * @param nodeIds only return the alarms of these nodes, or null for the alarms of every node.
+     *        The ids of the deleted alarms are always returned, as their nodes are no longer known.
+     * @return the alarms created or updated, and the ids of the alarms deleted after the given version
+     */
+    public AlarmChangesDTO getChangesSince(long version, Set<Integer> nodeIds) {
+        m_lock.readLock().lock();
+        try {
+            final List<AlarmDTO> alarms = new ArrayList<>();
+            if (version < m_oldestKnownVersion || version > m_version) {
+                m_alarms.values().stream()
+                    .filter(e -> isVisible(e, nodeIds))
+                    .sorted(getComparator(AlarmQuery.OrderBy.ID))
+                    .forEach(e -> alarms.add(e.alarm));
+                return new AlarmChangesDTO(m_version, true, alarms, new ArrayList<>());
+            }
+            for (Integer alarmId : m_updates.tailMap(version, false).values()) {
+                final Entry entry = m_alarms.get(alarmId);
+                if (isVisible(entry, nodeIds)) {
+                    alarms.add(entry.alarm);
+                }
+            }
+            return new AlarmChangesDTO(m_version, false, alarms, new ArrayList<>(m_deletions.tailMap(version, false).values()));
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Calls the callback once the version of the model is greater than the
+     * given one. The callback runs right away if the model already changed,
+     * otherwise on the thread publishing the change, so that waiting clients
+     * do not hold on to a thread.
+     */
+    public void onChange(long version, Runnable callback) {
+        synchronized (m_versionMonitor) {
+            if (m_publishedVersion <= version) {
+                m_waiters.add(new Waiter(version, callback));
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    /**
+     * Forgets the callback of a client that is no longer waiting, i.e. because its request timed out.
+     */
+    public void cancel(Runnable callback) {
+        synchronized (m_versionMonitor) {
+            m_waiters.removeIf(waiter -> waiter.callback == callback);
+        }
+    }
+
+    private void doUpdate(AlarmDTO alarm) {
+        final Entry existing = m_alarms.get(alarm.getId());
+        if (existing != null) {
+            unindex(existing);
+        }
+        final Entry entry = new Entry(alarm, ++m_version);
+        m_alarms.put(alarm.getId(), entry);
+        m_updates.put(entry.version, alarm.getId());
+        index(entry);
+    }
+
+    private void doDelete(int alarmId) {
+        final Entry existing = m_alarms.remove(alarmId);
+        if (existing == null) {
+            return;
+        }
+        unindex(existing);
+        m_deletions.put(++m_version, alarmId);
+        while (m_deletions.size() > m_maxDeletions) {
+            m_oldestKnownVersion = m_deletions.pollFirstEntry().getKey();
+        }
+    }
+
+    private void publish() {
+        final List<Runnable> changed = new ArrayList<>();
+        synchronized (m_versionMonitor) {
+            m_lock.readLock().lock();
+            try {
+                m_publishedVersion = m_version;
+            } finally {
+                m_lock.readLock().unlock();
+            }
+            final Iterator<Waiter> it = m_waiters.iterator();
+            while (it.hasNext()) {
+                final Waiter waiter = it.next();
+                if (waiter.version < m_publishedVersion) {
+                    it.remove();
+                    changed.add(waiter.callback);
+                }
+            }
+        }
+        // outside of the lock, the callbacks usually query the model
+        changed.forEach(Runnable::run);
+    }
+
+    private void index(Entry entry) {
+        final Integer alarmId = entry.alarm.getId();
+        m_bySeverity.computeIfAbsent(entry.severity, k -> new HashSet<>()).add(alarmId);
+        m_byAcknowledged.computeIfAbsent(entry.acknowledged, k -> new HashSet<>()).add(alarmId);
+        if (entry.alarm.getNodeId() != null) {
+            m_byNode.computeIfAbsent(entry.alarm.getNodeId(), k -> new HashSet<>()).add(alarmId);
+        }
+        if (entry.alarm.getUei() != null) {
+            m_byUei.computeIfAbsent(entry.alarm.getUei(), k -> new HashSet<>()).add(alarmId);
+        }
+    }
+
+    private void unindex(Entry entry) {
+        final Integer alarmId = entry.alarm.getId();
+        m_updates.remove(entry.version);
+        remove(m_bySeverity, entry.severity, alarmId);
+        remove(m_byAcknowledged, entry.acknowledged, alarmId);
+        remove(m_byNode, entry.alarm.getNodeId(), alarmId);
+        remove(m_byUei, entry.alarm.getUei(), alarmId);
+    }
+
+    private static <K> void remove(Map<K, Set<Integer>> index, K key, Integer alarmId) {
+        if (key == null) {
+            return;
+        }
+        final Set<Integer> ids = index.get(key);
+        if (ids != null && ids.remove(alarmId) && ids.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * Uses the most selective index of the query to limit the number of alarms to look at.
+     */
+    private Collection<Integer> getCandidates(AlarmQuery query) {
+        Collection<Integer> candidates = m_alarms.keySet();
+        if (!query.getSeverities().isEmpty()) {
+            final List<Integer> ids = new ArrayList<>();
+            for (OnmsSeverity severity : query.getSeverities()) {
+                ids.addAll(m_bySeverity.getOrDefault(severity, Collections.emptySet()));
+            }
+            candidates = ids;
+        }
+        if (query.getNodeId() != null) {
+            candidates = smallest(candidates, m_byNode.get(query.getNodeId()));
+        } else if (query.getNodeIds() != null && query.getNodeIds().size() < m_byNode.size()) {
+            final List<Integer> ids = new ArrayList<>();
+            for (Integer nodeId : query.getNodeIds()) {
+                ids.addAll(m_byNode.getOrDefault(nodeId, Collections.emptySet()));
+            }
+            candidates = smallest(candidates, ids);
+        }
+        if (query.getUei() != null) {
+            candidates = smallest(candidates, m_byUei.get(query.getUei()));
+        }
+        if (query.getAcknowledged() != null) {
+            candidates = smallest(candidates, m_byAcknowledged.get(query.getAcknowledged()));
+        }
+        return candidates;
+    }
+
+    private static Collection<Integer> smallest(Collection<Integer> candidates, Collection<Integer> ids) {
+        if (ids == null) {
+            return Collections.emptySet();
+        }
+        return ids.size() < candidates.size() ? ids : candidates;
+    }
+
+    private static boolean isVisible(Entry entry, Set<Integer> nodeIds) {
+        return nodeIds == null || (entry.alarm.getNodeId() != null && nodeIds.contains(entry.alarm.getNodeId()));
+    }
+
+    private static boolean matches(Entry entry, AlarmQuery query) {
+        return (query.getSeverities().isEmpty() || query.getSeverities().contains(entry.severity))
+                && (query.getNodeId() == null || query.getNodeId().equals(entry.alarm.getNodeId()))
+                && isVisible(entry, query.getNodeIds())
+                && (query.getUei() == null || query.getUei().equals(entry.alarm.getUei()))
+                && (query.getAcknowledged() == null || query.getAcknowledged() == entry.acknowledged);
+    }
+
+    private static Comparator<Entry> getComparator(AlarmQuery.OrderBy orderBy) {
+        final Comparator<Entry> byId = Comparator.comparing(e -> e.alarm.getId());
+        switch (orderBy) {
+        case LAST_EVENT_TIME:
+            return Comparator.comparing((Entry e) -> e.alarm.getLastEventTime(), Comparator.nullsFirst(Comparator.naturalOrder())).thenComparing(byId);
+        case FIRST_EVENT_TIME:
+            return Comparator.comparing((Entry e) -> e.alarm.getFirstEventTime(), Comparator.nullsFirst(Comparator.naturalOrder())).thenComparing(byId);
+        case SEVERITY:
+            return Comparator.comparing((Entry e) -> e.severity.getId()).thenComparing(byId);
+        case COUNT:
+            return Comparator.comparing((Entry e) -> e.alarm.getCount(), Comparator.nullsFirst(Comparator.naturalOrder())).thenComparing(byId);
+        case NODE_ID:
+            return Comparator.comparing((Entry e) -> e.alarm.getNodeId(), Comparator.nullsFirst(Comparator.naturalOrder())).thenComparing(byId);
+        case ID:
+        default:
+            return byId;
+        }
+    }
+
+    /**
+     * The fields of an alarm that change during its lifetime, used to avoid
+     * assigning a new version to the alarms that did not change when the model
+     * is synchronized with the database.
+     */
+    private static List<Object> getState(AlarmDTO alarm) {
+        return Arrays.asList(alarm.getSeverity(), alarm.getCount(), alarm.getLastEventTime(),
+                alarm.getAckUser(), alarm.getAckTime(), alarm.getTroubleTicket(), alarm.getTroubleTicketState(),
+                alarm.getSuppressedUntil(), alarm.getSuppressedBy(), alarm.getNodeLabel(), alarm.getLogMessage(),
+                alarm.getStickyMemo() == null ? null : alarm.getStickyMemo().getUpdated(),
+                alarm.getReductionKeyMemo() == null ? null : alarm.getReductionKeyMemo().getUpdated());
+    }
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.web.rest.support;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+import org.opennms.web.rest.model.v2.ChangeCollectionDTO;
+import org.opennms.web.rest.model.v2.ChangeDTO;
+
+/**
+ * Keeps the most recent changes of the alarms, outages and node status in
+ * memory, so that the clients only retrieve the changes since their previous
+ * request instead of reloading everything on a timer.
+ *
+ * Every change is assigned a sequence number. The clients ask for the changes
+ * after the last sequence number they have seen, and may be called back on a
+ * change matching their {@link ChangeFilter} with
+ * {@link #onChange(long, ChangeFilter, Runnable)}, so that waiting clients do
+ * not hold on to a thread.
+ */
+public class ChangeFeed {
+
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private final Deque<ChangeDTO> m_changes = new ArrayDeque<>();
+    private final List<Waiter> m_waiters = new ArrayList<>();
+    private final int m_capacity;
+
+    // the changes up to this sequence number are no longer known
+    private long m_oldestKnownSequence;
+    private long m_sequence;
+
+    /**
+     * The sequence numbers start at the current time so that the sequence
+     * numbers handed out before a restart are older than the new ones.
+     */
+    public ChangeFeed() {
+        this(DEFAULT_CAPACITY, System.currentTimeMillis());
+    }
+
+    /**
+     * @param capacity number of changes kept in memory
+     * @param initialSequence sequence number of the empty feed
+     */
+    public ChangeFeed(int capacity, long initialSequence) {
+        m_capacity = Math.max(1, capacity);
+        m_oldestKnownSequence = initialSequence;
+        m_sequence = initialSequence;
+    }
+
+    public synchronized long getSequence() {
+        return m_sequence;
+    }
+
+    /**
+     * Assigns the next sequence number to the change and calls back the
+     * waiting clients it matches.
+     */
+    public void publish(ChangeDTO change) {
+        final List<Waiter> matched = new ArrayList<>();
+        synchronized (this) {
+            change.setSequence(++m_sequence);
+            m_changes.addLast(change);
+            while (m_changes.size() > m_capacity) {
+                m_oldestKnownSequence = m_changes.removeFirst().getSequence();
+            }
+            final Iterator<Waiter> it = m_waiters.iterator();
+            while (it.hasNext()) {
+                final Waiter waiter = it.next();
+                if (waiter.sequence < m_oldestKnownSequence || waiter.filter.matches(change)) {
+                    it.remove();
+                    matched.add(waiter);
+                }
+            }
+        }
+        // outside of the lock, the callbacks usually ask for the changes
+        matched.forEach(waiter -> waiter.callback.run());
+    }
+
+    /**
+     * @param sequence the last sequence number seen by the client
+     * @param filter the changes the client subscribed to
+     * @param limit maximum number of changes to return, or 0 for all of them
+     * @return the matching changes published after the given sequence number
+     */
+    public synchronized ChangeCollectionDTO getChangesSince(long sequence, ChangeFilter filter, int limit) {
+        if (sequence < m_oldestKnownSequence || sequence > m_sequence) {
+            return new ChangeCollectionDTO(m_sequence, true, new ArrayList<>());
+        }
+        final List<ChangeDTO> changes = new ArrayList<>();
+        for (ChangeDTO change : m_changes) {
+            if (change.getSequence() <= sequence || !filter.matches(change)) {
+                continue;
+            }
+            if (limit > 0 && changes.size() == limit) {
+                // the client continues after the last change it received
+                return new ChangeCollectionDTO(changes.get(changes.size() - 1).getSequence(), false, changes);
+            }
+            changes.add(change);
+        }
+        return new ChangeCollectionDTO(m_sequence, false, changes);
+    }
+
+    /**
+     * Calls the callback once a change matching the filter is published after
+     * the given sequence number, or the changes since that sequence number are
+     * no longer known. The callback runs right away if there is already
+     * something new for the client, otherwise on the thread publishing the
+     * change.
+     */
+    public void onChange(long sequence, ChangeFilter filter, Runnable callback) {
+        synchronized (this) {
+            if (!hasChangesSince(sequence, filter)) {
+                m_waiters.add(new Waiter(sequence, filter, callback));
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    /**
+     * Forgets the callback of a client that is no longer waiting, i.e. because its request timed out.
+     */
+    public synchronized void cancel(Runnable callback) {
+        m_waiters.removeIf(waiter -> waiter.callback == callback);
+    }
+
+    public synchronized int getWaiterCount() {
+        return m_waiters.size();
+    }
+
+    private boolean hasChangesSince(long sequence, ChangeFilter filter) {
+        if (sequence < m_oldestKnownSequence || sequence > m_sequence) {
+            return true;
+        }
+        final Iterator<ChangeDTO> it = m_changes.descendingIterator();
+        while (it.hasNext()) {
+            final ChangeDTO change = it.next();
+            if (change.getSequence() <= sequence) {
+                return false;
+            }
+            if (filter.matches(change)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Waiter {
+        private final long sequence;
+        private final ChangeFilter filter;
+        private final Runnable callback;
+
+        private Waiter(long sequence, ChangeFilter filter, Runnable callback) {
+            this.sequence = sequence;
+            this.filter = Objects.requireNonNull(filter);
+            this.callback = Objects.requireNonNull(callback);
+        }
+    }
+}
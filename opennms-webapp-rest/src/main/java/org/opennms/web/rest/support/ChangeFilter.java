@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.web.rest.support;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.opennms.web.rest.model.v2.ChangeDTO;
+
+/**
+ * Selects the changes of the {@link ChangeFeed} a client subscribed to.
+ * An empty filter matches all of the changes.
+ */
+public class ChangeFilter {
+
+    private final Set<String> m_types = new HashSet<>();
+    private final Set<Integer> m_nodeIds = new HashSet<>();
+    private OnmsSeverity m_minimumSeverity;
+    private Set<Integer> m_authorizedNodeIds;
+
+    public Set<String> getTypes() {
+        return m_types;
+    }
+
+    public ChangeFilter setTypes(Collection<String> types) {
+        m_types.clear();
+        if (types != null) {
+            m_types.addAll(types);
+        }
+        return this;
+    }
+
+    public Set<Integer> getNodeIds() {
+        return m_nodeIds;
+    }
+
+    public ChangeFilter setNodeIds(Collection<Integer> nodeIds) {
+        m_nodeIds.clear();
+        if (nodeIds != null) {
+            m_nodeIds.addAll(nodeIds);
+        }
+        return this;
+    }
+
+    public OnmsSeverity getMinimumSeverity() {
+        return m_minimumSeverity;
+    }
+
+    /**
+     * Only applies to the changes that have a severity, the deletions of
+     * alarms always match.
+     */
+    public ChangeFilter setMinimumSeverity(OnmsSeverity minimumSeverity) {
+        m_minimumSeverity = minimumSeverity;
+        return this;
+    }
+
+    public Set<Integer> getAuthorizedNodeIds() {
+        return m_authorizedNodeIds;
+    }
+
+    /**
+     * Restricts the changes to the nodes the user is allowed to see, which
+     * excludes the changes without node. The deletions of alarms, which only
+     * carry the id of the alarm, are not restricted.
+     *
+     * @param authorizedNodeIds the ids of the nodes, or null if the user is not restricted
+     */
+    public ChangeFilter setAuthorizedNodeIds(Set<Integer> authorizedNodeIds) {
+        m_authorizedNodeIds = authorizedNodeIds;
+        return this;
+    }
+
+    public boolean matches(ChangeDTO change) {
+        if (m_authorizedNodeIds != null && !ChangeDTO.ACTION_DELETE.equals(change.getAction())
+                && (change.getNodeId() == null || !m_authorizedNodeIds.contains(change.getNodeId()))) {
+            return false;
+        }
+        if (!m_types.isEmpty() && !m_types.contains(change.getType())) {
+            return false;
+        }
+        if (!m_nodeIds.isEmpty() && !m_nodeIds.contains(change.getNodeId())) {
+            return false;
+        }
+        if (m_minimumSeverity != null && change.getSeverity() != null) {
+            return OnmsSeverity.get(change.getSeverity()).isGreaterThanOrEqual(m_minimumSeverity);
+        }
+        return true;
+    }
+}
@@ -28,15 +28,55 @@
 
 package org.opennms.web.rest.support;
 
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
 
+import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.web.api.Authentication;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
 public class SecurityHelper {
 
+    /**
+     * The ids of the nodes each user is allowed to see, so that the clients
+     * polling the live resources do not load every node id on each request.
+     */
+    private static final Cache<String, Set<Integer>> s_authorizedNodeIds = CacheBuilder.newBuilder()
+            .expireAfterWrite(30, TimeUnit.SECONDS)
+            .maximumSize(1000)
+            .build();
+
+    /**
+     * Returns the ids of the nodes the user is allowed to see when ACLs are
+     * enabled, for the services that do not read their entities through the
+     * authorization filter of the DAOs.
+     *
+     * This must be called on the request thread, where the filter is enabled.
+     * The ids are cached per user for 30 seconds.
+     *
+     * @return the ids of the nodes the user can see, or null if the user is not restricted
+     */
+    public static Set<Integer> getAuthorizedNodeIds(final SecurityContext securityContext, final NodeDao nodeDao) {
+        if (securityContext.isUserInRole(Authentication.ROLE_ADMIN)
+                || !"true".equalsIgnoreCase(System.getProperty("org.opennms.web.aclsEnabled", "false"))) {
+            return null;
+        }
+        try {
+            return s_authorizedNodeIds.get(securityContext.getUserPrincipal().getName(), () -> ImmutableSet.copyOf(nodeDao.getNodeIds()));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to get the nodes of user " + securityContext.getUserPrincipal().getName(), e.getCause());
+        }
+    }
+
     public static void assertUserReadCredentials(SecurityContext securityContext) {
         final String currentUser = securityContext.getUserPrincipal().getName();
 
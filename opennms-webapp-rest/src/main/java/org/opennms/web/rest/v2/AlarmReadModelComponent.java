@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.web.rest.v2;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.opennms.core.soa.ServiceRegistry;
+import org.opennms.netmgt.alarmd.api.AlarmLifecycleListener;
+import org.opennms.netmgt.alarmd.api.AlarmLifecycleSubscriptionService;
+import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.web.rest.mapper.v2.AlarmMapper;
+import org.opennms.web.rest.model.v2.AlarmDTO;
+import org.opennms.web.rest.support.AlarmReadModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Keeps the {@link AlarmReadModel} used by the alarm REST service up to date.
+ *
+ * The model is fed by the alarm lifecycle callbacks of alarmd, and is
+ * periodically synchronized with the database to pick up the changes that
+ * are not reported by alarmd (i.e. acknowledgements made by other clients).
+ *
+ * The synchronization runs on a thread of its own, outside of any request, so
+ * that the model always holds every alarm, whatever the ACLs of the user that
+ * happens to use it. The ACLs are applied when the model is queried.
+ */
+@Component
+public class AlarmReadModelComponent implements AlarmLifecycleListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AlarmReadModelComponent.class);
+
+    private static final long SYNC_INTERVAL_MS = Long.getLong("org.opennms.web.rest.alarms.syncIntervalMs", TimeUnit.MINUTES.toMillis(5));
+
+    /**
+     * Used instead of the sync interval while alarmd is not available.
+     */
+    private static final long UNSUBSCRIBED_SYNC_INTERVAL_MS = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * How long a request waits for the initial load of the model.
+     */
+    private static final long INITIAL_LOAD_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    @Autowired
+    private AlarmDao m_alarmDao;
+
+    @Autowired
+    private AlarmMapper m_alarmMapper;
+
+    @Autowired
+    private ServiceRegistry m_serviceRegistry;
+
+    @Autowired
+    private PlatformTransactionManager m_transactionManager;
+
+    @Autowired
+    private ChangeFeedComponent m_changeFeed;
+
+    private final AlarmReadModel m_readModel = new AlarmReadModel();
+
+    private final CountDownLatch m_initialLoad = new CountDownLatch(1);
+
+    private final ScheduledExecutorService m_executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "alarm-read-model-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile AlarmLifecycleSubscriptionService m_subscriptionService;
+    private volatile long m_lastSync = 0;
+
+    @PostConstruct
+    public void init() {
+        m_executor.scheduleWithFixedDelay(this::tick, 0, UNSUBSCRIBED_SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the read model, once it has been loaded from the database
+     * @throws IllegalStateException if the initial load did not complete in time
+     */
+    public AlarmReadModel getReadModel() {
+        try {
+            if (!m_initialLoad.await(INITIAL_LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("The alarm read model is not loaded yet.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the alarm read model to be loaded.", e);
+        }
+        return m_readModel;
+    }
+
+    @Override
+    public void handleNewOrUpdatedAlarm(OnmsAlarm alarm) {
+        try {
+            final AlarmDTO alarmDTO = m_alarmMapper.alarmToAlarmDTO(alarm);
+            m_readModel.update(alarmDTO);
+            m_changeFeed.publishAlarm(alarmDTO);
+        } catch (Exception e) {
+            LOG.warn("Failed to update alarm {} in the read model. It will be updated by the next synchronization.", alarm.getId(), e);
+        }
+    }
+
+    @Override
+    public void handleDeletedAlarm(int alarmId, String reductionKey) {
+        m_readModel.delete(alarmId);
+        m_changeFeed.publishDeletedAlarm(alarmId);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        m_executor.shutdownNow();
+        final AlarmLifecycleSubscriptionService subscriptionService = m_subscriptionService;
+        if (subscriptionService != null) {
+            subscriptionService.removeAlarmLifecycleListener(this);
+        }
+    }
+
+    /**
+     * Runs every few seconds on the sync thread, and synchronizes the model when it is due.
+     */
+    private void tick() {
+        try {
+            subscribe();
+            final long interval = m_subscriptionService != null ? SYNC_INTERVAL_MS : UNSUBSCRIBED_SYNC_INTERVAL_MS;
+            if (System.currentTimeMillis() - m_lastSync >= interval) {
+                synchronize();
+                m_initialLoad.countDown();
+            }
+        } catch (Exception e) {
+            LOG.warn("Failed to synchronize the alarm read model with the database.", e);
+        }
+    }
+
+    private void subscribe() {
+        if (m_subscriptionService != null) {
+            return;
+        }
+        final AlarmLifecycleSubscriptionService subscriptionService = m_serviceRegistry.findProvider(AlarmLifecycleSubscriptionService.class);
+        if (subscriptionService == null) {
+            LOG.debug("No AlarmLifecycleSubscriptionService is available, the alarm read model is only synchronized with the database.");
+            return;
+        }
+        subscriptionService.addAlarmLifecyleListener(this);
+        m_subscriptionService = subscriptionService;
+    }
+
+    private void synchronize() {
+        final long start = System.currentTimeMillis();
+        final long version = m_readModel.getVersion();
+        final TransactionTemplate template = new TransactionTemplate(m_transactionManager);
+        template.setReadOnly(true);
+        final List<AlarmDTO> alarms = template.execute(status -> m_alarmDao.findAll().stream()
+                .map(m_alarmMapper::alarmToAlarmDTO)
+                .collect(Collectors.toList()));
+        m_readModel.synchronize(alarms, version);
+        if (m_lastSync != 0) {
+            // the initial load is not a change, and changes made concurrently are published
+            // again, which is harmless for the clients of the feed
+            m_changeFeed.publishAlarmChanges(m_readModel.getChangesSince(version));
+        }
+        m_lastSync = System.currentTimeMillis();
+        LOG.debug("Synchronized the alarm read model with {} alarms in {} ms.", alarms.size(), m_lastSync - start);
+    }
+}
@@ -29,21 +29,35 @@
 package org.opennms.web.rest.v2;
 
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.SecurityContext;
 import javax.ws.rs.core.UriInfo;
@@ -60,14 +74,19 @@ import org.opennms.core.resource.Vault;
 import org.opennms.netmgt.dao.api.AcknowledgmentDao;
 import org.opennms.netmgt.dao.api.AlarmDao;
 import org.opennms.netmgt.dao.api.AlarmRepository;
+import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.model.AckAction;
 import org.opennms.netmgt.model.OnmsAcknowledgment;
 import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.model.OnmsSeverity;
 import org.opennms.netmgt.model.TroubleTicketState;
 import org.opennms.web.rest.mapper.v2.AlarmMapper;
+import org.opennms.web.rest.model.v2.AlarmChangesDTO;
 import org.opennms.web.rest.model.v2.AlarmCollectionDTO;
 import org.opennms.web.rest.model.v2.AlarmDTO;
+import org.opennms.web.rest.support.AlarmQuery;
+import org.opennms.web.rest.support.AlarmReadModel;
 import org.opennms.web.rest.support.Aliases;
 import org.opennms.web.rest.support.CriteriaBehavior;
 import org.opennms.web.rest.support.CriteriaBehaviors;
@@ -79,6 +98,7 @@ import org.opennms.web.rest.support.SecurityHelper;
 import org.opennms.web.svclayer.TroubleTicketProxy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -91,6 +111,11 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional
 public class AlarmRestService extends AbstractDaoRestServiceWithDTO<OnmsAlarm,AlarmDTO,SearchBean,Integer,Integer> {
 
+    /**
+     * Maximum time a long-polling request waits for a change of the alarms.
+     */
+    private static final long MAX_WAIT_MS = TimeUnit.MINUTES.toMillis(1);
+
     @Autowired
     private AlarmDao m_dao;
 
@@ -106,6 +131,12 @@ public class AlarmRestService extends AbstractDaoRestServiceWithDTO<OnmsAlarm,Al
     @Autowired
     private AlarmMapper m_alarmMapper;
 
+    @Autowired
+    private AlarmReadModelComponent m_alarmReadModel;
+
+    @Autowired
+    private NodeDao m_nodeDao;
+
     @Override
     protected AlarmDao getDao() {
         return m_dao;
@@ -235,10 +266,164 @@ public class AlarmRestService extends AbstractDaoRestServiceWithDTO<OnmsAlarm,Al
         } else {
             getDao().saveOrUpdate(alarm);
         }
+        // acknowledgements and ticket changes are not reported by the alarm lifecycle callbacks
+        m_alarmReadModel.handleNewOrUpdatedAlarm(alarm);
 
         return Response.noContent().build();
     }
 
+    /**
+     * Returns the alarms from the in-memory read model, without querying the
+     * database. The alarms can be filtered by severity (or minSeverity), node
+     * id, UEI and acknowledgement state, ordered by id, lastEventTime,
+     * firstEventTime, severity, count or nodeId and paged with limit and offset.
+     *
+     * The response carries the version of the read model as ETag. When the
+     * request has a matching If-None-Match header and a timeout, the request
+     * waits up to timeout milliseconds for the alarms to change before
+     * answering with 304 Not Modified. While it waits, the request is
+     * suspended and does not hold on to a servlet thread.
+     *
+     * When ACLs are enabled, only the alarms of the nodes the user is allowed
+     * to see are returned.
+     */
+    @GET
+    @Path("live")
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    @Transactional(propagation=Propagation.SUPPORTS)
+    public void getLiveAlarms(@Context final SecurityContext securityContext, @Context final Request request, @Context final UriInfo uriInfo,
+            @Suspended final AsyncResponse asyncResponse, @QueryParam("timeout") final Long timeout) {
+        SecurityHelper.assertUserReadCredentials(securityContext);
+        final AlarmReadModel readModel = getReadModel();
+        final AlarmQuery query = getAlarmQuery(uriInfo.getQueryParameters())
+                .setNodeIds(SecurityHelper.getAuthorizedNodeIds(securityContext, m_nodeDao));
+
+        final AlarmReadModel.Result result = readModel.query(query);
+        final long version = result.getVersion();
+        final ResponseBuilder notModified = request.evaluatePreconditions(new EntityTag(Long.toString(version)));
+        if (notModified == null) {
+            asyncResponse.resume(getLiveAlarmsResponse(query, result));
+        } else if (timeout == null || timeout <= 0) {
+            asyncResponse.resume(notModified.build());
+        } else {
+            // the versions only grow, so the client has the alarms as long as the version is the same
+            suspend(asyncResponse, readModel, version, Math.min(timeout, MAX_WAIT_MS), () -> {
+                final AlarmReadModel.Result current = readModel.query(query);
+                if (current.getVersion() == version) {
+                    return Response.notModified(new EntityTag(Long.toString(version))).build();
+                }
+                return getLiveAlarmsResponse(query, current);
+            });
+        }
+    }
+
+    /**
+     * Returns the alarms that changed, and the ids of the alarms that were
+     * deleted, since the given version of the read model. Without version, or
+     * when the changes since the version are no longer known, all of the
+     * alarms are returned and reset is set. When a timeout is given, the
+     * request is suspended for up to timeout milliseconds until a change.
+     *
+     * When ACLs are enabled, only the alarms of the nodes the user is allowed
+     * to see are returned.
+     */
+    @GET
+    @Path("live/changes")
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    @Transactional(propagation=Propagation.SUPPORTS)
+    public void getLiveAlarmChanges(@Context final SecurityContext securityContext, @Suspended final AsyncResponse asyncResponse,
+            @QueryParam("since") final Long since, @QueryParam("timeout") final Long timeout) {
+        SecurityHelper.assertUserReadCredentials(securityContext);
+        final AlarmReadModel readModel = getReadModel();
+        // the authorized nodes are read on the request thread, where the ACL filter of the DAOs is enabled
+        final Set<Integer> nodeIds = SecurityHelper.getAuthorizedNodeIds(securityContext, m_nodeDao);
+        final long version = since == null ? Long.MIN_VALUE : since;
+        final Supplier<Response> changes = () -> {
+            final AlarmChangesDTO dto = readModel.getChangesSince(version, nodeIds);
+            return Response.ok(dto).tag(new EntityTag(Long.toString(dto.getVersion()))).build();
+        };
+        if (timeout == null || timeout <= 0) {
+            asyncResponse.resume(changes.get());
+            return;
+        }
+        suspend(asyncResponse, readModel, version, Math.min(timeout, MAX_WAIT_MS), changes);
+    }
+
+    private static Response getLiveAlarmsResponse(final AlarmQuery query, final AlarmReadModel.Result result) {
+        final EntityTag etag = new EntityTag(Long.toString(result.getVersion()));
+        if (result.getAlarms().isEmpty()) {
+            return Response.status(Status.NO_CONTENT).tag(etag).build();
+        }
+
+        final AlarmCollectionDTO list = new AlarmCollectionDTO(result.getAlarms());
+        list.setTotalCount(result.getTotalCount());
+        list.setOffset(query.getOffset());
+        return Response.ok(list)
+                .tag(etag)
+                .header("Content-Range", String.format("items %d-%d/%d", query.getOffset(), query.getOffset() + result.getAlarms().size() - 1, result.getTotalCount()))
+                .build();
+    }
+
+    /**
+     * Resumes the request with the response once the read model changed after
+     * the given version or the timeout expires, whichever comes first.
+     */
+    private static void suspend(final AsyncResponse asyncResponse, final AlarmReadModel readModel, final long version,
+            final long timeoutMs, final Supplier<Response> response) {
+        final Runnable resume = () -> {
+            try {
+                asyncResponse.resume(response.get());
+            } catch (Exception e) {
+                asyncResponse.resume(e);
+            }
+        };
+        asyncResponse.setTimeoutHandler(r -> {
+            readModel.cancel(resume);
+            resume.run();
+        });
+        asyncResponse.setTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        readModel.onChange(version, resume);
+    }
+
+    private AlarmReadModel getReadModel() {
+        try {
+            return m_alarmReadModel.getReadModel();
+        } catch (IllegalStateException e) {
+            throw new WebApplicationException(Response.status(Status.SERVICE_UNAVAILABLE).entity(e.getMessage()).type(MediaType.TEXT_PLAIN).build());
+        }
+    }
+
+    private AlarmQuery getAlarmQuery(final MultivaluedMap<String,String> params) {
+        final AlarmQuery query = new AlarmQuery();
+        try {
+            final List<String> severities = params.get("severity");
+            if (severities != null && !severities.isEmpty()) {
+                final Set<OnmsSeverity> set = EnumSet.noneOf(OnmsSeverity.class);
+                severities.forEach(s -> set.add(OnmsSeverity.valueOf(s.toUpperCase())));
+                query.setSeverities(set);
+            } else if (params.getFirst("minSeverity") != null) {
+                query.setMinimumSeverity(OnmsSeverity.valueOf(params.getFirst("minSeverity").toUpperCase()));
+            }
+            if (params.getFirst("nodeId") != null) {
+                query.setNodeId(Integer.valueOf(params.getFirst("nodeId")));
+            }
+            query.setUei(params.getFirst("uei"));
+            if (params.getFirst("acknowledged") != null) {
+                query.setAcknowledged(Boolean.valueOf(params.getFirst("acknowledged")));
+            }
+            if (params.getFirst("orderBy") != null) {
+                query.setOrderBy(AlarmQuery.OrderBy.valueOf(params.getFirst("orderBy").replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase()));
+            }
+            // the most recent alarms come first unless another order is requested
+            query.setAscending(params.getFirst("order") != null ? !"desc".equalsIgnoreCase(params.getFirst("order")) : params.getFirst("orderBy") != null);
+            query.setOffset(params.getFirst("offset") == null ? null : Integer.valueOf(params.getFirst("offset")));
+            query.setLimit(params.getFirst("limit") == null ? DEFAULT_LIMIT : Integer.valueOf(params.getFirst("limit")));
+        } catch (IllegalArgumentException e) {
+            throw getException(Status.BAD_REQUEST, "Invalid alarm query: {}", e.getMessage());
+        }
+        return query;
+    }
+
     @PUT
     @Path("{id}/memo")
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.web.rest.v2;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.ServletContext;
+
+import org.opennms.core.soa.ServiceRegistry;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.events.api.EventSubscriptionService;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.web.rest.model.v2.AlarmChangesDTO;
+import org.opennms.web.rest.model.v2.AlarmDTO;
+import org.opennms.web.rest.model.v2.ChangeDTO;
+import org.opennms.web.rest.support.ChangeFeed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.ServletContextAware;
+
+/**
+ * Publishes the changes of the alarms, outages and node status to the
+ * {@link ChangeFeed} served by the {@link ChangeFeedRestService}.
+ *
+ * The alarm changes are handed over by the {@link AlarmReadModelComponent},
+ * the outage and node status changes are taken from the events of pollerd.
+ *
+ * The current sequence number is exposed to the pages of the webapp as a
+ * {@link LongSupplier} in the {@link #SEQUENCE_ATTRIBUTE} attribute of the
+ * servlet context, so that they can start streaming the changes from the
+ * moment they were rendered.
+ */
+@Component
+public class ChangeFeedComponent implements EventListener, ServletContextAware {
+
+    public static final String SEQUENCE_ATTRIBUTE = "org.opennms.web.changes.sequence";
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChangeFeedComponent.class);
+
+    private static final List<String> OUTAGE_UEIS = Arrays.asList(
+            EventConstants.OUTAGE_CREATED_EVENT_UEI,
+            EventConstants.OUTAGE_RESOLVED_EVENT_UEI);
+
+    private static final List<String> DOWN_UEIS = Arrays.asList(
+            EventConstants.NODE_DOWN_EVENT_UEI,
+            EventConstants.INTERFACE_DOWN_EVENT_UEI,
+            EventConstants.NODE_LOST_SERVICE_EVENT_UEI);
+
+    private static final List<String> UP_UEIS = Arrays.asList(
+            EventConstants.NODE_UP_EVENT_UEI,
+            EventConstants.INTERFACE_UP_EVENT_UEI,
+            EventConstants.NODE_REGAINED_SERVICE_EVENT_UEI);
+
+    @Autowired
+    private ServiceRegistry m_serviceRegistry;
+
+    private final ChangeFeed m_feed = new ChangeFeed();
+
+    private volatile EventSubscriptionService m_subscriptionService;
+
+    /**
+     * @return the change feed, after subscribing to the events if that was not done yet
+     */
+    public ChangeFeed getFeed() {
+        subscribe();
+        return m_feed;
+    }
+
+    @Override
+    public void setServletContext(ServletContext servletContext) {
+        servletContext.setAttribute(SEQUENCE_ATTRIBUTE, (LongSupplier) m_feed::getSequence);
+    }
+
+    public void publishAlarm(AlarmDTO alarm) {
+        final ChangeDTO change = new ChangeDTO(ChangeDTO.TYPE_ALARM, ChangeDTO.ACTION_UPDATE);
+        change.setId(alarm.getId());
+        change.setNodeId(alarm.getNodeId());
+        change.setIpAddress(alarm.getIpAddress() == null ? null : InetAddressUtils.str(alarm.getIpAddress()));
+        change.setServiceName(alarm.getServiceType() == null ? null : alarm.getServiceType().getName());
+        change.setUei(alarm.getUei());
+        change.setSeverity(alarm.getSeverity());
+        change.setTime(alarm.getLastEventTime());
+        change.setAlarm(alarm);
+        m_feed.publish(change);
+    }
+
+    public void publishDeletedAlarm(int alarmId) {
+        final ChangeDTO change = new ChangeDTO(ChangeDTO.TYPE_ALARM, ChangeDTO.ACTION_DELETE);
+        change.setId(alarmId);
+        m_feed.publish(change);
+    }
+
+    /**
+     * Publishes the alarm changes found while synchronizing the alarm read model.
+     */
+    public void publishAlarmChanges(AlarmChangesDTO changes) {
+        if (changes.isReset()) {
+            return;
+        }
+        changes.getAlarms().forEach(this::publishAlarm);
+        changes.getDeletedAlarmIds().forEach(this::publishDeletedAlarm);
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        final String uei = event.getUei();
+        final ChangeDTO change;
+        if (OUTAGE_UEIS.contains(uei)) {
+            change = new ChangeDTO(ChangeDTO.TYPE_OUTAGE, EventConstants.OUTAGE_CREATED_EVENT_UEI.equals(uei) ? ChangeDTO.ACTION_CREATED : ChangeDTO.ACTION_RESOLVED);
+        } else if (DOWN_UEIS.contains(uei)) {
+            change = new ChangeDTO(ChangeDTO.TYPE_NODE, ChangeDTO.ACTION_DOWN);
+        } else if (UP_UEIS.contains(uei)) {
+            change = new ChangeDTO(ChangeDTO.TYPE_NODE, ChangeDTO.ACTION_UP);
+        } else {
+            return;
+        }
+        change.setNodeId(event.getNodeid() == null ? null : event.getNodeid().intValue());
+        change.setIpAddress(event.getInterface());
+        change.setServiceName(event.getService());
+        change.setUei(uei);
+        change.setTime(event.getTime());
+        m_feed.publish(change);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        final EventSubscriptionService subscriptionService = m_subscriptionService;
+        if (subscriptionService != null) {
+            subscriptionService.removeEventListener(this);
+        }
+    }
+
+    private void subscribe() {
+        if (m_subscriptionService != null) {
+            return;
+        }
+        synchronized (m_feed) {
+            if (m_subscriptionService == null) {
+                final EventSubscriptionService subscriptionService = m_serviceRegistry.findProvider(EventSubscriptionService.class);
+                if (subscriptionService == null) {
+                    LOG.debug("No EventSubscriptionService is available, the outage and node changes are not published yet.");
+                    return;
+                }
+                subscriptionService.addEventListener(this, OUTAGE_UEIS);
+                subscriptionService.addEventListener(this, DOWN_UEIS);
+                subscriptionService.addEventListener(this, UP_UEIS);
+                m_subscriptionService = subscriptionService;
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.web.rest.v2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.SecurityContext;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.opennms.core.xml.JacksonUtils;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.opennms.web.rest.model.v2.ChangeCollectionDTO;
+import org.opennms.web.rest.model.v2.ChangeDTO;
+import org.opennms.web.rest.support.ChangeFeed;
+import org.opennms.web.rest.support.ChangeFilter;
+import org.opennms.web.rest.support.SecurityHelper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pushes the changes of the alarms, outages and node status to the clients,
+ * so that they can update their views without reloading everything.
+ *
+ * The clients subscribe to the changes they are interested in with the
+ * type, nodeId and minSeverity parameters, and receive the matching changes
+ * as soon as they are published, either as JSON/XML by long polling, or as
+ * server-sent events usable with the EventSource of the browsers.
+ *
+ * A request only waits until there are changes for the client, and
+ * then ends. While it waits, the request is suspended and does not hold on
+ * to a servlet thread, the changes resume it.
+ *
+ * When ACLs are enabled, users only receive the changes of the nodes they
+ * are allowed to see.
+ */
+@Component
+@Path("changes")
+public class ChangeFeedRestService {
+
+    private static final long DEFAULT_WAIT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final long MAX_WAIT_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final int DEFAULT_LIMIT = 1000;
+
+    /**
+     * Milliseconds the browsers wait before opening the next event stream.
+     */
+    private static final int RECONNECT_DELAY_MS = 1000;
+
+    private static final String TEXT_EVENT_STREAM = "text/event-stream";
+
+    private final ObjectMapper m_objectMapper = JacksonUtils.createDefaultObjectMapper();
+
+    @Autowired
+    private ChangeFeedComponent m_changeFeed;
+
+    @Autowired
+    private NodeDao m_nodeDao;
+
+    /**
+     * Returns the changes published after the given sequence number. Without
+     * sequence number, only the current sequence number is returned. When a
+     * timeout is given, the request waits up to timeout milliseconds for a
+     * matching change.
+     */
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+    public void getChanges(@Context final SecurityContext securityContext, @Suspended final AsyncResponse asyncResponse,
+            @QueryParam("since") final Long since, @QueryParam("timeout") final Long timeout,
+            @QueryParam("type") final List<String> types, @QueryParam("nodeId") final List<Integer> nodeIds,
+            @QueryParam("minSeverity") final String minSeverity, @QueryParam("limit") final Integer limit) {
+        SecurityHelper.assertUserReadCredentials(securityContext);
+        final ChangeFeed feed = m_changeFeed.getFeed();
+        if (since == null) {
+            asyncResponse.resume(new ChangeCollectionDTO(feed.getSequence(), false, new ArrayList<>()));
+            return;
+        }
+        final ChangeFilter filter = getFilter(securityContext, types, nodeIds, minSeverity);
+        final int max = limit == null ? DEFAULT_LIMIT : limit;
+        if (timeout == null || timeout <= 0) {
+            asyncResponse.resume(feed.getChangesSince(since, filter, max));
+            return;
+        }
+        suspend(asyncResponse, feed, since, filter, Math.min(timeout, MAX_WAIT_MS),
+                () -> feed.getChangesSince(since, filter, max));
+    }
+
+    /**
+     * Streams the changes as server-sent events: one event per change, named
+     * after the type of the change, with the change as JSON. The stream starts
+     * after the Last-Event-ID sent by the browser when it reconnects, or after
+     * the since parameter. A "reset" event tells the client to reload its
+     * state, since the changes it missed are no longer known.
+     */
+    @GET
+    @Path("stream")
+    @Produces(TEXT_EVENT_STREAM)
+    public void getChangeStream(@Context final SecurityContext securityContext, @Suspended final AsyncResponse asyncResponse,
+            @HeaderParam("Last-Event-ID") final Long lastEventId, @QueryParam("since") final Long since,
+            @QueryParam("timeout") final Long timeout, @QueryParam("type") final List<String> types,
+            @QueryParam("nodeId") final List<Integer> nodeIds, @QueryParam("minSeverity") final String minSeverity) {
+        SecurityHelper.assertUserReadCredentials(securityContext);
+        final ChangeFeed feed = m_changeFeed.getFeed();
+        final ChangeFilter filter = getFilter(securityContext, types, nodeIds, minSeverity);
+        final long sequence = lastEventId != null ? lastEventId : since != null ? since : feed.getSequence();
+
+        suspend(asyncResponse, feed, sequence, filter, timeout == null ? DEFAULT_WAIT_MS : Math.min(timeout, MAX_WAIT_MS),
+                () -> toEventStream(feed.getChangesSince(sequence, filter, DEFAULT_LIMIT)));
+    }
+
+    /**
+     * Resumes the request with the response once there is a matching change
+     * or the timeout expires, whichever comes first.
+     */
+    private static void suspend(final AsyncResponse asyncResponse, final ChangeFeed feed, final long sequence,
+            final ChangeFilter filter, final long timeoutMs, final Supplier<Object> response) {
+        final Runnable resume = () -> {
+            try {
+                asyncResponse.resume(response.get());
+            } catch (Exception e) {
+                asyncResponse.resume(e);
+            }
+        };
+        asyncResponse.setTimeoutHandler(r -> {
+            feed.cancel(resume);
+            resume.run();
+        });
+        asyncResponse.setTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        feed.onChange(sequence, filter, resume);
+    }
+
+    private Response toEventStream(final ChangeCollectionDTO changes) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("retry: ").append(RECONNECT_DELAY_MS).append('\n');
+        if (changes.isReset()) {
+            sb.append("event: reset\ndata: {}\n");
+        } else {
+            for (ChangeDTO change : changes.getChanges()) {
+                try {
+                    sb.append("id: ").append(change.getSequence()).append('\n')
+                        .append("event: ").append(change.getType()).append('\n')
+                        .append("data: ").append(m_objectMapper.writeValueAsString(change)).append("\n\n");
+                } catch (IOException e) {
+                    throw new WebApplicationException(e, Status.INTERNAL_SERVER_ERROR);
+                }
+            }
+        }
+        // an id without data moves the Last-Event-ID of the browser without dispatching an event
+        sb.append("id: ").append(changes.getSequence()).append("\n\n");
+
+        return Response.ok(sb.toString(), TEXT_EVENT_STREAM)
+                .header("Cache-Control", "no-cache")
+                .build();
+    }
+
+    private ChangeFilter getFilter(SecurityContext securityContext, List<String> types, List<Integer> nodeIds, String minSeverity) {
+        // the authorized nodes are read on the request thread, where the ACL filter of the DAOs is enabled
+        final ChangeFilter filter = new ChangeFilter().setTypes(types).setNodeIds(nodeIds)
+                .setAuthorizedNodeIds(SecurityHelper.getAuthorizedNodeIds(securityContext, m_nodeDao));
+        if (minSeverity != null) {
+            try {
+                filter.setMinimumSeverity(OnmsSeverity.valueOf(minSeverity.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new WebApplicationException(Response.status(Status.BAD_REQUEST).type(MediaType.TEXT_PLAIN).entity("Invalid severity: " + minSeverity).build());
+            }
+        }
+        return filter;
+    }
+}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.web.rest.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.opennms.web.rest.model.v2.AlarmChangesDTO;
+import org.opennms.web.rest.model.v2.AlarmDTO;
+
+public class AlarmReadModelTest {
+
+    @Test
+    public void testQuery() {
+        final AlarmReadModel model = new AlarmReadModel(10, 0);
+        model.update(alarm(1, 1, "uei.opennms.org/a", OnmsSeverity.MAJOR, 100));
+        model.update(alarm(2, 1, "uei.opennms.org/b", OnmsSeverity.MINOR, 300));
+        model.update(alarm(3, 2, "uei.opennms.org/a", OnmsSeverity.CRITICAL, 200));
+        model.update(alarm(4, null, "uei.opennms.org/a", OnmsSeverity.NORMAL, 400));
+
+        // most recent first by default
+        assertEquals(Arrays.asList(4, 2, 3, 1), ids(model.query(new AlarmQuery())));
+        assertEquals(Arrays.asList(1, 2), ids(model.query(new AlarmQuery().setNodeId(1).setOrderBy(AlarmQuery.OrderBy.ID).setAscending(true))));
+        assertEquals(Arrays.asList(3, 1), ids(model.query(new AlarmQuery().setUei("uei.opennms.org/a").setMinimumSeverity(OnmsSeverity.MAJOR))));
+        assertEquals(Arrays.asList(), ids(model.query(new AlarmQuery().setNodeId(3))));
+
+        final AlarmReadModel.Result page = model.query(new AlarmQuery().setOrderBy(AlarmQuery.OrderBy.SEVERITY).setOffset(1).setLimit(2));
+        assertEquals(Arrays.asList(1, 2), ids(page));
+        assertEquals(4, page.getTotalCount());
+        assertEquals(model.getVersion(), page.getVersion());
+
+        final AlarmDTO acked = alarm(2, 1, "uei.opennms.org/b", OnmsSeverity.MINOR, 300);
+        acked.setAckTime(new Date());
+        model.update(acked);
+        assertEquals(Arrays.asList(2), ids(model.query(new AlarmQuery().setAcknowledged(true))));
+        assertEquals(Arrays.asList(4, 3, 1), ids(model.query(new AlarmQuery().setAcknowledged(false))));
+    }
+
+    @Test
+    public void testAuthorizedNodes() {
+        final AlarmReadModel model = new AlarmReadModel(10, 0);
+        final long version = model.getVersion();
+        model.update(alarm(1, 1, "uei.opennms.org/a", OnmsSeverity.MAJOR, 100));
+        model.update(alarm(2, 2, "uei.opennms.org/a", OnmsSeverity.MAJOR, 200));
+        model.update(alarm(3, 3, "uei.opennms.org/a", OnmsSeverity.MAJOR, 300));
+        model.update(alarm(4, null, "uei.opennms.org/a", OnmsSeverity.MAJOR, 400));
+
+        final AlarmReadModel.Result result = model.query(new AlarmQuery().setNodeIds(new HashSet<>(Arrays.asList(1, 3))));
+        assertEquals(Arrays.asList(3, 1), ids(result));
+        assertEquals(2, result.getTotalCount());
+        assertEquals(Arrays.asList(3), ids(model.query(new AlarmQuery().setNodeId(3).setNodeIds(new HashSet<>(Arrays.asList(1, 3))))));
+        assertEquals(Arrays.asList(), ids(model.query(new AlarmQuery().setNodeId(2).setNodeIds(new HashSet<>(Arrays.asList(1, 3))))));
+
+        model.delete(2);
+        final AlarmChangesDTO changes = model.getChangesSince(version, new HashSet<>(Arrays.asList(1)));
+        assertEquals(Arrays.asList(1), changes.getAlarms().stream().map(AlarmDTO::getId).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(2), changes.getDeletedAlarmIds());
+        assertEquals(1, model.getChangesSince(Long.MIN_VALUE, new HashSet<>(Arrays.asList(1))).getAlarms().size());
+    }
+
+    @Test
+    public void testChangesSince() {
+        final AlarmReadModel model = new AlarmReadModel(2, 0);
+        model.update(alarm(1, 1, "uei.opennms.org/a", OnmsSeverity.MAJOR, 100));
+        model.update(alarm(2, 1, "uei.opennms.org/a", OnmsSeverity.MAJOR, 100));
+        final long version = model.getVersion();
+
+        model.update(alarm(1, 1, "uei.opennms.org/a", OnmsSeverity.CRITICAL, 200));
+        model.delete(2);
+        AlarmChangesDTO changes = model.getChangesSince(version);
+        assertFalse(changes.isReset());
+        assertEquals(model.getVersion(), changes.getVersion());
+        assertEquals(1, changes.getAlarms().size());
+        assertEquals(Integer.valueOf(1), changes.getAlarms().get(0).getId());
+        assertEquals(Arrays.asList(2), changes.getDeletedAlarmIds());
+
+        assertTrue(model.getChangesSince(model.getVersion()).getAlarms().isEmpty());
+
+        // only the last two deletions are remembered
+        model.update(alarm(3, 1, "uei.opennms.org/a", OnmsSeverity.MAJOR, 100));
+        model.update(alarm(4, 1, "uei.opennms.org/a", OnmsSeverity.MAJOR, 100));
+        model.delete(3);
+        model.delete(4);
+        changes = model.getChangesSince(version);
+        assertTrue(changes.isReset());
+        assertEquals(1, changes.getAlarms().size());
+        assertTrue(model.getChangesSince(Long.MAX_VALUE).isReset());
+    }
+
+    @Test
+    public void testSynchronize() {
+        final AlarmReadModel model = new AlarmReadModel(10, 0);
+        model.update(alarm(1, 1, "uei.opennms.org/a", OnmsSeverity.MAJOR, 100));
+        model.update(alarm(2, 1, "uei.opennms.org/a", OnmsSeverity.MAJOR, 100));
+        final long loadedAt = model.getVersion();
+        // changed while the alarms were loaded
+        model.update(alarm(3, 1, "uei.opennms.org/a", OnmsSeverity.MAJOR, 100));
+        final long version = model.getVersion();
+
+        model.synchronize(Arrays.asList(
+                alarm(1, 1, "uei.opennms.org/a", OnmsSeverity.MAJOR, 100),
+                alarm(4, 1, "uei.opennms.org/a", OnmsSeverity.MINOR, 100)), loadedAt);
+
+        assertEquals(Arrays.asList(1, 3, 4), ids(model.query(new AlarmQuery().setOrderBy(AlarmQuery.OrderBy.ID).setAscending(true))));
+        final AlarmChangesDTO changes = model.getChangesSince(version);
+        // the unchanged alarm is not reported
+        assertEquals(1, changes.getAlarms().size());
+        assertEquals(Integer.valueOf(4), changes.getAlarms().get(0).getId());
+        assertEquals(Arrays.asList(2), changes.getDeletedAlarmIds());
+    }
+
+    @Test
+    public void testOnChange() {
+        final AlarmReadModel model = new AlarmReadModel(10, 0);
+        final long version = model.getVersion();
+        final AtomicInteger calls = new AtomicInteger();
+
+        model.onChange(version, calls::incrementAndGet);
+        assertEquals(0, calls.get());
+        model.update(alarm(1, 1, "uei.opennms.org/a", OnmsSeverity.MAJOR, 100));
+        assertEquals(1, calls.get());
+        // the callback is only called once
+        model.update(alarm(2, 1, "uei.opennms.org/a", OnmsSeverity.MAJOR, 100));
+        assertEquals(1, calls.get());
+
+        // the model already changed since the version: the callback runs right away
+        model.onChange(version, calls::incrementAndGet);
+        assertEquals(2, calls.get());
+
+        // a cancelled callback is not called
+        final Runnable callback = calls::incrementAndGet;
+        model.onChange(model.getVersion(), callback);
+        model.cancel(callback);
+        model.delete(1);
+        assertEquals(2, calls.get());
+    }
+
+    private static List<Integer> ids(AlarmReadModel.Result result) {
+        return result.getAlarms().stream().map(AlarmDTO::getId).collect(Collectors.toList());
+    }
+
+    private static AlarmDTO alarm(int id, Integer nodeId, String uei, OnmsSeverity severity, long lastEventTime) {
+        final AlarmDTO alarm = new AlarmDTO();
+        alarm.setId(id);
+        alarm.setNodeId(nodeId);
+        alarm.setUei(uei);
+        alarm.setSeverity(severity.getLabel());
+        alarm.setCount(1);
+        alarm.setLastEventTime(new Date(lastEventTime));
+        return alarm;
+    }
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.web.rest.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.opennms.web.rest.model.v2.ChangeCollectionDTO;
+import org.opennms.web.rest.model.v2.ChangeDTO;
+
+public class ChangeFeedTest {
+
+    @Test
+    public void testChangesSince() {
+        final ChangeFeed feed = new ChangeFeed(3, 100);
+        feed.publish(alarm(1, 1, OnmsSeverity.MAJOR));
+        feed.publish(outage(2));
+        feed.publish(alarm(3, 2, OnmsSeverity.WARNING));
+        assertEquals(103, feed.getSequence());
+
+        ChangeCollectionDTO changes = feed.getChangesSince(100, new ChangeFilter(), 0);
+        assertFalse(changes.isReset());
+        assertEquals(103, changes.getSequence());
+        assertEquals(Arrays.asList(101L, 102L, 103L), sequences(changes));
+
+        changes = feed.getChangesSince(100, new ChangeFilter().setTypes(Arrays.asList(ChangeDTO.TYPE_ALARM)).setMinimumSeverity(OnmsSeverity.MINOR), 0);
+        assertEquals(Arrays.asList(101L), sequences(changes));
+        // the client continues after the last published change, even if it did not match
+        assertEquals(103, changes.getSequence());
+
+        changes = feed.getChangesSince(100, new ChangeFilter().setNodeIds(Arrays.asList(2)), 0);
+        assertEquals(Arrays.asList(102L, 103L), sequences(changes));
+
+        changes = feed.getChangesSince(100, new ChangeFilter(), 2);
+        assertEquals(Arrays.asList(101L, 102L), sequences(changes));
+        assertEquals(102, changes.getSequence());
+
+        // the first change is dropped
+        feed.publish(outage(4));
+        assertTrue(feed.getChangesSince(100, new ChangeFilter(), 0).isReset());
+        assertEquals(Arrays.asList(102L, 103L, 104L), sequences(feed.getChangesSince(101, new ChangeFilter(), 0)));
+        assertTrue(feed.getChangesSince(200, new ChangeFilter(), 0).isReset());
+    }
+
+    @Test
+    public void testOnChange() {
+        final ChangeFeed feed = new ChangeFeed(2, 0);
+        final ChangeFilter filter = new ChangeFilter().setTypes(Arrays.asList(ChangeDTO.TYPE_OUTAGE));
+        feed.publish(alarm(1, 1, OnmsSeverity.MAJOR));
+
+        // there is already a change for the client
+        final AtomicInteger calls = new AtomicInteger();
+        feed.onChange(0, new ChangeFilter(), calls::incrementAndGet);
+        assertEquals(1, calls.get());
+        assertEquals(0, feed.getWaiterCount());
+
+        // called back by the next matching change only
+        final Runnable callback = calls::incrementAndGet;
+        feed.onChange(0, filter, callback);
+        assertEquals(1, feed.getWaiterCount());
+        feed.publish(alarm(2, 1, OnmsSeverity.MAJOR));
+        assertEquals(1, calls.get());
+        feed.publish(outage(1));
+        assertEquals(2, calls.get());
+        assertEquals(0, feed.getWaiterCount());
+
+        // the client is told when the changes it waits for are no longer known
+        feed.onChange(3, filter, callback);
+        feed.publish(alarm(3, 1, OnmsSeverity.MAJOR));
+        feed.publish(alarm(4, 1, OnmsSeverity.MAJOR));
+        assertEquals(2, calls.get());
+        feed.publish(alarm(5, 1, OnmsSeverity.MAJOR));
+        assertEquals(3, calls.get());
+
+        // cancelled clients are forgotten
+        feed.onChange(feed.getSequence(), filter, callback);
+        feed.cancel(callback);
+        assertEquals(0, feed.getWaiterCount());
+        feed.publish(outage(1));
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void testAuthorizedNodes() {
+        final ChangeFeed feed = new ChangeFeed(10, 0);
+        feed.publish(alarm(1, 1, OnmsSeverity.MAJOR));
+        feed.publish(alarm(2, 2, OnmsSeverity.MAJOR));
+        feed.publish(outage(2));
+        final ChangeDTO deleted = new ChangeDTO(ChangeDTO.TYPE_ALARM, ChangeDTO.ACTION_DELETE);
+        deleted.setId(3);
+        feed.publish(deleted);
+
+        final ChangeFilter filter = new ChangeFilter().setAuthorizedNodeIds(new HashSet<>(Arrays.asList(1)));
+        assertEquals(Arrays.asList(1L, 4L), sequences(feed.getChangesSince(0, filter, 0)));
+        assertEquals(Arrays.asList(), sequences(feed.getChangesSince(0, new ChangeFilter().setNodeIds(Arrays.asList(2)).setAuthorizedNodeIds(new HashSet<>(Arrays.asList(1))), 0)));
+        assertEquals(4, sequences(feed.getChangesSince(0, new ChangeFilter(), 0)).size());
+    }
+
+    private static List<Long> sequences(ChangeCollectionDTO changes) {
+        return changes.getChanges().stream().map(ChangeDTO::getSequence).collect(Collectors.toList());
+    }
+
+    private static ChangeDTO alarm(int id, int nodeId, OnmsSeverity severity) {
+        final ChangeDTO change = new ChangeDTO(ChangeDTO.TYPE_ALARM, ChangeDTO.ACTION_UPDATE);
+        change.setId(id);
+        change.setNodeId(nodeId);
+        change.setSeverity(severity.getLabel());
+        return change;
+    }
+
+    private static ChangeDTO outage(int nodeId) {
+        final ChangeDTO change = new ChangeDTO(ChangeDTO.TYPE_OUTAGE, ChangeDTO.ACTION_CREATED);
+        change.setNodeId(nodeId);
+        return change;
+    }
+}
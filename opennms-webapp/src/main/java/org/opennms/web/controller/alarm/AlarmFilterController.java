@@ -28,7 +28,13 @@
 
 package org.opennms.web.controller.alarm;
 
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -38,11 +44,16 @@ import org.opennms.core.utils.WebSecurityUtils;
 import org.opennms.netmgt.dao.api.AlarmRepository;
 import org.opennms.netmgt.model.OnmsAlarm;
 import org.opennms.netmgt.model.OnmsFilterFavorite;
+import org.opennms.netmgt.model.OnmsSeverity;
 import org.opennms.web.alarm.AcknowledgeType;
 import org.opennms.web.alarm.AlarmQueryParms;
 import org.opennms.web.alarm.AlarmUtil;
 import org.opennms.web.alarm.SortStyle;
 import org.opennms.web.alarm.filter.AlarmCriteria;
+import org.opennms.web.alarm.filter.NegativeSeverityFilter;
+import org.opennms.web.alarm.filter.NodeFilter;
+import org.opennms.web.alarm.filter.SeverityBetweenFilter;
+import org.opennms.web.alarm.filter.SeverityFilter;
 import org.opennms.web.alert.AlertType;
 import org.opennms.web.filter.Filter;
 import org.opennms.web.filter.FilterUtil;
@@ -77,6 +88,12 @@ public class AlarmFilterController extends MultiActionController implements Init
     private static final AcknowledgeType DEFAULT_ACKNOWLEDGE_TYPE = AcknowledgeType.UNACKNOWLEDGED;
     private static final SortStyle DEFAULT_SORT_STYLE = SortStyle.ID;
 
+    /**
+     * Servlet context attribute holding the sequence number of the change feed
+     * of the REST API, see ChangeFeedComponent.
+     */
+    private static final String CHANGE_SEQUENCE_ATTRIBUTE = "org.opennms.web.changes.sequence";
+
     @Autowired
     private AlarmRepository m_webAlarmRepository;
 
@@ -248,6 +265,8 @@ public class AlarmFilterController extends MultiActionController implements Init
         AlarmCriteria queryCriteria = new AlarmCriteria(parms);
         AlarmCriteria countCriteria = new AlarmCriteria(filterList, ackType);
 
+        // taken before the alarms are loaded, so that the page is told about every change made after that
+        final Object changeSequence = getServletContext().getAttribute(CHANGE_SEQUENCE_ATTRIBUTE);
         final OnmsAlarm[] alarms = m_webAlarmRepository.getMatchingAlarms(AlarmUtil.getOnmsCriteria(queryCriteria));
         final long alarmCount = m_webAlarmRepository.countMatchingAlarms(AlarmUtil.getOnmsCriteria(countCriteria));
 
@@ -257,9 +276,49 @@ public class AlarmFilterController extends MultiActionController implements Init
         modelAndView.addObject("parms", new NormalizedQueryParameters(parms));
         modelAndView.addObject("callback", getFilterCallback());
         modelAndView.addObject("favorites", favoriteService.getFavorites(request.getRemoteUser(), OnmsFilterFavorite.Page.ALARM).toArray());
+        if (changeSequence instanceof LongSupplier) {
+            modelAndView.addObject("changeSequence", ((LongSupplier) changeSequence).getAsLong());
+            addChangeCriteria(modelAndView, alarms, filterList, ackType);
+        }
         return modelAndView;
     }
 
+    /**
+     * Adds what the page needs to tell the alarm changes that concern it, as
+     * JavaScript literals: the alarms it shows, which may change or be
+     * deleted, and the node, severity and acknowledgement another alarm must
+     * have to appear on the page, or null if any will do. The other filters
+     * are not checked, so their alarms still reload the page.
+     */
+    private static void addChangeCriteria(ModelAndView modelAndView, OnmsAlarm[] alarms, List<Filter> filterList, AcknowledgeType ackType) {
+        final Set<Integer> nodeIds = new TreeSet<>();
+        final Set<OnmsSeverity> severities = EnumSet.allOf(OnmsSeverity.class);
+        for (final Filter filter : filterList) {
+            if (filter instanceof NodeFilter) {
+                nodeIds.add(((NodeFilter) filter).getNodeId());
+            } else if (filter instanceof SeverityFilter) {
+                severities.retainAll(EnumSet.of(((SeverityFilter) filter).getValue()));
+            } else if (filter instanceof NegativeSeverityFilter) {
+                severities.remove(((NegativeSeverityFilter) filter).getValue());
+            } else if (filter instanceof SeverityBetweenFilter) {
+                final SeverityBetweenFilter between = (SeverityBetweenFilter) filter;
+                severities.removeIf(severity -> severity.isLessThan(between.getFirst()) || severity.isGreaterThan(between.getLast()));
+            }
+        }
+
+        modelAndView.addObject("changeAlarmIds", Arrays.stream(alarms)
+                .map(alarm -> alarm.getId().toString())
+                .collect(Collectors.joining(",", "[", "]")));
+        modelAndView.addObject("changeNodeIds", nodeIds.isEmpty() ? "null" : nodeIds.stream()
+                .map(nodeId -> nodeId.toString())
+                .collect(Collectors.joining(",", "[", "]")));
+        modelAndView.addObject("changeSeverities", severities.size() == OnmsSeverity.values().length ? "null" : severities.stream()
+                .map(severity -> '"' + severity.name() + '"')
+                .collect(Collectors.joining(",", "[", "]")));
+        modelAndView.addObject("changeAcknowledged", ackType == AcknowledgeType.ACKNOWLEDGED ? "true"
+                : ackType == AcknowledgeType.UNACKNOWLEDGED ? "false" : "null");
+    }
+
     private OnmsFilterFavorite getFavorite(String favoriteId, String username, String[] filters) {
         if (favoriteId != null) {
             return favoriteService.getFavorite(favoriteId, username, getFilterCallback().toFilterString(filters));
@@ -287,6 +287,50 @@
     	snd.play();
     }
 
+    // reload the list when the alarms change instead of on a fixed interval,
+    // at most once every 30 seconds
+    if (window.EventSource) {
+        var pageLoaded = Date.now();
+        // starts with the changes made since the alarms of the page were loaded
+        var alarmChanges = new EventSource("<%=req.getContextPath()%>/api/v2/changes/stream?type=alarm<c:if test="${changeSequence != null}">&since=${changeSequence}</c:if>");
+        var reloadOnChange = function() {
+            alarmChanges.close();
+            setTimeout(function() { window.location.reload(); }, Math.max(0, 30000 - (Date.now() - pageLoaded)));
+        };
+        <c:choose>
+        <c:when test="${changeAlarmIds != null}">
+        // only the changes of the alarms shown, and of the alarms which may appear with
+        // the node, severity and acknowledgement filters of the page, reload it
+        var pageAlarms = {
+            ids: ${changeAlarmIds},
+            nodeIds: ${changeNodeIds},
+            severities: ${changeSeverities},
+            acknowledged: ${changeAcknowledged}
+        };
+        var concernsPage = function(change) {
+            if (pageAlarms.ids.indexOf(change.id) >= 0) {
+                return true;
+            }
+            if (!change.alarm) {
+                return false;
+            }
+            return (pageAlarms.nodeIds === null || pageAlarms.nodeIds.indexOf(change.nodeId) >= 0)
+                && (pageAlarms.severities === null || pageAlarms.severities.indexOf(change.severity) >= 0)
+                && (pageAlarms.acknowledged === null || pageAlarms.acknowledged === !!change.alarm.ackTime);
+        };
+        alarmChanges.addEventListener("alarm", function(e) {
+            if (concernsPage(JSON.parse(e.data))) {
+                reloadOnChange();
+            }
+        });
+        </c:when>
+        <c:otherwise>
+        alarmChanges.addEventListener("alarm", reloadOnChange);
+        </c:otherwise>
+        </c:choose>
+        alarmChanges.addEventListener("reset", reloadOnChange);
+    }
+
   </script>
   
 <div id="severityLegendModal" class="modal fade" tabindex="-1">